@@ -0,0 +1,382 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.bindingSet;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IConstraint;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.constraint.Constraint;
+import com.bigdata.bop.constraint.EQConstant;
+
+/**
+ * Unit tests for {@link ColumnarSolutionChunk}. The {@link IBindingSet}
+ * contract is tested against the {@link ColumnarSolutionChunk.Row} view of a
+ * single row chunk.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestColumnarSolutionChunk extends TestIBindingSet {
+
+    /**
+     * 
+     */
+    public TestColumnarSolutionChunk() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestColumnarSolutionChunk(String name) {
+        super(name);
+    }
+
+    @Override
+    protected IBindingSet newBindingSet(IVariable<?> vars[],
+            IConstant<?> vals[]) {
+
+        return new ColumnarSolutionChunk(
+                new IBindingSet[] { new ListBindingSet(vars, vals) })
+                .toBindingSets()[0];
+
+    }
+
+    @Override
+    protected IBindingSet newBindingSet(int sizeIsIgnored) {
+
+        return new ColumnarSolutionChunk(
+                new IBindingSet[] { new ListBindingSet() }).toBindingSets()[0];
+
+    }
+
+    private final Var<?> x = Var.var("x");
+
+    private final Var<?> y = Var.var("y");
+
+    private final Var<?> z = Var.var("z");
+
+    private final Var<?> w = Var.var("w");
+
+    /**
+     * Return solutions binding {@link #x} to <code>i</code>, {@link #y} to
+     * <code>i%2</code> and {@link #w} to <code>i</code> except for every third
+     * solution. {@link #z} is never bound.
+     */
+    private IBindingSet[] newSolutions(final int n) {
+
+        final IBindingSet[] a = new IBindingSet[n];
+
+        for (int i = 0; i < n; i++) {
+
+            final ListBindingSet bset = new ListBindingSet();
+
+            if (i % 3 != 0)
+                bset.set(w, new Constant<Integer>(i));
+
+            bset.set(x, new Constant<Integer>(i));
+
+            bset.set(y, new Constant<Integer>(i % 2));
+
+            a[i] = bset;
+
+        }
+
+        return a;
+
+    }
+
+    private IConstraint yEquals(final int v) {
+
+        return Constraint.wrap(new EQConstant(y, new Constant<Integer>(v)));
+
+    }
+
+    /**
+     * Verify that the {@link ColumnarSolutionChunk.Row} views report the same
+     * bindings as the source solutions, including unbound variables.
+     */
+    public void test_roundTrip() {
+
+        final IBindingSet[] a = newSolutions(10);
+
+        final ColumnarSolutionChunk chunk = new ColumnarSolutionChunk(a);
+
+        assertEquals(10, chunk.size());
+
+        assertEquals(3, chunk.getVariables().length);
+
+        final IBindingSet[] b = chunk.toBindingSets();
+
+        assertEquals(a.length, b.length);
+
+        for (int i = 0; i < a.length; i++) {
+
+            assertEquals(a[i], b[i]);
+
+            assertEquals(b[i], a[i]);
+
+            assertEquals(a[i].hashCode(), b[i].hashCode());
+
+            assertEquals(a[i].size(), b[i].size());
+
+            assertEquals(a[i].get(w), chunk.get(i, w));
+
+            assertNull(chunk.get(i, z));
+
+        }
+
+    }
+
+    /**
+     * Verify {@link ColumnarSolutionChunk#filter(IConstraint)}.
+     */
+    public void test_filter() {
+
+        final ColumnarSolutionChunk chunk = new ColumnarSolutionChunk(
+                newSolutions(12));
+
+        // the odd rows.
+        assertEquals(6, chunk.filter(yEquals(1)));
+
+        assertEquals(6, chunk.size());
+
+        final IBindingSet[] b = chunk.toBindingSets();
+
+        for (int i = 0; i < b.length; i++) {
+
+            assertEquals(new Constant<Integer>(2 * i + 1), b[i].get(x));
+
+        }
+
+        assertEquals(0, chunk.filter(yEquals(0)));
+
+        assertEquals(0, chunk.toBindingSets().length);
+
+    }
+
+    /**
+     * Verify {@link ColumnarSolutionChunk#split(IConstraint)} and that a write
+     * on a row of one chunk is not visible in the other chunk even though
+     * they share their columns.
+     */
+    public void test_split() {
+
+        final ColumnarSolutionChunk chunk = new ColumnarSolutionChunk(
+                newSolutions(6));
+
+        final ColumnarSolutionChunk rejected = chunk.split(yEquals(1));
+
+        // rows 1, 3, 5 were accepted.
+        assertEquals(3, chunk.size());
+
+        // rows 0, 2, 4 were rejected.
+        assertEquals(3, rejected.size());
+
+        final IBindingSet[] a = chunk.toBindingSets();
+
+        final IBindingSet[] b = rejected.toBindingSets();
+
+        for (int i = 0; i < 3; i++) {
+
+            assertEquals(new Constant<Integer>(2 * i + 1), a[i].get(x));
+
+            assertEquals(new Constant<Integer>(2 * i), b[i].get(x));
+
+        }
+
+        // write on the accepted chunk.
+        a[0].set(z, new Constant<String>("foo"));
+        a[2].set(x, new Constant<Integer>(-1));
+
+        assertEquals(new Constant<String>("foo"), a[0].get(z));
+        assertEquals(new Constant<Integer>(-1), a[2].get(x));
+
+        // not visible in the rejected chunk.
+        for (IBindingSet bset : b) {
+            assertFalse(bset.isBound(z));
+        }
+        assertEquals(new Constant<Integer>(4), b[2].get(x));
+
+    }
+
+    /**
+     * Verify that {@link ColumnarSolutionChunk#valueOf(IBindingSet[])} does
+     * not modify the source chunk when the rows of that chunk are projected.
+     */
+    public void test_valueOf_project() {
+
+        final ColumnarSolutionChunk chunk = new ColumnarSolutionChunk(
+                newSolutions(4));
+
+        final IBindingSet[] a = chunk.toBindingSets();
+
+        final ColumnarSolutionChunk chunk2 = ColumnarSolutionChunk.valueOf(a);
+
+        assertEquals(4, chunk2.size());
+
+        chunk2.project(new IVariable[] { y, z, y });
+
+        assertEquals(1, chunk2.getVariables().length);
+
+        final IBindingSet[] b = chunk2.toBindingSets();
+
+        for (int i = 0; i < a.length; i++) {
+
+            assertFalse(b[i].isBound(x));
+
+            assertEquals(a[i].get(y), b[i].get(y));
+
+            // the source rows still have their bindings for x.
+            assertEquals(new Constant<Integer>(i), a[i].get(x));
+
+        }
+
+        // solutions which are not rows of a chunk are copied.
+        final ColumnarSolutionChunk chunk3 = ColumnarSolutionChunk
+                .valueOf(newSolutions(3));
+
+        assertEquals(3, chunk3.size());
+
+    }
+
+    /**
+     * Verify {@link ColumnarSolutionChunk#viewOf(IBindingSet[])} only shares
+     * the columns of a chunk of views of the same chunk.
+     */
+    public void test_viewOf() {
+
+        final IBindingSet[] a = new ColumnarSolutionChunk(newSolutions(3))
+                .toBindingSets();
+
+        final IBindingSet[] b = new ColumnarSolutionChunk(newSolutions(3))
+                .toBindingSets();
+
+        assertTrue(ColumnarSolutionChunk.isView(a[0]));
+
+        assertNotNull(ColumnarSolutionChunk.viewOf(a));
+
+        assertNull(ColumnarSolutionChunk.viewOf(new IBindingSet[] { a[0],
+                b[1] }));
+
+        assertNull(ColumnarSolutionChunk.viewOf(new IBindingSet[] { a[0],
+                new ListBindingSet() }));
+
+        assertNull(ColumnarSolutionChunk.viewOf(newSolutions(3)));
+
+        assertNull(ColumnarSolutionChunk.viewOf(new IBindingSet[0]));
+
+        assertFalse(ColumnarSolutionChunk.isView(newSolutions(1)[0]));
+
+    }
+
+    /**
+     * Verify that {@link ColumnarSolutionChunk#toBindingSets()} copies the
+     * selected rows into new columns when at most half of the rows are
+     * selected, so the views do not keep the other rows reachable, and that
+     * the rows are not renumbered once views were handed out.
+     */
+    public void test_compact() {
+
+        final ColumnarSolutionChunk chunk = new ColumnarSolutionChunk(
+                newSolutions(12));
+
+        assertEquals(6, chunk.filter(yEquals(1)));
+
+        assertEquals(12, chunk.getRowCount());
+
+        final IBindingSet[] a = chunk.toBindingSets();
+
+        assertEquals(6, chunk.getRowCount());
+
+        for (int i = 0; i < a.length; i++) {
+
+            assertEquals(new Constant<Integer>(2 * i + 1), a[i].get(x));
+
+        }
+
+        // a chunk sharing the columns is compacted on its own.
+        final ColumnarSolutionChunk chunk2 = ColumnarSolutionChunk.viewOf(a);
+
+        chunk2.slice(1, 2);
+
+        final IBindingSet[] b = chunk2.toBindingSets();
+
+        assertEquals(2, chunk2.getRowCount());
+
+        assertEquals(new Constant<Integer>(3), b[0].get(x));
+
+        assertEquals(new Constant<Integer>(5), b[1].get(x));
+
+        // views of this chunk exist, so its rows are not renumbered.
+        chunk.slice(5, 1);
+
+        assertEquals(1, chunk.toBindingSets().length);
+
+        assertEquals(6, chunk.getRowCount());
+
+        for (int i = 0; i < a.length; i++) {
+
+            assertEquals(new Constant<Integer>(2 * i + 1), a[i].get(x));
+
+        }
+
+    }
+
+    /**
+     * Verify {@link ColumnarSolutionChunk#slice(int, int)}.
+     */
+    public void test_slice() {
+
+        final ColumnarSolutionChunk chunk = new ColumnarSolutionChunk(
+                newSolutions(10));
+
+        chunk.slice(3, 4);
+
+        assertEquals(4, chunk.size());
+
+        final IBindingSet[] b = chunk.toBindingSets();
+
+        for (int i = 0; i < 4; i++) {
+
+            assertEquals(new Constant<Integer>(i + 3), b[i].get(x));
+
+        }
+
+        try {
+            chunk.slice(1, 4);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        chunk.slice(4, 0);
+
+        assertEquals(0, chunk.size());
+
+    }
+
+}
@@ -41,7 +41,9 @@ import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IConstant;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
 import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ColumnarSolutionChunk;
 import com.bigdata.bop.bindingSet.HashBindingSet;
 import com.bigdata.bop.bindingSet.ListBindingSet;
 import com.bigdata.bop.constraint.Constraint;
@@ -146,6 +148,36 @@ public class TestConditionalRoutingOp extends TestCase2 {
     public void test_conditionalRouting() throws InterruptedException,
             ExecutionException {
 
+        doConditionalRoutingTest(false/* columnar */, false/* views */);
+
+    }
+
+    /**
+     * Unit test for conditional routing of binding sets using a
+     * {@link ColumnarSolutionChunk}. A chunk of views is routed by its
+     * selection vector while other chunks are routed one solution at a time.
+     * 
+     * @throws ExecutionException 
+     * @throws InterruptedException 
+     */
+    public void test_conditionalRouting_columnar() throws InterruptedException,
+            ExecutionException {
+
+        doConditionalRoutingTest(true/* columnar */, true/* views */);
+
+        doConditionalRoutingTest(true/* columnar */, false/* views */);
+
+        // the source solutions were not modified.
+        assertEquals(6, data.size());
+        for (IBindingSet bset : data) {
+            assertEquals(1, bset.size());
+        }
+
+    }
+
+    private void doConditionalRoutingTest(final boolean columnar,
+            final boolean views) throws InterruptedException, ExecutionException {
+
         final Var<?> x = Var.var("x");
         
         final int bopId = 1;
@@ -155,6 +187,7 @@ public class TestConditionalRoutingOp extends TestCase2 {
                     new NV(BOp.Annotations.BOP_ID,bopId),//
                     new NV(ConditionalRoutingOp.Annotations.CONDITION,
                     		Constraint.wrap(new EQConstant(x,new Constant<String>("Mary")))),//
+                    new NV(PipelineOp.Annotations.COLUMNAR, columnar),//
                 }));
         
         // the expected solutions (default sink).
@@ -185,8 +218,10 @@ public class TestConditionalRoutingOp extends TestCase2 {
 
         final BOpStats stats = query.newStats();
 
-        final ICloseableIterator<IBindingSet[]> source = newBindingSetIterator(data
-                .toArray(new IBindingSet[0]));
+        final IBindingSet[] chunk = data.toArray(new IBindingSet[0]);
+
+        final ICloseableIterator<IBindingSet[]> source = newBindingSetIterator(views ? new ColumnarSolutionChunk(
+                chunk).toBindingSets() : chunk);
 
         final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
                 query, stats);
@@ -129,6 +129,15 @@ public class MockRunningQuery implements IRunningQuery {
 		return 0;
 	}
 
+    @Override
+    public QueryMemoryBudget getMemoryBudget() {
+
+        return memoryBudget;
+
+    }
+
+    private final QueryMemoryBudget memoryBudget = new QueryMemoryBudget(0L);
+
     @Override
 	public long getDoneTime() {
 		// TODO Auto-generated method stub
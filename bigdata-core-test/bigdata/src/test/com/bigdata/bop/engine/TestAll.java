@@ -99,9 +99,18 @@ public class TestAll extends TestCase {
         // test suite for query deadline ordering semantics.
         suite.addTestSuite(TestQueryDeadlineOrder.class);
 
+        // test suite for the operator task scheduler.
+        suite.addTestSuite(TestOperatorTaskScheduler.class);
+
+        // test suite for per-query memory budgets and admission control.
+        suite.addTestSuite(TestQueryMemoryBudget.class);
+
         // test suite for query evaluation (basic JOINs).
         suite.addTestSuite(TestQueryEngine.class);
 
+        // the same, using the operator task scheduler.
+        suite.addTestSuite(TestQueryEngine_OperatorTaskScheduler.class);
+
 		/*
 		 * The following integration tests examine the behavior of various
 		 * operators which must either buffer the solutions or otherwise use
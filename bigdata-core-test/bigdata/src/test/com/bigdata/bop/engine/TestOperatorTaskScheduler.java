@@ -0,0 +1,316 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.ICounter;
+import com.bigdata.util.DaemonThreadFactory;
+
+/**
+ * Test suite for the {@link OperatorTaskScheduler}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestOperatorTaskScheduler extends TestCase2 {
+
+    public TestOperatorTaskScheduler() {
+
+    }
+
+    public TestOperatorTaskScheduler(final String name) {
+        super(name);
+    }
+
+    private ExecutorService overflow;
+
+    private OperatorTaskScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+
+        overflow = Executors.newCachedThreadPool(new DaemonThreadFactory(
+                getName()));
+
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+
+        if (overflow != null) {
+            overflow.shutdownNow();
+            overflow = null;
+        }
+
+    }
+
+    /**
+     * Return the value of a counter reported by the scheduler.
+     */
+    private long getCounter(final String name) {
+
+        final CounterSet counters = scheduler.getCounters();
+
+        return ((Number) ((ICounter<?>) counters.getChild(name))
+                .getInstrument().getValue()).longValue();
+
+    }
+
+    public void test_ctor_correctRejection() {
+
+        try {
+            new OperatorTaskScheduler(0/* nthreads */, overflow, 100);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        try {
+            new OperatorTaskScheduler(1/* nthreads */, null/* overflow */,
+                    100);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * Verify that all tasks are run for several queries.
+     */
+    public void test_execute() throws InterruptedException {
+
+        scheduler = new OperatorTaskScheduler(3/* nthreads */, overflow, 100);
+
+        final int ntasks = 1000;
+
+        final CountDownLatch done = new CountDownLatch(ntasks);
+
+        final UUID[] queryIds = new UUID[] { UUID.randomUUID(),
+                UUID.randomUUID(), UUID.randomUUID() };
+
+        for (int i = 0; i < ntasks; i++) {
+
+            scheduler.execute(queryIds[i % queryIds.length], 1 + i % 2,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            done.countDown();
+                        }
+                    });
+
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(0L, getCounter("waitingTaskCount"));
+
+    }
+
+    /**
+     * Verify that a query with a larger weight has its tasks dispatched
+     * proportionally more often while both queries have tasks waiting.
+     */
+    public void test_fairShare() throws InterruptedException {
+
+        scheduler = new OperatorTaskScheduler(1/* nthreads */, overflow, 100);
+
+        final UUID queryA = UUID.randomUUID();
+
+        final UUID queryB = UUID.randomUUID();
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // occupy the only worker thread.
+        scheduler.execute(queryA, 1, new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        final List<UUID> order = Collections
+                .synchronizedList(new ArrayList<UUID>());
+
+        final CountDownLatch done = new CountDownLatch(20);
+
+        for (int i = 0; i < 10; i++) {
+
+            for (final UUID queryId : new UUID[] { queryA, queryB }) {
+
+                scheduler.execute(queryId, queryId == queryA ? 1 : 3,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                order.add(queryId);
+                                done.countDown();
+                            }
+                        });
+
+            }
+
+        }
+
+        assertEquals(20L, getCounter("waitingTaskCount"));
+
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // Three tasks for B are dispatched for each task for A.
+        int na = 0, nb = 0;
+        for (UUID queryId : order.subList(0, 8)) {
+            if (queryId == queryA)
+                na++;
+            else
+                nb++;
+        }
+
+        assertEquals(order.toString(), 2, na);
+
+        assertEquals(order.toString(), 6, nb);
+
+    }
+
+    /**
+     * Verify that a task dispatched from a worker thread of the pool runs on
+     * a worker thread of the pool.
+     */
+    public void test_locality() throws InterruptedException {
+
+        scheduler = new OperatorTaskScheduler(2/* nthreads */, overflow, 100);
+
+        final UUID queryId = UUID.randomUUID();
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final AtomicInteger nworker = new AtomicInteger();
+
+        scheduler.execute(queryId, 1, new Runnable() {
+            @Override
+            public void run() {
+                if (Thread.currentThread() instanceof ForkJoinWorkerThread)
+                    nworker.incrementAndGet();
+                // a chunk produced by this task.
+                scheduler.execute(queryId, 1, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (Thread.currentThread() instanceof ForkJoinWorkerThread)
+                            nworker.incrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(2, nworker.get());
+
+        assertEquals(1L, getCounter("localDispatchCount"));
+
+        assertEquals(2L, getCounter("dispatchCount"));
+
+    }
+
+    /**
+     * Verify that a task waiting on a task which can not be dispatched because
+     * all worker threads are busy does not deadlock the scheduler once it is
+     * found to be stalled.
+     */
+    public void test_stalled() throws InterruptedException {
+
+        scheduler = new OperatorTaskScheduler(1/* nthreads */, overflow, 100);
+
+        final UUID queryId = UUID.randomUUID();
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CountDownLatch done = new CountDownLatch(2);
+
+        // occupies the worker thread until the 2nd task runs.
+        scheduler.execute(queryId, 1, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                done.countDown();
+            }
+        });
+
+        scheduler.execute(queryId, 1, new Runnable() {
+            @Override
+            public void run() {
+                release.countDown();
+                done.countDown();
+            }
+        });
+
+        assertEquals(1L, getCounter("waitingTaskCount"));
+
+        // not stalled yet.
+        assertFalse(scheduler.checkStalled(System.nanoTime()));
+
+        // stalled.
+        assertTrue(scheduler.checkStalled(System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(100)));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(1L, getCounter("overflowDispatchCount"));
+
+    }
+
+}
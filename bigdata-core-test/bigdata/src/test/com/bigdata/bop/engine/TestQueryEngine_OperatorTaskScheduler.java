@@ -0,0 +1,59 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.engine;
+
+/**
+ * Runs the {@link TestQueryEngine} test suite with the operator tasks
+ * scheduled by an {@link OperatorTaskScheduler}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestQueryEngine_OperatorTaskScheduler extends TestQueryEngine {
+
+    public TestQueryEngine_OperatorTaskScheduler() {
+
+    }
+
+    public TestQueryEngine_OperatorTaskScheduler(final String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+
+        System.setProperty(QueryEngine.Options.OPERATOR_SCHEDULER_THREADS, "2");
+
+        try {
+
+            super.setUp();
+
+        } finally {
+
+            System.clearProperty(QueryEngine.Options.OPERATOR_SCHEDULER_THREADS);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,474 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.engine;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpEvaluationContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.bset.CopyOp;
+import com.bigdata.bop.bset.StartOp;
+import com.bigdata.journal.BufferMode;
+import com.bigdata.journal.Journal;
+import com.bigdata.util.DaemonThreadFactory;
+import com.bigdata.util.InnerCause;
+
+/**
+ * Test suite for the {@link QueryMemoryBudget} and the memory admission
+ * control of the {@link QueryEngine}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestQueryMemoryBudget extends TestCase2 {
+
+    public TestQueryMemoryBudget() {
+
+    }
+
+    public TestQueryMemoryBudget(final String name) {
+        super(name);
+    }
+
+    /**
+     * The memory capacity of the {@link QueryEngine}.
+     */
+    private static final long CAPACITY = 1000L;
+
+    /**
+     * Released to let the {@link BlockingOp}s run.
+     */
+    private static volatile CountDownLatch latch;
+
+    private Journal jnl;
+
+    private QueryEngine queryEngine;
+
+    private ExecutorService service;
+
+    @Override
+    public void setUp() throws Exception {
+
+        final Properties p = new Properties();
+
+        p.setProperty(Journal.Options.BUFFER_MODE,
+                BufferMode.Transient.toString());
+
+        jnl = new Journal(p);
+
+        queryEngine = new QueryEngine(jnl);
+
+        System.setProperty(QueryEngine.Options.MEMORY_CAPACITY, "" + CAPACITY);
+
+        try {
+
+            queryEngine.init();
+
+        } finally {
+
+            System.clearProperty(QueryEngine.Options.MEMORY_CAPACITY);
+
+        }
+
+        latch = new CountDownLatch(1);
+
+        service = Executors.newCachedThreadPool(new DaemonThreadFactory(
+                getName()));
+
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+
+        if (latch != null) {
+            latch.countDown();
+            latch = null;
+        }
+
+        if (service != null) {
+            service.shutdownNow();
+            service = null;
+        }
+
+        if (queryEngine != null) {
+            queryEngine.shutdownNow();
+            queryEngine = null;
+        }
+
+        if (jnl != null) {
+            jnl.destroy();
+            jnl = null;
+        }
+
+    }
+
+    /**
+     * An operator which copies its source to its sink once the
+     * {@link TestQueryMemoryBudget#latch} is released.
+     */
+    private static class BlockingOp extends CopyOp {
+
+        private static final long serialVersionUID = 1L;
+
+        public BlockingOp(final BlockingOp op) {
+            super(op);
+        }
+
+        public BlockingOp(final BOp[] args,
+                final Map<String, Object> annotations) {
+            super(args, annotations);
+        }
+
+        @Override
+        public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+            final FutureTask<Void> ft = super.eval(context);
+
+            return new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    latch.await();
+                    ft.run();
+                    return ft.get();
+                }
+            });
+
+        }
+
+    }
+
+    /**
+     * Return a query which does not finish until the {@link #latch} is
+     * released.
+     * 
+     * @param budget
+     *            The memory budget of the query.
+     */
+    private PipelineOp newBlockingQuery(final long budget) {
+
+        return new BlockingOp(new BOp[] {}, NV.asMap(new NV[] {//
+                new NV(BOp.Annotations.BOP_ID, 1),//
+                new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(QueryEngine.Annotations.MEMORY_BUDGET, budget),//
+                }));
+
+    }
+
+    /**
+     * Return a query which finishes immediately.
+     * 
+     * @param annotations
+     *            Additional annotations for the query.
+     */
+    private PipelineOp newQuery(final NV... annotations) {
+
+        final NV[] a = new NV[annotations.length + 2];
+
+        a[0] = new NV(BOp.Annotations.BOP_ID, 1);
+        a[1] = new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                BOpEvaluationContext.CONTROLLER);
+
+        System.arraycopy(annotations, 0, a, 2, annotations.length);
+
+        return new StartOp(new BOp[] {}, NV.asMap(a));
+
+    }
+
+    /**
+     * Start a query in another thread since it may block on admission.
+     */
+    private Future<IRunningQuery> submit(final PipelineOp query) {
+
+        return submit(UUID.randomUUID(), query);
+
+    }
+
+    /**
+     * Start a query in another thread since it may block on admission.
+     */
+    private Future<IRunningQuery> submit(final UUID queryId,
+            final PipelineOp query) {
+
+        return service.submit(new Callable<IRunningQuery>() {
+            @Override
+            public IRunningQuery call() throws Exception {
+                return queryEngine.eval(queryId, query, new ListBindingSet());
+            }
+        });
+
+    }
+
+    /**
+     * Wait until the admitted memory of the {@link QueryEngine} reaches the
+     * expected value.
+     */
+    private void awaitAdmittedMemory(final long expected)
+            throws InterruptedException {
+
+        final long begin = System.currentTimeMillis();
+
+        while (queryEngine.getAdmittedMemoryBytes() != expected
+                && System.currentTimeMillis() - begin < 5000) {
+
+            Thread.sleep(10);
+
+        }
+
+        assertEquals(expected, queryEngine.getAdmittedMemoryBytes());
+
+    }
+
+    public void test_budget_reserveAndRelease() {
+
+        final QueryMemoryBudget budget = new QueryMemoryBudget(100L);
+
+        assertTrue(budget.isBounded());
+        assertEquals(100L, budget.getBudgetBytes());
+
+        budget.reserveHeap(60L);
+        assertEquals(60L, budget.getHeapBytes());
+        assertEquals(60L, budget.getUsedBytes());
+
+        budget.reserveHeap(40L);
+        assertEquals(100L, budget.getHeapBytes());
+
+        try {
+            budget.reserveHeap(1L);
+            fail("Expecting: " + QueryMemoryBudgetExceededException.class);
+        } catch (QueryMemoryBudgetExceededException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        // nothing was reserved by the failed request.
+        assertEquals(100L, budget.getHeapBytes());
+
+        budget.releaseHeap(70L);
+        assertEquals(30L, budget.getHeapBytes());
+        assertEquals(100L, budget.getMaxUsedBytes());
+
+        budget.reserveHeap(70L);
+        assertEquals(100L, budget.getHeapBytes());
+
+    }
+
+    public void test_budget_unbounded() {
+
+        final QueryMemoryBudget budget = new QueryMemoryBudget(0L);
+
+        assertFalse(budget.isBounded());
+
+        budget.reserveHeap(Long.MAX_VALUE / 2);
+
+        assertEquals(Long.MAX_VALUE / 2, budget.getHeapBytes());
+
+    }
+
+    public void test_budget_estimateHeapBytes() {
+
+        final ListBindingSet bset = new ListBindingSet();
+
+        final long empty = QueryMemoryBudget.estimateHeapBytes(bset);
+
+        assertTrue(empty > 0);
+
+        bset.set(Var.var("x"), new Constant<Integer>(1));
+
+        assertTrue(QueryMemoryBudget.estimateHeapBytes(bset) > empty);
+
+    }
+
+    /**
+     * The memory budget annotation is reported by the running query.
+     */
+    public void test_query_memoryBudget() throws Exception {
+
+        final IRunningQuery q = queryEngine.eval(UUID.randomUUID(),
+                newQuery(new NV(QueryEngine.Annotations.MEMORY_BUDGET, 100L)),
+                new ListBindingSet());
+
+        q.get();
+
+        assertEquals(100L, q.getMemoryBudget().getBudgetBytes());
+
+        awaitAdmittedMemory(0L);
+
+    }
+
+    /**
+     * A query whose budget does not fit waits until another query releases
+     * its memory.
+     */
+    public void test_admission_waitsForMemory() throws Exception {
+
+        final IRunningQuery q1 = queryEngine.eval(UUID.randomUUID(),
+                newBlockingQuery(800L), new ListBindingSet());
+
+        assertEquals(800L, queryEngine.getAdmittedMemoryBytes());
+
+        final Future<IRunningQuery> f2 = submit(newQuery(new NV(
+                QueryEngine.Annotations.MEMORY_BUDGET, 400L)));
+
+        try {
+            f2.get(250, TimeUnit.MILLISECONDS);
+            fail("Query should be waiting for memory");
+        } catch (TimeoutException ex) {
+            // ignore
+        }
+
+        // a query without a budget is not subject to admission control.
+        final IRunningQuery q3 = queryEngine.eval(UUID.randomUUID(),
+                newQuery(), new ListBindingSet());
+
+        q3.get();
+
+        // let the first query finish.
+        latch.countDown();
+
+        q1.get();
+
+        final IRunningQuery q2 = f2.get(5000, TimeUnit.MILLISECONDS);
+
+        q2.get();
+
+        awaitAdmittedMemory(0L);
+
+    }
+
+    /**
+     * A query which is waiting for memory is visible to
+     * {@link QueryEngine#getRunningQuery(UUID)} and stops waiting once it is
+     * cancelled.
+     */
+    public void test_admission_cancelWhileWaiting() throws Exception {
+
+        final IRunningQuery q1 = queryEngine.eval(UUID.randomUUID(),
+                newBlockingQuery(800L), new ListBindingSet());
+
+        final UUID queryId = UUID.randomUUID();
+
+        final Future<IRunningQuery> f2 = submit(queryId, newQuery(new NV(
+                QueryEngine.Annotations.MEMORY_BUDGET, 400L)));
+
+        // wait until the query is waiting for admission.
+        final long begin = System.currentTimeMillis();
+
+        IRunningQuery q2;
+        while ((q2 = queryEngine.getRunningQuery(queryId)) == null
+                && System.currentTimeMillis() - begin < 5000) {
+
+            Thread.sleep(10);
+
+        }
+
+        assertNotNull(q2);
+
+        assertFalse(f2.isDone());
+
+        q2.cancel(true/* mayInterruptIfRunning */);
+
+        // the query stops waiting without being admitted.
+        assertTrue(q2 == f2.get(5000, TimeUnit.MILLISECONDS));
+
+        assertTrue(q2.isCancelled());
+
+        assertEquals(800L, queryEngine.getAdmittedMemoryBytes());
+
+        // let the first query finish.
+        latch.countDown();
+
+        q1.get();
+
+        awaitAdmittedMemory(0L);
+
+    }
+
+    /**
+     * A query with a deadline gives up waiting for memory once its deadline
+     * expires.
+     */
+    public void test_admission_deadline() throws Exception {
+
+        queryEngine.eval(UUID.randomUUID(), newBlockingQuery(800L),
+                new ListBindingSet());
+
+        try {
+            queryEngine.eval(UUID.randomUUID(), newQuery(//
+                    new NV(QueryEngine.Annotations.MEMORY_BUDGET, 400L),//
+                    new NV(BOp.Annotations.TIMEOUT, 100L)//
+                    ), new ListBindingSet());
+            fail("Expecting: " + QueryTimeoutException.class);
+        } catch (Exception ex) {
+            if (!InnerCause.isInnerCause(ex, QueryTimeoutException.class))
+                fail("Expecting: " + QueryTimeoutException.class, ex);
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        // only the first query is admitted.
+        assertEquals(800L, queryEngine.getAdmittedMemoryBytes());
+
+    }
+
+    /**
+     * A query whose budget exceeds the capacity of the {@link QueryEngine}
+     * is rejected.
+     */
+    public void test_admission_rejectsBudgetLargerThanCapacity()
+            throws Exception {
+
+        try {
+            queryEngine.eval(UUID.randomUUID(), newQuery(new NV(
+                    QueryEngine.Annotations.MEMORY_BUDGET, CAPACITY + 1)),
+                    new ListBindingSet());
+            fail("Expecting: " + QueryMemoryBudgetExceededException.class);
+        } catch (QueryMemoryBudgetExceededException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        assertEquals(0L, queryEngine.getAdmittedMemoryBytes());
+
+    }
+
+}
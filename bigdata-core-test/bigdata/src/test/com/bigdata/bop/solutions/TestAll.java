@@ -68,6 +68,13 @@ public class TestAll extends TestCase {
         // test slice(offset,limit) operator.
         suite.addTestSuite(TestSliceOp.class);
 
+        /*
+         * Projection
+         */
+
+        // test projection operator.
+        suite.addTestSuite(TestProjectionOp.class);
+
         /*
          * Distinct
          */
@@ -88,6 +95,10 @@ public class TestAll extends TestCase {
         // in-memory sort operator.
         suite.addTestSuite(TestMemorySortOp.class);
 
+        suite.addTestSuite(TestMemoryTopKSortOp.class);
+
+        suite.addTestSuite(TestExternalMemorySortOp.class);
+
         /*
          * Aggregation
          */
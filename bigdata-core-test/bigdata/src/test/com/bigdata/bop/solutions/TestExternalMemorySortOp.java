@@ -0,0 +1,525 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.FutureTask;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpEvaluationContext;
+import com.bigdata.bop.Bind;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.BlockingBufferWithStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.engine.MockRunningQuery;
+import com.bigdata.bop.engine.QueryMemoryBudget;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.BigdataValueFactoryImpl;
+import com.bigdata.relation.accesspath.IAsynchronousIterator;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.ThickAsynchronousIterator;
+
+/**
+ * Unit tests for the {@link ExternalMemorySortOp}. The results are compared
+ * with those of the {@link MemorySortOp} for run sizes which force the
+ * solutions to be written onto the native heap in many runs.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class TestExternalMemorySortOp extends TestCase2 {
+
+    public TestExternalMemorySortOp() {
+    }
+
+    public TestExternalMemorySortOp(final String name) {
+        super(name);
+    }
+
+    private final IVariable<IV> x = Var.var("x");
+
+    private final IVariable<IV> id = Var.var("id");
+
+    private static IConstant<IV> iv(final int i) {
+
+        return new Constant<IV>(new XSDNumericIV(i));
+
+    }
+
+    /**
+     * Return a solution with the given value for <code>x</code> (unbound if
+     * <code>null</code>) and a distinct <code>id</code> so solutions which are
+     * equal in the ORDER BY can be told apart.
+     */
+    private IBindingSet solution(final IConstant<IV> xval, final int idval) {
+
+        final IBindingSet bset = new ListBindingSet();
+
+        if (xval != null)
+            bset.set(x, xval);
+
+        bset.set(id, iv(idval));
+
+        return bset;
+
+    }
+
+    /**
+     * Return an {@link ExternalMemorySortOp} -or- a {@link MemorySortOp} if
+     * <i>runSize</i> is <code>null</code>.
+     */
+    private SortOp newSortOp(final ISortOrder<?>[] sortOrder,
+            final Integer runSize, final int maxParallelRuns) {
+
+        final List<NV> anns = new LinkedList<NV>();
+        anns.add(new NV(SortOp.Annotations.BOP_ID, 1));
+        anns.add(new NV(SortOp.Annotations.SORT_ORDER, sortOrder));
+        anns.add(new NV(SortOp.Annotations.VALUE_COMPARATOR,
+                new IVComparator()));
+        anns.add(new NV(SortOp.Annotations.EVALUATION_CONTEXT,
+                BOpEvaluationContext.CONTROLLER));
+        anns.add(new NV(SortOp.Annotations.PIPELINED, true));
+        anns.add(new NV(SortOp.Annotations.MAX_PARALLEL, 1));
+        anns.add(new NV(PipelineOp.Annotations.REORDER_SOLUTIONS, false));
+        anns.add(new NV(SortOp.Annotations.LAST_PASS, true));
+        // small chunks, which are not drained until the operator is done.
+        anns.add(new NV(SortOp.Annotations.CHUNK_CAPACITY, 10));
+        anns.add(new NV(SortOp.Annotations.CHUNK_OF_CHUNKS_CAPACITY, 1000));
+
+        if (runSize == null)
+            return new MemorySortOp(new BOp[] {}, NV.asMap(anns
+                    .toArray(new NV[anns.size()])));
+
+        anns.add(new NV(ExternalMemorySortOp.Annotations.RUN_SIZE, runSize));
+        anns.add(new NV(ExternalMemorySortOp.Annotations.MAX_PARALLEL_RUNS,
+                maxParallelRuns));
+
+        return new ExternalMemorySortOp(new BOp[] {}, NV.asMap(anns
+                .toArray(new NV[anns.size()])));
+
+    }
+
+    /**
+     * Evaluate the operator once for each chunk (the last evaluation is the
+     * last invocation) and return the solutions written on the sink. The
+     * native memory of the query must have been released once the operator is
+     * done.
+     */
+    private List<IBindingSet> run(final SortOp op, final BOpStats stats,
+            final IBindingSet[][] chunks) throws Exception {
+
+        return run(op, stats, chunks, new QueryMemoryBudget(0L));
+
+    }
+
+    /**
+     * Variant in which the query has the given memory budget.
+     */
+    private List<IBindingSet> run(final SortOp op, final BOpStats stats,
+            final IBindingSet[][] chunks, final QueryMemoryBudget budget)
+            throws Exception {
+
+        final MockQueryContext queryContext = new MockQueryContext(
+                UUID.randomUUID());
+
+        final IRunningQuery runningQuery = new MockRunningQuery(null/* fed */,
+                null/* indexManager */, queryContext) {
+            @Override
+            public QueryMemoryBudget getMemoryBudget() {
+                return budget;
+            }
+        };
+
+        final List<IBindingSet> out = new LinkedList<IBindingSet>();
+
+        try {
+
+            for (int i = 0; i < chunks.length; i++) {
+
+                final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                        new IBindingSet[][] { chunks[i] });
+
+                final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                        op, stats);
+
+                final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                        runningQuery, -1/* partitionId */, stats, op,
+                        i + 1 == chunks.length/* lastInvocation */, source,
+                        sink, null/* sink2 */);
+
+                final FutureTask<Void> ft = op.eval(context);
+
+                ft.run();
+
+                ft.get();
+
+                final IAsynchronousIterator<IBindingSet[]> itr = sink
+                        .iterator();
+
+                while (itr.hasNext()) {
+
+                    for (IBindingSet bset : itr.next()) {
+
+                        out.add(bset);
+
+                    }
+
+                }
+
+            }
+
+            assertEquals(0L, queryContext.getMemoryManager().getSlotBytes());
+
+            assertEquals(0L, runningQuery.getMemoryBudget().getHeapBytes());
+
+        } finally {
+
+            queryContext.close();
+
+        }
+
+        return out;
+
+    }
+
+    /**
+     * Copy the solutions since the sort operators bind computed values on
+     * their source solutions.
+     */
+    private static IBindingSet[][] copy(final IBindingSet[][] chunks) {
+
+        final IBindingSet[][] a = new IBindingSet[chunks.length][];
+
+        for (int i = 0; i < chunks.length; i++) {
+
+            a[i] = new IBindingSet[chunks[i].length];
+
+            for (int j = 0; j < chunks[i].length; j++) {
+
+                a[i][j] = chunks[i][j].clone();
+
+            }
+
+        }
+
+        return a;
+
+    }
+
+    /**
+     * Verify that the external sort produces the same solutions in the same
+     * order as the {@link MemorySortOp} for each of the given run sizes.
+     */
+    private void assertSameSort(final ISortOrder<?>[] sortOrder,
+            final IBindingSet[][] chunks, final int... runSizes)
+            throws Exception {
+
+        final List<IBindingSet> expected = run(newSortOp(sortOrder, null, 1),
+                new BOpStats(), copy(chunks));
+
+        long n = 0;
+        for (IBindingSet[] a : chunks)
+            n += a.length;
+
+        assertEquals(n, expected.size());
+
+        for (int runSize : runSizes) {
+
+            for (int maxParallelRuns : new int[] { 1, 3 }) {
+
+                final SortOp op = newSortOp(sortOrder, runSize,
+                        maxParallelRuns);
+
+                final BOpStats stats = op.newStats();
+
+                final List<IBindingSet> actual = run(op, stats, copy(chunks));
+
+                assertEquals("runSize=" + runSize, expected, actual);
+
+                assertEquals(chunks.length, stats.chunksIn.get());
+                assertEquals(n, stats.unitsIn.get());
+                assertEquals(n, stats.unitsOut.get());
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Random solutions with a small value range so there are many ties and
+     * some solutions for which <code>x</code> is not bound.
+     */
+    private IBindingSet[][] newData(final Random r, final int nchunks) {
+
+        final IBindingSet[][] chunks = new IBindingSet[nchunks][];
+
+        int n = 0;
+
+        for (int i = 0; i < chunks.length; i++) {
+
+            chunks[i] = new IBindingSet[r.nextInt(60)];
+
+            for (int j = 0; j < chunks[i].length; j++) {
+
+                final int v = r.nextInt(12) - 1;
+
+                chunks[i][j] = solution(v < 0 ? null : iv(v), n++);
+
+            }
+
+        }
+
+        return chunks;
+
+    }
+
+    /**
+     * Unit test for a sort in a single invocation.
+     */
+    public void test_externalSort_singleChunk() throws Exception {
+
+        final IBindingSet[] data = new IBindingSet[] {//
+                solution(iv(3), 0),//
+                solution(iv(1), 1),//
+                solution(iv(4), 2),//
+                solution(iv(1), 3),//
+                solution(iv(5), 4),//
+                solution(null, 5),// x is not bound.
+                solution(iv(2), 6),//
+                solution(iv(6), 7),//
+        };
+
+        // unbound sorts first, then ties keep their arrival order.
+        assertEquals(
+                new IBindingSet[] { solution(null, 5), solution(iv(1), 1),
+                        solution(iv(1), 3), solution(iv(2), 6),
+                        solution(iv(3), 0), solution(iv(4), 2),
+                        solution(iv(5), 4), solution(iv(6), 7) },
+                run(newSortOp(new ISortOrder[] { new SortOrder(x, true) }, 3,
+                        2), new BOpStats(), new IBindingSet[][] { data })
+                        .toArray());
+
+    }
+
+    /**
+     * Unit test with no solutions.
+     */
+    public void test_externalSort_empty() throws Exception {
+
+        assertSameSort(new ISortOrder[] { new SortOrder(x, true) },
+                new IBindingSet[][] { new IBindingSet[0], new IBindingSet[0] },
+                1, 10);
+
+    }
+
+    /**
+     * Unit test where the solutions arrive over several invocations of the
+     * operator. The run sizes cover a single run on the JVM heap, many runs
+     * on the native heap and runs of a single solution.
+     */
+    public void test_externalSort_multipleInvocations() throws Exception {
+
+        final IBindingSet[][] chunks = newData(new Random(23), 12);
+
+        final int[] runSizes = new int[] { 1, 7, 64, 100000 };
+
+        assertSameSort(new ISortOrder[] { new SortOrder(x, true) }, chunks,
+                runSizes);
+
+        assertSameSort(new ISortOrder[] { new SortOrder(x, false),
+                new SortOrder(id, true) }, chunks, runSizes);
+
+    }
+
+    /**
+     * Unit test with a computed value expression. The computed value is
+     * written onto the native heap with the solution and is dropped from the
+     * output solutions.
+     */
+    public void test_externalSort_computedValueExpression() throws Exception {
+
+        final IVariable<IV> z = Var.var("z");
+
+        // ORDER BY DESC(?z) where ?z := ?x.
+        final ISortOrder<?>[] sortOrder = new ISortOrder[] { new SortOrder(
+                new Bind(z, x), false/* asc */) };
+
+        final IBindingSet[][] chunks = newData(new Random(7), 5);
+
+        assertSameSort(sortOrder, chunks, 5, 50);
+
+        for (IBindingSet bset : run(newSortOp(sortOrder, 5, 2),
+                new BOpStats(), copy(chunks))) {
+
+            assertFalse(bset.isBound(z));
+
+        }
+
+    }
+
+    /**
+     * Unit test with non-inline {@link IV}s whose materialized RDF Values
+     * determine the order. Those values must be restored when the runs are
+     * read back from the native heap.
+     */
+    public void test_externalSort_materializedIVs() throws Exception {
+
+        final BigdataValueFactory f = BigdataValueFactoryImpl
+                .getInstance(getName());
+
+        final String[] labels = new String[] { "e", "b", "d", "a", "c" };
+
+        final IConstant<IV>[] values = new IConstant[labels.length];
+
+        for (int i = 0; i < labels.length; i++) {
+
+            final BigdataLiteral lit = f.createLiteral(labels[i]);
+
+            // Note: termIds are NOT in the lexical order of the labels.
+            final IV<BigdataLiteral, ?> iv = new TermId<BigdataLiteral>(
+                    VTE.LITERAL, i + 1);
+
+            iv.setValue(lit);
+
+            values[i] = new Constant<IV>(iv);
+
+        }
+
+        final Random r = new Random(11);
+
+        final IBindingSet[][] chunks = new IBindingSet[4][];
+
+        int n = 0;
+
+        for (int i = 0; i < chunks.length; i++) {
+
+            chunks[i] = new IBindingSet[25];
+
+            for (int j = 0; j < chunks[i].length; j++) {
+
+                chunks[i][j] = solution(values[r.nextInt(values.length)],
+                        n++);
+
+            }
+
+        }
+
+        final ISortOrder<?>[] sortOrder = new ISortOrder[] { new SortOrder(x,
+                true) };
+
+        assertSameSort(sortOrder, chunks, 3, 16);
+
+        final List<IBindingSet> actual = run(newSortOp(sortOrder, 3, 2),
+                new BOpStats(), copy(chunks));
+
+        assertEquals(n, actual.size());
+
+        assertEquals("a", ((IV) actual.get(0).get(x).get()).getValue()
+                .stringValue());
+
+        assertEquals("e", ((IV) actual.get(n - 1).get(x).get()).getValue()
+                .stringValue());
+
+    }
+
+    /**
+     * Unit test where the memory budget of the query is much smaller than the
+     * estimated heap of the solutions to be sorted. The run size is never
+     * reached, so the budget alone forces the solutions onto the native heap.
+     */
+    public void test_externalSort_memoryBudget() throws Exception {
+
+        final IBindingSet[][] chunks = newData(new Random(31), 20);
+
+        final ISortOrder<?>[] sortOrder = new ISortOrder[] {
+                new SortOrder(x, false), new SortOrder(id, true) };
+
+        final List<IBindingSet> expected = run(newSortOp(sortOrder, null, 1),
+                new BOpStats(), copy(chunks));
+
+        long heapBytes = 0L;
+        for (IBindingSet[] a : chunks)
+            for (IBindingSet bset : a)
+                heapBytes += QueryMemoryBudget.estimateHeapBytes(bset);
+
+        final QueryMemoryBudget budget = new QueryMemoryBudget(heapBytes / 10);
+
+        for (int maxParallelRuns : new int[] { 1, 3 }) {
+
+            final List<IBindingSet> actual = run(newSortOp(sortOrder,
+                    100000/* runSize */, maxParallelRuns), new BOpStats(),
+                    copy(chunks), budget);
+
+            assertEquals(expected, actual);
+
+            assertTrue(budget.getMaxUsedBytes() <= budget.getBudgetBytes());
+
+        }
+
+    }
+
+    /**
+     * The run size and the #of parallel runs must be positive.
+     */
+    public void test_externalSort_badArgs() {
+
+        try {
+            newSortOp(new ISortOrder[] { new SortOrder(x, true) }, 0, 1);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        try {
+            newSortOp(new ISortOrder[] { new SortOrder(x, true) }, 10, 0);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+}
@@ -0,0 +1,391 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.FutureTask;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpEvaluationContext;
+import com.bigdata.bop.Bind;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.BlockingBufferWithStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.engine.MockRunningQuery;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.relation.accesspath.IAsynchronousIterator;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.ThickAsynchronousIterator;
+
+/**
+ * Unit tests for the {@link MemoryTopKSortOp}. The results are compared with
+ * those of the {@link MemorySortOp} truncated to the same #of solutions.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class TestMemoryTopKSortOp extends TestCase2 {
+
+    public TestMemoryTopKSortOp() {
+    }
+
+    public TestMemoryTopKSortOp(final String name) {
+        super(name);
+    }
+
+    private final IVariable<IV> x = Var.var("x");
+
+    private final IVariable<IV> id = Var.var("id");
+
+    private static IConstant<IV> iv(final int i) {
+
+        return new Constant<IV>(new XSDNumericIV(i));
+
+    }
+
+    /**
+     * Return a solution with the given value for <code>x</code> (unbound if
+     * negative) and a distinct <code>id</code> so solutions which are equal in
+     * the ORDER BY can be told apart.
+     */
+    private IBindingSet solution(final int xval, final int idval) {
+
+        final IBindingSet bset = new ListBindingSet();
+
+        if (xval >= 0)
+            bset.set(x, iv(xval));
+
+        bset.set(id, iv(idval));
+
+        return bset;
+
+    }
+
+    /**
+     * Return a {@link MemoryTopKSortOp} -or- a {@link MemorySortOp} if
+     * <i>topK</i> is <code>null</code>.
+     */
+    private SortOp newSortOp(final ISortOrder<?>[] sortOrder,
+            final Integer topK) {
+
+        return newSortOp(sortOrder, topK, 1/* maxParallel */);
+
+    }
+
+    /**
+     * Return a {@link MemoryTopKSortOp} -or- a {@link MemorySortOp} if
+     * <i>topK</i> is <code>null</code>.
+     */
+    private SortOp newSortOp(final ISortOrder<?>[] sortOrder,
+            final Integer topK, final int maxParallel) {
+
+        final List<NV> anns = new LinkedList<NV>();
+        anns.add(new NV(SortOp.Annotations.BOP_ID, 1));
+        anns.add(new NV(SortOp.Annotations.SORT_ORDER, sortOrder));
+        anns.add(new NV(SortOp.Annotations.VALUE_COMPARATOR,
+                new IVComparator()));
+        anns.add(new NV(SortOp.Annotations.EVALUATION_CONTEXT,
+                BOpEvaluationContext.CONTROLLER));
+        anns.add(new NV(SortOp.Annotations.PIPELINED, true));
+        anns.add(new NV(SortOp.Annotations.MAX_PARALLEL, maxParallel));
+        anns.add(new NV(PipelineOp.Annotations.REORDER_SOLUTIONS, false));
+        anns.add(new NV(SortOp.Annotations.LAST_PASS, true));
+
+        if (topK == null)
+            return new MemorySortOp(new BOp[] {}, NV.asMap(anns
+                    .toArray(new NV[anns.size()])));
+
+        anns.add(new NV(MemoryTopKSortOp.Annotations.TOP_K, topK));
+
+        return new MemoryTopKSortOp(new BOp[] {}, NV.asMap(anns
+                .toArray(new NV[anns.size()])));
+
+    }
+
+    /**
+     * Evaluate the operator once for each chunk (the last evaluation is the
+     * last invocation) and return the solutions written on the sink.
+     */
+    private List<IBindingSet> run(final SortOp op, final BOpStats stats,
+            final IBindingSet[][] chunks) throws Exception {
+
+        final IRunningQuery runningQuery = new MockRunningQuery(null/* fed */,
+                null/* indexManager */, new MockQueryContext(UUID.randomUUID()));
+
+        final List<IBindingSet> out = new LinkedList<IBindingSet>();
+
+        for (int i = 0; i < chunks.length; i++) {
+
+            final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                    new IBindingSet[][] { chunks[i] });
+
+            final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                    op, stats);
+
+            final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                    runningQuery, -1/* partitionId */, stats, op,
+                    i + 1 == chunks.length/* lastInvocation */, source, sink,
+                    null/* sink2 */);
+
+            final FutureTask<Void> ft = op.eval(context);
+
+            ft.run();
+
+            ft.get();
+
+            final IAsynchronousIterator<IBindingSet[]> itr = sink.iterator();
+
+            while (itr.hasNext()) {
+
+                for (IBindingSet bset : itr.next()) {
+
+                    out.add(bset);
+
+                }
+
+            }
+
+        }
+
+        return out;
+
+    }
+
+    /**
+     * Copy the solutions since the sort operators bind computed values on
+     * their source solutions.
+     */
+    private static IBindingSet[][] copy(final IBindingSet[][] chunks) {
+
+        final IBindingSet[][] a = new IBindingSet[chunks.length][];
+
+        for (int i = 0; i < chunks.length; i++) {
+
+            a[i] = new IBindingSet[chunks[i].length];
+
+            for (int j = 0; j < chunks[i].length; j++) {
+
+                a[i][j] = chunks[i][j].clone();
+
+            }
+
+        }
+
+        return a;
+
+    }
+
+    /**
+     * Verify that the top-K sort produces the first <code>k</code> solutions
+     * of the full sort, in the same order.
+     */
+    private void assertTopK(final ISortOrder<?>[] sortOrder, final int k,
+            final IBindingSet[][] chunks) throws Exception {
+
+        final List<IBindingSet> expected = run(newSortOp(sortOrder, null),
+                new BOpStats(), copy(chunks));
+
+        final SortOp op = newSortOp(sortOrder, k);
+
+        final BOpStats stats = op.newStats();
+
+        final List<IBindingSet> actual = run(op, stats, copy(chunks));
+
+        assertEquals(expected.subList(0, Math.min(k, expected.size())),
+                actual);
+
+        long n = 0;
+        for (IBindingSet[] a : chunks)
+            n += a.length;
+
+        assertEquals(chunks.length, stats.chunksIn.get());
+        assertEquals(n, stats.unitsIn.get());
+        assertEquals(actual.size(), stats.unitsOut.get());
+
+    }
+
+    /**
+     * Unit test for a top-K sort in a single invocation.
+     */
+    public void test_topK_singleChunk() throws Exception {
+
+        final IBindingSet[] data = new IBindingSet[] {//
+                solution(3, 0),//
+                solution(1, 1),//
+                solution(4, 2),//
+                solution(1, 3),//
+                solution(5, 4),//
+                solution(-1, 5),// x is not bound.
+                solution(2, 6),//
+                solution(6, 7),//
+        };
+
+        final ISortOrder<?>[] asc = new ISortOrder[] { new SortOrder(x, true) };
+
+        // unbound sorts first, then ties keep their arrival order.
+        assertEquals(
+                new IBindingSet[] { solution(-1, 5), solution(1, 1),
+                        solution(1, 3) },
+                run(newSortOp(asc, 3), new BOpStats(),
+                        new IBindingSet[][] { data }).toArray());
+
+        final ISortOrder<?>[] desc = new ISortOrder[] { new SortOrder(x, false) };
+
+        assertEquals(
+                new IBindingSet[] { solution(6, 7), solution(5, 4) },
+                run(newSortOp(desc, 2), new BOpStats(),
+                        new IBindingSet[][] { data }).toArray());
+
+    }
+
+    /**
+     * Unit test where the heap is never filled.
+     */
+    public void test_topK_fewerSolutionsThanK() throws Exception {
+
+        assertTopK(new ISortOrder[] { new SortOrder(x, true) }, 10,
+                new IBindingSet[][] { new IBindingSet[] { solution(2, 0),
+                        solution(1, 1), solution(2, 2) } });
+
+    }
+
+    /**
+     * Unit test for <code>k := 0</code>.
+     */
+    public void test_topK_zero() throws Exception {
+
+        assertTopK(new ISortOrder[] { new SortOrder(x, true) }, 0,
+                new IBindingSet[][] { new IBindingSet[] { solution(2, 0),
+                        solution(1, 1) } });
+
+    }
+
+    /**
+     * Unit test where the solutions arrive over several invocations of the
+     * operator and only the last invocation writes the solutions.
+     */
+    public void test_topK_multipleInvocations() throws Exception {
+
+        final Random r = new Random(17);
+
+        final IBindingSet[][] chunks = new IBindingSet[10][];
+
+        int n = 0;
+
+        for (int i = 0; i < chunks.length; i++) {
+
+            chunks[i] = new IBindingSet[1 + r.nextInt(50)];
+
+            for (int j = 0; j < chunks[i].length; j++) {
+
+                // a small value range so there are many ties.
+                chunks[i][j] = solution(r.nextInt(10) - 1, n++);
+
+            }
+
+        }
+
+        for (int k : new int[] { 1, 5, 17, n - 1, n, n + 1 }) {
+
+            assertTopK(new ISortOrder[] { new SortOrder(x, true) }, k, chunks);
+
+            assertTopK(new ISortOrder[] { new SortOrder(x, false),
+                    new SortOrder(id, true) }, k, chunks);
+
+        }
+
+    }
+
+    /**
+     * Unit test with a computed value expression. The computed value is
+     * dropped from the output solutions.
+     */
+    public void test_topK_computedValueExpression() throws Exception {
+
+        final IVariable<IV> z = Var.var("z");
+
+        // ORDER BY DESC(?z) where ?z := ?x.
+        final ISortOrder<?>[] sortOrder = new ISortOrder[] { new SortOrder(
+                new Bind(z, x), false/* asc */) };
+
+        final IBindingSet[] data = new IBindingSet[20];
+
+        for (int i = 0; i < data.length; i++) {
+
+            data[i] = solution(i % 7, i);
+
+        }
+
+        assertTopK(sortOrder, 4, new IBindingSet[][] { data });
+
+        final List<IBindingSet> actual = run(newSortOp(sortOrder, 2),
+                new BOpStats(), new IBindingSet[][] { copy(
+                        new IBindingSet[][] { data })[0] });
+
+        assertEquals(new IBindingSet[] { solution(6, 6), solution(6, 13) },
+                actual.toArray());
+
+    }
+
+    /**
+     * A top-K sort requires a non-negative <code>k</code> and may not be
+     * evaluated in parallel.
+     */
+    public void test_topK_badArgs() {
+
+        try {
+            newSortOp(new ISortOrder[] { new SortOrder(x, true) }, -1);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        try {
+            newSortOp(new ISortOrder[] { new SortOrder(x, true) }, 10,
+                    2/* maxParallel */);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+}
@@ -0,0 +1,278 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.solutions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ColumnarSolutionChunk;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.BlockingBufferWithStats;
+import com.bigdata.bop.engine.MockRunningQuery;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.ThickAsynchronousIterator;
+
+/**
+ * Unit tests for {@link ProjectionOp}.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestProjectionOp extends TestCase2 {
+
+    /**
+     *
+     */
+    public TestProjectionOp() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestProjectionOp(String name) {
+        super(name);
+    }
+
+    private final Var<?> x = Var.var("x");
+
+    private final Var<?> y = Var.var("y");
+
+    private final Var<?> z = Var.var("z");
+
+    /**
+     * Return solutions binding {@link #x}, {@link #y} and (except for every
+     * other solution) {@link #z}.
+     */
+    private IBindingSet[] newSolutions(final int n) {
+
+        final IBindingSet[] a = new IBindingSet[n];
+
+        for (int i = 0; i < n; i++) {
+
+            final ListBindingSet bset = new ListBindingSet();
+
+            bset.set(x, new Constant<Integer>(i));
+
+            bset.set(y, new Constant<String>("y" + i));
+
+            if (i % 2 == 0)
+                bset.set(z, new Constant<Integer>(-i));
+
+            a[i] = bset;
+
+        }
+
+        return a;
+
+    }
+
+    /**
+     * Return the expected projection of {@link #newSolutions(int)} onto
+     * {@link #z} and {@link #x}.
+     */
+    private IBindingSet[] expected(final int n) {
+
+        final IBindingSet[] a = new IBindingSet[n];
+
+        for (int i = 0; i < n; i++) {
+
+            final ListBindingSet bset = new ListBindingSet();
+
+            bset.set(x, new Constant<Integer>(i));
+
+            if (i % 2 == 0)
+                bset.set(z, new Constant<Integer>(-i));
+
+            a[i] = bset;
+
+        }
+
+        return a;
+
+    }
+
+    /**
+     * Run a {@link ProjectionOp} retaining {@link #z} and {@link #x} over the
+     * chunks and return the chunks written on the sink.
+     */
+    private List<IBindingSet[]> project(final boolean columnar,
+            final IBindingSet[][] chunks, final IBindingSet[] expected)
+            throws InterruptedException, ExecutionException {
+
+        final ProjectionOp op = new ProjectionOp(new BOp[] {},//
+                new NV(BOp.Annotations.BOP_ID, 1),//
+                new NV(ProjectionOp.Annotations.SELECT,
+                        new IVariable[] { z, x }),//
+                new NV(PipelineOp.Annotations.COLUMNAR, columnar)//
+        );
+
+        final BOpStats stats = op.newStats();
+
+        final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                op, stats);
+
+        final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                new MockRunningQuery(null/* fed */, null/* indexManager */),
+                -1/* partitionId */, stats, op/* op */,
+                false/* lastInvocation */,
+                new ThickAsynchronousIterator<IBindingSet[]>(chunks), sink,
+                null/* sink2 */);
+
+        final FutureTask<Void> ft = op.eval(context);
+
+        ft.run();
+
+        ft.get(); // verify nothing thrown.
+
+        final List<IBindingSet[]> out = new ArrayList<IBindingSet[]>();
+
+        final List<IBindingSet> all = new ArrayList<IBindingSet>();
+
+        final Iterator<IBindingSet[]> itr = sink.iterator();
+
+        while (itr.hasNext()) {
+
+            final IBindingSet[] a = itr.next();
+
+            out.add(a);
+
+            for (IBindingSet bset : a) {
+
+                all.add(bset);
+
+            }
+
+        }
+
+        assertEquals(expected.length, all.size());
+
+        for (int i = 0; i < expected.length; i++) {
+
+            assertEquals(expected[i], all.get(i));
+
+        }
+
+        assertEquals(chunks.length, stats.chunksIn.get());
+
+        assertEquals(expected.length, stats.unitsIn.get());
+
+        return out;
+
+    }
+
+    /**
+     * Unit test for the projection of each solution.
+     */
+    public void test_projection() throws InterruptedException,
+            ExecutionException {
+
+        final List<IBindingSet[]> out = project(false/* columnar */,
+                new IBindingSet[][] { newSolutions(5) }, expected(5));
+
+        for (IBindingSet bset : out.get(0)) {
+
+            assertFalse(ColumnarSolutionChunk.isView(bset));
+
+        }
+
+    }
+
+    /**
+     * Unit test for the projection of each chunk as a
+     * {@link ColumnarSolutionChunk}. The solutions are written on the sink as
+     * views of the projected columns, the source solutions are not modified,
+     * and a chunk of views is projected again without being copied.
+     */
+    public void test_projection_columnar() throws InterruptedException,
+            ExecutionException {
+
+        final IBindingSet[] a = newSolutions(4);
+
+        final IBindingSet[] b = newSolutions(7);
+
+        final List<IBindingSet[]> out = project(true/* columnar */,
+                new IBindingSet[][] { a, b }, concat(expected(4), expected(7)));
+
+        for (IBindingSet[] chunk : out) {
+
+            for (IBindingSet bset : chunk) {
+
+                assertTrue(ColumnarSolutionChunk.isView(bset));
+
+                assertFalse(bset.isBound(y));
+
+            }
+
+        }
+
+        // the source solutions were not modified.
+        for (IBindingSet bset : a) {
+            assertTrue(bset.isBound(y));
+        }
+
+        // the views are projected without being copied.
+        final IBindingSet[] views = new ColumnarSolutionChunk(newSolutions(3))
+                .toBindingSets();
+
+        final List<IBindingSet[]> out2 = project(true/* columnar */,
+                new IBindingSet[][] { views }, expected(3));
+
+        assertEquals(2, ColumnarSolutionChunk.viewOf(out2.get(0))
+                .getVariables().length);
+
+        // the source views still report their bindings for y.
+        for (IBindingSet bset : views) {
+            assertTrue(bset.isBound(y));
+        }
+
+    }
+
+    private static IBindingSet[] concat(final IBindingSet[] a,
+            final IBindingSet[] b) {
+
+        final IBindingSet[] c = new IBindingSet[a.length + b.length];
+
+        System.arraycopy(a, 0, c, 0, a.length);
+
+        System.arraycopy(b, 0, c, a.length, b.length);
+
+        return c;
+
+    }
+
+}
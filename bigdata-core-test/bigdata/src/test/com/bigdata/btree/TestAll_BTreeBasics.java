@@ -76,6 +76,10 @@ public class TestAll_BTreeBasics extends TestCase {
         suite.addTestSuite(TestLeafSplitShortestSeparatorKey.class);
         // test indexOf, keyAt, valueAt.
         suite.addTestSuite(TestLinearListMethods.class);
+        // test finger search for sequences of point operations.
+        suite.addTestSuite(TestFinger.class);
+        // test the optional key distribution sketch.
+        suite.addTestSuite(TestKeySketch.class);
         // test getCounter()
         suite.addTestSuite(TestIndexCounter.class);
 
@@ -102,6 +106,8 @@ public class TestAll_BTreeBasics extends TestCase {
         suite.addTestSuite(TestIncrementalWrite.class);
         // test copy-on-write scenarios.
         suite.addTestSuite(TestCopyOnWrite.class);
+        // test the shared cache of decoded node and leaf data records.
+        suite.addTestSuite(TestNodeDataCache.class);
 
         /*
          * test with delete markers.
@@ -128,6 +134,8 @@ public class TestAll_BTreeBasics extends TestCase {
         suite.addTestSuite(TestDirtyListener.class);
         // test the close/reopen protocol for releasing index buffers.
         suite.addTestSuite(TestReopen.class);
+        // test record-level compression of nodes and leaves.
+        suite.addTestSuite(TestBTreeRecordCompression.class);
         // test of storing null values under a key with persistence.
         suite.addTestSuite(TestNullValues.class);
         // test recycling of checkpoint, root block, etc.
@@ -154,9 +162,16 @@ public class TestAll_BTreeBasics extends TestCase {
          */
         suite.addTestSuite(TestBloomFilter.class);
         suite.addTestSuite(TestBTreeWithBloomFilter.class);
+        suite.addTestSuite(TestScalableBloomFilter.class);
 
         // Unit test for initialization of the B+Tree with non-default m.
         suite.addTestSuite(TestBTreeBranchingFactors.class);
+
+        // Bottom-up bulk build / merge of sorted data into a BTree.
+        suite.addTestSuite(TestBulkBTreeBuilder.class);
+
+        // Leaf readahead for range scans on RWStore journals.
+        suite.addTestSuite(TestLeafReadahead.class);
         
         return suite;
 
@@ -0,0 +1,137 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.io.compression.LZRecordCompressorFactory;
+import com.bigdata.rawstore.IRawStore;
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+
+/**
+ * Unit tests for record-level compression of the nodes and leaves of a
+ * {@link BTree} using
+ * {@link IndexMetadata.Options#BTREE_RECORD_COMPRESSOR_FACTORY}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestBTreeRecordCompression extends AbstractBTreeTestCase {
+
+    /**
+     * 
+     */
+    public TestBTreeRecordCompression() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestBTreeRecordCompression(String name) {
+        super(name);
+    }
+
+    /**
+     * Write the same data on a {@link BTree} with and without record
+     * compression, verify that the compressed tree uses less space on the
+     * store, and verify that the compressed tree can be reloaded from its
+     * checkpoint and has the same data.
+     */
+    public void test_lzRecordCompression() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final UUID indexUUID = UUID.randomUUID();
+
+        final BTree expected = BTree.create(store, newMetadata(indexUUID,
+                null/* factory */));
+
+        final IndexMetadata md = newMetadata(indexUUID,
+                LZRecordCompressorFactory.class.getName());
+
+        assertTrue(md.getBtreeRecordCompressorFactory() instanceof LZRecordCompressorFactory);
+
+        final BTree actual = BTree.create(store, md);
+
+        final KeyBuilder keyBuilder = new KeyBuilder();
+
+        for (int i = 0; i < 10000; i++) {
+
+            final byte[] key = keyBuilder.reset().append(i / 100).append(i)
+                    .getKey();
+
+            final byte[] val = ("value#" + (i % 50)).getBytes();
+
+            expected.insert(key, val);
+
+            actual.insert(key, val);
+
+        }
+
+        final long checkpointAddr = actual.writeCheckpoint();
+
+        expected.writeCheckpoint();
+
+        final long bytesCompressed = actual.getBtreeCounters().bytesWritten;
+
+        final long bytesUncompressed = expected.getBtreeCounters().bytesWritten;
+
+        if (log.isInfoEnabled())
+            log.info("compressed=" + bytesCompressed + ", uncompressed="
+                    + bytesUncompressed);
+
+        assertTrue(bytesCompressed < bytesUncompressed);
+
+        // reload the compressed tree from the store.
+        final BTree reloaded = BTree.load(store, checkpointAddr, true/* readOnly */);
+
+        assertTrue(reloaded.getIndexMetadata()
+                .getBtreeRecordCompressorFactory() instanceof LZRecordCompressorFactory);
+
+        assertSameBTree(expected, reloaded);
+
+    }
+
+    private IndexMetadata newMetadata(final UUID indexUUID,
+            final String factory) {
+
+        final Properties properties = new Properties();
+
+        if (factory != null)
+            properties.setProperty(
+                    IndexMetadata.Options.BTREE_RECORD_COMPRESSOR_FACTORY,
+                    factory);
+
+        final IndexMetadata md = new IndexMetadata(null/* indexManager */,
+                properties, null/* namespace */, indexUUID,
+                IndexTypeEnum.BTree);
+
+        md.setBranchingFactor(32);
+
+        return md;
+
+    }
+
+}
@@ -0,0 +1,727 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.log4j.Level;
+
+import com.bigdata.btree.keys.TestKeyBuilder;
+import com.bigdata.journal.BufferMode;
+import com.bigdata.journal.Journal;
+import com.bigdata.journal.Options;
+import com.bigdata.rawstore.IRawStore;
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+import com.bigdata.util.BytesUtil;
+
+/**
+ * Test suite for the {@link BulkBTreeBuilder}.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestBulkBTreeBuilder extends AbstractBTreeTestCase {
+
+    /**
+     *
+     */
+    public TestBulkBTreeBuilder() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestBulkBTreeBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * Return a new {@link IndexMetadata} for an index with the given
+     * branching factor.
+     */
+    private IndexMetadata newMetadata(final int m) {
+
+        final IndexMetadata md = new IndexMetadata(UUID.randomUUID());
+
+        md.setBranchingFactor(m);
+
+        return md;
+
+    }
+
+    /**
+     * Return <i>n</i> distinct keys in ascending order.
+     */
+    private byte[][] getSortedKeys(final int n) {
+
+        final byte[][] keys = new byte[n][];
+
+        int v = 0;
+
+        for (int i = 0; i < n; i++) {
+
+            v += 1 + r.nextInt(10);
+
+            keys[i] = TestKeyBuilder.asSortKey(v);
+
+        }
+
+        return keys;
+
+    }
+
+    /**
+     * Return a random value of up to <i>maxLen</i> bytes.
+     */
+    private byte[] getRandomValue(final int maxLen) {
+
+        final byte[] val = new byte[r.nextInt(maxLen + 1)];
+
+        r.nextBytes(val);
+
+        return val;
+
+    }
+
+    /**
+     * Verify the structure of the B+Tree, that each key may be found by lookup
+     * and by its index, and that the tuples agree with the ground truth.
+     */
+    private void assertBTree(final TreeMap<byte[], byte[]> expected,
+            final BTree btree) {
+
+        assertTrue(btree.dump(Level.ERROR, System.err));
+
+        assertEquals("entryCount", expected.size(), btree.getEntryCount());
+
+        int i = 0;
+
+        for (java.util.Map.Entry<byte[], byte[]> e : expected.entrySet()) {
+
+            assertEquals(i, btree.indexOf(e.getKey()));
+
+            assertTrue(btree.contains(e.getKey()));
+
+            assertTrue(BytesUtil.bytesEqual(e.getValue(),
+                    btree.lookup(e.getKey())));
+
+            i++;
+
+        }
+
+        final ITupleIterator<?> itr = btree.rangeIterator();
+
+        for (java.util.Map.Entry<byte[], byte[]> e : expected.entrySet()) {
+
+            assertTrue(itr.hasNext());
+
+            final ITuple<?> tuple = itr.next();
+
+            assertEquals(e.getKey(), tuple.getKey());
+
+            assertTrue(BytesUtil.bytesEqual(e.getValue(), tuple.getValue()));
+
+        }
+
+        assertFalse(itr.hasNext());
+
+    }
+
+    /**
+     * Return a new map using the unsigned byte[] order for the keys.
+     */
+    private static TreeMap<byte[], byte[]> newMap() {
+
+        return new TreeMap<byte[], byte[]>(
+                BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+    }
+
+    /**
+     * Bulk build an empty {@link BTree} and compare it with the same
+     * {@link BTree} built by inserting the same tuples.
+     */
+    public void test_buildEmptyBTree() {
+
+        final int[] branchingFactors = new int[] { 3, 4, 5, 10, 32 };
+
+        final double[] fillFactors = new double[] { .01, .5,
+                BulkBTreeBuilder.DEFAULT_FILL_FACTOR, 1d };
+
+        for (int m : branchingFactors) {
+
+            for (double fillFactor : fillFactors) {
+
+                for (int n : new int[] { 0, 1, 2, m - 1, m, m + 1, 2 * m + 1,
+                        m * m + 1, 1000 + r.nextInt(1000) }) {
+
+                    doBuildTest(m, fillFactor, n);
+
+                }
+
+            }
+
+        }
+
+    }
+
+    private void doBuildTest(final int m, final double fillFactor, final int n) {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final IndexMetadata md = newMetadata(m);
+
+        final BTree expected = BTree.create(store, md.clone());
+
+        final BTree actual = BTree.create(store, md.clone());
+
+        final byte[][] keys = getSortedKeys(n);
+
+        final byte[][] vals = new byte[n][];
+
+        final TreeMap<byte[], byte[]> map = newMap();
+
+        for (int i = 0; i < n; i++) {
+
+            vals[i] = getRandomValue(12);
+
+            expected.insert(keys[i], vals[i]);
+
+            map.put(keys[i], vals[i]);
+
+        }
+
+        final BulkBTreeBuilder builder = new BulkBTreeBuilder(actual,
+                fillFactor);
+
+        assertEquals(n, builder.load(keys, vals));
+
+        assertBTree(map, actual);
+
+        assertSameBTree(expected, actual);
+
+        if (n > m) {
+
+            /*
+             * Each leaf other than the last two has the target #of tuples.
+             */
+            final int target = builder.getTargetChildCount();
+
+            assertTrue(target >= actual.minChildren && target <= m);
+
+            assertTrue(actual.getLeafCount() <= n / target + 1);
+
+            assertTrue(actual.getLeafCount() >= n / m);
+
+        }
+
+        // The B+Tree is mutable: insert and remove more tuples.
+        for (int i = 0; i < 100; i++) {
+
+            final byte[] key = TestKeyBuilder.asSortKey(r.nextInt(n * 10 + 10));
+
+            if (r.nextBoolean()) {
+
+                final byte[] val = getRandomValue(12);
+
+                expected.insert(key, val);
+
+                actual.insert(key, val);
+
+                map.put(key, val);
+
+            } else {
+
+                expected.remove(key);
+
+                actual.remove(key);
+
+                map.remove(key);
+
+            }
+
+        }
+
+        assertBTree(map, actual);
+
+        assertSameBTree(expected, actual);
+
+        // Checkpoint and reload.
+        final long addrCheckpoint = actual.writeCheckpoint();
+
+        final BTree reloaded = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+        assertBTree(map, reloaded);
+
+        assertSameBTree(expected, reloaded);
+
+    }
+
+    /**
+     * Merge a sorted batch into an existing {@link BTree}. Tuples in the batch
+     * replace existing tuples having the same key.
+     */
+    public void test_merge() {
+
+        for (int m : new int[] { 3, 4, 16 }) {
+
+            for (int trial = 0; trial < 5; trial++) {
+
+                doMergeTest(m, r.nextInt(1000), r.nextInt(1000));
+
+            }
+
+        }
+
+    }
+
+    private void doMergeTest(final int m, final int nexisting, final int nbatch) {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final IndexMetadata md = newMetadata(m);
+
+        final BTree expected = BTree.create(store, md.clone());
+
+        final BTree actual = BTree.create(store, md.clone());
+
+        final TreeMap<byte[], byte[]> map = newMap();
+
+        for (int i = 0; i < nexisting; i++) {
+
+            final byte[] key = TestKeyBuilder.asSortKey(r.nextInt(2000));
+
+            final byte[] val = getRandomValue(12);
+
+            expected.insert(key, val);
+
+            actual.insert(key, val);
+
+            map.put(key, val);
+
+        }
+
+        // some of the existing tuples are committed.
+        if (r.nextBoolean())
+            actual.writeCheckpoint();
+
+        final TreeMap<byte[], byte[]> batch = newMap();
+
+        for (int i = 0; i < nbatch; i++) {
+
+            batch.put(TestKeyBuilder.asSortKey(r.nextInt(2000)),
+                    getRandomValue(12));
+
+        }
+
+        for (java.util.Map.Entry<byte[], byte[]> e : batch.entrySet()) {
+
+            expected.insert(e.getKey(), e.getValue());
+
+            map.put(e.getKey(), e.getValue());
+
+        }
+
+        new BulkBTreeBuilder(actual).load(batch.keySet().toArray(
+                new byte[0][]), batch.values().toArray(new byte[0][]));
+
+        assertBTree(map, actual);
+
+        assertSameBTree(expected, actual);
+
+        final long addrCheckpoint = actual.writeCheckpoint();
+
+        assertBTree(map, BTree.load(store, addrCheckpoint, true/* readOnly */));
+
+    }
+
+    /**
+     * Merge a batch read from another index using an {@link ITupleIterator}.
+     * The delete markers and version timestamps of the tuples in the batch
+     * and in the existing index are preserved.
+     */
+    public void test_merge_deleteMarkersAndVersionTimestamps() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final IndexMetadata md = newMetadata(4);
+
+        md.setDeleteMarkers(true);
+
+        md.setVersionTimestamps(true);
+
+        final BTree expected = BTree.create(store, md.clone());
+
+        final BTree actual = BTree.create(store, md.clone());
+
+        final BTree src = BTree.create(store, md.clone());
+
+        for (int i = 0; i < 500; i++) {
+
+            final byte[] key = TestKeyBuilder.asSortKey(r.nextInt(1000));
+
+            final boolean delete = r.nextInt(4) == 0;
+
+            final byte[] val = delete ? null : getRandomValue(12);
+
+            final long timestamp = 1 + r.nextInt(100);
+
+            expected.insert(key, val, delete, false/* putIfAbsent */,
+                    timestamp, null/* tuple */);
+
+            actual.insert(key, val, delete, false/* putIfAbsent */,
+                    timestamp, null/* tuple */);
+
+        }
+
+        for (int i = 0; i < 500; i++) {
+
+            final byte[] key = TestKeyBuilder.asSortKey(r.nextInt(1000));
+
+            final boolean delete = r.nextInt(4) == 0;
+
+            final byte[] val = delete ? null : getRandomValue(12);
+
+            final long timestamp = 101 + r.nextInt(100);
+
+            src.insert(key, val, delete, false/* putIfAbsent */, timestamp,
+                    null/* tuple */);
+
+            expected.insert(key, val, delete, false/* putIfAbsent */,
+                    timestamp, null/* tuple */);
+
+        }
+
+        new BulkBTreeBuilder(actual).load(src.rangeIterator(null, null,
+                0/* capacity */, IRangeQuery.DEFAULT | IRangeQuery.DELETED,
+                null/* filter */));
+
+        assertTrue(actual.dump(Level.ERROR, System.err));
+
+        /*
+         * Note: assertSameBTree() is not used since the entry count includes
+         * the deleted tuples.
+         */
+        assertSameTuples(expected, actual);
+
+        // The version timestamps are aggregated by the nodes.
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+
+        final ITupleIterator<?> itr = actual.rangeIterator(null, null,
+                0/* capacity */, IRangeQuery.DEFAULT | IRangeQuery.DELETED,
+                null/* filter */);
+
+        while (itr.hasNext()) {
+
+            final long timestamp = itr.next().getVersionTimestamp();
+
+            min = Math.min(min, timestamp);
+
+            max = Math.max(max, timestamp);
+
+        }
+
+        final AbstractNode<?> root = actual.getRoot();
+
+        assertFalse(root.isLeaf());
+
+        assertEquals(min, root.getMinimumVersionTimestamp());
+
+        assertEquals(max, root.getMaximumVersionTimestamp());
+
+    }
+
+    /**
+     * Verify the tuples (including deleted tuples) and their version
+     * timestamps.
+     */
+    private void assertSameTuples(final BTree expected, final BTree actual) {
+
+        final int flags = IRangeQuery.DEFAULT | IRangeQuery.DELETED;
+
+        final ITupleIterator<?> eitr = expected.rangeIterator(null, null,
+                0/* capacity */, flags, null/* filter */);
+
+        final ITupleIterator<?> aitr = actual.rangeIterator(null, null,
+                0/* capacity */, flags, null/* filter */);
+
+        long n = 0;
+
+        while (eitr.hasNext()) {
+
+            assertTrue(aitr.hasNext());
+
+            final ITuple<?> e = eitr.next();
+
+            final ITuple<?> a = aitr.next();
+
+            assertEquals(e.getKey(), a.getKey());
+
+            assertEquals(e.isDeletedVersion(), a.isDeletedVersion());
+
+            assertEquals(e.getVersionTimestamp(), a.getVersionTimestamp());
+
+            if (!e.isDeletedVersion())
+                assertTrue(BytesUtil.bytesEqual(e.getValue(), a.getValue()));
+
+            n++;
+
+        }
+
+        assertFalse(aitr.hasNext());
+
+        assertEquals(n, actual.getEntryCount());
+
+    }
+
+    /**
+     * Large values are written as raw records and the raw records of the
+     * replaced tuples are deleted.
+     */
+    public void test_merge_rawRecords() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final IndexMetadata md = newMetadata(5);
+
+        md.setRawRecords(true);
+
+        md.setMaxRecLen(8);
+
+        final BTree actual = BTree.create(store, md.clone());
+
+        final TreeMap<byte[], byte[]> map = newMap();
+
+        for (int i = 0; i < 300; i++) {
+
+            final byte[] key = TestKeyBuilder.asSortKey(r.nextInt(600));
+
+            final byte[] val = getRandomValue(20);
+
+            actual.insert(key, val);
+
+            map.put(key, val);
+
+        }
+
+        final long rawRecordsBefore = actual.getBtreeCounters().bytesOnStore_rawRecords
+                .get();
+
+        final TreeMap<byte[], byte[]> batch = newMap();
+
+        for (int i = 0; i < 300; i++) {
+
+            batch.put(TestKeyBuilder.asSortKey(r.nextInt(600)),
+                    getRandomValue(20));
+
+        }
+
+        map.putAll(batch);
+
+        new BulkBTreeBuilder(actual).load(batch.keySet().toArray(
+                new byte[0][]), batch.values().toArray(new byte[0][]));
+
+        assertBTree(map, actual);
+
+        // the bytes on the store for the raw records agree with the tuples.
+        long nbytes = 0L;
+
+        for (byte[] val : map.values()) {
+
+            if (val.length > md.getMaxRecLen())
+                nbytes += val.length;
+
+        }
+
+        assertTrue(rawRecordsBefore > 0);
+
+        assertEquals(nbytes, actual.getBtreeCounters().bytesOnStore_rawRecords
+                .get());
+
+        final long addrCheckpoint = actual.writeCheckpoint();
+
+        assertBTree(map, BTree.load(store, addrCheckpoint, true/* readOnly */));
+
+    }
+
+    /**
+     * A batch whose keys are not strictly ascending is rejected and the
+     * {@link BTree} is not changed.
+     */
+    public void test_keysNotOrdered() {
+
+        final BTree btree = BTree.create(new SimpleMemoryRawStore(),
+                newMetadata(3));
+
+        btree.insert(TestKeyBuilder.asSortKey(1), new byte[] { 1 });
+
+        final byte[][] keys = new byte[][] { TestKeyBuilder.asSortKey(3),
+                TestKeyBuilder.asSortKey(2) };
+
+        try {
+            new BulkBTreeBuilder(btree).load(keys, null/* vals */);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        // duplicate keys.
+        keys[1] = keys[0];
+
+        try {
+            new BulkBTreeBuilder(btree).load(keys, null/* vals */);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        assertEquals(1, btree.getEntryCount());
+
+        assertTrue(Arrays.equals(new byte[] { 1 },
+                btree.lookup(TestKeyBuilder.asSortKey(1))));
+
+    }
+
+    /**
+     * The bloom filter of the new {@link BTree} reports all keys.
+     */
+    public void test_bloomFilter() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final IndexMetadata md = newMetadata(8);
+
+        md.setBloomFilterFactory(BloomFilterFactory.DEFAULT);
+
+        final BTree btree = BTree.create(store, md);
+
+        final byte[][] keys = getSortedKeys(1000);
+
+        new BulkBTreeBuilder(btree).load(keys, null/* vals */);
+
+        assertNotNull(btree.getBloomFilter());
+
+        for (byte[] key : keys) {
+
+            assertTrue(btree.getBloomFilter().contains(key));
+
+            assertTrue(btree.contains(key));
+
+        }
+
+        final long addrCheckpoint = btree.writeCheckpoint();
+
+        final BTree reloaded = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+        assertNotNull(reloaded.getBloomFilter());
+
+        for (byte[] key : keys) {
+
+            assertTrue(reloaded.contains(key));
+
+        }
+
+    }
+
+    /**
+     * Merge into a committed index on the RWStore. The nodes and leaves of
+     * the old {@link BTree} are released and the index is committed and
+     * re-read from the store.
+     */
+    public void test_merge_RWStore() {
+
+        final Properties properties = new Properties();
+
+        properties.setProperty(Options.BUFFER_MODE, BufferMode.DiskRW
+                .toString());
+
+        properties.setProperty(Options.CREATE_TEMP_FILE, "true");
+
+        final Journal store = new Journal(properties);
+
+        try {
+
+            final String name = "test";
+
+            store.registerIndex(name, newMetadata(8));
+
+            BTree btree = store.getIndex(name);
+
+            final TreeMap<byte[], byte[]> map = newMap();
+
+            for (int i = 0; i < 2000; i++) {
+
+                final byte[] key = TestKeyBuilder.asSortKey(r.nextInt(5000));
+
+                final byte[] val = getRandomValue(12);
+
+                btree.insert(key, val);
+
+                map.put(key, val);
+
+            }
+
+            store.commit();
+
+            btree = store.getIndex(name);
+
+            final TreeMap<byte[], byte[]> batch = newMap();
+
+            for (int i = 0; i < 2000; i++) {
+
+                batch.put(TestKeyBuilder.asSortKey(r.nextInt(5000)),
+                        getRandomValue(12));
+
+            }
+
+            map.putAll(batch);
+
+            new BulkBTreeBuilder(btree).load(batch.keySet().toArray(
+                    new byte[0][]), batch.values().toArray(new byte[0][]));
+
+            assertBTree(map, btree);
+
+            // The old nodes and leaves (except the old root) were released.
+            assertTrue(btree.getBtreeCounters().bytesReleased > 0);
+
+            final long commitTime = store.commit();
+
+            assertTrue(commitTime != 0L);
+
+            assertBTree(map, (BTree) store.getIndexWithCommitRecord(name,
+                    store.getCommitRecord(commitTime)));
+
+        } finally {
+
+            store.destroy();
+
+        }
+
+    }
+
+}
@@ -27,6 +27,10 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.btree;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
 import junit.framework.TestCase2;
 
 import com.bigdata.btree.keys.IKeyBuilder;
@@ -266,6 +270,90 @@ public class TestBytesUtil extends TestCase2 {
         
     }
     
+    /**
+     * Test of unsigned byte[] comparison for slices of heap and direct
+     * {@link ByteBuffer}s against the byte[] comparison of the same slices.
+     */
+    public void test_compareBytesWithOffsetAndLength_byteBuffer() {
+
+        final Random r = new Random();
+
+        for (int trial = 0; trial < 1000; trial++) {
+
+            // short arrays over a small alphabet so we get ties and prefixes.
+            final byte[] a = new byte[r.nextInt(24)];
+            final byte[] b = new byte[r.nextInt(24)];
+            for (int i = 0; i < a.length; i++)
+                a[i] = (byte) (r.nextInt(3) - 1);
+            for (int i = 0; i < b.length; i++)
+                b[i] = (byte) (r.nextInt(3) - 1);
+            if (r.nextBoolean() && a.length <= b.length)
+                System.arraycopy(a, 0, b, 0, a.length);
+
+            final int aoff = a.length == 0 ? 0 : r.nextInt(a.length);
+            final int alen = r.nextInt(a.length - aoff + 1);
+            final int boff = b.length == 0 ? 0 : r.nextInt(b.length);
+            final int blen = r.nextInt(b.length - boff + 1);
+
+            final int expected = Integer.signum(BytesUtil
+                    .compareBytesWithLenAndOffset(aoff, alen, a, boff, blen, b));
+
+            final ByteBuffer heapA = wrap(a, false, ByteOrder.BIG_ENDIAN);
+            final ByteBuffer directA = wrap(a, true, ByteOrder.BIG_ENDIAN);
+            final ByteBuffer littleA = wrap(a, true, ByteOrder.LITTLE_ENDIAN);
+
+            for (ByteBuffer bb : new ByteBuffer[] {
+                    wrap(b, false, ByteOrder.BIG_ENDIAN),
+                    wrap(b, true, ByteOrder.BIG_ENDIAN),
+                    wrap(b, true, ByteOrder.LITTLE_ENDIAN) }) {
+
+                assertEquals(expected, Integer.signum(BytesUtil
+                        .compareBytesWithLenAndOffset(aoff, alen, a, boff,
+                                blen, bb)));
+
+                for (ByteBuffer ba : new ByteBuffer[] { heapA, directA, littleA }) {
+
+                    assertEquals(expected, Integer.signum(BytesUtil
+                            .compareBytesWithLenAndOffset(aoff, alen, ba,
+                                    boff, blen, bb)));
+
+                    // the buffer state is not changed.
+                    assertEquals(1, ba.position());
+                    assertEquals(1, bb.position());
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Return a buffer whose slice starting at index zero has the data in
+     * <i>a</i>. The buffer has a non-zero array offset (when it is a heap
+     * buffer) and a non-zero position, neither of which may influence the
+     * comparison.
+     */
+    private static ByteBuffer wrap(final byte[] a, final boolean direct,
+            final ByteOrder order) {
+
+        final ByteBuffer tmp = direct ? ByteBuffer.allocateDirect(a.length + 4)
+                : ByteBuffer.allocate(a.length + 4);
+
+        tmp.position(3);
+
+        final ByteBuffer b = tmp.slice().order(order);
+
+        for (int i = 0; i < a.length; i++)
+            b.put(i, a[i]);
+
+        b.position(1);
+
+        return b;
+
+    }
+
     /**
      * Test method that returns the length of the longest common prefix for two
      * keys.
@@ -0,0 +1,294 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+*/
+package com.bigdata.btree;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+import com.bigdata.util.BytesUtil;
+
+/**
+ * Test suite for the {@link Finger}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestFinger extends AbstractBTreeTestCase {
+
+    /**
+     * 
+     */
+    public TestFinger() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestFinger(String name) {
+        super(name);
+    }
+
+    /**
+     * Return a B+Tree backed by a store, so dirty nodes are written onto the
+     * store when they are evicted and then copied on write when they are
+     * modified again.
+     */
+    private BTree newBTree(final int branchingFactor) {
+
+        final IndexMetadata metadata = new IndexMetadata(UUID.randomUUID());
+
+        metadata.setBranchingFactor(branchingFactor);
+
+        return BTree.create(new SimpleMemoryRawStore(), metadata);
+
+    }
+
+    /**
+     * Lookup and contains for a sorted sequence of keys (including keys which
+     * are not in the index) using a finger agree with a search from the root.
+     * Most searches resume from a node on the finger.
+     */
+    public void test_lookup_sortedKeys() {
+
+        final BTree btree = newBTree(4);
+
+        // the multiples of three in [0:2997].
+        for (int i = 0; i < 1000; i++) {
+
+            btree.insert(i2k(i * 3), i2k(i));
+
+        }
+
+        final Finger finger = new Finger(btree);
+
+        for (int i = -10; i < 3010; i++) {
+
+            final byte[] key = i2k(i);
+
+            final byte[] expected = btree.lookup(key);
+
+            assertEquals(expected, btree.lookup(key, finger));
+
+            assertEquals(expected != null, btree.contains(key, finger));
+
+        }
+
+        if (log.isInfoEnabled())
+            log.info("rootCount=" + finger.getRootCount() + ", fingerCount="
+                    + finger.getFingerCount());
+
+        assertTrue(finger.getFingerCount() > 10 * finger.getRootCount());
+
+    }
+
+    /**
+     * Lookups using a finger for keys in a random order are correct (the
+     * finger is just less effective).
+     */
+    public void test_lookup_randomKeys() {
+
+        final BTree btree = newBTree(5);
+
+        final Random r = new Random();
+
+        for (int i = 0; i < 1000; i++) {
+
+            btree.insert(i2k(r.nextInt(5000)), i2k(i));
+
+        }
+
+        final Finger finger = new Finger(btree);
+
+        for (int i = 0; i < 5000; i++) {
+
+            final byte[] key = i2k(r.nextInt(5010) - 5);
+
+            assertEquals(btree.lookup(key), btree.lookup(key, finger));
+
+        }
+
+        assertEquals(5000, finger.getRootCount() + finger.getFingerCount());
+
+    }
+
+    /**
+     * Inserts using a finger for sorted keys. The B+Tree is checkpointed from
+     * time to time, so the nodes on the finger are replaced by copy-on-write,
+     * and the leaves on the finger are split as the keys are inserted.
+     */
+    public void test_insert_sortedKeys() {
+
+        doInsertTest(false/* randomOrder */);
+
+    }
+
+    /**
+     * Inserts using a finger for keys in a random order.
+     */
+    public void test_insert_randomKeys() {
+
+        doInsertTest(true/* randomOrder */);
+
+    }
+
+    private void doInsertTest(final boolean randomOrder) {
+
+        final BTree btree = newBTree(4);
+
+        final Random r = new Random();
+
+        final Map<byte[], byte[]> groundTruth = new TreeMap<byte[], byte[]>(
+                BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+        final Finger finger = new Finger(btree);
+
+        final int[] a = new int[2000];
+
+        for (int i = 0; i < a.length; i++) {
+
+            a[i] = r.nextInt(4000);
+
+        }
+
+        if (!randomOrder)
+            Arrays.sort(a);
+
+        for (int i = 0; i < a.length; i++) {
+
+            final byte[] key = i2k(a[i]);
+
+            final byte[] val = i2k(i);
+
+            final byte[] expected = groundTruth.put(key, val);
+
+            if (i % 2 == 0) {
+
+                assertEquals(expected, btree.insert(key, val, finger));
+
+            } else {
+
+                // putIfAbsent does not replace the old value.
+                if (expected != null)
+                    groundTruth.put(key, expected);
+
+                assertEquals(expected, btree.putIfAbsent(key, val, finger));
+
+            }
+
+            if (r.nextInt(100) == 0) {
+
+                // all nodes become clean and will be copied on write.
+                btree.writeCheckpoint();
+
+            }
+
+        }
+
+        assertTrue(btree.dump(System.err));
+
+        assertEquals(groundTruth.size(), btree.getEntryCount());
+
+        for (Map.Entry<byte[], byte[]> e : groundTruth.entrySet()) {
+
+            assertEquals(e.getValue(), btree.lookup(e.getKey()));
+
+        }
+
+        if (log.isInfoEnabled())
+            log.info("randomOrder=" + randomOrder + ", rootCount="
+                    + finger.getRootCount() + ", fingerCount="
+                    + finger.getFingerCount());
+
+    }
+
+    /**
+     * Searches using a finger remain correct when keys are removed without
+     * the finger (leaves are joined and deleted).
+     */
+    public void test_lookup_afterRemove() {
+
+        final BTree btree = newBTree(4);
+
+        for (int i = 0; i < 1000; i++) {
+
+            btree.insert(i2k(i), i2k(i));
+
+        }
+
+        final Finger finger = new Finger(btree);
+
+        final Random r = new Random();
+
+        for (int i = 0; i < 1000; i++) {
+
+            assertEquals(i2k(i), btree.lookup(i2k(i), finger));
+
+            // remove some keys ahead of the finger.
+            final int k = i + 1 + r.nextInt(20);
+
+            if (k < 1000 && btree.contains(i2k(k)) && r.nextInt(3) == 0) {
+
+                btree.remove(i2k(k));
+
+                btree.insert(i2k(k), i2k(k));
+
+            }
+
+            // remove some keys behind the finger.
+            if (i > 0 && r.nextBoolean()) {
+
+                btree.remove(i2k(r.nextInt(i)));
+
+            }
+
+        }
+
+        assertTrue(btree.dump(System.err));
+
+    }
+
+    /**
+     * A finger may not be used with a different B+Tree.
+     */
+    public void test_wrongBTree() {
+
+        final BTree btree1 = newBTree(4);
+
+        final BTree btree2 = newBTree(4);
+
+        try {
+            btree2.lookup(i2k(1), new Finger(btree1));
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+}
@@ -0,0 +1,391 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.UUID;
+
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.rawstore.IRawStore;
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+
+/**
+ * Test suite for the {@link KeySketch}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestKeySketch extends AbstractBTreeTestCase {
+
+    /**
+     * 
+     */
+    public TestKeySketch() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestKeySketch(String name) {
+        super(name);
+    }
+
+    /**
+     * Return a B+Tree with a key sketch using the default configuration (three
+     * leading components of 8 bytes each).
+     */
+    private BTree newBTree(final IRawStore store) {
+
+        final IndexMetadata metadata = new IndexMetadata(UUID.randomUUID());
+
+        metadata.setBranchingFactor(32);
+
+        metadata.setKeySketchFactory(new KeySketchFactory());
+
+        return BTree.create(store, metadata);
+
+    }
+
+    /**
+     * Return a key having three <code>long</code> components.
+     */
+    private static byte[] key(final long a, final long b, final long c) {
+
+        return new KeyBuilder(24).append(a).append(b).append(c).getKey();
+
+    }
+
+    /**
+     * Assert that the estimate lies within the given relative error of the
+     * expected value.
+     */
+    private static void assertEstimate(final long expected,
+            final long actual, final double error) {
+
+        if (Math.abs(actual - expected) > expected * error)
+            fail("expected=" + expected + ", actual=" + actual);
+
+    }
+
+    /**
+     * The distinct counts for each leading key prefix are within a few
+     * percent of the exact counts for both small (linear counting) and large
+     * cardinalities.
+     */
+    public void test_distinctCounts() {
+
+        final BTree btree = newBTree(new SimpleMemoryRawStore());
+
+        // 200 x 10 x 20 keys: 200, 2000 and 40000 distinct prefixes.
+        for (int a = 0; a < 200; a++) {
+            for (int b = 0; b < 10; b++) {
+                for (int c = 0; c < 20; c++) {
+                    btree.insert(key(a * 7919L, b, c), null);
+                }
+            }
+        }
+
+        final KeySketch sketch = btree.getKeySketch();
+
+        assertNotNull(sketch);
+
+        assertEquals(3, sketch.getComponentCount());
+
+        assertEstimate(200, sketch.getDistinctCount(1), .05);
+        assertEstimate(2000, sketch.getDistinctCount(2), .1);
+        assertEstimate(40000, sketch.getDistinctCount(3), .1);
+
+        // re-inserting existing keys does not change the estimates.
+        final long before = sketch.getDistinctCount(3);
+        for (int a = 0; a < 200; a++) {
+            btree.insert(key(a * 7919L, 0, 0), null);
+        }
+        assertEquals(before, sketch.getDistinctCount(3));
+
+        try {
+            sketch.getDistinctCount(0);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        try {
+            sketch.getDistinctCount(4);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * The histogram is built when the B+Tree is checkpointed, is not rebuilt
+     * until the #of entries changes by more than
+     * {@link KeySketch#REBUILD_RATIO}, and estimates the fraction of the
+     * tuples in a key range to within a bucket.
+     */
+    public void test_histogram() {
+
+        final BTree btree = newBTree(new SimpleMemoryRawStore());
+
+        final int n = 10000;
+
+        for (int i = 0; i < n; i++) {
+            btree.insert(key(i, 0, 0), null);
+        }
+
+        final KeySketch sketch = btree.getKeySketch();
+
+        // not built until the checkpoint.
+        assertEquals(-1L, sketch.getHistogramEntryCount());
+        assertEquals(-1d, sketch.getRangeFraction(null, null));
+
+        btree.writeCheckpoint();
+
+        assertEquals(n, sketch.getHistogramEntryCount());
+        assertFalse(sketch.isDirty());
+
+        assertEquals(1d, sketch.getRangeFraction(null, null));
+
+        final double bucket = 1d / KeySketchFactory.DEFAULT_BUCKETS;
+
+        final int[][] ranges = new int[][] { { 0, 5000 }, { 1000, 2000 },
+                { 2500, 9999 }, { 4000, 4050 } };
+
+        for (int[] range : ranges) {
+
+            final double expected = (range[1] - range[0]) / (double) n;
+
+            final double actual = sketch.getRangeFraction(key(range[0], 0, 0),
+                    key(range[1], 0, 0));
+
+            if (Math.abs(actual - expected) > bucket)
+                fail("range=[" + range[0] + ":" + range[1] + "), expected="
+                        + expected + ", actual=" + actual);
+
+        }
+
+        // an empty key range.
+        assertEquals(0d, sketch.getRangeFraction(key(10, 0, 0), key(5, 0, 0)));
+
+        // a few more entries do not trigger a rebuild.
+        for (int i = n; i < n + 10; i++) {
+            btree.insert(key(i, 0, 0), null);
+        }
+        btree.writeCheckpoint();
+        assertEquals(n, sketch.getHistogramEntryCount());
+
+        // but 20% more entries do.
+        for (int i = n + 10; i < n + n / 5; i++) {
+            btree.insert(key(i, 0, 0), null);
+        }
+        btree.writeCheckpoint();
+        assertEquals(n + n / 5, sketch.getHistogramEntryCount());
+
+    }
+
+    /**
+     * The sketch is written with the {@link Checkpoint} record and read back
+     * with the B+Tree. A B+Tree without a sketch still writes the prior
+     * checkpoint record version.
+     */
+    public void test_restartSafe() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final BTree btree = newBTree(store);
+
+        for (int i = 0; i < 1000; i++) {
+            btree.insert(key(i % 100, i, 0), null);
+        }
+
+        final long addrCheckpoint = btree.writeCheckpoint();
+
+        final KeySketch expected = btree.getKeySketch();
+
+        assertTrue(btree.getCheckpoint().getKeySketchAddr() != 0L);
+        assertEquals(expected.getAddr(), btree.getCheckpoint()
+                .getKeySketchAddr());
+
+        final BTree reloaded = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+        final KeySketch actual = reloaded.getKeySketch();
+
+        assertNotNull(actual);
+        assertNotSame(expected, actual);
+        assertEquals(expected.getDistinctCount(1), actual.getDistinctCount(1));
+        assertEquals(expected.getDistinctCount(2), actual.getDistinctCount(2));
+        assertEquals(expected.getHistogramEntryCount(), actual
+                .getHistogramEntryCount());
+        assertEquals(expected.getRangeFraction(key(10, 0, 0), key(50, 0, 0)),
+                actual.getRangeFraction(key(10, 0, 0), key(50, 0, 0)));
+
+        // exposed by the statistics.
+        assertSame(actual, reloaded.getStatistics().getKeySketch());
+
+        // without a sketch.
+        final IndexMetadata metadata = new IndexMetadata(UUID.randomUUID());
+
+        final BTree plain = BTree.create(store, metadata);
+
+        plain.insert(key(1, 2, 3), null);
+
+        final long addr2 = plain.writeCheckpoint();
+
+        assertEquals(0L, plain.getCheckpoint().getKeySketchAddr());
+
+        final BTree plain2 = BTree.load(store, addr2, true/* readOnly */);
+
+        assertNull(plain2.getKeySketch());
+        assertNull(plain2.getStatistics().getKeySketch());
+        assertNull(plain2.getIndexMetadata().getKeySketchFactory());
+
+    }
+
+    /**
+     * The sketch of a mutable B+Tree loaded from the store is read on the
+     * first insert of a new key and then updated in place by later inserts.
+     */
+    public void test_insertAfterLoad() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final BTree btree = newBTree(store);
+
+        for (int i = 0; i < 1000; i++) {
+            btree.insert(key(i % 100, i, 0), null);
+        }
+
+        final long addrCheckpoint = btree.writeCheckpoint();
+
+        final BTree reloaded = BTree.load(store, addrCheckpoint, false/* readOnly */);
+
+        // not read until it is needed.
+        assertNull(reloaded.keySketch);
+
+        reloaded.insert(key(100, 0, 0), null);
+
+        final KeySketch sketch = reloaded.keySketch;
+
+        assertNotNull(sketch);
+
+        for (int i = 1; i < 1000; i++) {
+            reloaded.insert(key(100 + i, 0, 0), null);
+        }
+
+        // the same sketch was updated by each insert.
+        assertSame(sketch, reloaded.getKeySketch());
+
+        assertEstimate(1100, sketch.getDistinctCount(1), .1);
+
+    }
+
+    /**
+     * Rebuilding the sketch after tuples were removed corrects the distinct
+     * counts (the incremental sketch does not support removal).
+     */
+    public void test_rebuildKeySketch() {
+
+        final BTree btree = newBTree(new SimpleMemoryRawStore());
+
+        for (int i = 0; i < 1000; i++) {
+            btree.insert(key(i, 0, 0), null);
+        }
+
+        for (int i = 100; i < 1000; i++) {
+            btree.remove(key(i, 0, 0));
+        }
+
+        assertEstimate(1000, btree.getKeySketch().getDistinctCount(1), .1);
+
+        assertEquals(100L, btree.rebuildKeySketch());
+
+        final KeySketch sketch = btree.getKeySketch();
+
+        assertEstimate(100, sketch.getDistinctCount(1), .1);
+        assertEquals(100, sketch.getHistogramEntryCount());
+        assertTrue(sketch.isDirty());
+
+        btree.writeCheckpoint();
+
+        assertFalse(sketch.isDirty());
+        assertEquals(sketch.getAddr(), btree.getCheckpoint()
+                .getKeySketchAddr());
+
+    }
+
+    /**
+     * Keys which can not be split into components are only counted for the
+     * components which they have.
+     */
+    public void test_shortKeys() {
+
+        final BTree btree = newBTree(new SimpleMemoryRawStore());
+
+        for (int i = 0; i < 100; i++) {
+            btree.insert(new KeyBuilder(8).append((long) i).getKey(), null);
+        }
+
+        btree.insert(new byte[] { 1, 2, 3 }, null);
+
+        final KeySketch sketch = btree.getKeySketch();
+
+        assertEstimate(100, sketch.getDistinctCount(1), .05);
+        assertEquals(0L, sketch.getDistinctCount(2));
+
+    }
+
+    /**
+     * A bottom-up bulk build creates a new sketch from the keys of the new
+     * B+Tree.
+     */
+    public void test_bulkBuild() {
+
+        final BTree btree = newBTree(new SimpleMemoryRawStore());
+
+        final int n = 5000;
+
+        final byte[][] keys = new byte[n][];
+
+        final byte[][] vals = new byte[n][];
+
+        for (int i = 0; i < n; i++) {
+            keys[i] = key(i / 10, i % 10, 0);
+        }
+
+        new BulkBTreeBuilder(btree).load(keys, vals);
+
+        final KeySketch sketch = btree.getKeySketch();
+
+        assertNotNull(sketch);
+        assertEstimate(n / 10, sketch.getDistinctCount(1), .1);
+        assertEstimate(n, sketch.getDistinctCount(2), .1);
+
+        btree.writeCheckpoint();
+
+        assertEquals(n, sketch.getHistogramEntryCount());
+
+    }
+
+}
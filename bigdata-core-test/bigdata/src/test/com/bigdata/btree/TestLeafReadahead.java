@@ -0,0 +1,232 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import com.bigdata.btree.keys.TestKeyBuilder;
+import com.bigdata.journal.BufferMode;
+import com.bigdata.journal.Journal;
+import com.bigdata.journal.Options;
+
+/**
+ * Test suite for the {@link LeafReadahead}.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestLeafReadahead extends AbstractBTreeTestCase {
+
+    /**
+     *
+     */
+    public TestLeafReadahead() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestLeafReadahead(String name) {
+        super(name);
+    }
+
+    private Journal newJournal(final BufferMode bufferMode) {
+
+        final Properties properties = new Properties();
+
+        properties.setProperty(Options.BUFFER_MODE, bufferMode.toString());
+
+        properties.setProperty(Options.CREATE_TEMP_FILE, "true");
+
+        return new Journal(properties);
+
+    }
+
+    /**
+     * Create, populate and commit a {@link BTree}.
+     * 
+     * @return The address of the checkpoint record.
+     */
+    private long populate(final Journal store, final int n) {
+
+        final IndexMetadata md = new IndexMetadata(UUID.randomUUID());
+
+        md.setBranchingFactor(8);
+
+        final BTree btree = BTree.create(store, md);
+
+        // mutable BTree : no readahead.
+        assertNull(btree.getLeafReadahead());
+
+        for (int i = 0; i < n; i++) {
+
+            btree.insert(TestKeyBuilder.asSortKey(i), i);
+
+        }
+
+        final long addrCheckpoint = btree.writeCheckpoint();
+
+        store.commit();
+
+        return addrCheckpoint;
+
+    }
+
+    /**
+     * A full scan of a read-only {@link BTree} on an RWStore journal reads
+     * leaves ahead of the cursor and visits the same tuples in the same order.
+     */
+    public void test_rangeScan() {
+
+        final Journal store = newJournal(BufferMode.DiskRW);
+
+        try {
+
+            final int n = 10000;
+
+            final long addrCheckpoint = populate(store, n);
+
+            final BTree view = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+            final LeafReadahead readahead = view.getLeafReadahead();
+
+            assertNotNull(readahead);
+
+            assertScan(view, n, view.rangeIterator());
+
+            /*
+             * The cursor based iterator uses readahead as well (using a new
+             * view so the leaves are not already materialized).
+             */
+            {
+
+                final BTree view2 = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+                assertScan(view2, n, view2.rangeIterator(null, null,
+                        0/* capacity */, IRangeQuery.DEFAULT
+                                | IRangeQuery.CURSOR, null/* filter */));
+
+            }
+
+            // a reverse scan and point lookups do not use readahead.
+            {
+
+                final BTree view2 = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+                final ITupleIterator<?> itr2 = view2.rangeIterator(null,
+                        null, 0/* capacity */, IRangeQuery.DEFAULT
+                                | IRangeQuery.REVERSE, null/* filter */);
+
+                int j = n;
+
+                while (itr2.hasNext()) {
+
+                    assertEquals(Integer.valueOf(--j), itr2.next().getObject());
+
+                }
+
+                assertEquals(0, j);
+
+                for (int k = 0; k < n; k += 97) {
+
+                    assertTrue(view2.contains(TestKeyBuilder.asSortKey(k)));
+
+                }
+
+                assertEquals(0L, view2.getLeafReadahead().getReadCount());
+
+            }
+
+        } finally {
+
+            store.destroy();
+
+        }
+
+    }
+
+    /**
+     * Verify that the iterator visits the expected tuples in order and that
+     * leaves were read ahead of the iterator.
+     */
+    private void assertScan(final BTree view, final int n,
+            final ITupleIterator<?> itr) {
+
+        final LeafReadahead readahead = view.getLeafReadahead();
+
+        int i = 0;
+
+        while (itr.hasNext()) {
+
+            final ITuple<?> tuple = itr.next();
+
+            assertEquals(TestKeyBuilder.asSortKey(i), tuple.getKey());
+
+            assertEquals(Integer.valueOf(i), tuple.getObject());
+
+            i++;
+
+        }
+
+        assertEquals(n, i);
+
+        if (log.isInfoEnabled())
+            log.info("leaves=" + view.getLeafCount() + ", readCount="
+                    + readahead.getReadCount() + ", hitCount="
+                    + readahead.getHitCount());
+
+        assertTrue(readahead.getReadCount() > 0);
+
+        assertTrue(readahead.getHitCount() > 0);
+
+        assertTrue(readahead.getHitCount() <= readahead.getReadCount());
+
+    }
+
+    /**
+     * Readahead is not used for a journal which is not backed by the RWStore.
+     */
+    public void test_notRWStore() {
+
+        final Journal store = newJournal(BufferMode.DiskWORM);
+
+        try {
+
+            final long addrCheckpoint = populate(store, 100);
+
+            final BTree view = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+            assertNull(view.getLeafReadahead());
+
+            assertEquals(100, view.rangeCount());
+
+        } finally {
+
+            store.destroy();
+
+        }
+
+    }
+
+}
@@ -761,4 +761,90 @@ public class TestLinearListMethods extends AbstractBTreeTestCase {
     
     }
     
+    /**
+     * Test splitting a key range into sub-ranges which span roughly the same
+     * #of tuples.
+     * 
+     * @see AbstractBTree#splitKeyRange(byte[], byte[], int)
+     */
+    public void test_splitKeyRange() {
+
+        final BTree btree = getBTree(3);
+
+        // the even integers in [0:198].
+        for (int i = 0; i < 100; i++) {
+
+            btree.insert(i2k(i * 2), new SimpleEntry(i * 2));
+
+        }
+
+        // the entire key range.
+        doSplitKeyRangeTest(btree, null, null, 4, 4);
+
+        // a key range whose bounds are not found in the index [12:100].
+        doSplitKeyRangeTest(btree, i2k(11), i2k(101), 3, 3);
+
+        // a key range whose bounds are found in the index [10:98].
+        doSplitKeyRangeTest(btree, i2k(10), i2k(100), 7, 7);
+
+        // a key range spanning fewer tuples than the #of splits [10:14].
+        doSplitKeyRangeTest(btree, i2k(10), i2k(15), 8, 3);
+
+        // an empty key range.
+        doSplitKeyRangeTest(btree, i2k(11), i2k(12), 4, 1);
+
+        // a single sub-range.
+        doSplitKeyRangeTest(btree, null, i2k(50), 1, 1);
+
+        try {
+            btree.splitKeyRange(null, null, 0);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * Verify that the sub-ranges are ordered, cover the key range, and are
+     * balanced to within one tuple.
+     */
+    private void doSplitKeyRangeTest(final BTree btree, final byte[] fromKey,
+            final byte[] toKey, final int n, final int expectedCount) {
+
+        final byte[][] a = btree.splitKeyRange(fromKey, toKey, n);
+
+        assertEquals(expectedCount + 1, a.length);
+
+        assertEquals(fromKey, a[0]);
+
+        assertEquals(toKey, a[a.length - 1]);
+
+        final long total = btree.rangeCount(fromKey, toKey);
+
+        long sum = 0L;
+
+        for (int i = 0; i < a.length - 1; i++) {
+
+            final long rangeCount = btree.rangeCount(a[i], a[i + 1]);
+
+            if (total >= expectedCount) {
+
+                final long expected = total / expectedCount;
+
+                assertTrue("rangeCount=" + rangeCount + ", expected="
+                        + expected, rangeCount == expected
+                        || rangeCount == expected + 1);
+
+            }
+
+            sum += rangeCount;
+
+        }
+
+        assertEquals(total, sum);
+
+    }
+
 }
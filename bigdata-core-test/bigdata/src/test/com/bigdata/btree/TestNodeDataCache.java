@@ -0,0 +1,379 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.bigdata.btree.data.IAbstractNodeData;
+import com.bigdata.btree.keys.TestKeyBuilder;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.ICounter;
+import com.bigdata.journal.BufferMode;
+import com.bigdata.journal.Journal;
+import com.bigdata.journal.Options;
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+
+/**
+ * Test suite for the {@link NodeDataCache}.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestNodeDataCache extends AbstractBTreeTestCase {
+
+    /**
+     *
+     */
+    public TestNodeDataCache() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestNodeDataCache(String name) {
+        super(name);
+    }
+
+    /**
+     * Return the value of a counter reported by the cache.
+     */
+    private static long getCounter(final NodeDataCache cache,
+            final String name) {
+
+        final CounterSet counters = cache.getCounters();
+
+        return ((Number) ((ICounter<?>) counters.getPath(name)).getValue())
+                .longValue();
+
+    }
+
+    /**
+     * Return the (uncoded) root leaf of a new {@link BTree}.
+     */
+    private IAbstractNodeData getLeafData() {
+
+        return getBTree(3).getRoot();
+
+    }
+
+    /**
+     * Unit test for get(), putIfAbsent(), put() and remove() on a
+     * {@link NodeDataCache.StoreCache}.
+     */
+    public void test_getPutRemove() {
+
+        final NodeDataCache cache = new NodeDataCache(Long.MAX_VALUE);
+
+        final NodeDataCache.StoreCache storeCache = cache
+                .getStoreCache(new SimpleMemoryRawStore());
+
+        final IAbstractNodeData d1 = getLeafData();
+        final IAbstractNodeData d2 = getLeafData();
+
+        assertNull(storeCache.get(12L));
+        assertEquals(1L, getCounter(cache, "missCount"));
+
+        // add.
+        assertNull(storeCache.putIfAbsent(12L, d1));
+        assertSame(d1, storeCache.get(12L));
+        assertEquals(1L, getCounter(cache, "hitCount"));
+        assertEquals(1, storeCache.size());
+        assertEquals(1L, cache.size());
+        assertEquals(NodeDataCache.sizeOf(d1), cache.getBytes());
+
+        // does not replace an existing entry.
+        assertSame(d1, storeCache.putIfAbsent(12L, d2));
+        assertSame(d1, storeCache.get(12L));
+
+        // replaces an existing entry.
+        storeCache.put(12L, d2);
+        assertSame(d2, storeCache.get(12L));
+        assertEquals(1L, cache.size());
+        assertEquals(NodeDataCache.sizeOf(d2), cache.getBytes());
+
+        // remove.
+        storeCache.remove(12L);
+        assertNull(storeCache.get(12L));
+        assertEquals(0, storeCache.size());
+        assertEquals(0L, cache.size());
+        assertEquals(0L, cache.getBytes());
+        assertEquals(2L, getCounter(cache, "insertCount"));
+        assertEquals(1L, getCounter(cache, "removeCount"));
+
+    }
+
+    /**
+     * Unit test verifies that each store has its own partition of the cache
+     * and that clearing one store does not clear the other.
+     */
+    public void test_storePartitions() {
+
+        final NodeDataCache cache = new NodeDataCache(Long.MAX_VALUE);
+
+        final SimpleMemoryRawStore store1 = new SimpleMemoryRawStore();
+        final SimpleMemoryRawStore store2 = new SimpleMemoryRawStore();
+
+        final NodeDataCache.StoreCache c1 = cache.getStoreCache(store1);
+        final NodeDataCache.StoreCache c2 = cache.getStoreCache(store2);
+
+        assertNotSame(c1, c2);
+        assertSame(c1, cache.getStoreCache(store1));
+
+        final IAbstractNodeData d1 = getLeafData();
+        final IAbstractNodeData d2 = getLeafData();
+
+        c1.put(1L, d1);
+        c2.put(1L, d2);
+
+        assertSame(d1, c1.get(1L));
+        assertSame(d2, c2.get(1L));
+
+        c1.clear();
+
+        assertNull(c1.get(1L));
+        assertSame(d2, c2.get(1L));
+        assertEquals(1L, cache.size());
+
+    }
+
+    /**
+     * Unit test verifies that the cache evicts entries once it is over its
+     * byte bound and that lowering the bound evicts entries immediately.
+     */
+    public void test_eviction() {
+
+        final IAbstractNodeData d = getLeafData();
+
+        final int sizeOf = NodeDataCache.sizeOf(d);
+
+        final NodeDataCache cache = new NodeDataCache(10 * sizeOf);
+
+        final NodeDataCache.StoreCache storeCache = cache
+                .getStoreCache(new SimpleMemoryRawStore());
+
+        for (long addr = 1; addr <= 100; addr++) {
+
+            storeCache.put(addr, d);
+
+            assertTrue(cache.getBytes() <= cache.getMaxBytes());
+
+        }
+
+        assertEquals(10L, cache.size());
+        assertEquals(10, storeCache.size());
+        assertEquals(90L, getCounter(cache, "evictionCount"));
+
+        // the most recently inserted entry is retained.
+        assertSame(d, storeCache.get(100L));
+
+        cache.setMaxBytes(2 * sizeOf);
+
+        assertTrue(cache.getBytes() <= 2 * sizeOf);
+        assertEquals(storeCache.size(), cache.size());
+
+    }
+
+    /**
+     * Unit test verifies that a referenced entry is given a second chance
+     * before it is evicted.
+     */
+    public void test_eviction_secondChance() {
+
+        final IAbstractNodeData d = getLeafData();
+
+        final NodeDataCache cache = new NodeDataCache(
+                3 * NodeDataCache.sizeOf(d));
+
+        final NodeDataCache.StoreCache storeCache = cache
+                .getStoreCache(new SimpleMemoryRawStore());
+
+        storeCache.put(1L, d);
+        storeCache.put(2L, d);
+        storeCache.put(3L, d);
+
+        // touch the oldest entry.
+        assertSame(d, storeCache.get(1L));
+
+        // forces an eviction.
+        storeCache.put(4L, d);
+
+        assertSame(d, storeCache.get(1L));
+        assertNull(storeCache.get(2L));
+
+    }
+
+    /**
+     * Unit test verifies that the #of dead entries remains correct when an
+     * entry selected for eviction is concurrently replaced. The replacement
+     * is performed by put() just before the evicting thread removes the
+     * entry from its {@link NodeDataCache.StoreCache}.
+     */
+    public void test_eviction_concurrentReplace() {
+
+        final IAbstractNodeData d = getLeafData();
+
+        final AtomicReference<NodeDataCache.StoreCache> ref =
+                new AtomicReference<NodeDataCache.StoreCache>();
+
+        final AtomicBoolean race = new AtomicBoolean(true);
+
+        final NodeDataCache cache = new NodeDataCache(
+                3 * NodeDataCache.sizeOf(d)) {
+
+            @Override
+            boolean removeEvicted(final NodeDataCache.Entry e) {
+
+                if (race.compareAndSet(true, false)) {
+
+                    // replace the entry before it is removed.
+                    ref.get().put(e.addr, d);
+
+                }
+
+                return super.removeEvicted(e);
+
+            }
+
+        };
+
+        final NodeDataCache.StoreCache storeCache = cache
+                .getStoreCache(new SimpleMemoryRawStore());
+
+        ref.set(storeCache);
+
+        storeCache.put(1L, d);
+        storeCache.put(2L, d);
+        storeCache.put(3L, d);
+
+        // forces an eviction which races with the replacement of (1).
+        storeCache.put(4L, d);
+
+        assertFalse(race.get());
+        assertSame(d, storeCache.get(1L));
+        assertNull(storeCache.get(2L));
+        assertEquals(3L, cache.size());
+        assertEquals(3, storeCache.size());
+
+        // no entry on the clock was removed from its store cache.
+        assertEquals(0L, cache.getDeadCount());
+
+    }
+
+    /**
+     * Verify that two read-only views of the same committed {@link BTree}
+     * share the decoded node and leaf data records and that the records for
+     * the store are discarded by an abort.
+     */
+    public void test_sharedAcrossViews() {
+
+        final long maxBytes = NodeDataCache.INSTANCE.getMaxBytes();
+
+        NodeDataCache.INSTANCE.setMaxBytes(100 * 1024 * 1024);
+
+        try {
+
+            final Properties properties = new Properties();
+
+            properties.setProperty(Options.BUFFER_MODE, BufferMode.Transient
+                    .toString());
+
+            final Journal store = new Journal(properties);
+
+            try {
+
+                final IndexMetadata md = new IndexMetadata(UUID.randomUUID());
+
+                md.setBranchingFactor(4);
+
+                final BTree btree = BTree.create(store, md);
+
+                assertNotNull(btree.storeCache);
+
+                for (int i = 0; i < 1000; i++) {
+
+                    btree.insert(TestKeyBuilder.asSortKey(i), i);
+
+                }
+
+                final long addrCheckpoint = btree.writeCheckpoint();
+
+                store.commit();
+
+                // Note: The root of each view is read when it is loaded.
+                final long hits0 = getCounter(NodeDataCache.INSTANCE,
+                        "hitCount");
+
+                final BTree view1 = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+                final BTree view2 = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+                assertSame(view1.storeCache, view2.storeCache);
+
+                assertTrue(view1.storeCache.size() > 0);
+
+                assertSameBTree(btree, view1);
+
+                assertSameBTree(btree, view2);
+
+                // both views were read entirely from the cache.
+                assertTrue(getCounter(NodeDataCache.INSTANCE, "hitCount")
+                        - hits0 >= 2 * view1.getNodeCount()
+                        + 2 * view1.getLeafCount());
+
+                // the views share the same decoded root data record.
+                assertSame(((Node) view1.getRoot()).getDelegate(),
+                        ((Node) view2.getRoot()).getDelegate());
+
+                final NodeDataCache.StoreCache storeCache = view1.storeCache;
+
+                final long rootAddr = view1.getCheckpoint().getRootAddr();
+
+                assertNotNull(storeCache.get(rootAddr));
+
+                store.abort();
+
+                /*
+                 * Note: The abort reloads the commit record index and the
+                 * name2addr index, so the cache for the store is not
+                 * necessarily empty afterwards.
+                 */
+                assertNull(storeCache.get(rootAddr));
+
+            } finally {
+
+                store.destroy();
+
+            }
+
+        } finally {
+
+            NodeDataCache.INSTANCE.setMaxBytes(maxBytes);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,408 @@
+/**
+
+ Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+ Contact:
+ SYSTAP, LLC DBA Blazegraph
+ 2501 Calvert ST NW #106
+ Washington, DC 20008
+ licenses@blazegraph.com
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; version 2 of the License.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.bigdata.btree;
+
+import java.util.Random;
+import java.util.UUID;
+
+import com.bigdata.btree.keys.TestKeyBuilder;
+import com.bigdata.io.SerializerUtil;
+import com.bigdata.rawstore.IRawStore;
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+
+/**
+ * Test suite for scalable {@link BloomFilter}s and for rebuilding the bloom
+ * filter of a {@link BTree}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestScalableBloomFilter extends AbstractBTreeTestCase {
+
+    /**
+     * 
+     */
+    public TestScalableBloomFilter() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestScalableBloomFilter(String name) {
+        super(name);
+    }
+
+    private static final int N = 1000;
+
+    private static final double P = 0.02;
+
+    private static final int MAX_STAGES = 5;
+
+    private static byte[] key(final int i) {
+
+        return TestKeyBuilder.asSortKey(Integer.valueOf(i));
+
+    }
+
+    /**
+     * The filter grows new stages as keys are added. There are never any
+     * false negatives and the observed false positive rate remains near the
+     * target error rate.
+     */
+    public void test_growth() {
+
+        final BloomFilter filter = BloomFilter.newScalableInstance(N, P,
+                MAX_STAGES);
+
+        assertTrue(filter.isScalable());
+
+        assertEquals(1, filter.getStageCount());
+
+        assertEquals(BloomFilter.getScalableCapacity(N, MAX_STAGES), filter
+                .getMaxN());
+
+        final long bits0 = filter.getBitLength();
+
+        final int nkeys = 10 * N;
+
+        for (int i = 0; i < nkeys; i++) {
+
+            filter.add(key(i));
+
+        }
+
+        if (log.isInfoEnabled())
+            log.info(filter.toString());
+
+        assertTrue(filter.getStageCount() > 1);
+
+        assertTrue(filter.getStageCount() <= MAX_STAGES);
+
+        assertTrue(filter.getBitLength() > bits0);
+
+        assertTrue(filter.isDirty());
+
+        // no false negatives.
+        for (int i = 0; i < nkeys; i++) {
+
+            assertTrue(filter.contains(key(i)));
+
+        }
+
+        // false positives.
+        final int ntrials = 20000;
+
+        int nfalsePos = 0;
+
+        for (int i = 0; i < ntrials; i++) {
+
+            if (filter.contains(key(nkeys + i)))
+                nfalsePos++;
+
+        }
+
+        final double errorRate = nfalsePos / (double) ntrials;
+
+        if (log.isInfoEnabled())
+            log.info("errorRate=" + errorRate + ", expected="
+                    + filter.getErrorRate());
+
+        assertTrue(filter.getErrorRate() <= P);
+
+        assertTrue("errorRate=" + errorRate, errorRate < 2 * P);
+
+    }
+
+    /**
+     * The filter never grows beyond the maximum #of stages.
+     */
+    public void test_maxStages() {
+
+        final BloomFilter filter = BloomFilter.newScalableInstance(10/* n */,
+                P, 3/* maxStages */);
+
+        for (int i = 0; i < filter.getMaxN() * 2; i++) {
+
+            filter.add(key(i));
+
+        }
+
+        assertEquals(3, filter.getStageCount());
+
+    }
+
+    /**
+     * Adding a key which is already present does not grow the filter and does
+     * not make it dirty.
+     */
+    public void test_duplicateKeys() {
+
+        final BloomFilter filter = BloomFilter.newScalableInstance(N, P,
+                MAX_STAGES);
+
+        for (int i = 0; i < N / 2; i++) {
+
+            assertTrue(filter.add(key(i)));
+
+        }
+
+        filter.write(new SimpleMemoryRawStore());
+
+        assertFalse(filter.isDirty());
+
+        // re-add the same keys many times.
+        for (int j = 0; j < 10; j++) {
+
+            for (int i = 0; i < N / 2; i++) {
+
+                assertFalse(filter.add(key(i)));
+
+            }
+
+        }
+
+        assertFalse(filter.isDirty());
+
+        assertEquals(1, filter.getStageCount());
+
+        // a new key still makes the filter dirty.
+        assertTrue(filter.add(key(N)));
+
+        assertTrue(filter.isDirty());
+
+    }
+
+    /**
+     * Round trip serialization of fixed and scalable filters.
+     */
+    public void test_serialization() {
+
+        final Random r = new Random();
+
+        {
+
+            final BloomFilter expected = new BloomFilter(N, P, N * 2);
+
+            for (int i = 0; i < N; i++)
+                expected.add(key(r.nextInt()));
+
+            final BloomFilter actual = (BloomFilter) SerializerUtil
+                    .deserialize(SerializerUtil.serialize(expected));
+
+            assertFalse(actual.isScalable());
+
+            assertSameFilter(expected, actual);
+
+        }
+
+        {
+
+            final BloomFilter expected = BloomFilter.newScalableInstance(N, P,
+                    MAX_STAGES);
+
+            for (int i = 0; i < 5 * N; i++)
+                expected.add(key(r.nextInt()));
+
+            final BloomFilter actual = (BloomFilter) SerializerUtil
+                    .deserialize(SerializerUtil.serialize(expected));
+
+            assertTrue(actual.isScalable());
+
+            assertSameFilter(expected, actual);
+
+            // the deserialized filter continues to grow.
+            final int nstages = actual.getStageCount();
+
+            for (int i = 0; i < 10 * N; i++)
+                actual.add(key(r.nextInt()));
+
+            assertTrue(actual.getStageCount() > nstages);
+
+        }
+
+    }
+
+    private void assertSameFilter(final BloomFilter expected,
+            final BloomFilter actual) {
+
+        assertEquals(expected.getN(), actual.getN());
+        assertEquals(expected.getP(), actual.getP());
+        assertEquals(expected.getMaxN(), actual.getMaxN());
+        assertEquals(expected.getStageCount(), actual.getStageCount());
+        assertEquals(expected.getBitLength(), actual.getBitLength());
+
+        final Random r = new Random();
+
+        for (int i = 0; i < 10000; i++) {
+
+            final byte[] key = key(r.nextInt());
+
+            assertEquals(expected.contains(key), actual.contains(key));
+
+        }
+
+    }
+
+    /**
+     * A {@link BTree} using a scalable bloom filter keeps its filter enabled
+     * well past the point where a fixed filter for the same initial capacity
+     * is disabled and the filter is restart safe.
+     */
+    public void test_btree_scalable() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final BloomFilterFactory factory = BloomFilterFactory
+                .newScalableInstance(N, P, MAX_STAGES);
+
+        assertTrue(factory.isScalable());
+
+        final IndexMetadata metadata = new IndexMetadata(UUID.randomUUID());
+
+        metadata.setBloomFilterFactory(factory);
+
+        final BTree btree = BTree.create(store, metadata);
+
+        final int nkeys = 10 * N;
+
+        for (int i = 0; i < nkeys; i++) {
+
+            btree.insert(key(i), null);
+
+        }
+
+        // still enabled.
+        assertNotNull(btree.getBloomFilter());
+
+        assertTrue(btree.getBloomFilter().getStageCount() > 1);
+
+        final long addrCheckpoint = btree.writeCheckpoint();
+
+        final BTree btree2 = BTree.load(store, addrCheckpoint, true/* readOnly */);
+
+        final BloomFilter filter = btree2.getBloomFilter();
+
+        assertNotNull(filter);
+
+        assertTrue(filter.isScalable());
+
+        assertEquals(btree.getBloomFilter().getStageCount(), filter
+                .getStageCount());
+
+        for (int i = 0; i < nkeys; i++) {
+
+            assertTrue(filter.contains(key(i)));
+
+        }
+
+    }
+
+    /**
+     * A fixed bloom filter which was disabled is replaced by a scalable
+     * bloom filter when the bloom filter is rebuilt.
+     */
+    public void test_rebuild() {
+
+        final IRawStore store = new SimpleMemoryRawStore();
+
+        final IndexMetadata metadata = new IndexMetadata(UUID.randomUUID());
+
+        metadata.setBloomFilterFactory(new BloomFilterFactory(10/* n */,
+                P, 0.1/* maxP */));
+
+        final BTree btree = BTree.create(store, metadata);
+
+        final int nkeys = 1000;
+
+        for (int i = 0; i < nkeys; i++) {
+
+            btree.insert(key(i), null);
+
+        }
+
+        // the filter was disabled.
+        assertNull(btree.getBloomFilter());
+
+        final long addr1 = btree.writeCheckpoint();
+
+        assertEquals(0L, btree.getCheckpoint().getBloomFilterAddr());
+
+        // the index is too large for the declared filter.
+        assertEquals(-1L, btree.rebuildBloomFilter());
+
+        // switch to a scalable filter.
+        {
+
+            final IndexMetadata md = btree.getIndexMetadata().clone();
+
+            md.setBloomFilterFactory(BloomFilterFactory.newScalableInstance(
+                    100/* n */, P, MAX_STAGES));
+
+            btree.setIndexMetadata(md);
+
+        }
+
+        assertEquals(nkeys, btree.rebuildBloomFilter());
+
+        assertNotNull(btree.getBloomFilter());
+
+        assertTrue(btree.getBloomFilter().isDirty());
+
+        assertTrue(btree.needsCheckpoint());
+
+        final long addr2 = btree.writeCheckpoint();
+
+        assertTrue(addr1 != addr2);
+
+        assertTrue(btree.getCheckpoint().getBloomFilterAddr() != 0L);
+
+        final BTree btree2 = BTree.load(store, addr2, true/* readOnly */);
+
+        final BloomFilter filter = btree2.getBloomFilter();
+
+        assertNotNull(filter);
+
+        assertTrue(filter.isScalable());
+
+        for (int i = 0; i < nkeys; i++) {
+
+            assertTrue(filter.contains(key(i)));
+
+            assertTrue(btree2.contains(key(i)));
+
+        }
+
+        // the rebuilt filter continues to grow with the index.
+        for (int i = nkeys; i < 2 * nkeys; i++) {
+
+            btree.insert(key(i), null);
+
+            assertTrue(btree.contains(key(i)));
+
+        }
+
+        assertNotNull(btree.getBloomFilter());
+
+    }
+
+}
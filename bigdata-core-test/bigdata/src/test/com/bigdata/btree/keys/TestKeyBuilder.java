@@ -29,6 +29,7 @@ package com.bigdata.btree.keys;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -327,6 +328,109 @@ public class TestKeyBuilder extends TestCase2 {
 
     }
     
+    /**
+     * Test encoding a sequence of keys onto a caller-supplied buffer which is
+     * reused for each key.
+     */
+    public void test_keyBuilder_callerSuppliedBuffer() {
+
+        final byte[] buf = new byte[12];
+
+        final KeyBuilder keyBuilder = new KeyBuilder(buf);
+
+        assertEquals(0, keyBuilder.len());
+        assertTrue(buf == keyBuilder.array());
+
+        keyBuilder.append(12L).append(3);
+
+        assertEquals(12, keyBuilder.len());
+        assertTrue(buf == keyBuilder.array());
+        assertEquals(new KeyBuilder().append(12L).append(3).getKey(),
+                keyBuilder.getKey());
+
+        // reuse the same buffer for the next key.
+        keyBuilder.reset().append(7);
+
+        assertEquals(4, keyBuilder.len());
+        assertTrue(buf == keyBuilder.array());
+
+        // the buffer is replaced if the key does not fit.
+        keyBuilder.reset().append(1L).append(2L);
+
+        assertEquals(16, keyBuilder.len());
+        assertTrue(buf != keyBuilder.array());
+
+        try {
+            new KeyBuilder((byte[]) null);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * Test copying the key into a caller-supplied byte[] and into heap and
+     * direct {@link ByteBuffer}s.
+     */
+    public void test_keyBuilder_copyKey() {
+
+        final IKeyBuilder keyBuilder = new KeyBuilder();
+
+        keyBuilder.append(5L).append((short) 2);
+
+        final byte[] expected = keyBuilder.getKey();
+
+        // copy into a byte[] at a non-zero offset.
+        {
+
+            final byte[] b = new byte[20];
+
+            assertEquals(10, keyBuilder.copyKey(b, 3));
+
+            assertEquals(0, BytesUtil.compareBytesWithLenAndOffset(//
+                    3, 10, b,//
+                    0, expected.length, expected//
+                    ));
+
+            try {
+                keyBuilder.copyKey(new byte[20], 11);
+                fail("Expecting: " + IndexOutOfBoundsException.class);
+            } catch (IndexOutOfBoundsException ex) {
+                if (log.isInfoEnabled())
+                    log.info("Ignoring expected exception: " + ex);
+            }
+
+        }
+
+        // copy into heap and direct buffers at their current position.
+        for (ByteBuffer b : new ByteBuffer[] { ByteBuffer.allocate(32),
+                ByteBuffer.allocateDirect(32) }) {
+
+            b.position(2);
+
+            assertEquals(10, keyBuilder.copyKey(b));
+
+            assertEquals(12, b.position());
+
+            // a second key follows the first.
+            assertEquals(10, keyBuilder.copyKey(b));
+
+            assertEquals(22, b.position());
+
+            for (int i = 0; i < 10; i++) {
+
+                assertEquals(expected[i], b.get(2 + i));
+
+                assertEquals(expected[i], b.get(12 + i));
+
+            }
+
+        }
+
+    }
+
     /*
      * test append keys for each data type, including that sort order of
      * successors around zero is correctly defined by the resulting key.
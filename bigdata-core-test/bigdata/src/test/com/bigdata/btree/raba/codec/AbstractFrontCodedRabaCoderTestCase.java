@@ -31,9 +31,14 @@ import it.unimi.dsi.fastutil.bytes.custom.CustomByteArrayFrontCodedList;
 
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
 
 import com.bigdata.btree.raba.IRaba;
 import com.bigdata.btree.raba.ReadOnlyKeysRaba;
+import com.bigdata.io.AbstractFixedByteArrayBuffer;
+import com.bigdata.io.DataOutputBuffer;
+import com.bigdata.util.BytesUtil;
 
 /**
  * Test suite for the {@link FrontCodedRabaCoder}.
@@ -234,4 +239,91 @@ public class AbstractFrontCodedRabaCoderTestCase extends AbstractRabaCoderTestCa
 
     }
 
+    /**
+     * Stress test for search() against the coded keys when the keys share
+     * long and varying prefixes. The probe keys include each coded key and
+     * keys which fall before, between and after the coded keys. The search
+     * results are verified against a search of the uncoded keys.
+     */
+    public void test_search_sharedPrefixes() {
+
+        final Random r = new Random();
+
+        for (int trial = 0; trial < 100; trial++) {
+
+            final TreeSet<byte[]> set = new TreeSet<byte[]>(
+                    BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+            final int n = r.nextInt(200) + 1;
+
+            final int plen = r.nextInt(12);
+
+            final byte[] prefix = new byte[plen];
+
+            r.nextBytes(prefix);
+
+            while (set.size() < n) {
+
+                final byte[] b = new byte[plen + r.nextInt(6)];
+
+                System.arraycopy(prefix, 0, b, 0, plen);
+
+                for (int j = plen; j < b.length; j++) {
+
+                    // a small alphabet to force shared prefixes.
+                    b[j] = (byte) (r.nextInt(4) * 85);
+
+                }
+
+                set.add(b);
+
+            }
+
+            final byte[][] a = set.toArray(new byte[n][]);
+
+            final IRaba expected = new ReadOnlyKeysRaba(a);
+
+            final AbstractFixedByteArrayBuffer data = rabaCoder.encode(
+                    expected, new DataOutputBuffer());
+
+            final IRaba actual = rabaCoder.decode(data);
+
+            for (int i = 0; i < n; i++) {
+
+                assertEquals(i, actual.search(a[i]));
+
+                // probe which is GT a[i] and LT a[i+1].
+                final byte[] next = new byte[a[i].length + 1];
+
+                System.arraycopy(a[i], 0, next, 0, a[i].length);
+
+                assertEquals(expected.search(next), actual.search(next));
+
+                // probe which might be LT or GT a[i] (or equal to another key).
+                final byte[] other = a[i].clone();
+
+                if (other.length > 0) {
+
+                    other[r.nextInt(other.length)] = (byte) r.nextInt(256);
+
+                    assertEquals(expected.search(other), actual.search(other));
+
+                }
+
+            }
+
+            // probes before the first key and after the last key.
+            assertEquals(expected.search(new byte[0]), actual
+                    .search(new byte[0]));
+
+            final byte[] last = new byte[plen + 7];
+
+            Arrays.fill(last, (byte) 0xff);
+
+            assertEquals(expected.search(last), actual.search(last));
+
+        }
+
+    }
+
 }
@@ -0,0 +1,362 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree.raba.codec;
+
+import it.unimi.dsi.compression.CanonicalFast64CodeWordDecoder;
+import it.unimi.dsi.compression.HuffmanCodec;
+import it.unimi.dsi.compression.HuffmanCodec.DecoderInputs;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.io.InputBitStream;
+import it.unimi.dsi.io.OutputBitStream;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.btree.raba.ReadOnlyValuesRaba;
+import com.bigdata.io.ByteArrayBuffer;
+import com.bigdata.io.DataOutputBuffer;
+
+/**
+ * A benchmark for decoding canonical Huffman codes. The first part compares
+ * the {@link CanonicalFast64CodeWordDecoder}, which reads the code words bit
+ * by bit from an {@link InputBitStream}, with the table driven
+ * {@link CanonicalHuffmanLookupDecoder} for a Zipf-like symbol distribution.
+ * The second part compares decoding the values of coded
+ * {@link CanonicalHuffmanRabaCoder} records (modeled on the values of the
+ * ID2TERM index) one at a time using get() with decoding all values of each
+ * record into a reused buffer.
+ * <p>
+ * Note: This is not part of the test suite. Run it from the command line or
+ * under a profiler.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class BenchmarkCanonicalHuffmanDecoder extends TestCase2 {
+
+    /**
+     *
+     */
+    public BenchmarkCanonicalHuffmanDecoder() {
+    }
+
+    /**
+     * @param name
+     */
+    public BenchmarkCanonicalHuffmanDecoder(String name) {
+        super(name);
+    }
+
+    /**
+     * The #of symbols coded for the decoder benchmark.
+     */
+    protected int getSymbolCount() {
+
+        return 10 * 1000 * 1000;
+
+    }
+
+    /**
+     * The #of coded records for the record benchmark.
+     */
+    protected int getRecordCount() {
+
+        return 2000;
+
+    }
+
+    /**
+     * The #of values in each coded record.
+     */
+    protected int getValuesPerRecord() {
+
+        return 128;
+
+    }
+
+    /**
+     * The #of passes for each decoder.
+     */
+    protected int getPassCount() {
+
+        return 5;
+
+    }
+
+    public void test_benchmark() throws IOException {
+
+        doDecoderBenchmark();
+
+        doRecordBenchmark();
+
+    }
+
+    /**
+     * Compare the decoders on a long sequence of code words.
+     */
+    protected void doDecoderBenchmark() throws IOException {
+
+        final Random r = new Random(1);
+
+        /*
+         * A Zipf-like distribution over the byte values, so there are a few
+         * short code words and a long tail of longer code words.
+         */
+        final int[] frequency = new int[256];
+
+        for (int i = 0; i < frequency.length; i++) {
+
+            frequency[i] = 1 + 100000 / (i + 1);
+
+        }
+
+        final DecoderInputs decoderInputs = new DecoderInputs();
+
+        final HuffmanCodec codec = new HuffmanCodec(frequency, decoderInputs);
+
+        // draw symbols from the same distribution.
+        final int[] cumulative = new int[frequency.length];
+        int sum = 0;
+        for (int i = 0; i < frequency.length; i++) {
+            sum += frequency[i];
+            cumulative[i] = sum;
+        }
+
+        final int nsymbols = getSymbolCount();
+
+        final FastByteArrayOutputStream baos = new FastByteArrayOutputStream();
+
+        final OutputBitStream obs = new OutputBitStream(baos);
+
+        long expectedChecksum = 0L;
+
+        for (int i = 0; i < nsymbols; i++) {
+
+            final int x = r.nextInt(sum);
+
+            int symbol = 0;
+            while (cumulative[symbol] <= x)
+                symbol++;
+
+            codec.coder().encode(symbol, obs);
+
+            expectedChecksum += symbol;
+
+        }
+
+        obs.flush();
+
+        final byte[] coded = new byte[baos.length];
+
+        System.arraycopy(baos.array, 0, coded, 0, baos.length);
+
+        System.out.println("decoder: nsymbols=" + nsymbols + ", nbytes="
+                + coded.length + ", maxCodeLength="
+                + decoderInputs.getLengths()[frequency.length - 1]);
+
+        System.out.println("decoder\tM symbols/s");
+
+        final CanonicalFast64CodeWordDecoder bitDecoder = new CanonicalFast64CodeWordDecoder(
+                decoderInputs.getLengths(), decoderInputs.getSymbols());
+
+        for (int pass = 0; pass <= getPassCount(); pass++) {
+
+            final long begin = System.nanoTime();
+
+            final InputBitStream ibs = new InputBitStream(coded);
+
+            long checksum = 0L;
+
+            for (int i = 0; i < nsymbols; i++) {
+
+                checksum += bitDecoder.decode(ibs);
+
+            }
+
+            final long elapsed = System.nanoTime() - begin;
+
+            assertEquals(expectedChecksum, checksum);
+
+            // pass zero is the warm up.
+            if (pass > 0)
+                System.out.println("bitStream\t"
+                        + String.format("%.1f", nsymbols / (elapsed / 1e3)));
+
+        }
+
+        for (int lookupBits : new int[] { 8,
+                CanonicalHuffmanLookupDecoder.DEFAULT_LOOKUP_BITS, 12 }) {
+
+            final CanonicalHuffmanLookupDecoder lookupDecoder = new CanonicalHuffmanLookupDecoder(
+                    decoderInputs.getLengths(), decoderInputs.getSymbols(),
+                    lookupBits);
+
+            for (int pass = 0; pass <= getPassCount(); pass++) {
+
+                final long begin = System.nanoTime();
+
+                long pos = 0L;
+
+                long checksum = 0L;
+
+                for (int i = 0; i < nsymbols; i++) {
+
+                    final int v = lookupDecoder.decode(coded, pos);
+
+                    pos += CanonicalHuffmanLookupDecoder.getCodeLength(v);
+
+                    checksum += CanonicalHuffmanLookupDecoder.getSymbol(v);
+
+                }
+
+                final long elapsed = System.nanoTime() - begin;
+
+                assertEquals(expectedChecksum, checksum);
+
+                if (pass > 0)
+                    System.out.println("lookup(" + lookupBits + ")\t"
+                            + String.format("%.1f", nsymbols / (elapsed / 1e3)));
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Compare decoding the values of coded records using get() with decoding
+     * all values of each record into a reused buffer.
+     */
+    protected void doRecordBenchmark() {
+
+        final Random r = new Random(1);
+
+        final CanonicalHuffmanRabaCoder.CodedRabaImpl[] records = new CanonicalHuffmanRabaCoder.CodedRabaImpl[getRecordCount()];
+
+        final int nvalues = getValuesPerRecord();
+
+        long nbytes = 0L;
+
+        for (int i = 0; i < records.length; i++) {
+
+            // URIs and literals, as found in the values of ID2TERM.
+            final byte[][] a = new byte[nvalues][];
+
+            for (int j = 0; j < nvalues; j++) {
+
+                final String s = r.nextBoolean() ? "http://www.example.org/ontology/Person#"
+                        + r.nextInt(1000000)
+                        : "\"the quick brown fox " + r.nextInt(1000)
+                                + " jumps over the lazy dog\"";
+
+                a[j] = s.getBytes();
+
+                nbytes += a[j].length;
+
+            }
+
+            records[i] = (CanonicalHuffmanRabaCoder.CodedRabaImpl) CanonicalHuffmanRabaCoder.INSTANCE
+                    .decode(CanonicalHuffmanRabaCoder.INSTANCE.encode(
+                            new ReadOnlyValuesRaba(a), new DataOutputBuffer()));
+
+        }
+
+        System.out.println("records: nrecords=" + records.length
+                + ", nvaluesPerRecord=" + nvalues + ", nbytes=" + nbytes);
+
+        System.out.println("method\tMB/s");
+
+        for (int pass = 0; pass <= getPassCount(); pass++) {
+
+            final long begin = System.nanoTime();
+
+            long n = 0L;
+
+            for (CanonicalHuffmanRabaCoder.CodedRabaImpl record : records) {
+
+                for (int j = 0; j < nvalues; j++) {
+
+                    n += record.get(j).length;
+
+                }
+
+            }
+
+            final long elapsed = System.nanoTime() - begin;
+
+            assertEquals(nbytes, n);
+
+            if (pass > 0)
+                System.out.println("get\t"
+                        + String.format("%.1f", nbytes / (1024 * 1024.)
+                                / (elapsed / 1e9)));
+
+        }
+
+        final ByteArrayBuffer buf = new ByteArrayBuffer();
+
+        final int[] offsets = new int[nvalues + 1];
+
+        for (int pass = 0; pass <= getPassCount(); pass++) {
+
+            final long begin = System.nanoTime();
+
+            long n = 0L;
+
+            for (CanonicalHuffmanRabaCoder.CodedRabaImpl record : records) {
+
+                buf.reset();
+
+                n += record.decodeAll(buf, offsets);
+
+            }
+
+            final long elapsed = System.nanoTime() - begin;
+
+            assertEquals(nbytes, n);
+
+            if (pass > 0)
+                System.out.println("decodeAll\t"
+                        + String.format("%.1f", nbytes / (1024 * 1024.)
+                                / (elapsed / 1e9)));
+
+        }
+
+    }
+
+    /**
+     * Main routine can be used for running the benchmark under a performance
+     * analyzer.
+     *
+     * @param args
+     *            Not used.
+     */
+    public static void main(final String[] args) throws IOException {
+
+        new BenchmarkCanonicalHuffmanDecoder().test_benchmark();
+
+    }
+
+}
@@ -48,6 +48,8 @@ import com.bigdata.btree.raba.ReadOnlyKeysRaba;
 import com.bigdata.btree.raba.ReadOnlyValuesRaba;
 import com.bigdata.btree.raba.codec.CanonicalHuffmanRabaCoder.AbstractCodingSetup;
 import com.bigdata.btree.raba.codec.CanonicalHuffmanRabaCoder.RabaCodingSetup;
+import com.bigdata.io.ByteArrayBuffer;
+import com.bigdata.io.DataOutputBuffer;
 import com.bigdata.util.Bytes;
 import com.bigdata.util.BytesUtil;
 
@@ -360,6 +362,142 @@ public class TestCanonicalHuffmanRabaCoder extends AbstractRabaCoderTestCase {
             
         }
 
+        /*
+         * Finally, verify that the table driven decoder decodes the same
+         * symbol sequence for lookup tables which are smaller than, equal to
+         * and larger than the longest code word.
+         */
+        for (int lookupBits : new int[] { 1,
+                CanonicalHuffmanLookupDecoder.DEFAULT_LOOKUP_BITS,
+                CanonicalHuffmanLookupDecoder.MAX_LOOKUP_BITS }) {
+
+            final CanonicalHuffmanLookupDecoder lookupDecoder = new CanonicalHuffmanLookupDecoder(
+                    decoderInputs.getLengths(), decoderInputs.getSymbols(),
+                    lookupBits);
+
+            long pos = 0L;
+
+            for (int i = 0; i < value.length; i++) {
+
+                final int v = lookupDecoder.decode(codedValue, pos);
+
+                assertEquals(value[i]/* symbol */,
+                        CanonicalHuffmanLookupDecoder.getSymbol(v));
+
+                assertEquals(codec.codeWords()[value[i]].size(),
+                        CanonicalHuffmanLookupDecoder.getCodeLength(v));
+
+                pos += CanonicalHuffmanLookupDecoder.getCodeLength(v);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Verify the table driven decoder for a frequency distribution (the
+     * Fibonacci sequence) which produces code words that are much longer than
+     * the lookup table.
+     */
+    public void test_lookupDecoder_longCodeWords() throws IOException {
+
+        final int[] frequency = new int[30];
+
+        frequency[0] = frequency[1] = 1;
+
+        for (int i = 2; i < frequency.length; i++) {
+
+            frequency[i] = frequency[i - 1] + frequency[i - 2];
+
+        }
+
+        final DecoderInputs decoderInputs = new DecoderInputs();
+
+        new HuffmanCodec(frequency, decoderInputs);
+
+        final int[] length = decoderInputs.getLengths();
+
+        assertTrue(length[length.length - 1] > CanonicalHuffmanLookupDecoder.MAX_LOOKUP_BITS);
+
+        doRecoderRoundTripTest(frequency);
+
+    }
+
+    /**
+     * Unit test for {@link CanonicalHuffmanRabaCoder.CodedRabaImpl#decodeAll(ByteArrayBuffer, int[])}
+     * using a buffer which is reused across coded records, including records
+     * with <code>null</code>s, empty values and no symbols.
+     */
+    public void test_decodeAll() {
+
+        final ByteArrayBuffer buf = new ByteArrayBuffer(1/* initialCapacity */);
+
+        for (int trial = 0; trial < 100; trial++) {
+
+            final int n = r.nextInt(100);
+
+            final byte[][] a = new byte[n][];
+
+            // no symbols at all for some trials.
+            final int maxLength = r.nextInt(10) == 0 ? 1 : 1 + r.nextInt(40);
+
+            for (int i = 0; i < n; i++) {
+
+                if (r.nextInt(10) == 0)
+                    continue; // null
+
+                a[i] = new byte[r.nextInt(maxLength)];
+
+                for (int j = 0; j < a[i].length; j++) {
+
+                    // skewed byte values.
+                    a[i][j] = (byte) (r.nextInt(1 + r.nextInt(256)) - 128);
+
+                }
+
+            }
+
+            final IRaba expected = new ReadOnlyValuesRaba(a);
+
+            final CanonicalHuffmanRabaCoder.CodedRabaImpl actual = (CanonicalHuffmanRabaCoder.CodedRabaImpl) rabaCoder
+                    .decode(rabaCoder.encode(expected, new DataOutputBuffer()));
+
+            // reuse the buffer, but do not always start at position zero.
+            buf.reset();
+            buf.advancePosAndLimit(r.nextInt(3));
+            final int pos0 = buf.pos();
+
+            final int[] offsets = new int[n + 1];
+
+            final int nbytes = actual.decodeAll(buf, offsets);
+
+            assertEquals(pos0, offsets[0]);
+            assertEquals(pos0 + nbytes, buf.pos());
+            assertEquals(buf.pos(), offsets[n]);
+
+            for (int i = 0; i < n; i++) {
+
+                final int len = offsets[i + 1] - offsets[i];
+
+                if (a[i] == null) {
+
+                    assertTrue(actual.isNull(i));
+
+                    assertEquals(0, len);
+
+                    continue;
+
+                }
+
+                assertEquals(0, BytesUtil.compareBytesWithLenAndOffset(
+                        0/* aoff */, a[i].length, a[i], offsets[i], len, buf
+                                .array()));
+
+            }
+
+        }
+
     }
 
     /**
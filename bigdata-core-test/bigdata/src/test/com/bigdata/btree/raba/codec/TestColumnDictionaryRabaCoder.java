@@ -0,0 +1,310 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree.raba.codec;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import com.bigdata.btree.raba.IRaba;
+import com.bigdata.btree.raba.ReadOnlyKeysRaba;
+import com.bigdata.btree.raba.codec.FrontCodedRabaCoder.DefaultFrontCodedRabaCoder;
+import com.bigdata.io.AbstractFixedByteArrayBuffer;
+import com.bigdata.io.DataOutputBuffer;
+import com.bigdata.util.BytesUtil;
+
+/**
+ * Test suite for the {@link ColumnDictionaryRabaCoder}.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestColumnDictionaryRabaCoder extends AbstractRabaCoderTestCase {
+
+    /**
+     *
+     */
+    public TestColumnDictionaryRabaCoder() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestColumnDictionaryRabaCoder(String name) {
+        super(name);
+    }
+
+    /**
+     * Splits keys into columns of {@link #WIDTH} bytes (the last column may be
+     * shorter). Keys of different lengths split into a different #of columns,
+     * so the random keys used by the base test suite are generally coded by
+     * the fallback coder.
+     */
+    public static class FixedWidthColumnRabaCoder extends
+            ColumnDictionaryRabaCoder {
+
+        private static final long serialVersionUID = 1L;
+
+        static final int WIDTH = 8;
+
+        public FixedWidthColumnRabaCoder() {
+        }
+
+        @Override
+        protected int getColumnLength(final byte[] key, final int off,
+                final int column) {
+
+            return Math.min(WIDTH, key.length - off);
+
+        }
+
+    }
+
+    /**
+     * Splits keys into columns whose first byte codes the #of bytes which
+     * follow in that column.
+     */
+    public static class LengthPrefixedColumnRabaCoder extends
+            ColumnDictionaryRabaCoder {
+
+        private static final long serialVersionUID = 1L;
+
+        public LengthPrefixedColumnRabaCoder() {
+        }
+
+        @Override
+        protected int getColumnLength(final byte[] key, final int off,
+                final int column) {
+
+            return 1 + key[off];
+
+        }
+
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        rabaCoder = new FixedWidthColumnRabaCoder();
+
+    }
+
+    /**
+     * Return <code>true</code> iff the coded record was coded by the fallback
+     * coder.
+     */
+    private static boolean isFallback(final AbstractFixedByteArrayBuffer data) {
+
+        return data.getByte(1) != 0;
+
+    }
+
+    /**
+     * Generate sorted distinct keys having <i>ncols</i> columns of
+     * {@link FixedWidthColumnRabaCoder#WIDTH} bytes. Each column takes one of
+     * <i>ndistinct</i> values.
+     */
+    private byte[][] getFixedWidthKeys(final int n, final int ncols,
+            final int ndistinct) {
+
+        final int width = FixedWidthColumnRabaCoder.WIDTH;
+
+        final TreeSet<byte[]> keys = new TreeSet<byte[]>(
+                BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+        while (keys.size() < n) {
+
+            final byte[] key = new byte[ncols * width];
+
+            for (int col = 0; col < ncols; col++) {
+
+                final long v = r.nextInt(ndistinct) * 0x0101010101L;
+
+                for (int j = 0; j < width; j++) {
+
+                    key[col * width + j] = (byte) (v >>> (8 * (width - j - 1)));
+
+                }
+
+            }
+
+            keys.add(key);
+
+        }
+
+        return keys.toArray(new byte[n][]);
+
+    }
+
+    /**
+     * Keys with fixed width columns are column coded. When the column values
+     * repeat, the coded record is smaller than the front-coded record.
+     */
+    public void test_fixedWidthColumns() {
+
+        final byte[][] a = getFixedWidthKeys(200, 3/* ncols */, 10/* ndistinct */);
+
+        final IRaba expected = new ReadOnlyKeysRaba(a);
+
+        doRoundTripTest(rabaCoder, expected);
+
+        final AbstractFixedByteArrayBuffer data = rabaCoder.encode(expected,
+                new DataOutputBuffer());
+
+        assertFalse(isFallback(data));
+
+        final AbstractFixedByteArrayBuffer frontCoded = DefaultFrontCodedRabaCoder.INSTANCE
+                .encode(expected, new DataOutputBuffer());
+
+        if (log.isInfoEnabled())
+            log.info("columnCoded=" + data.len() + ", frontCoded="
+                    + frontCoded.len());
+
+        assertTrue(data.len() < frontCoded.len());
+
+    }
+
+    /**
+     * Keys where a column has a single distinct value (zero bits per code)
+     * and keys having a single entry.
+     */
+    public void test_fixedWidthColumns_singleValue() {
+
+        doRoundTripTest(rabaCoder, new ReadOnlyKeysRaba(getFixedWidthKeys(1,
+                3/* ncols */, 1/* ndistinct */)));
+
+        final byte[][] a = getFixedWidthKeys(5, 2/* ncols */, 10/* ndistinct */);
+
+        // the first column has the same value for all keys.
+        for (byte[] key : a) {
+
+            System.arraycopy(a[0], 0, key, 0, FixedWidthColumnRabaCoder.WIDTH);
+
+        }
+
+        Arrays.sort(a, BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+        final TreeSet<byte[]> distinct = new TreeSet<byte[]>(
+                BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+        for (byte[] key : a)
+            distinct.add(key);
+
+        final IRaba expected = new ReadOnlyKeysRaba(distinct
+                .toArray(new byte[0][]));
+
+        doRoundTripTest(rabaCoder, expected);
+
+        assertFalse(isFallback(rabaCoder.encode(expected,
+                new DataOutputBuffer())));
+
+    }
+
+    /**
+     * Keys whose column values have variable lengths are column coded using
+     * offsets into the dictionary values.
+     */
+    public void test_variableWidthColumns() {
+
+        final IRabaCoder coder = new LengthPrefixedColumnRabaCoder();
+
+        for (int trial = 0; trial < 20; trial++) {
+
+            final TreeSet<byte[]> keys = new TreeSet<byte[]>(
+                    BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+            final int n = 1 + r.nextInt(300);
+
+            while (keys.size() < n) {
+
+                final byte[][] cols = new byte[3][];
+
+                int len = 0;
+
+                for (int col = 0; col < cols.length; col++) {
+
+                    cols[col] = new byte[1 + r.nextInt(4)];
+
+                    cols[col][0] = (byte) (cols[col].length - 1);
+
+                    for (int j = 1; j < cols[col].length; j++) {
+
+                        cols[col][j] = (byte) r.nextInt(3);
+
+                    }
+
+                    len += cols[col].length;
+
+                }
+
+                final byte[] key = new byte[len];
+
+                int off = 0;
+
+                for (byte[] col : cols) {
+
+                    System.arraycopy(col, 0, key, off, col.length);
+
+                    off += col.length;
+
+                }
+
+                keys.add(key);
+
+            }
+
+            final IRaba expected = new ReadOnlyKeysRaba(keys
+                    .toArray(new byte[n][]));
+
+            doRoundTripTest(coder, expected);
+
+            assertFalse(isFallback(coder.encode(expected,
+                    new DataOutputBuffer())));
+
+        }
+
+    }
+
+    /**
+     * Keys which split into a different #of columns are coded by the fallback
+     * coder.
+     */
+    public void test_fallback() {
+
+        final byte[][] a = new byte[][] {//
+                new byte[] { 1, 2, 3 },//
+                new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 },//
+                new byte[] { 2 },//
+        };
+
+        final IRaba expected = new ReadOnlyKeysRaba(a);
+
+        doRoundTripTest(rabaCoder, expected);
+
+        assertTrue(isFallback(rabaCoder.encode(expected,
+                new DataOutputBuffer())));
+
+    }
+
+}
@@ -64,6 +64,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(TestCounters.class);
 
         suite.addTestSuite(TestHistoryInstrument.class);
+
+        suite.addTestSuite(TestLog2Histogram.class);
         
         suite.addTest(com.bigdata.counters.store.TestAll.suite());
 
@@ -0,0 +1,116 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.counters;
+
+import junit.framework.TestCase2;
+
+/**
+ * Unit tests for {@link Log2Histogram}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestLog2Histogram extends TestCase2 {
+
+    public TestLog2Histogram() {
+    }
+
+    public TestLog2Histogram(String name) {
+        super(name);
+    }
+
+    public void test_ctor_correctRejection() {
+
+        try {
+            new Log2Histogram(1);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        try {
+            new Log2Histogram(65);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * Verify the bucket for some values, including values which are clamped
+     * into the first and last buckets.
+     */
+    public void test_buckets() {
+
+        final Log2Histogram h = new Log2Histogram(5);
+
+        assertEquals(0, h.getBucket(-1));
+        assertEquals(0, h.getBucket(0));
+        assertEquals(1, h.getBucket(1));
+        assertEquals(2, h.getBucket(2));
+        assertEquals(2, h.getBucket(3));
+        assertEquals(3, h.getBucket(4));
+        assertEquals(3, h.getBucket(7));
+        assertEquals(4, h.getBucket(8));
+        assertEquals(4, h.getBucket(Long.MAX_VALUE));
+
+        assertEquals("0", h.getLabel(0));
+        assertEquals("1", h.getLabel(1));
+        assertEquals("2-3", h.getLabel(2));
+        assertEquals("4-7", h.getLabel(3));
+        assertEquals("8+", h.getLabel(4));
+
+    }
+
+    /**
+     * Verify the counts and the reported counters.
+     */
+    public void test_add() {
+
+        final Log2Histogram h = new Log2Histogram(4);
+
+        h.add(1);
+        h.add(2);
+        h.add(3);
+        h.add(100);
+
+        assertEquals(0, h.get(0));
+        assertEquals(1, h.get(1));
+        assertEquals(2, h.get(2));
+        assertEquals(1, h.get(3));
+        assertEquals(4, h.getCount());
+
+        final CounterSet counters = h.getCounters();
+
+        assertEquals(Long.valueOf(2), ((ICounter<?>) counters.getChild("2-3"))
+                .getValue());
+
+        assertEquals(Long.valueOf(1), ((ICounter<?>) counters.getChild("4+"))
+                .getValue());
+
+    }
+
+}
@@ -178,4 +178,112 @@ public class TestDirectBufferPool extends TestCase2 {
 
     }
 
+    /**
+     * Unit test verifies that the size classes are ordered by increasing
+     * buffer capacity, that the {@link DirectBufferPool#INSTANCE} is the
+     * largest size class, and that {@link DirectBufferPool#getPool(int)}
+     * chooses the smallest size class with sufficient capacity.
+     */
+    public void test_sizeClasses() {
+
+        final DirectBufferPool[] a = DirectBufferPool.getSizeClasses();
+
+        assertTrue(a.length >= 1);
+
+        assertTrue(a[a.length - 1] == DirectBufferPool.INSTANCE);
+
+        for (int i = 1; i < a.length; i++) {
+
+            assertTrue(a[i - 1].getBufferCapacity() < a[i].getBufferCapacity());
+
+        }
+
+        for (int i = 0; i < a.length; i++) {
+
+            final int capacity = a[i].getBufferCapacity();
+
+            assertTrue(a[i] == DirectBufferPool.getPool(capacity));
+
+            if (i > 0) {
+
+                assertTrue(a[i] == DirectBufferPool
+                        .getPool(a[i - 1].getBufferCapacity() + 1));
+
+            }
+
+        }
+
+        assertTrue(a[0] == DirectBufferPool.getPool(1));
+
+        try {
+            DirectBufferPool.getPool(DirectBufferPool.INSTANCE
+                    .getBufferCapacity() + 1);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * Unit test verifies that a buffer acquired from a size class has the
+     * capacity of that size class and is released back to the same pool, and
+     * that the statistics are maintained per size class.
+     */
+    public void test_sizeClassAcquireRelease() throws InterruptedException {
+
+        final DirectBufferPool pool = DirectBufferPool.getSizeClasses()[0];
+
+        final long acquireBefore = pool.getAcquireCount();
+        final long releaseBefore = pool.getReleaseCount();
+        final long otherAcquireBefore = DirectBufferPool.INSTANCE
+                .getAcquireCount();
+
+        IBufferAccess b = null;
+        try {
+            b = pool.acquire();
+
+            assertEquals(pool.getBufferCapacity(), b.buffer().capacity());
+
+            assertEquals(acquireBefore + 1, pool.getAcquireCount());
+
+            assertEquals(1, pool.getAcquiredBufferCount());
+
+        } finally {
+            if (b != null)
+                b.release();
+        }
+
+        assertEquals(releaseBefore + 1, pool.getReleaseCount());
+
+        assertEquals(0, pool.getAcquiredBufferCount());
+
+        if (pool != DirectBufferPool.INSTANCE) {
+
+            // Not counted against the other size classes.
+            assertEquals(otherAcquireBefore,
+                    DirectBufferPool.INSTANCE.getAcquireCount());
+
+        }
+
+    }
+
+    /**
+     * Unit test verifies that the pool capacities must be given either once
+     * or for each size class.
+     */
+    public void test_sizeClasses_badPoolCapacity() {
+
+        try {
+            DirectBufferPool.newSizeClasses(DirectBufferPool.INSTANCE,
+                    "1024,2048", "10,20,30");
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
 }
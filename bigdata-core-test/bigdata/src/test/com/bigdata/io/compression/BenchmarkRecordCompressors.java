@@ -0,0 +1,311 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.io.compression;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.btree.BTree;
+import com.bigdata.btree.IndexMetadata;
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+
+/**
+ * A benchmark for the compression ratio and the compression and
+ * decompression rates of the {@link IRecordCompressor}s declared to the
+ * {@link CompressorRegistry}. The data are the coded nodes and leaves of
+ * {@link BTree}s whose keys resemble those of the statement indices (three
+ * term identifiers) and of a lexicon index (URIs with a common prefix).
+ * <p>
+ * Note: This is not part of the test suite. Run it from the command line or
+ * under a profiler.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class BenchmarkRecordCompressors extends TestCase2 {
+
+    /**
+     * 
+     */
+    public BenchmarkRecordCompressors() {
+    }
+
+    /**
+     * @param name
+     */
+    public BenchmarkRecordCompressors(String name) {
+        super(name);
+    }
+
+    /**
+     * The #of tuples inserted into each index.
+     */
+    protected int getTupleCount() {
+
+        return 100000;
+
+    }
+
+    /**
+     * The #of passes over the records for each compressor.
+     */
+    protected int getPassCount() {
+
+        return 10;
+
+    }
+
+    /**
+     * A store which retains a copy of each record written on it.
+     */
+    private static class RecordingStore extends SimpleMemoryRawStore {
+
+        final List<byte[]> records = new LinkedList<byte[]>();
+
+        @Override
+        public long write(final ByteBuffer data) {
+
+            final byte[] b = new byte[data.remaining()];
+
+            data.duplicate().get(b);
+
+            records.add(b);
+
+            return super.write(data);
+
+        }
+
+    }
+
+    /**
+     * Return {@link IndexMetadata} for a {@link BTree} whose nodes and leaves
+     * remain on the write retention queue until the checkpoint, so each node
+     * and leaf is written exactly once.
+     */
+    private IndexMetadata newMetadata() {
+
+        final IndexMetadata md = new IndexMetadata(UUID.randomUUID());
+
+        md.setWriteRetentionQueueCapacity(getTupleCount() * 4);
+
+        return md;
+
+    }
+
+    /**
+     * Checkpoint the {@link BTree} and return the coded nodes and leaves.
+     */
+    private static List<byte[]> getRecords(final BTree btree) {
+
+        final RecordingStore store = (RecordingStore) btree.getStore();
+
+        store.records.clear();
+
+        btree.writeCheckpoint();
+
+        // drop the checkpoint record.
+        store.records.remove(store.records.size() - 1);
+
+        return store.records;
+
+    }
+
+    /**
+     * Return the coded nodes and leaves of a {@link BTree} whose keys are
+     * three term identifiers, as found in the statement indices.
+     */
+    protected List<byte[]> getStatementIndexRecords() {
+
+        final BTree btree = BTree.create(new RecordingStore(), newMetadata());
+
+        final KeyBuilder keyBuilder = new KeyBuilder(24);
+
+        final Random r = new Random(1);
+
+        for (int i = 0; i < getTupleCount(); i++) {
+
+            // skewed subjects and predicates, uniform objects.
+            final long s = r.nextInt(getTupleCount() / 10);
+            final long p = r.nextInt(50);
+            final long o = r.nextInt(getTupleCount());
+
+            btree.insert(keyBuilder.reset().append(s).append(p).append(o)
+                    .getKey(), null);
+
+        }
+
+        return getRecords(btree);
+
+    }
+
+    /**
+     * Return the coded nodes and leaves of a {@link BTree} whose keys are URIs
+     * and whose values are term identifiers, as found in the lexicon.
+     */
+    protected List<byte[]> getLexiconIndexRecords() {
+
+        final BTree btree = BTree.create(new RecordingStore(), newMetadata());
+
+        final KeyBuilder keyBuilder = new KeyBuilder(64);
+
+        final Random r = new Random(1);
+
+        for (int i = 0; i < getTupleCount(); i++) {
+
+            final String uri = "http://www.example.org/ontology/"
+                    + (r.nextBoolean() ? "Person" : "Organization") + "#"
+                    + r.nextInt(getTupleCount() * 10);
+
+            btree.insert(keyBuilder.reset().append(uri).getKey(), keyBuilder
+                    .reset().append((long) i).getKey());
+
+        }
+
+        return getRecords(btree);
+
+    }
+
+    public void test_benchmark() {
+
+        doBenchmark("statements", getStatementIndexRecords());
+
+        doBenchmark("lexicon", getLexiconIndexRecords());
+
+    }
+
+    protected void doBenchmark(final String label, final List<byte[]> records) {
+
+        long nbytes = 0L;
+
+        for (byte[] b : records)
+            nbytes += b.length;
+
+        System.out.println(label + ": nrecords=" + records.size()
+                + ", nbytes=" + nbytes);
+
+        System.out.println("compressor\tratio\tcompress MB/s\tdecompress MB/s");
+
+        final String[] keys = new String[] { CompressorRegistry.NOP,
+                CompressorRegistry.LZ, CompressorRegistry.DEFLATE_BEST_SPEED,
+                CompressorRegistry.DEFLATE_BEST_COMPRESSION,
+                CompressorRegistry.GZIP };
+
+        for (String key : keys) {
+
+            final IRecordCompressor c = CompressorRegistry.getInstance()
+                    .get(key);
+
+            // warm up.
+            run(c, records, 1);
+
+            final long[] r = run(c, records, getPassCount());
+
+            final double mb = nbytes * (double) getPassCount() / (1024 * 1024);
+
+            System.out.println(key
+                    + "\t"
+                    + String.format("%.3f", r[0] / (double) nbytes)
+                    + "\t"
+                    + String.format("%.1f", mb / (r[1] / 1e9))
+                    + "\t"
+                    + String.format("%.1f", mb / (r[2] / 1e9)));
+
+        }
+
+    }
+
+    /**
+     * Compress and decompress each record.
+     * 
+     * @return The #of compressed bytes (for one pass), the nanoseconds spent
+     *         compressing, and the nanoseconds spent decompressing.
+     */
+    private long[] run(final IRecordCompressor c, final List<byte[]> records,
+            final int npasses) {
+
+        final ByteBuffer[] compressed = new ByteBuffer[records.size()];
+
+        long ncompressed = 0L, compressNanos = 0L, decompressNanos = 0L;
+
+        for (int pass = 0; pass < npasses; pass++) {
+
+            long begin = System.nanoTime();
+
+            int i = 0;
+
+            ncompressed = 0L;
+
+            for (byte[] b : records) {
+
+                compressed[i] = c.compress(ByteBuffer.wrap(b));
+
+                ncompressed += compressed[i].remaining();
+
+                i++;
+
+            }
+
+            compressNanos += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+
+            i = 0;
+
+            for (byte[] b : records) {
+
+                final ByteBuffer actual = c.decompress(compressed[i++]
+                        .duplicate());
+
+                if (actual.remaining() != b.length)
+                    fail("Wrong length: " + c);
+
+            }
+
+            decompressNanos += System.nanoTime() - begin;
+
+        }
+
+        return new long[] { ncompressed, compressNanos, decompressNanos };
+
+    }
+
+    /**
+     * Main routine can be used for running the benchmark under a performance
+     * analyzer.
+     * 
+     * @param args
+     *            Not used.
+     */
+    public static void main(final String[] args) {
+
+        new BenchmarkRecordCompressors().test_benchmark();
+
+    }
+
+}
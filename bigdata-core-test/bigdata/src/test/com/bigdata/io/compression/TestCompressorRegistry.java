@@ -86,6 +86,23 @@ public class TestCompressorRegistry extends TestCase3 {
 	
 			final ByteBuffer res = compressor.decompress(dst.duplicate());
 			
+            if(log.isInfoEnabled())
+			log.info("Expanded Dst: " + dst.limit() + ", Src:" + res.limit());
+			
+			assertTrue(res.compareTo(src) == 0);
+		}
+
+		{
+            final IRecordCompressor compressor = CompressorRegistry
+                    .getInstance().get(
+                            CompressorRegistry.LZ);
+			final ByteBuffer dst = compressor.compress(src.duplicate());
+			
+            if(log.isInfoEnabled())
+			log.info("LZ Compressed Dst: " + dst.limit() + ", Src:" + src.limit());
+	
+			final ByteBuffer res = compressor.decompress(dst.duplicate());
+			
             if(log.isInfoEnabled())
 			log.info("Expanded Dst: " + dst.limit() + ", Src:" + res.limit());
 			
@@ -131,6 +148,7 @@ public class TestCompressorRegistry extends TestCase3 {
 		doPerformanceCompression(CompressorRegistry.DEFLATE_BEST_SPEED);
 		doPerformanceCompression(CompressorRegistry.DEFLATE_BEST_COMPRESSION);
 		doPerformanceCompression(CompressorRegistry.GZIP);
+		doPerformanceCompression(CompressorRegistry.LZ);
 	}
 	
 	public void doPerformanceCompression(final String strategy) {
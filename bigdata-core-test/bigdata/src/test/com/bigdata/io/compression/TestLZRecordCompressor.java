@@ -0,0 +1,225 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.io.compression;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.bigdata.util.DaemonThreadFactory;
+
+/**
+ * Test suite for {@link LZRecordCompressor}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class TestLZRecordCompressor extends AbstractRecordCompressorTestCase {
+
+    /**
+     * 
+     */
+    public TestLZRecordCompressor() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestLZRecordCompressor(String name) {
+        super(name);
+    }
+
+    public IRecordCompressor getInstance() {
+
+        return new LZRecordCompressor();
+
+    }
+
+    /**
+     * Incompressible data must round trip and must not grow by more than the
+     * documented bound.
+     */
+    public void test_randomData() {
+
+        final IRecordCompressor c = getInstance();
+
+        for (int len : new int[] { 1, 3, 4, 5, 15, 16, 270, 65536 + 100 }) {
+
+            final byte[] expected = new byte[len];
+
+            r.nextBytes(expected);
+
+            final int n = doCompressionTest(c, expected, 0, len);
+
+            assertTrue(n <= LZRecordCompressor.maxCompressedLength(len));
+
+        }
+
+    }
+
+    /**
+     * Runs of a repeated byte pattern are coded as overlapping matches, and
+     * long literal runs and long matches use the extended length bytes.
+     */
+    public void test_repeatedPatterns() {
+
+        final IRecordCompressor c = getInstance();
+
+        for (int period : new int[] { 1, 2, 3, 4, 7, 300 }) {
+
+            final byte[] pattern = new byte[period];
+
+            r.nextBytes(pattern);
+
+            final byte[] expected = new byte[100000];
+
+            for (int i = 0; i < expected.length; i++)
+                expected[i] = pattern[i % period];
+
+            final int n = doCompressionTest(c, expected, 0, expected.length);
+
+            assertTrue("period=" + period + ", n=" + n, n < expected.length / 50);
+
+        }
+
+        {
+            // literals, long match, literals (beyond the 64k window).
+            final byte[] expected = new byte[200000];
+            r.nextBytes(expected);
+            System.arraycopy(expected, 1000, expected, 50000, 20000);
+            System.arraycopy(expected, 0, expected, 150000, 1000);
+            doCompressionTest(c, expected, 0, expected.length);
+        }
+
+    }
+
+    /**
+     * Compress from and decompress a direct buffer (the backing array is not
+     * accessible), as done for the write cache blocks replicated in HA.
+     */
+    public void test_directBuffer() {
+
+        final IRecordCompressor c = getInstance();
+
+        final byte[] expected = getRandomRecord(5000);
+
+        final ByteBuffer src = ByteBuffer.allocateDirect(expected.length + 10);
+        src.position(10);
+        src.put(expected);
+        src.flip();
+        src.position(10);
+
+        final ByteBuffer compressed = c.compress(src);
+
+        assertEquals(src.limit(), src.position());
+        assertEquals(0, compressed.position());
+
+        final ByteBuffer tmp = ByteBuffer.allocateDirect(compressed.remaining());
+        tmp.put(compressed.duplicate());
+        tmp.flip();
+
+        final ByteBuffer actual = c.decompress(tmp);
+
+        assertEquals(0, tmp.position());
+        assertEquals(0, actual.position());
+        assertEquals(expected.length, actual.limit());
+        assertEquals(ByteBuffer.wrap(expected), actual);
+
+        // compress onto a caller's buffer.
+        final ByteBuffer out = ByteBuffer.allocate(LZRecordCompressor
+                .maxCompressedLength(expected.length));
+        c.compress(ByteBuffer.wrap(expected), out);
+        out.flip();
+        assertEquals(ByteBuffer.wrap(expected), c.decompress(out));
+
+    }
+
+    /**
+     * A truncated record is reported rather than decoded into garbage.
+     */
+    public void test_corruptRecord() {
+
+        final IRecordCompressor c = getInstance();
+
+        final byte[] expected = getRandomRecord(1000);
+
+        final ByteBuffer compressed = c.compress(ByteBuffer.wrap(expected));
+
+        final byte[] b = new byte[compressed.remaining() / 2];
+
+        compressed.get(b);
+
+        try {
+            c.decompress(b);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * The same instance is used concurrently by several threads.
+     */
+    public void test_concurrent() throws Exception {
+
+        final IRecordCompressor c = LZRecordCompressor.INSTANCE;
+
+        final ExecutorService service = Executors.newFixedThreadPool(4,
+                DaemonThreadFactory.defaultThreadFactory());
+
+        try {
+
+            final Future<?>[] futures = new Future<?>[4];
+
+            for (int i = 0; i < futures.length; i++) {
+
+                final byte[] expected = getRandomRecord(2000 + i);
+
+                futures[i] = service.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < 500; j++) {
+                            doCompressionTest(c, expected, 0, expected.length);
+                        }
+                        return null;
+                    }
+                });
+
+            }
+
+            for (Future<?> f : futures)
+                f.get();
+
+        } finally {
+
+            service.shutdownNow();
+
+        }
+
+    }
+
+}
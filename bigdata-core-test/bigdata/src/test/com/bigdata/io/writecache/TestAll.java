@@ -71,6 +71,9 @@ public class TestAll extends TestCase {
         // test suite for the write cache service (RW).
         suite.addTestSuite(TestRWWriteCacheService.class);
 
+        // test suite for the scan resistant record cache.
+        suite.addTestSuite(TestRecordCache.class);
+
 
         return suite;
         
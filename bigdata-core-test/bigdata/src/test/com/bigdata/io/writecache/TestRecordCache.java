@@ -0,0 +1,262 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.io.writecache;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.bigdata.io.DirectBufferPool;
+import com.bigdata.io.TestCase3;
+
+/**
+ * Test suite for the scan resistant {@link RecordCache}.
+ */
+public class TestRecordCache extends TestCase3 {
+
+    public TestRecordCache() {
+    }
+
+    public TestRecordCache(final String name) {
+        super(name);
+    }
+
+    private final Random r = new Random();
+
+    private ByteBuffer randomRecord(final int size) {
+
+        final byte[] a = new byte[size];
+
+        r.nextBytes(a);
+
+        return ByteBuffer.wrap(a);
+
+    }
+
+    /**
+     * Simulate a read through the write cache service: probe the cache and
+     * offer the record on a miss.
+     */
+    private ByteBuffer read(final RecordCache cache, final long offset,
+            final ByteBuffer data) {
+
+        final ByteBuffer ret = cache.get(offset, data.remaining() + 4);
+
+        if (ret != null)
+            return ret;
+
+        cache.offer(offset, data.remaining() + 4, data);
+
+        return data;
+
+    }
+
+    /**
+     * A record is admitted while there is room and may then be read back.
+     */
+    public void test_offer_get() {
+
+        final RecordCache cache = new RecordCache(DirectBufferPool.INSTANCE, 1);
+
+        try {
+
+            final ByteBuffer data = randomRecord(100);
+
+            assertNull(cache.get(12L, 104));
+
+            assertTrue(cache.offer(12L, 104, data));
+
+            // position and limit of the caller's buffer are unchanged.
+            assertEquals(0, data.position());
+            assertEquals(100, data.limit());
+
+            assertEquals(data, cache.get(12L, 104));
+
+            // a request for a different length is a miss.
+            assertNull(cache.get(12L, 204));
+
+            assertEquals(1, cache.size());
+            assertEquals(100L, cache.getBytes());
+            assertEquals(1L, cache.getHitCount());
+            assertEquals(2L, cache.getMissCount());
+            assertEquals(1L, cache.getAdmitCount());
+
+        } finally {
+
+            cache.close();
+
+        }
+
+    }
+
+    /**
+     * Clearing an offset drops the record and clearing the cache drops all
+     * records.
+     */
+    public void test_clear() {
+
+        final RecordCache cache = new RecordCache(DirectBufferPool.INSTANCE, 1);
+
+        try {
+
+            cache.offer(1L, 14, randomRecord(10));
+            cache.offer(2L, 14, randomRecord(10));
+            cache.offer(3L, 14, randomRecord(10));
+
+            assertEquals(3, cache.size());
+
+            cache.clear(2L);
+
+            assertNull(cache.get(2L, 14));
+            assertNotNull(cache.get(1L, 14));
+            assertEquals(2, cache.size());
+            assertEquals(20L, cache.getBytes());
+
+            cache.clear();
+
+            assertEquals(0, cache.size());
+            assertEquals(0L, cache.getBytes());
+            assertNull(cache.get(1L, 14));
+
+            // the cache is still usable after clear().
+            assertTrue(cache.offer(4L, 14, randomRecord(10)));
+            assertNotNull(cache.get(4L, 14));
+
+        } finally {
+
+            cache.close();
+
+        }
+
+    }
+
+    /**
+     * A hot working set survives a full scan over many more records than the
+     * cache can hold.
+     */
+    public void test_scanResistance() {
+
+        final RecordCache cache = new RecordCache(DirectBufferPool.INSTANCE, 1);
+
+        try {
+
+            final int recordSize = 1024;
+
+            final int nhot = 300;
+
+            final ByteBuffer[] hot = new ByteBuffer[nhot];
+
+            for (int i = 0; i < nhot; i++) {
+
+                hot[i] = randomRecord(recordSize);
+
+            }
+
+            // warm up: the hot set is read several times.
+            for (int pass = 0; pass < 4; pass++) {
+
+                for (int i = 0; i < nhot; i++) {
+
+                    read(cache, i * 8192L, hot[i]);
+
+                }
+
+            }
+
+            assertEquals(nhot, cache.size());
+
+            // a scan touching each of many cold records exactly once.
+            final int ncold = 10000;
+
+            final long base = 1L << 40;
+
+            for (int i = 0; i < ncold; i++) {
+
+                read(cache, base + i * 8192L, randomRecord(recordSize));
+
+            }
+
+            assertTrue(cache.getRejectCount() > 0);
+
+            assertTrue(cache.getBytes() <= DirectBufferPool.INSTANCE
+                    .getBufferCapacity());
+
+            // the hot set is still resident.
+            int nresident = 0;
+
+            for (int i = 0; i < nhot; i++) {
+
+                final ByteBuffer b = cache.get(i * 8192L, recordSize + 4);
+
+                if (b != null) {
+
+                    assertEquals(hot[i], b);
+
+                    nresident++;
+
+                }
+
+            }
+
+            assertEquals(nhot, nresident);
+
+        } finally {
+
+            cache.close();
+
+        }
+
+    }
+
+    /**
+     * The sketch estimates are monotonic in the #of accesses (up to the 4-bit
+     * saturation) and are aged by halving.
+     */
+    public void test_frequencySketch() {
+
+        final RecordCache.FrequencySketch sketch = new RecordCache.FrequencySketch(
+                16);
+
+        assertEquals(0, sketch.frequency(7L));
+
+        for (int i = 1; i <= 20; i++) {
+
+            sketch.increment(7L);
+
+            assertEquals(Math.min(15, i), sketch.frequency(7L));
+
+        }
+
+        // drive enough increments on other keys to trigger aging.
+        for (int i = 0; i < 10 * 16; i++) {
+
+            sketch.increment(1000L + i);
+
+        }
+
+        assertTrue(sketch.frequency(7L) < 15);
+
+    }
+
+}
@@ -40,6 +40,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -236,6 +237,94 @@ public class TestConcurrentJournal extends ProxyTestCase<Journal> {
 
     }
 
+    /**
+     * Submits a burst of unisolated write tasks with the adaptive group commit
+     * enabled and verifies that they are packed into fewer commit groups than
+     * tasks, even though no two tasks are running at the same time, and that
+     * the commit group size and commit latency histograms account for each
+     * group commit.
+     */
+    public void test_submit_writeService_adaptiveGroupCommit()
+            throws InterruptedException, ExecutionException {
+
+        final Properties properties = getProperties();
+
+        properties.setProperty(Options.WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT,
+                "true");
+
+        properties.setProperty(Options.WRITE_SERVICE_GROUP_COMMIT_TIMEOUT,
+                "2000");
+
+        final Journal journal = new Journal(properties);
+
+        try {
+
+            final int ntasks = 50;
+
+            final List<Future<Void>> futures = new LinkedList<Future<Void>>();
+
+            // released as each task finishes its work.
+            final Semaphore done = new Semaphore(0);
+
+            for (int i = 0; i < ntasks; i++) {
+
+                futures.add(journal.submit(new AbstractTask<Void>(journal,
+                        ITx.UNISOLATED, "foo" + i) {
+                    @Override
+                    protected Void doTask() throws Exception {
+                        // Note: write something so there is a commit.
+                        getJournal().registerIndex(getOnlyResource(),
+                                new IndexMetadata(getOnlyResource(), UUID
+                                        .randomUUID()));
+                        done.release();
+                        return null;
+                    }
+                }));
+
+                /*
+                 * Do not submit the next task until this one has run so that
+                 * the tasks never run concurrently.
+                 */
+                done.acquire();
+
+                Thread.sleep(1/* ms */);
+
+            }
+
+            for (Future<Void> f : futures) {
+
+                f.get();
+
+            }
+
+            final WriteExecutorService writeService = journal
+                    .getConcurrencyManager().getWriteService();
+
+            final long ncommits = writeService.getGroupCommitCount();
+
+            if (log.isInfoEnabled())
+                log.info("ntasks=" + ntasks + ", ncommits=" + ncommits
+                        + ", groupSize="
+                        + writeService.getCommitGroupSizeHistogram()
+                        + ", latency="
+                        + writeService.getCommitLatencyHistogram());
+
+            assertTrue("ncommits=" + ncommits, ncommits < ntasks);
+
+            assertEquals(ncommits, writeService
+                    .getCommitGroupSizeHistogram().getCount());
+
+            assertEquals(ncommits, writeService.getCommitLatencyHistogram()
+                    .getCount());
+
+        } finally {
+
+            journal.destroy();
+
+        }
+
+    }
+
     /**
      * Submits an read-only task to the transaction service and verifies that it
      * executes.
@@ -28,8 +28,11 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.journal;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.Callable;
@@ -40,6 +43,7 @@ import com.bigdata.btree.AbstractBTreeTestCase;
 import com.bigdata.btree.BTree;
 import com.bigdata.btree.IndexMetadata;
 import com.bigdata.btree.keys.KV;
+import com.bigdata.rwstore.RWStore;
 import com.bigdata.util.InnerCause;
 
 /**
@@ -788,4 +792,284 @@ public class TestSnapshotJournal extends ProxyTestCase<Journal> {
 
    }
 
+    /**
+     * Verifies that a delta snapshot can not be taken unless a full snapshot
+     * was taken since the journal was opened.
+     */
+    public void test_deltaSnapshot_noBaseline() throws IOException,
+            InterruptedException {
+
+        final Journal src = getStore(getProperties());
+
+        try {
+
+            if (!(src.getBufferStrategy() instanceof RWStrategy)) {
+                // Feature is not supported.
+                return;
+            }
+
+            final String NAME = "testIndex";
+            src.registerIndex(new IndexMetadata(NAME, UUID.randomUUID()));
+            src.commit();
+
+            final ISnapshotFactory snapshotFactory = new MySnapshotFactory(
+                    getName(), false/* compressed */);
+
+            try {
+                src.snapshotDelta(snapshotFactory).get();
+                fail("Expecting: " + IllegalStateException.class);
+            } catch (ExecutionException ex) {
+                if (InnerCause.isInnerCause(ex, IllegalStateException.class)) {
+                    if (log.isInfoEnabled())
+                        log.info("Ignoring expected exception: " + ex);
+                } else {
+                    throw new RuntimeException(ex);
+                }
+            }
+
+        } finally {
+
+            src.destroy();
+
+        }
+
+    }
+
+    /**
+     * Verifies that the file extent recorded by a delta snapshot is the extent
+     * as of the commit point of the delta rather than the current length of
+     * the file, which may have been extended by writes after that commit.
+     */
+    public void test_deltaSnapshot_extent() throws IOException,
+            InterruptedException, ExecutionException {
+
+        final Journal src = getStore(getProperties());
+
+        try {
+
+            if (!(src.getBufferStrategy() instanceof RWStrategy)) {
+                // Feature is not supported.
+                return;
+            }
+
+            final String NAME = "testIndex";
+            src.registerIndex(new IndexMetadata(NAME, UUID.randomUUID()));
+            src.commit();
+
+            final ISnapshotResult base = src.snapshot(
+                    new MySnapshotFactory(getName(), false/* compressed */))
+                    .get();
+
+            {
+                final BTree ndx = src.getIndex(NAME);
+                for (KV kv : AbstractBTreeTestCase
+                        .getRandomKeyValues(1000/* ntuples */)) {
+                    ndx.insert(kv.key, kv.val);
+                }
+            }
+            src.commit();
+
+            final long committedExtent = RWStore.getFileExtent(src
+                    .getRootBlockView());
+
+            // extend the file with writes which are not committed.
+            final byte[] data = new byte[1024 * 1024];
+            for (int i = 0; i < 20; i++) {
+                src.write(ByteBuffer.wrap(data));
+            }
+
+            final long fileLength = ((RWStrategy) src.getBufferStrategy())
+                    .getStore().getStoreFile().length();
+
+            assertTrue(fileLength > committedExtent);
+
+            final ISnapshotResult delta = src.snapshotDelta(
+                    new MySnapshotFactory(getName(), false/* compressed */))
+                    .get();
+
+            try {
+
+                final DataInputStream is = new DataInputStream(
+                        new FileInputStream(delta.getFile()));
+
+                try {
+
+                    assertEquals(DeltaSnapshotTask.MAGIC, is.readInt());
+                    assertEquals(DeltaSnapshotTask.VERSION0, is.readInt());
+                    is.readLong(); // baseCommitCounter
+                    assertEquals(delta.getRootBlock().getCommitCounter(),
+                            is.readLong());
+                    assertEquals(committedExtent, is.readLong());
+
+                } finally {
+
+                    is.close();
+
+                }
+
+            } finally {
+
+                base.getFile().delete();
+                delta.getFile().delete();
+
+            }
+
+        } finally {
+
+            src.destroy();
+
+        }
+
+    }
+
+    /**
+     * Take a full snapshot followed by a chain of delta snapshots, restore a
+     * journal from the full snapshot and the deltas and verify that it has the
+     * same data as the source journal.
+     */
+    public void test_deltaSnapshot_restore() throws IOException,
+            InterruptedException, ExecutionException {
+
+        final File out = File.createTempFile(getName(), Options.JNL);
+
+        try {
+
+            final Journal src = getStore(getProperties());
+
+            try {
+
+                if (!(src.getBufferStrategy() instanceof RWStrategy)) {
+                    // Feature is not supported.
+                    return;
+                }
+
+                final String NAME1 = "testIndex1";
+                final String NAME2 = "testIndex2";
+                src.registerIndex(new IndexMetadata(NAME1, UUID.randomUUID()));
+                {
+                    final BTree ndx = src.getIndex(NAME1);
+                    for (KV kv : AbstractBTreeTestCase
+                            .getRandomKeyValues(1000/* ntuples */)) {
+                        ndx.insert(kv.key, kv.val);
+                    }
+                }
+                src.commit();
+
+                final ISnapshotResult base = src.snapshot(
+                        new MySnapshotFactory(getName(), true/* compressed */))
+                        .get();
+
+                // update the index.
+                {
+                    final BTree ndx = src.getIndex(NAME1);
+                    for (KV kv : AbstractBTreeTestCase
+                            .getRandomKeyValues(1000/* ntuples */)) {
+                        ndx.insert(kv.key, kv.val);
+                    }
+                }
+                src.commit();
+
+                final ISnapshotResult delta1 = src.snapshotDelta(
+                        new MySnapshotFactory(getName(), false/* compressed */))
+                        .get();
+
+                // register and populate another index.
+                src.registerIndex(new IndexMetadata(NAME2, UUID.randomUUID()));
+                {
+                    final BTree ndx = src.getIndex(NAME2);
+                    for (KV kv : AbstractBTreeTestCase
+                            .getRandomKeyValues(1000/* ntuples */)) {
+                        ndx.insert(kv.key, kv.val);
+                    }
+                }
+                src.commit();
+
+                final ISnapshotResult delta2 = src.snapshotDelta(
+                        new MySnapshotFactory(getName(), true/* compressed */))
+                        .get();
+
+                assertEquals(src.getRootBlockView().getCommitCounter(), delta2
+                        .getRootBlock().getCommitCounter());
+
+                try {
+
+                    // Nothing was committed since the last delta.
+                    try {
+                        src.snapshotDelta(
+                                new MySnapshotFactory(getName(), false/* compressed */))
+                                .get();
+                        fail("Expecting: " + IllegalStateException.class);
+                    } catch (ExecutionException ex) {
+                        if (!InnerCause.isInnerCause(ex,
+                                IllegalStateException.class))
+                            throw new RuntimeException(ex);
+                    }
+
+                    // The deltas must be applied in commit order.
+                    {
+                        final File tmp = File.createTempFile(getName(),
+                                Options.JNL);
+                        try {
+                            DeltaSnapshotTask.restore(base.getFile(),
+                                    new File[] { delta2.getFile() }, tmp);
+                            fail("Expecting: " + IOException.class);
+                        } catch (IOException ex) {
+                            if (log.isInfoEnabled())
+                                log.info("Ignoring expected exception: " + ex);
+                        } finally {
+                            tmp.delete();
+                        }
+                    }
+
+                    DeltaSnapshotTask.restore(base.getFile(), new File[] {
+                            delta1.getFile(), delta2.getFile() }, out);
+
+                    final Properties properties = getProperties();
+
+                    properties.setProperty(Journal.Options.FILE, out.toString());
+
+                    properties.setProperty(Journal.Options.CREATE_TEMP_FILE,
+                            "false");
+
+                    final Journal newJournal = new Journal(properties);
+
+                    try {
+
+                        assertEquals(delta2.getRootBlock().getCommitCounter(),
+                                newJournal.getRootBlockView().getCommitCounter());
+
+                        AbstractBTreeTestCase.assertSameBTree(
+                                src.getIndex(NAME1), newJournal.getIndex(NAME1));
+
+                        AbstractBTreeTestCase.assertSameBTree(
+                                src.getIndex(NAME2), newJournal.getIndex(NAME2));
+
+                    } finally {
+
+                        newJournal.destroy();
+
+                    }
+
+                } finally {
+
+                    base.getFile().delete();
+                    delta1.getFile().delete();
+                    delta2.getFile().delete();
+
+                }
+
+            } finally {
+
+                src.destroy();
+
+            }
+
+        } finally {
+
+            out.delete();
+
+        }
+
+    }
+
 }
@@ -31,7 +31,10 @@ package com.bigdata.journal;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -40,11 +43,12 @@ import java.util.concurrent.Future;
 import com.bigdata.btree.AbstractBTreeTestCase;
 import com.bigdata.btree.BTree;
 import com.bigdata.btree.BaseIndexStats;
+import com.bigdata.btree.ITupleIterator;
 import com.bigdata.btree.IndexMetadata;
 import com.bigdata.btree.keys.KV;
 
 /**
- * Test suite for {@link WarmUpTask}.
+ * Test suite for {@link WarmUpTask} and the {@link HotPageManifest}.
  * 
  * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
  * 
@@ -467,4 +471,161 @@ public class TestWarmupJournal extends ProxyTestCase<Journal> {
 
    }
 
+    /**
+     * Verify that records read many times survive a scan of records which are
+     * read only once.
+     */
+    public void test_hotPageManifest_scanResistance() {
+
+        final HotPageManifest manifest = new HotPageManifest(64/* capacity */);
+
+        assertEquals(64, manifest.capacity());
+
+        // A hot set which is read repeatedly.
+        for (int pass = 0; pass < 10; pass++) {
+            for (long addr = 1; addr <= 8; addr++) {
+                manifest.touch(addr);
+            }
+        }
+
+        // A scan which reads each of many records once.
+        for (long addr = 1000; addr < 1500; addr++) {
+            manifest.touch(addr);
+        }
+
+        final long[] hot = manifest.getHotAddrs();
+
+        assertTrue(hot.length >= 8);
+
+        // The hot set is reported first.
+        final Set<Long> first = new HashSet<Long>();
+        for (int i = 0; i < 8; i++) {
+            first.add(hot[i]);
+        }
+        for (long addr = 1; addr <= 8; addr++) {
+            assertTrue("addr=" + addr, first.contains(addr));
+        }
+
+    }
+
+    /**
+     * Verify that nearby records are coalesced into a single read in offset
+     * order and that records beyond the extent are dropped.
+     */
+    public void test_hotPageManifest_coalesce() {
+
+        final long[][] runs = ManifestWarmUpTask.coalesce(//
+                new long[] { 5000000L, 100L, 0L, 9000000L },//
+                new long[] { 10L, 10L, 50L, 10L },//
+                6000000L/* extent */);
+
+        assertEquals(2, runs[0].length);
+
+        assertEquals(0L, runs[0][0]);
+        assertEquals(110L, runs[1][0]);
+
+        assertEquals(5000000L, runs[0][1]);
+        assertEquals(10L, runs[1][1]);
+
+    }
+
+    /**
+     * Verify that the manifest of the hot records is written when the journal
+     * is shutdown and may be used to warm up the journal when it is reopened.
+     */
+    public void test_hotPageManifest_warmUp() throws Exception {
+
+        final Properties properties = (Properties) getProperties().clone();
+
+        properties.setProperty(Journal.Options.HOT_PAGE_MANIFEST, "true");
+
+        properties.setProperty(Journal.Options.HOT_PAGE_MANIFEST_INTERVAL, "0");
+
+        Journal src = getStore(properties);
+
+        try {
+
+            if (!(src.getBufferStrategy() instanceof IHABufferStrategy)
+                    || !src.isStable() || src.getFile() == null) {
+                // Feature is not supported.
+                return;
+            }
+
+            // Await the start of the plugin.
+            for (int i = 0; i < 100 && src.getHotPageManifest() == null; i++) {
+                Thread.sleep(50/* ms */);
+            }
+
+            final HotPageManifest manifest = src.getHotPageManifest();
+
+            assertNotNull(manifest);
+
+            final String NAME = "testIndex";
+            src.registerIndex(new IndexMetadata(NAME, UUID.randomUUID()));
+            {
+                final BTree ndx = src.getIndex(NAME);
+                for (KV kv : AbstractBTreeTestCase
+                        .getRandomKeyValues(10000/* ntuples */)) {
+                    ndx.insert(kv.key, kv.val);
+                }
+            }
+            final long commitTime = src.commit();
+
+            // Scan a historical view, which reads the pages from the store.
+            {
+                final ITupleIterator<?> itr = src.getIndex(NAME, commitTime)
+                        .rangeIterator();
+                while (itr.hasNext())
+                    itr.next();
+            }
+
+            assertTrue(manifest.getHotAddrs().length > 0);
+
+            final File file = HotPageManifest.getManifestFile(src.getFile());
+
+            assertFalse(file.exists());
+
+            final File journalFile = src.getFile();
+
+            src.shutdown();
+
+            assertTrue(file.exists());
+
+            // Reopen the journal.
+            properties.setProperty(Options.CREATE_TEMP_FILE, "false");
+            properties.setProperty(Options.FILE, journalFile.toString());
+            properties.setProperty(Journal.Options.WARM_UP_BYTES, "0");
+
+            src = new Journal(properties);
+
+            final long nbytes = new ManifestWarmUpTask(src, file,
+                    Long.MAX_VALUE/* maxBytes */, 4/* nparallel */).call();
+
+            assertTrue(nbytes > 0);
+
+            // A smaller budget selects fewer records.
+            final UUID uuid = src.getRootBlockView().getUUID();
+            final long[][] all = HotPageManifest.read(file, uuid,
+                    Long.MAX_VALUE/* maxBytes */);
+            long total = 0;
+            for (long len : all[1])
+                total += len;
+            final long[][] some = HotPageManifest.read(file, uuid,
+                    total / 4/* maxBytes */);
+            assertTrue(some[0].length < all[0].length);
+
+            // The manifest is deleted with the journal.
+            src.destroy();
+
+            assertFalse(file.exists());
+
+        } finally {
+
+            if (src.isOpen())
+                src.destroy();
+
+        }
+
+    }
+
 }
@@ -0,0 +1,249 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rwstore;
+
+import java.nio.ByteBuffer;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.journal.BufferMode;
+import com.bigdata.journal.Journal;
+import com.bigdata.journal.Options;
+import com.bigdata.journal.RWStrategy;
+import com.bigdata.util.DaemonThreadFactory;
+
+/**
+ * A benchmark for the rate at which concurrent unisolated writers can
+ * allocate and write small records on the {@link RWStore}, with and without
+ * allocation stripes. The rate is reported for a varying #of writer threads.
+ * Each run writes a fixed #of records per writer and then commits.
+ * <p>
+ * Note: This is not part of the test suite. Run it from the command line or
+ * under a profiler.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ *
+ * @see RWStore.Options#ALLOCATION_STRIPES
+ */
+public class BenchmarkConcurrentAllocation extends TestCase2 {
+
+    /**
+     *
+     */
+    public BenchmarkConcurrentAllocation() {
+    }
+
+    /**
+     * @param name
+     */
+    public BenchmarkConcurrentAllocation(String name) {
+        super(name);
+    }
+
+    /**
+     * The #of writer threads for each run.
+     */
+    protected int[] getWriterCounts() {
+
+        return new int[] { 1, 2, 4, 8, 16 };
+
+    }
+
+    /**
+     * The #of records written by each writer in each run.
+     */
+    protected int getRecordsPerWriter() {
+
+        return 50000;
+
+    }
+
+    /**
+     * The maximum size of a record. Record sizes are uniformly distributed
+     * in [1:max], which is representative of small nodes, leaves and raw
+     * records.
+     */
+    protected int getMaxRecordSize() {
+
+        return 512;
+
+    }
+
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        properties.setProperty(Options.BUFFER_MODE, BufferMode.DiskRW
+                .toString());
+
+        properties.setProperty(Options.CREATE_TEMP_FILE, "true");
+
+        properties.setProperty(Options.DELETE_ON_EXIT, "true");
+
+        return properties;
+
+    }
+
+    static NumberFormat cf;
+
+    static {
+
+        cf = NumberFormat.getNumberInstance();
+
+        cf.setGroupingUsed(true);
+
+    }
+
+    public void testAllocationRate() throws Exception {
+
+        final int nprocs = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("nprocs=" + nprocs + ", recordsPerWriter="
+                + getRecordsPerWriter() + ", maxRecordSize="
+                + getMaxRecordSize());
+
+        // warm up the JVM (not reported).
+        doAllocationRateTest(1/* nwriters */, 0/* nstripes */);
+        doAllocationRateTest(1/* nwriters */, 1/* nstripes */);
+
+        System.out.println("writers\tstripes\trecords/sec\tspeedup");
+
+        for (int nwriters : getWriterCounts()) {
+
+            final long base = doAllocationRateTest(nwriters, 0/* nstripes */);
+
+            System.out.println(nwriters + "\t0\t" + cf.format(base) + "\t1.00");
+
+            final int nstripes = Math.max(nwriters, nprocs);
+
+            final long striped = doAllocationRateTest(nwriters, nstripes);
+
+            System.out.println(nwriters + "\t" + nstripes + "\t"
+                    + cf.format(striped) + "\t"
+                    + String.format("%.2f", (double) striped / base));
+
+        }
+
+    }
+
+    /**
+     * Run the writers against a new store.
+     *
+     * @return The #of records written per second, including the commit.
+     */
+    protected long doAllocationRateTest(final int nwriters, final int nstripes)
+            throws Exception {
+
+        final Properties properties = getProperties();
+
+        properties.setProperty(RWStore.Options.ALLOCATION_STRIPES, ""
+                + nstripes);
+
+        final Journal journal = new Journal(properties);
+
+        final ExecutorService service = Executors
+                .newFixedThreadPool(nwriters, DaemonThreadFactory
+                        .defaultThreadFactory());
+
+        try {
+
+            final RWStrategy bs = (RWStrategy) journal.getBufferStrategy();
+
+            final int nrecs = getRecordsPerWriter();
+
+            final int maxSize = getMaxRecordSize();
+
+            final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+            for (int i = 0; i < nwriters; i++) {
+
+                final Random r = new Random(i);
+
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        final byte[] b = new byte[maxSize];
+                        r.nextBytes(b);
+                        for (int j = 0; j < nrecs; j++) {
+                            bs.write(ByteBuffer.wrap(b, 0,
+                                    1 + r.nextInt(maxSize)));
+                        }
+                        return null;
+                    }
+                });
+
+            }
+
+            final long begin = System.nanoTime();
+
+            for (Future<Void> f : service.invokeAll(tasks)) {
+
+                f.get();
+
+            }
+
+            journal.commit();
+
+            final long elapsed = System.nanoTime() - begin;
+
+            return (long) (nwriters * (long) nrecs * 1e9 / elapsed);
+
+        } finally {
+
+            service.shutdownNow();
+
+            service.awaitTermination(10, TimeUnit.SECONDS);
+
+            journal.destroy();
+
+        }
+
+    }
+
+    /**
+     * Main routine can be used for running the benchmark under a performance
+     * analyzer.
+     *
+     * @param args
+     *            Not used.
+     *
+     * @throws Exception
+     */
+    public static void main(final String[] args) throws Exception {
+
+        new BenchmarkConcurrentAllocation().testAllocationRate();
+
+    }
+
+}
@@ -31,11 +31,14 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
@@ -51,6 +54,8 @@ import com.bigdata.btree.ITupleIterator;
 import com.bigdata.btree.IndexMetadata;
 import com.bigdata.btree.SimpleEntry;
 import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.ICounter;
 import com.bigdata.journal.AbstractInterruptsTestCase;
 import com.bigdata.journal.AbstractJournal.ISnapshotEntry;
 import com.bigdata.journal.AbstractJournalTestCase;
@@ -64,6 +69,7 @@ import com.bigdata.journal.ICommitRecord;
 import com.bigdata.journal.IRootBlockView;
 import com.bigdata.journal.Journal;
 import com.bigdata.journal.Journal.Options;
+import com.bigdata.journal.OnlineCompactionTask;
 import com.bigdata.journal.RWStrategy;
 import com.bigdata.journal.TestJournalAbort;
 import com.bigdata.journal.TestJournalBasics;
@@ -1996,6 +2002,600 @@ public class TestRWJournal extends AbstractJournalTestCase {
 
 		}
 		
+		/**
+		 * Verify that records are read back correctly from a memory mapped
+		 * file, both before and after the file has been extended.
+		 *
+		 * @see RWStore.Options#MAPPED_READS
+		 */
+		public void test_mappedReads() {
+
+			final Properties properties = new Properties(getProperties());
+
+			properties.setProperty(RWStore.Options.MAPPED_READS, "true");
+
+			// reads must not be satisfied from the ReadCache.
+			properties.setProperty(Options.READ_CACHE_BUFFER_COUNT, "0");
+
+			final Journal store = getStore(properties);
+
+			try {
+
+				final RWStrategy bs = (RWStrategy) store.getBufferStrategy();
+
+				final RWStore rw = bs.getStore();
+
+				final int nrecs = 2000;
+
+				final long[] addrs = new long[nrecs];
+
+				final byte[][] data = new byte[nrecs][];
+
+				for (int i = 0; i < nrecs; i++) {
+
+					data[i] = new byte[1 + r.nextInt(4000)];
+
+					r.nextBytes(data[i]);
+
+					addrs[i] = bs.write(ByteBuffer.wrap(data[i]));
+
+					if (i == nrecs / 2) {
+						// commit half way so the file is extended afterwards.
+						store.commit();
+					}
+
+				}
+
+				store.commit();
+
+				// discard any cached records so the reads go to the file.
+				rw.getWriteCacheService().resetAndClear();
+
+				for (int i = 0; i < nrecs; i++) {
+
+					final ByteBuffer rdBuf = bs.read(addrs[i]);
+
+					assertEquals(ByteBuffer.wrap(data[i]), rdBuf);
+
+				}
+
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} finally {
+
+				store.destroy();
+
+			}
+
+		}
+
+		/**
+		 * Verify that a record read from a memory mapped file is not changed
+		 * when its slot is freed, recycled and overwritten by another record.
+		 * The mapped reads must hand out copies since the caller may retain
+		 * the record (e.g., as a decoded node or leaf).
+		 *
+		 * @see RWStore.Options#MAPPED_READS
+		 */
+		public void test_mappedReadsRecycledSlot() {
+
+			final Properties properties = new Properties(getProperties());
+
+			properties.setProperty(RWStore.Options.MAPPED_READS, "true");
+
+			// reads must not be satisfied from the ReadCache.
+			properties.setProperty(Options.READ_CACHE_BUFFER_COUNT, "0");
+
+			// no history so the slot is recycled by the next commit.
+			properties.setProperty(
+					AbstractTransactionService.Options.MIN_RELEASE_AGE, "0");
+
+			final Journal store = getStore(properties);
+
+			try {
+
+				final RWStrategy bs = (RWStrategy) store.getBufferStrategy();
+
+				final RWStore rw = bs.getStore();
+
+				final byte[] data = new byte[200];
+
+				r.nextBytes(data);
+
+				final long addr = bs.write(ByteBuffer.wrap(data));
+
+				final long paddr = bs.getPhysicalAddress(addr);
+
+				store.commit();
+
+				// discard any cached records so the read goes to the file.
+				rw.getWriteCacheService().resetAndClear();
+				rw.getWriteCacheService().setExtent(rw.getStoreFile().length());
+
+				final ByteBuffer rdBuf = bs.read(addr);
+
+				assertEquals(ByteBuffer.wrap(data), rdBuf);
+
+				bs.delete(addr);
+
+				store.commit();
+
+				// allocate records of the same size until the slot is reused.
+				final byte[] data2 = new byte[data.length];
+
+				r.nextBytes(data2);
+
+				long addr2 = 0L;
+
+				for (int i = 0; i < 1000 && addr2 == 0L; i++) {
+
+					final long tmp = bs.write(ByteBuffer.wrap(data2));
+
+					if (bs.getPhysicalAddress(tmp) == paddr)
+						addr2 = tmp;
+
+				}
+
+				assertTrue("Slot not recycled", addr2 != 0L);
+
+				store.commit();
+
+				rw.getWriteCacheService().resetAndClear();
+
+				// the recycled slot is read back through the mapping.
+				assertEquals(ByteBuffer.wrap(data2), bs.read(addr2));
+
+				// the previously returned record is unchanged.
+				assertEquals(ByteBuffer.wrap(data), rdBuf);
+
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} finally {
+
+				store.destroy();
+
+			}
+
+		}
+
+		/**
+		 * Verify that records read through the write cache service are served
+		 * from the scan resistant record cache once they have been admitted.
+		 *
+		 * @see Options#RECORD_CACHE_BUFFER_COUNT
+		 */
+		public void test_recordCache() {
+
+			final Properties properties = new Properties(getProperties());
+
+			properties.setProperty(Options.RECORD_CACHE_BUFFER_COUNT, "2");
+
+			// reads must not be satisfied from the ReadCache.
+			properties.setProperty(Options.READ_CACHE_BUFFER_COUNT, "0");
+
+			final Journal store = getStore(properties);
+
+			try {
+
+				final RWStrategy bs = (RWStrategy) store.getBufferStrategy();
+
+				final RWStore rw = bs.getStore();
+
+				final int nrecs = 200;
+
+				final long[] addrs = new long[nrecs];
+
+				final byte[][] data = new byte[nrecs][];
+
+				for (int i = 0; i < nrecs; i++) {
+
+					data[i] = new byte[1 + r.nextInt(2000)];
+
+					r.nextBytes(data[i]);
+
+					addrs[i] = bs.write(ByteBuffer.wrap(data[i]));
+
+				}
+
+				store.commit();
+
+				// discard the write cache so the reads go to the file.
+				rw.getWriteCacheService().resetAndClear();
+
+				final long nadmit0 = getRecordCacheCounter(rw, "nadmit");
+
+				final long nhit0 = getRecordCacheCounter(rw, "nhit");
+
+				for (int pass = 0; pass < 2; pass++) {
+
+					for (int i = 0; i < nrecs; i++) {
+
+						assertEquals(ByteBuffer.wrap(data[i]), bs.read(addrs[i]));
+
+					}
+
+				}
+
+				// admitted on the first pass, read from the cache on the second.
+				assertEquals(nrecs, getRecordCacheCounter(rw, "nadmit") - nadmit0);
+
+				assertEquals(nrecs, getRecordCacheCounter(rw, "nhit") - nhit0);
+
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} finally {
+
+				store.destroy();
+
+			}
+
+		}
+
+		private long getRecordCacheCounter(final RWStore rw, final String name) {
+
+			final CounterSet counters = (CounterSet) rw.getWriteCacheService()
+					.getCounters().getPath("recordCache");
+
+			return ((Long) ((ICounter<?>) counters.getChild(name)).getValue())
+					.longValue();
+
+		}
+
+		/**
+		 * Verify that an online compaction relocates the records of a sparse
+		 * B+Tree off the evacuated allocators and that the data are intact
+		 * both before and after the store is reopened.
+		 *
+		 * @see RWStore#evacuate(float, int)
+		 * @see BTree#relocate(com.bigdata.rawstore.IAddressFilter, long)
+		 */
+		public void test_onlineCompaction() throws Exception {
+
+			final Properties properties = new Properties(getProperties());
+
+			// recycle freed records at the next commit.
+			properties.setProperty(
+					AbstractTransactionService.Options.MIN_RELEASE_AGE, "0");
+
+			Journal store = getStore(properties);
+
+			try {
+
+				final String name = "test";
+
+				final int nkeys = 20000;
+
+				final IndexMetadata metadata = new IndexMetadata(
+						UUID.randomUUID());
+
+				metadata.setBranchingFactor(16);
+
+				BTree btree = (BTree) store.register(name, metadata);
+
+				final KeyBuilder keyBuilder = new KeyBuilder(Bytes.SIZEOF_INT);
+
+				final byte[][] vals = new byte[nkeys][];
+
+				for (int i = 0; i < nkeys; i++) {
+
+					vals[i] = new byte[20 + r.nextInt(40)];
+
+					r.nextBytes(vals[i]);
+
+					btree.insert(keyBuilder.reset().append(i).getKey(), vals[i]);
+
+				}
+
+				store.commit();
+
+				// remove most of the tuples, leaving the allocators sparse.
+				for (int i = 0; i < nkeys; i++) {
+
+					if (i % 10 != 0) {
+
+						btree.remove(keyBuilder.reset().append(i).getKey());
+
+						vals[i] = null;
+
+					}
+
+				}
+
+				store.commit();
+
+				final RWStore rw = ((RWStrategy) store.getBufferStrategy())
+						.getStore();
+
+				final OnlineCompactionTask task = new OnlineCompactionTask(
+						store, .5f/* maxOccupancy */, 100/* maxAllocators */,
+						Long.MAX_VALUE/* maxRelocations */, 3/* maxPasses */);
+
+				long nrelocated = 0;
+
+				for (int i = 0; i < 10; i++) {
+
+					nrelocated += task.compact();
+
+					store.commit();
+
+				}
+
+				assertTrue(nrelocated > 0);
+
+				assertTrue(getCompactionCounter(rw, "nevacuated") > 0);
+
+				btree = store.getIndex(name);
+
+				verifyCompactedIndex(btree, keyBuilder, vals);
+
+				store = (Journal) reopenStore(store);
+
+				btree = store.getIndex(name);
+
+				verifyCompactedIndex(btree, keyBuilder, vals);
+
+			} finally {
+
+				store.destroy();
+
+			}
+
+		}
+
+		/**
+		 * Verify that the regions at the end of the heap are released once the
+		 * evacuated allocators no longer hold any records, that the heap is
+		 * trimmed, and that the released regions may be recruited again.
+		 *
+		 * @see RWStore#evacuate(float, int)
+		 */
+		public void test_onlineCompactionTrim() throws Exception {
+
+			final Properties properties = new Properties(getProperties());
+
+			// recycle freed records at the next commit.
+			properties.setProperty(
+					AbstractTransactionService.Options.MIN_RELEASE_AGE, "0");
+
+			Journal store = getStore(properties);
+
+			try {
+
+				RWStrategy bs = (RWStrategy) store.getBufferStrategy();
+
+				final RWStore rw = bs.getStore();
+
+				final byte[] keep = new byte[1000];
+
+				r.nextBytes(keep);
+
+				final long keepAddr = bs.write(ByteBuffer.wrap(keep));
+
+				store.commit();
+
+				final int nrecs = 20000;
+
+				final long[] addrs = new long[nrecs];
+
+				for (int i = 0; i < nrecs; i++) {
+
+					addrs[i] = bs.write(ByteBuffer.wrap(new byte[1000]));
+
+				}
+
+				store.commit();
+
+				// the end of the heap (in 64K units).
+				final long heapEnd0 = store.getRootBlockView().getNextOffset() >> 32;
+
+				for (int i = 0; i < nrecs; i++) {
+
+					bs.delete(addrs[i]);
+
+				}
+
+				store.commit();
+
+				assertTrue(rw.evacuate(.5f, Integer.MAX_VALUE) > 0);
+
+				// recycles the deletes, then releases the empty blocks.
+				store.commit();
+				store.commit();
+
+				assertTrue(getCompactionCounter(rw, "nreleasedBlocks") > 0);
+
+				assertTrue((store.getRootBlockView().getNextOffset() >> 32) < heapEnd0);
+
+				rw.cancelEvacuation();
+
+				// recruit the released regions again.
+				final byte[][] data = new byte[nrecs][];
+
+				for (int i = 0; i < nrecs; i++) {
+
+					data[i] = new byte[1 + r.nextInt(1000)];
+
+					r.nextBytes(data[i]);
+
+					addrs[i] = bs.write(ByteBuffer.wrap(data[i]));
+
+				}
+
+				store.commit();
+
+				store = (Journal) reopenStore(store);
+
+				bs = (RWStrategy) store.getBufferStrategy();
+
+				assertEquals(ByteBuffer.wrap(keep), bs.read(keepAddr));
+
+				for (int i = 0; i < nrecs; i++) {
+
+					assertEquals(ByteBuffer.wrap(data[i]), bs.read(addrs[i]));
+
+				}
+
+			} finally {
+
+				store.destroy();
+
+			}
+
+		}
+
+		private void verifyCompactedIndex(final BTree btree,
+				final KeyBuilder keyBuilder, final byte[][] vals) {
+
+			int n = 0;
+
+			for (int i = 0; i < vals.length; i++) {
+
+				final byte[] val = btree.lookup(keyBuilder.reset().append(i)
+						.getKey());
+
+				if (vals[i] == null) {
+
+					assertNull(val);
+
+				} else {
+
+					assertEquals(vals[i], val);
+
+					n++;
+
+				}
+
+			}
+
+			assertEquals(n, btree.rangeCount());
+
+		}
+
+		private long getCompactionCounter(final RWStore rw, final String name) {
+
+			final CounterSet counters = (CounterSet) rw.getCounters().getPath(
+					"compaction");
+
+			return ((Long) ((ICounter<?>) counters.getChild(name)).getValue())
+					.longValue();
+
+		}
+
+		/**
+		 * Verify that concurrent unisolated writers may allocate from the
+		 * allocation stripes, that the slots which are still reserved are
+		 * released by a commit and discarded by an abort, and that the
+		 * records are read back correctly.
+		 * 
+		 * @see RWStore.Options#ALLOCATION_STRIPES
+		 */
+		public void test_allocationStripes() throws Exception {
+
+			final Properties properties = new Properties(getProperties());
+
+			properties.setProperty(RWStore.Options.ALLOCATION_STRIPES, "4");
+
+			properties.setProperty(RWStore.Options.ALLOCATION_STRIPE_RESERVE, "8");
+
+			final Journal store = getStore(properties);
+
+			try {
+
+				final RWStrategy bs = (RWStrategy) store.getBufferStrategy();
+
+				final RWStore rw = bs.getStore();
+
+				final int nwriters = 8;
+
+				final int nrecs = 500;
+
+				final long[][] addrs = new long[nwriters][nrecs];
+
+				final byte[][][] data = new byte[nwriters][nrecs][];
+
+				final ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+				for (int w = 0; w < nwriters; w++) {
+
+					final int writer = w;
+
+					final Random rnd = new Random(r.nextLong());
+
+					futures.add(store.getExecutorService().submit(
+							new Callable<Void>() {
+								@Override
+								public Void call() throws Exception {
+									for (int i = 0; i < nrecs; i++) {
+										final byte[] b = new byte[1 + rnd
+												.nextInt(1000)];
+										rnd.nextBytes(b);
+										data[writer][i] = b;
+										addrs[writer][i] = bs.write(ByteBuffer
+												.wrap(b));
+									}
+									return null;
+								}
+							}));
+
+				}
+
+				for (Future<Void> f : futures) {
+					f.get();
+				}
+
+				store.commit();
+
+				// every unused slot was released by the commit.
+				assertTrue(getStripeCounter(rw, "nallocs") >= nwriters * nrecs);
+				assertEquals(getStripeCounter(rw, "nreserved"),
+						getStripeCounter(rw, "nallocs")
+								+ getStripeCounter(rw, "nreleased"));
+
+				final Set<Long> distinct = new HashSet<Long>();
+
+				for (int w = 0; w < nwriters; w++) {
+					for (int i = 0; i < nrecs; i++) {
+						assertTrue(distinct.add(addrs[w][i]));
+						assertEquals(ByteBuffer.wrap(data[w][i]),
+								bs.read(addrs[w][i]));
+					}
+				}
+
+				// reserve and use some slots, then abort.
+				bs.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+
+				store.abort();
+
+				assertTrue(getStripeCounter(rw, "ndiscarded") > 0);
+
+				// the committed records are unchanged.
+				rw.getWriteCacheService().resetAndClear();
+
+				for (int w = 0; w < nwriters; w++) {
+					for (int i = 0; i < nrecs; i++) {
+						assertEquals(ByteBuffer.wrap(data[w][i]),
+								bs.read(addrs[w][i]));
+					}
+				}
+
+			} finally {
+
+				store.destroy();
+
+			}
+
+		}
+
+		private long getStripeCounter(final RWStore rw, final String name) {
+
+			final CounterSet counters = (CounterSet) rw.getCounters().getPath(
+					"allocationStripes");
+
+			return ((Long) ((ICounter<?>) counters.getChild(name)).getValue())
+					.longValue();
+
+		}
+
 		public void test_stressBlobReadBack() {
 			for (int i = 0; i < 100; i++) {
 				test_blob_readBack();
@@ -26,6 +26,8 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
  */
 package com.bigdata.rdf.lexicon;
 
+import com.bigdata.btree.AbstractBTree;
+import com.bigdata.btree.Finger;
 import com.bigdata.btree.IIndex;
 import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure;
 import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedureConstructor;
@@ -158,6 +160,12 @@ public class Id2TermWriteProc extends AbstractKeyArrayIndexProcedure<Void> imple
     public Void applyOnce(final IIndex ndx, final IRaba keys, final IRaba vals) {
         
     	final int n = keys.size();
+
+        // Use a finger since the keys are sorted (local B+Tree only).
+        final AbstractBTree btree = ndx instanceof AbstractBTree ? (AbstractBTree) ndx
+                : null;
+
+        final Finger finger = btree == null ? null : new Finger(btree);
         
         for (int i = 0; i < n; i++) {
 
@@ -274,7 +282,11 @@ public class Id2TermWriteProc extends AbstractKeyArrayIndexProcedure<Void> imple
                  */
 
             // See BLZG-1539
-            ndx.putIfAbsent(key, vals.get(i));
+            if (btree == null) {
+                ndx.putIfAbsent(key, vals.get(i));
+            } else {
+                btree.putIfAbsent(key, vals.get(i), finger);
+            }
             
 //                if (!ndx.contains(key)) {
 //
@@ -34,6 +34,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
+import com.bigdata.btree.AbstractBTree;
+import com.bigdata.btree.Finger;
 import com.bigdata.btree.ICounter;
 import com.bigdata.btree.IIndex;
 import com.bigdata.btree.keys.KeyBuilder;
@@ -308,6 +310,16 @@ public class Term2IdWriteProc extends AbstractKeyArrayIndexProcedure<Result> imp
         
 //        final DataOutputBuffer kbuf = new DataOutputBuffer(128);
 
+        /*
+         * The keys are sorted, so the lookup and the insert for each term
+         * resume from the leaf located by the previous term when the index
+         * is a local B+Tree.
+         */
+        final AbstractBTree btree = ndx instanceof AbstractBTree ? (AbstractBTree) ndx
+                : null;
+
+        final Finger finger = btree == null ? null : new Finger(btree);
+
         // #of new terms (#of writes on the index).
         int nnew = 0;
         for (int i = 0; i < numTerms; i++) {
@@ -367,7 +379,8 @@ public class Term2IdWriteProc extends AbstractKeyArrayIndexProcedure<Result> imp
                  * @todo reuse Tuple for lookups to reduce allocation (will
                  * reuse an internal buffer).
                  */
-                final byte[] tmp = ndx.lookup(key);
+                final byte[] tmp = btree == null ? ndx.lookup(key) : btree
+                        .lookup(key, finger);
     
                 if (tmp == null) {
 
@@ -406,7 +419,10 @@ public class Term2IdWriteProc extends AbstractKeyArrayIndexProcedure<Result> imp
                         idbuf.reset().write(bytes);
 
                         // insert into index.
-                        if (ndx.insert(key, idbuf.toByteArray()) != null) {
+                        final byte[] val = idbuf.toByteArray();
+
+                        if ((btree == null ? ndx.insert(key, val) : btree
+                                .insert(key, val, finger)) != null) {
 
                             throw new AssertionError();
 
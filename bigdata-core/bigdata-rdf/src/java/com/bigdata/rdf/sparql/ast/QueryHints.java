@@ -37,8 +37,11 @@ import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
 import com.bigdata.bop.fed.QueryEngineFactory;
 import com.bigdata.bop.join.HashJoinAnnotations;
+import com.bigdata.bop.solutions.ExternalMemorySortOp;
+import com.bigdata.bop.solutions.MemorySortOp;
 import com.bigdata.htree.HTree;
 import com.bigdata.io.DirectBufferPool;
+import com.bigdata.rdf.sail.BigdataSail;
 import com.bigdata.rdf.sparql.ast.cache.CacheConnectionFactory;
 import com.bigdata.rdf.sparql.ast.hints.QueryHintRegistry;
 import com.bigdata.rdf.sparql.ast.hints.QueryHintScope;
@@ -206,6 +209,7 @@ public interface QueryHints {
      * @see #NATIVE_DISTINCT_SPO
      * @see #NATIVE_DISTINCT_SOLUTIONS
      * @see #NATIVE_HASH_JOINS
+     * @see #NATIVE_SORT
      * @see #MERGE_JOIN
      * 
      * @see <a href="http://jira.blazegraph.com/browse/BLZG-43" > Add System 
@@ -233,8 +237,9 @@ public interface QueryHints {
      * <p>
      * Native memory allocations are made using a {@link DirectBufferPool}. The
      * per-query limit will be rounded up to a multiple of buffers based on the
-     * configured buffer capacity. The default is a 1MB buffer, so the
-     * granularity of the limit is multiples of 1MB.
+     * capacity of the smallest size class which can back a sector of the
+     * query's memory manager. With the default size classes this is a 256KB
+     * buffer, so the granularity of the limit is multiples of 256KB.
      * 
      * @see DirectBufferPool
      * @see <a href="http://jira.blazegraph.com/browse/BLZG-42" > Per query
@@ -245,6 +250,63 @@ public interface QueryHints {
     long DEFAULT_ANALYTIC_MAX_MEMORY_PER_QUERY = Long.valueOf(System
             .getProperty(QueryHints.class.getName() + "."
                     + ANALYTIC_MAX_MEMORY_PER_QUERY, "0"));
+
+    /**
+     * The fair share weight of the query. When the operator task scheduler of
+     * the query engine is enabled, the operator tasks of a query having weight
+     * <code>w</code> are dispatched <code>w</code> times as often as those of
+     * a query having weight one while both have tasks waiting for a worker
+     * thread. This may be used to keep short lookup queries responsive while
+     * heavy analytic queries are running, e.g.:
+     * 
+     * <pre>
+     * hint:Query hint:fairShareWeight "4".
+     * </pre>
+     * 
+     * The default is ONE (1). A default for a KB may be specified using
+     * {@link BigdataSail.Options#FAIR_SHARE_WEIGHT}. The global default may be
+     * overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.fairShareWeight
+     * </pre>
+     * 
+     * @see QueryEngine.Annotations#FAIR_SHARE_WEIGHT
+     * @see QueryEngine.Options#OPERATOR_SCHEDULER_THREADS
+     */
+    String FAIR_SHARE_WEIGHT = "fairShareWeight";
+
+    int DEFAULT_FAIR_SHARE_WEIGHT = Integer.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + FAIR_SHARE_WEIGHT, "1"));
+
+    /**
+     * The memory budget (bytes) of the query -or- ZERO (0L) for no budget.
+     * Unlike {@link #ANALYTIC_MAX_MEMORY_PER_QUERY}, the budget covers both
+     * the native memory of the query and an estimate of the heap used by the
+     * JVM hash indices for GROUP BY and hash joins, so it applies whether or
+     * not the analytic query mode is used. A query which exceeds its budget is
+     * halted. When the query engine has a memory capacity, a query does not
+     * start until its budget is available, e.g.:
+     * 
+     * <pre>
+     * hint:Query hint:memoryBudget "268435456".
+     * </pre>
+     * 
+     * The default is ZERO (0). A default for a KB may be specified using
+     * {@link BigdataSail.Options#MEMORY_BUDGET}. The global default may be
+     * overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.memoryBudget
+     * </pre>
+     * 
+     * @see QueryEngine.Annotations#MEMORY_BUDGET
+     * @see QueryEngine.Options#MEMORY_CAPACITY
+     */
+    String MEMORY_BUDGET = "memoryBudget";
+
+    long DEFAULT_MEMORY_BUDGET = Long.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + MEMORY_BUDGET, "0"));
     
     /**
      * When <code>true</code>, will use the version of DISTINCT SOLUTIONS based
@@ -257,6 +319,19 @@ public interface QueryHints {
 
     boolean DEFAULT_NATIVE_DISTINCT_SOLUTIONS = DEFAULT_ANALYTIC;
 
+    /**
+     * When <code>true</code>, an ORDER BY which is not followed by a LIMIT
+     * will use the {@link ExternalMemorySortOp}, which writes sorted runs onto
+     * the native heap and merges them, so the sort is not limited by the JVM
+     * heap. When <code>false</code>, use the {@link MemorySortOp}, which sorts
+     * all solutions on the JVM heap. The native version has some overhead for
+     * encoding and decoding the solutions once they no longer fit into a
+     * single run.
+     */
+    String NATIVE_SORT = "nativeSort";
+
+    boolean DEFAULT_NATIVE_SORT = DEFAULT_ANALYTIC;
+
     /**
      * When <code>true</code> and the range count of the default graph access
      * path exceeds the {@link #NATIVE_DISTINCT_SPO_THRESHOLD}, will use the
@@ -482,6 +557,19 @@ public interface QueryHints {
      */
     String AT_ONCE = "atOnce";
 
+    /**
+     * When <code>true</code>, the projection generated from the annotated
+     * scope processes each chunk of solutions as a whole using a columnar
+     * representation and passes on views of the columns rather than copies of
+     * the solutions. The filters (when not attached to a join) which follow it
+     * route those views without copying them. This reduces the allocation of
+     * intermediate solutions for queries which project a large #of solutions.
+     * This query hint is allowed in any scope.
+     * 
+     * @see PipelineOp.Annotations#COLUMNAR
+     */
+    String COLUMNAR = "columnar";
+
     /**
      * Sets the target chunk size (aka vector size) for the output buffer of the operator.
      * <p>
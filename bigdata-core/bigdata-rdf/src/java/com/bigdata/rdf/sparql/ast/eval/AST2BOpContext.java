@@ -190,6 +190,14 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
      */
     public boolean nativeDistinctSolutions = QueryHints.DEFAULT_NATIVE_DISTINCT_SOLUTIONS;
 
+    /**
+     * When <code>true</code>, an ORDER BY will use the version of the sort
+     * operator which spills sorted runs onto the native heap.
+     * 
+     * @see QueryHints#NATIVE_SORT
+     */
+    public boolean nativeSort = QueryHints.DEFAULT_NATIVE_SORT;
+
     /**
      * 
      * When <code>true</code>, use hash index operations based on the
@@ -218,6 +226,24 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
      * @see QueryHints#MERGE_JOIN
      */
     public boolean mergeJoin = QueryHints.DEFAULT_MERGE_JOIN;
+
+    /**
+     * The fair share weight for the query when given by a query hint and
+     * <code>null</code> otherwise.
+     * 
+     * @see QueryHints#FAIR_SHARE_WEIGHT
+     * @see #getFairShareWeight()
+     */
+    public Integer fairShareWeight = null;
+
+    /**
+     * The memory budget (bytes) for the query when given by a query hint and
+     * <code>null</code> otherwise.
+     * 
+     * @see QueryHints#MEMORY_BUDGET
+     * @see #getMemoryBudget()
+     */
+    public Long memoryBudget = null;
     
     /**
      * The maximum parallelism for a solution set hash join when the join is
@@ -907,6 +933,69 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
         return limit;
 
     }
+
+    /**
+     * Return the effective fair share weight for the query.
+     * 
+     * @return The effective fair share weight.
+     * 
+     * @see QueryHints#FAIR_SHARE_WEIGHT
+     */
+    public int getFairShareWeight() {
+
+        if (fairShareWeight != null) {
+            // Explicitly specified by a query hint.
+            return fairShareWeight;
+        }
+
+        /*
+         * Consult the KB for a configured default.
+         */
+        final String weightStr = db.getProperties().getProperty(
+                BigdataSail.Options.FAIR_SHARE_WEIGHT);
+
+        if (weightStr != null) {
+
+            return Integer.valueOf(weightStr);
+
+        }
+
+        // Use the default specified on QueryHints.
+        return QueryHints.DEFAULT_FAIR_SHARE_WEIGHT;
+
+    }
+
+    /**
+     * Return the effective memory budget (bytes) for the query.
+     * 
+     * @return The effective memory budget -or- ZERO (0L) if the query does
+     *         not have a budget.
+     * 
+     * @see QueryHints#MEMORY_BUDGET
+     */
+    public long getMemoryBudget() {
+
+        if (memoryBudget != null) {
+            // Explicitly specified by a query hint.
+            return memoryBudget;
+        }
+
+        /*
+         * Consult the KB for a configured default.
+         */
+        final String budgetStr = db.getProperties().getProperty(
+                BigdataSail.Options.MEMORY_BUDGET);
+
+        if (budgetStr != null) {
+
+            return Long.valueOf(budgetStr);
+
+        }
+
+        // Use the default specified on QueryHints.
+        return QueryHints.DEFAULT_MEMORY_BUDGET;
+
+    }
     
     @Override
     public ISolutionSetStats getSolutionSetStats(final String localName) {
@@ -77,6 +77,7 @@ import com.bigdata.bop.rdf.join.DataSetJoin;
 import com.bigdata.bop.rdf.join.MockTermResolverOp;
 import com.bigdata.bop.rdf.join.VariableUnificationOp;
 import com.bigdata.bop.solutions.DropOp;
+import com.bigdata.bop.solutions.ExternalMemorySortOp;
 import com.bigdata.bop.solutions.GroupByOp;
 import com.bigdata.bop.solutions.GroupByRewriter;
 import com.bigdata.bop.solutions.GroupByState;
@@ -88,6 +89,7 @@ import com.bigdata.bop.solutions.IVComparator;
 import com.bigdata.bop.solutions.JVMDistinctBindingSetsOp;
 import com.bigdata.bop.solutions.MemoryGroupByOp;
 import com.bigdata.bop.solutions.MemorySortOp;
+import com.bigdata.bop.solutions.MemoryTopKSortOp;
 import com.bigdata.bop.solutions.PipelinedAggregationOp;
 import com.bigdata.bop.solutions.ProjectionOp;
 import com.bigdata.bop.solutions.SliceOp;
@@ -308,6 +310,29 @@ public class AST2BOpUtility extends AST2BOpRTO {
         left = (PipelineOp) left.setProperty(
                 QueryEngine.Annotations.QUERY_ID, ctx.queryId);
 
+        /*
+         * Set the fair share weight on the top-level of the query plan if it
+         * differs from the default.
+         */
+        final int fairShareWeight = ctx.getFairShareWeight();
+
+        if (fairShareWeight != QueryEngine.Annotations.DEFAULT_FAIR_SHARE_WEIGHT) {
+
+            left = (PipelineOp) left.setProperty(
+                    QueryEngine.Annotations.FAIR_SHARE_WEIGHT, fairShareWeight);
+
+        }
+
+        // Set the memory budget on the top-level of the query plan (if any).
+        final long memoryBudget = ctx.getMemoryBudget();
+
+        if (memoryBudget != QueryEngine.Annotations.DEFAULT_MEMORY_BUDGET) {
+
+            left = (PipelineOp) left.setProperty(
+                    QueryEngine.Annotations.MEMORY_BUDGET, memoryBudget);
+
+        }
+
         // Attach the query plan to the ASTContainer.
         astContainer.setQueryPlan(left);
         
@@ -548,7 +573,16 @@ public class AST2BOpUtility extends AST2BOpRTO {
                 
                 preserveOrder = true;
 
-                left = addOrderBy(left, queryBase, orderBy, ctx);
+                /*
+                 * Note: DISTINCT and REDUCED may drop solutions after the
+                 * ORDER BY, so a top-K sort may only be used when the slice
+                 * directly follows the ORDER BY.
+                 */
+                final boolean sliceFollows = !projection.isDistinct()
+                        && !projection.isReduced();
+
+                left = addOrderBy(left, queryBase, orderBy,
+                        sliceFollows ? queryBase.getSlice() : null, ctx);
 
             } else {
                 
@@ -570,7 +604,8 @@ public class AST2BOpUtility extends AST2BOpRTO {
             
             if (orderBy != null && !orderBy.isEmpty()) {
 
-                left = addOrderBy(left, queryBase, orderBy, ctx);
+                left = addOrderBy(left, queryBase, orderBy,
+                        queryBase.getSlice(), ctx);
 
             }
 
@@ -4622,12 +4657,20 @@ public class AST2BOpUtility extends AST2BOpRTO {
     }
 
     /**
-     * Add an ORDER BY operator.
+     * Add an ORDER BY operator. When the ORDER BY is directly followed by a
+     * slice with a LIMIT, a {@link MemoryTopKSortOp} which only retains the
+     * first OFFSET+LIMIT solutions is used instead of a full sort. Otherwise,
+     * an {@link ExternalMemorySortOp} is used for a native sort and a
+     * {@link MemorySortOp} is used for a JVM sort.
+     * 
+     * @param slice
+     *            The slice which directly follows the ORDER BY and
+     *            <code>null</code> if there is no such slice.
      */
     @SuppressWarnings({ "unchecked", "rawtypes" })
     private static final PipelineOp addOrderBy(PipelineOp left,
             final QueryBase queryBase, final OrderByNode orderBy,
-            final AST2BOpContext ctx) {
+            final SliceNode slice, final AST2BOpContext ctx) {
 
         // The query hints are taken from the QueryBase
         final Properties queryHints = queryBase.getQueryHints();
@@ -4673,6 +4716,64 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
         left = addMaterializationSteps2(left, sortId, vars, queryHints, ctx);
 
+        if (slice != null && slice.getLimit() < Integer.MAX_VALUE
+                && slice.getOffset() < Integer.MAX_VALUE - slice.getLimit()) {
+
+            /*
+             * Only the first OFFSET+LIMIT solutions can pass the slice. The
+             * slice is still applied to skip the OFFSET.
+             */
+            final int topK = (int) (slice.getOffset() + slice.getLimit());
+
+            left = applyQueryHints(
+                    new MemoryTopKSortOp(
+                            leftOrEmpty(left),
+                            NV.asMap(new NV[] {//
+                                    new NV(MemoryTopKSortOp.Annotations.BOP_ID, sortId),//
+                                    new NV(MemoryTopKSortOp.Annotations.SORT_ORDER,
+                                            sortOrders),//
+                                    new NV(
+                                            MemoryTopKSortOp.Annotations.VALUE_COMPARATOR,
+                                            new IVComparator()),//
+                                    new NV(MemoryTopKSortOp.Annotations.TOP_K, topK),//
+                                    new NV(
+                                            MemoryTopKSortOp.Annotations.EVALUATION_CONTEXT,
+                                            BOpEvaluationContext.CONTROLLER),//
+                                    new NV(MemoryTopKSortOp.Annotations.PIPELINED, true),//
+                                    new NV(MemoryTopKSortOp.Annotations.MAX_PARALLEL, 1),//
+                                    new NV(MemoryTopKSortOp.Annotations.REORDER_SOLUTIONS, false),//
+                                    new NV(MemoryTopKSortOp.Annotations.LAST_PASS, true),//
+                            })), queryHints, ctx);
+
+            return left;
+
+        }
+
+        if (ctx.nativeSort) {
+
+            left = applyQueryHints(
+                    new ExternalMemorySortOp(
+                            leftOrEmpty(left),
+                            NV.asMap(new NV[] {//
+                                    new NV(ExternalMemorySortOp.Annotations.BOP_ID, sortId),//
+                                    new NV(ExternalMemorySortOp.Annotations.SORT_ORDER,
+                                            sortOrders),//
+                                    new NV(
+                                            ExternalMemorySortOp.Annotations.VALUE_COMPARATOR,
+                                            new IVComparator()),//
+                                    new NV(
+                                            ExternalMemorySortOp.Annotations.EVALUATION_CONTEXT,
+                                            BOpEvaluationContext.CONTROLLER),//
+                                    new NV(ExternalMemorySortOp.Annotations.PIPELINED, true),//
+                                    new NV(ExternalMemorySortOp.Annotations.MAX_PARALLEL, 1),//
+                                    new NV(ExternalMemorySortOp.Annotations.REORDER_SOLUTIONS, false),//
+                                    new NV(ExternalMemorySortOp.Annotations.LAST_PASS, true),//
+                            })), queryHints, ctx);
+
+            return left;
+
+        }
+
         left = applyQueryHints(
                 new MemorySortOp(
                         leftOrEmpty(left),
@@ -4818,6 +4919,12 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
             conditionalCopy(anns, queryHints, IPredicate.Annotations.KEY_ORDER);
 
+            conditionalCopy(anns, queryHints,
+                    IPredicate.Annotations.PARALLEL_SCAN);
+
+            conditionalCopy(anns, queryHints,
+                    IPredicate.Annotations.PARALLEL_SCAN_THRESHOLD);
+
             // Note: moved up from below and modified to use conditionalCopy().
             conditionalCopy(anns, queryHints,
                     IPredicate.Annotations.CUTOFF_LIMIT);
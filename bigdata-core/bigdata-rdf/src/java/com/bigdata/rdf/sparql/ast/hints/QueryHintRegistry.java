@@ -106,10 +106,13 @@ public class QueryHintRegistry {
 
         // Analytic query mode.
         add(new AnalyticQueryHint());
+        add(new FairShareWeightHint());
+        add(new MemoryBudgetHint());
         add(new NativeDistinctQueryHint());
         add(new NativeDistinctSPOHint());
         add(new NativeDistinctSPOThresholdHint());
         add(new NativeHashJoinsHint());
+        add(new NativeSortQueryHint());
         
         // JOIN hints.
         add(new MergeJoinHint());
@@ -118,6 +121,8 @@ public class QueryHintRegistry {
         add(new RemoteAPHint());
         add(new AccessPathSampleLimitHint());
         add(new AccessPathScanAndFilterHint());
+        add(new ParallelScanHint());
+        add(new ParallelScanThresholdHint());
         add(new NumTasksPerThreadHint());
         add(new MinDatapointsPerTaskHint());
         
@@ -153,6 +158,7 @@ public class QueryHintRegistry {
         add(new PipelineMaxParallelHint());
         add(new PipelineMaxMessagesPerTaskHint());
         add(new PipelineQueueCapacityHint());
+        add(new ColumnarHint());
 
         /*
          * Mark a statement pattern as "range safe", which in effect means it 
@@ -0,0 +1,153 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.spo;
+
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.btree.raba.codec.ColumnDictionaryRabaCoder;
+import com.bigdata.btree.raba.codec.IRabaCoder;
+import com.bigdata.rdf.internal.DTE;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.AbstractIV;
+import com.bigdata.rdf.internal.impl.BlobIV;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.lexicon.BlobsIndexHelper;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.util.Bytes;
+
+/**
+ * Coder for the keys of the statement indices. Each key is split into one
+ * column per {@link IV} and each column is dictionary coded within the leaf
+ * (see {@link ColumnDictionaryRabaCoder}). The subject (or the leading
+ * component for the other key orders) and the predicate of a statement tend
+ * to repeat many times within a leaf, so they code to a few bits per key.
+ * <p>
+ * This coder is not used by default. It is enabled for the statement indices
+ * of a triple store by
+ * {@link AbstractTripleStore.Options#COLUMN_CODED_STATEMENT_KEYS}.
+ * <p>
+ * The keys of the statement indices are always a sequence of {@link IV}s, so
+ * a key which can not be split at {@link IV} boundaries is an error rather
+ * than a reason to use the fallback coder.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class IVColumnRabaCoder extends ColumnDictionaryRabaCoder {
+
+    private static final long serialVersionUID = 5094838390582311352L;
+
+    /**
+     * De-serialization ctor (also used when the coder is specified by
+     * {@link IndexMetadata.Options#LEAF_KEYS_CODER}).
+     */
+    public IVColumnRabaCoder() {
+
+        super();
+
+    }
+
+    /**
+     * @param fallbackCoder
+     *            The coder used when the keys can not be split into
+     *            {@link IV}s.
+     */
+    public IVColumnRabaCoder(final IRabaCoder fallbackCoder) {
+
+        super(fallbackCoder);
+
+    }
+
+    /**
+     * Return the byte length of the {@link IV} coded at that offset. The
+     * length of a {@link TermId}, a {@link BlobIV} or an inline {@link IV}
+     * having a fixed length {@link DTE} follows from the flags (and the
+     * extension byte) alone. Other {@link IV}s are decoded.
+     * 
+     * @throws IllegalArgumentException
+     *             if the key does not hold an {@link IV} at that offset.
+     */
+    @Override
+    protected int getColumnLength(final byte[] key, final int off,
+            final int column) {
+
+        final byte flags = KeyBuilder.decodeByte(key[off]);
+
+        final int len;
+
+        if (!AbstractIV.isInline(flags)) {
+
+            if (!AbstractIV.isExtension(flags)) {
+
+                // TermId (including a NullIV).
+                len = IVUtility.PACK_TIDS ? decodeLength(key, off)
+                        : 1 + Bytes.SIZEOF_LONG;
+
+            } else if (off + 1 < key.length
+                    && KeyBuilder.decodeByte(key[off + 1]) >= 0) {
+
+                // BlobIV.
+                len = BlobsIndexHelper.TERMS_INDEX_KEY_SIZE;
+
+            } else {
+
+                // Partly inline URI or Literal.
+                len = decodeLength(key, off);
+
+            }
+
+        } else if (!AbstractIV.isExtension(flags)
+                && AbstractIV.getVTE(flags) != VTE.STATEMENT
+                && AbstractIV.getDTE(flags).len() != 0) {
+
+            // Inline IV having a fixed length datatype.
+            len = 1 + AbstractIV.getDTE(flags).len();
+
+        } else {
+
+            // Variable length inline IV (including a statement identifier).
+            len = decodeLength(key, off);
+
+        }
+
+        if (off + len > key.length)
+            throw new IllegalArgumentException("Malformed key: column="
+                    + column + ", off=" + off + ", len=" + len
+                    + ", keyLength=" + key.length);
+
+        return len;
+
+    }
+
+    /**
+     * Return the byte length of the {@link IV} decoded from that offset.
+     */
+    private static int decodeLength(final byte[] key, final int off) {
+
+        return IVUtility.decodeFromOffset(key, off, false/* nullIsNullRef */)
+                .byteLength();
+
+    }
+
+}
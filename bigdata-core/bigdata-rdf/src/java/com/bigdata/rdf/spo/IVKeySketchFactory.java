@@ -0,0 +1,100 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.spo;
+
+import com.bigdata.btree.IBTreeStatistics;
+import com.bigdata.btree.IndexMetadata;
+import com.bigdata.btree.KeySketch;
+import com.bigdata.btree.KeySketchFactory;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+
+/**
+ * Configures a {@link KeySketch} for the statement indices. Each key is split
+ * into one component per {@link IV}, so the sketch for the SPO index reports
+ * the #of distinct subjects, (subject, predicate) pairs, and triples while the
+ * sketch for the POS index reports the #of distinct predicates, etc. The
+ * sketch is reported by {@link IBTreeStatistics#getKeySketch()}.
+ * <p>
+ * The sketch is not maintained by default. It may be enabled for the
+ * statement indices of a triple store by overriding
+ * {@link IndexMetadata.Options#KEY_SKETCH_FACTORY} for the namespace of the
+ * {@link SPORelation}, e.g.:
+ * 
+ * <pre>
+ * com.bigdata.namespace.kb.spo.com.bigdata.btree.keySketchFactory=com.bigdata.rdf.spo.IVKeySketchFactory
+ * </pre>
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class IVKeySketchFactory extends KeySketchFactory {
+
+    private static final long serialVersionUID = -3358816043342418813L;
+
+    /**
+     * De-serialization ctor (also used when the factory is specified by
+     * {@link IndexMetadata.Options#KEY_SKETCH_FACTORY}).
+     */
+    public IVKeySketchFactory() {
+
+        super();
+
+    }
+
+    /**
+     * Return the byte length of the {@link IV} coded at that offset.
+     */
+    @Override
+    protected int getComponentLength(final byte[] key, final int off,
+            final int component) {
+
+        if (off >= key.length)
+            return -1;
+
+        final IV<?, ?> iv;
+        try {
+
+            iv = IVUtility.decodeFromOffset(key, off, false/* nullIsNullRef */);
+
+        } catch (RuntimeException ex) {
+
+            // Not an IV.
+            return -1;
+
+        } catch (AssertionError ex) {
+
+            /*
+             * Not an IV (the decoder asserts its pre-conditions). The sketch
+             * must not fail the insert if the factory was configured for an
+             * index whose keys are not IVs.
+             */
+            return -1;
+
+        }
+
+        return iv.byteLength();
+
+    }
+
+}
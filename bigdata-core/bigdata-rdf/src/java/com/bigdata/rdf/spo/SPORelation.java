@@ -190,6 +190,14 @@ public class SPORelation extends AbstractRelation<ISPO> {
      */
     final protected boolean bloomFilter;
 
+    /**
+     * <code>true</code> iff the keys of the statement indices are coded by
+     * the {@link IVColumnRabaCoder}.
+     * 
+     * @see AbstractTripleStore.Options#COLUMN_CODED_STATEMENT_KEYS
+     */
+    final protected boolean columnCodedStatementKeys;
+
     /**
      * This is used to conditionally index the {@link IChangeLog}.
      */
@@ -287,6 +295,10 @@ public class SPORelation extends AbstractRelation<ISPO> {
         this.bloomFilter = Boolean.parseBoolean(getProperty(
                 AbstractTripleStore.Options.BLOOM_FILTER,
                 AbstractTripleStore.Options.DEFAULT_BLOOM_FILTER));
+
+        this.columnCodedStatementKeys = Boolean.parseBoolean(getProperty(
+                AbstractTripleStore.Options.COLUMN_CODED_STATEMENT_KEYS,
+                AbstractTripleStore.Options.DEFAULT_COLUMN_CODED_STATEMENT_KEYS));
         
         final String historyClass = getProperty(
                 AbstractTripleStore.Options.RDR_HISTORY_CLASS,
@@ -708,9 +720,12 @@ public class SPORelation extends AbstractRelation<ISPO> {
 
         final IndexMetadata metadata = newIndexMetadata(getFQN(keyOrder));
 
-        // leading key compression works great.
-        final IRabaCoder leafKeySer = DefaultTupleSerializer
-                .getDefaultLeafKeysCoder();
+        /*
+         * Leading key compression works great. The column coder is used only
+         * when explicitly requested for the statement indices.
+         */
+        final IRabaCoder leafKeySer = columnCodedStatementKeys ? new IVColumnRabaCoder()
+                : DefaultTupleSerializer.getDefaultLeafKeysCoder();
 
 //        final IRabaCoder leafValSer;
 //        if (!statementIdentifiers) {
@@ -131,6 +131,7 @@ import com.bigdata.rdf.spo.BulkCompleteConverter;
 import com.bigdata.rdf.spo.BulkFilterConverter;
 import com.bigdata.rdf.spo.ExplicitSPOFilter;
 import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.spo.IVColumnRabaCoder;
 import com.bigdata.rdf.spo.JustificationWriter;
 import com.bigdata.rdf.spo.SPO;
 import com.bigdata.rdf.spo.SPOKeyOrder;
@@ -795,6 +796,23 @@ abstract public class AbstractTripleStore extends
         String BLOOM_FILTER = AbstractTripleStore.class.getName() + ".bloomFilter";
 
         String DEFAULT_BLOOM_FILTER = "true";
+
+        /**
+         * When <code>true</code>, the keys of the statement indices are coded
+         * by the {@link IVColumnRabaCoder}, which splits each key into one
+         * dictionary coded column per {@link IV}. When <code>false</code>
+         * (default {@value #DEFAULT_COLUMN_CODED_STATEMENT_KEYS}), the keys
+         * are front coded. The statement indices always use one of these two
+         * coders, so {@link IndexMetadata.Options#LEAF_KEYS_CODER} does not
+         * apply to them.
+         * <p>
+         * Note: This option is only applied when the statement indices are
+         * created.
+         */
+        String COLUMN_CODED_STATEMENT_KEYS = AbstractTripleStore.class
+                .getName() + ".columnCodedStatementKeys";
+
+        String DEFAULT_COLUMN_CODED_STATEMENT_KEYS = "false";
         
         /**
          * When <code>true</code> (default {@value Options#DEFAULT_JUSTIFY}),
@@ -419,6 +419,26 @@ public class BigdataSail extends SailBase implements Sail {
         public static final String DESCRIBE_STATEMENT_LIMIT = BigdataSail.class
                 .getPackage().getName() + ".describeIterationStatementLimit";
 
+        /**
+         * Option specifies the fair share weight for queries against the KB
+         * (optional). A query hint takes precedence.
+         * 
+         * @see QueryHints#FAIR_SHARE_WEIGHT
+         * @see QueryHints#DEFAULT_FAIR_SHARE_WEIGHT
+         */
+        public static final String FAIR_SHARE_WEIGHT = BigdataSail.class
+                .getPackage().getName() + ".fairShareWeight";
+
+        /**
+         * Option specifies the memory budget (bytes) for queries against the
+         * KB (optional). A query hint takes precedence.
+         * 
+         * @see QueryHints#MEMORY_BUDGET
+         * @see QueryHints#DEFAULT_MEMORY_BUDGET
+         */
+        public static final String MEMORY_BUDGET = BigdataSail.class
+                .getPackage().getName() + ".memoryBudget";
+
         /**
          * The name of the default value used for the
          * {@link Journal.Options#FILE} property by the
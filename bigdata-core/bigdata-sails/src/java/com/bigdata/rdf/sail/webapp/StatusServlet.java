@@ -58,6 +58,7 @@ import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
 import com.bigdata.bop.engine.QueryLog;
+import com.bigdata.bop.engine.QueryMemoryBudget;
 import com.bigdata.bop.fed.QueryEngineFactory;
 import com.bigdata.counters.CounterSet;
 import com.bigdata.ha.HAGlue;
@@ -1224,6 +1225,9 @@ public class StatusServlet extends BigdataRDFServlet {
 
         final long elapsedMillis = q.getElapsed();
 
+        // Current memory use of the query (native + estimated heap).
+        final QueryMemoryBudget memoryBudget = q.getMemoryBudget();
+
         current.node("h1", "Query");
         {
             /*
@@ -1262,7 +1266,21 @@ public class StatusServlet extends BigdataRDFServlet {
                     //
                     .text(", elapsed=").node("span").attr("class", "elapsed")
                        .text("" + elapsedMillis).close()
-                    .text("ms, ")
+                    .text("ms")
+                    //
+                    .text(", memory=").node("span").attr("class", "memory")
+                       .text("" + memoryBudget.getUsedBytes()).close()
+                    //
+                    .text(" (native=").node("span").attr("class", "memory-native")
+                       .text("" + memoryBudget.getNativeBytes()).close()
+                    //
+                    .text(", heap=").node("span").attr("class", "memory-heap")
+                       .text("" + memoryBudget.getHeapBytes()).close()
+                    //
+                    .text(", budget=").node("span").attr("class", "memory-budget")
+                       .text(memoryBudget.isBounded() ? ""
+                               + memoryBudget.getBudgetBytes() : NA).close()
+                    .text(") bytes, ")
                     //
                     .node("a").attr("href", detailsURL)
                     .attr("class",  "details-url")
@@ -285,6 +285,42 @@ public interface IPredicate<E> extends BOp, Cloneable, Serializable {
          */
         int DEFAULT_FULLY_BUFFERED_READ_THRESHOLD = 100;//trunk=20*Bytes.kilobyte32;
 
+        /**
+         * The maximum #of key-range partitions which are scanned in parallel
+         * by an asynchronous {@link AccessPath#iterator()} (default
+         * {@value #DEFAULT_PARALLEL_SCAN}, which disables parallel scans). The
+         * key range of the access path is split into sub-ranges spanning
+         * roughly the same #of tuples (see
+         * {@link com.bigdata.btree.AbstractBTree#splitKeyRange(byte[], byte[], int)})
+         * and each sub-range is scanned by a different thread. The chunks
+         * visited by the iterator are ordered internally but the chunks from
+         * different sub-ranges are interleaved, so the iterator does not report
+         * an {@link IKeyOrder}.
+         * <p>
+         * Note: This only applies to a local, read-only B+Tree (a historical
+         * view of an index on a journal or an index segment) and to an access
+         * path without an access path filter (which might be stateful across
+         * the tuples of the scan).
+         * 
+         * @see #PARALLEL_SCAN_THRESHOLD
+         */
+        String PARALLEL_SCAN = IPredicate.class.getName() + ".parallelScan";
+
+        int DEFAULT_PARALLEL_SCAN = 1;
+
+        /**
+         * The minimum estimated range count of each key-range partition of a
+         * parallel scan (default {@value #DEFAULT_PARALLEL_SCAN_THRESHOLD}). An
+         * access path whose estimated range count is less than twice this
+         * value is not scanned in parallel.
+         * 
+         * @see #PARALLEL_SCAN
+         */
+        String PARALLEL_SCAN_THRESHOLD = IPredicate.class.getName()
+                + ".parallelScanThreshold";
+
+        long DEFAULT_PARALLEL_SCAN_THRESHOLD = 100000L;
+
         /**
          * Specify the {@link IRangeQuery} flags for the {@link IAccessPath} (
          * default is {@link IRangeQuery#KEYS}, {@link IRangeQuery#VALS}).
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
 
+import com.bigdata.bop.bindingSet.ColumnarSolutionChunk;
 import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.engine.IChunkMessage;
 import com.bigdata.bop.engine.QueryEngine;
@@ -106,6 +107,22 @@ abstract public class PipelineOp extends BOpBase {
                 + ".reorderSolutions";
 
 	    boolean DEFAULT_REORDER_SOLUTIONS = true;
+
+        /**
+         * When <code>true</code>, operators which support it process each
+         * chunk as a {@link ColumnarSolutionChunk}. The solutions are
+         * projected or filtered as a whole and are passed on as
+         * {@link ColumnarSolutionChunk.Row} views of the columns rather than
+         * as copies (default {@value #DEFAULT_COLUMNAR}). Operators which do
+         * not support columnar chunks see those views as ordinary
+         * {@link IBindingSet}s.
+         * 
+         * @see com.bigdata.bop.solutions.ProjectionOp
+         * @see com.bigdata.bop.bset.ConditionalRoutingOp
+         */
+        String COLUMNAR = PipelineOp.class.getName() + ".columnar";
+
+        boolean DEFAULT_COLUMNAR = false;
 	    
 		/**
 		 * This option may be used to place an optional limit on the #of
@@ -319,6 +336,15 @@ abstract public class PipelineOp extends BOpBase {
                 Annotations.DEFAULT_REORDER_SOLUTIONS);
         
     }
+
+    /**
+     * @see Annotations#COLUMNAR
+     */
+    final public boolean isColumnar() {
+
+        return getProperty(Annotations.COLUMNAR, Annotations.DEFAULT_COLUMNAR);
+
+    }
     
     /**
      * The maximum amount of memory which may be used to buffered inputs for
@@ -0,0 +1,1046 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.bindingSet;
+
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IConstraint;
+import com.bigdata.bop.IVariable;
+
+/**
+ * A chunk of solutions stored by column rather than as one {@link IBindingSet}
+ * object graph per solution. There is one {@link IConstant}[] per variable,
+ * indexed by row, plus a selection vector which identifies the rows that
+ * belong to the chunk. Filters, projections and slices are applied to the
+ * chunk as a whole by rewriting the selection vector or the set of columns.
+ * No solution is copied.
+ * <p>
+ * The query engine passes <code>IBindingSet[]</code> chunks between
+ * operators. Chunks are converted at that boundary. {@link #toBindingSets()}
+ * returns a lightweight {@link Row} view for each selected row. A view reads
+ * and writes through to the columns. {@link #viewOf(IBindingSet[])} recovers
+ * the columns from such views without copying them, so a chunk passes between
+ * operators which are aware of this class without being copied. Operators
+ * which are not aware of this class see the rows as ordinary
+ * {@link IBindingSet}s.
+ * <p>
+ * A {@link Row} keeps the columns of its chunk reachable. When at most half
+ * of the rows of a chunk are selected, {@link #toBindingSets()} first copies
+ * the selected rows into new columns so the views do not retain the rows
+ * which were filtered or sliced away. Operators which retain solutions (such
+ * as a hash index) should copy the views, see {@link #isView(IBindingSet)}.
+ * <p>
+ * Columns may be shared by several chunks, for example by the accepted and the
+ * rejected solutions of a {@link #split(IConstraint)}. A chunk copies a shared
+ * column before writing on it, so writes made through the rows of one chunk
+ * are never visible through another chunk.
+ * <p>
+ * Note: The selection vector is not thread-safe. Writes on the rows are
+ * synchronized on the chunk, so the rows of a chunk may be handed to
+ * different threads.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class ColumnarSolutionChunk {
+
+    /**
+     * The columns of a chunk. An instance is replaced rather than modified
+     * when a column is added or removed, so a reader always sees the same
+     * number of variables and columns.
+     */
+    private static class Columns {
+
+        /**
+         * The variable for each column.
+         */
+        final IVariable<?>[] vars;
+
+        /**
+         * The bound values for each column, indexed by row. An unbound
+         * variable has a <code>null</code> value.
+         */
+        final IConstant<?>[][] cols;
+
+        /**
+         * <code>true</code> iff the column is not shared with any other chunk
+         * and may be written without being copied first. This is guarded by
+         * the monitor of the owning chunk.
+         */
+        final boolean[] owned;
+
+        Columns(final IVariable<?>[] vars, final IConstant<?>[][] cols,
+                final boolean[] owned) {
+
+            this.vars = vars;
+
+            this.cols = cols;
+
+            this.owned = owned;
+
+        }
+
+        /**
+         * Return the index of the column for the variable and -1 if there is
+         * no such column.
+         */
+        int indexOf(final IVariable<?> var) {
+
+            for (int j = 0; j < vars.length; j++) {
+
+                if (vars[j] == var)
+                    return j;
+
+            }
+
+            return -1;
+
+        }
+
+    }
+
+    /**
+     * The #of rows in each column. This is only changed when the chunk is
+     * compacted, which is guarded by the monitor of the chunk.
+     */
+    private int nrows;
+
+    /**
+     * The columns.
+     */
+    private volatile Columns columns;
+
+    /**
+     * The selected rows, in order.
+     */
+    private int[] selection;
+
+    /**
+     * The #of selected rows.
+     */
+    private int size;
+
+    /**
+     * <code>true</code> once {@link Row} views have been handed out for this
+     * chunk. The rows are not renumbered after that.
+     */
+    private boolean viewed;
+
+    /**
+     * Create a chunk from a chunk of solutions. Each solution becomes a row.
+     * The bound values are copied into the columns, so the solutions are not
+     * referenced by the chunk.
+     * 
+     * @param a
+     *            The solutions.
+     * 
+     * @see #valueOf(IBindingSet[])
+     */
+    @SuppressWarnings("rawtypes")
+    public ColumnarSolutionChunk(final IBindingSet[] a) {
+
+        if (a == null)
+            throw new IllegalArgumentException();
+
+        this.nrows = a.length;
+
+        final List<IVariable<?>> vars = new ArrayList<IVariable<?>>();
+
+        final List<IConstant<?>[]> cols = new ArrayList<IConstant<?>[]>();
+
+        for (int i = 0; i < a.length; i++) {
+
+            final Iterator<Map.Entry<IVariable, IConstant>> itr = a[i]
+                    .iterator();
+
+            /*
+             * The solutions in a chunk tend to bind the same variables in the
+             * same order, so we first try the column at the same position as
+             * the binding.
+             */
+            int k = 0;
+
+            while (itr.hasNext()) {
+
+                final Map.Entry<IVariable, IConstant> e = itr.next();
+
+                final IVariable<?> var = e.getKey();
+
+                int j = k < vars.size() && vars.get(k) == var ? k : vars
+                        .indexOf(var);
+
+                if (j == -1) {
+
+                    j = vars.size();
+
+                    vars.add(var);
+
+                    cols.add(new IConstant<?>[nrows]);
+
+                }
+
+                cols.get(j)[i] = e.getValue();
+
+                k++;
+
+            }
+
+        }
+
+        final boolean[] owned = new boolean[vars.size()];
+
+        Arrays.fill(owned, true);
+
+        this.columns = new Columns(vars.toArray(new IVariable<?>[vars.size()]),
+                cols.toArray(new IConstant<?>[cols.size()][]), owned);
+
+        this.selection = new int[nrows];
+
+        for (int i = 0; i < nrows; i++) {
+
+            selection[i] = i;
+
+        }
+
+        this.size = nrows;
+
+    }
+
+    private ColumnarSolutionChunk(final int nrows, final Columns columns,
+            final int[] selection, final int size) {
+
+        this.nrows = nrows;
+
+        this.columns = columns;
+
+        this.selection = selection;
+
+        this.size = size;
+
+    }
+
+    /**
+     * Return a chunk for a chunk of solutions. If the solutions are all
+     * {@link Row}s of the same chunk then the returned chunk shares the columns
+     * of that chunk and selects those rows in the given order. Otherwise the
+     * bound values are copied into a new chunk.
+     * 
+     * @param a
+     *            The solutions.
+     * 
+     * @return The chunk.
+     */
+    public static ColumnarSolutionChunk valueOf(final IBindingSet[] a) {
+
+        final ColumnarSolutionChunk chunk = viewOf(a);
+
+        return chunk != null ? chunk : new ColumnarSolutionChunk(a);
+
+    }
+
+    /**
+     * Return a chunk which shares the columns of a chunk of {@link Row}s. The
+     * returned chunk selects those rows in the given order. No bound value is
+     * copied.
+     * 
+     * @param a
+     *            The solutions.
+     * 
+     * @return The chunk -or- <code>null</code> unless the solutions are all
+     *         {@link Row}s of the same chunk.
+     */
+    public static ColumnarSolutionChunk viewOf(final IBindingSet[] a) {
+
+        if (a == null)
+            throw new IllegalArgumentException();
+
+        if (a.length == 0 || !(a[0] instanceof Row))
+            return null;
+
+        final ColumnarSolutionChunk src = ((Row) a[0]).chunk;
+
+        final int[] selection = new int[a.length];
+
+        for (int i = 0; i < a.length; i++) {
+
+            if (!(a[i] instanceof Row) || ((Row) a[i]).chunk != src)
+                return null;
+
+            selection[i] = ((Row) a[i]).row;
+
+        }
+
+        synchronized (src) {
+
+            return new ColumnarSolutionChunk(src.nrows, src.share(),
+                    selection, a.length);
+
+        }
+
+    }
+
+    /**
+     * Return <code>true</code> iff the solution is a {@link Row} view of a
+     * chunk, and therefore keeps the columns of that chunk reachable.
+     */
+    public static boolean isView(final IBindingSet bset) {
+
+        return bset instanceof Row;
+
+    }
+
+    /**
+     * Return a copy of the columns which shares the column data. The columns
+     * are marked as shared for both this chunk and the copy, so each copies a
+     * column before writing on it.
+     */
+    private synchronized Columns share() {
+
+        final Columns c = columns;
+
+        Arrays.fill(c.owned, false);
+
+        return new Columns(c.vars, c.cols.clone(), new boolean[c.vars.length]);
+
+    }
+
+    /**
+     * The #of selected rows.
+     */
+    public int size() {
+
+        return size;
+
+    }
+
+    /**
+     * The variables having a column in this chunk. A variable with a column
+     * need not be bound in every row.
+     */
+    public IVariable<?>[] getVariables() {
+
+        return columns.vars.clone();
+
+    }
+
+    /**
+     * Return the value bound to a variable in a selected row.
+     * 
+     * @param index
+     *            The index of the selected row in [0:{@link #size()}).
+     * @param var
+     *            The variable.
+     * 
+     * @return The bound value -or- <code>null</code> if the variable is not
+     *         bound in that row.
+     */
+    public IConstant<?> get(final int index, final IVariable<?> var) {
+
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException();
+
+        if (var == null)
+            throw new IllegalArgumentException();
+
+        return get0(selection[index], var);
+
+    }
+
+    private IConstant<?> get0(final int row, final IVariable<?> var) {
+
+        final Columns c = columns;
+
+        final int j = c.indexOf(var);
+
+        return j == -1 ? null : c.cols[j][row];
+
+    }
+
+    /**
+     * Bind (or clear when <i>val</i> is <code>null</code>) a variable in a row.
+     * A shared column is copied first and a new column is added if the
+     * variable does not have a column yet.
+     */
+    private synchronized void set0(final int row, final IVariable<?> var,
+            final IConstant<?> val) {
+
+        Columns c = columns;
+
+        int j = c.indexOf(var);
+
+        if (j == -1) {
+
+            if (val == null) {
+
+                // Clearing a variable which is not bound in any row.
+                return;
+
+            }
+
+            final int n = c.vars.length;
+
+            final IVariable<?>[] vars = Arrays.copyOf(c.vars, n + 1);
+
+            final IConstant<?>[][] cols = Arrays.copyOf(c.cols, n + 1);
+
+            final boolean[] owned = Arrays.copyOf(c.owned, n + 1);
+
+            vars[n] = var;
+
+            cols[n] = new IConstant<?>[nrows];
+
+            owned[n] = true;
+
+            columns = c = new Columns(vars, cols, owned);
+
+            j = n;
+
+        } else if (!c.owned[j]) {
+
+            if (c.cols[j][row] == val) {
+
+                // Avoid copying the column for a write which changes nothing.
+                return;
+
+            }
+
+            c.cols[j] = c.cols[j].clone();
+
+            c.owned[j] = true;
+
+        }
+
+        c.cols[j][row] = val;
+
+    }
+
+    /**
+     * Retain only the selected rows which satisfy the constraint. The
+     * constraint is evaluated against a {@link Row} view of each selected row.
+     * Bindings made by the constraint are written on the row. The view is
+     * reused for each row, so the constraint must not retain a reference to
+     * it.
+     * 
+     * @param constraint
+     *            The constraint.
+     * 
+     * @return The #of rows which remain selected.
+     */
+    public int filter(final IConstraint constraint) {
+
+        select(constraint, null/* rejected */);
+
+        return size;
+
+    }
+
+    /**
+     * Retain only the selected rows which satisfy the constraint (as for
+     * {@link #filter(IConstraint)}) and return a chunk which selects the rows
+     * which did not. The returned chunk shares the columns of this chunk.
+     * 
+     * @param constraint
+     *            The constraint.
+     * 
+     * @return A chunk selecting the rejected rows, which may be empty.
+     */
+    public ColumnarSolutionChunk split(final IConstraint constraint) {
+
+        final int[] rejected = new int[size];
+
+        final int nrejected = select(constraint, rejected);
+
+        return new ColumnarSolutionChunk(nrows, share(), rejected, nrejected);
+
+    }
+
+    /**
+     * Evaluate the constraint against each selected row, compacting the
+     * selection vector in place.
+     * 
+     * @return The #of rows written onto <i>rejected</i>.
+     */
+    private int select(final IConstraint constraint, final int[] rejected) {
+
+        if (constraint == null)
+            throw new IllegalArgumentException();
+
+        final Row cursor = new Row(this, -1);
+
+        int n = 0, nrejected = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            final int row = selection[i];
+
+            cursor.row = row;
+
+            if (constraint.accept(cursor)) {
+
+                selection[n++] = row;
+
+            } else if (rejected != null) {
+
+                rejected[nrejected++] = row;
+
+            }
+
+        }
+
+        size = n;
+
+        return nrejected;
+
+    }
+
+    /**
+     * Retain only the columns for the given variables. Columns are not
+     * copied. Note that the {@link Row}s already returned by
+     * {@link #toBindingSets()} for this chunk will no longer report bindings
+     * for the other variables. Use {@link #valueOf(IBindingSet[])} to obtain a
+     * chunk of one's own before projecting solutions which may be visible
+     * elsewhere.
+     * 
+     * @param vars
+     *            The variables to retain.
+     */
+    public synchronized void project(final IVariable<?>[] vars) {
+
+        if (vars == null)
+            throw new IllegalArgumentException();
+
+        final Columns c = columns;
+
+        final IVariable<?>[] vars2 = new IVariable<?>[vars.length];
+
+        final IConstant<?>[][] cols2 = new IConstant<?>[vars.length][];
+
+        final boolean[] owned2 = new boolean[vars.length];
+
+        int n = 0;
+
+        for (IVariable<?> var : vars) {
+
+            final int j = c.indexOf(var);
+
+            if (j == -1)
+                continue; // not bound in any row.
+
+            boolean duplicate = false;
+
+            for (int k = 0; k < n && !duplicate; k++) {
+
+                duplicate = vars2[k] == var;
+
+            }
+
+            if (duplicate)
+                continue;
+
+            vars2[n] = var;
+
+            cols2[n] = c.cols[j];
+
+            owned2[n] = c.owned[j];
+
+            n++;
+
+        }
+
+        columns = new Columns(Arrays.copyOf(vars2, n), Arrays.copyOf(cols2, n),
+                Arrays.copyOf(owned2, n));
+
+    }
+
+    /**
+     * Retain a contiguous run of the selected rows.
+     * 
+     * @param offset
+     *            The index of the first selected row to retain.
+     * @param limit
+     *            The #of selected rows to retain.
+     */
+    public void slice(final int offset, final int limit) {
+
+        if (offset < 0 || limit < 0 || offset + limit > size)
+            throw new IllegalArgumentException("offset=" + offset + ", limit="
+                    + limit + ", size=" + size);
+
+        if (offset > 0) {
+
+            System.arraycopy(selection, offset, selection, 0, limit);
+
+        }
+
+        size = limit;
+
+    }
+
+    /**
+     * Return a {@link Row} view for each selected row, in order. If no views
+     * were handed out yet and at most half of the rows are selected, then the
+     * selected rows are first copied into new columns.
+     */
+    public synchronized IBindingSet[] toBindingSets() {
+
+        if (!viewed && size <= nrows / 2)
+            compact();
+
+        viewed = true;
+
+        final IBindingSet[] a = new IBindingSet[size];
+
+        for (int i = 0; i < size; i++) {
+
+            a[i] = new Row(this, selection[i]);
+
+        }
+
+        return a;
+
+    }
+
+    /**
+     * Copy the selected rows into new columns owned by this chunk and renumber
+     * them in selection order.
+     */
+    private void compact() {
+
+        final Columns c = columns;
+
+        final IConstant<?>[][] cols = new IConstant<?>[c.cols.length][];
+
+        for (int j = 0; j < cols.length; j++) {
+
+            final IConstant<?>[] src = c.cols[j];
+
+            final IConstant<?>[] dst = cols[j] = new IConstant<?>[size];
+
+            for (int i = 0; i < size; i++) {
+
+                dst[i] = src[selection[i]];
+
+            }
+
+        }
+
+        final boolean[] owned = new boolean[cols.length];
+
+        Arrays.fill(owned, true);
+
+        columns = new Columns(c.vars, cols, owned);
+
+        selection = new int[size];
+
+        for (int i = 0; i < size; i++) {
+
+            selection[i] = i;
+
+        }
+
+        nrows = size;
+
+    }
+
+    /**
+     * The #of rows in each column (including the rows which are not
+     * selected).
+     */
+    synchronized int getRowCount() {
+
+        return nrows;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{size=" + size + ", nrows="
+                + nrows + ", vars=" + Arrays.toString(columns.vars) + "}";
+
+    }
+
+    /**
+     * An {@link IBindingSet} view of a row of a {@link ColumnarSolutionChunk}.
+     * Reads and writes go through to the columns of the chunk. A {@link Row}
+     * is serialized as a {@link ListBindingSet} and {@link #clone()} and
+     * {@link #copy(IVariable[])} also return {@link ListBindingSet}s.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public static final class Row implements IBindingSet {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The chunk.
+         */
+        private final transient ColumnarSolutionChunk chunk;
+
+        /**
+         * The row. This is only changed when the chunk reuses a view to
+         * evaluate a constraint against each of its rows.
+         */
+        private transient int row;
+
+        private Row(final ColumnarSolutionChunk chunk, final int row) {
+
+            this.chunk = chunk;
+
+            this.row = row;
+
+        }
+
+        @Override
+        public boolean isBound(final IVariable var) {
+
+            return get(var) != null;
+
+        }
+
+        @Override
+        public IConstant get(final IVariable var) {
+
+            if (var == null)
+                throw new IllegalArgumentException();
+
+            return chunk.get0(row, var);
+
+        }
+
+        @Override
+        public void set(final IVariable var, final IConstant val) {
+
+            if (var == null)
+                throw new IllegalArgumentException();
+
+            if (val == null)
+                throw new IllegalArgumentException();
+
+            chunk.set0(row, var, val);
+
+        }
+
+        @Override
+        public void clear(final IVariable var) {
+
+            if (var == null)
+                throw new IllegalArgumentException();
+
+            chunk.set0(row, var, null);
+
+        }
+
+        @Override
+        public void clearAll() {
+
+            for (IVariable<?> var : chunk.columns.vars) {
+
+                chunk.set0(row, var, null);
+
+            }
+
+        }
+
+        @Override
+        public boolean isEmpty() {
+
+            return size() == 0;
+
+        }
+
+        @Override
+        public int size() {
+
+            final Columns c = chunk.columns;
+
+            int n = 0;
+
+            for (int j = 0; j < c.cols.length; j++) {
+
+                if (c.cols[j][row] != null)
+                    n++;
+
+            }
+
+            return n;
+
+        }
+
+        @Override
+        public Iterator<Map.Entry<IVariable, IConstant>> iterator() {
+
+            return new BindingIterator<Map.Entry<IVariable, IConstant>>(
+                    true/* entries */);
+
+        }
+
+        @Override
+        public Iterator<IVariable> vars() {
+
+            return new BindingIterator<IVariable>(false/* entries */);
+
+        }
+
+        @Override
+        public IBindingSet clone() {
+
+            return copy(null/* variablesToKeep */);
+
+        }
+
+        @Override
+        public IBindingSet copy(final IVariable[] variablesToKeep) {
+
+            final ListBindingSet bset = new ListBindingSet();
+
+            if (variablesToKeep == null) {
+
+                final Columns c = chunk.columns;
+
+                for (int j = 0; j < c.cols.length; j++) {
+
+                    final IConstant<?> val = c.cols[j][row];
+
+                    if (val != null)
+                        bset.set(c.vars[j], val);
+
+                }
+
+            } else {
+
+                for (IVariable<?> var : variablesToKeep) {
+
+                    final IConstant<?> val = chunk.get0(row, var);
+
+                    if (val != null)
+                        bset.set(var, val);
+
+                }
+
+            }
+
+            return bset;
+
+        }
+
+        @Override
+        public boolean equals(final Object t) {
+
+            if (this == t)
+                return true;
+
+            if (!(t instanceof IBindingSet))
+                return false;
+
+            final IBindingSet o = (IBindingSet) t;
+
+            final Columns c = chunk.columns;
+
+            int n = 0;
+
+            for (int j = 0; j < c.cols.length; j++) {
+
+                final IConstant<?> val = c.cols[j][row];
+
+                if (val == null)
+                    continue;
+
+                final IConstant<?> other = o.get(c.vars[j]);
+
+                if (other == null || !val.equals(other))
+                    return false;
+
+                n++;
+
+            }
+
+            return n == o.size();
+
+        }
+
+        /**
+         * Note: This is the same hash function as {@link ListBindingSet}.
+         */
+        @Override
+        public int hashCode() {
+
+            final Columns c = chunk.columns;
+
+            int result = 0;
+
+            for (int j = 0; j < c.cols.length; j++) {
+
+                final IConstant<?> val = c.cols[j][row];
+
+                if (val != null)
+                    result ^= val.hashCode();
+
+            }
+
+            return result;
+
+        }
+
+        @Override
+        public String toString() {
+
+            return clone().toString();
+
+        }
+
+        /**
+         * Serialize the bindings rather than the chunk.
+         */
+        private Object writeReplace() throws ObjectStreamException {
+
+            return clone();
+
+        }
+
+        /**
+         * Visits the bound variables (or their bindings) in column order.
+         * Removing a binding clears that variable in the row.
+         */
+        private class BindingIterator<T> implements Iterator<T> {
+
+            private final Columns c = chunk.columns;
+
+            private final boolean entries;
+
+            private int next = -1;
+
+            private int last = -1;
+
+            BindingIterator(final boolean entries) {
+
+                this.entries = entries;
+
+                advance();
+
+            }
+
+            private void advance() {
+
+                do {
+                    next++;
+                } while (next < c.vars.length && c.cols[next][row] == null);
+
+            }
+
+            @Override
+            public boolean hasNext() {
+
+                return next < c.vars.length;
+
+            }
+
+            @Override
+            public T next() {
+
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                last = next;
+
+                advance();
+
+                return (T) (entries ? new Entry(c.vars[last]) : c.vars[last]);
+
+            }
+
+            @Override
+            public void remove() {
+
+                if (!entries)
+                    throw new UnsupportedOperationException();
+
+                if (last == -1)
+                    throw new IllegalStateException();
+
+                clear(c.vars[last]);
+
+                last = -1;
+
+            }
+
+        }
+
+        /**
+         * A binding in the row. The value is read from and written on the
+         * row.
+         */
+        private class Entry implements Map.Entry<IVariable, IConstant> {
+
+            private final IVariable var;
+
+            Entry(final IVariable var) {
+
+                this.var = var;
+
+            }
+
+            @Override
+            public IVariable getKey() {
+
+                return var;
+
+            }
+
+            @Override
+            public IConstant getValue() {
+
+                return get(var);
+
+            }
+
+            @Override
+            public IConstant setValue(final IConstant value) {
+
+                final IConstant old = get(var);
+
+                set(var, value);
+
+                return old;
+
+            }
+
+            @Override
+            public String toString() {
+
+                return var + "=" + getValue();
+
+            }
+
+        }
+
+    }
+
+}
@@ -38,6 +38,7 @@ import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IConstraint;
 import com.bigdata.bop.NV;
 import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.bindingSet.ColumnarSolutionChunk;
 import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.relation.accesspath.IBlockingBuffer;
 
@@ -58,6 +59,12 @@ import cutthecrap.utils.striterators.ICloseableIterator;
  * Conditional routing will cause reordering of solutions when the alternate
  * sink is specified as some solutions will flow to the primary sink while
  * others flow to the alterate sink.
+ * <p>
+ * When {@link PipelineOp.Annotations#COLUMNAR} is specified, a chunk which
+ * arrives as the rows of a {@link ColumnarSolutionChunk} (for example from a
+ * columnar {@link com.bigdata.bop.solutions.ProjectionOp}) is routed by
+ * rewriting its selection vector, without copying the columns. Other chunks
+ * are routed one solution at a time since that does not copy them either.
  * 
  * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
  * @version $Id: ConditionalRoutingOp.java 7773 2014-01-11 12:49:05Z thompsonbry
@@ -144,6 +151,11 @@ public class ConditionalRoutingOp extends PipelineOp {
         
         private final IBlockingBuffer<IBindingSet[]> sink2;
 
+        /**
+         * @see PipelineOp.Annotations#COLUMNAR
+         */
+        private final boolean columnar;
+
         ConditionalRouteTask(final ConditionalRoutingOp op,
                 final BOpContext<IBindingSet> context) {
 
@@ -160,6 +172,8 @@ public class ConditionalRoutingOp extends PipelineOp {
 
             this.sink2 = context.getSink2(); // MAY be null.
 
+            this.columnar = op.isColumnar();
+
 //            if (sink2 == null)
 //                throw new IllegalArgumentException();
             
@@ -178,6 +192,17 @@ public class ConditionalRoutingOp extends PipelineOp {
                     stats.chunksIn.increment();
                     stats.unitsIn.add(chunk.length);
 
+                    final ColumnarSolutionChunk view = columnar ? ColumnarSolutionChunk
+                            .viewOf(chunk) : null;
+
+                    if (view != null) {
+
+                        routeColumnar(view);
+
+                        continue;
+
+                    }
+
                     final IBindingSet[] def = new IBindingSet[chunk.length];
                     final IBindingSet[] alt = sink2 == null ? null
                             : new IBindingSet[chunk.length];
@@ -246,6 +271,42 @@ public class ConditionalRoutingOp extends PipelineOp {
 
         } // call()
 
+        /**
+         * Route a {@link ColumnarSolutionChunk}. The condition is evaluated
+         * against each row and the selection vectors of the accepted and
+         * rejected rows are passed on as views.
+         */
+        private void routeColumnar(final ColumnarSolutionChunk def) {
+
+            if (Thread.interrupted()) {
+
+                // Eagerly notice if the operator is interrupted.
+                throw new RuntimeException(new InterruptedException());
+
+            }
+
+            ColumnarSolutionChunk alt = null;
+
+            if (sink2 != null) {
+
+                // solutions which fail the condition go to the alternative sink.
+                alt = def.split(condition);
+
+            } else {
+
+                // solutions which fail the condition are dropped.
+                def.filter(condition);
+
+            }
+
+            if (def.size() > 0)
+                sink.add(def.toBindingSets());
+
+            if (alt != null && alt.size() > 0)
+                sink2.add(alt.toBindingSets());
+
+        }
+
     } // ConditionalRoutingTask.
 
 }
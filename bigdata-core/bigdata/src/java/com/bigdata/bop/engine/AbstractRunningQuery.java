@@ -70,6 +70,7 @@ import com.bigdata.relation.accesspath.IAsynchronousIterator;
 import com.bigdata.relation.accesspath.IBlockingBuffer;
 import com.bigdata.rwstore.sector.IMemoryManager;
 import com.bigdata.rwstore.sector.MemoryManager;
+import com.bigdata.rwstore.sector.SectorAllocator;
 import com.bigdata.service.IBigdataFederation;
 import com.bigdata.util.InnerCause;
 import com.bigdata.util.concurrent.Haltable;
@@ -171,6 +172,18 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
      */
     final private AtomicLong doneTime = new AtomicLong(0L);
 
+    /**
+     * Operator task queueing counters for this query.
+     */
+    final private QueryEngineCounters.QueryCounters queryCounters = new QueryEngineCounters.QueryCounters();
+
+    /**
+     * The memory budget of this query.
+     * 
+     * @see QueryEngine.Annotations#MEMORY_BUDGET
+     */
+    final private QueryMemoryBudget memoryBudget;
+
     /**
      * <code>true</code> iff the outer {@link QueryEngine} is the controller for
      * this query.
@@ -459,6 +472,34 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
 
     }
 
+    /**
+     * The fair share weight of this query.
+     * 
+     * @see QueryEngine.Annotations#FAIR_SHARE_WEIGHT
+     */
+    final public int getFairShareWeight() {
+
+        return query.getProperty(QueryEngine.Annotations.FAIR_SHARE_WEIGHT,
+                QueryEngine.Annotations.DEFAULT_FAIR_SHARE_WEIGHT);
+
+    }
+
+    /**
+     * The operator task queueing counters for this query.
+     */
+    final public QueryEngineCounters.QueryCounters getQueryCounters() {
+
+        return queryCounters;
+
+    }
+
+    @Override
+    final public QueryMemoryBudget getMemoryBudget() {
+
+        return memoryBudget;
+
+    }
+
     /**
      * Return <code>true</code> iff this is the query controller.
      */
@@ -598,6 +639,10 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
 
         this.query = query;
 
+        this.memoryBudget = new QueryMemoryBudget(query.getProperty(
+                QueryEngine.Annotations.MEMORY_BUDGET,
+                QueryEngine.Annotations.DEFAULT_MEMORY_BUDGET));
+
         this.realSource = realSource;
         
         this.bopIndex = BOpUtility.getIndex(query);
@@ -1229,6 +1274,9 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
 
         if (memoryManager != null) {
             
+            // no longer counted against the memory budget.
+            memoryBudget.setMemoryManager(null);
+
             // release resources.  See BLZG-1658
             memoryManager.close();
             
@@ -1609,6 +1657,7 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
                 memoryManager = this.memoryManager.get();
                 if (memoryManager == null) {
                     this.memoryManager.set(memoryManager = newMemoryManager());
+                    memoryBudget.setMemoryManager(memoryManager);
                 }
             } finally {
                 lock.unlock();
@@ -1628,18 +1677,33 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
      * 
      * @see <a href="http://jira.blazegraph.com/browse/BLZG-42" > Per query
      *      memory limit for analytic query mode. </a>
+     * 
+     * @see QueryEngine.Annotations#MEMORY_BUDGET
      */
     private MemoryManager newMemoryManager() {
         
-        // The native memory pool that will be used by this query.
-        final DirectBufferPool pool = DirectBufferPool.INSTANCE;
-        
         // Figure out how much memory may be allocated by this query.
         long maxMemoryBytesPerQuery = QueryHints.DEFAULT_ANALYTIC_MAX_MEMORY_PER_QUERY;
         if (maxMemoryBytesPerQuery < 0) {
             // Ignore illegal values.
             maxMemoryBytesPerQuery = 0L;
         }
+        if (memoryBudget.isBounded()
+                && (maxMemoryBytesPerQuery == 0L || memoryBudget
+                        .getBudgetBytes() < maxMemoryBytesPerQuery)) {
+            // The memory budget of the query is tighter.
+            maxMemoryBytesPerQuery = memoryBudget.getBudgetBytes();
+        }
+
+        /*
+         * The native memory pool that will be used by this query. When the
+         * memory for the query is bounded, we use the smallest size class
+         * which can back a sector. This reduces the native memory which is
+         * tied up by queries which only use a little memory and makes the
+         * bound more precise.
+         */
+        final DirectBufferPool pool = maxMemoryBytesPerQuery == 0 ? DirectBufferPool.INSTANCE
+                : DirectBufferPool.getPool(SectorAllocator.MIN_SECTOR_SIZE);
 
         final boolean blocking;
         final int nsectors;
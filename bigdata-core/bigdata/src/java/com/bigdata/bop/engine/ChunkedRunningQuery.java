@@ -710,7 +710,7 @@ public class ChunkedRunningQuery extends AbstractRunningQuery {
                             + bop.toShortString() + ", messages=" + naccepted
                             + ", solutions=" + solutionsAccepted
                             + (log.isDebugEnabled()?", runState=" + runStateString():""));
-                getQueryEngine().execute(cft);
+                getQueryEngine().execute(this, cft);
                 return true;
             } catch(Throwable t) {
                 // Ensure accepted messages are released();
@@ -772,6 +772,12 @@ public class ChunkedRunningQuery extends AbstractRunningQuery {
 
         private final ChunkTask t;
 
+        /**
+         * The time (nanoseconds) when the task was created. The task is
+         * submitted for execution immediately afterwards.
+         */
+        private final long submitNanos = System.nanoTime();
+
         public ChunkFutureTask(final ChunkTask chunkTask) {
 
             /*
@@ -787,6 +793,12 @@ public class ChunkedRunningQuery extends AbstractRunningQuery {
         @Override
         public void run() {
 
+            // track the time that the task waited to run.
+            final long queueDelayNanos = System.nanoTime() - submitNanos;
+            getQueryEngine().counters.operatorQueueDelayNanos
+                    .add(queueDelayNanos);
+            getQueryCounters().operatorStart(queueDelayNanos);
+
             try {
 
                 super.run();
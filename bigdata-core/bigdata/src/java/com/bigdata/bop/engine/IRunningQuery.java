@@ -150,6 +150,13 @@ public interface IRunningQuery extends IHaltable<Void>, IQueryContext {
      */
     long getElapsed();
 
+    /**
+     * Return the memory budget of the query. The budget is unbounded unless
+     * {@link QueryEngine.Annotations#MEMORY_BUDGET} was specified for the
+     * query.
+     */
+    QueryMemoryBudget getMemoryBudget();
+
 //	/**
 //	 * Return <code>true</code> if there are no operators which could
 //	 * (re-)trigger the specified operator.
@@ -0,0 +1,697 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.counters.CAT;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.ICounterSetAccess;
+import com.bigdata.counters.Instrument;
+
+/**
+ * A work-stealing scheduler for operator evaluation tasks with a fair share of
+ * the worker threads for each query.
+ * <p>
+ * Tasks are executed on a {@link ForkJoinPool}. At most one task per worker
+ * thread is released into the pool at a time. The others wait on a queue for
+ * their query. When a slot becomes free, the next task is taken from the query
+ * having the least virtual time (stride scheduling). Each task a query runs
+ * advances its virtual time in inverse proportion to the weight of that query,
+ * so a query with weight <code>w</code> is dispatched <code>w</code> times as
+ * often as a query with weight one when both have work waiting. A query
+ * which was idle rejoins at the current virtual time, so it can not claim
+ * credit for the time it was idle.
+ * <p>
+ * A task which is released by a worker thread of the pool (e.g., because the
+ * operator task running on that thread produced the chunk which the released
+ * task will consume) is forked onto the local deque of that worker thread. It
+ * will run on that thread once the current task is done unless an idle worker
+ * steals it first. This keeps a chunk on the thread (and in the cache) where
+ * it was produced.
+ * <p>
+ * Operator tasks can block, e.g., on a full work queue for a downstream
+ * operator or on a subquery which is evaluated on the same
+ * {@link QueryEngine}. Holding back tasks could then deadlock the query
+ * engine. {@link #checkStalled(long)} is invoked periodically. If tasks are
+ * waiting and no task has been dispatched or has finished for the stall
+ * timeout, then the next task is run on the overflow {@link Executor}
+ * instead. This also bounds the time that the tasks of a short query can be
+ * held back behind the long running tasks of other queries.
+ * 
+ * @see QueryEngine.Options#OPERATOR_SCHEDULER_THREADS
+ * @see QueryEngine.Annotations#FAIR_SHARE_WEIGHT
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class OperatorTaskScheduler implements ICounterSetAccess {
+
+    private static final transient Logger log = Logger
+            .getLogger(OperatorTaskScheduler.class);
+
+    /**
+     * The default stall timeout (milliseconds).
+     */
+    public static final long DEFAULT_STALL_MILLIS = 100;
+
+    /**
+     * The virtual time advanced by a task for a query having weight one. This
+     * is divisible by each of 1 through 16, so the stride is exact for those
+     * weights.
+     */
+    private static final long STRIDE1 = 720720L;
+
+    /**
+     * The pool on which the tasks are executed.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The {@link Executor} used for tasks which are dispatched because the
+     * pool is stalled.
+     */
+    private final Executor overflow;
+
+    /**
+     * The stall timeout (nanoseconds).
+     */
+    private final long stallNanos;
+
+    /**
+     * Guards the fields below.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The queries having tasks which are running or waiting, by queryId. An
+     * entry is removed once its query has no such tasks.
+     */
+    private final Map<UUID, Share> shares = new HashMap<UUID, Share>();
+
+    /**
+     * The queries having tasks which are waiting, ordered by their virtual
+     * time.
+     */
+    private final PriorityQueue<Share> ready = new PriorityQueue<Share>();
+
+    /**
+     * The virtual time of the most recently dispatched task.
+     */
+    private long vtime = 0L;
+
+    /**
+     * The #of tasks running on the pool.
+     */
+    private int nrunning = 0;
+
+    /**
+     * The #of tasks running on the overflow {@link Executor}.
+     */
+    private int noverflow = 0;
+
+    /**
+     * The #of tasks which are waiting.
+     */
+    private int nwaiting = 0;
+
+    /**
+     * The last time (nanoseconds) that a task was dispatched or was done.
+     */
+    private long lastProgressNanos = System.nanoTime();
+
+    /**
+     * Used to break ties among queries having the same virtual time.
+     */
+    private long nextSeq = 0L;
+
+    /**
+     * The #of tasks dispatched to the pool.
+     */
+    private final CAT dispatchCount = new CAT();
+
+    /**
+     * The #of tasks forked onto the deque of the worker thread which
+     * dispatched them.
+     */
+    private final CAT localDispatchCount = new CAT();
+
+    /**
+     * The #of tasks dispatched to the overflow {@link Executor}.
+     */
+    private final CAT overflowDispatchCount = new CAT();
+
+    /**
+     * @param nthreads
+     *            The #of worker threads.
+     * @param overflow
+     *            The {@link Executor} used when the pool is stalled. This must
+     *            not impose a bound on the #of threads.
+     * @param stallMillis
+     *            The stall timeout (milliseconds).
+     */
+    public OperatorTaskScheduler(final int nthreads, final Executor overflow,
+            final long stallMillis) {
+
+        if (nthreads <= 0)
+            throw new IllegalArgumentException();
+
+        if (overflow == null)
+            throw new IllegalArgumentException();
+
+        if (stallMillis <= 0)
+            throw new IllegalArgumentException();
+
+        this.pool = new ForkJoinPool(nthreads);
+
+        this.overflow = overflow;
+
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallMillis);
+
+    }
+
+    /**
+     * The #of worker threads.
+     */
+    public int getParallelism() {
+
+        return pool.getParallelism();
+
+    }
+
+    /**
+     * Schedule a task for execution.
+     * 
+     * @param queryId
+     *            The query for which the task will run.
+     * @param weight
+     *            The fair share weight of that query.
+     * @param r
+     *            The task.
+     * 
+     * @throws RejectedExecutionException
+     *             if the scheduler has been shutdown.
+     */
+    public void execute(final UUID queryId, final int weight,
+            final Runnable r) {
+
+        if (queryId == null)
+            throw new IllegalArgumentException();
+
+        if (weight <= 0)
+            throw new IllegalArgumentException();
+
+        if (r == null)
+            throw new IllegalArgumentException();
+
+        if (pool.isShutdown())
+            throw new RejectedExecutionException();
+
+        final List<Task> dispatched = new ArrayList<Task>(1);
+
+        lock.lock();
+
+        try {
+
+            Share share = shares.get(queryId);
+
+            if (share == null) {
+
+                share = new Share(queryId, weight);
+
+                shares.put(queryId, share);
+
+            }
+
+            if (share.waiting.isEmpty()) {
+
+                // The query rejoins at the current virtual time.
+                share.vtime = Math.max(share.vtime, vtime);
+
+                share.seq = nextSeq++;
+
+                ready.add(share);
+
+            }
+
+            share.waiting.add(new Task(share, r));
+
+            nwaiting++;
+
+            dispatch(dispatched);
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+        launch(dispatched);
+
+    }
+
+    /**
+     * Dispatch the next task to the overflow {@link Executor} if tasks are
+     * waiting and neither has a task been dispatched nor has a task finished
+     * within the stall timeout.
+     * 
+     * @param nowNanos
+     *            The current time (nanoseconds).
+     * 
+     * @return <code>true</code> if a task was dispatched.
+     */
+    public boolean checkStalled(final long nowNanos) {
+
+        final Task task;
+
+        lock.lock();
+
+        try {
+
+            if (ready.isEmpty())
+                return false;
+
+            if (nowNanos - lastProgressNanos < stallNanos)
+                return false;
+
+            task = next();
+
+            task.overflow = true;
+
+            noverflow++;
+
+            lastProgressNanos = nowNanos;
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+        overflowDispatchCount.increment();
+
+        if (log.isInfoEnabled())
+            log.info("Stalled: queryId=" + task.share.queryId);
+
+        try {
+
+            overflow.execute(task);
+
+        } catch (RejectedExecutionException ex) {
+
+            done(task);
+
+            throw ex;
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Stop the worker threads. Tasks which are waiting are discarded.
+     */
+    public void shutdownNow() {
+
+        lock.lock();
+
+        try {
+
+            shares.clear();
+
+            ready.clear();
+
+            nwaiting = 0;
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+        pool.shutdownNow();
+
+    }
+
+    /**
+     * Take the next task from the query having the least virtual time. The
+     * caller must hold the {@link #lock} and there must be a task waiting.
+     */
+    private Task next() {
+
+        final Share share = ready.poll();
+
+        final Task task = share.waiting.poll();
+
+        nwaiting--;
+
+        vtime = share.vtime;
+
+        share.vtime += share.stride;
+
+        share.nrunning++;
+
+        if (!share.waiting.isEmpty()) {
+
+            ready.add(share);
+
+        }
+
+        return task;
+
+    }
+
+    /**
+     * Move tasks from the ready queues into the pool while there is a free
+     * slot. The caller must hold the {@link #lock}.
+     * 
+     * @param dispatched
+     *            The tasks to be {@link #launch(List) launched} once the lock
+     *            has been released.
+     */
+    private void dispatch(final List<Task> dispatched) {
+
+        while (nrunning < pool.getParallelism() && !ready.isEmpty()) {
+
+            dispatched.add(next());
+
+            nrunning++;
+
+            lastProgressNanos = System.nanoTime();
+
+        }
+
+    }
+
+    /**
+     * Release dispatched tasks into the pool. A task dispatched from a worker
+     * thread of the pool is forked onto that thread's deque.
+     */
+    private void launch(final List<Task> dispatched) {
+
+        if (dispatched.isEmpty())
+            return;
+
+        final Thread t = Thread.currentThread();
+
+        final boolean local = t instanceof ForkJoinWorkerThread
+                && ((ForkJoinWorkerThread) t).getPool() == pool;
+
+        for (Task task : dispatched) {
+
+            dispatchCount.increment();
+
+            if (local) {
+
+                localDispatchCount.increment();
+
+                ForkJoinTask.adapt(task).fork();
+
+            } else {
+
+                try {
+
+                    pool.execute(task);
+
+                } catch (RejectedExecutionException ex) {
+
+                    // Shutdown. Release the slot.
+                    done(task);
+
+                    throw ex;
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Release the slot for a task which is done and dispatch the next task.
+     */
+    private void done(final Task task) {
+
+        final List<Task> dispatched = new ArrayList<Task>(1);
+
+        lock.lock();
+
+        try {
+
+            final Share share = task.share;
+
+            if (task.overflow) {
+
+                noverflow--;
+
+            } else {
+
+                nrunning--;
+
+            }
+
+            share.nrunning--;
+
+            if (share.nrunning == 0 && share.waiting.isEmpty()) {
+
+                shares.remove(share.queryId);
+
+            }
+
+            lastProgressNanos = System.nanoTime();
+
+            dispatch(dispatched);
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+        if (!pool.isShutdown())
+            launch(dispatched);
+
+    }
+
+    @Override
+    public CounterSet getCounters() {
+
+        final CounterSet root = new CounterSet();
+
+        // #of worker threads.
+        root.addCounter("parallelism", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(pool.getParallelism());
+            }
+        });
+
+        // #of tasks which are waiting for a free slot.
+        root.addCounter("waitingTaskCount", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(nwaiting);
+            }
+        });
+
+        // #of tasks running on the overflow executor.
+        root.addCounter("overflowTaskCount", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(noverflow);
+            }
+        });
+
+        // #of tasks dispatched to the pool.
+        root.addCounter("dispatchCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(dispatchCount.get());
+            }
+        });
+
+        // #of tasks forked onto the deque of the dispatching worker thread.
+        root.addCounter("localDispatchCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(localDispatchCount.get());
+            }
+        });
+
+        // #of tasks dispatched to the overflow executor.
+        root.addCounter("overflowDispatchCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(overflowDispatchCount.get());
+            }
+        });
+
+        // #of tasks stolen by an idle worker thread.
+        root.addCounter("stealCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(pool.getStealCount());
+            }
+        });
+
+        return root;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{parallelism="
+                + pool.getParallelism() + ", nrunning=" + nrunning
+                + ", noverflow=" + noverflow + ", nwaiting=" + nwaiting + "}";
+
+    }
+
+    /**
+     * The tasks and the virtual time of a query.
+     */
+    private static class Share implements Comparable<Share> {
+
+        private final UUID queryId;
+
+        /**
+         * The virtual time advanced by each task of this query.
+         */
+        private final long stride;
+
+        /**
+         * The tasks which are waiting for a slot.
+         */
+        private final ArrayDeque<Task> waiting = new ArrayDeque<Task>();
+
+        /**
+         * The #of dispatched tasks which are not done.
+         */
+        private int nrunning = 0;
+
+        /**
+         * The virtual time of this query.
+         */
+        private long vtime = 0L;
+
+        /**
+         * The order in which this query joined the ready queue.
+         */
+        private long seq;
+
+        Share(final UUID queryId, final int weight) {
+
+            this.queryId = queryId;
+
+            this.stride = Math.max(1L, STRIDE1 / weight);
+
+        }
+
+        @Override
+        public int compareTo(final Share o) {
+
+            if (vtime < o.vtime)
+                return -1;
+
+            if (vtime > o.vtime)
+                return 1;
+
+            return seq < o.seq ? -1 : seq > o.seq ? 1 : 0;
+
+        }
+
+    }
+
+    /**
+     * Runs a task and then releases its slot.
+     */
+    private class Task implements Runnable {
+
+        private final Share share;
+
+        private final Runnable r;
+
+        /**
+         * <code>true</code> iff dispatched to the overflow {@link Executor}.
+         */
+        private boolean overflow = false;
+
+        Task(final Share share, final Runnable r) {
+
+            this.share = share;
+
+            this.r = r;
+
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                if (!overflow) {
+
+                    /*
+                     * Clear an interrupt left behind by a task which was
+                     * cancelled on this worker thread.
+                     */
+                    Thread.interrupted();
+
+                }
+
+                r.run();
+
+            } catch (Throwable t) {
+
+                // The task is responsible for reporting its own errors.
+                if (log.isInfoEnabled())
+                    log.info("queryId=" + share.queryId + " : " + t, t);
+
+            } finally {
+
+                done(this);
+
+            }
+
+        }
+
+    }
+
+}
@@ -256,6 +256,88 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
 //        String DEFAULT_RUNNING_QUERY_CLASS = StandaloneChainedRunningQuery.class.getName();
         String DEFAULT_RUNNING_QUERY_CLASS = ChunkedRunningQuery.class.getName();
 
+        /**
+         * The fair share weight of a query (default
+         * {@value #DEFAULT_FAIR_SHARE_WEIGHT}). This is read from the
+         * top-level operator of the query plan. When the
+         * {@link OperatorTaskScheduler} is enabled, a query with weight
+         * <code>w</code> has its operator tasks dispatched <code>w</code>
+         * times as often as a query with weight one while both have tasks
+         * waiting for a worker thread. The weight is ignored otherwise.
+         * 
+         * @see Options#OPERATOR_SCHEDULER_THREADS
+         */
+        String FAIR_SHARE_WEIGHT = QueryEngine.class.getName()
+                + ".fairShareWeight";
+
+        int DEFAULT_FAIR_SHARE_WEIGHT = 1;
+
+        /**
+         * The memory budget (bytes) of a query -or- ZERO (0L) if the query is
+         * not bounded (default {@value #DEFAULT_MEMORY_BUDGET}). This is read
+         * from the top-level operator of the query plan. The budget covers the
+         * native memory allocated by the query and the estimated heap used by
+         * its JVM hash indices. A query which exceeds its budget is halted
+         * with a {@link QueryMemoryBudgetExceededException}. When
+         * {@link Options#MEMORY_CAPACITY} is set, the budget is also used to
+         * decide when the query may start.
+         * 
+         * @see QueryMemoryBudget
+         */
+        String MEMORY_BUDGET = QueryEngine.class.getName() + ".memoryBudget";
+
+        long DEFAULT_MEMORY_BUDGET = 0L;
+
+    }
+
+    /**
+     * Options for the {@link QueryEngine}. These are read from the environment
+     * (System properties) when the {@link QueryEngine} is
+     * {@link QueryEngine#init() initialized}.
+     */
+    public interface Options {
+
+        /**
+         * The #of worker threads for the {@link OperatorTaskScheduler} -or-
+         * ZERO (0) to run operator tasks directly on the
+         * {@link IIndexManager#getExecutorService() executor service} of the
+         * local index manager (default
+         * {@value #DEFAULT_OPERATOR_SCHEDULER_THREADS}).
+         * 
+         * @see Annotations#FAIR_SHARE_WEIGHT
+         */
+        String OPERATOR_SCHEDULER_THREADS = QueryEngine.class.getName()
+                + ".operatorSchedulerThreads";
+
+        String DEFAULT_OPERATOR_SCHEDULER_THREADS = "0";
+
+        /**
+         * The time (milliseconds) that operator tasks may wait on the
+         * {@link OperatorTaskScheduler} without any task being dispatched or
+         * finishing before the next task is run outside of its worker threads
+         * (default {@value #DEFAULT_OPERATOR_SCHEDULER_STALL_MILLIS}).
+         */
+        String OPERATOR_SCHEDULER_STALL_MILLIS = QueryEngine.class.getName()
+                + ".operatorSchedulerStallMillis";
+
+        String DEFAULT_OPERATOR_SCHEDULER_STALL_MILLIS = ""
+                + OperatorTaskScheduler.DEFAULT_STALL_MILLIS;
+
+        /**
+         * The total memory (bytes) which may be promised to running queries
+         * through their {@link Annotations#MEMORY_BUDGET} -or- ZERO (0) to
+         * start queries without regard to their budget (default
+         * {@value #DEFAULT_MEMORY_CAPACITY}). A query whose budget does not
+         * fit into the remaining capacity waits until enough memory is
+         * released by other queries or its deadline expires. A query whose
+         * budget is larger than the capacity is rejected. Queries without a
+         * budget are always admitted.
+         */
+        String MEMORY_CAPACITY = QueryEngine.class.getName()
+                + ".memoryCapacity";
+
+        String DEFAULT_MEMORY_CAPACITY = "0";
+
     }
 
     /**
@@ -276,6 +358,22 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
         // geospatial counters
         final CounterSet geoSpatial = root.makePath("GeoSpatial");
         geoSpatial.attach(geoSpatialCounters.getCounters());
+
+        // operator task scheduler counters
+        final OperatorTaskScheduler scheduler = operatorScheduler.get();
+        if (scheduler != null) {
+            root.makePath("operatorScheduler").attach(
+                    scheduler.getCounters());
+        }
+
+        // operator task queueing counters per running query.
+        if (!runningQueries.isEmpty()) {
+            final CounterSet queries = root.makePath("queries");
+            for (AbstractRunningQuery q : runningQueries.values()) {
+                queries.makePath(q.getQueryId().toString()).attach(
+                        q.getQueryCounters().getCounters());
+            }
+        }
         
 //        // counters per tagged query group.
 //        {
@@ -558,12 +656,41 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
      * Signaled when no queries are running.
      */
     private final Condition nothingRunning = lock.newCondition();
+
+    /**
+     * Signaled when memory promised to a query is released.
+     */
+    private final Condition memoryAvailable = lock.newCondition();
+
+    /**
+     * The sum of the memory budgets of the admitted queries (guarded by
+     * {@link #lock}).
+     * 
+     * @see Options#MEMORY_CAPACITY
+     */
+    private long admittedMemoryBytes = 0L;
+
+    /**
+     * The memory capacity for admission control -or- ZERO (0L) if admission
+     * control is disabled. This is set by {@link #init()}.
+     */
+    private volatile long memoryCapacity = 0L;
     
     /**
      * The currently executing queries.
      */
     private final ConcurrentHashMap<UUID/* queryId */, AbstractRunningQuery> runningQueries = new ConcurrentHashMap<UUID, AbstractRunningQuery>();
 
+    /**
+     * The queries which are waiting for their memory budget to be admitted.
+     * These queries are not yet in {@link #runningQueries}, but they are
+     * visible to {@link #getRunningQuery(UUID)} so they may be cancelled while
+     * they wait.
+     * 
+     * @see #admitMemory(AbstractRunningQuery)
+     */
+    private final ConcurrentHashMap<UUID/* queryId */, AbstractRunningQuery> pendingAdmission = new ConcurrentHashMap<UUID, AbstractRunningQuery>();
+
     /**
      * LRU cache used to handle problems with asynchronous termination of
      * running queries.
@@ -934,9 +1061,27 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
     public void init() {
 
         final FutureTask<Void> ft = new FutureTaskMon<Void>(new QueryEngineTask(
-                priorityQueue, deadlineQueue), (Void) null);
+                priorityQueue, deadlineQueue, operatorScheduler), (Void) null);
 
         if (engineFuture.compareAndSet(null/* expect */, ft)) {
+
+            final int nthreads = Integer.valueOf(System.getProperty(
+                    Options.OPERATOR_SCHEDULER_THREADS,
+                    Options.DEFAULT_OPERATOR_SCHEDULER_THREADS));
+
+            memoryCapacity = Long.valueOf(System.getProperty(
+                    Options.MEMORY_CAPACITY, Options.DEFAULT_MEMORY_CAPACITY));
+
+            if (nthreads > 0) {
+
+                final long stallMillis = Long.valueOf(System.getProperty(
+                        Options.OPERATOR_SCHEDULER_STALL_MILLIS,
+                        Options.DEFAULT_OPERATOR_SCHEDULER_STALL_MILLIS));
+
+                operatorScheduler.set(new OperatorTaskScheduler(nthreads,
+                        localIndexManager.getExecutorService(), stallMillis));
+
+            }
         
             engineService.set(Executors
                     .newSingleThreadExecutor(new DaemonThreadFactory(
@@ -972,6 +1117,13 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
      */
     private final AtomicReference<ExecutorService> engineService = new AtomicReference<ExecutorService>();
 
+    /**
+     * The scheduler for operator tasks (optional). This is set by
+     * {@link #init()} when {@link Options#OPERATOR_SCHEDULER_THREADS} is
+     * positive.
+     */
+    private final AtomicReference<OperatorTaskScheduler> operatorScheduler = new AtomicReference<OperatorTaskScheduler>();
+
     /**
      * The {@link Future} for the query engine.  This is set by {@link #init()}.
      */
@@ -1017,6 +1169,45 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
         localIndexManager.getExecutorService().execute(r);
         
     }
+
+    /**
+     * Executes an operator task for a query. The task is run by the
+     * {@link OperatorTaskScheduler} if one is configured and otherwise on the
+     * local {@link IIndexManager}'s {@link ExecutorService}.
+     * 
+     * @param q
+     *            The query.
+     * @param r
+     *            The operator task.
+     */
+    final protected void execute(final AbstractRunningQuery q, final Runnable r) {
+
+        final OperatorTaskScheduler scheduler = operatorScheduler.get();
+
+        if (scheduler == null) {
+
+            execute(r);
+
+            return;
+
+        }
+
+        scheduler.execute(q.getQueryId(), q.getFairShareWeight(), r);
+
+    }
+
+    /**
+     * The {@link OperatorTaskScheduler} -or- <code>null</code> if operator
+     * tasks are run directly on the local {@link IIndexManager}'s
+     * {@link ExecutorService}.
+     * 
+     * @see Options#OPERATOR_SCHEDULER_THREADS
+     */
+    public OperatorTaskScheduler getOperatorTaskScheduler() {
+
+        return operatorScheduler.get();
+
+    }
     
     /**
      * Runnable submits chunks available for evaluation against running queries.
@@ -1031,10 +1222,12 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
         
         final private BlockingQueue<AbstractRunningQuery> priorityQueue;
         final private PriorityBlockingQueue<QueryDeadline> deadlineQueue;
+        final private AtomicReference<OperatorTaskScheduler> operatorScheduler;
 
         public QueryEngineTask(
                 final BlockingQueue<AbstractRunningQuery> priorityQueue,
-                final PriorityBlockingQueue<QueryDeadline> deadlineQueue) {
+                final PriorityBlockingQueue<QueryDeadline> deadlineQueue,
+                final AtomicReference<OperatorTaskScheduler> operatorScheduler) {
 
             if (priorityQueue == null)
                 throw new IllegalArgumentException();
@@ -1046,6 +1239,8 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
             
             this.deadlineQueue = deadlineQueue;
 
+            this.operatorScheduler = operatorScheduler;
+
         }
         
         @Override
@@ -1076,6 +1271,14 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
                              * queue.poll().
                              */
                             checkDeadlines(now, deadlineQueue);
+                            /*
+                             * Run an operator task outside of the scheduler's
+                             * worker threads if they are stalled.
+                             */
+                            final OperatorTaskScheduler scheduler = operatorScheduler
+                                    .get();
+                            if (scheduler != null)
+                                scheduler.checkStalled(now);
                             mark = now;
                             remaining = deadline;
                         }
@@ -1178,6 +1381,8 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
 
         lock.lock();
         try {
+            // wake up queries waiting for memory.
+            memoryAvailable.signalAll();
             while (!runningQueries.isEmpty()) {
                 try {
                     nothingRunning.await();
@@ -1207,6 +1412,15 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
                 log.info("Terminating engineService: "+this);
             s.shutdownNow();
         }
+
+        // stop the operator task scheduler.
+        final OperatorTaskScheduler scheduler = operatorScheduler
+                .getAndSet(null);
+        if (scheduler != null) {
+            if (log.isInfoEnabled())
+                log.info("Terminating operatorScheduler: " + this);
+            scheduler.shutdownNow();
+        }
         
         final HttpClient cm = clientConnectionManagerRef.get();
         if (cm != null) {
@@ -1245,6 +1459,14 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
         
         shutdown = true;
         
+        // wake up queries waiting for memory.
+        lock.lock();
+        try {
+            memoryAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
         /*
          * Stop the QueryEngineTask: this is the task that accepts chunks that
          * are available for evaluation and assigns them to the
@@ -1282,6 +1504,15 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
             q.cancel(true/*mayInterruptIfRunning*/);
             
         }
+
+        // stop the operator task scheduler.
+        final OperatorTaskScheduler scheduler = operatorScheduler
+                .getAndSet(null);
+        if (scheduler != null) {
+            if (log.isInfoEnabled())
+                log.info("Terminating operatorScheduler: " + this);
+            scheduler.shutdownNow();
+        }
         
         // clear the queues
         priorityQueue.clear();
@@ -1787,58 +2018,253 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
 //         */
 //        BOpUtility.verifyPipline(msg.getBOpId(), query);
 
-        // verify query engine is running.
-        assertRunning();
+        // wait until the memory budget of the query is available.
+        if (!admitMemory(runningQuery)) {
 
-        // add to running query table.
-        if (putIfAbsent(queryId, runningQuery) != runningQuery) {
+            // Return the query. It was cancelled while it was waiting.
+            return runningQuery;
 
-            /*
-             * UUIDs should not collide when assigned randomly. However, the
-             * UUID may be imposed by an exterior process, such as a SPARQL end
-             * point, so it can access metadata about the running query even
-             * when it is not a direct client of the QueryEngine. This provides
-             * a safety check against UUID collisions which might be non-random.
-             */
-            throw new RuntimeException("Query exists with that UUID: uuid="
-                + runningQuery.getQueryId());
-            
         }
 
+        try {
+
+            // verify query engine is running.
+            assertRunning();
+
+            // add to running query table.
+            if (putIfAbsent(queryId, runningQuery) != runningQuery) {
+
+                /*
+                 * UUIDs should not collide when assigned randomly. However, the
+                 * UUID may be imposed by an exterior process, such as a SPARQL end
+                 * point, so it can access metadata about the running query even
+                 * when it is not a direct client of the QueryEngine. This provides
+                 * a safety check against UUID collisions which might be non-random.
+                 */
+                throw new RuntimeException("Query exists with that UUID: uuid="
+                    + runningQuery.getQueryId());
+            
+            }
+
 //        final String tag = query.getProperty(QueryHints.TAG,
 //                QueryHints.DEFAULT_TAG);
 //
 //        final Counters c = tag == null ? null : getCounters(tag);
 
-        // track #of started queries.
-        counters.queryStartCount.increment();
+            // track #of started queries.
+            counters.queryStartCount.increment();
 
 //        if (c != null)
 //            c.startCount.increment();
 
-        if (pendingCancelLRU.containsKey(runningQuery.getQueryId())) {
-            /*
-             * The query was asynchronously scheduled for cancellation.
-             */
+            if (pendingCancelLRU.containsKey(runningQuery.getQueryId())) {
+                /*
+                 * The query was asynchronously scheduled for cancellation.
+                 */
 
-            // Cancel the query.
-            runningQuery.cancel(true/* mayInterruptIfRunning */);
+                // Cancel the query.
+                runningQuery.cancel(true/* mayInterruptIfRunning */);
             
-            // Remove from the CANCEL LRU.
-            pendingCancelLRU.remove(runningQuery.getQueryId());
+                // Remove from the CANCEL LRU.
+                pendingCancelLRU.remove(runningQuery.getQueryId());
         
-            // Return the query. It has already been cancelled.
-            return runningQuery;
+                // Return the query. It has already been cancelled.
+                return runningQuery;
             
-        }
+            }
 
-        // notify query start
-        runningQuery.startQuery(msg);
+            // notify query start
+            runningQuery.startQuery(msg);
         
-        // tell query to consume the initial chunk.
-        acceptChunk(msg);
+            // tell query to consume the initial chunk.
+            acceptChunk(msg);
         
-        return runningQuery;
+            return runningQuery;
+
+        } catch (Throwable t) {
+
+            // the query will not halt normally, so release its memory here.
+            releaseMemory(runningQuery);
+
+            throw t;
+
+        }
+
+    }
+
+    /**
+     * Wait until the {@link QueryMemoryBudget} of a query fits into the
+     * {@link Options#MEMORY_CAPACITY} of the {@link QueryEngine} and then
+     * count it against that capacity. This is a NOP if the query does not
+     * have a budget or admission control is disabled.
+     * <p>
+     * While it waits, the query is registered in {@link #pendingAdmission} so
+     * it may be found and cancelled through {@link #getRunningQuery(UUID)}.
+     * Cancelling the query signals {@link #memoryAvailable} (see
+     * {@link #halt(AbstractRunningQuery)}).
+     * 
+     * @param q
+     *            The query.
+     * 
+     * @return <code>true</code> unless the query was cancelled while it was
+     *         waiting, in which case its memory was not admitted.
+     * 
+     * @throws QueryMemoryBudgetExceededException
+     *             if the budget of the query is larger than the capacity.
+     * @throws QueryTimeoutException
+     *             if the deadline of the query expires first.
+     * @throws IllegalStateException
+     *             if the {@link QueryEngine} is shutdown first.
+     * @throws InterruptedException
+     */
+    private boolean admitMemory(final AbstractRunningQuery q)
+            throws InterruptedException, QueryTimeoutException {
+
+        final QueryMemoryBudget budget = q.getMemoryBudget();
+
+        final long capacity = memoryCapacity;
+
+        if (capacity == 0L || !budget.isBounded())
+            return true;
+
+        final long nbytes = budget.getBudgetBytes();
+
+        if (nbytes > capacity)
+            throw new QueryMemoryBudgetExceededException("budget=" + nbytes
+                    + " exceeds capacity=" + capacity + ", queryId="
+                    + q.getQueryId());
+
+        final long deadline = q.getDeadline();
+
+        boolean waited = false;
+        final long begin = System.nanoTime();
+
+        lock.lockInterruptibly();
+        try {
+
+            while (!q.isDone() && admittedMemoryBytes + nbytes > capacity) {
+
+                assertRunning();
+
+                if (!waited) {
+                    waited = true;
+                    if (pendingAdmission.putIfAbsent(q.getQueryId(), q) != null
+                            || runningQueries.containsKey(q.getQueryId())) {
+                        throw new RuntimeException(
+                                "Query exists with that UUID: uuid="
+                                        + q.getQueryId());
+                    }
+                    counters.memoryAdmissionWaitCount.increment();
+                    if (log.isInfoEnabled())
+                        log.info("Waiting for memory: queryId="
+                                + q.getQueryId() + ", budget=" + nbytes
+                                + ", admitted=" + admittedMemoryBytes);
+                }
+
+                if (deadline == Long.MAX_VALUE) {
+
+                    memoryAvailable.await();
+
+                } else {
+
+                    final long remaining = deadline
+                            - System.currentTimeMillis();
+
+                    if (remaining <= 0)
+                        throw new QueryTimeoutException(
+                                "Deadline expired waiting for memory: queryId="
+                                        + q.getQueryId());
+
+                    memoryAvailable.await(remaining, TimeUnit.MILLISECONDS);
+
+                }
+
+            }
+
+            if (q.isDone()) {
+
+                // Cancelled while waiting.
+                return false;
+
+            }
+
+            admittedMemoryBytes += nbytes;
+
+            budget.setAdmitted();
+
+            return true;
+
+        } finally {
+
+            if (waited)
+                pendingAdmission.remove(q.getQueryId(), q);
+
+            lock.unlock();
+
+            if (waited)
+                counters.memoryAdmissionWaitNanos.add(System.nanoTime()
+                        - begin);
+
+        }
+
+    }
+
+    /**
+     * Return the memory budget of a query to the capacity of the
+     * {@link QueryEngine} (idempotent).
+     * 
+     * @param q
+     *            The query.
+     */
+    private void releaseMemory(final AbstractRunningQuery q) {
+
+        final QueryMemoryBudget budget = q.getMemoryBudget();
+
+        lock.lock();
+        try {
+
+            if (budget.clearAdmitted()) {
+
+                admittedMemoryBytes -= budget.getBudgetBytes();
+
+                memoryAvailable.signalAll();
+
+            }
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    /**
+     * The sum of the memory budgets of the queries which are currently
+     * admitted.
+     * 
+     * @see Options#MEMORY_CAPACITY
+     */
+    public long getAdmittedMemoryBytes() {
+
+        lock.lock();
+        try {
+            return admittedMemoryBytes;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * The memory capacity for admission control -or- ZERO (0L) if admission
+     * control is disabled.
+     * 
+     * @see Options#MEMORY_CAPACITY
+     */
+    public long getMemoryCapacity() {
+
+        return memoryCapacity;
 
     }
 
@@ -1953,7 +2379,8 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
 
     /**
      * Return the {@link AbstractRunningQuery} associated with that query
-     * identifier.
+     * identifier. This includes a query which is still waiting for its memory
+     * budget to be admitted, so it may be cancelled while it waits.
      * 
      * @param queryId
      *            The query identifier.
@@ -1983,6 +2410,13 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
             
         }
 
+        if ((q = pendingAdmission.get(queryId)) != null) {
+
+            // Found query waiting for its memory budget.
+            return q;
+
+        }
+
         /*
          * Since the query was not found in the set of actively running queries,
          * we now get the lock, re-verify that it is not an active query, and
@@ -2000,6 +2434,13 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
             
             }
 
+            if ((q = pendingAdmission.get(queryId)) != null) {
+
+                // Unlikely concurrent wait for admission of the query.
+                return q;
+
+            }
+
             // Test to see if the query is halted.
             final Future<Void> doneQueryFuture = doneQueries.get(queryId);
 
@@ -2051,6 +2492,13 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
             // remove from the set of running queries.
             runningQueries.remove(q.getQueryId(), q);
 
+            // wake the query if it was cancelled while waiting for admission.
+            if (pendingAdmission.remove(q.getQueryId(), q))
+                memoryAvailable.signalAll();
+
+            // return the memory budget of the query.
+            releaseMemory(q);
+
             if(runningQueries.isEmpty()) {
 
                 // Signal that no queries are running.
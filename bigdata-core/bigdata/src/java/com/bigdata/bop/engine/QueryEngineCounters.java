@@ -27,6 +27,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.bop.engine;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.bigdata.counters.CAT;
 import com.bigdata.counters.CounterSet;
 import com.bigdata.counters.ICounterSetAccess;
@@ -99,6 +102,26 @@ public class QueryEngineCounters implements ICounterSetAccess {
      */
     protected final CAT operatorHaltCount = new CAT();
 
+    /**
+     * The total time (nanoseconds) that operator evaluation tasks (chunk
+     * tasks) waited between their submission and the start of their
+     * evaluation.
+     */
+    protected final CAT operatorQueueDelayNanos = new CAT();
+
+    /**
+     * The #of queries which had to wait for memory before they could start.
+     * 
+     * @see QueryEngine.Options#MEMORY_CAPACITY
+     */
+    protected final CAT memoryAdmissionWaitCount = new CAT();
+
+    /**
+     * The total time (nanoseconds) that queries waited for memory before they
+     * could start.
+     */
+    protected final CAT memoryAdmissionWaitNanos = new CAT();
+
     /**
      * The size of the deadline queue.
      * 
@@ -206,6 +229,44 @@ public class QueryEngineCounters implements ICounterSetAccess {
             }
         });
 
+        // total time (ms) that operator tasks waited to be evaluated.
+        root.addCounter("operatorQueueDelayMillis", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(TimeUnit.NANOSECONDS.toMillis(operatorQueueDelayNanos
+                        .get()));
+            }
+        });
+
+        // average time (ms) that an operator task waited to be evaluated.
+        root.addCounter("operatorQueueDelayMillisPerTask",
+                new Instrument<Double>() {
+                    @Override
+                    public void sample() {
+                        final long n = operatorStartCount.get();
+                        final double d = n == 0 ? 0d
+                                : (operatorQueueDelayNanos.get() / 1e6 / n);
+                        setValue(d);
+                    }
+                });
+
+        // #of queries which waited for memory before they could start.
+        root.addCounter("memoryAdmissionWaitCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(memoryAdmissionWaitCount.get());
+            }
+        });
+
+        // total time (ms) that queries waited for memory.
+        root.addCounter("memoryAdmissionWaitMillis", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(TimeUnit.NANOSECONDS.toMillis(memoryAdmissionWaitNanos
+                        .get()));
+            }
+        });
+
         // The size of the deadlineQueue.
         root.addCounter("deadlineQueueSize", new Instrument<Long>() {
             @Override
@@ -218,4 +279,86 @@ public class QueryEngineCounters implements ICounterSetAccess {
 
     }
 
+    /**
+     * Operator task queueing counters for a single query.
+     */
+    public static class QueryCounters implements ICounterSetAccess {
+
+        /**
+         * The #of operator evaluation tasks (chunk tasks) which have started.
+         */
+        protected final CAT operatorStartCount = new CAT();
+
+        /**
+         * The total time (nanoseconds) that those tasks waited to be
+         * evaluated.
+         */
+        protected final CAT operatorQueueDelayNanos = new CAT();
+
+        /**
+         * The longest time (nanoseconds) that one of those tasks waited to be
+         * evaluated.
+         */
+        protected final AtomicLong maxOperatorQueueDelayNanos = new AtomicLong();
+
+        /**
+         * Note the start of an operator task.
+         * 
+         * @param queueDelayNanos
+         *            The time (nanoseconds) that the task waited to be
+         *            evaluated.
+         */
+        public void operatorStart(final long queueDelayNanos) {
+
+            operatorStartCount.increment();
+
+            operatorQueueDelayNanos.add(queueDelayNanos);
+
+            long max;
+            while ((max = maxOperatorQueueDelayNanos.get()) < queueDelayNanos) {
+                if (maxOperatorQueueDelayNanos.compareAndSet(max,
+                        queueDelayNanos))
+                    break;
+            }
+
+        }
+
+        @Override
+        public CounterSet getCounters() {
+
+            final CounterSet root = new CounterSet();
+
+            // #of operator tasks which have started for this query.
+            root.addCounter("operatorStartCount", new Instrument<Long>() {
+                @Override
+                public void sample() {
+                    setValue(operatorStartCount.get());
+                }
+            });
+
+            // total time (ms) that those tasks waited to be evaluated.
+            root.addCounter("operatorQueueDelayMillis", new Instrument<Long>() {
+                @Override
+                public void sample() {
+                    setValue(TimeUnit.NANOSECONDS
+                            .toMillis(operatorQueueDelayNanos.get()));
+                }
+            });
+
+            // longest time (ms) that one of those tasks waited.
+            root.addCounter("maxOperatorQueueDelayMillis",
+                    new Instrument<Long>() {
+                        @Override
+                        public void sample() {
+                            setValue(TimeUnit.NANOSECONDS
+                                    .toMillis(maxOperatorQueueDelayNanos.get()));
+                        }
+                    });
+
+            return root;
+
+        }
+
+    }
+
 }
@@ -0,0 +1,284 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.rwstore.sector.IMemoryManager;
+
+/**
+ * The memory budget of an {@link IRunningQuery}. The budget covers both the
+ * native memory allocated by the query from its {@link IMemoryManager} and an
+ * estimate of the JVM heap used by the hash indices of the query. Operators
+ * which buffer solutions on the heap {@link #reserveHeap(long) reserve} their
+ * estimated footprint before they buffer those solutions and
+ * {@link #releaseHeap(long) release} it once the solutions are dropped.
+ * <p>
+ * The {@link QueryEngine} also uses the budget for admission control: when
+ * {@link QueryEngine.Options#MEMORY_CAPACITY} is set, a query does not start
+ * until the sum of the budgets of the admitted queries leaves room for its
+ * own budget.
+ * 
+ * @see QueryEngine.Annotations#MEMORY_BUDGET
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class QueryMemoryBudget {
+
+    /**
+     * The estimated heap overhead (bytes) of a solution in a JVM hash index,
+     * including the entry in its hash bucket.
+     */
+    static final long SOLUTION_OVERHEAD = 64L;
+
+    /**
+     * The estimated heap overhead (bytes) of each binding of a solution in a
+     * JVM hash index.
+     */
+    static final long BINDING_OVERHEAD = 48L;
+
+    /**
+     * The budget (bytes) -or- ZERO (0L) if the query is not bounded.
+     */
+    private final long budgetBytes;
+
+    /**
+     * The estimated heap bytes currently reserved by the query.
+     */
+    private final AtomicLong heapBytes = new AtomicLong();
+
+    /**
+     * The largest value of {@link #getUsedBytes()} observed by
+     * {@link #reserveHeap(long)}.
+     */
+    private final AtomicLong maxUsedBytes = new AtomicLong();
+
+    /**
+     * The native memory of the query (if allocated).
+     */
+    private final AtomicReference<IMemoryManager> memoryManager = new AtomicReference<IMemoryManager>();
+
+    /**
+     * <code>true</code> while the budget is counted against the
+     * {@link QueryEngine.Options#MEMORY_CAPACITY}.
+     */
+    private final AtomicBoolean admitted = new AtomicBoolean();
+
+    /**
+     * @param budgetBytes
+     *            The budget (bytes) -or- ZERO (0L) if the query is not
+     *            bounded.
+     */
+    public QueryMemoryBudget(final long budgetBytes) {
+
+        if (budgetBytes < 0L)
+            throw new IllegalArgumentException();
+
+        this.budgetBytes = budgetBytes;
+
+    }
+
+    /**
+     * The budget (bytes) -or- ZERO (0L) if the query is not bounded.
+     */
+    public long getBudgetBytes() {
+
+        return budgetBytes;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the query has a budget.
+     */
+    public boolean isBounded() {
+
+        return budgetBytes != 0L;
+
+    }
+
+    /**
+     * The estimated heap bytes currently reserved by the query.
+     */
+    public long getHeapBytes() {
+
+        return heapBytes.get();
+
+    }
+
+    /**
+     * The native bytes currently allocated by the query.
+     */
+    public long getNativeBytes() {
+
+        final IMemoryManager mmgr = memoryManager.get();
+
+        return mmgr == null ? 0L : mmgr.getSlotBytes();
+
+    }
+
+    /**
+     * The sum of the heap and native bytes currently used by the query.
+     */
+    public long getUsedBytes() {
+
+        return getHeapBytes() + getNativeBytes();
+
+    }
+
+    /**
+     * The largest #of bytes used by the query when heap was last reserved.
+     */
+    public long getMaxUsedBytes() {
+
+        return maxUsedBytes.get();
+
+    }
+
+    /**
+     * Return <code>true</code> iff a reservation of the given #of bytes would
+     * not exceed the budget given the heap and native bytes currently used by
+     * the query. An operator which can release heap (e.g., by writing
+     * buffered solutions onto the native heap) may use this to do so before
+     * {@link #reserveHeap(long)} would fail.
+     * 
+     * @param nbytes
+     *            The estimated heap footprint (bytes).
+     */
+    public boolean canReserveHeap(final long nbytes) {
+
+        if (nbytes < 0L)
+            throw new IllegalArgumentException();
+
+        return budgetBytes == 0L || getUsedBytes() + nbytes <= budgetBytes;
+
+    }
+
+    /**
+     * Reserve heap for solutions which are about to be buffered by an
+     * operator.
+     * 
+     * @param nbytes
+     *            The estimated heap footprint (bytes).
+     * 
+     * @throws QueryMemoryBudgetExceededException
+     *             if the reservation would exceed the budget. Nothing is
+     *             reserved in this case.
+     */
+    public void reserveHeap(final long nbytes) {
+
+        if (nbytes < 0L)
+            throw new IllegalArgumentException();
+
+        final long heap = heapBytes.addAndGet(nbytes);
+
+        final long used = heap + getNativeBytes();
+
+        if (budgetBytes != 0L && used > budgetBytes) {
+
+            heapBytes.addAndGet(-nbytes);
+
+            throw new QueryMemoryBudgetExceededException("budget="
+                    + budgetBytes + ", heap=" + (heap - nbytes) + ", native="
+                    + (used - heap) + ", request=" + nbytes);
+
+        }
+
+        long max;
+        while (used > (max = maxUsedBytes.get())) {
+
+            if (maxUsedBytes.compareAndSet(max, used))
+                break;
+
+        }
+
+    }
+
+    /**
+     * Release heap which was reserved by {@link #reserveHeap(long)}.
+     * 
+     * @param nbytes
+     *            The #of bytes to release.
+     */
+    public void releaseHeap(final long nbytes) {
+
+        if (nbytes < 0L)
+            throw new IllegalArgumentException();
+
+        heapBytes.addAndGet(-nbytes);
+
+    }
+
+    /**
+     * Return the estimated heap footprint of a solution buffered in a JVM hash
+     * index.
+     */
+    public static long estimateHeapBytes(final IBindingSet bset) {
+
+        return SOLUTION_OVERHEAD + BINDING_OVERHEAD * bset.size();
+
+    }
+
+    /**
+     * Set (or clear) the native memory of the query.
+     */
+    void setMemoryManager(final IMemoryManager memoryManager) {
+
+        this.memoryManager.set(memoryManager);
+
+    }
+
+    /**
+     * Mark the budget as counted against the capacity of the
+     * {@link QueryEngine}.
+     */
+    void setAdmitted() {
+
+        admitted.set(true);
+
+    }
+
+    /**
+     * Clear the admitted flag.
+     * 
+     * @return <code>true</code> iff the budget was admitted.
+     */
+    boolean clearAdmitted() {
+
+        return admitted.compareAndSet(true, false);
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{budget=" + budgetBytes
+                + ",heap=" + getHeapBytes() + ",native=" + getNativeBytes()
+                + "}";
+
+    }
+
+}
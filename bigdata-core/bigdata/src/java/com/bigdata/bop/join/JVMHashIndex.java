@@ -34,6 +34,7 @@ import org.apache.log4j.Logger;
 import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IConstant;
 import com.bigdata.bop.IVariable;
+import com.bigdata.bop.bindingSet.ColumnarSolutionChunk;
 import com.bigdata.bop.solutions.JVMDistinctBindingSetsOp;
 import com.bigdata.counters.CAT;
 
@@ -571,11 +572,11 @@ public class JVMHashIndex {
 
         if (b == null) {
 
-            map.put(key, b = new Bucket(key.hash, bset));
+            map.put(key, b = new Bucket(key.hash, retain(bset)));
 
         } else {
 
-            b.add(bset);
+            b.add(retain(bset));
 
         }
 
@@ -583,6 +584,17 @@ public class JVMHashIndex {
 
     }
 
+    /**
+     * Return the solution to be stored in the index. A
+     * {@link ColumnarSolutionChunk} row is copied since it would otherwise
+     * keep all the columns of its chunk reachable for the life of the index.
+     */
+    private static IBindingSet retain(final IBindingSet bset) {
+
+        return ColumnarSolutionChunk.isView(bset) ? bset.clone() : bset;
+
+    }
+
     /**
      * Add the solution to the index iff the solution is not already present in
      * the index.
@@ -603,13 +615,13 @@ public class JVMHashIndex {
         if (b == null) {
 
             // New bucket holding just this solution.
-            map.put(key, b = new Bucket(key.hash, bset));
+            map.put(key, b = new Bucket(key.hash, retain(bset)));
 
             return true;
 
         } else {
 
-            if (b.addDistinct(bset)) {
+            if (b.addDistinct(retain(bset))) {
 
                 // Existing bucket not having this solution.
                 return true;
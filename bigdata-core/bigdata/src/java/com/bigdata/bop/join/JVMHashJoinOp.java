@@ -104,7 +104,8 @@ public class JVMHashJoinOp<E> extends HashJoinOp<E> implements ISingleThreadedOp
     protected IHashJoinUtility newState(final BOpContext<IBindingSet> context,
             final INamedSolutionSetRef namedSetRef, final JoinTypeEnum joinType) {
 
-        return new JVMHashJoinUtility(this, joinType);
+        return new JVMHashJoinUtility(this, joinType, context
+                .getRunningQuery().getMemoryBudget());
     
     }
 
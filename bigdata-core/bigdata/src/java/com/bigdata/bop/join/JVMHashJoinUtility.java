@@ -33,6 +33,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
@@ -48,6 +49,7 @@ import com.bigdata.bop.IVariable;
 import com.bigdata.bop.PipelineOp;
 import com.bigdata.bop.controller.INamedSolutionSetRef;
 import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.QueryMemoryBudget;
 import com.bigdata.bop.join.JVMHashIndex.Bucket;
 import com.bigdata.bop.join.JVMHashIndex.Key;
 import com.bigdata.bop.join.JVMHashIndex.SolutionHit;
@@ -91,7 +93,8 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
                 final JoinTypeEnum joinType//
                 ) {
 
-            return new JVMHashJoinUtility(op, joinType);
+            return new JVMHashJoinUtility(op, joinType, context
+                    .getRunningQuery().getMemoryBudget());
 
         }
     };
@@ -162,6 +165,17 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
      * The #of solutions accepted into the hash index.
      */
     protected final CAT rightSolutionCount = new CAT();
+
+    /**
+     * The memory budget of the query against which the solutions in the hash
+     * index are charged (optional).
+     */
+    private final QueryMemoryBudget memoryBudget;
+
+    /**
+     * The estimated heap bytes charged against the {@link #memoryBudget}.
+     */
+    private final AtomicLong heapBytes = new AtomicLong();
     
     /**
      * The maximum #of (left,right) solution joins that will be considered
@@ -230,6 +244,26 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
      */
     public JVMHashJoinUtility(final PipelineOp op, final JoinTypeEnum joinType) {
 
+        this(op, joinType, null/* memoryBudget */);
+
+    }
+
+    /**
+     * 
+     * @param op
+     *            The operator whose annotation will inform construction the
+     *            hash index.
+     * @param joinType
+     *            The type of join to be performed.
+     * @param memoryBudget
+     *            The memory budget of the query against which the estimated
+     *            heap footprint of the hash index will be charged (optional).
+     * 
+     * @see JVMHashJoinAnnotations
+     */
+    public JVMHashJoinUtility(final PipelineOp op,
+            final JoinTypeEnum joinType, final QueryMemoryBudget memoryBudget) {
+
         if (op == null)
             throw new IllegalArgumentException();
 
@@ -237,6 +271,8 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
             throw new IllegalArgumentException();
         
         this.joinType = joinType;
+
+        this.memoryBudget = memoryBudget;
         /*
          * Note: This flag needs to be [true] if we allow solutions to be stored
          * in the hash index that have unbound variables for the "joinVars". We
@@ -403,9 +439,37 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
         return rightSolutionCount.get();
     }
 
+    /**
+     * Charge solutions entered into the hash index against the memory budget
+     * of the query (if any).
+     * 
+     * @param nbytes
+     *            The estimated heap footprint of those solutions.
+     * 
+     * @throws com.bigdata.bop.engine.QueryMemoryBudgetExceededException
+     *             if the query would exceed its budget.
+     * 
+     * @see QueryMemoryBudget#estimateHeapBytes(IBindingSet)
+     */
+    protected void reserveHeap(final long nbytes) {
+
+        if (memoryBudget == null || nbytes == 0L)
+            return;
+
+        memoryBudget.reserveHeap(nbytes);
+
+        heapBytes.addAndGet(nbytes);
+
+    }
+
     @Override
     public void release() {
 
+        if (memoryBudget != null) {
+            // return the heap charged for the hash index.
+            memoryBudget.releaseHeap(heapBytes.getAndSet(0L));
+        }
+
         if (open.compareAndSet(true/* expect */, false/* update */)) {
             // Already closed.
             return;
@@ -433,6 +497,8 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
 
             long naccepted = 0;
 
+            long nbytes = 0;
+
             for (IBindingSet bset : all) {
 
                 if (index.add(bset) == null) {
@@ -443,8 +509,12 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
 
                 naccepted++;
 
+                nbytes += QueryMemoryBudget.estimateHeapBytes(bset);
+
             }
 
+            reserveHeap(nbytes);
+
             if (log.isDebugEnabled())
                 log.debug("There are " + index.bucketCount()
                         + " hash buckets, joinVars="
@@ -480,6 +550,8 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
             if (log.isDebugEnabled())
                 log.debug("Materialized: " + all.length + " source solutions.");
 
+            long nbytes = 0;
+
             for (IBindingSet bset : all) {
 
                 /*
@@ -501,10 +573,14 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
                     // Write on the output sink.
                     sink.add(bset);
 
+                    nbytes += QueryMemoryBudget.estimateHeapBytes(bset);
+
                 }
 
             }
 
+            reserveHeap(nbytes);
+
             if (log.isDebugEnabled())
                 log.debug("There are " + index.bucketCount()
                         + " hash buckets, joinVars="
@@ -47,6 +47,7 @@ import com.bigdata.bop.engine.AbstractRunningQuery;
 import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.engine.QueryMemoryBudget;
 import com.bigdata.bop.join.JVMHashIndex.Bucket;
 import com.bigdata.bop.join.JVMHashIndex.SolutionHit;
 import com.bigdata.counters.CAT;
@@ -117,7 +118,7 @@ public class JVMPipelinedHashJoinUtility extends JVMHashJoinUtility implements P
       PipelineOp op, JoinTypeEnum joinType, BOpContext<IBindingSet> context,
       int chunkCapacity) {
       
-      super(op, joinType);
+      super(op, joinType, context.getRunningQuery().getMemoryBudget());
       
       if (!(op instanceof PipelinedHashIndexAndSolutionSetJoinOp)) {
          throw new IllegalArgumentException();
@@ -292,11 +293,15 @@ public class JVMPipelinedHashJoinUtility extends JVMHashJoinUtility implements P
 
                     final IBindingSet[] solutions = subquerySolutionItr.next();
 
+                    long nbytes = 0;
+
                     for (IBindingSet solution : solutions) {
 
                         // add solutions to the subquery into the hash index.
                         rightSolutions.add(solution);
 
+                        nbytes += QueryMemoryBudget.estimateHeapBytes(solution);
+
                         /*
                          * we remove all mappings that generated at least one
                          * result from distinct set (which will be further
@@ -308,6 +313,8 @@ public class JVMPipelinedHashJoinUtility extends JVMHashJoinUtility implements P
                         nResultsFromSubqueries.increment();
                     }
 
+                    reserveHeap(nbytes);
+
                 }
 
                 /**
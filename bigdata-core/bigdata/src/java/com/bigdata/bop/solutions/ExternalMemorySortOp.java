@@ -0,0 +1,941 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.IBind;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IQueryAttributes;
+import com.bigdata.bop.ISingleThreadedOp;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.engine.QueryMemoryBudget;
+import com.bigdata.io.DataInputBuffer;
+import com.bigdata.io.DataOutputBuffer;
+import com.bigdata.rdf.error.SparqlTypeErrorException;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.encoder.IVSolutionSetDecoder;
+import com.bigdata.rdf.internal.encoder.IVSolutionSetEncoder;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.rwstore.sector.IMemoryManager;
+import com.bigdata.util.Bytes;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * An external memory merge sort for binding sets. This operator may be used in
+ * place of the {@link MemorySortOp} when the solutions to be sorted might not
+ * fit on the JVM heap.
+ * <p>
+ * The operator is pipelined. Each time it runs, it evaluates the value
+ * expressions on which the ordering will be imposed for the new chunks of
+ * source solutions (with the same treatment of type errors as the
+ * {@link MemorySortOp}) and buffers the as-bound solutions on the JVM heap.
+ * Each time {@link Annotations#RUN_SIZE} solutions have been buffered, the
+ * buffer is handed off to a task on the executor service of the query engine
+ * which sorts that run, encodes the sorted solutions using an
+ * {@link IVSolutionSetEncoder} and writes them onto an allocation context of
+ * the native memory of the query. Up to {@link Annotations#MAX_PARALLEL_RUNS}
+ * runs are generated concurrently with each other and with the buffering of
+ * the next run. Once the last chunk of source solutions has been observed, the
+ * remaining buffered solutions are sorted on the JVM heap and a k-way merge
+ * over the runs writes out the solutions in order. Each run is read back one
+ * block at a time and each block is released as soon as it has been read, so
+ * the JVM heap required by the merge is bounded by the #of runs rather than by
+ * the #of solutions. If all solutions fit into a single run then nothing is
+ * written onto the native heap and the operator behaves like the
+ * {@link MemorySortOp}.
+ * <p>
+ * The buffered solutions are charged against the {@link QueryMemoryBudget} of
+ * the query. When the next solution would exceed a bounded budget, a run is
+ * formed from the buffered solutions before {@link Annotations#RUN_SIZE} has
+ * been reached, so the sort spills rather than failing. Since the runs are
+ * held in the native memory of the query, which also counts against the
+ * budget, the budget must still be large enough for the encoded solutions.
+ * <p>
+ * Each run is sorted with a stable sort and the merge breaks ties in favor of
+ * the earlier run, so the output is the same as the output of the
+ * {@link MemorySortOp}.
+ * <p>
+ * Note: The {@link IVSolutionSetEncoder} requires all bindings to be
+ * {@link IV}s. Non-inline {@link IV}s are written together with their cached
+ * RDF Values, so the materialized values on which the ordering depends are
+ * restored when a run is read back.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class ExternalMemorySortOp extends SortOp implements ISingleThreadedOp {
+
+    private static final transient Logger log = Logger
+            .getLogger(ExternalMemorySortOp.class);
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends SortOp.Annotations {
+
+        /**
+         * The #of solutions which are buffered on the JVM heap before they are
+         * sorted and written onto the native heap as a run.
+         */
+        String RUN_SIZE = ExternalMemorySortOp.class.getName() + ".runSize";
+
+        int DEFAULT_RUN_SIZE = 100 * Bytes.kilobyte32;
+
+        /**
+         * The maximum #of runs which may be sorted and written onto the native
+         * heap concurrently. Each such run is also held on the JVM heap until
+         * it has been written out, so this bounds the JVM heap used by the
+         * operator to about <code>(1+MAX_PARALLEL_RUNS)*RUN_SIZE</code>
+         * solutions.
+         */
+        String MAX_PARALLEL_RUNS = ExternalMemorySortOp.class.getName()
+                + ".maxParallelRuns";
+
+        int DEFAULT_MAX_PARALLEL_RUNS = 4;
+
+    }
+
+    /**
+     * The target #of bytes in each block of a run written onto the native
+     * heap. A block always holds whole solutions.
+     */
+    private static final int BLOCK_SIZE = 64 * Bytes.kilobyte32;
+
+    /**
+     * Constructor required for {@link com.bigdata.bop.BOpUtility#deepCopy(FilterNode)}.
+     */
+    public ExternalMemorySortOp(final ExternalMemorySortOp op) {
+        super(op);
+    }
+
+    /**
+     * Required shallow copy constructor.
+     */
+    public ExternalMemorySortOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        switch (getEvaluationContext()) {
+        case CONTROLLER:
+            break;
+        default:
+            throw new UnsupportedOperationException(
+                    Annotations.EVALUATION_CONTEXT + "="
+                            + getEvaluationContext());
+        }
+
+        assertMaxParallelOne();
+
+        if (!isLastPassRequested()) {
+            throw new UnsupportedOperationException(Annotations.LAST_PASS
+                    + "=" + isLastPassRequested());
+        }
+
+        // ORDER_BY must preserve order.
+        if (isReorderSolutions())
+            throw new UnsupportedOperationException(
+                    Annotations.REORDER_SOLUTIONS + "=" + isReorderSolutions());
+
+        // required parameter.
+        getValueComparator();
+
+        if (getRunSize() <= 0)
+            throw new IllegalArgumentException(Annotations.RUN_SIZE + "="
+                    + getRunSize());
+
+        if (getMaxParallelRuns() <= 0)
+            throw new IllegalArgumentException(Annotations.MAX_PARALLEL_RUNS
+                    + "=" + getMaxParallelRuns());
+
+        // validate required parameter.
+        for (ISortOrder<?> s : getSortOrder()) {
+
+            final IValueExpression<?> expr = s.getExpr();
+
+            if (expr instanceof IVariableOrConstant<?>)
+                continue;
+
+            if (expr instanceof IBind<?>)
+                continue;
+
+            throw new IllegalArgumentException(
+                    "Value expression not wrapped by bind: " + expr);
+
+        }
+
+    }
+
+    /**
+     * @see Annotations#RUN_SIZE
+     */
+    public int getRunSize() {
+
+        return getProperty(Annotations.RUN_SIZE, Annotations.DEFAULT_RUN_SIZE);
+
+    }
+
+    /**
+     * @see Annotations#MAX_PARALLEL_RUNS
+     */
+    public int getMaxParallelRuns() {
+
+        return getProperty(Annotations.MAX_PARALLEL_RUNS,
+                Annotations.DEFAULT_MAX_PARALLEL_RUNS);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new SortTask(this, context));
+
+    }
+
+    /**
+     * A sorted run on the native heap. The run is a sequence of blocks, each
+     * of which holds some whole number of solutions. The solutions must be
+     * decoded in the order in which they were encoded since the encoding of a
+     * solution depends on the solutions which were encoded before it.
+     */
+    private static class Run {
+
+        /** The addresses of the blocks. */
+        final long[] addrs;
+
+        /** The #of solutions in each block. */
+        final int[] counts;
+
+        Run(final long[] addrs, final int[] counts) {
+            this.addrs = addrs;
+            this.counts = counts;
+        }
+
+    }
+
+    /**
+     * Sorts a run and writes it onto the native heap.
+     */
+    private static class RunTask implements Callable<Run> {
+
+        private final IBindingSet[] solutions;
+
+        private final Comparator<IBindingSet> c;
+
+        private final IMemoryManager mmgr;
+
+        private final QueryMemoryBudget budget;
+
+        private final long heapBytes;
+
+        RunTask(final IBindingSet[] solutions, final Comparator<IBindingSet> c,
+                final IMemoryManager mmgr, final QueryMemoryBudget budget,
+                final long heapBytes) {
+
+            this.solutions = solutions;
+            this.c = c;
+            this.mmgr = mmgr;
+            this.budget = budget;
+            this.heapBytes = heapBytes;
+
+        }
+
+        @Override
+        public Run call() throws Exception {
+
+            try {
+
+                final long begin = System.currentTimeMillis();
+
+                Arrays.sort(solutions, c);
+
+                final IVSolutionSetEncoder encoder = new IVSolutionSetEncoder();
+
+                final DataOutputBuffer out = new DataOutputBuffer(BLOCK_SIZE);
+
+                final List<Long> addrs = new LinkedList<Long>();
+
+                final List<Integer> counts = new LinkedList<Integer>();
+
+                int n = 0;
+
+                for (IBindingSet bset : solutions) {
+
+                    encoder.encodeSolution(out, bset);
+
+                    n++;
+
+                    if (out.pos() >= BLOCK_SIZE) {
+
+                        addrs.add(mmgr.allocate(ByteBuffer.wrap(out.array(),
+                                0, out.pos())));
+
+                        counts.add(n);
+
+                        out.reset();
+
+                        n = 0;
+
+                    }
+
+                }
+
+                if (n > 0) {
+
+                    addrs.add(mmgr.allocate(ByteBuffer.wrap(out.array(), 0,
+                            out.pos())));
+
+                    counts.add(n);
+
+                }
+
+                encoder.release();
+
+                final long[] a = new long[addrs.size()];
+
+                final int[] b = new int[counts.size()];
+
+                for (int i = 0; i < a.length; i++) {
+
+                    a[i] = addrs.get(i);
+
+                    b[i] = counts.get(i);
+
+                }
+
+                if (log.isInfoEnabled())
+                    log.info("Wrote run: nsolutions=" + solutions.length
+                            + ", nblocks=" + a.length + ", elapsed="
+                            + (System.currentTimeMillis() - begin) + "ms");
+
+                return new Run(a, b);
+
+            } finally {
+
+                // The run is no longer held on the JVM heap.
+                budget.releaseHeap(heapBytes);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * A cursor over a sorted run.
+     */
+    private static abstract class RunCursor {
+
+        /** The index of the run in the order in which the runs were formed. */
+        final int index;
+
+        /** The current solution and <code>null</code> once exhausted. */
+        IBindingSet current;
+
+        RunCursor(final int index) {
+            this.index = index;
+        }
+
+        /**
+         * Advance to the next solution.
+         *
+         * @return <code>false</code> iff the run is exhausted.
+         */
+        abstract boolean advance();
+
+    }
+
+    /**
+     * A cursor over the sorted solutions on the JVM heap.
+     */
+    private static class HeapRunCursor extends RunCursor {
+
+        private final IBindingSet[] solutions;
+
+        private int i = 0;
+
+        HeapRunCursor(final int index, final IBindingSet[] solutions) {
+            super(index);
+            this.solutions = solutions;
+        }
+
+        @Override
+        boolean advance() {
+
+            current = i < solutions.length ? solutions[i++] : null;
+
+            return current != null;
+
+        }
+
+    }
+
+    /**
+     * A cursor over a {@link Run} on the native heap. Each block is released
+     * once it has been read.
+     */
+    private static class NativeRunCursor extends RunCursor {
+
+        private final Run run;
+
+        private final IMemoryManager mmgr;
+
+        private final IVSolutionSetDecoder decoder = new IVSolutionSetDecoder();
+
+        /** The index of the current block. */
+        private int block = -1;
+
+        /** The #of solutions remaining in the current block. */
+        private int remaining = 0;
+
+        private DataInputBuffer in;
+
+        NativeRunCursor(final int index, final Run run,
+                final IMemoryManager mmgr) {
+            super(index);
+            this.run = run;
+            this.mmgr = mmgr;
+        }
+
+        @Override
+        boolean advance() {
+
+            while (remaining == 0) {
+
+                if (++block == run.addrs.length) {
+
+                    decoder.release();
+
+                    in = null;
+
+                    current = null;
+
+                    return false;
+
+                }
+
+                final long addr = run.addrs[block];
+
+                in = new DataInputBuffer(mmgr.read(addr));
+
+                mmgr.free(addr);
+
+                remaining = run.counts[block];
+
+            }
+
+            current = decoder.decodeSolution(in, true/* resolveCachedValues */);
+
+            remaining--;
+
+            return true;
+
+        }
+
+    }
+
+    /**
+     * Orders {@link RunCursor}s by their current solution and then by the
+     * order in which their runs were formed.
+     */
+    private static class CursorComparator implements Comparator<RunCursor> {
+
+        private final Comparator<IBindingSet> c;
+
+        CursorComparator(final Comparator<IBindingSet> c) {
+            this.c = c;
+        }
+
+        @Override
+        public int compare(final RunCursor o1, final RunCursor o2) {
+
+            final int ret = c.compare(o1.current, o2.current);
+
+            if (ret != 0)
+                return ret;
+
+            return o1.index < o2.index ? -1 : o1.index > o2.index ? 1 : 0;
+
+        }
+
+    }
+
+    /**
+     * The state of the operator across its invocations. A reference to this
+     * object is stored on the {@link IQueryAttributes}.
+     */
+    private static class SortState {
+
+        /** The solutions buffered for the next run. */
+        List<IBindingSet> buffer = new ArrayList<IBindingSet>();
+
+        /** The estimated heap reserved for the {@link #buffer}. */
+        long bufferHeapBytes = 0L;
+
+        /** The runs in the order in which they were formed. */
+        final List<FutureTask<Run>> runs = new ArrayList<FutureTask<Run>>();
+
+        /**
+         * The allocation context for the runs (created when the first run is
+         * written).
+         */
+        IMemoryManager mmgr = null;
+
+        /** The #of solutions observed so far. */
+        long nsolutions = 0L;
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class SortTask implements Callable<Void> {
+
+        private final ExternalMemorySortOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final BOpStats stats;
+
+        private final ISortOrder<?>[] sortOrder;
+
+        private final int runSize;
+
+        private final int maxParallelRuns;
+
+        private final QueryMemoryBudget budget;
+
+        /**
+         * The {@link IQueryAttributes} for the {@link IRunningQuery} off which
+         * we will hang the {@link SortState}.
+         */
+        private final IQueryAttributes attrs;
+
+        /**
+         * The name of the key under which the {@link #state} is stored in the
+         * {@link IQueryAttributes}.
+         */
+        private final String key;
+
+        private transient SortState state;
+
+        SortTask(final ExternalMemorySortOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.sortOrder = op.getSortOrder();
+
+            this.runSize = op.getRunSize();
+
+            this.maxParallelRuns = op.getMaxParallelRuns();
+
+            this.budget = context.getRunningQuery().getMemoryBudget();
+
+            this.attrs = context.getQueryAttributes();
+
+            this.key = Integer.toString(op.getId());
+
+            state = (SortState) attrs.get(key);
+
+            if (state == null) {
+
+                state = new SortState();
+
+                if (attrs.putIfAbsent(key, state) != null)
+                    throw new AssertionError();
+
+            }
+
+        }
+
+        /**
+         * Return a new comparator. Each run task uses its own comparator.
+         */
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private Comparator<IBindingSet> newComparator() {
+
+            return new BindingSetComparator(sortOrder, op.getValueComparator());
+
+        }
+
+        void release() {
+
+            if (log.isInfoEnabled())
+                log.info("Releasing state");
+
+            attrs.remove(key);
+
+            /*
+             * Wait for any runs which are still being written before the
+             * allocation context is cleared.
+             */
+            for (FutureTask<Run> ft : state.runs) {
+
+                try {
+                    ft.get();
+                } catch (Throwable t) {
+                    // ignore.
+                }
+
+            }
+
+            if (state.mmgr != null) {
+
+                state.mmgr.clear();
+
+            }
+
+            budget.releaseHeap(state.bufferHeapBytes);
+
+            state = null;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> itr = context.getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            final boolean lastInvocation = context.isLastInvocation();
+
+            try {
+
+                acceptSolutions(itr);
+
+                if (lastInvocation) {
+
+                    doOrderBy(sink);
+
+                }
+
+            } catch (Throwable t) {
+
+                log.error(t, t);
+
+                throw new RuntimeException(t);
+
+            } finally {
+
+                if (lastInvocation) {
+
+                    // Discard the operator's internal state.
+                    release();
+
+                }
+
+                sink.close();
+
+            }
+
+            // Done.
+            return null;
+
+        }
+
+        /**
+         * Evaluate the value expressions for each input solution and buffer
+         * the as-bound solutions, starting a new run each time the buffer is
+         * full.
+         *
+         * @param itr
+         *            The source solutions.
+         */
+        private void acceptSolutions(
+                final ICloseableIterator<IBindingSet[]> itr) throws Exception {
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    final IBindingSet[] a = itr.next();
+
+                    stats.chunksIn.increment();
+                    stats.unitsIn.add(a.length);
+
+                    for (IBindingSet bset : a) {
+
+                        // Note: Necessary scope for type error reporting.
+                        IValueExpression<?> expr = null;
+
+                        try {
+
+                            for (ISortOrder<?> s : sortOrder) {
+
+                                /*
+                                 * Evaluate. A BIND() will have side-effect on
+                                 * [bset].
+                                 */
+                                (expr = s.getExpr()).get(bset);
+
+                            }
+
+                        } catch (SparqlTypeErrorException ex) {
+
+                            // log type error, do not drop solution (see trac 765).
+                            TypeErrorLog.handleTypeError(ex, expr, stats);
+
+                        }
+
+                        final long nbytes = QueryMemoryBudget
+                                .estimateHeapBytes(bset);
+
+                        if (!state.buffer.isEmpty()
+                                && !budget.canReserveHeap(nbytes)) {
+
+                            /*
+                             * Start a run early rather than exceed the memory
+                             * budget of the query and wait until the heap
+                             * held by the runs has been released.
+                             */
+                            startRun();
+
+                            awaitRuns();
+
+                        }
+
+                        budget.reserveHeap(nbytes);
+
+                        state.bufferHeapBytes += nbytes;
+
+                        state.buffer.add(bset);
+
+                        state.nsolutions++;
+
+                        if (state.buffer.size() >= runSize) {
+
+                            startRun();
+
+                        }
+
+                    } // next source solution
+
+                }
+
+                if (log.isInfoEnabled())
+                    log.info("Buffered " + state.nsolutions
+                            + " solutions so far in " + state.runs.size()
+                            + " runs");
+
+            } finally {
+
+                itr.close();
+
+            }
+
+        } // acceptSolutions
+
+        /**
+         * Hand off the buffered solutions to a task which sorts them and
+         * writes them onto the native heap. If there are already
+         * {@link Annotations#MAX_PARALLEL_RUNS} runs being written, then this
+         * waits until the oldest of those runs has been written.
+         */
+        private void startRun() throws Exception {
+
+            if (state.mmgr == null) {
+
+                state.mmgr = context.getRunningQuery().getMemoryManager()
+                        .createAllocationContext();
+
+            }
+
+            final FutureTask<Run> ft = new FutureTask<Run>(new RunTask(
+                    state.buffer.toArray(new IBindingSet[0]), newComparator(),
+                    state.mmgr, budget, state.bufferHeapBytes));
+
+            state.runs.add(ft);
+
+            state.buffer = new ArrayList<IBindingSet>();
+
+            state.bufferHeapBytes = 0L;
+
+            final Executor executor = context.getExecutorService();
+
+            if (executor == null) {
+
+                ft.run();
+
+            } else {
+
+                executor.execute(ft);
+
+            }
+
+            // Bound the #of runs which are held on the JVM heap.
+            int nrunning = 0;
+
+            for (int i = state.runs.size() - 1; i >= 0; i--) {
+
+                final FutureTask<Run> t = state.runs.get(i);
+
+                if (!t.isDone() && ++nrunning > maxParallelRuns) {
+
+                    t.get();
+
+                }
+
+            }
+
+        }
+
+        /**
+         * Wait until all runs have been written onto the native heap.
+         */
+        private void awaitRuns() throws Exception {
+
+            for (FutureTask<Run> t : state.runs) {
+
+                t.get();
+
+            }
+
+        }
+
+        /**
+         * Sort the buffered solutions and merge them with the runs on the
+         * native heap.
+         *
+         * @param sink
+         *            Where to write the results.
+         */
+        private void doOrderBy(final IBlockingBuffer<IBindingSet[]> sink)
+                throws Exception {
+
+            final long begin = System.currentTimeMillis();
+
+            final Comparator<IBindingSet> c = newComparator();
+
+            final IBindingSet[] tail = state.buffer.toArray(new IBindingSet[0]);
+
+            state.buffer = null;
+
+            Arrays.sort(tail, c);
+
+            final PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(
+                    state.runs.size() + 1, new CursorComparator(c));
+
+            for (int i = 0; i < state.runs.size(); i++) {
+
+                final RunCursor cursor = new NativeRunCursor(i, state.runs
+                        .get(i).get(), state.mmgr);
+
+                if (cursor.advance())
+                    queue.add(cursor);
+
+            }
+
+            {
+
+                // The solutions buffered since the last run was formed.
+                final RunCursor cursor = new HeapRunCursor(state.runs.size(),
+                        tail);
+
+                if (cursor.advance())
+                    queue.add(cursor);
+
+            }
+
+            final int chunkCapacity = op.getChunkCapacity();
+
+            IBindingSet[] chunk = new IBindingSet[Math.min(chunkCapacity,
+                    (int) Math.min(Integer.MAX_VALUE, state.nsolutions))];
+
+            int n = 0;
+
+            while (!queue.isEmpty()) {
+
+                final RunCursor cursor = queue.poll();
+
+                final IBindingSet bset = cursor.current;
+
+                if (cursor.advance())
+                    queue.add(cursor);
+
+                // Drop variables for computed value expressions.
+                for (ISortOrder<?> s : sortOrder) {
+                    final IValueExpression<?> expr = s.getExpr();
+                    if (expr instanceof IBind) {
+                        bset.clear(((IBind<?>) expr).getVar());
+                    }
+                }
+
+                chunk[n++] = bset;
+
+                if (n == chunk.length) {
+
+                    sink.add(chunk);
+
+                    chunk = new IBindingSet[chunk.length];
+
+                    n = 0;
+
+                }
+
+            }
+
+            if (n > 0) {
+
+                sink.add(Arrays.copyOf(chunk, n));
+
+            }
+
+            sink.flush();
+
+            if (log.isInfoEnabled())
+                log.info("Sorted " + state.nsolutions + " solutions using "
+                        + state.runs.size() + " runs in "
+                        + (System.currentTimeMillis() - begin) + "ms");
+
+        }
+
+    } // SortTask
+
+} // ExternalMemorySortOp
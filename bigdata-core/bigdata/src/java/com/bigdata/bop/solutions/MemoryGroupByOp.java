@@ -53,6 +53,7 @@ import com.bigdata.bop.IVariable;
 import com.bigdata.bop.aggregate.IAggregate;
 import com.bigdata.bop.bindingSet.ListBindingSet;
 import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.QueryMemoryBudget;
 import com.bigdata.htree.HTree;
 import com.bigdata.rdf.error.SparqlTypeErrorException;
 import com.bigdata.rdf.sparql.ast.FilterNode;
@@ -307,6 +308,12 @@ public class MemoryGroupByOp extends GroupByOp {
 
         private final BOpStats stats;
 
+        /**
+         * The estimated heap bytes of the buffered solutions which have been
+         * charged against the memory budget of the query.
+         */
+        private long heapBytes = 0L;
+
         GroupByTask(final MemoryGroupByOp op,
                 final BOpContext<IBindingSet> context) {
         	
@@ -329,6 +336,29 @@ public class MemoryGroupByOp extends GroupByOp {
 
         }
 
+        /**
+         * Charge a chunk of buffered solutions against the memory budget of the
+         * query.
+         * 
+         * @throws com.bigdata.bop.engine.QueryMemoryBudgetExceededException
+         *             if the query would exceed its budget.
+         */
+        private void reserveHeap(final IBindingSet[] a) {
+
+            long nbytes = 0L;
+
+            for (IBindingSet bset : a) {
+
+                nbytes += QueryMemoryBudget.estimateHeapBytes(bset);
+
+            }
+
+            context.getRunningQuery().getMemoryBudget().reserveHeap(nbytes);
+
+            heapBytes += nbytes;
+
+        }
+
         /**
          * Add the solution to the multiset for the appropriate group. If we can
          * not compute the GROUP_BY value expressions for a solution, then the
@@ -403,6 +433,8 @@ public class MemoryGroupByOp extends GroupByOp {
                         stats.chunksIn.increment();
                         stats.unitsIn.add(a.length);
 
+                        reserveHeap(a);
+
                         for (IBindingSet bset : a) {
 
                             m.add(bset);
@@ -443,6 +475,8 @@ public class MemoryGroupByOp extends GroupByOp {
                         stats.chunksIn.increment();
                         stats.unitsIn.add(a.length);
 
+                        reserveHeap(a);
+
                         for (IBindingSet bset : a) {
 
                             accept(bset);
@@ -506,6 +540,10 @@ public class MemoryGroupByOp extends GroupByOp {
 
                 sink.close();
 
+                // the buffered solutions are no longer reachable.
+                context.getRunningQuery().getMemoryBudget()
+                        .releaseHeap(heapBytes);
+
             }
 
         } // call()
@@ -0,0 +1,499 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.IBind;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IQueryAttributes;
+import com.bigdata.bop.ISingleThreadedOp;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.rdf.error.SparqlTypeErrorException;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * An in-memory top-K sort for binding sets. This operator may be used in place
+ * of the {@link MemorySortOp} when the ORDER BY is followed by a
+ * {@link SliceOp}. Only the first {@link Annotations#TOP_K} solutions in the
+ * ORDER BY are retained, where <code>k</code> is the OFFSET plus the LIMIT of
+ * the slice. The {@link SliceOp} is still responsible for skipping the OFFSET
+ * solutions and for imposing the LIMIT.
+ * <p>
+ * The operator is pipelined, but it is single threaded since its state is not
+ * thread safe. Each time it runs, it evaluates the value
+ * expressions on which the ordering will be imposed for the new chunks of
+ * source solutions (with the same treatment of type errors as the
+ * {@link MemorySortOp}) and folds them into a bounded max-heap whose root is
+ * the worst of the retained solutions. A solution which does not order before
+ * that root is discarded immediately, so the operator holds at most
+ * <code>k</code> solutions and runs in <code>O(n log k)</code> rather than
+ * buffering and sorting all <code>n</code> solutions. The retained solutions
+ * are sorted and written out once the last chunk of source solutions has been
+ * observed.
+ * <p>
+ * Solutions which are equal in the ORDER BY keep the order in which they were
+ * observed, so the output is the same as the output of the stable sort of the
+ * {@link MemorySortOp} truncated to <code>k</code> solutions.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class MemoryTopKSortOp extends SortOp implements ISingleThreadedOp {
+
+    private static final transient Logger log = Logger
+            .getLogger(MemoryTopKSortOp.class);
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends SortOp.Annotations {
+
+        /**
+         * The #of solutions to retain (required). This is the OFFSET plus the
+         * LIMIT of the slice which follows the ORDER BY.
+         */
+        String TOP_K = MemoryTopKSortOp.class.getName() + ".topK";
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public MemoryTopKSortOp(final MemoryTopKSortOp op) {
+        super(op);
+    }
+
+    /**
+     * Required shallow copy constructor.
+     */
+    public MemoryTopKSortOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        switch (getEvaluationContext()) {
+        case CONTROLLER:
+            break;
+        default:
+            throw new UnsupportedOperationException(
+                    Annotations.EVALUATION_CONTEXT + "="
+                            + getEvaluationContext());
+        }
+
+        // the heap is not thread safe.
+        assertMaxParallelOne();
+
+        if (!isLastPassRequested()) {
+            throw new UnsupportedOperationException(Annotations.LAST_PASS
+                    + "=" + isLastPassRequested());
+        }
+
+        // ORDER_BY must preserve order.
+        if (isReorderSolutions())
+            throw new UnsupportedOperationException(
+                    Annotations.REORDER_SOLUTIONS + "=" + isReorderSolutions());
+
+        // required parameter.
+        getValueComparator();
+
+        // validate required parameter.
+        final int k = getTopK();
+
+        if (k < 0)
+            throw new IllegalArgumentException(Annotations.TOP_K + "=" + k);
+
+        // validate required parameter.
+        for (ISortOrder<?> s : getSortOrder()) {
+
+            final IValueExpression<?> expr = s.getExpr();
+
+            if (expr instanceof IVariableOrConstant<?>)
+                continue;
+
+            if (expr instanceof IBind<?>)
+                continue;
+
+            throw new IllegalArgumentException(
+                    "Value expression not wrapped by bind: " + expr);
+
+        }
+
+    }
+
+    /**
+     * @see Annotations#TOP_K
+     */
+    public int getTopK() {
+
+        return ((Number) getRequiredProperty(Annotations.TOP_K)).intValue();
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new TopKTask(this, context));
+
+    }
+
+    /**
+     * A solution retained by the top-K sort together with the order in which
+     * it was observed.
+     */
+    private static class Entry {
+
+        final IBindingSet bset;
+
+        final long seq;
+
+        Entry(final IBindingSet bset, final long seq) {
+            this.bset = bset;
+            this.seq = seq;
+        }
+
+    }
+
+    /**
+     * Orders {@link Entry}s by the ORDER BY and then by the order in which
+     * they were observed.
+     */
+    private static class EntryComparator implements Comparator<Entry> {
+
+        private final Comparator<IBindingSet> c;
+
+        EntryComparator(final Comparator<IBindingSet> c) {
+            this.c = c;
+        }
+
+        @Override
+        public int compare(final Entry o1, final Entry o2) {
+
+            final int ret = c.compare(o1.bset, o2.bset);
+
+            if (ret != 0)
+                return ret;
+
+            return o1.seq < o2.seq ? -1 : o1.seq > o2.seq ? 1 : 0;
+
+        }
+
+    }
+
+    /**
+     * The state of the operator across its invocations. A reference to this
+     * object is stored on the {@link IQueryAttributes}.
+     */
+    private static class TopKState {
+
+        /**
+         * A max-heap whose root is the worst of the retained solutions.
+         */
+        final PriorityQueue<Entry> heap;
+
+        /**
+         * The #of solutions observed so far.
+         */
+        long seq = 0L;
+
+        TopKState(final int k, final EntryComparator c) {
+
+            heap = new PriorityQueue<Entry>(Math.max(1, Math.min(k, 1024)),
+                    Collections.reverseOrder(c));
+
+        }
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class TopKTask implements Callable<Void> {
+
+        private final BOpContext<IBindingSet> context;
+
+        private final BOpStats stats;
+
+        private final ISortOrder<?>[] sortOrder;
+
+        /**
+         * The #of solutions to retain.
+         */
+        private final int k;
+
+        /**
+         * Compares solutions based on the as-bound value expressions.
+         */
+        private final Comparator<IBindingSet> c;
+
+        /**
+         * Compares the retained solutions.
+         */
+        private final EntryComparator entryComparator;
+
+        /**
+         * The {@link IQueryAttributes} for the {@link IRunningQuery} off which
+         * we will hang the {@link TopKState}.
+         */
+        private final IQueryAttributes attrs;
+
+        /**
+         * The name of the key under which the {@link #state} is stored in the
+         * {@link IQueryAttributes}.
+         */
+        private final String key;
+
+        private transient TopKState state;
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        TopKTask(final MemoryTopKSortOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.sortOrder = op.getSortOrder();
+
+            this.k = op.getTopK();
+
+            this.c = new BindingSetComparator(sortOrder,
+                    op.getValueComparator());
+
+            this.entryComparator = new EntryComparator(c);
+
+            this.attrs = context.getQueryAttributes();
+
+            this.key = Integer.toString(op.getId());
+
+            state = (TopKState) attrs.get(key);
+
+            if (state == null) {
+
+                state = new TopKState(k, entryComparator);
+
+                if (attrs.putIfAbsent(key, state) != null)
+                    throw new AssertionError();
+
+            }
+
+        }
+
+        void release() {
+
+            if (log.isInfoEnabled())
+                log.info("Releasing state");
+
+            attrs.remove(key);
+
+            state = null;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> itr = context.getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            final boolean lastInvocation = context.isLastInvocation();
+
+            try {
+
+                acceptSolutions(itr);
+
+                if (lastInvocation) {
+
+                    doOrderBy(sink);
+
+                }
+
+            } catch (Throwable t) {
+
+                log.error(t, t);
+
+                throw new RuntimeException(t);
+
+            } finally {
+
+                if (lastInvocation) {
+
+                    // Discard the operator's internal state.
+                    release();
+
+                }
+
+                sink.close();
+
+            }
+
+            // Done.
+            return null;
+
+        }
+
+        /**
+         * Evaluate the value expressions for each input solution and fold the
+         * as-bound solution into the heap if it is among the first
+         * <code>k</code> solutions seen so far.
+         * 
+         * @param itr
+         *            The source solutions.
+         */
+        private void acceptSolutions(
+                final ICloseableIterator<IBindingSet[]> itr) {
+
+            final PriorityQueue<Entry> heap = state.heap;
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    final IBindingSet[] a = itr.next();
+
+                    stats.chunksIn.increment();
+                    stats.unitsIn.add(a.length);
+
+                    for (IBindingSet bset : a) {
+
+                        // Note: Necessary scope for type error reporting.
+                        IValueExpression<?> expr = null;
+
+                        try {
+
+                            for (ISortOrder<?> s : sortOrder) {
+
+                                /*
+                                 * Evaluate. A BIND() will have side-effect on
+                                 * [bset].
+                                 */
+                                (expr = s.getExpr()).get(bset);
+
+                            }
+
+                        } catch (SparqlTypeErrorException ex) {
+
+                            // log type error, do not drop solution (see trac 765).
+                            TypeErrorLog.handleTypeError(ex, expr, stats);
+
+                        }
+
+                        final long seq = state.seq++;
+
+                        if (heap.size() < k) {
+
+                            heap.add(new Entry(bset, seq));
+
+                        } else if (k > 0 && c.compare(bset, heap.peek().bset) < 0) {
+
+                            /*
+                             * Replace the worst retained solution. A solution
+                             * which is equal to the root is discarded since
+                             * the root was observed first.
+                             */
+                            heap.poll();
+
+                            heap.add(new Entry(bset, seq));
+
+                        }
+
+                    } // next source solution
+
+                }
+
+                if (log.isInfoEnabled())
+                    log.info("Retained " + heap.size() + " of " + state.seq
+                            + " solutions so far");
+
+            } finally {
+
+                itr.close();
+
+            }
+
+        } // acceptSolutions
+
+        /**
+         * Sort the retained solutions based on the as-bound value expressions.
+         * 
+         * @param sink
+         *            Where to write the results.
+         */
+        private void doOrderBy(final IBlockingBuffer<IBindingSet[]> sink) {
+
+            final Entry[] entries = state.heap.toArray(new Entry[0]);
+
+            Arrays.sort(entries, entryComparator);
+
+            final IBindingSet[] all = new IBindingSet[entries.length];
+
+            for (int i = 0; i < entries.length; i++) {
+
+                final IBindingSet bset = all[i] = entries[i].bset;
+
+                // Drop variables for computed value expressions.
+                for (ISortOrder<?> s : sortOrder) {
+                    final IValueExpression<?> expr = s.getExpr();
+                    if (expr instanceof IBind) {
+                        bset.clear(((IBind<?>) expr).getVar());
+                    }
+                }
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Sorted " + all.length + " of " + state.seq
+                        + " solutions");
+
+            if (all.length == 0)
+                return;
+
+            // write output and flush.
+            sink.add(all);
+            sink.flush();
+
+        }
+
+    } // TopKTask
+
+} // MemoryTopKSortOp
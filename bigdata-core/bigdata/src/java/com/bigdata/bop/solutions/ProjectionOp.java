@@ -37,6 +37,7 @@ import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.NV;
 import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.bindingSet.ColumnarSolutionChunk;
 import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.join.JoinAnnotations;
 import com.bigdata.relation.accesspath.IBlockingBuffer;
@@ -45,6 +46,10 @@ import cutthecrap.utils.striterators.ICloseableIterator;
 
 /**
  * Operator projects only the identified variables.
+ * <p>
+ * When {@link PipelineOp.Annotations#COLUMNAR} is specified, each chunk is
+ * projected as a {@link ColumnarSolutionChunk} by dropping the columns of the
+ * other variables rather than by copying each solution.
  * 
  * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
  * @version $Id$
@@ -114,12 +119,19 @@ public class ProjectionOp extends PipelineOp {
          */
         private final IVariable<?>[] vars;
 
+        /**
+         * @see PipelineOp.Annotations#COLUMNAR
+         */
+        private final boolean columnar;
+
         ChunkTask(final ProjectionOp op, final BOpContext<IBindingSet> context) {
 
             this.context = context;
 
             this.vars = op.getVariables();
 
+            this.columnar = op.isColumnar();
+
             if (vars == null)
                 throw new IllegalArgumentException();
 
@@ -148,6 +160,19 @@ public class ProjectionOp extends PipelineOp {
                     stats.chunksIn.increment();
                     stats.unitsIn.add(a.length);
 
+                    if (columnar) {
+
+                        final ColumnarSolutionChunk chunk = ColumnarSolutionChunk
+                                .valueOf(a);
+
+                        chunk.project(vars);
+
+                        sink.add(chunk.toBindingSets());
+
+                        continue;
+
+                    }
+
                     for (int i = 0; i < a.length; i++) {
 
                         a[i] = a[i].copy(vars);
@@ -38,7 +38,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
@@ -262,17 +261,12 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
     
     /**
      * Optional cache for {@link INodeData} and {@link ILeafData} instances and
-     * always <code>null</code> if the B+Tree is transient.
+     * always <code>null</code> if the B+Tree is transient. This is shared by
+     * all {@link AbstractBTree}s on the same backing store.
+     * 
+     * @see NodeDataCache
      */
-	/*
-	 * The storeCache field is marked as "Deprecated" but it should stick around
-	 * for a while since we might wind up reusing this feature on an index local
-	 * basis at some point.
-	 * 
-	 * @see BLZG-1501 (remove LRUNexus)
-	 */
-    @Deprecated
-    protected final ConcurrentMap<Long, Object> storeCache;
+    protected final NodeDataCache.StoreCache storeCache;
 
     /**
      * Hard reference iff the index is mutable (aka unisolated) allows us to
@@ -626,6 +620,28 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
      *         the expected error rate of the bloom filter would be too high).
      */
     abstract public BloomFilter getBloomFilter();
+
+    /**
+     * The optional {@link KeySketch} (only a {@link BTree} maintains a key
+     * sketch). The sketch is discarded when the index is {@link #close()}ed.
+     * <p>
+     * Note: Not <code>private</code> since {@link Checkpoint} reads this
+     * field.
+     */
+    /*private*/ volatile KeySketch keySketch;
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation returns <code>null</code>. It is overridden by the
+     * {@link BTree}.
+     */
+    @Override
+    public KeySketch getKeySketch() {
+
+        return null;
+
+    }
     
 //    /**
 //     * The finger is a trial feature. The purpose is to remember the last
@@ -1070,17 +1086,11 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
              */
 
             /*
-             * FIXME if the LRUNexus is disabled, then use a
-             * ConcurrentWeakValueCacheWithTimeout to buffer the leaves of an
-             * IndexSegment. Essentially, a custom cache. Otherwise we lose some
-             * of the performance of the leaf iterator for the index segment
-             * since leaves are not recoverable by random access without a
-             * cache.
+             * Note: null if the NodeDataCache is disabled.
              * 
              * @see BLZG-1501 (remove LRUNexus)
              */
-//            this.storeCache = LRUNexus.getCache(store);
-            this.storeCache = null;
+            this.storeCache = NodeDataCache.getCache(store);
             
 //            this.readRetentionQueue = newReadRetentionQueue();
         
@@ -1276,6 +1286,9 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
         // release the optional bloom filter.
         bloomFilter = null;
+
+        // release the optional key sketch.
+        keySketch = null;
         
     }
 
@@ -1771,6 +1784,33 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
     }
 
+    /**
+     * Returns the node or leaf to be used for search.
+     * 
+     * @param key
+     *            The key.
+     * @param finger
+     *            A {@link Finger} for the search (optional).
+     * 
+     * @return The leaf located by the finger if one was given and otherwise
+     *         the node or leaf reported by {@link #getRootOrFinger(byte[])}.
+     * 
+     * @throws IllegalArgumentException
+     *             if the finger belongs to a different B+Tree.
+     */
+    protected AbstractNode<?> getRootOrFinger(final byte[] key,
+            final Finger finger) {
+
+        if (finger == null)
+            return getRootOrFinger(key);
+
+        if (finger.getBTree() != this)
+            throw new IllegalArgumentException();
+
+        return finger.findLeaf(key);
+
+    }
+
     /**
      * Returns the node or leaf to be used for search. This implementation is
      * aware of the {@link #finger} and will return it if the key lies within
@@ -2081,6 +2121,52 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
     }
 
+    /**
+     * Variant of {@link #insert(byte[], byte[])} which locates the leaf using
+     * a {@link Finger}.
+     * 
+     * @param finger
+     *            The finger (optional).
+     */
+    final public byte[] insert(final byte[] key, final byte[] value,
+            final Finger finger) {
+
+        if (key == null)
+            throw new IllegalArgumentException();
+
+        // non-conditional insert.
+        final Tuple tuple = insert(key, value, false/* deleted */,
+                false/* putIfAbsent */, getRevisionTimestamp(),
+                getWriteTuple(), finger);
+
+        return tuple == null || tuple.isDeletedVersion() ? null : tuple
+                .getValue();
+
+    }
+
+    /**
+     * Variant of {@link #putIfAbsent(byte[], byte[])} which locates the leaf
+     * using a {@link Finger}.
+     * 
+     * @param finger
+     *            The finger (optional).
+     */
+    final public byte[] putIfAbsent(final byte[] key, final byte[] value,
+            final Finger finger) {
+
+        if (key == null)
+            throw new IllegalArgumentException();
+
+        // Conditional insert. See BLZG-1539.
+        final Tuple tuple = insert(key, value, false/* deleted */,
+                true/* putIfAbsent */, getRevisionTimestamp(),
+                getWriteTuple(), finger);
+
+        return tuple == null || tuple.isDeletedVersion() ? null : tuple
+                .getValue();
+
+    }
+
     /**
      * Core method for inserting or updating a value under a key.
      * 
@@ -2117,6 +2203,23 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
     final public Tuple insert(final byte[] key, final byte[] value,
             final boolean delete, final boolean putIfAbsent, final long timestamp, final Tuple tuple) {
 
+        return insert(key, value, delete, putIfAbsent, timestamp, tuple, null/* finger */);
+
+    }
+
+    /**
+     * Variant of {@link #insert(byte[], byte[], boolean, boolean, long, Tuple)}
+     * which locates the leaf using a {@link Finger}. This is more efficient
+     * when a sequence of keys is inserted in ascending order.
+     * 
+     * @param finger
+     *            The finger (optional). When <code>null</code> the search
+     *            starts at the root.
+     */
+    final public Tuple insert(final byte[] key, final byte[] value,
+            final boolean delete, final boolean putIfAbsent,
+            final long timestamp, final Tuple tuple, final Finger finger) {
+
         assert delete == false || getIndexMetadata().getDeleteMarkers();
 
         assert delete == false || value == null;
@@ -2134,8 +2237,8 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
         btreeCounters.ninserts.incrementAndGet();
         
-        final Tuple oldTuple = getRootOrFinger(key).insert(key, value, delete, putIfAbsent,
-                timestamp, tuple);
+        final Tuple oldTuple = getRootOrFinger(key, finger).insert(key, value,
+                delete, putIfAbsent, timestamp, tuple);
 
         if (oldTuple == null) {
 
@@ -2188,6 +2291,26 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
             }
 
+            /*
+             * Note: Use the [keySketch] reference directly since the index is
+             * open. The sketch is only read from the store the first time a
+             * key is added to an index whose sketch is not yet in memory.
+             */
+            KeySketch sketch = keySketch;
+
+            if (sketch == null && metadata.getKeySketchFactory() != null) {
+
+                sketch = getKeySketch();
+
+            }
+
+            if (sketch != null) {
+
+                // Update the distinct counts for the new key.
+                sketch.add(key);
+
+            }
+
         }
 
         return oldTuple;
@@ -2339,6 +2462,22 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
                 .getValue();
 
     }
+
+    /**
+     * Variant of {@link #lookup(byte[])} which locates the leaf using a
+     * {@link Finger}.
+     * 
+     * @param finger
+     *            The finger (optional).
+     */
+    public byte[] lookup(final byte[] key, final Finger finger) {
+
+        final Tuple tuple = lookup(key, getLookupTuple(), finger);
+
+        return tuple == null || tuple.isDeletedVersion() ? null : tuple
+                .getValue();
+
+    }
     
     /**
      * Core method for retrieving a value under a key. This method allows you to
@@ -2359,7 +2498,22 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
      * @return <i>tuple</i> or <code>null</code> if there is no entry in the
      *         index under the key.
      */
-    public Tuple lookup(final byte[] key, Tuple tuple) {
+    public Tuple lookup(final byte[] key, final Tuple tuple) {
+
+        return lookup(key, tuple, null/* finger */);
+
+    }
+
+    /**
+     * Variant of {@link #lookup(byte[], Tuple)} which locates the leaf using a
+     * {@link Finger}. This is more efficient when a sequence of keys is
+     * looked up in ascending order.
+     * 
+     * @param finger
+     *            The finger (optional). When <code>null</code> the search
+     *            starts at the root.
+     */
+    public Tuple lookup(final byte[] key, Tuple tuple, final Finger finger) {
 
         if (key == null)
             throw new IllegalArgumentException();
@@ -2405,7 +2559,7 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
          */
 //        btreeCounters.nfinds.incrementAndGet();
 
-        tuple = getRootOrFinger(key).lookup(key, tuple);
+        tuple = getRootOrFinger(key, finger).lookup(key, tuple);
         
         if (bloomHit && (tuple == null || tuple.isDeletedVersion())) {
 
@@ -2442,6 +2596,21 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
     @Override
     public boolean contains(final byte[] key) {
 
+        return contains(key, null/* finger */);
+
+    }
+
+    /**
+     * Variant of {@link #contains(byte[])} which locates the leaf using a
+     * {@link Finger}. This is more efficient when a sequence of keys is
+     * tested in ascending order.
+     * 
+     * @param finger
+     *            The finger (optional). When <code>null</code> the search
+     *            starts at the root.
+     */
+    public boolean contains(final byte[] key, final Finger finger) {
+
         if (key == null)
             throw new IllegalArgumentException();
 
@@ -2470,7 +2639,7 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
             
         }
 
-        final ITuple tuple = getRootOrFinger(key).lookup(key,
+        final ITuple tuple = getRootOrFinger(key, finger).lookup(key,
                 getContainsTuple());
         
         if(tuple == null || tuple.isDeletedVersion()) {
@@ -2682,6 +2851,79 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
     }
 
+    /**
+     * Split a key range into at most <i>n</i> sub-ranges which span roughly
+     * the same #of tuples. The split points are chosen using the #of tuples
+     * spanned by each child of a node (see {@link #indexOf(byte[])} and
+     * {@link #keyAt(long)}), so the cost is a few top-down lookups and no
+     * tuples are scanned. The sub-ranges are balanced with respect to the
+     * tuples in the index, including deleted tuples for an index which uses
+     * delete markers.
+     * <p>
+     * Note: The sub-ranges may be scanned concurrently when the index is
+     * read-only.
+     * 
+     * @param fromKey
+     *            The inclusive lower bound (optional).
+     * @param toKey
+     *            The exclusive upper bound (optional).
+     * @param n
+     *            The maximum #of sub-ranges.
+     * 
+     * @return The boundaries of the sub-ranges. Sub-range <i>i</i> is the
+     *         half-open key range <code>[a[i],a[i+1])</code>. The first element
+     *         is the <i>fromKey</i> and the last element is the <i>toKey</i>
+     *         (either may be <code>null</code>). There are fewer than <i>n</i>
+     *         sub-ranges if the key range spans fewer than <i>n</i> tuples
+     *         and there is always at least one sub-range.
+     * 
+     * @throws IllegalArgumentException
+     *             if <i>n</i> is non-positive.
+     */
+    public byte[][] splitKeyRange(final byte[] fromKey, final byte[] toKey,
+            final int n) {
+
+        if (n <= 0)
+            throw new IllegalArgumentException();
+
+        final AbstractNode<?> root = getRoot();
+
+        long fromIndex = (fromKey == null ? 0 : root.indexOf(fromKey));
+
+        long toIndex = (toKey == null ? getEntryCount() : root.indexOf(toKey));
+
+        // Handle case when fromKey is not found.
+        if (fromIndex < 0)
+            fromIndex = -fromIndex - 1;
+
+        // Handle case when toKey is not found.
+        if (toIndex < 0)
+            toIndex = -toIndex - 1;
+
+        final long span = toIndex - fromIndex;
+
+        final int m = (int) Math.max(1L, Math.min(n, span));
+
+        final byte[][] a = new byte[m + 1][];
+
+        a[0] = fromKey;
+
+        for (int i = 1; i < m; i++) {
+
+            /*
+             * Note: The separator keys are strictly increasing since the
+             * indices are strictly increasing and the keys are distinct.
+             */
+            a[i] = root.keyAt(fromIndex + (span * i) / m);
+
+        }
+
+        a[m] = toKey;
+
+        return a;
+
+    }
+
     /**
      * Note: {@link #rangeCount(byte[], byte[])} already reports deleted tuples
      * for an {@link AbstractBTree} so this method is just delegated to that
@@ -3944,8 +4186,8 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
             final long begin = System.nanoTime();
             
-            // wrap as ByteBuffer and write on the store.
-            addr = store.write(slice.asByteBuffer());
+            // wrap as ByteBuffer, apply record compression, write on store.
+            addr = store.write(nodeSer.compress(slice));
             
             // now we have a new address, delete previous identity if any
             if (node.isPersistent()) {
@@ -3995,30 +4237,23 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
         if (storeCache != null) {
 
             /*
-             * Put the data record (the delegate) into the cache, touching it on
-             * the backing LRU.
+             * Put the data record (the delegate) into the cache.
              * 
              * Note: This provides an unfair retention for recently written
              * nodes or leaves equal to that of recently read nodes or leaves. I
              * do not know what to do about that. However, the total size across
              * all per-store caches is (SHOULD BE) MUCH larger than the write
              * retention queue so that bias may not matter that much.
+             * 
+             * Note: For a WORM store, the address is always new so there will
+             * not be an entry in the cache for that address. For a RW store,
+             * the addresses can be reused. A read-only view of an older commit
+             * point can legitimately put a record back into the cache after it
+             * was deleted by this index (the delete is deferred until the
+             * commit point is released), so we replace any entry for a
+             * recycled address here.
              */
-            if (null != storeCache.putIfAbsent(addr, node.getDelegate())) {
-
-                /*
-                 * Note: For a WORM store, the address is always new so there
-                 * will not be an entry in the cache for that address.
-                 * 
-                 * Note: For a RW store, the addresses can be reused and the
-                 * delete of the old address MUST have cleared the entry for
-                 * that address from the store's cache.
-                 */
-                
-                throw new AssertionError("addr already in cache: " + addr
-                        + " for " + store.getFile());
-                
-            }
+            storeCache.put(addr, node.getDelegate());
             
         }
         
@@ -4034,6 +4269,81 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
     }
 
+    /**
+     * Code and write a node or leaf data record which is not attached to this
+     * B+Tree (there is no {@link AbstractNode} for the record). This is used
+     * by the {@link BulkBTreeBuilder} to write the nodes and leaves of a new
+     * B+Tree bottom-up. The caller is responsible for installing the new
+     * root.
+     * 
+     * @param data
+     *            The (mutable) data record for a node or leaf.
+     * 
+     * @return The address at which the coded record was written.
+     */
+    long writeNodeOrLeafData(final IAbstractNodeData data) {
+
+        if (error != null)
+            throw new IllegalStateException(ERROR_ERROR_STATE, error);
+
+        assertNotReadOnly();
+
+        if (store == null)
+            throw new UnsupportedOperationException(ERROR_TRANSIENT);
+
+        // the coded data record.
+        final IAbstractNodeData coded;
+        {
+
+            final long begin = System.nanoTime();
+
+            if (data.isLeaf()) {
+
+                coded = nodeSer.encodeLive((ILeafData) data);
+
+                btreeCounters.leavesWritten++;
+
+            } else {
+
+                coded = nodeSer.encodeLive((INodeData) data);
+
+                btreeCounters.nodesWritten++;
+
+            }
+
+            btreeCounters.serializeNanos += System.nanoTime() - begin;
+
+        }
+
+        final long addr;
+        {
+
+            final long begin = System.nanoTime();
+
+            // wrap as ByteBuffer, apply record compression, write on store.
+            addr = store.write(nodeSer.compress(coded.data()));
+
+            final int nbytes = store.getByteCount(addr);
+
+            btreeCounters.writeNanos += System.nanoTime() - begin;
+
+            btreeCounters.bytesWritten += nbytes;
+
+            btreeCounters.bytesOnStore_nodesAndLeaves.addAndGet(nbytes);
+
+        }
+
+        if (storeCache != null) {
+
+            // See writeNodeOrLeaf()
+            storeCache.put(addr, coded);
+
+        }
+
+        return addr;
+
+    }
+
     /**
      * Read a node or leaf from the store.
      * <p>
@@ -4056,7 +4366,42 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
         if (addr == IRawStore.NULL)
             throw new IllegalArgumentException();
         
-        
+        if (storeCache != null) {
+
+            // test cache.
+            final IAbstractNodeData data = storeCache.get(addr);
+
+            if (data != null) {
+
+                // cache hit : wrap as Node or Leaf.
+                return nodeSer.wrap(this, addr, data);
+
+            }
+
+        }
+
+        // read, decode, and wrap as Node or Leaf.
+        return nodeSer.wrap(this, addr, readNodeData(addr));
+
+    }
+
+    /**
+     * Read and decode a node or leaf data record from the store and enter it
+     * into the {@link #storeCache} (if enabled). Unlike
+     * {@link #readNodeOrLeaf(long)}, this does not test the cache first and
+     * does not wrap the data record as a {@link Node} or {@link Leaf}, so it
+     * may be used to read records ahead of their use (see
+     * {@link LeafReadahead}).
+     * 
+     * @param addr
+     *            The address in the store.
+     * 
+     * @return The decoded data record (if there was a concurrent insert into
+     *         the {@link #storeCache} then this is the data record from the
+     *         cache).
+     */
+    IAbstractNodeData readNodeData(final long addr) {
+
         final ByteBuffer tmp;
         {
 
@@ -4095,8 +4440,8 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
                 final long begin = System.nanoTime();
 
-                // decode the record.
-                data = nodeSer.decode(tmp);
+                // decompress and decode the record.
+                data = nodeSer.decode(nodeSer.decompress(tmp));
 
                 btreeCounters.deserializeNanos.add(System.nanoTime() - begin);
 
@@ -4112,17 +4457,22 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
             }
 
-            // wrap as Node or Leaf.
-            final AbstractNode<?> node = nodeSer.wrap(this, addr, data);
+            if (storeCache != null) {
+
+                // update cache.
+                final IAbstractNodeData data2 = storeCache.putIfAbsent(addr,
+                        data);
 
-            // Note: The de-serialization ctor already does this.
-//            node.setDirty(false);
+                if (data2 != null) {
 
-            // Note: The de-serialization ctor already does this.
-//            touch(node);
+                    // concurrent insert, use winner's value.
+                    data = data2;
 
-            // return Node or Leaf.
-            return node;
+                }
+
+            }
+
+            return data;
 
         } catch (Throwable t) {
 
@@ -4451,6 +4801,11 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
         
         getBtreeCounters().bytesReleased += nbytes;
         
+        if (storeCache != null) {
+            // remove from cache (iff a node or leaf).
+            storeCache.remove(addr);
+        }
+        
         store.delete(addr);
         
         return nbytes;
@@ -35,6 +35,7 @@ import java.util.concurrent.locks.Lock;
 import com.bigdata.BigdataStatics;
 import com.bigdata.btree.AbstractBTreeTupleCursor.MutableBTreeTupleCursor;
 import com.bigdata.btree.Leaf.ILeafListener;
+import com.bigdata.btree.data.IAbstractNodeData;
 import com.bigdata.btree.data.ILeafData;
 import com.bigdata.btree.data.INodeData;
 import com.bigdata.io.ByteArrayBuffer;
@@ -43,6 +44,7 @@ import com.bigdata.journal.IIndexManager;
 import com.bigdata.mdi.IResourceMetadata;
 import com.bigdata.mdi.JournalMetadata;
 import com.bigdata.mdi.LocalPartitionMetadata;
+import com.bigdata.rawstore.IAddressFilter;
 import com.bigdata.rawstore.IRawStore;
 import com.bigdata.rwstore.IRWStrategy;
 import com.bigdata.util.Bytes;
@@ -288,6 +290,13 @@ public class BTree extends AbstractBTree implements //ICommitter,
 	 */
     private final ByteArrayBuffer recordAddrBuf;
 
+    /**
+     * Used to read leaves ahead of a {@link LeafCursor} during long range
+     * scans (a read-only {@link BTree} on an RWStore journal) and otherwise
+     * <code>null</code>.
+     */
+    private final LeafReadahead readahead;
+
 //    /**
 //     * The last address from which the {@link IndexMetadata} record was read or
 //     * on which it was written.
@@ -385,6 +394,42 @@ public class BTree extends AbstractBTree implements //ICommitter,
 		recordAddrBuf = readOnly ? null
 				: new ByteArrayBuffer(Bytes.SIZEOF_LONG);
 
+        readahead = LeafReadahead.newInstance(this);
+
+    }
+
+    /**
+     * The object used to read leaves ahead of a {@link LeafCursor} -or-
+     * <code>null</code> if readahead is not used for this {@link BTree}.
+     */
+    final LeafReadahead getLeafReadahead() {
+
+        return readahead;
+
+    }
+
+    /**
+     * Extended to use a node or leaf which was read ahead of a
+     * {@link LeafCursor}.
+     */
+    @Override
+    protected AbstractNode<?> readNodeOrLeaf(final long addr) {
+
+        if (readahead != null) {
+
+            final IAbstractNodeData data = readahead.take(addr);
+
+            if (data != null) {
+
+                // wrap as Node or Leaf.
+                return nodeSer.wrap(this, addr, data);
+
+            }
+
+        }
+
+        return super.readNodeOrLeaf(addr);
+
     }
 
 	/**
@@ -470,6 +515,13 @@ public class BTree extends AbstractBTree implements //ICommitter,
             bloomFilter = metadata.getBloomFilterFactory().newBloomFilter();
             
         }
+
+        if (metadata.getKeySketchFactory() != null) {
+
+            // Note: As for the bloom filter (above).
+            keySketch = metadata.getKeySketchFactory().newKeySketch();
+
+        }
         
         /*
          * Note: a new root leaf is created when an empty btree is (re-)opened.
@@ -600,6 +652,201 @@ public class BTree extends AbstractBTree implements //ICommitter,
             
     }
     
+    /**
+     * Lazily reads the {@link KeySketch} from the backing store if it exists
+     * and is not already in memory.
+     */
+    @Override
+    final public KeySketch getKeySketch() {
+
+        // make sure the index is open.
+        reopen();
+
+        if (keySketch == null) {
+
+            if (checkpoint.getKeySketchAddr() == 0L
+                    || metadata.getKeySketchFactory() == null) {
+
+                // No key sketch.
+                return null;
+
+            }
+
+            synchronized (this) {
+
+                if (keySketch == null) {
+
+                    keySketch = KeySketch.read(store,
+                            checkpoint.getKeySketchAddr(),
+                            metadata.getKeySketchFactory());
+
+                }
+
+            }
+
+        }
+
+        return keySketch;
+
+    }
+
+    /**
+     * (Re-)build the {@link KeySketch} from the keys of the index using the
+     * {@link KeySketchFactory} declared by the {@link IndexMetadata}. This may
+     * be used to add a key sketch to an existing index or to correct the
+     * distinct counts after tuples have been removed. The new sketch is
+     * written by the next {@link #writeCheckpoint()} and the old record (if
+     * any) is recycled.
+     * <p>
+     * Note: This visits every key in the index.
+     * 
+     * @return The #of keys added to the sketch.
+     * 
+     * @throws IllegalStateException
+     *             if the {@link IndexMetadata} does not declare a key sketch.
+     * @throws UnsupportedOperationException
+     *             if the index is read-only.
+     */
+    public long rebuildKeySketch() {
+
+        assertNotReadOnly();
+
+        final KeySketchFactory factory = metadata.getKeySketchFactory();
+
+        if (factory == null)
+            throw new IllegalStateException("No key sketch: "
+                    + metadata.getName());
+
+        final KeySketch sketch = factory.newKeySketch();
+
+        // Note: Deleted tuples are not visited.
+        final ITupleIterator<?> itr = rangeIterator(null/* fromKey */,
+                null/* toKey */, 0/* capacity */, IRangeQuery.KEYS, null/* filter */);
+
+        long n = 0L;
+
+        while (itr.hasNext()) {
+
+            sketch.add(itr.next().getKey());
+
+            n++;
+
+        }
+
+        sketch.rebuildHistogram(this);
+
+        // Recycle the old key sketch record (if any).
+        final KeySketch old = keySketch;
+
+        recycle(old != null ? old.getAddr() : checkpoint.getKeySketchAddr());
+
+        keySketch = sketch;
+
+        fireDirtyEvent();
+
+        if (log.isInfoEnabled())
+            log.info("name=" + metadata.getName() + ", nkeys=" + n + ", "
+                    + sketch);
+
+        return n;
+
+    }
+
+    /**
+     * (Re-)build the bloom filter from the keys of the index using the
+     * {@link BloomFilterFactory} declared by the {@link IndexMetadata}. This
+     * may be used to add a bloom filter to an existing index or to re-enable a
+     * bloom filter which was disabled once the index grew past its capacity,
+     * e.g., after changing the {@link IndexMetadata} to use a scalable bloom
+     * filter. The new bloom filter is written by the next
+     * {@link #writeCheckpoint()} and the old bloom filter record (if any) is
+     * recycled.
+     * <p>
+     * Note: This visits every key in the index. Callers normally run this as
+     * an unisolated index task (see
+     * {@link com.bigdata.journal.RebuildBloomFilterTask}).
+     * 
+     * @return The #of keys added to the bloom filter -or- <code>-1</code> if
+     *         the index has more entries than the bloom filter permits, in
+     *         which case the bloom filter is not changed.
+     * 
+     * @throws IllegalStateException
+     *             if the {@link IndexMetadata} does not declare a bloom
+     *             filter.
+     * @throws UnsupportedOperationException
+     *             if the index is read-only.
+     */
+    public long rebuildBloomFilter() {
+
+        assertNotReadOnly();
+
+        final BloomFilterFactory factory = metadata.getBloomFilterFactory();
+
+        if (factory == null)
+            throw new IllegalStateException("No bloom filter: "
+                    + metadata.getName());
+
+        final BloomFilter filter = factory.newBloomFilter();
+
+        if (getEntryCount() > filter.getMaxN()) {
+
+            log.warn("Index is too large for the bloom filter: name="
+                    + metadata.getName() + ", entryCount=" + getEntryCount()
+                    + ", maxN=" + filter.getMaxN());
+
+            return -1L;
+
+        }
+
+        if (getEntryCount() == 0L) {
+
+            if (checkpoint.getBloomFilterAddr() == 0L) {
+
+                // The empty filter will be written once a key is added.
+                bloomFilter = filter;
+
+            }
+
+            return 0L;
+
+        }
+
+        /*
+         * Note: The keys of deleted tuples are included since insert() adds
+         * them to the filter.
+         */
+        final ITupleIterator<?> itr = rangeIterator(null/* fromKey */,
+                null/* toKey */, 0/* capacity */, IRangeQuery.KEYS
+                        | (metadata.getDeleteMarkers() ? IRangeQuery.DELETED : 0),
+                null/* filter */);
+
+        long n = 0L;
+
+        while (itr.hasNext()) {
+
+            filter.add(itr.next().getKey());
+
+            n++;
+
+        }
+
+        // Recycle the old bloom filter record (if any).
+        final BloomFilter old = bloomFilter;
+
+        recycle(old != null ? old.getAddr() : checkpoint.getBloomFilterAddr());
+
+        bloomFilter = filter;
+
+        fireDirtyEvent();
+
+        if (log.isInfoEnabled())
+            log.info("name=" + metadata.getName() + ", nkeys=" + n + ", "
+                    + filter);
+
+        return n;
+
+    }
+
 //    final public boolean isReadOnly() {
 //     
 //        return readOnly;
@@ -993,6 +1240,37 @@ public class BTree extends AbstractBTree implements //ICommitter,
             
         }
 
+        {
+            /*
+             * Note: Use the [AbstractBtree#keySketch] reference here. If it
+             * is [null] then the sketch was not loaded (and hence is clean) or
+             * was not configured and the address from the last checkpoint
+             * record is carried forward.
+             */
+            final KeySketch sketch = this.keySketch;
+
+            if (sketch != null) {
+
+                if (sketch.isHistogramStale(nentries)
+                        && (nentries != 0L || sketch.getHistogramEntryCount() != -1L)) {
+
+                    // One descent per histogram bucket.
+                    sketch.rebuildHistogram(this);
+
+                }
+
+                if (sketch.isDirty()) {
+
+                    recycle(sketch.getAddr());
+
+                    sketch.write(store);
+
+                }
+
+            }
+
+        }
+
         if (metadata.getMetadataAddr() == 0L) {
             
             /*
@@ -1244,6 +1522,26 @@ public class BTree extends AbstractBTree implements //ICommitter,
             
         }
 
+        final BloomFilter filter = this.bloomFilter;
+
+        if (filter != null && filter.isEnabled() && filter.isDirty()) {
+
+            // The bloom filter was rebuilt.
+
+            return true;
+
+        }
+
+        final KeySketch sketch = this.keySketch;
+
+        if (sketch != null && sketch.isDirty()) {
+
+            // The key sketch was rebuilt.
+
+            return true;
+
+        }
+
         /*
          * No apparent change in persistent state so we do NOT need to do a
          * checkpoint.
@@ -1324,6 +1622,186 @@ public class BTree extends AbstractBTree implements //ICommitter,
     	
     }
 
+    /**
+     * Relocate the records of this {@link BTree} whose addresses are accepted
+     * by the filter. This is used by an online compaction to move the live
+     * records out of sparsely used regions of the backing store.
+     * <p>
+     * Each accepted node or leaf is made mutable using the same copy-on-write
+     * mechanism used by the mutation methods. It will be written onto a new
+     * address when the {@link BTree} is next checkpointed (or evicted) and its
+     * old address is recycled through the normal deferred free protocol. Raw
+     * records, the {@link IndexMetadata} record and the {@link Checkpoint}
+     * record are relocated in the same manner. The tuples are not changed.
+     * <p>
+     * The nodes are visited top-down. Leaves are only materialized if their
+     * address is accepted or if the index uses raw records, so a pass
+     * generally reads just the nodes of the {@link BTree}.
+     * <p>
+     * Note: The bloom filter record (if any) is not relocated.
+     * <p>
+     * Note: The caller MUST have exclusive write access to the unisolated
+     * index.
+     * 
+     * @param filter
+     *            Accepts the addresses of the records to be relocated.
+     * @param maxRelocations
+     *            The maximum #of records to relocate.
+     * 
+     * @return The #of records relocated.
+     * 
+     * @see com.bigdata.rwstore.RWStore#evacuate(float, int)
+     */
+    public long relocate(final IAddressFilter filter, final long maxRelocations) {
+
+        if (filter == null)
+            throw new IllegalArgumentException();
+
+        if (maxRelocations <= 0)
+            throw new IllegalArgumentException();
+
+        assertNotTransient();
+        assertNotReadOnly();
+
+        final Relocation r = new Relocation(filter, maxRelocations);
+
+        final long metadataAddr = metadata.getMetadataAddr();
+
+        if (metadataAddr != IRawStore.NULL && filter.accept(metadataAddr)) {
+
+            // Written onto a new address by the next checkpoint.
+            setIndexMetadata(metadata.clone());
+
+            r.n++;
+
+        }
+
+        relocate(getRoot(), 0/* depth */, r);
+
+        final long checkpointAddr = checkpoint.getCheckpointAddr();
+
+        if (r.n < r.max && checkpointAddr != IRawStore.NULL
+                && filter.accept(checkpointAddr) && !needsCheckpoint()) {
+
+            // Force a new checkpoint record.
+            copyOnWrite(getRoot());
+
+            r.n++;
+
+        }
+
+        return r.n;
+
+    }
+
+    /**
+     * Relocate the accepted records in the subtree.
+     * 
+     * @return The current version of the node or leaf (it is replaced if it
+     *         was copied).
+     */
+    private AbstractNode<?> relocate(AbstractNode<?> node, final int depth,
+            final Relocation r) {
+
+        if (r.n >= r.max)
+            return node;
+
+        if (!node.isDirty() && r.filter.accept(node.getIdentity())) {
+
+            node = copyOnWrite(node);
+
+            r.n++;
+
+        }
+
+        if (node.isLeaf()) {
+
+            final Leaf leaf = (Leaf) node;
+
+            if (r.n < r.max && leaf.hasRawRecord(r.filter)) {
+
+                final Leaf copy = (Leaf) leaf.copyOnWrite();
+
+                r.n += copy.relocateRawRecords(r.filter, r.max - r.n);
+
+                return copy;
+
+            }
+
+            return leaf;
+
+        }
+
+        Node parent = (Node) node;
+
+        // true iff the children are leaves which we can test by address.
+        final boolean skipLeaves = depth + 1 == getHeight()
+                && !metadata.getRawRecords();
+
+        for (int i = 0; i < parent.getChildCount() && r.n < r.max; i++) {
+
+            if (skipLeaves) {
+
+                final long addr = parent.getChildAddr(i);
+
+                if (addr == IRawStore.NULL || !r.filter.accept(addr)) {
+
+                    // Dirty or not accepted.
+                    continue;
+
+                }
+
+            }
+
+            final AbstractNode<?> child = relocate(parent.getChild(i),
+                    depth + 1, r);
+
+            /*
+             * Note: If the child was copied then its parent was also copied
+             * unless it was already dirty.
+             */
+            parent = child.getParent();
+
+        }
+
+        return parent;
+
+    }
+
+    /**
+     * Return a mutable copy of a clean node or leaf.
+     */
+    private AbstractNode<?> copyOnWrite(final AbstractNode<?> node) {
+
+        if (node.isLeaf())
+            return node.copyOnWrite();
+
+        return node.copyOnWrite(IRawStore.NULL);
+
+    }
+
+    /**
+     * State for {@link BTree#relocate(IAddressFilter, long)}.
+     */
+    private static class Relocation {
+
+        final IAddressFilter filter;
+
+        final long max;
+
+        /** #of records relocated. */
+        long n;
+
+        Relocation(final IAddressFilter filter, final long max) {
+
+            this.filter = filter;
+
+            this.max = max;
+
+        }
+
+    }
+
     /**
      * Remove all entries in the B+Tree.
      * <p>
@@ -1369,43 +1847,8 @@ public class BTree extends AbstractBTree implements //ICommitter,
              * cut to release the storage associated with the B+Tree.
              */
 
-            /*
-             * Visit all Nodes using a pre-order traversal, but do not
-             * materialize the leaves.
-             */
-            final Iterator<AbstractNode> itr = getRoot().postOrderNodeIterator(
-                    false/* dirtyNodesOnly */, true/* nodesOnly */);
+            deleteNodesAndLeaves();
 
-            while(itr.hasNext()) {
-                
-                final Node node = (Node) itr.next();
-                
-                final int nchildren = node.getChildCount();
-                
-                for (int i = 0; i < nchildren; i++) {
-                    
-                    final long childAddr = node.getChildAddr(i);
-
-                    if(childAddr != 0L) {
-
-                        // delete persistent child.
-                        deleteNodeOrLeaf(childAddr);
-                        
-                    }
-                    
-                }
-                
-            }
-
-            final long raddr = getRoot().getIdentity();
-			
-            if (raddr != IRawStore.NULL) {
-
-                // delete root iff persistent.
-				deleteNodeOrLeaf(raddr);
-
-            }
-            
             // @todo update bytesOnStore to ZERO.
             replaceRootWithEmptyLeaf();
 
@@ -1448,6 +1891,140 @@ public class BTree extends AbstractBTree implements //ICommitter,
         
     }
 
+    /**
+     * Delete each persistent node and leaf of this B+Tree from the backing
+     * store. This uses a post-order traversal of the nodes such that a parent
+     * is not removed from the store until its children have been removed. The
+     * deletes are low-level {@link IRawStore#delete(long)} invocations without
+     * maintenance to the B+Tree data structures, so the caller MUST replace
+     * the root afterwards. This is only used for the {@link IRWStrategy}.
+     */
+    private void deleteNodesAndLeaves() {
+
+        /*
+         * Visit all Nodes using a pre-order traversal, but do not
+         * materialize the leaves.
+         */
+        final Iterator<AbstractNode> itr = getRoot().postOrderNodeIterator(
+                false/* dirtyNodesOnly */, true/* nodesOnly */);
+
+        while (itr.hasNext()) {
+
+            final Node node = (Node) itr.next();
+
+            final int nchildren = node.getChildCount();
+
+            for (int i = 0; i < nchildren; i++) {
+
+                final long childAddr = node.getChildAddr(i);
+
+                if (childAddr != 0L) {
+
+                    // delete persistent child.
+                    deleteNodeOrLeaf(childAddr);
+
+                }
+
+            }
+
+        }
+
+        final long raddr = getRoot().getIdentity();
+
+        if (raddr != IRawStore.NULL) {
+
+            // delete root iff persistent.
+            deleteNodeOrLeaf(raddr);
+
+        }
+
+    }
+
+    /**
+     * Replace the nodes and leaves of this B+Tree with a B+Tree whose nodes
+     * and leaves were written directly on the backing store. This is a low
+     * level method used by the {@link BulkBTreeBuilder}.
+     * <p>
+     * The hard reference cache is cleared. When the backing store is an
+     * {@link IRWStrategy} the old nodes and leaves are deleted from the store
+     * (raw records are the responsibility of the caller). The new root is
+     * clean, but it is not the root of the last checkpoint so the B+Tree will
+     * write a new checkpoint record.
+     * 
+     * @param rootAddr
+     *            The address of the new root node or leaf -or- {@link IRawStore#NULL}
+     *            if the B+Tree is empty.
+     * @param height
+     *            The height of the new B+Tree.
+     * @param nnodes
+     *            The #of nodes in the new B+Tree.
+     * @param nleaves
+     *            The #of leaves in the new B+Tree.
+     * @param nentries
+     *            The #of tuples in the new B+Tree.
+     * @param filter
+     *            The bloom filter for the new B+Tree (optional).
+     * @param sketch
+     *            The key sketch for the new B+Tree (optional).
+     */
+    void replaceRoot(final long rootAddr, final int height, final long nnodes,
+            final long nleaves, final long nentries, final BloomFilter filter,
+            final KeySketch sketch) {
+
+        assertNotReadOnly();
+
+        if (getStore() instanceof IRWStrategy) {
+
+            deleteNodesAndLeaves();
+
+        }
+
+        if (rootAddr == IRawStore.NULL) {
+
+            replaceRootWithEmptyLeaf();
+
+            return;
+
+        }
+
+        // See replaceRootWithEmptyLeaf()
+        writeRetentionQueue.clear(true/* clearRefs */);
+
+        ndistinctOnWriteRetentionQueue = 0;
+
+        root = readNodeOrLeaf(rootAddr);
+
+        this.height = height;
+
+        this.nnodes = nnodes;
+
+        this.nleaves = nleaves;
+
+        this.nentries = nentries;
+
+        if (metadata.getBloomFilterFactory() != null) {
+
+            // Note: [null] if the filter was disabled by the caller.
+            bloomFilter = filter;
+
+        }
+
+        if (metadata.getKeySketchFactory() != null) {
+
+            // Recycle the old key sketch record (if any).
+            final KeySketch old = keySketch;
+
+            recycle(old != null ? old.getAddr() : checkpoint
+                    .getKeySketchAddr());
+
+            keySketch = sketch;
+
+        }
+
+        fireDirtyEvent();
+
+    }
+
     /**
      * Clears the hard reference cache and replaces the root node with an empty
      * root leaf. This is a low level method.
@@ -2400,6 +2977,13 @@ public class BTree extends AbstractBTree implements //ICommitter,
          * from this copy.
          */
         private Stack backup = null;
+
+        /**
+         * Detects sequential traversal by {@link #next()} and issues readahead
+         * for the upcoming leaves (<code>null</code> if readahead is not used).
+         */
+        private final LeafReadahead.Sequence sequence = readahead == null ? null
+                : readahead.newSequence();
         
         /**
          * Save a copy of the {@link #stack}.
@@ -2508,6 +3092,9 @@ public class BTree extends AbstractBTree implements //ICommitter,
         public Leaf first() {
 
             stack.clear();
+
+            if (sequence != null)
+                sequence.reset();
             
             AbstractNode<?> node = getRoot();
 
@@ -2530,6 +3117,9 @@ public class BTree extends AbstractBTree implements //ICommitter,
         public Leaf last() {
             
             stack.clear();
+
+            if (sequence != null)
+                sequence.reset();
             
             AbstractNode<?> node = getRoot();
 
@@ -2557,6 +3147,9 @@ public class BTree extends AbstractBTree implements //ICommitter,
         public Leaf seek(final byte[] key) {
 
             stack.clear();
+
+            if (sequence != null)
+                sequence.reset();
             
             AbstractNode<?> node = getRoot();
             
@@ -2598,6 +3191,9 @@ public class BTree extends AbstractBTree implements //ICommitter,
             // copy the stack state from the source cursor.
             stack.copyFrom(((LeafCursor) src).stack);
 
+            if (sequence != null)
+                sequence.reset();
+
             return leaf = src.leaf();
             
         }
@@ -2670,8 +3266,13 @@ public class BTree extends AbstractBTree implements //ICommitter,
                 }
                 
             }
-            
-            return leaf = (Leaf) sibling;
+
+            leaf = (Leaf) sibling;
+
+            if (sequence != null)
+                sequence.next(leaf);
+
+            return leaf;
             
         }
 
@@ -2713,6 +3314,9 @@ public class BTree extends AbstractBTree implements //ICommitter,
             // save a copy of the stack.
             backup();
 
+            if (sequence != null)
+                sequence.reset();
+
             /*
              * Starting with the current leaf, recursive ascent until there is a
              * left-sibling of the current child.
@@ -54,6 +54,12 @@ public class BTreeStatistics implements IBTreeStatistics, Serializable {
 
     private final IBTreeUtilizationReport utilReport;
 
+    /**
+     * Note: The sketch is not copied. It reflects the state of the index when
+     * it is used rather than when this snapshot was taken.
+     */
+    private final KeySketch keySketch;
+
     public BTreeStatistics(final AbstractBTree btree) {
         this.m = btree.getBranchingFactor();
         this.height = btree.getHeight();
@@ -61,6 +67,7 @@ public class BTreeStatistics implements IBTreeStatistics, Serializable {
         this.leafCount = btree.getLeafCount();
         this.entryCount = btree.getEntryCount();
         this.utilReport = btree.getUtilization();
+        this.keySketch = btree.getKeySketch();
     }
 
     public int getBranchingFactor() {
@@ -87,6 +94,10 @@ public class BTreeStatistics implements IBTreeStatistics, Serializable {
         return utilReport;
     }
 
+    public KeySketch getKeySketch() {
+        return keySketch;
+    }
+
     /**
      * Human readable representation.
      */
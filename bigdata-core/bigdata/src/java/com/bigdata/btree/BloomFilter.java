@@ -46,6 +46,19 @@ import com.bigdata.rawstore.IRawStore;
 /**
  * Encapsulates the actual implementation class and provides the protocol for
  * (de-)serialization.
+ * <p>
+ * A filter is either fixed size or scalable. A fixed size filter is
+ * provisioned for {@link #getN()} entries and is disabled by the {@link BTree}
+ * once the #of index entries exceeds {@link #getMaxN()}. A scalable filter
+ * (see {@link #newScalableInstance(int, double, int)}) is a sequence of
+ * stages. When the current stage has absorbed the #of keys for which it was
+ * provisioned a new stage is added having {@value #GROWTH_FACTOR} times the
+ * capacity of the previous stage. The error rate of each stage is
+ * {@value #TIGHTENING_RATIO} times the error rate of the previous stage, so
+ * the compound error rate over all stages never exceeds {@link #getP()}.
+ * Keys are added to the current stage and {@link #contains(byte[])} tests
+ * each stage (P. S. Almeida et al., "Scalable Bloom Filters", 2007). Only the
+ * maximum #of stages bounds the size of a scalable filter.
  * 
  * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
  * @version $Id$
@@ -63,12 +76,47 @@ public class BloomFilter implements IBloomFilter, Externalizable {
     private static final long serialVersionUID = -4011582802868293737L;
 
     /**
-     * The implementation object. This is cleared by {@link #disable()}.
+     * The implementation object. This is cleared by {@link #disable()}. For a
+     * scalable filter, this is the current stage.
      * 
      * @serial
      */
     private it.unimi.dsi.util.BloomFilter2 filter;
 
+    /**
+     * The earlier stages of a scalable filter (in the order in which they were
+     * created) -or- <code>null</code> if there is only one stage. These stages
+     * are full and no more keys are added to them.
+     * 
+     * @serial
+     */
+    private it.unimi.dsi.util.BloomFilter2[] full;
+
+    /**
+     * The maximum #of stages for a scalable filter -or- ZERO (0) for a fixed
+     * size filter.
+     */
+    private int maxStages;
+
+    /**
+     * The #of keys added to the current stage of a scalable filter.
+     */
+    private int nstage;
+
+    /**
+     * The capacity of each stage of a scalable filter is this many times the
+     * capacity of the previous stage.
+     */
+    public static final transient int GROWTH_FACTOR = 2;
+
+    /**
+     * The error rate of each stage of a scalable filter is this many times
+     * the error rate of the previous stage. The error rate of the first stage
+     * is <code>p * (1 - r)</code>, so the compound error rate of all stages
+     * is bounded by <code>p</code>.
+     */
+    public static final transient double TIGHTENING_RATIO = 0.8;
+
     /**
      * The natural logarithm of 2, used in the computation of the number of
      * bits.
@@ -128,8 +176,17 @@ public class BloomFilter implements IBloomFilter, Externalizable {
      */
     public double getErrorRate() {
 
-        return Math.pow(2, -filter.d());
-    
+        if (full == null)
+            return Math.pow(2, -filter.d());
+
+        // The compound error rate is bounded by the sum over the stages.
+        double sum = Math.pow(2, -filter.d());
+
+        for (it.unimi.dsi.util.BloomFilter2 stage : full)
+            sum += Math.pow(2, -stage.d());
+
+        return sum;
+
     }
     
     /**
@@ -218,7 +275,140 @@ public class BloomFilter implements IBloomFilter, Externalizable {
     }
     
     /**
-     * The #of hash functions used by the filter.
+     * Return a scalable filter.
+     * 
+     * @param n
+     *            The expected #of index entries for the first stage.
+     * @param p
+     *            The target (compound) error rate.
+     * @param maxStages
+     *            The maximum #of stages. The {@link BTree} disables the filter
+     *            once the #of index entries exceeds the total capacity of
+     *            those stages (see {@link #getScalableCapacity(int, int)}).
+     * 
+     * @throws IllegalArgumentException
+     *             if <i>n</i> is non-positive.
+     * @throws IllegalArgumentException
+     *             unless <i>p</i> lies in (0:1).
+     * @throws IllegalArgumentException
+     *             if <i>maxStages</i> is non-positive.
+     */
+    public static BloomFilter newScalableInstance(final int n, final double p,
+            final int maxStages) {
+
+        if (n < 1)
+            throw new IllegalArgumentException();
+
+        if (p <= 0.0 || p >= 1.0)
+            throw new IllegalArgumentException();
+
+        if (maxStages < 1)
+            throw new IllegalArgumentException();
+
+        final BloomFilter bf = new BloomFilter();
+
+        bf.n = n;
+
+        bf.p = p;
+
+        bf.maxN = getScalableCapacity(n, maxStages);
+
+        bf.maxStages = maxStages;
+
+        bf.filter = bf.newStage(0);
+
+        return bf;
+
+    }
+
+    /**
+     * The total capacity of a scalable filter having the specified #of
+     * stages.
+     * 
+     * @param n
+     *            The capacity of the first stage.
+     * @param nstages
+     *            The #of stages.
+     * 
+     * @return The total capacity, which is bounded by
+     *         {@link Integer#MAX_VALUE}.
+     */
+    public static int getScalableCapacity(final int n, final int nstages) {
+
+        long sum = 0L;
+
+        for (int i = 0; i < nstages; i++) {
+
+            sum += getStageCapacity(n, i);
+
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, sum);
+
+    }
+
+    /**
+     * The capacity of a stage of a scalable filter.
+     * 
+     * @param n
+     *            The capacity of the first stage.
+     * @param stage
+     *            The index of the stage (origin ZERO).
+     */
+    private static int getStageCapacity(final int n, final int stage) {
+
+        return (int) Math.min(Integer.MAX_VALUE, n
+                * Math.pow(GROWTH_FACTOR, stage));
+
+    }
+
+    /**
+     * Return a new stage for a scalable filter.
+     * 
+     * @param stage
+     *            The index of the stage (origin ZERO).
+     */
+    private it.unimi.dsi.util.BloomFilter2 newStage(final int stage) {
+
+        final double pstage = p * (1 - TIGHTENING_RATIO)
+                * Math.pow(TIGHTENING_RATIO, stage);
+
+        final int capacity = getStageCapacity(n, stage);
+
+        final int d = getHashFunctionCount(pstage);
+
+        final it.unimi.dsi.util.BloomFilter2 tmp = new it.unimi.dsi.util.BloomFilter2(
+                capacity, d);
+
+        if (log.isInfoEnabled())
+            log.info("stage=" + stage + ", capacity=" + capacity + ", p="
+                    + pstage + ", d=" + d + ", m=" + tmp.m());
+
+        return tmp;
+
+    }
+
+    /**
+     * Return <code>true</code> iff this is a scalable filter.
+     */
+    final public boolean isScalable() {
+
+        return maxStages != 0;
+
+    }
+
+    /**
+     * The #of stages (always ONE (1) for a fixed size filter).
+     */
+    final public int getStageCount() {
+
+        return full == null ? 1 : full.length + 1;
+
+    }
+
+    /**
+     * The #of hash functions used by the filter (by the current stage of a
+     * scalable filter).
      */
     final public int getHashFunctionCount() {
         
@@ -227,11 +417,21 @@ public class BloomFilter implements IBloomFilter, Externalizable {
     }
 
     /**
-     * The bit length of the filter.
+     * The bit length of the filter (summed over the stages of a scalable
+     * filter).
      */
     final public long getBitLength() {
 
-        return filter.m();
+        long m = filter.m();
+
+        if (full != null) {
+
+            for (it.unimi.dsi.util.BloomFilter2 stage : full)
+                m += stage.m();
+
+        }
+
+        return m;
 
     }
 
@@ -355,6 +555,12 @@ public class BloomFilter implements IBloomFilter, Externalizable {
         if (!enabled)
             throw new IllegalStateException();
 
+        if (maxStages != 0) {
+
+            return addScalable(key);
+
+        }
+
         if (filter.add(key)) {
 
             // filter state was modified.
@@ -370,6 +576,66 @@ public class BloomFilter implements IBloomFilter, Externalizable {
 
     }
 
+    /**
+     * Add the key to the current stage of a scalable filter, first adding a
+     * new stage if the current stage is full. A key which is already reported
+     * by some stage does not change the filter, so it is neither counted
+     * against the capacity of the current stage nor does it make the filter
+     * dirty.
+     */
+    private boolean addScalable(final byte[] key) {
+
+        if (filter.contains(key))
+            return false;
+
+        if (full != null) {
+
+            for (it.unimi.dsi.util.BloomFilter2 stage : full) {
+
+                if (stage.contains(key))
+                    return false;
+
+            }
+
+        }
+
+        if (nstage >= getStageCapacity(n, getStageCount() - 1)
+                && getStageCount() < maxStages) {
+
+            final int nfull = full == null ? 0 : full.length;
+
+            final it.unimi.dsi.util.BloomFilter2[] tmp = new it.unimi.dsi.util.BloomFilter2[nfull + 1];
+
+            if (full != null)
+                System.arraycopy(full, 0, tmp, 0, nfull);
+
+            tmp[nfull] = filter;
+
+            filter = newStage(nfull + 1);
+
+            full = tmp;
+
+            nstage = 0;
+
+        }
+
+        if (!filter.add(key))
+            return false;
+
+        /*
+         * Note: The #of keys in the stage is part of the persistent state so
+         * the filter is always dirty once a key has been added.
+         */
+        nstage++;
+
+        dirty = true;
+
+        counters.nbloomAdd++;
+
+        return true;
+
+    }
+
     /**
      * @throws IllegalStateException
      *             if the filter has been {@link #disable()}d
@@ -384,15 +650,26 @@ public class BloomFilter implements IBloomFilter, Externalizable {
 
         counters.nbloomTest++;
         
-        if(!filter.contains(key)) {
-            
-            counters.nbloomRejects++;
-            
-            return false;
-            
+        if (filter.contains(key)) {
+
+            return true;
+
         }
-        
-        return true;
+
+        if (full != null) {
+
+            for (it.unimi.dsi.util.BloomFilter2 stage : full) {
+
+                if (stage.contains(key))
+                    return true;
+
+            }
+
+        }
+
+        counters.nbloomRejects++;
+
+        return false;
 
     }
 
@@ -410,7 +687,13 @@ public class BloomFilter implements IBloomFilter, Externalizable {
 
         sb.append(", maxN=" + maxN);
 
-        sb.append(", bitLength=" + filter.m());
+        sb.append(", bitLength=" + getBitLength());
+
+        if (maxStages != 0) {
+            sb.append(", stages=" + getStageCount());
+            sb.append(", maxStages=" + maxStages);
+            sb.append(", nstage=" + nstage);
+        }
 
         sb.append(", hashFunctionCount=" + filter.d());
 
@@ -571,6 +854,7 @@ public class BloomFilter implements IBloomFilter, Externalizable {
 
             // release the filter impl. this is often 1-10M of data!
             filter = null;
+            full = null;
             addr = 0; 
 
             if (log.isInfoEnabled())
@@ -600,6 +884,12 @@ public class BloomFilter implements IBloomFilter, Externalizable {
     }
 
     private final static transient int VERSION0 = 0x0;
+
+    /**
+     * Adds the stages of a scalable filter. A fixed size filter is still
+     * written using {@link #VERSION0}.
+     */
+    private final static transient int VERSION1 = 0x1;
     
     /**
      * Note: On read, the {@link #addr} is set to <code>0L</code>, the
@@ -617,7 +907,7 @@ public class BloomFilter implements IBloomFilter, Externalizable {
 
         final int version = (int) LongPacker.unpackLong(in);
 
-        if (version != VERSION0)
+        if (version != VERSION0 && version != VERSION1)
             throw new IOException("Unknown version=" + version);
 
         n = (int) LongPacker.unpackLong(in);
@@ -628,6 +918,24 @@ public class BloomFilter implements IBloomFilter, Externalizable {
         
         filter = (it.unimi.dsi.util.BloomFilter2) in.readObject();
 
+        if (version >= VERSION1) {
+
+            maxStages = (int) LongPacker.unpackLong(in);
+
+            nstage = (int) LongPacker.unpackLong(in);
+
+            final int nfull = (int) LongPacker.unpackLong(in);
+
+            full = nfull == 0 ? null : new it.unimi.dsi.util.BloomFilter2[nfull];
+
+            for (int i = 0; i < nfull; i++) {
+
+                full[i] = (it.unimi.dsi.util.BloomFilter2) in.readObject();
+
+            }
+
+        }
+
         dirty = false;
 
         addr = 0L;
@@ -643,7 +951,9 @@ public class BloomFilter implements IBloomFilter, Externalizable {
      */
     public void writeExternal(ObjectOutput out) throws IOException {
 
-        LongPacker.packLong(out, VERSION0);
+        final int version = maxStages == 0 ? VERSION0 : VERSION1;
+
+        LongPacker.packLong(out, version);
 
         LongPacker.packLong(out, n);
 
@@ -653,6 +963,24 @@ public class BloomFilter implements IBloomFilter, Externalizable {
         
         out.writeObject(filter);
 
+        if (version >= VERSION1) {
+
+            LongPacker.packLong(out, maxStages);
+
+            LongPacker.packLong(out, nstage);
+
+            final int nfull = full == null ? 0 : full.length;
+
+            LongPacker.packLong(out, nfull);
+
+            for (int i = 0; i < nfull; i++) {
+
+                out.writeObject(full[i]);
+
+            }
+
+        }
+
     }
 
     public void falsePos() {
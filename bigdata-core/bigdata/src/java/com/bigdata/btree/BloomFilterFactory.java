@@ -61,6 +61,12 @@ import com.bigdata.relation.accesspath.IAccessPath;
  * (not in the index or the index partition) exceeds the threashold at which the
  * bloom filter would be expected to operate with the specified maximum error
  * rate, at which point it will be disabled.
+ * <p>
+ * A scalable factory (see {@link #newScalableInstance(int, double, int)})
+ * creates bloom filters for a {@link BTree} which add stages as the index
+ * grows rather than degrading and being disabled. The compound error rate of
+ * the stages is bounded by the target error rate. Such a filter is only
+ * disabled once the index outgrows the maximum #of stages.
  * 
  * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
  * @version $Id$
@@ -88,6 +94,12 @@ public class BloomFilterFactory implements Serializable {
      * rate).
      */ 
     public final double maxP;
+
+    /**
+     * The maximum #of stages for a scalable bloom filter -or- ZERO (0) if the
+     * factory creates fixed size bloom filters.
+     */
+    public final int maxStages;
     
     /**
      * The maximum #of index entries before the expected performance will be
@@ -115,6 +127,19 @@ public class BloomFilterFactory implements Serializable {
      */
     public static final transient double DEFAULT_MAX_ERROR_RATE = 0.15;
 
+    /**
+     * The default #of index entries for the first stage of a scalable bloom
+     * filter {@value #DEFAULT_SCALABLE_N}.
+     */
+    public static final transient int DEFAULT_SCALABLE_N = 100000; // 100k
+
+    /**
+     * The default maximum #of stages for a scalable bloom filter
+     * {@value #DEFAULT_MAX_STAGES}. With the default first stage, the filter
+     * grows to ~100M index entries (~100MB).
+     */
+    public static final transient int DEFAULT_MAX_STAGES = 10;
+
     /**
      * The recommenced default factory configuration. This configuration is
      * designed to provide a bloom filter with good performance up to ~2M index
@@ -152,6 +177,16 @@ public class BloomFilterFactory implements Serializable {
      */
     public static final transient BloomFilterFactory DEFAULT = new BloomFilterFactory(
             DEFAULT_N, DEFAULT_ERROR_RATE, DEFAULT_MAX_ERROR_RATE); 
+
+    /**
+     * The default scalable factory configuration. The bloom filter starts
+     * small and grows with the index while keeping the error rate at
+     * {@value #DEFAULT_ERROR_RATE}.
+     * 
+     * @see #newScalableInstance(int, double, int)
+     */
+    public static final transient BloomFilterFactory SCALABLE = newScalableInstance(
+            DEFAULT_SCALABLE_N, DEFAULT_ERROR_RATE, DEFAULT_MAX_STAGES);
     
     /**
      * Configuration with the caller specified #of index entries and having a
@@ -209,6 +244,8 @@ public class BloomFilterFactory implements Serializable {
 
         this.maxP = maxP;
 
+        this.maxStages = 0;
+
         // #of hash functions.
         final int k = BloomFilter.getHashFunctionCount(p);
 
@@ -224,6 +261,66 @@ public class BloomFilterFactory implements Serializable {
 
     }
 
+    /**
+     * Return a factory for scalable bloom filters.
+     * 
+     * @param n
+     *            The expected #of index entries for the first stage of the
+     *            filter (this value is ignored for {@link IndexSegment}s).
+     * @param p
+     *            The target error rate. This is also the maximum error rate
+     *            since the compound error rate of the stages is bounded by
+     *            this value.
+     * @param maxStages
+     *            The maximum #of stages. The filter is disabled for a
+     *            {@link BTree} once the #of index entries exceeds the capacity
+     *            of that many stages.
+     * 
+     * @throws IllegalArgumentException
+     *             if <i>n</i> is non-positive.
+     * @throws IllegalArgumentException
+     *             unless <i>p</i> lies in (0:1).
+     * @throws IllegalArgumentException
+     *             if <i>maxStages</i> is non-positive.
+     */
+    public static BloomFilterFactory newScalableInstance(final int n,
+            final double p, final int maxStages) {
+
+        return new BloomFilterFactory(n, p, maxStages);
+
+    }
+
+    private BloomFilterFactory(final int n, final double p, final int maxStages) {
+
+        if (n <= 0)
+            throw new IllegalArgumentException();
+        if (p <= 0d || p >= 1d)
+            throw new IllegalArgumentException();
+        if (maxStages <= 0)
+            throw new IllegalArgumentException();
+
+        this.n = n;
+
+        this.p = p;
+
+        this.maxP = p;
+
+        this.maxStages = maxStages;
+
+        this.maxN = BloomFilter.getScalableCapacity(n, maxStages);
+
+    }
+
+    /**
+     * Return <code>true</code> iff the factory creates scalable bloom
+     * filters.
+     */
+    public boolean isScalable() {
+
+        return maxStages != 0;
+
+    }
+
     /**
      * Create and return a new (empty) bloom filter for a {@link BTree} or
      * {@link IndexSegment}.
@@ -260,6 +357,12 @@ public class BloomFilterFactory implements Serializable {
      */
     public BloomFilter newBloomFilter() {
 
+        if (maxStages != 0) {
+
+            return BloomFilter.newScalableInstance(n, p, maxStages);
+
+        }
+
         return new BloomFilter(n, p, /* maxP,*/ maxN);
         
 // // target error rate at the target #of index entries.
@@ -293,6 +396,8 @@ public class BloomFilterFactory implements Serializable {
         sb.append(", p=" + p);
         sb.append(", maxP=" + maxP);
         sb.append(", maxN=" + maxN);
+        if (maxStages != 0)
+            sb.append(", maxStages=" + maxStages);
         sb.append("}");
 
         return sb.toString();
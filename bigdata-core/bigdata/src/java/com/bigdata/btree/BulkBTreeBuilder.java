@@ -0,0 +1,1189 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.BTree.LeafCursor;
+import com.bigdata.btree.data.ILeafData;
+import com.bigdata.btree.raba.MutableKeyBuffer;
+import com.bigdata.btree.raba.MutableValueBuffer;
+import com.bigdata.rawstore.IRawStore;
+import com.bigdata.util.BytesUtil;
+
+/**
+ * Bulk builds the nodes and leaves of a mutable {@link BTree} bottom-up from
+ * sorted data, in the same manner as the {@link IndexSegmentBuilder} builds an
+ * {@link IndexSegment}. This may be used to load an empty {@link BTree} or to
+ * merge a large sorted batch into an existing {@link BTree}.
+ * <p>
+ * The tuples of the existing {@link BTree} (if any) are merged with the tuples
+ * of the batch in a single pass over the leaves of the {@link BTree}. Each
+ * leaf (and then each node) is filled to the target fill factor, coded, and
+ * written onto the backing store as soon as its right sibling has been
+ * started, so the nodes and leaves are written sequentially and at most two
+ * nodes (or leaves) are buffered for each level of the new {@link BTree}. The
+ * last two nodes (leaves) of each level are rebalanced so that every node and
+ * leaf has at least the minimum #of children (tuples). Once the new
+ * {@link BTree} is complete its root replaces the root of the target
+ * {@link BTree}. The target {@link BTree} remains mutable and will write a new
+ * {@link Checkpoint} on the next commit.
+ * <p>
+ * When a key in the batch is already present in the {@link BTree} the tuple in
+ * the batch replaces the existing tuple. A deleted tuple in the batch writes a
+ * delete marker if the index supports delete markers and otherwise removes
+ * the key. Raw records are written for large values when the index supports
+ * raw records and the raw records of replaced tuples are deleted.
+ * <p>
+ * Note: Unlike {@link BTree#insert(byte[], byte[])}, the builder does not
+ * trigger copy-on-write for the nodes and leaves of the existing
+ * {@link BTree}. When the backing store is an
+ * {@link com.bigdata.rwstore.IRWStrategy} the old nodes and leaves are deleted
+ * once the new {@link BTree} is installed. Otherwise they are simply no longer
+ * referenced.
+ * <p>
+ * Note: The builder is not thread-safe. The caller must have exclusive access
+ * to the (unisolated) {@link BTree} for the duration of the build.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class BulkBTreeBuilder {
+
+    private static final Logger log = Logger.getLogger(BulkBTreeBuilder.class);
+
+    /**
+     * The default fill factor. Leaves and nodes are not completely filled so
+     * that the index can absorb subsequent inserts without immediately
+     * splitting its leaves.
+     */
+    public static final double DEFAULT_FILL_FACTOR = .75;
+
+    /**
+     * The target B+Tree.
+     */
+    private final BTree btree;
+
+    /**
+     * The branching factor of the target B+Tree.
+     */
+    private final int m;
+
+    /**
+     * The minimum #of tuples in a leaf and the minimum #of children of a node.
+     */
+    private final int minChildren;
+
+    /**
+     * The #of tuples in each leaf and the #of children of each node (other
+     * than the last two at each level).
+     */
+    private final int target;
+
+    private final boolean deleteMarkers;
+
+    private final boolean versionTimestamps;
+
+    private final boolean rawRecords;
+
+    /**
+     * The maximum length of a value before it is written as a raw record.
+     */
+    private final int maxRecLen;
+
+    /**
+     * The bloom filter for the new B+Tree (if enabled).
+     */
+    private BloomFilter filter;
+
+    /**
+     * The key sketch for the new B+Tree (if enabled).
+     */
+    private KeySketch sketch;
+
+    /**
+     * The levels of the B+Tree being built. The leaves are at index ZERO (0).
+     */
+    private final ArrayList<Level> levels = new ArrayList<Level>();
+
+    /**
+     * The last key appended to the new B+Tree.
+     */
+    private byte[] lastKey;
+
+    /**
+     * The #of tuples appended to the new B+Tree.
+     */
+    private long nentries;
+
+    /**
+     * The #of tuples which were appended from the batch.
+     */
+    private long nbatch;
+
+    /**
+     * The #of raw records written for values in the batch.
+     */
+    private long nrawRecordsWritten;
+
+    /**
+     * The #of raw records deleted for tuples which were replaced or removed.
+     */
+    private long nrawRecordsDeleted;
+
+    /**
+     * Builder using the {@link #DEFAULT_FILL_FACTOR}.
+     *
+     * @param btree
+     *            The target B+Tree.
+     */
+    public BulkBTreeBuilder(final BTree btree) {
+
+        this(btree, DEFAULT_FILL_FACTOR);
+
+    }
+
+    /**
+     * @param btree
+     *            The target B+Tree. It must be mutable and must be backed by a
+     *            store.
+     * @param fillFactor
+     *            The target fill factor for the nodes and leaves in
+     *            <code>(0:1]</code>. The #of tuples in each leaf (children of
+     *            each node) is never less than the minimum permitted by the
+     *            branching factor.
+     */
+    public BulkBTreeBuilder(final BTree btree, final double fillFactor) {
+
+        if (btree == null)
+            throw new IllegalArgumentException();
+
+        if (btree.isReadOnly())
+            throw new UnsupportedOperationException(
+                    AbstractBTree.ERROR_READ_ONLY);
+
+        if (btree.getStore() == null)
+            throw new UnsupportedOperationException(
+                    AbstractBTree.ERROR_TRANSIENT);
+
+        if (!(fillFactor > 0d && fillFactor <= 1d))
+            throw new IllegalArgumentException();
+
+        this.btree = btree;
+
+        this.m = btree.getBranchingFactor();
+
+        this.minChildren = btree.minChildren;
+
+        this.target = Math.max(minChildren,
+                Math.min(m, (int) Math.ceil(m * fillFactor)));
+
+        final IndexMetadata md = btree.getIndexMetadata();
+
+        this.deleteMarkers = md.getDeleteMarkers();
+
+        this.versionTimestamps = md.getVersionTimestamps();
+
+        this.rawRecords = md.getRawRecords();
+
+        this.maxRecLen = rawRecords ? btree.getMaxRecLen() : Integer.MAX_VALUE;
+
+    }
+
+    /**
+     * The #of tuples in each leaf (children of each node), other than the
+     * last two leaves (nodes) at each level.
+     */
+    public int getTargetChildCount() {
+
+        return target;
+
+    }
+
+    /**
+     * Merge a batch of tuples into the B+Tree. The version timestamp (if the
+     * index maintains version timestamps) is the revision timestamp of the
+     * B+Tree.
+     *
+     * @param keys
+     *            The keys, which must be strictly ascending in the unsigned
+     *            byte[] order.
+     * @param vals
+     *            The values (optional). When <code>null</code>, all values are
+     *            <code>null</code>.
+     *
+     * @return The #of tuples in the B+Tree.
+     *
+     * @throws IllegalArgumentException
+     *             if the keys are not strictly ascending.
+     */
+    public long load(final byte[][] keys, final byte[][] vals) {
+
+        if (keys == null)
+            throw new IllegalArgumentException();
+
+        if (vals != null && vals.length != keys.length)
+            throw new IllegalArgumentException();
+
+        // Check the order before we write anything on the store.
+        for (int i = 0; i < keys.length; i++) {
+
+            if (keys[i] == null)
+                throw new IllegalArgumentException();
+
+            if (i > 0 && BytesUtil.compareBytes(keys[i - 1], keys[i]) >= 0)
+                throw new IllegalArgumentException(
+                        "Keys are not strictly ascending: index=" + i);
+
+        }
+
+        return load(new ArraySource(keys, vals, btree.getRevisionTimestamp()));
+
+    }
+
+    /**
+     * Merge a batch of tuples into the B+Tree.
+     *
+     * @param src
+     *            An iterator visiting the tuples in the batch in strictly
+     *            ascending key order. The tuples must report their keys, and
+     *            their values unless they are deleted. The version timestamp
+     *            and delete marker of each tuple are used if the index
+     *            maintains them.
+     *
+     * @return The #of tuples in the B+Tree.
+     *
+     * @throws IllegalArgumentException
+     *             if the keys are not strictly ascending. The B+Tree is
+     *             unchanged, but the nodes, leaves and raw records already
+     *             written are not released.
+     */
+    public long load(final ITupleIterator<?> src) {
+
+        if (src == null)
+            throw new IllegalArgumentException();
+
+        return load(new TupleSource(src));
+
+    }
+
+    private long load(final Source batch) {
+
+        final long begin = System.currentTimeMillis();
+
+        levels.clear();
+        lastKey = null;
+        nentries = nbatch = nrawRecordsWritten = nrawRecordsDeleted = 0L;
+
+        filter = btree.getIndexMetadata().getBloomFilterFactory() == null ? null
+                : btree.getIndexMetadata().getBloomFilterFactory()
+                        .newBloomFilter();
+
+        sketch = btree.getIndexMetadata().getKeySketchFactory() == null ? null
+                : btree.getIndexMetadata().getKeySketchFactory()
+                        .newKeySketch();
+
+        final Source old = btree.getEntryCount() == 0L ? null : new LeafSource(
+                btree.newLeafCursor(SeekEnum.First));
+
+        boolean hasOld = old != null && old.next();
+
+        boolean hasNew = batch.next();
+
+        while (hasOld || hasNew) {
+
+            final int cmp = !hasOld ? 1 : !hasNew ? -1 : BytesUtil
+                    .compareBytes(old.key, batch.key);
+
+            if (cmp < 0) {
+
+                // Copy the existing tuple.
+                append(old.key, old.val, old.deleted, old.timestamp,
+                        old.rawRecord);
+
+                hasOld = old.next();
+
+                continue;
+
+            }
+
+            if (cmp == 0) {
+
+                // The existing tuple is replaced by the tuple in the batch.
+                if (old.rawRecord) {
+
+                    btree.deleteRawRecord(old.addr);
+
+                    nrawRecordsDeleted++;
+
+                }
+
+                hasOld = old.next();
+
+            }
+
+            appendBatch(batch);
+
+            hasNew = batch.next();
+
+        }
+
+        final long rootAddr = finish(0/* level */);
+
+        final int height = levels.isEmpty() ? 0 : levels.size() - 1;
+
+        long nleaves = 0L, nnodes = 0L;
+
+        for (Level level : levels) {
+
+            if (level.isLeafLevel())
+                nleaves += level.nwritten;
+            else
+                nnodes += level.nwritten;
+
+        }
+
+        if (filter != null && nentries > filter.getMaxN()) {
+
+            /*
+             * Disable the filter since the index has exceeded the maximum #of
+             * index entries for which the bloom filter will have an
+             * acceptable error rate (as per AbstractBTree#insert()).
+             */
+
+            filter.disable();
+
+            filter = null;
+
+            log.warn("Bloom filter disabled - maximum error rate would be exceeded"
+                    + ": entryCount=" + nentries);
+
+        }
+
+        btree.replaceRoot(rootAddr, height, nnodes, nleaves, nentries, filter,
+                sketch);
+
+        if (log.isInfoEnabled())
+            log.info("name=" + btree.getIndexMetadata().getName()
+                    + ", nentries=" + nentries + ", nbatch=" + nbatch
+                    + ", height=" + height + ", nnodes=" + nnodes
+                    + ", nleaves=" + nleaves + ", target=" + target
+                    + ", rawRecordsWritten=" + nrawRecordsWritten
+                    + ", rawRecordsDeleted=" + nrawRecordsDeleted
+                    + ", elapsed=" + (System.currentTimeMillis() - begin)
+                    + "ms");
+
+        levels.clear();
+        filter = null;
+        sketch = null;
+
+        return nentries;
+
+    }
+
+    /**
+     * Append the current tuple from the batch.
+     */
+    private void appendBatch(final Source batch) {
+
+        nbatch++;
+
+        if (batch.deleted) {
+
+            if (deleteMarkers) {
+
+                append(batch.key, null/* val */, true/* deleted */,
+                        batch.timestamp, false/* rawRecord */);
+
+            }
+
+            // Otherwise the key is removed from the index.
+            return;
+
+        }
+
+        byte[] val = batch.val;
+
+        boolean rawRecord = false;
+
+        if (val != null && val.length > maxRecLen) {
+
+            // write the value as a raw record.
+            val = btree.encodeRecordAddr(btree.writeRawRecord(val));
+
+            rawRecord = true;
+
+            nrawRecordsWritten++;
+
+        }
+
+        append(batch.key, val, false/* deleted */, batch.timestamp, rawRecord);
+
+    }
+
+    /**
+     * Append a tuple to the current leaf.
+     */
+    private void append(final byte[] key, final byte[] val,
+            final boolean deleted, final long timestamp, final boolean rawRecord) {
+
+        final LeafLevel level = (LeafLevel) getLevel(0);
+
+        final LeafPage leaf = (LeafPage) level.current;
+
+        final int n = leaf.nkeys;
+
+        if (n == 0 && lastKey != null) {
+
+            // The separator key between the prior leaf and this leaf.
+            leaf.leadingSep = BytesUtil.getSeparatorKey(key, lastKey);
+
+        }
+
+        leaf.keys[n] = key;
+        leaf.vals[n] = val;
+        if (deleteMarkers)
+            leaf.deleted[n] = deleted;
+        if (versionTimestamps)
+            leaf.timestamps[n] = timestamp;
+        if (rawRecords)
+            leaf.rawRecords[n] = rawRecord;
+        leaf.nkeys++;
+
+        lastKey = key;
+
+        nentries++;
+
+        if (filter != null && filter.isEnabled() && nentries <= filter.getMaxN())
+            filter.add(key);
+
+        if (sketch != null && !deleted)
+            sketch.add(key);
+
+        if (leaf.nkeys == target)
+            level.full();
+
+    }
+
+    /**
+     * Return the level, creating it if necessary.
+     */
+    private Level getLevel(final int index) {
+
+        if (index == levels.size()) {
+
+            levels.add(index == 0 ? new LeafLevel() : new NodeLevel(index));
+
+        }
+
+        return levels.get(index);
+
+    }
+
+    /**
+     * Flush the last nodes (leaves) at the given level and at each level above
+     * it.
+     *
+     * @return The address of the root -or- {@link IRawStore#NULL} if the
+     *         B+Tree is empty.
+     */
+    private long finish(final int index) {
+
+        if (index == levels.size()) {
+
+            // Nothing was appended.
+            return IRawStore.NULL;
+
+        }
+
+        final Level level = levels.get(index);
+
+        final Page pending = level.pending;
+
+        final Page current = level.current;
+
+        if (pending != null && current.size() > 0
+                && current.size() < minChildren) {
+
+            level.rebalance();
+
+        }
+
+        if (level.nwritten == 0
+                && (pending == null || current.size() == 0)) {
+
+            // There is only one node (leaf) at this level, so it is the root.
+            final Page root = pending == null ? current : pending;
+
+            if (root.size() == 0)
+                return IRawStore.NULL;
+
+            return level.write(root);
+
+        }
+
+        level.emit(pending);
+
+        if (current.size() > 0)
+            level.emit(current);
+
+        return finish(index + 1);
+
+    }
+
+    /**
+     * A node or leaf which is being filled.
+     */
+    private static abstract class Page {
+
+        /**
+         * The separator key between this node (leaf) and its left sibling
+         * (<code>null</code> for the first node (leaf) at each level).
+         */
+        byte[] leadingSep;
+
+        /**
+         * The #of tuples (leaf) or children (node).
+         */
+        abstract int size();
+
+        abstract void clear();
+
+    }
+
+    private class LeafPage extends Page {
+
+        // Note: The capacity of a mutable leaf is (m+1).
+        final byte[][] keys = new byte[m + 1][];
+        final byte[][] vals = new byte[m + 1][];
+        final boolean[] deleted = deleteMarkers ? new boolean[m + 1] : null;
+        final long[] timestamps = versionTimestamps ? new long[m + 1] : null;
+        final boolean[] rawRecords = BulkBTreeBuilder.this.rawRecords ? new boolean[m + 1]
+                : null;
+        int nkeys;
+
+        @Override
+        int size() {
+            return nkeys;
+        }
+
+        @Override
+        void clear() {
+            for (int i = 0; i < nkeys; i++) {
+                keys[i] = vals[i] = null;
+            }
+            nkeys = 0;
+            leadingSep = null;
+        }
+
+        /**
+         * Move the tuples in [from:nkeys) to the front of the given leaf.
+         */
+        void moveTail(final int from, final LeafPage dst) {
+            final int n = nkeys - from;
+            final int k = dst.nkeys;
+            System.arraycopy(dst.keys, 0, dst.keys, n, k);
+            System.arraycopy(keys, from, dst.keys, 0, n);
+            System.arraycopy(dst.vals, 0, dst.vals, n, k);
+            System.arraycopy(vals, from, dst.vals, 0, n);
+            if (deleted != null) {
+                System.arraycopy(dst.deleted, 0, dst.deleted, n, k);
+                System.arraycopy(deleted, from, dst.deleted, 0, n);
+            }
+            if (timestamps != null) {
+                System.arraycopy(dst.timestamps, 0, dst.timestamps, n, k);
+                System.arraycopy(timestamps, from, dst.timestamps, 0, n);
+            }
+            if (rawRecords != null) {
+                System.arraycopy(dst.rawRecords, 0, dst.rawRecords, n, k);
+                System.arraycopy(rawRecords, from, dst.rawRecords, 0, n);
+            }
+            for (int i = from; i < nkeys; i++) {
+                keys[i] = vals[i] = null;
+            }
+            nkeys = from;
+            dst.nkeys += n;
+            dst.leadingSep = BytesUtil.getSeparatorKey(dst.keys[0],
+                    keys[from - 1]);
+        }
+
+        /**
+         * Append the tuples of the given leaf to this leaf.
+         */
+        void append(final LeafPage src) {
+            final int n = src.nkeys;
+            System.arraycopy(src.keys, 0, keys, nkeys, n);
+            System.arraycopy(src.vals, 0, vals, nkeys, n);
+            if (deleted != null)
+                System.arraycopy(src.deleted, 0, deleted, nkeys, n);
+            if (timestamps != null)
+                System.arraycopy(src.timestamps, 0, timestamps, nkeys, n);
+            if (rawRecords != null)
+                System.arraycopy(src.rawRecords, 0, rawRecords, nkeys, n);
+            nkeys += n;
+            src.clear();
+        }
+
+    }
+
+    private class NodePage extends Page {
+
+        final byte[][] keys = new byte[m - 1][];
+        final long[] childAddr = new long[m];
+        final long[] childEntryCounts = new long[m];
+        final long[] minTimestamps = versionTimestamps ? new long[m] : null;
+        final long[] maxTimestamps = versionTimestamps ? new long[m] : null;
+        int nchildren;
+
+        @Override
+        int size() {
+            return nchildren;
+        }
+
+        @Override
+        void clear() {
+            for (int i = 0; i < nchildren - 1; i++) {
+                keys[i] = null;
+            }
+            nchildren = 0;
+            leadingSep = null;
+        }
+
+        void addChild(final byte[] sep, final long addr, final long nentries,
+                final long minTimestamp, final long maxTimestamp) {
+            if (nchildren == 0) {
+                leadingSep = sep;
+            } else {
+                keys[nchildren - 1] = sep;
+            }
+            childAddr[nchildren] = addr;
+            childEntryCounts[nchildren] = nentries;
+            if (minTimestamps != null) {
+                minTimestamps[nchildren] = minTimestamp;
+                maxTimestamps[nchildren] = maxTimestamp;
+            }
+            nchildren++;
+        }
+
+        /**
+         * Move the children in [from:nchildren) to the front of the given
+         * node.
+         */
+        void moveTail(final int from, final NodePage dst) {
+            final int n = nchildren - from;
+            final int k = dst.nchildren;
+            // separator keys: keys[from:nchildren-1), dst.leadingSep, dst.keys
+            System.arraycopy(dst.keys, 0, dst.keys, n, k - 1);
+            dst.keys[n - 1] = dst.leadingSep;
+            System.arraycopy(keys, from, dst.keys, 0, n - 1);
+            dst.leadingSep = keys[from - 1];
+            System.arraycopy(dst.childAddr, 0, dst.childAddr, n, k);
+            System.arraycopy(childAddr, from, dst.childAddr, 0, n);
+            System.arraycopy(dst.childEntryCounts, 0, dst.childEntryCounts, n, k);
+            System.arraycopy(childEntryCounts, from, dst.childEntryCounts, 0, n);
+            if (minTimestamps != null) {
+                System.arraycopy(dst.minTimestamps, 0, dst.minTimestamps, n, k);
+                System.arraycopy(minTimestamps, from, dst.minTimestamps, 0, n);
+                System.arraycopy(dst.maxTimestamps, 0, dst.maxTimestamps, n, k);
+                System.arraycopy(maxTimestamps, from, dst.maxTimestamps, 0, n);
+            }
+            for (int i = from - 1; i < nchildren - 1; i++) {
+                keys[i] = null;
+            }
+            nchildren = from;
+            dst.nchildren += n;
+        }
+
+        /**
+         * Append the children of the given node to this node.
+         */
+        void append(final NodePage src) {
+            final int n = src.nchildren;
+            keys[nchildren - 1] = src.leadingSep;
+            System.arraycopy(src.keys, 0, keys, nchildren, n - 1);
+            System.arraycopy(src.childAddr, 0, childAddr, nchildren, n);
+            System.arraycopy(src.childEntryCounts, 0, childEntryCounts,
+                    nchildren, n);
+            if (minTimestamps != null) {
+                System.arraycopy(src.minTimestamps, 0, minTimestamps,
+                        nchildren, n);
+                System.arraycopy(src.maxTimestamps, 0, maxTimestamps,
+                        nchildren, n);
+            }
+            nchildren += n;
+            src.clear();
+        }
+
+    }
+
+    /**
+     * One level of the B+Tree being built. Each level buffers the last node
+     * (leaf) which was filled (the <i>pending</i> node) and the node (leaf)
+     * which is being filled (the <i>current</i> node). The pending node is not
+     * written until the current node is full so that the last two nodes at
+     * each level may be rebalanced by {@link BulkBTreeBuilder#finish(int)}.
+     */
+    private abstract class Level {
+
+        /**
+         * The index of this level (ZERO is the leaves).
+         */
+        final int index;
+
+        Page pending;
+
+        Page current;
+
+        /**
+         * The #of nodes (leaves) written for this level.
+         */
+        long nwritten;
+
+        Level(final int index) {
+            this.index = index;
+        }
+
+        boolean isLeafLevel() {
+            return index == 0;
+        }
+
+        abstract Page newPage();
+
+        /**
+         * Code and write the node (leaf) onto the store.
+         */
+        abstract long write(Page page);
+
+        /**
+         * Rebalance the pending node (leaf) and the current node (leaf), which
+         * has less than the minimum #of children (tuples). If they fit into a
+         * single node (leaf) then they are merged into the pending node.
+         */
+        abstract void rebalance();
+
+        /**
+         * The #of tuples spanned by the node (leaf).
+         */
+        abstract long getEntryCount(Page page);
+
+        abstract long getMinimumVersionTimestamp(Page page);
+
+        abstract long getMaximumVersionTimestamp(Page page);
+
+        /**
+         * The current node (leaf) is full. The pending node (leaf) is written
+         * and the current node (leaf) becomes the pending node (leaf).
+         */
+        void full() {
+
+            Page tmp = pending;
+
+            if (tmp != null) {
+
+                emit(tmp);
+
+                tmp.clear();
+
+            } else {
+
+                tmp = newPage();
+
+            }
+
+            pending = current;
+
+            current = tmp;
+
+        }
+
+        /**
+         * Write the node (leaf) and add it to the parent.
+         */
+        void emit(final Page page) {
+
+            final long addr = write(page);
+
+            final NodeLevel parent = (NodeLevel) getLevel(index + 1);
+
+            final NodePage node = (NodePage) parent.current;
+
+            node.addChild(page.leadingSep, addr, getEntryCount(page),
+                    getMinimumVersionTimestamp(page),
+                    getMaximumVersionTimestamp(page));
+
+            if (node.nchildren == target)
+                parent.full();
+
+        }
+
+    }
+
+    private class LeafLevel extends Level {
+
+        LeafLevel() {
+            super(0);
+            current = newPage();
+        }
+
+        @Override
+        Page newPage() {
+            return new LeafPage();
+        }
+
+        @Override
+        long write(final Page page) {
+
+            final LeafPage leaf = (LeafPage) page;
+
+            final MutableLeafData data = new MutableLeafData(
+                    new MutableKeyBuffer(leaf.nkeys, leaf.keys),
+                    new MutableValueBuffer(leaf.nkeys, leaf.vals),
+                    leaf.timestamps, leaf.deleted, leaf.rawRecords);
+
+            nwritten++;
+
+            return btree.writeNodeOrLeafData(data);
+
+        }
+
+        @Override
+        void rebalance() {
+
+            final LeafPage left = (LeafPage) pending;
+
+            final LeafPage right = (LeafPage) current;
+
+            final int total = left.nkeys + right.nkeys;
+
+            if (total <= m) {
+
+                left.append(right);
+
+            } else {
+
+                left.moveTail((total + 1) / 2, right);
+
+            }
+
+        }
+
+        @Override
+        long getEntryCount(final Page page) {
+            return ((LeafPage) page).nkeys;
+        }
+
+        @Override
+        long getMinimumVersionTimestamp(final Page page) {
+            final LeafPage leaf = (LeafPage) page;
+            long min = Long.MAX_VALUE;
+            if (leaf.timestamps != null) {
+                for (int i = 0; i < leaf.nkeys; i++)
+                    min = Math.min(min, leaf.timestamps[i]);
+            }
+            return min;
+        }
+
+        @Override
+        long getMaximumVersionTimestamp(final Page page) {
+            final LeafPage leaf = (LeafPage) page;
+            long max = Long.MIN_VALUE;
+            if (leaf.timestamps != null) {
+                for (int i = 0; i < leaf.nkeys; i++)
+                    max = Math.max(max, leaf.timestamps[i]);
+            }
+            return max;
+        }
+
+    }
+
+    private class NodeLevel extends Level {
+
+        NodeLevel(final int index) {
+            super(index);
+            current = newPage();
+        }
+
+        @Override
+        Page newPage() {
+            return new NodePage();
+        }
+
+        @Override
+        long write(final Page page) {
+
+            final NodePage node = (NodePage) page;
+
+            final int nchildren = node.nchildren;
+
+            // Note: The data record must have exactly [m] children.
+            final byte[][] keys = new byte[m - 1][];
+            System.arraycopy(node.keys, 0, keys, 0, nchildren - 1);
+
+            final long[] childAddr = new long[m];
+            System.arraycopy(node.childAddr, 0, childAddr, 0, nchildren);
+
+            final long[] childEntryCounts = new long[m];
+            System.arraycopy(node.childEntryCounts, 0, childEntryCounts, 0,
+                    nchildren);
+
+            final MutableNodeData data = new MutableNodeData(
+                    getEntryCount(node), new MutableKeyBuffer(nchildren - 1,
+                            keys), childAddr, childEntryCounts,
+                    versionTimestamps, getMinimumVersionTimestamp(node),
+                    getMaximumVersionTimestamp(node));
+
+            nwritten++;
+
+            return btree.writeNodeOrLeafData(data);
+
+        }
+
+        @Override
+        void rebalance() {
+
+            final NodePage left = (NodePage) pending;
+
+            final NodePage right = (NodePage) current;
+
+            final int total = left.nchildren + right.nchildren;
+
+            if (total <= m) {
+
+                left.append(right);
+
+            } else {
+
+                left.moveTail((total + 1) / 2, right);
+
+            }
+
+        }
+
+        @Override
+        long getEntryCount(final Page page) {
+            final NodePage node = (NodePage) page;
+            long n = 0L;
+            for (int i = 0; i < node.nchildren; i++)
+                n += node.childEntryCounts[i];
+            return n;
+        }
+
+        @Override
+        long getMinimumVersionTimestamp(final Page page) {
+            final NodePage node = (NodePage) page;
+            long min = Long.MAX_VALUE;
+            if (node.minTimestamps != null) {
+                for (int i = 0; i < node.nchildren; i++)
+                    min = Math.min(min, node.minTimestamps[i]);
+            }
+            return min;
+        }
+
+        @Override
+        long getMaximumVersionTimestamp(final Page page) {
+            final NodePage node = (NodePage) page;
+            long max = Long.MIN_VALUE;
+            if (node.maxTimestamps != null) {
+                for (int i = 0; i < node.nchildren; i++)
+                    max = Math.max(max, node.maxTimestamps[i]);
+            }
+            return max;
+        }
+
+    }
+
+    /**
+     * A source of tuples in ascending key order. {@link #next()} advances to
+     * the next tuple, which is reported by the public fields.
+     */
+    private static abstract class Source {
+
+        byte[] key;
+
+        byte[] val;
+
+        boolean deleted;
+
+        long timestamp;
+
+        /**
+         * <code>true</code> iff {@link #val} is the encoded address of a raw
+         * record (existing tuples only).
+         */
+        boolean rawRecord;
+
+        /**
+         * The address of the raw record iff {@link #rawRecord}.
+         */
+        long addr;
+
+        /**
+         * Advance to the next tuple.
+         *
+         * @return <code>false</code> iff the source is exhausted.
+         */
+        abstract boolean next();
+
+    }
+
+    /**
+     * Visits the tuples in the leaves of the existing B+Tree, including
+     * deleted tuples and the addresses of raw records.
+     */
+    private static class LeafSource extends Source {
+
+        private final LeafCursor cursor;
+
+        private ILeafData leaf;
+
+        private int index;
+
+        LeafSource(final LeafCursor cursor) {
+
+            this.cursor = cursor;
+
+            this.leaf = cursor.leaf();
+
+        }
+
+        @Override
+        boolean next() {
+
+            while (leaf != null && index >= leaf.getKeyCount()) {
+
+                leaf = cursor.next();
+
+                index = 0;
+
+            }
+
+            if (leaf == null)
+                return false;
+
+            key = leaf.getKeys().get(index);
+
+            val = leaf.getValues().get(index);
+
+            deleted = leaf.hasDeleteMarkers() && leaf.getDeleteMarker(index);
+
+            timestamp = leaf.hasVersionTimestamps() ? leaf
+                    .getVersionTimestamp(index) : 0L;
+
+            addr = leaf.hasRawRecords() ? leaf.getRawRecord(index)
+                    : IRawStore.NULL;
+
+            rawRecord = addr != IRawStore.NULL;
+
+            index++;
+
+            return true;
+
+        }
+
+    }
+
+    /**
+     * Visits the tuples in a pair of arrays.
+     */
+    private static class ArraySource extends Source {
+
+        private final byte[][] keys;
+
+        private final byte[][] vals;
+
+        private int index;
+
+        ArraySource(final byte[][] keys, final byte[][] vals,
+                final long timestamp) {
+
+            this.keys = keys;
+
+            this.vals = vals;
+
+            this.timestamp = timestamp;
+
+        }
+
+        @Override
+        boolean next() {
+
+            if (index == keys.length)
+                return false;
+
+            key = keys[index];
+
+            val = vals == null ? null : vals[index];
+
+            index++;
+
+            return true;
+
+        }
+
+    }
+
+    /**
+     * Visits the tuples from an {@link ITupleIterator}.
+     */
+    private static class TupleSource extends Source {
+
+        private final ITupleIterator<?> src;
+
+        TupleSource(final ITupleIterator<?> src) {
+
+            this.src = src;
+
+        }
+
+        @Override
+        boolean next() {
+
+            if (!src.hasNext())
+                return false;
+
+            final ITuple<?> tuple = src.next();
+
+            final byte[] k = tuple.getKey();
+
+            if (key != null && BytesUtil.compareBytes(key, k) >= 0)
+                throw new IllegalArgumentException(
+                        "Keys are not strictly ascending: key="
+                                + BytesUtil.toString(k));
+
+            key = k;
+
+            deleted = tuple.isDeletedVersion();
+
+            val = deleted || tuple.isNull() ? null : tuple.getValue();
+
+            timestamp = tuple.getVersionTimestamp();
+
+            return true;
+
+        }
+
+    }
+
+}
@@ -71,6 +71,12 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 
     private long addrBloomFilter;
 
+    /**
+     * Added in {@link #VERSION3}. The address of the optional
+     * {@link KeySketch}.
+     */
+    private long addrKeySketch;
+
     private long recordVersion; // #of node or leaf records written to date.
 
 	/**
@@ -120,6 +126,18 @@ public class Checkpoint implements ICheckpoint, Externalizable {
         
     }
 
+    /**
+     * The address of the {@link KeySketch} -or- <code>0L</code> if the index
+     * does not have a key sketch.
+     * 
+     * @see IndexMetadata#getKeySketchFactory()
+     */
+    final public long getKeySketchAddr() {
+        
+        return addrKeySketch;
+        
+    }
+
    /**
     * {@inheritDoc}
     * 
@@ -219,6 +237,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
                 ",addrRoot=" + addrRoot + //
                 ",addrMetadata=" + addrMetadata + //
                 ",addrBloomFilter=" + addrBloomFilter + //
+                ",addrKeySketch=" + addrKeySketch + //
                 ",addrCheckpoint=" + addrCheckpoint + //
                 "}";
         
@@ -247,6 +266,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
                 metadata.getMetadataAddr(), //
                 0L,// No root yet.
                 0L,// No bloom filter yet.
+                0L,// No key sketch yet.
                 0, // height 
                 0L, // nnodes
                 0L, // nleaves
@@ -278,6 +298,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
                 metadata.getMetadataAddr(), //
                 0L,// No root yet.
                 0L,// No bloom filter yet.
+                0L,// No key sketch yet.
                 0, // height 
                 0L, // nnodes
                 0L, // nleaves
@@ -336,6 +357,15 @@ public class Checkpoint implements ICheckpoint, Externalizable {
                         .getBloomFilterAddr()
                         : btree.bloomFilter.isEnabled() ? btree.bloomFilter
                                 .getAddr() : 0L),//
+                /*
+                 * optional key sketch.
+                 * 
+                 * Note: As for the bloom filter, if the [keySketch] reference
+                 * is not defined then we use the address in the last
+                 * checkpoint record.
+                 */
+                (btree.keySketch == null ? btree.getCheckpoint()
+                        .getKeySketchAddr() : btree.keySketch.getAddr()),//
                 btree.height,//
                 btree.nnodes,//
                 btree.nleaves,//
@@ -401,6 +431,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 //                        : htree.bloomFilter.isEnabled() ? htree.bloomFilter
 //                                .getAddr() : 0L),//
                 0L, // TODO No bloom filter yet. Do we want to support this?
+                0L, // No key sketch.
                 0, // htree.height,// Note: HTree is not balanced (height not uniform)
                 htree.getNodeCount(),//
                 htree.getLeafCount(),//
@@ -457,6 +488,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
                  * bloom filter addr for the Stream.
                  */
                 ((SolutionSetStream)stream).getStatsAddr(),//
+                0L, // No key sketch.
                 // 
                 0, // htree.height,// Note: HTree is not balanced (height not uniform)
                 0L,//stream.getNodeCount(),//
@@ -470,7 +502,8 @@ public class Checkpoint implements ICheckpoint, Externalizable {
     }
 
 	private Checkpoint(final long addrMetadata, final long addrRoot,
-			final long addrBloomFilter, final int height, final long nnodes,
+			final long addrBloomFilter, final long addrKeySketch,
+			final int height, final long nnodes,
 			final long nleaves, final long nentries, final long counter,
 			final long recordVersion,
 			final IndexTypeEnum indexType) {
@@ -494,6 +527,9 @@ public class Checkpoint implements ICheckpoint, Externalizable {
          * index).
          */
         this.addrBloomFilter = addrBloomFilter;
+
+        // MAY be 0L (the key sketch is optional).
+        this.addrKeySketch = addrKeySketch;
         
         this.height = height;
 
@@ -554,11 +590,19 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 	 * increased in order to provide room for future expansions.
 	 */
     private static transient final int VERSION2 = 0x2;
+
+    /**
+     * Stores the address of the optional {@link KeySketch} in a field which
+     * was unused in {@link #VERSION2}, so the length of the record is not
+     * changed. A {@link Checkpoint} record without a {@link KeySketch} is
+     * still written using {@link #VERSION2}.
+     */
+    private static transient final int VERSION3 = 0x3;
     
     /**
      * The current version.
      */
-    private static transient final int currentVersion = VERSION2;
+    private static transient final int currentVersion = VERSION3;
 
     /**
      * Write the {@link Checkpoint} record on the store, setting
@@ -618,6 +662,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 		case VERSION0:
 		case VERSION1:
 		case VERSION2:
+		case VERSION3:
 			break;
 		default:
 			throw new IOException("Unknown version: " + version);
@@ -662,6 +707,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 			break;
 		case VERSION1:
 		case VERSION2:
+		case VERSION3:
 			this.indexType = IndexTypeEnum.valueOf(in.readShort());
 			in.readShort();// ignored.
 			in.readInt();// ignored.
@@ -670,7 +716,15 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 			throw new AssertionError();
         }
         
-        in.readLong(); // unused.
+		if (version >= VERSION3) {
+
+			this.addrKeySketch = in.readLong();
+
+		} else {
+
+			in.readLong(); // unused.
+
+		}
 
 		if (version >= VERSION2) {
 
@@ -688,7 +742,9 @@ public class Checkpoint implements ICheckpoint, Externalizable {
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
 
-        out.writeInt(currentVersion);
+		final int version = addrKeySketch == 0L ? VERSION2 : currentVersion;
+
+        out.writeInt(version);
 
         out.writeLong(addrMetadata);
 
@@ -698,7 +754,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 
         out.writeInt(height);
 
-		if (currentVersion <= VERSION1) {
+		if (version <= VERSION1) {
 
 			if (nnodes > Integer.MAX_VALUE)
 				throw new RuntimeException();
@@ -739,7 +795,7 @@ public class Checkpoint implements ICheckpoint, Externalizable {
 		 * 8 bytes follow.
 		 */
 
-		out.writeLong(0L/* unused */);
+		out.writeLong(addrKeySketch/* unused before VERSION3 */);
 
 		/*
 		 * Additional space added in VERSION2.
@@ -0,0 +1,299 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure;
+import com.bigdata.btree.raba.IRaba;
+
+/**
+ * A finger for a sequence of point operations (lookup, contains, insert) on
+ * an {@link AbstractBTree}. The finger remembers the path from the root to the
+ * leaf which was located by the last search. The next search resumes from
+ * the deepest node on that path which is known to span the search key rather
+ * than descending from the root. This is effective when the keys are
+ * presented in ascending order (as they are for the batch operations of an
+ * {@link AbstractKeyArrayIndexProcedure}) since successive keys tend to fall
+ * into the same leaf or into a sibling of that leaf.
+ * <p>
+ * A node on the path is used iff it is not deleted and the key lies strictly
+ * within the keys of that node: between the first and the last key of a leaf
+ * (inclusive) or between the first and the last separator key of a node (so
+ * the search would descend into one of the interior children). That test does
+ * not depend on the key range of the node's parent, so the path remains safe
+ * to use when the tree is modified by the operations using the finger (a node
+ * which is split keeps the lower half of its keys and a node which is copied
+ * on write or joined is deleted). The finger is conservative: a key lying on
+ * the edge of a node is located by resuming from an ancestor.
+ * <p>
+ * Note: A finger is NOT thread-safe. Use a distinct finger for each thread.
+ * The finger holds hard references to the nodes on its path, so it should be
+ * discarded once the sequence of operations is complete.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ * 
+ * @see AbstractBTree#lookup(byte[], Tuple, Finger)
+ * @see AbstractBTree#contains(byte[], Finger)
+ * @see AbstractBTree#insert(byte[], byte[], boolean, boolean, long, Tuple,
+ *      Finger)
+ */
+public class Finger {
+
+    /**
+     * The B+Tree.
+     */
+    private final AbstractBTree btree;
+
+    /**
+     * The path from the root to the last leaf located by the finger. The
+     * element at index ZERO (0) is the root (as of the last search which
+     * started at the root).
+     */
+    private AbstractNode<?>[] path;
+
+    /**
+     * The #of elements in {@link #path}.
+     */
+    private int size;
+
+    /**
+     * The #of searches which started at the root.
+     */
+    private long rootCount;
+
+    /**
+     * The #of searches which resumed from a node on the path.
+     */
+    private long fingerCount;
+
+    /**
+     * @param btree
+     *            The B+Tree.
+     */
+    public Finger(final AbstractBTree btree) {
+
+        if (btree == null)
+            throw new IllegalArgumentException();
+
+        this.btree = btree;
+
+        this.path = new AbstractNode<?>[btree.getHeight() + 1];
+
+    }
+
+    /**
+     * The B+Tree.
+     */
+    public AbstractBTree getBTree() {
+
+        return btree;
+
+    }
+
+    /**
+     * The #of searches which started at the root.
+     */
+    public long getRootCount() {
+
+        return rootCount;
+
+    }
+
+    /**
+     * The #of searches which resumed from a node on the path of a prior
+     * search.
+     */
+    public long getFingerCount() {
+
+        return fingerCount;
+
+    }
+
+    /**
+     * Clear the finger. The next search will start at the root.
+     */
+    public void clear() {
+
+        while (size > 0) {
+
+            path[--size] = null;
+
+        }
+
+    }
+
+    /**
+     * Return the leaf which spans the key.
+     * 
+     * @param key
+     *            The key.
+     * 
+     * @return The leaf.
+     */
+    Leaf findLeaf(final byte[] key) {
+
+        AbstractNode<?> node = null;
+
+        int childIndex = -1;
+
+        // Find the deepest node on the path which spans the key.
+        int depth = size - 1;
+
+        for (; depth >= 0; depth--) {
+
+            final AbstractNode<?> tmp = path[depth];
+
+            if (tmp.isDeleted())
+                continue;
+
+            if (tmp.isLeaf()) {
+
+                if (spans((Leaf) tmp, key)) {
+
+                    node = tmp;
+
+                    break;
+
+                }
+
+            } else {
+
+                childIndex = interiorChild((Node) tmp, key);
+
+                if (childIndex != -1) {
+
+                    node = tmp;
+
+                    break;
+
+                }
+
+            }
+
+        }
+
+        if (node == null) {
+
+            // Start at the root.
+            node = btree.getRoot();
+
+            depth = 0;
+
+            childIndex = node.isLeaf() ? -1 : ((Node) node).findChild(key);
+
+            rootCount++;
+
+        } else {
+
+            fingerCount++;
+
+        }
+
+        // Descend to the leaf, recording the path.
+        while (true) {
+
+            if (depth >= path.length) {
+
+                // The tree has grown in height.
+                final AbstractNode<?>[] tmp = new AbstractNode<?>[depth + 1];
+
+                System.arraycopy(path, 0, tmp, 0, path.length);
+
+                path = tmp;
+
+            }
+
+            path[depth] = node;
+
+            if (node.isLeaf())
+                break;
+
+            btree.touch(node);
+
+            node = ((Node) node).getChild(childIndex);
+
+            depth++;
+
+            childIndex = node.isLeaf() ? -1 : ((Node) node).findChild(key);
+
+        }
+
+        // Clear any stale references below the leaf.
+        for (int i = depth + 1; i < size; i++) {
+
+            path[i] = null;
+
+        }
+
+        size = depth + 1;
+
+        return (Leaf) node;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the key lies between the first and the last
+     * key of the leaf (inclusive).
+     */
+    static private boolean spans(final Leaf leaf, final byte[] key) {
+
+        final IRaba keys = leaf.getKeys();
+
+        final int nkeys = keys.size();
+
+        if (nkeys == 0)
+            return false;
+
+        final int pos = keys.search(key);
+
+        if (pos >= 0)
+            return true;
+
+        final int insertPoint = -pos - 1;
+
+        return insertPoint > 0 && insertPoint < nkeys;
+
+    }
+
+    /**
+     * Return the index of the child of the node which spans the key iff that
+     * is an interior child (neither the first nor the last child) and
+     * <code>-1</code> otherwise.
+     */
+    static private int interiorChild(final Node node, final byte[] key) {
+
+        final int nkeys = node.getKeys().size();
+
+        if (nkeys < 2)
+            return -1;
+
+        final int childIndex = node.findChild(key);
+
+        if (childIndex > 0 && childIndex < nkeys)
+            return childIndex;
+
+        return -1;
+
+    }
+
+}
@@ -79,5 +79,18 @@ public interface IBTreeStatistics {
      * do not factor in the space requirements of nodes and leaves.
      */
     IBTreeUtilizationReport getUtilization();
+
+    /**
+     * Return the optional sketch of the key distribution. Unlike the other
+     * statistics, the sketch is approximate. It reports distinct counts for
+     * the leading key components and estimates the fraction of the tuples in
+     * a key range without descending the B+Tree.
+     * 
+     * @return The sketch -or- <code>null</code> if the index does not
+     *         maintain a key sketch.
+     * 
+     * @see IndexMetadata#getKeySketchFactory()
+     */
+    KeySketch getKeySketch();
     
 }
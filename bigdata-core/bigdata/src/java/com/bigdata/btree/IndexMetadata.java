@@ -327,6 +327,36 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
         
         String DEFAULT_BLOOM_FILTER = "false";
 
+        /**
+         * Optional property controls whether the bloom filter (if enabled by
+         * {@link #BLOOM_FILTER}) is a scalable bloom filter (default
+         * {@value #DEFAULT_SCALABLE_BLOOM_FILTER}). A scalable bloom filter
+         * adds stages as the index grows while keeping its target error rate,
+         * rather than being disabled once the index has grown past ~ 2M
+         * entries. This is appropriate for scale-up indices which are used
+         * for point tests, e.g., TERM2ID.
+         * 
+         * @see BloomFilterFactory#SCALABLE
+         */
+        String SCALABLE_BLOOM_FILTER = (com.bigdata.btree.BTree.class
+                .getPackage().getName()
+                + ".scalableBloomFilter").intern();
+
+        String DEFAULT_SCALABLE_BLOOM_FILTER = "false";
+
+        /**
+         * Optional property names the {@link KeySketchFactory} class used to
+         * maintain a {@link KeySketch} for a {@link BTree} (default none).
+         * The sketch provides distinct counts for the leading key components
+         * and an equi-depth histogram over the keys. The class MUST declare a
+         * public zero argument constructor.
+         * 
+         * @see IndexMetadata#getKeySketchFactory()
+         */
+        String KEY_SKETCH_FACTORY = (com.bigdata.btree.BTree.class
+                .getPackage().getName()
+                + ".keySketchFactory").intern();
+
 		/**
 		 * When raw record support is enabled for the index, this is the maximum
 		 * length of an index value which will be stored within a leaf before it
@@ -605,12 +635,18 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
 
         /**
          * An optional factory providing record-level compression for the nodes
-         * and leaves of an {@link IndexSegment} (default
-         * {@value #DEFAULT_BTREE_RECORD_COMPRESSOR_FACTORY}).
+         * and leaves of a {@link BTree} (default
+         * {@value #DEFAULT_BTREE_RECORD_COMPRESSOR_FACTORY}). The value is the
+         * name of a class implementing {@link IRecordCompressorFactory} with a
+         * public zero argument constructor, e.g.,
+         * {@link com.bigdata.io.compression.LZRecordCompressorFactory}. The
+         * coded nodes and leaves are compressed when they are written on the
+         * backing store and decompressed when they are read back.
+         * <p>
+         * Note: The factory is stored in the {@link IndexMetadata} and can not
+         * be changed once the index contains data.
          * 
          * @see #INDEX_SEGMENT_RECORD_COMPRESSOR_FACTORY
-         * 
-         * FIXME Record level compression support is not finished.
          */
         String BTREE_RECORD_COMPRESSOR_FACTORY = (BTree.class.getName()
                 + ".recordCompressorFactory").intern();
@@ -1084,6 +1120,7 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
     private boolean rawRecords;
     private short maxRecLen;
     private BloomFilterFactory bloomFilterFactory;
+    private KeySketchFactory keySketchFactory;
     private IOverflowHandler overflowHandler;
     private ISimpleSplitHandler splitHandler2;
     private AsynchronousIndexWriteConfiguration asynchronousIndexWriteConfiguration;
@@ -1696,6 +1733,33 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
         this.bloomFilterFactory = bloomFilterFactory;
         
     }
+
+    /**
+     * Return the object used to configure the optional {@link KeySketch} for
+     * a {@link BTree}. When <code>null</code> the index WILL NOT maintain a
+     * key sketch. {@link IndexSegment}s do not have a key sketch.
+     * 
+     * @see Options#KEY_SKETCH_FACTORY
+     */
+    public KeySketchFactory getKeySketchFactory() {
+
+        return keySketchFactory;
+
+    }
+
+    /**
+     * Set the key sketch factory. A key sketch added to an existing index
+     * only reflects the keys inserted after that change until
+     * {@link BTree#rebuildKeySketch()} is invoked.
+     * 
+     * @param keySketchFactory
+     *            The new value (may be null).
+     */
+    public void setKeySketchFactory(final KeySketchFactory keySketchFactory) {
+
+        this.keySketchFactory = keySketchFactory;
+
+    }
     
     /**
      * An optional object that may be used to inspect, and possibly operate on,
@@ -2171,8 +2235,19 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
                 indexManager, properties, namespace, Options.BLOOM_FILTER,
                 Options.DEFAULT_BLOOM_FILTER));
         
-        this.bloomFilterFactory = bloomFilter ? BloomFilterFactory.DEFAULT
+        final boolean scalableBloomFilter = Boolean.parseBoolean(getProperty(
+                indexManager, properties, namespace,
+                Options.SCALABLE_BLOOM_FILTER,
+                Options.DEFAULT_SCALABLE_BLOOM_FILTER));
+
+        this.bloomFilterFactory = bloomFilter ? (scalableBloomFilter ? BloomFilterFactory.SCALABLE
+                : BloomFilterFactory.DEFAULT)
                 : null;
+
+        // optional key sketch setup.
+        this.keySketchFactory = newInstance(getProperty(indexManager,
+                properties, namespace, Options.KEY_SKETCH_FACTORY, null/* default */),
+                KeySketchFactory.class);
   
         // Note: by default there is no overflow handler.
         this.overflowHandler = null;
@@ -2420,6 +2495,8 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
         sb.append(", maxRecLen=" + maxRecLen);
         sb.append(", bloomFilterFactory=" + (bloomFilterFactory == null ? "N/A"
                 : bloomFilterFactory.toString())); 
+        sb.append(", keySketchFactory=" + (keySketchFactory == null ? "N/A"
+                : keySketchFactory.toString()));
         sb.append(", overflowHandler="
                 + (overflowHandler == null ? "N/A" : overflowHandler.getClass()
                         .getName()));
@@ -2487,10 +2564,17 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
 	 */
     private static transient final int VERSION4 = 0x4;
 
+    /**
+     * This version adds the optional {@link #keySketchFactory}. Records
+     * without a {@link KeySketchFactory} are still written using
+     * {@link #VERSION4}.
+     */
+    private static transient final int VERSION5 = 0x5;
+
     /**
      * The version that will be serialized by this class.
      */
-    private static transient final int CURRENT_VERSION = VERSION4;
+    private static transient final int CURRENT_VERSION = VERSION5;
 
     /**
 	 * The actual version as set by {@link #readExternal(ObjectInput)} and
@@ -2512,7 +2596,7 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
         case VERSION2:
         case VERSION3:
         case VERSION4:
-//        case VERSION5:
+        case VERSION5:
 //        case VERSION6:
 //        case VERSION7:
 //        case VERSION8:
@@ -2633,11 +2717,22 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
 
 		}
 
+		if (version >= VERSION5) {
+
+			keySketchFactory = (KeySketchFactory) in.readObject();
+
+		} else {
+
+			keySketchFactory = null;
+
+		}
+
     }
 
     public void writeExternal(final ObjectOutput out) throws IOException {
     	
-    		final int version = CURRENT_VERSION;
+    		final int version = keySketchFactory == null ? VERSION4
+    				: CURRENT_VERSION;
         
         LongPacker.packLong(out, version);
 
@@ -2718,6 +2813,12 @@ public class IndexMetadata implements Serializable, Externalizable, Cloneable,
         // introduced in VERSION2
         out.writeObject(scatterSplitConfiguration);
 
+        if (version >= VERSION5) {
+
+            out.writeObject(keySketchFactory);
+
+        }
+
 //        if (version >= VERSION2) {
 //
 //            if (version >= VERSION3) {
@@ -310,7 +310,11 @@ public class IndexSegment extends AbstractBTree {//implements ILocalBTreeView {
                 ImmutableNodeFactory.INSTANCE,//
                 true, // always read-only
                 fileStore.getIndexMetadata(),//
-                fileStore.getIndexMetadata().getIndexSegmentRecordCompressorFactory()
+                /*
+                 * Note: The IndexSegmentBuilder does not apply record
+                 * compression, so the records are not decompressed.
+                 */
+                null// recordCompressorFactory
                 );
 
         // Type-safe reference to the backing store.
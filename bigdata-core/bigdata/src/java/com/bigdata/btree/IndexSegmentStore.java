@@ -759,12 +759,7 @@ public class IndexSegmentStore extends AbstractRawStore {
 
             try {
                 
-//              @see BLZG-1501 (remove LRUNexus)
-//                if (LRUNexus.INSTANCE != null) {
-//
-//                    LRUNexus.INSTANCE.deleteCache(getUUID());
-//
-//                }
+                NodeDataCache.deleteCache(this);
                 
             } catch (Throwable t) {
                 
@@ -0,0 +1,681 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.io.LongPacker;
+import com.bigdata.io.SerializerUtil;
+import com.bigdata.rawstore.IRawStore;
+import com.bigdata.util.BytesUtil;
+
+/**
+ * Lightweight statistics about the distribution of the keys of a
+ * {@link BTree}. The sketch is optional (see
+ * {@link IndexMetadata#getKeySketchFactory()}) and is persisted with the
+ * {@link Checkpoint} record in the same manner as the {@link BloomFilter}.
+ * There are two parts:
+ * <dl>
+ * <dt>Distinct counts</dt>
+ * <dd>One HyperLogLog sketch for each of the leading key prefixes comprised
+ * of the first <code>1..n</code> key components (P. Flajolet et al.,
+ * "HyperLogLog: the analysis of a near-optimal cardinality estimation
+ * algorithm", 2007). For a statement index, the first component of the SPO
+ * index gives the #of distinct subjects and the first two components give
+ * the #of distinct (subject, predicate) pairs. The registers are updated
+ * incrementally as new keys are inserted into the index. Since the sketch
+ * does not support removal, the estimates are an upper bound once tuples have
+ * been removed (see {@link BTree#rebuildKeySketch()}).</dd>
+ * <dt>Equi-depth histogram</dt>
+ * <dd>The keys at evenly spaced index positions, truncated to the sketched
+ * key components, divide the index into buckets having the same #of tuples.
+ * The histogram is rebuilt when the {@link BTree} is checkpointed once the
+ * #of index entries has changed by more than {@value #REBUILD_RATIO} of the
+ * #of entries for which it was built. Since the {@link BTree} tracks the #of
+ * tuples spanned by each child, this costs one descent per bucket.</dd>
+ * </dl>
+ * The estimates are approximate and MUST NOT be used where an exact answer is
+ * required. Updates are single-threaded (they are made by the writer on the
+ * mutable {@link BTree}) while concurrent readers may observe a slightly
+ * stale estimate.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ * 
+ * @see KeySketchFactory
+ */
+public class KeySketch implements Externalizable {
+
+    private static final transient Logger log = Logger
+            .getLogger(KeySketch.class);
+
+    /**
+     * The histogram is considered stale once the #of index entries differs
+     * from the #of index entries for which it was built by more than this
+     * ratio.
+     */
+    public static final transient double REBUILD_RATIO = 0.1;
+
+    /**
+     * Used to split the keys into their components (not persisted).
+     */
+    private transient KeySketchFactory factory;
+
+    /**
+     * The base two logarithm of the #of registers per component.
+     */
+    private int log2m;
+
+    /**
+     * The #of buckets for the histogram.
+     */
+    private int nbuckets;
+
+    /**
+     * The HyperLogLog registers, indexed by the #of leading key components
+     * minus one and then by the register index.
+     */
+    private byte[][] registers;
+
+    /**
+     * The histogram bucket boundaries (in key order) -or- <code>null</code>
+     * if the histogram has not been built.
+     */
+    private volatile byte[][] boundaries;
+
+    /**
+     * The #of index entries when the histogram was built -or- <code>-1L</code>
+     * if the histogram has not been built.
+     */
+    private volatile long histogramEntryCount = -1L;
+
+    /**
+     * De-serialization ctor.
+     */
+    public KeySketch() {
+
+    }
+
+    /**
+     * Create an empty sketch.
+     * 
+     * @param factory
+     *            The configuration.
+     * 
+     * @see KeySketchFactory#newKeySketch()
+     */
+    KeySketch(final KeySketchFactory factory) {
+
+        if (factory == null)
+            throw new IllegalArgumentException();
+
+        this.factory = factory;
+
+        this.log2m = factory.log2m;
+
+        this.nbuckets = factory.nbuckets;
+
+        this.registers = new byte[factory.ncomponents][1 << log2m];
+
+    }
+
+    /**
+     * The #of leading key components for which distinct counts are
+     * maintained.
+     */
+    public int getComponentCount() {
+
+        return registers.length;
+
+    }
+
+    /**
+     * Update the distinct counts for a key which was inserted into the index.
+     * 
+     * @param key
+     *            The key.
+     */
+    public void add(final byte[] key) {
+
+        /*
+         * The prefixes are nested, so a single running hash over the key
+         * bytes is finalized at each component boundary.
+         */
+        final int m = 1 << log2m;
+
+        long h = 0xcbf29ce484222325L;
+
+        int off = 0;
+
+        for (int i = 0; i < registers.length; i++) {
+
+            final int len = factory.getComponentLength(key, off, i);
+
+            if (len < 0 || off + len > key.length)
+                break;
+
+            for (int j = off; j < off + len; j++) {
+
+                h = (h ^ (key[j] & 0xff)) * 0x100000001b3L;
+
+            }
+
+            off += len;
+
+            final long x = mix(h ^ off);
+
+            final int index = (int) (x >>> (64 - log2m));
+
+            // Note: The low bit bounds the rank at (64 - log2m + 1).
+            final int rank = Long.numberOfLeadingZeros((x << log2m)
+                    | (1L << (log2m - 1))) + 1;
+
+            assert index < m;
+
+            if (rank > registers[i][index]) {
+
+                registers[i][index] = (byte) rank;
+
+                dirty = true;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * The finalization step of the MurmurHash3 64-bit hash function.
+     */
+    static private long mix(long x) {
+
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+
+        return x;
+
+    }
+
+    /**
+     * Return the estimated #of distinct key prefixes comprised of the given
+     * #of leading key components. For example, <code>1</code> is the estimated
+     * #of distinct values for the first key component.
+     * 
+     * @param ncomponents
+     *            The #of leading key components in [1:
+     *            {@link #getComponentCount()}].
+     * 
+     * @return The estimated distinct count.
+     * 
+     * @throws IllegalArgumentException
+     *             if <i>ncomponents</i> is out of range.
+     */
+    public long getDistinctCount(final int ncomponents) {
+
+        if (ncomponents < 1 || ncomponents > registers.length)
+            throw new IllegalArgumentException();
+
+        final byte[] a = registers[ncomponents - 1];
+
+        final int m = a.length;
+
+        double sum = 0d;
+
+        int nzero = 0;
+
+        for (int i = 0; i < m; i++) {
+
+            sum += 1d / (1L << a[i]);
+
+            if (a[i] == 0)
+                nzero++;
+
+        }
+
+        final double alpha;
+        switch (m) {
+        case 16:
+            alpha = 0.673;
+            break;
+        case 32:
+            alpha = 0.697;
+            break;
+        case 64:
+            alpha = 0.709;
+            break;
+        default:
+            alpha = 0.7213 / (1d + 1.079 / m);
+        }
+
+        final double estimate = alpha * m * m / sum;
+
+        if (estimate <= 2.5 * m && nzero != 0) {
+
+            // Small range correction (linear counting).
+            return Math.round(m * Math.log((double) m / nzero));
+
+        }
+
+        // Note: No large range correction is required for a 64-bit hash.
+        return Math.round(estimate);
+
+    }
+
+    /**
+     * The #of index entries when the histogram was last built -or-
+     * <code>-1L</code> if the histogram has not been built.
+     */
+    public long getHistogramEntryCount() {
+
+        return histogramEntryCount;
+
+    }
+
+    /**
+     * Return <code>true</code> if the histogram has not been built or if the
+     * #of index entries has changed by more than {@value #REBUILD_RATIO} since
+     * it was built.
+     * 
+     * @param entryCount
+     *            The current #of index entries.
+     */
+    public boolean isHistogramStale(final long entryCount) {
+
+        final long n = histogramEntryCount;
+
+        return n == -1L || Math.abs(entryCount - n) > n * REBUILD_RATIO;
+
+    }
+
+    /**
+     * Rebuild the histogram from the keys at evenly spaced index positions.
+     * 
+     * @param btree
+     *            The index.
+     */
+    public void rebuildHistogram(final AbstractBTree btree) {
+
+        final long n = btree.getEntryCount();
+
+        final int k = (int) Math.min(nbuckets, n);
+
+        final byte[][] a = new byte[Math.max(0, k - 1)][];
+
+        for (int i = 1; i < k; i++) {
+
+            a[i - 1] = getPrefix(btree.keyAt(i * n / k));
+
+        }
+
+        boundaries = a;
+
+        histogramEntryCount = n;
+
+        dirty = true;
+
+        if (log.isDebugEnabled())
+            log.debug("Rebuilt histogram: entryCount=" + n + ", nbuckets="
+                    + k);
+
+    }
+
+    /**
+     * Return the prefix of the key comprised of the sketched key components
+     * (or the entire key if it can not be split into components).
+     */
+    private byte[] getPrefix(final byte[] key) {
+
+        int off = 0;
+
+        for (int i = 0; i < registers.length; i++) {
+
+            final int len = factory.getComponentLength(key, off, i);
+
+            if (len < 0 || off + len > key.length)
+                break;
+
+            off += len;
+
+        }
+
+        if (off == 0 || off == key.length)
+            return key;
+
+        final byte[] prefix = new byte[off];
+
+        System.arraycopy(key, 0, prefix, 0, off);
+
+        return prefix;
+
+    }
+
+    /**
+     * Return the estimated fraction of the index entries in the half-open key
+     * range. Multiply by the #of index entries to estimate the range count.
+     * <p>
+     * The key range spans the buckets between the buckets in which
+     * <i>fromKey</i> and <i>toKey</i> fall. The estimate is the midpoint
+     * between the fraction of the index entries in the buckets which lie
+     * entirely within the key range and the fraction in all buckets which the
+     * key range touches.
+     * 
+     * @param fromKey
+     *            The inclusive lower bound (optional).
+     * @param toKey
+     *            The exclusive upper bound (optional).
+     * 
+     * @return The estimated fraction in [0:1] -or- <code>-1d</code> if the
+     *         histogram has not been built.
+     */
+    public double getRangeFraction(final byte[] fromKey, final byte[] toKey) {
+
+        final byte[][] a = boundaries;
+
+        final long n = histogramEntryCount;
+
+        if (a == null || n == -1L)
+            return -1d;
+
+        if (n == 0L)
+            return 0d;
+
+        if (fromKey != null && toKey != null
+                && BytesUtil.compareBytes(fromKey, toKey) >= 0) {
+
+            // Empty key range.
+            return 0d;
+
+        }
+
+        final int k = a.length + 1;
+
+        // The buckets in which the fromKey and the toKey fall.
+        final int lo = fromKey == null ? 0 : countLessThan(a, fromKey);
+
+        final int hi = toKey == null ? a.length : countLessThan(a, toKey);
+
+        // All buckets touched by the key range.
+        final int upper = hi - lo + 1;
+
+        // The buckets which lie entirely within the key range.
+        final int lower = Math.max(0, upper - (fromKey == null ? 0 : 1)
+                - (toKey == null ? 0 : 1));
+
+        return Math.min(1d, (lower + upper) / (2d * k));
+
+    }
+
+    /**
+     * Return the #of boundaries which are strictly less than the key.
+     */
+    static private int countLessThan(final byte[][] a, final byte[] key) {
+
+        int low = 0;
+
+        int high = a.length;
+
+        while (low < high) {
+
+            final int mid = (low + high) >>> 1;
+
+            if (BytesUtil.compareBytes(a[mid], key) < 0) {
+
+                low = mid + 1;
+
+            } else {
+
+                high = mid;
+
+            }
+
+        }
+
+        return low;
+
+    }
+
+    public String toString() {
+
+        final StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+
+        sb.append("{ ncomponents=" + registers.length);
+        sb.append(", log2m=" + log2m);
+        sb.append(", distinct=[");
+        for (int i = 1; i <= registers.length; i++) {
+            if (i > 1)
+                sb.append(",");
+            sb.append(getDistinctCount(i));
+        }
+        sb.append("]");
+        sb.append(", histogramEntryCount=" + histogramEntryCount);
+        if (dirty)
+            sb.append(", dirty");
+        if (addr != 0L)
+            sb.append(", addr=" + addr);
+        sb.append("}");
+
+        return sb.toString();
+
+    }
+
+    /*
+     * Persistence protocol.
+     */
+
+    /**
+     * Address that can be used to read this object from the store.
+     * <p>
+     * Note: This is not persisted since we do not have the address until after
+     * we have written out the state of this record. However the value is
+     * written into each {@link Checkpoint} record.
+     */
+    private transient long addr;
+
+    /**
+     * Set when the registers are updated or the histogram is rebuilt and
+     * cleared when the sketch is written on the store.
+     */
+    private transient boolean dirty = false;
+
+    /**
+     * Address that can be used to read this object from the store.
+     * <p>
+     * Note: This is not a persistent property. However the value is set when
+     * the record is read from, or written on, the store.
+     */
+    public final long getAddr() {
+
+        return addr;
+
+    }
+
+    /**
+     * Read a sketch from the store.
+     * 
+     * @param store
+     *            The store.
+     * @param addr
+     *            The address of the sketch record.
+     * @param factory
+     *            Used to split the keys into components.
+     * 
+     * @return The de-serialized sketch. The address from which it was loaded
+     *         is set on the sketch as a side-effect.
+     */
+    public static KeySketch read(final IRawStore store, final long addr,
+            final KeySketchFactory factory) {
+
+        if (factory == null)
+            throw new IllegalArgumentException();
+
+        final KeySketch sketch = (KeySketch) SerializerUtil.deserialize(store
+                .read(addr));
+
+        sketch.addr = addr;
+
+        sketch.factory = factory;
+
+        if (log.isInfoEnabled())
+            log.info("Read key sketch: bytesOnDisk="
+                    + store.getByteCount(addr) + ": " + sketch);
+
+        return sketch;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the state of the sketch has been modified
+     * but not yet written onto the store.
+     */
+    final public boolean isDirty() {
+
+        return dirty;
+
+    }
+
+    /**
+     * Writes the sketch on the store and clears the {@link #isDirty()} flag.
+     * The address is set on the sketch as a side-effect.
+     * 
+     * @param store
+     *            The store.
+     * 
+     * @return The address on which it was written.
+     * 
+     * @throws IllegalStateException
+     *             if the sketch is not dirty.
+     */
+    public long write(final IRawStore store) {
+
+        if (!dirty)
+            throw new IllegalStateException();
+
+        addr = store.write(ByteBuffer.wrap(SerializerUtil.serialize(this)));
+
+        dirty = false;
+
+        if (log.isInfoEnabled())
+            log.info("Wrote key sketch: bytesOnDisk="
+                    + store.getByteCount(addr) + ": " + this);
+
+        return addr;
+
+    }
+
+    private final static transient int VERSION0 = 0x0;
+
+    public void readExternal(final ObjectInput in) throws IOException,
+            ClassNotFoundException {
+
+        final int version = (int) LongPacker.unpackLong(in);
+
+        if (version != VERSION0)
+            throw new IOException("Unknown version=" + version);
+
+        log2m = (int) LongPacker.unpackLong(in);
+
+        nbuckets = (int) LongPacker.unpackLong(in);
+
+        final int ncomponents = (int) LongPacker.unpackLong(in);
+
+        registers = new byte[ncomponents][1 << log2m];
+
+        for (int i = 0; i < ncomponents; i++) {
+
+            in.readFully(registers[i]);
+
+        }
+
+        histogramEntryCount = in.readLong();
+
+        if (histogramEntryCount != -1L) {
+
+            final byte[][] a = new byte[(int) LongPacker.unpackLong(in)][];
+
+            for (int i = 0; i < a.length; i++) {
+
+                a[i] = new byte[(int) LongPacker.unpackLong(in)];
+
+                in.readFully(a[i]);
+
+            }
+
+            boundaries = a;
+
+        }
+
+        dirty = false;
+
+        addr = 0L;
+
+    }
+
+    public void writeExternal(final ObjectOutput out) throws IOException {
+
+        LongPacker.packLong(out, VERSION0);
+
+        LongPacker.packLong(out, log2m);
+
+        LongPacker.packLong(out, nbuckets);
+
+        LongPacker.packLong(out, registers.length);
+
+        for (int i = 0; i < registers.length; i++) {
+
+            out.write(registers[i]);
+
+        }
+
+        // Note: read the boundaries first since the fields are volatile.
+        final byte[][] a = boundaries;
+
+        final long n = a == null ? -1L : histogramEntryCount;
+
+        out.writeLong(n);
+
+        if (n != -1L) {
+
+            LongPacker.packLong(out, a.length);
+
+            for (int i = 0; i < a.length; i++) {
+
+                LongPacker.packLong(out, a[i].length);
+
+                out.write(a[i]);
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.io.Serializable;
+
+/**
+ * Configures the optional {@link KeySketch} for a {@link BTree} and defines how
+ * the keys of that index are split into their leading components.
+ * <p>
+ * The default implementation treats each key as a sequence of fixed length
+ * components (e.g., the <code>long</code>s of a composite key). Indices whose
+ * keys have variable length components (such as the statement indices, whose
+ * keys are a sequence of variable length term identifiers) override
+ * {@link #getComponentLength(byte[], int, int)}. Subclasses MUST declare a
+ * public zero argument constructor so they may be specified using
+ * {@link IndexMetadata.Options#KEY_SKETCH_FACTORY}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ * 
+ * @see IndexMetadata#getKeySketchFactory()
+ */
+public class KeySketchFactory implements Serializable {
+
+    private static final long serialVersionUID = 6128459300384212655L;
+
+    /**
+     * The default #of histogram buckets {@value #DEFAULT_BUCKETS}.
+     */
+    public static final transient int DEFAULT_BUCKETS = 64;
+
+    /**
+     * The default #of HyperLogLog registers is <code>2^</code>
+     * {@value #DEFAULT_LOG2M}. With 1024 registers (1k per component) the
+     * standard error of a distinct count estimate is ~3%.
+     */
+    public static final transient int DEFAULT_LOG2M = 10;
+
+    /**
+     * The default #of leading key components for which distinct counts are
+     * maintained {@value #DEFAULT_COMPONENTS}.
+     */
+    public static final transient int DEFAULT_COMPONENTS = 3;
+
+    /**
+     * The default byte length of a key component
+     * {@value #DEFAULT_COMPONENT_LENGTH}.
+     */
+    public static final transient int DEFAULT_COMPONENT_LENGTH = 8;
+
+    /**
+     * The maximum #of leading key components {@value #MAX_COMPONENTS}.
+     */
+    public static final transient int MAX_COMPONENTS = 8;
+
+    /**
+     * The #of buckets in the equi-depth histogram.
+     */
+    public final int nbuckets;
+
+    /**
+     * The base two logarithm of the #of HyperLogLog registers per component.
+     */
+    public final int log2m;
+
+    /**
+     * The #of leading key components for which distinct counts are
+     * maintained.
+     */
+    public final int ncomponents;
+
+    /**
+     * The byte length of each key component (used by the default
+     * implementation of {@link #getComponentLength(byte[], int, int)}).
+     */
+    public final int componentLength;
+
+    /**
+     * Default configuration.
+     */
+    public KeySketchFactory() {
+
+        this(DEFAULT_BUCKETS, DEFAULT_LOG2M, DEFAULT_COMPONENTS,
+                DEFAULT_COMPONENT_LENGTH);
+
+    }
+
+    /**
+     * Core impl.
+     * 
+     * @param nbuckets
+     *            The #of buckets in the equi-depth histogram (at least 2).
+     * @param log2m
+     *            The base two logarithm of the #of HyperLogLog registers per
+     *            component in [4:16].
+     * @param ncomponents
+     *            The #of leading key components for which distinct counts are
+     *            maintained in [1:{@link #MAX_COMPONENTS}].
+     * @param componentLength
+     *            The byte length of each key component (positive).
+     * 
+     * @throws IllegalArgumentException
+     *             if any argument is out of range.
+     */
+    public KeySketchFactory(final int nbuckets, final int log2m,
+            final int ncomponents, final int componentLength) {
+
+        if (nbuckets < 2)
+            throw new IllegalArgumentException();
+        if (log2m < 4 || log2m > 16)
+            throw new IllegalArgumentException();
+        if (ncomponents < 1 || ncomponents > MAX_COMPONENTS)
+            throw new IllegalArgumentException();
+        if (componentLength <= 0)
+            throw new IllegalArgumentException();
+
+        this.nbuckets = nbuckets;
+
+        this.log2m = log2m;
+
+        this.ncomponents = ncomponents;
+
+        this.componentLength = componentLength;
+
+    }
+
+    /**
+     * Return a new (empty) sketch.
+     */
+    public KeySketch newKeySketch() {
+
+        return new KeySketch(this);
+
+    }
+
+    /**
+     * Return the byte length of the key component which starts at the given
+     * offset. The default implementation returns {@link #componentLength}.
+     * 
+     * @param key
+     *            The key.
+     * @param off
+     *            The offset of the component in the key.
+     * @param component
+     *            The index of the component (origin zero).
+     * 
+     * @return The byte length of that component -or- <code>-1</code> if the
+     *         remainder of the key can not be split into a component, in
+     *         which case distinct counts are not maintained for this or any
+     *         later component of that key.
+     */
+    protected int getComponentLength(final byte[] key, final int off,
+            final int component) {
+
+        return off + componentLength <= key.length ? componentLength : -1;
+
+    }
+
+    public String toString() {
+
+        final StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+
+        sb.append("{ nbuckets=" + nbuckets);
+        sb.append(", log2m=" + log2m);
+        sb.append(", ncomponents=" + ncomponents);
+        sb.append(", componentLength=" + componentLength);
+        sb.append("}");
+
+        return sb.toString();
+
+    }
+
+}
@@ -42,6 +42,7 @@ import com.bigdata.btree.raba.MutableKeyBuffer;
 import com.bigdata.btree.raba.MutableValueBuffer;
 import com.bigdata.io.AbstractFixedByteArrayBuffer;
 import com.bigdata.journal.ITransactionService;
+import com.bigdata.rawstore.IAddressFilter;
 import com.bigdata.rawstore.IRawStore;
 import com.bigdata.util.BytesUtil;
 
@@ -310,6 +311,80 @@ public class Leaf extends AbstractNode<Leaf> implements ILeafData, IRawRecordAcc
         
     }
 
+    /**
+     * Return <code>true</code> iff this leaf references a raw record whose
+     * address is accepted by the filter.
+     * 
+     * @see #relocateRawRecords(IAddressFilter, long)
+     */
+    boolean hasRawRecord(final IAddressFilter filter) {
+
+        if (!hasRawRecords())
+            return false;
+
+        final int nkeys = getKeyCount();
+
+        for (int i = 0; i < nkeys; i++) {
+
+            final long addr = getRawRecord(i);
+
+            if (addr != IRawStore.NULL && filter.accept(addr))
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Relocate the raw records referenced by this leaf whose addresses are
+     * accepted by the filter. Each such record is copied onto a new address,
+     * the leaf is updated to reference the copy and the old record is
+     * recycled. The keys, version timestamps and delete markers are not
+     * changed.
+     * <p>
+     * Note: The leaf MUST be mutable.
+     * 
+     * @param filter
+     *            The filter.
+     * @param max
+     *            The maximum #of raw records to relocate.
+     * 
+     * @return The #of raw records relocated.
+     */
+    int relocateRawRecords(final IAddressFilter filter, final long max) {
+
+        assert dirty;
+
+        // Tunnel through to the mutable object.
+        final MutableLeafData data = (MutableLeafData) this.data;
+
+        final int nkeys = getKeyCount();
+
+        int n = 0;
+
+        for (int i = 0; i < nkeys && n < max; i++) {
+
+            final long oaddr = getRawRecord(i);
+
+            if (oaddr == IRawStore.NULL || !filter.accept(oaddr))
+                continue;
+
+            final long naddr = btree.writeRawRecord(getValue(i));
+
+            data.vals.values[i] = ((BTree) btree).encodeRecordAddr(naddr);
+
+            btree.deleteRawRecord(oaddr);
+
+            n++;
+
+        }
+
+        return n;
+
+    }
+
     final public boolean isDoubleLinked() {
         
         return data.isDoubleLinked();
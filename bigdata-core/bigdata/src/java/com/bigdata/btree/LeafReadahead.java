@@ -0,0 +1,499 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.data.IAbstractNodeData;
+import com.bigdata.counters.CAT;
+import com.bigdata.journal.AbstractJournal;
+import com.bigdata.journal.RWStrategy;
+import com.bigdata.rawstore.IRawStore;
+import com.bigdata.util.concurrent.LatchedExecutor;
+
+/**
+ * Asynchronous readahead of leaves for long range scans on a read-only
+ * {@link BTree} backed by an RWStore journal. Unlike the
+ * {@link IndexSegmentMultiBlockIterator}, the leaves of a {@link BTree} are
+ * not contiguous on the backing file and there are no prior/next leaf
+ * addresses, so a scan through a {@link BTree.LeafCursor} issues one random
+ * read per leaf. Once a cursor has visited several leaves in sequence, the
+ * addresses of the upcoming children of the parent {@link Node} are known.
+ * Those records are read and decoded on a thread pool, in order by their
+ * offset on the file, while the cursor visits the current leaf. The readahead
+ * window starts small and doubles each time the cursor continues in sequence
+ * (up to {@link Options#MAX_LEAVES}), so short scans and point lookups do not
+ * pay for reads they will not use.
+ * <p>
+ * The decoded data records are held until they are taken by
+ * {@link BTree#readNodeOrLeaf(long)}. If the cursor needs a record whose read
+ * is still queued, then the read is run by the cursor's thread. Readahead is
+ * restricted to read-only {@link BTree}s because the address of a record is
+ * only stable while the commit point is protected from recycling.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class LeafReadahead {
+
+    private static final transient Logger log = Logger
+            .getLogger(LeafReadahead.class);
+
+    /**
+     * Options for the {@link LeafReadahead}. These options are specified
+     * using JVM-wide System properties.
+     */
+    public interface Options {
+
+        /**
+         * The maximum #of leaves which will be read ahead of a cursor (default
+         * {@value #DEFAULT_MAX_LEAVES}). Readahead is disabled when ZERO (0).
+         */
+        String MAX_LEAVES = LeafReadahead.class.getName() + ".maxLeaves";
+
+        String DEFAULT_MAX_LEAVES = "16";
+
+        /**
+         * The #of leaves which a cursor must visit in sequence before
+         * readahead begins (default {@value #DEFAULT_MIN_SEQUENTIAL}).
+         */
+        String MIN_SEQUENTIAL = LeafReadahead.class.getName()
+                + ".minSequential";
+
+        String DEFAULT_MIN_SEQUENTIAL = "3";
+
+        /**
+         * The maximum #of readahead tasks which may execute concurrently for
+         * a given {@link BTree} (default {@value #DEFAULT_MAX_PARALLEL}).
+         */
+        String MAX_PARALLEL = LeafReadahead.class.getName() + ".maxParallel";
+
+        String DEFAULT_MAX_PARALLEL = "2";
+
+    }
+
+    static final int MAX_LEAVES = Integer.parseInt(System.getProperty(
+            Options.MAX_LEAVES, Options.DEFAULT_MAX_LEAVES));
+
+    static final int MIN_SEQUENTIAL = Integer.parseInt(System.getProperty(
+            Options.MIN_SEQUENTIAL, Options.DEFAULT_MIN_SEQUENTIAL));
+
+    static final int MAX_PARALLEL = Integer.parseInt(System.getProperty(
+            Options.MAX_PARALLEL, Options.DEFAULT_MAX_PARALLEL));
+
+    /**
+     * The index whose leaves are read.
+     */
+    private final AbstractBTree btree;
+
+    /**
+     * Used to run the readahead tasks.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum #of leaves read ahead of a cursor.
+     */
+    private final int maxLeaves;
+
+    /**
+     * The #of leaves a cursor must visit in sequence before readahead begins.
+     */
+    private final int minSequential;
+
+    /**
+     * The maximum #of records which may be pending. This bounds the memory
+     * held by records which were read ahead for cursors which were then
+     * closed.
+     */
+    private final int capacity;
+
+    /**
+     * The pending reads (and the records which have been read but not yet
+     * taken), by address.
+     */
+    private final ConcurrentHashMap<Long, FutureTask<IAbstractNodeData>> pending;
+
+    /**
+     * The #of records for which a read was issued.
+     */
+    private final CAT readCount = new CAT();
+
+    /**
+     * The #of records which were taken by {@link #take(long)}.
+     */
+    private final CAT hitCount = new CAT();
+
+    /**
+     * Return a {@link LeafReadahead} for the {@link BTree} -or-
+     * <code>null</code> if readahead is disabled or does not apply to that
+     * {@link BTree}.
+     */
+    static LeafReadahead newInstance(final BTree btree) {
+
+        if (MAX_LEAVES <= 0 || !btree.isReadOnly())
+            return null;
+
+        final IRawStore store = btree.getStore();
+
+        if (!(store instanceof AbstractJournal))
+            return null;
+
+        final AbstractJournal journal = (AbstractJournal) store;
+
+        if (!(journal.getBufferStrategy() instanceof RWStrategy))
+            return null;
+
+        return new LeafReadahead(btree, new LatchedExecutor(journal
+                .getExecutorService(), MAX_PARALLEL), MAX_LEAVES,
+                MIN_SEQUENTIAL);
+
+    }
+
+    /**
+     * @param btree
+     *            The index whose leaves are read.
+     * @param executor
+     *            Used to run the readahead tasks.
+     * @param maxLeaves
+     *            The maximum #of leaves read ahead of a cursor.
+     * @param minSequential
+     *            The #of leaves a cursor must visit in sequence before
+     *            readahead begins.
+     */
+    LeafReadahead(final AbstractBTree btree, final Executor executor,
+            final int maxLeaves, final int minSequential) {
+
+        if (btree == null)
+            throw new IllegalArgumentException();
+
+        if (executor == null)
+            throw new IllegalArgumentException();
+
+        if (maxLeaves <= 0)
+            throw new IllegalArgumentException();
+
+        if (minSequential <= 0)
+            throw new IllegalArgumentException();
+
+        this.btree = btree;
+
+        this.executor = executor;
+
+        this.maxLeaves = maxLeaves;
+
+        this.minSequential = minSequential;
+
+        this.capacity = maxLeaves * 4;
+
+        this.pending = new ConcurrentHashMap<Long, FutureTask<IAbstractNodeData>>();
+
+    }
+
+    /**
+     * The #of records for which a read was issued.
+     */
+    public long getReadCount() {
+
+        return readCount.get();
+
+    }
+
+    /**
+     * The #of records which were read ahead and then used.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+
+    }
+
+    /**
+     * Return the data record for the address if it was read ahead. If the
+     * read was issued but has not started, then it is run in the caller's
+     * thread. If it is running, then the caller waits for it.
+     * 
+     * @param addr
+     *            The address of a node or leaf.
+     * 
+     * @return The data record -or- <code>null</code> if the record was not
+     *         read ahead or if the read failed (in which case the caller
+     *         should read the record itself).
+     */
+    IAbstractNodeData take(final long addr) {
+
+        final FutureTask<IAbstractNodeData> ft = pending.remove(addr);
+
+        if (ft == null)
+            return null;
+
+        // NOP if the read is running or done.
+        ft.run();
+
+        try {
+
+            final IAbstractNodeData data = ft.get();
+
+            hitCount.increment();
+
+            return data;
+
+        } catch (InterruptedException ex) {
+
+            throw new RuntimeException(ex);
+
+        } catch (ExecutionException ex) {
+
+            if (log.isDebugEnabled())
+                log.debug("Readahead failed: addr=" + addr, ex);
+
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Issue reads for the children of the node in the given index range which
+     * are not already materialized or pending. The reads are run by a single
+     * task, in order by their offset on the backing file.
+     * 
+     * @param node
+     *            The parent node.
+     * @param fromIndex
+     *            The index of the first child to read.
+     * @param toIndex
+     *            The index of the first child which is not read.
+     */
+    void readahead(final Node node, final int fromIndex, final int toIndex) {
+
+        if (pending.size() + (toIndex - fromIndex) > capacity) {
+
+            /*
+             * Discard records which were read ahead for cursors which did not
+             * use them. The reads for a running cursor will be issued again.
+             */
+
+            pending.clear();
+
+        }
+
+        final IRawStore store = btree.getStore();
+
+        final Long[] addrs = new Long[toIndex - fromIndex];
+
+        final FutureTask<?>[] tasks = new FutureTask<?>[addrs.length];
+
+        int n = 0;
+
+        for (int i = fromIndex; i < toIndex; i++) {
+
+            if (node.getChildRef(i) != null && node.getChildRef(i).get() != null) {
+
+                // Already materialized.
+                continue;
+
+            }
+
+            final long addr = node.getChildAddr(i);
+
+            if (addr == IRawStore.NULL || pending.containsKey(addr))
+                continue;
+
+            addrs[n++] = addr;
+
+        }
+
+        if (n == 0)
+            return;
+
+        // Order the reads by their offset on the backing file.
+        Arrays.sort(addrs, 0, n, new Comparator<Long>() {
+            @Override
+            public int compare(final Long a, final Long b) {
+                final long x = store.getPhysicalAddress(a);
+                final long y = store.getPhysicalAddress(b);
+                return x < y ? -1 : x > y ? 1 : 0;
+            }
+        });
+
+        int m = 0;
+
+        for (int i = 0; i < n; i++) {
+
+            final long addr = addrs[i];
+
+            final FutureTask<IAbstractNodeData> ft = new FutureTask<IAbstractNodeData>(
+                    new Callable<IAbstractNodeData>() {
+                        @Override
+                        public IAbstractNodeData call() throws Exception {
+                            return btree.readNodeData(addr);
+                        }
+                    });
+
+            if (pending.putIfAbsent(addr, ft) == null) {
+
+                tasks[m++] = ft;
+
+            }
+
+        }
+
+        if (m == 0)
+            return;
+
+        readCount.add(m);
+
+        final int ntasks = m;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ntasks; i++) {
+                    // NOP if the cursor already ran the read.
+                    tasks[i].run();
+                }
+            }
+        });
+
+    }
+
+    /**
+     * Return a new object which detects sequential leaf traversal by a cursor
+     * and issues readahead for that cursor.
+     */
+    Sequence newSequence() {
+
+        return new Sequence();
+
+    }
+
+    /**
+     * Tracks the leaves visited by a cursor. The cursor reports each move to
+     * the next leaf and the {@link Sequence} issues readahead once the cursor
+     * has visited enough leaves in sequence. Any other move by the cursor
+     * (seek, prior, first, last) resets the {@link Sequence}.
+     * <p>
+     * Note: Not thread-safe (neither is the cursor).
+     */
+    class Sequence {
+
+        /**
+         * The #of leaves visited in sequence.
+         */
+        private int nsequential = 0;
+
+        /**
+         * The parent for which readahead was last issued.
+         */
+        private Node parent = null;
+
+        /**
+         * The index of the first child of the {@link #parent} for which
+         * readahead has not been issued.
+         */
+        private int limit = 0;
+
+        /**
+         * The current readahead window (#of leaves).
+         */
+        private int window = Math.min(2, maxLeaves);
+
+        private Sequence() {
+        }
+
+        /**
+         * Reset the sequence.
+         */
+        void reset() {
+
+            nsequential = 0;
+
+            parent = null;
+
+            limit = 0;
+
+            window = Math.min(2, maxLeaves);
+
+        }
+
+        /**
+         * Note a move to the next leaf.
+         * 
+         * @param leaf
+         *            The leaf on which the cursor is now positioned.
+         */
+        void next(final Leaf leaf) {
+
+            if (++nsequential < minSequential)
+                return;
+
+            final Node p = leaf.getParent();
+
+            if (p == null)
+                return;
+
+            final int index = p.getIndexOf(leaf);
+
+            if (p != parent) {
+
+                parent = p;
+
+                limit = index + 1;
+
+            }
+
+            if (index + window / 2 < limit) {
+
+                // Enough of the window remains ahead of the cursor.
+                return;
+
+            }
+
+            final int from = Math.max(limit, index + 1);
+
+            final int to = Math.min(p.getChildCount(), index + 1 + window);
+
+            if (from < to) {
+
+                readahead(p, from, to);
+
+            }
+
+            limit = Math.max(limit, to);
+
+            window = Math.min(window * 2, maxLeaves);
+
+        }
+
+    }
+
+}
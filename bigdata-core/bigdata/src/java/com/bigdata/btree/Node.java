@@ -2941,11 +2941,21 @@ public class Node extends AbstractNode<Node> implements INodeData {
     public Iterator<AbstractNode> postOrderIterator(final byte[] fromKey,
             final byte[] toKey) {
 
+        /*
+         * Detects sequential leaf traversal in order to read leaves ahead of
+         * the iterator (if enabled for the B+Tree).
+         */
+        final LeafReadahead readahead = btree instanceof BTree ? ((BTree) btree)
+                .getLeafReadahead() : null;
+
+        final LeafReadahead.Sequence sequence = readahead == null ? null
+                : readahead.newSequence();
+
         /*
          * Iterator append this node to the iterator in the post-order position.
          */
 
-        return new Striterator(postOrderIterator2(fromKey, toKey))
+        return new Striterator(postOrderIterator2(fromKey, toKey, sequence))
                 .append(new SingleValueIterator(this));
 
     }
@@ -3039,10 +3049,14 @@ public class Node extends AbstractNode<Node> implements INodeData {
     /**
      * Visits the children (recursively) using post-order traversal, but does
      * NOT visit this node.
+     * 
+     * @param sequence
+     *            Notified as each leaf is visited in order to issue readahead
+     *            (optional).
      */
     @SuppressWarnings("unchecked")
     private Iterator<AbstractNode> postOrderIterator2(final byte[] fromKey,
-            final byte[] toKey) {
+            final byte[] toKey, final LeafReadahead.Sequence sequence) {
 
         /*
          * Iterator visits the direct children, expanding them in turn with a
@@ -3091,7 +3105,7 @@ public class Node extends AbstractNode<Node> implements INodeData {
                             // BTree.log.debug("child is node: " + child);
                             final Striterator itr = new Striterator(
                                     ((Node) child).postOrderIterator2(fromKey,
-                                            toKey));
+                                            toKey, sequence));
 
                             // append this node in post-order position.
                             itr.append(new SingleValueIterator(child));
@@ -3126,6 +3140,13 @@ public class Node extends AbstractNode<Node> implements INodeData {
                              */
 
                             // BTree.log.debug("child is leaf: " + child);
+
+                            if (sequence != null) {
+
+                                // Read ahead of the iterator.
+                                sequence.next((Leaf) child);
+
+                            }
                             
                             // Visit the leaf itself.
                             return new SingleValueIterator(child);
@@ -0,0 +1,734 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.data.IAbstractNodeData;
+import com.bigdata.counters.CAT;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.journal.AbstractJournal;
+import com.bigdata.rawstore.IRawStore;
+
+/**
+ * A JVM-wide, memory bounded cache of the decoded (coded, read-only)
+ * {@link IAbstractNodeData} records for the nodes and leaves of the
+ * {@link BTree}s and {@link IndexSegment}s on the backing stores. The cache is
+ * partitioned by the backing store. Each partition is a {@link StoreCache}
+ * which maps the address of a node or leaf onto its data record. All
+ * {@link AbstractBTree} instances on the same {@link IRawStore} object share
+ * the same {@link StoreCache}, so read-only views of different commit points
+ * decode each immutable node or leaf at most once while it remains in the
+ * cache. The data records are wrapped as {@link Node}s and {@link Leaf}s by
+ * each {@link AbstractBTree} which reads them.
+ * <p>
+ * The cache is bounded by the total #of bytes in the coded data records. It
+ * uses a CLOCK (second chance) eviction policy. A cache hit only sets a flag
+ * on the entry, so concurrent readers do not contend for a lock. When the
+ * bound is exceeded, entries are taken from the head of the clock. An entry
+ * which was used since it was last examined is given a second chance and
+ * moved to the tail. Otherwise it is evicted.
+ * <p>
+ * Records are removed from the cache when the owning {@link AbstractBTree}
+ * deletes them. An {@link IRawStore} which can reissue addresses (e.g., after
+ * an abort) MUST {@link #clearCache(IRawStore)} when it does so.
+ * <p>
+ * Note: The cache is not used for highly available journals since the
+ * followers receive their writes through the write replication pipeline rather
+ * than through {@link AbstractBTree}, so a recycled address could not be
+ * removed from the cache.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ *
+ * @see Options
+ */
+public class NodeDataCache {
+
+    private static final Logger log = Logger.getLogger(NodeDataCache.class);
+
+    /**
+     * Options for the {@link NodeDataCache}. These options are specified
+     * using JVM-wide System properties.
+     */
+    public interface Options {
+
+        /**
+         * The maximum #of bytes of coded node and leaf data records which are
+         * retained by the cache (default {@value #DEFAULT_MAX_BYTES}). The
+         * cache is disabled when ZERO (0).
+         */
+        String MAX_BYTES = NodeDataCache.class.getName() + ".maxBytes";
+
+        String DEFAULT_MAX_BYTES = "0";
+
+    }
+
+    /**
+     * The estimated overhead in bytes of an entry in the cache. This is added
+     * to the size of the coded data record.
+     */
+    static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * The JVM-wide instance.
+     *
+     * @see Options#MAX_BYTES
+     */
+    public static final NodeDataCache INSTANCE = new NodeDataCache(
+            Long.parseLong(System.getProperty(Options.MAX_BYTES,
+                    Options.DEFAULT_MAX_BYTES)));
+
+    /**
+     * The maximum #of bytes retained by the cache.
+     */
+    private volatile long maxBytes;
+
+    /**
+     * The per-store caches. The keys are weak so the cache for a store is
+     * released when the store is no longer referenced.
+     * <p>
+     * Note: Guarded by synchronized(stores).
+     */
+    private final Map<IRawStore, StoreCache> stores = new WeakHashMap<IRawStore, StoreCache>();
+
+    /**
+     * The clock used to select entries for eviction.
+     */
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * The #of bytes in the entries in the cache.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * The #of entries in the cache.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * The #of entries on the {@link #clock} which were removed from their
+     * {@link StoreCache}.
+     */
+    private final AtomicLong dead = new AtomicLong();
+
+    private final CAT hitCount = new CAT();
+
+    private final CAT missCount = new CAT();
+
+    private final CAT insertCount = new CAT();
+
+    private final CAT evictionCount = new CAT();
+
+    private final CAT removeCount = new CAT();
+
+    /**
+     * @param maxBytes
+     *            The maximum #of bytes retained by the cache. The cache is
+     *            disabled when ZERO (0).
+     */
+    public NodeDataCache(final long maxBytes) {
+
+        setMaxBytes(maxBytes);
+
+    }
+
+    /**
+     * The maximum #of bytes retained by the cache.
+     */
+    public long getMaxBytes() {
+
+        return maxBytes;
+
+    }
+
+    /**
+     * Change the maximum #of bytes retained by the cache. Entries are evicted
+     * immediately if the cache is over the new bound. If ZERO (0), then the
+     * cache is disabled for {@link AbstractBTree}s created from now on.
+     */
+    public void setMaxBytes(final long maxBytes) {
+
+        if (maxBytes < 0)
+            throw new IllegalArgumentException();
+
+        this.maxBytes = maxBytes;
+
+        if (log.isInfoEnabled())
+            log.info(Options.MAX_BYTES + "=" + maxBytes);
+
+        evict();
+
+    }
+
+    /**
+     * The #of bytes in the entries in the cache.
+     */
+    public long getBytes() {
+
+        return bytes.get();
+
+    }
+
+    /**
+     * The #of entries in the cache.
+     */
+    public long size() {
+
+        return size.get();
+
+    }
+
+    /**
+     * Return the {@link StoreCache} which should be used by an
+     * {@link AbstractBTree} on the given store from the {@link #INSTANCE}.
+     *
+     * @param store
+     *            The backing store.
+     *
+     * @return The {@link StoreCache} -or- <code>null</code> if the cache is
+     *         disabled, if there is no backing store, or if the backing store
+     *         is a highly available journal.
+     */
+    public static StoreCache getCache(final IRawStore store) {
+
+        if (store == null || INSTANCE.maxBytes == 0L)
+            return null;
+
+        if (store instanceof AbstractJournal
+                && ((AbstractJournal) store).getQuorum() != null) {
+
+            // Not safe for HA (addresses are recycled by the leader).
+            return null;
+
+        }
+
+        return INSTANCE.getStoreCache(store);
+
+    }
+
+    /**
+     * Return the {@link StoreCache} for the store, creating it if necessary.
+     */
+    public StoreCache getStoreCache(final IRawStore store) {
+
+        if (store == null)
+            throw new IllegalArgumentException();
+
+        synchronized (stores) {
+
+            StoreCache cache = stores.get(store);
+
+            if (cache == null) {
+
+                stores.put(store, cache = new StoreCache(this));
+
+            }
+
+            return cache;
+
+        }
+
+    }
+
+    /**
+     * Clear the entries for the store from the {@link #INSTANCE}. This MUST be
+     * invoked if the store could reissue addresses which are in the cache,
+     * e.g., after an abort.
+     */
+    public static void clearCache(final IRawStore store) {
+
+        final StoreCache cache;
+        synchronized (INSTANCE.stores) {
+            cache = INSTANCE.stores.get(store);
+        }
+
+        if (cache != null)
+            cache.clear();
+
+    }
+
+    /**
+     * Clear the entries for the store from the {@link #INSTANCE} and discard
+     * its {@link StoreCache}. This is invoked when the store is closed or
+     * destroyed.
+     */
+    public static void deleteCache(final IRawStore store) {
+
+        final StoreCache cache;
+        synchronized (INSTANCE.stores) {
+            cache = INSTANCE.stores.remove(store);
+        }
+
+        if (cache != null)
+            cache.clear();
+
+    }
+
+    /**
+     * Note a new entry and evict entries if the cache is over its bound.
+     */
+    private void added(final Entry e) {
+
+        insertCount.increment();
+
+        size.incrementAndGet();
+
+        bytes.addAndGet(e.size);
+
+        clock.add(e);
+
+        evict();
+
+        if (dead.get() > size.get() + 1024) {
+
+            /*
+             * Entries are being removed faster than they are evicted. Purge
+             * the removed entries so they do not accumulate on the clock.
+             */
+
+            final Iterator<Entry> itr = clock.iterator();
+
+            while (itr.hasNext()) {
+
+                if (itr.next().data == null) {
+
+                    itr.remove();
+
+                    dead.decrementAndGet();
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Note an entry which was removed from its {@link StoreCache}. The entry
+     * is left on the clock and is discarded when it reaches the head.
+     */
+    private void removed(final Entry e) {
+
+        e.data = null;
+
+        dead.incrementAndGet();
+
+        size.decrementAndGet();
+
+        bytes.addAndGet(-e.size);
+
+    }
+
+    /**
+     * Evict entries while the cache is over its bound.
+     */
+    private void evict() {
+
+        while (bytes.get() > maxBytes) {
+
+            final Entry e = clock.poll();
+
+            if (e == null)
+                break;
+
+            if (e.data == null) {
+
+                // Already removed from its store cache.
+                dead.decrementAndGet();
+
+                continue;
+
+            }
+
+            if (e.referenced) {
+
+                // Second chance.
+                e.referenced = false;
+
+                clock.add(e);
+
+                continue;
+
+            }
+
+            if (removeEvicted(e)) {
+
+                removed(e);
+
+                evictionCount.increment();
+
+            }
+
+            /*
+             * Note: The entry was already taken off the clock, but removed()
+             * counts it as dead whether it was evicted here or concurrently
+             * replaced or removed by another thread.
+             */
+            dead.decrementAndGet();
+
+        }
+
+    }
+
+    /**
+     * Remove an entry selected for eviction from its {@link StoreCache}.
+     *
+     * @return <code>false</code> iff the entry was concurrently replaced or
+     *         removed.
+     */
+    boolean removeEvicted(final Entry e) {
+
+        return e.cache.map.remove(e.addr, e);
+
+    }
+
+    /**
+     * The #of entries on the clock which were removed from their
+     * {@link StoreCache} (exposed for the unit tests).
+     */
+    long getDeadCount() {
+
+        return dead.get();
+
+    }
+
+    /**
+     * Return the #of bytes charged against the cache for a data record.
+     */
+    static int sizeOf(final IAbstractNodeData data) {
+
+        return ENTRY_OVERHEAD
+                + (data.isCoded() ? data.data().len() : DEFAULT_RECORD_SIZE);
+
+    }
+
+    /**
+     * The size charged for a data record which is not coded.
+     */
+    private static final int DEFAULT_RECORD_SIZE = 1024;
+
+    /**
+     * Return the counters for the cache.
+     * <dl>
+     * <dt>maxBytes</dt>
+     * <dd>The maximum #of bytes retained by the cache.</dd>
+     * <dt>bytes</dt>
+     * <dd>The #of bytes in the entries in the cache.</dd>
+     * <dt>size</dt>
+     * <dd>The #of entries in the cache.</dd>
+     * <dt>storeCount</dt>
+     * <dd>The #of stores having a partition of the cache.</dd>
+     * <dt>hitCount, missCount, hitRatio</dt>
+     * <dd>The #of lookups which found / did not find the data record and the
+     * fraction of lookups which found the data record.</dd>
+     * <dt>insertCount, evictionCount, removeCount</dt>
+     * <dd>The #of entries inserted into, evicted from, and removed from the
+     * cache by the owning {@link AbstractBTree}.</dd>
+     * </dl>
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet counterSet = new CounterSet();
+
+        counterSet.addCounter("maxBytes", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(maxBytes);
+            }
+        });
+
+        counterSet.addCounter("bytes", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(bytes.get());
+            }
+        });
+
+        counterSet.addCounter("size", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(size.get());
+            }
+        });
+
+        counterSet.addCounter("storeCount", new Instrument<Integer>() {
+            @Override
+            protected void sample() {
+                synchronized (stores) {
+                    setValue(stores.size());
+                }
+            }
+        });
+
+        counterSet.addCounter("hitCount", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(hitCount.get());
+            }
+        });
+
+        counterSet.addCounter("missCount", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(missCount.get());
+            }
+        });
+
+        counterSet.addCounter("hitRatio", new Instrument<Double>() {
+            @Override
+            protected void sample() {
+                final long hits = hitCount.get();
+                final long total = hits + missCount.get();
+                setValue(total == 0L ? 0d : hits / (double) total);
+            }
+        });
+
+        counterSet.addCounter("insertCount", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(insertCount.get());
+            }
+        });
+
+        counterSet.addCounter("evictionCount", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(evictionCount.get());
+            }
+        });
+
+        counterSet.addCounter("removeCount", new Instrument<Long>() {
+            @Override
+            protected void sample() {
+                setValue(removeCount.get());
+            }
+        });
+
+        return counterSet;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{maxBytes=" + maxBytes
+                + ",bytes=" + bytes + ",size=" + size + ",hits=" + hitCount
+                + ",misses=" + missCount + ",evictions=" + evictionCount + "}";
+
+    }
+
+    /**
+     * An entry in the cache.
+     */
+    static class Entry {
+
+        final StoreCache cache;
+
+        final Long addr;
+
+        final int size;
+
+        /**
+         * The data record and <code>null</code> once the entry has been
+         * removed from its {@link StoreCache}.
+         */
+        volatile IAbstractNodeData data;
+
+        /**
+         * Set when the entry is used and cleared when the entry is given a
+         * second chance by the clock.
+         */
+        volatile boolean referenced;
+
+        Entry(final StoreCache cache, final Long addr,
+                final IAbstractNodeData data) {
+
+            this.cache = cache;
+            this.addr = addr;
+            this.data = data;
+            this.size = sizeOf(data);
+
+        }
+
+    }
+
+    /**
+     * The partition of the {@link NodeDataCache} for a single backing store.
+     * The keys are the addresses of the nodes and leaves on that store.
+     */
+    public static class StoreCache {
+
+        private final NodeDataCache owner;
+
+        private final ConcurrentHashMap<Long, Entry> map = new ConcurrentHashMap<Long, Entry>();
+
+        private StoreCache(final NodeDataCache owner) {
+
+            this.owner = owner;
+
+        }
+
+        /**
+         * Return the data record for the address -or- <code>null</code> if
+         * it is not in the cache.
+         */
+        public IAbstractNodeData get(final long addr) {
+
+            final Entry e = map.get(addr);
+
+            final IAbstractNodeData data = e == null ? null : e.data;
+
+            if (data == null) {
+
+                owner.missCount.increment();
+
+                return null;
+
+            }
+
+            e.referenced = true;
+
+            owner.hitCount.increment();
+
+            return data;
+
+        }
+
+        /**
+         * Add the data record for the address unless there is already a data
+         * record for that address in the cache.
+         *
+         * @return The data record already in the cache -or- <code>null</code>
+         *         if the given data record was added.
+         */
+        public IAbstractNodeData putIfAbsent(final long addr,
+                final IAbstractNodeData data) {
+
+            if (data == null)
+                throw new IllegalArgumentException();
+
+            final Entry e = new Entry(this, addr, data);
+
+            while (true) {
+
+                final Entry old = map.putIfAbsent(e.addr, e);
+
+                if (old == null) {
+
+                    owner.added(e);
+
+                    return null;
+
+                }
+
+                final IAbstractNodeData oldData = old.data;
+
+                if (oldData != null) {
+
+                    old.referenced = true;
+
+                    return oldData;
+
+                }
+
+                // Concurrently removed. Retry.
+                map.remove(e.addr, old);
+
+            }
+
+        }
+
+        /**
+         * Add the data record for the address, replacing any data record
+         * already in the cache for that address. This is used when a record
+         * is written since the address may have been recycled.
+         */
+        public void put(final long addr, final IAbstractNodeData data) {
+
+            if (data == null)
+                throw new IllegalArgumentException();
+
+            final Entry e = new Entry(this, addr, data);
+
+            final Entry old = map.put(e.addr, e);
+
+            if (old != null)
+                owner.removed(old);
+
+            owner.added(e);
+
+        }
+
+        /**
+         * Remove the data record for the address (if any).
+         */
+        public void remove(final long addr) {
+
+            final Entry old = map.remove(addr);
+
+            if (old != null) {
+
+                owner.removed(old);
+
+                owner.removeCount.increment();
+
+            }
+
+        }
+
+        /**
+         * Remove all data records for this store.
+         */
+        public void clear() {
+
+            for (Long addr : map.keySet()) {
+
+                remove(addr);
+
+            }
+
+        }
+
+        /**
+         * The #of data records in the cache for this store.
+         */
+        public int size() {
+
+            return map.size();
+
+        }
+
+    }
+
+}
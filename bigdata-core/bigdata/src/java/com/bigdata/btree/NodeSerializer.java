@@ -215,8 +215,10 @@ public class NodeSerializer {
 	 *            NOT attempt to serialize any nodes or leaves using this
 	 *            {@link NodeSerializer} instance.
 	 * 
-	 *            FIXME {@link IRecordCompressorFactory} should either be used
-	 *            here or moved into the {@link IRawStore} impl.
+	 * @param recordCompressorFactory
+	 *            Factory for record-level (de-)compression of the nodes and
+	 *            leaves (optional). See {@link #compress(AbstractFixedByteArrayBuffer)}
+	 *            and {@link #decompress(ByteBuffer)}.
 	 * 
 	 * @todo the {@link IAddressManager} is not used any more. It was used by
 	 *       the {@link IAddressSerializer}.
@@ -364,6 +366,64 @@ public class NodeSerializer {
 
     }
 
+    /**
+     * Apply the record-level compression (if any) to a coded node or leaf
+     * (NOT thread-safe). This is used when the record is written onto the
+     * backing store.
+     * 
+     * @param slice
+     *            The coded data record.
+     * 
+     * @return The record to be written on the store. When there is no
+     *         {@link IRecordCompressorFactory}, this is just a view of the
+     *         coded data record.
+     */
+    public ByteBuffer compress(final AbstractFixedByteArrayBuffer slice) {
+
+        if (recordCompressorFactory == null) {
+
+            return slice.asByteBuffer();
+
+        }
+
+        if (_writeCompressor == null) {
+
+            // re-allocate.
+            allocWriteBuffer();
+
+        }
+
+        return _writeCompressor.compress(slice.asByteBuffer());
+
+    }
+
+    /**
+     * Reverse the record-level compression (if any) of a record read from the
+     * backing store (thread-safe).
+     * 
+     * @param buf
+     *            The record read from the store.
+     * 
+     * @return The coded data record, which may be passed to
+     *         {@link #decode(ByteBuffer)}. When there is no
+     *         {@link IRecordCompressorFactory}, this is the caller's buffer.
+     */
+    public ByteBuffer decompress(final ByteBuffer buf) {
+
+        if (recordCompressorFactory == null) {
+
+            return buf;
+
+        }
+
+        /*
+         * Note: Readers may run concurrently with the writer, so the write
+         * compressor is not used here.
+         */
+        return recordCompressorFactory.getInstance().decompress(buf);
+
+    }
+
     /**
      * Wrap an {@link INodeData} or {@link ILeafData} instance as a {@link Node}
      * or a {@link Leaf}. This DOES NOT set the parent of the new {@link Node}
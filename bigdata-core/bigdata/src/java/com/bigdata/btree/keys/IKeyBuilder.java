@@ -30,6 +30,7 @@ package com.bigdata.btree.keys;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.UUID;
@@ -132,6 +133,48 @@ public interface IKeyBuilder extends ISortKeyBuilder<Object>, IManagedByteArray
      */
     public byte[] getKey();
 
+    /**
+     * Copy the encoded key into a caller-supplied byte[] without allocating a
+     * new array. This is useful when a sequence of keys is encoded into a
+     * reused buffer and compared as slices, e.g., using
+     * {@link BytesUtil#compareBytesWithLenAndOffset(int, int, byte[], int, int, byte[])}
+     * .
+     * <p>
+     * Note: A key copied into a buffer which is subsequently reused MUST NOT be
+     * inserted into a B+Tree since keys are <em>donated</em> to the B+Tree (see
+     * {@link #getKey()}).
+     * 
+     * @param b
+     *            The target byte[].
+     * @param off
+     *            The offset in <i>b</i> at which the key will be written.
+     * 
+     * @return The length of the key, which is {@link #len()}.
+     * 
+     * @throws IndexOutOfBoundsException
+     *             if the key does not fit into <i>b</i> starting at
+     *             <i>off</i>.
+     */
+    public int copyKey(byte[] b, int off);
+
+    /**
+     * Copy the encoded key into a caller-supplied {@link ByteBuffer}, which
+     * may be a heap buffer or a direct buffer, starting at its current
+     * position. The position of the buffer is advanced by the length of the
+     * key. Keys written onto a buffer may be compared in place using
+     * {@link BytesUtil#compareBytesWithLenAndOffset(int, int, ByteBuffer, int, int, ByteBuffer)}
+     * .
+     * 
+     * @param b
+     *            The target buffer.
+     * 
+     * @return The length of the key, which is {@link #len()}.
+     * 
+     * @throws java.nio.BufferOverflowException
+     *             if there is not enough room remaining in the buffer.
+     */
+    public int copyKey(ByteBuffer b);
+
     /**
      * An alias for {@link #getKey()}.
      * 
@@ -30,6 +30,7 @@ package com.bigdata.btree.keys;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.Collator;
 import java.util.Locale;
 import java.util.Properties;
@@ -143,6 +144,23 @@ public class KeyBuilder implements IKeyBuilder, LongPacker.IByteBuffer {
         
     }
     
+    /**
+     * Creates a key builder which encodes keys onto a caller-supplied buffer.
+     * This may be used to reuse the same byte[] for a sequence of keys (each
+     * started by {@link #reset()}) without allocating a new buffer for each
+     * {@link KeyBuilder}. Note that the buffer is replaced by a larger one if a
+     * key would overflow it, so the caller must use {@link #array()} to obtain
+     * the current buffer.
+     * 
+     * @param buf
+     *            The buffer (required).
+     */
+    public KeyBuilder(final byte[] buf) {
+
+        this(0/* len */, buf);
+
+    }
+
     /**
      * Creates a key builder using an existing buffer with some data.
      * 
@@ -306,26 +324,22 @@ public class KeyBuilder implements IKeyBuilder, LongPacker.IByteBuffer {
 
     }
     
-    /*
-     * The problem with this method is that it encourages us to reuse a key
-     * buffer but the btree (at least when used as part of a local api) requires
-     * that we donate the key buffer to the btree.
-     */
-//    /**
-//     * Copy the key from the internal buffer into the supplied buffer.
-//     * 
-//     * @param b
-//     *            A byte[].
-//     * 
-//     * @exception IndexOutOfBoundsException
-//     *                if the supplied buffer is not large enough.
-//     */
-//    final public void copyKey(byte[] b) {
-//    
-//        System.arraycopy(this.buf, 0, b, 0, this.len);
-//        
-//    }
-    
+    final public int copyKey(final byte[] b, final int off) {
+
+        System.arraycopy(this.buf, 0, b, off, this.len);
+
+        return this.len;
+
+    }
+
+    final public int copyKey(final ByteBuffer b) {
+
+        b.put(this.buf, 0, this.len);
+
+        return this.len;
+
+    }
+
     final public KeyBuilder reset() {
         
         len = 0;
@@ -27,7 +27,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.btree.proc;
 
+import com.bigdata.btree.AbstractBTree;
 import com.bigdata.btree.Errors;
+import com.bigdata.btree.Finger;
 import com.bigdata.btree.IIndex;
 import com.bigdata.btree.ISimpleBTree;
 import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure.ResultBitBuffer;
@@ -129,11 +131,18 @@ public class BatchContains extends AbstractKeyArrayIndexProcedure<ResultBitBuffe
 
         final boolean[] ret = new boolean[n];
 
+        // Use a finger since the keys are sorted (local B+Tree only).
+        final AbstractBTree btree = ndx instanceof AbstractBTree ? (AbstractBTree) ndx
+                : null;
+
+        final Finger finger = btree == null ? null : new Finger(btree);
+
         int i = 0, onCount = 0;
 
         while (i < n) {
 
-            if(ret[i] = ndx.contains(keys.get(i))) {
+            if (ret[i] = (btree == null ? ndx.contains(keys.get(i)) : btree
+                    .contains(keys.get(i), finger))) {
                 
                 onCount++;
                 
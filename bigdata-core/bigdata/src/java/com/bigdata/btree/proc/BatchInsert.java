@@ -31,7 +31,9 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
+import com.bigdata.btree.AbstractBTree;
 import com.bigdata.btree.Errors;
+import com.bigdata.btree.Finger;
 import com.bigdata.btree.IIndex;
 import com.bigdata.btree.ISimpleBTree;
 import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure.ResultBuffer;
@@ -178,7 +180,13 @@ public class BatchInsert extends AbstractKeyArrayIndexProcedure<ResultBuffer> im
         final int n = keys.size();
 
         final byte[][] ret = (returnOldValues ? new byte[n][] : null);
-        
+
+        // Use a finger since the keys are sorted (local B+Tree only).
+        final AbstractBTree btree = ndx instanceof AbstractBTree ? (AbstractBTree) ndx
+                : null;
+
+        final Finger finger = btree == null ? null : new Finger(btree);
+
 //        try {
         
         while (i < n) {
@@ -187,7 +195,8 @@ public class BatchInsert extends AbstractKeyArrayIndexProcedure<ResultBuffer> im
             
             final byte[] val = vals.get(i);
 
-            final byte[] old = (byte[]) ndx.insert(key, val);
+            final byte[] old = btree == null ? (byte[]) ndx.insert(key, val)
+                    : btree.insert(key, val, finger);
 
             if (returnOldValues) {
                 
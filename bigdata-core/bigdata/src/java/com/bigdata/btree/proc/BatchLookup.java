@@ -27,7 +27,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.btree.proc;
 
+import com.bigdata.btree.AbstractBTree;
 import com.bigdata.btree.Errors;
+import com.bigdata.btree.Finger;
 import com.bigdata.btree.IIndex;
 import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure.ResultBuffer;
 import com.bigdata.btree.raba.IRaba;
@@ -123,12 +125,22 @@ public class BatchLookup extends AbstractKeyArrayIndexProcedure<ResultBuffer> im
         final int n = keys.size();
         
         final byte[][] ret = new byte[n][];
-        
+
+        /*
+         * The keys are sorted, so each search resumes from the leaf located by
+         * the previous search when the index is a local B+Tree.
+         */
+        final AbstractBTree btree = ndx instanceof AbstractBTree ? (AbstractBTree) ndx
+                : null;
+
+        final Finger finger = btree == null ? null : new Finger(btree);
+
         int i = 0;
         
         while (i < n) {
 
-            ret[i] = ndx.lookup(keys.get(i));
+            ret[i] = btree == null ? ndx.lookup(keys.get(i)) : btree.lookup(
+                    keys.get(i), finger);
 
             i++;
 
@@ -31,7 +31,9 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
+import com.bigdata.btree.AbstractBTree;
 import com.bigdata.btree.Errors;
+import com.bigdata.btree.Finger;
 import com.bigdata.btree.IIndex;
 import com.bigdata.btree.ISimpleBTree;
 import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure.ResultBuffer;
@@ -181,7 +183,13 @@ public class BatchPutIfAbsent extends AbstractKeyArrayIndexProcedure<ResultBuffe
         final int n = keys.size();
 
         final byte[][] ret = (returnOldValues ? new byte[n][] : null);
-        
+
+        // Use a finger since the keys are sorted (local B+Tree only).
+        final AbstractBTree btree = ndx instanceof AbstractBTree ? (AbstractBTree) ndx
+                : null;
+
+        final Finger finger = btree == null ? null : new Finger(btree);
+
 //        try {
         
         while (i < n) {
@@ -190,7 +198,8 @@ public class BatchPutIfAbsent extends AbstractKeyArrayIndexProcedure<ResultBuffe
             
             final byte[] val = vals.get(i);
 
-            final byte[] old = (byte[]) ndx.putIfAbsent(key, val);
+            final byte[] old = btree == null ? (byte[]) ndx.putIfAbsent(key, val)
+                    : btree.putIfAbsent(key, val, finger);
 
             if (returnOldValues) {
                 
@@ -0,0 +1,383 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree.raba.codec;
+
+import it.unimi.dsi.compression.CanonicalFast64CodeWordDecoder;
+import it.unimi.dsi.compression.HuffmanCodec.DecoderInputs;
+import it.unimi.dsi.io.InputBitStream;
+
+/**
+ * Table driven decoder for a canonical Huffman code. The decoder reads the
+ * code words directly from a <code>byte[]</code> (most significant bit
+ * first, which is the bit order used by the {@link InputBitStream}) rather
+ * than bit by bit from an {@link InputBitStream}.
+ * <p>
+ * The next {@link #getLookupBits()} bits of the coded data are used to index
+ * into a lookup table. Every code word whose length is not greater than the
+ * #of lookup bits is decoded by a single table probe. Longer code words (which
+ * are rare since they code the least frequent symbols) are decoded one bit at
+ * a time starting from the lookup bits using the first code word of each code
+ * word length.
+ * <p>
+ * The decoder is constructed from the same inputs as the
+ * {@link CanonicalFast64CodeWordDecoder} (see {@link DecoderInputs}) and
+ * assigns the same code words to the same symbols.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class CanonicalHuffmanLookupDecoder {
+
+    /**
+     * The default #of bits used to index into the lookup table.
+     */
+    public static final int DEFAULT_LOOKUP_BITS = 10;
+
+    /**
+     * The maximum #of bits which may be used to index into the lookup table.
+     */
+    public static final int MAX_LOOKUP_BITS = 16;
+
+    /**
+     * The largest symbol which may be decoded. This is sufficient for an
+     * alphabet of byte values.
+     */
+    public static final int MAX_SYMBOL = 0x1ff;
+
+    /**
+     * The #of bits used to index into the lookup table.
+     */
+    private final int lookupBits;
+
+    /**
+     * The length of the shortest code word.
+     */
+    private final int minCodeLength;
+
+    /**
+     * The length of the longest code word.
+     */
+    private final int maxCodeLength;
+
+    /**
+     * The lookup table. Each entry is either ZERO (0) if the code word having
+     * that prefix is longer than {@link #lookupBits} -or- the decoded value
+     * (see {@link #decode(byte[], long)}).
+     */
+    private final char[] table;
+
+    /**
+     * The first (smallest) code word of each code word length (indexed by the
+     * code word length).
+     */
+    private final long[] firstCodeWord;
+
+    /**
+     * The #of code words of each code word length (indexed by the code word
+     * length).
+     */
+    private final int[] count;
+
+    /**
+     * The index into {@link #symbol} of the first code word of each code word
+     * length (indexed by the code word length).
+     */
+    private final int[] firstIndex;
+
+    /**
+     * The symbol assigned to each code word.
+     */
+    private final int[] symbol;
+
+    /**
+     * Create a decoder using {@link #DEFAULT_LOOKUP_BITS}.
+     *
+     * @param codeWordLength
+     *            A vector of non-decreasing code word lengths suitable for a
+     *            canonical code.
+     * @param symbol
+     *            A parallel array of symbols corresponding to each code word
+     *            length.
+     */
+    public CanonicalHuffmanLookupDecoder(final int[] codeWordLength,
+            final int[] symbol) {
+
+        this(codeWordLength, symbol, DEFAULT_LOOKUP_BITS);
+
+    }
+
+    /**
+     * @param codeWordLength
+     *            A vector of non-decreasing code word lengths suitable for a
+     *            canonical code.
+     * @param symbol
+     *            A parallel array of symbols corresponding to each code word
+     *            length.
+     * @param lookupBits
+     *            The maximum #of bits used to index into the lookup table in
+     *            [1:{@link #MAX_LOOKUP_BITS}]. The lookup table is never
+     *            larger than required for the longest code word.
+     */
+    public CanonicalHuffmanLookupDecoder(final int[] codeWordLength,
+            final int[] symbol, final int lookupBits) {
+
+        if (codeWordLength == null)
+            throw new IllegalArgumentException();
+
+        if (symbol == null || symbol.length != codeWordLength.length)
+            throw new IllegalArgumentException();
+
+        if (codeWordLength.length == 0)
+            throw new IllegalArgumentException();
+
+        if (lookupBits < 1 || lookupBits > MAX_LOOKUP_BITS)
+            throw new IllegalArgumentException();
+
+        final int size = codeWordLength.length;
+
+        this.minCodeLength = codeWordLength[0];
+
+        this.maxCodeLength = codeWordLength[size - 1];
+
+        if (minCodeLength < 1 || maxCodeLength > Long.SIZE)
+            throw new IllegalArgumentException();
+
+        for (int i = 1; i < size; i++) {
+
+            if (codeWordLength[i - 1] > codeWordLength[i])
+                throw new IllegalArgumentException(
+                        "Code word lengths must be non-decreasing");
+
+        }
+
+        this.symbol = symbol;
+
+        this.lookupBits = Math.min(lookupBits, maxCodeLength);
+
+        this.table = new char[1 << this.lookupBits];
+
+        this.firstCodeWord = new long[maxCodeLength + 1];
+
+        this.count = new int[maxCodeLength + 1];
+
+        this.firstIndex = new int[maxCodeLength + 1];
+
+        /*
+         * Assign the canonical code words (in the same manner as the
+         * CanonicalFast64CodeWordDecoder) and populate the lookup table with
+         * all code words which fit within the lookup bits.
+         */
+        long word = 0L;
+
+        int prevLength = codeWordLength[0];
+
+        for (int i = 0; i < size; i++) {
+
+            final int len = codeWordLength[i];
+
+            if (symbol[i] < 0 || symbol[i] > MAX_SYMBOL)
+                throw new IllegalArgumentException();
+
+            if (len != prevLength) {
+
+                word <<= len - prevLength;
+
+                prevLength = len;
+
+            }
+
+            if (count[len]++ == 0) {
+
+                firstCodeWord[len] = word;
+
+                firstIndex[len] = i;
+
+            }
+
+            if (len <= this.lookupBits) {
+
+                final int shift = this.lookupBits - len;
+
+                final int from = (int) (word << shift);
+
+                final int to = from + (1 << shift);
+
+                final char value = (char) ((len << 9) | symbol[i]);
+
+                for (int j = from; j < to; j++) {
+
+                    table[j] = value;
+
+                }
+
+            }
+
+            word++;
+
+        }
+
+    }
+
+    /**
+     * The #of bits used to index into the lookup table.
+     */
+    public int getLookupBits() {
+
+        return lookupBits;
+
+    }
+
+    /**
+     * The length of the shortest code word. The #of symbols coded by a
+     * sequence of code words is never more than its bit length divided by
+     * this value.
+     */
+    public int getMinCodeLength() {
+
+        return minCodeLength;
+
+    }
+
+    /**
+     * The length of the longest code word.
+     */
+    public int getMaxCodeLength() {
+
+        return maxCodeLength;
+
+    }
+
+    /**
+     * Return the symbol from a value returned by {@link #decode(byte[], long)}.
+     */
+    static public int getSymbol(final int value) {
+
+        return value & MAX_SYMBOL;
+
+    }
+
+    /**
+     * Return the bit length of the code word from a value returned by
+     * {@link #decode(byte[], long)}.
+     */
+    static public int getCodeLength(final int value) {
+
+        return value >>> 9;
+
+    }
+
+    /**
+     * Decode the code word starting at the given bit offset.
+     *
+     * @param a
+     *            The coded data.
+     * @param bitPos
+     *            The bit offset of the first bit of the code word.
+     *
+     * @return The symbol in the low 9 bits and the bit length of the code
+     *         word in the remaining high bits (see {@link #getSymbol(int)} and
+     *         {@link #getCodeLength(int)}).
+     *
+     * @throws IllegalStateException
+     *             if the bits at that offset are not a code word.
+     */
+    public int decode(final byte[] a, final long bitPos) {
+
+        final int prefix = peek(a, bitPos, lookupBits);
+
+        final int value = table[prefix];
+
+        if (value != 0) {
+
+            // The code word fits in the lookup bits.
+            return value;
+
+        }
+
+        /*
+         * The code word is longer than the lookup bits. Extend the prefix one
+         * bit at a time until it falls within the code words of that length.
+         */
+
+        long x = prefix;
+
+        for (int len = lookupBits + 1; len <= maxCodeLength; len++) {
+
+            final long bit = bitPos + len - 1;
+
+            x = (x << 1) | ((a[(int) (bit >>> 3)] >>> (7 - (int) (bit & 7))) & 1);
+
+            final int n = count[len];
+
+            if (n != 0) {
+
+                final long d = x - firstCodeWord[len];
+
+                if (d >= 0 && d < n) {
+
+                    return (len << 9) | symbol[firstIndex[len] + (int) d];
+
+                }
+
+            }
+
+        }
+
+        throw new IllegalStateException("Not a code word: bitPos=" + bitPos);
+
+    }
+
+    /**
+     * Return the next <i>nbits</i> bits starting at the given bit offset.
+     * Bits beyond the end of the array are read as zeros.
+     *
+     * @param a
+     *            The data.
+     * @param bitPos
+     *            The bit offset.
+     * @param nbits
+     *            The #of bits in [1:{@link #MAX_LOOKUP_BITS}].
+     */
+    static private int peek(final byte[] a, final long bitPos, final int nbits) {
+
+        final int i = (int) (bitPos >>> 3);
+
+        int w = (a[i] & 0xff) << 16;
+
+        if (i + 1 < a.length) {
+
+            w |= (a[i + 1] & 0xff) << 8;
+
+            if (i + 2 < a.length) {
+
+                w |= a[i + 2] & 0xff;
+
+            }
+
+        }
+
+        return (w >>> (24 - (int) (bitPos & 7) - nbits)) & ((1 << nbits) - 1);
+
+    }
+
+}
@@ -30,8 +30,6 @@ package com.bigdata.btree.raba.codec;
 import it.unimi.dsi.bits.BitVector;
 import it.unimi.dsi.bits.Fast;
 import it.unimi.dsi.bits.LongArrayBitVector;
-import it.unimi.dsi.compression.CanonicalFast64CodeWordDecoder;
-import it.unimi.dsi.compression.Decoder;
 import it.unimi.dsi.compression.HuffmanCodec;
 import it.unimi.dsi.compression.PrefixCoder;
 import it.unimi.dsi.compression.HuffmanCodec.DecoderInputs;
@@ -1254,14 +1252,7 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
                 }
             }
 
-            // The bit length of the decoder inputs.
-            final long decoderInputsBitLength;
-            if (nsymbols == 0) {
-    
-                // not present in the coded data record.
-                decoderInputsBitLength = 0;
-                
-            } else {
+            if (nsymbols != 0) {
 
                 // write the code word length[], the correlated symbol[], and the
                 // shortest code word. 
@@ -1272,7 +1263,6 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
 
                 // Write out the coded values.
                 final long O_codedValues = obs.writtenBits();
-                decoderInputsBitLength = O_codedValues - O_decoderInputs;
                 if (debug)
                     sb.append("O_codedValues=" + O_codedValues + "\n");
                 //            assert O_codedValues == O_nulls + (raba.isKeys() ? 0 : size);
@@ -1326,14 +1316,7 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
             final AbstractFixedByteArrayBuffer slice = buf.slice(//
                     O_origin, buf.pos() - O_origin);
 
-            if (nsymbols == 0) {
-
-                return new CodedRabaImpl(slice, null/* decoder */, 0/* decoderInputsBitLength */);
-            
-            }
-            
-            return new CodedRabaImpl(slice, setup.codec().decoder(),
-                    decoderInputsBitLength);
+            return new CodedRabaImpl(slice);
 
         } catch (IOException ex) {
 
@@ -1426,9 +1409,9 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
 //        }
 
         /**
-         * The decoder, which is always available.
+         * The decoder, which is available unless there are no symbols.
          */
-        private final Decoder decoder;
+        private final CanonicalHuffmanLookupDecoder decoder;
 
         /**
          * The #of symbols in the coded alphabet. For B+Tree keys this is always
@@ -1472,33 +1455,8 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
          */
         public CodedRabaImpl(final AbstractFixedByteArrayBuffer data) {
 
-            this(data, null/* decoder */, 0L/* decoderInputsBitLength */);
-
-        }
-
-        /**
-         * Constructor used when encoding a data record (more information is
-         * available from the caller's context).
-         * 
-         * @param data
-         *            The record containing the coded data.
-         * @param decoder
-         *            The decoder (optional). When not given the decoder is
-         *            reconstructed from the record.
-         * @param decoderInputsBitLength
-         *            The bit length of the {@link DecoderInputs} in the coded
-         *            data record. This information is used to skip beyond the
-         *            {@link DecoderInputs} without having to read them from the
-         *            {@link InputBitStream}.
-         */
-        public CodedRabaImpl(final AbstractFixedByteArrayBuffer data,
-                final Decoder decoder, final long decoderInputsBitLength) {
-
             if (data == null)
                 throw new IllegalArgumentException();
-
-            if (decoder != null && decoderInputsBitLength == 0)
-                throw new IllegalArgumentException();
             
             this.data = data;
 //            if (decoder == null) {
@@ -1623,21 +1581,9 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
                 final DecoderInputs decoderInputs = readDecoderInputs(nsymbols,
                         ibs, sb);
 
-                if (decoder == null) {
-                    /*
-                     * Reconstruct the decoder.
-                     */
-                    this.decoder = new CanonicalFast64CodeWordDecoder(
-                            decoderInputs.getLengths(), decoderInputs
-                                    .getSymbols());
-                } else {
-                    /*
-                     * There is a minor cost savings if given, but we still need
-                     * to read the 'decoderInputs' to know where we are in the
-                     * bit stream.
-                     */
-                    this.decoder = decoder;
-                }
+                // Reconstruct the decoder.
+                this.decoder = new CanonicalHuffmanLookupDecoder(decoderInputs
+                        .getLengths(), decoderInputs.getSymbols());
 
                 // skip over the coded byte[][] values.
                 O_codedValues = ibs.readBits();
@@ -1787,6 +1733,127 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
 
         }
 
+        /**
+         * Return the bit offset of the start of the coded value at that index
+         * relative to the start of the codedValue[].
+         * 
+         * @param array
+         *            The backing array for the coded data record.
+         * @param index
+         *            The index in [0:size] (the entry at <i>size</i> gives
+         *            the end of the last coded value).
+         */
+        private long getCodedValueOffset(final byte[] array, final int index) {
+
+            return BytesUtil.getBits64(array, (int) ((((long) aoff) << 3)
+                    + O_codedValueOffsets + ((long) index)
+                    * codedValueOffsetBits), codedValueOffsetBits);
+
+        }
+
+        /**
+         * Return the bit offset of the start of the codedValue[] relative to
+         * the start of the backing array.
+         */
+        private long getCodedValuesBitOffset() {
+
+            return (((long) aoff) << 3) + O_codedValues;
+
+        }
+
+        /**
+         * Return the #of symbols coded by the code words in the given range.
+         * 
+         * @param array
+         *            The backing array for the coded data record.
+         * @param pos
+         *            The bit offset of the first code word.
+         * @param end
+         *            The bit offset of the end of the last code word
+         *            (exclusive).
+         */
+        private int countSymbols(final byte[] array, long pos, final long end) {
+
+            int n = 0;
+
+            while (pos < end) {
+
+                pos += CanonicalHuffmanLookupDecoder.getCodeLength(decoder
+                        .decode(array, pos));
+
+                n++;
+
+            }
+
+            return n;
+
+        }
+
+        /**
+         * Decode the code words in the given range onto the caller's array.
+         * The caller is responsible for ensuring that the array has sufficient
+         * capacity.
+         * 
+         * @param array
+         *            The backing array for the coded data record.
+         * @param pos
+         *            The bit offset of the first code word.
+         * @param end
+         *            The bit offset of the end of the last code word
+         *            (exclusive).
+         * @param dst
+         *            The array onto which the decoded bytes are written.
+         * @param off
+         *            The offset in <i>dst</i> of the first decoded byte.
+         * 
+         * @return The #of decoded bytes.
+         */
+        private int decodeTo(final byte[] array, long pos, final long end,
+                final byte[] dst, int off) {
+
+            final int off0 = off;
+
+            if (!isSymbolTable) {
+
+                while (pos < end) {
+
+                    final int v = decoder.decode(array, pos);
+
+                    pos += CanonicalHuffmanLookupDecoder.getCodeLength(v);
+
+                    dst[off++] = (byte) KeyBuilder
+                            .encodeByte(CanonicalHuffmanLookupDecoder
+                                    .getSymbol(v));
+
+                }
+
+                return off - off0;
+
+            }
+
+            /*
+             * Note: This uses direct indexing into the backing byte[] to avoid
+             * method call and parameter check overhead associated with
+             * data.getByte().
+             */
+
+            final int soff = this.aoff + BYTE_O_symbols;
+
+            while (pos < end) {
+
+                final int v = decoder.decode(array, pos);
+
+                pos += CanonicalHuffmanLookupDecoder.getCodeLength(v);
+
+                dst[off++] = array[soff
+                        + CanonicalHuffmanLookupDecoder.getSymbol(v)];
+
+            }
+
+            return off - off0;
+
+        }
+
         /**
          * This computes the length of the decoded byte[] by counting the code
          * words for the coded value.
@@ -1826,65 +1893,14 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
 
             }
 
-            /*
-             * Figure out the bit length of the coded byte[].
-             * 
-             * Note: When we are allocating the byte[] for the caller we will
-             * scan the coded byte[] once to get the length of the decoded
-             * byte[] and then scan it again to decode the byte[].
-             */
-
-            final InputBitStream ibs = data.getInputBitStream();
-            try {
-
-                // get the bit offset of the start of this coded value.
-                ibs.position(O_codedValueOffsets + ((long) index)
-                        * codedValueOffsetBits);
-
-                final long O_from = ibs.readLong(codedValueOffsetBits);
-
-                // get the bit offset of the start of the next coded value.
-                ibs.position(O_codedValueOffsets + (index + 1L)
-                        * codedValueOffsetBits);
-
-                final long O_to = ibs.readLong(codedValueOffsetBits);
-
-                // the total length of this code in bits.
-                final long codeLength = O_to - O_from;
-
-                /*
-                 * Figure out how many symbols are in the coded byte[].
-                 */
-                // position at the start of the coded byte[].
-                ibs.position(O_from + O_codedValues);
-                // reset the read bits counter.
-                ibs.readBits(0L);
-                // #of symbols in this coded byte[].
-                int nsymbols = 0;
-                while (ibs.readBits() < codeLength) {
-
-                    decoder.decode(ibs);
-
-                    nsymbols++;
-
-                }
-
-                return nsymbols;
+            // the coded data record.
+            final byte[] array = data.array();
 
-            } catch (IOException ex) {
+            final long base = getCodedValuesBitOffset();
 
-                throw new RuntimeException(ex);
-
-// close not required for IBS backed by byte[] and has high overhead.
-//            } finally {
-//
-//                try {
-//                    ibs.close();
-//                } catch (IOException ex) {
-//                    log.error(ex);
-//                }
-
-            }
+            return countSymbols(array, base
+                    + getCodedValueOffset(array, index), base
+                    + getCodedValueOffset(array, index + 1));
 
         }
 
@@ -1928,136 +1944,26 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
                 return BytesUtil.EMPTY;
                 
             }
-                
-            final InputBitStream ibs = data.getInputBitStream();
-
-            try {
-
-                /*
-                 * Figure out the bit length of the coded byte[].
-                 * 
-                 * Note: When we are allocating the byte[] for the caller we
-                 * will scan the coded byte[] once to get the length of the
-                 * decoded byte[] and then scan it again to decode the byte[].
-                 */
-
-                // get the bit offset of the start of this coded value.
-                ibs.position(O_codedValueOffsets + ((long) index)
-                        * codedValueOffsetBits);
-
-                final long O_from = ibs.readLong(codedValueOffsetBits);
 
-                // get the bit offset of the start of the next coded value.
-                ibs.position(O_codedValueOffsets + (index + 1L)
-                        * codedValueOffsetBits);
-
-                final long O_to = ibs.readLong(codedValueOffsetBits);
-
-                // the total length of this code in bits.
-                final long codeLength = O_to - O_from;
-                
-                assert codeLength >= 0 : "index=" + index + ", codeLength="
-                        + codeLength;
-
-                /*
-                 * Figure out how many symbols are in the coded byte[].
-                 */
-                // position at the start of the coded byte[].
-                ibs.position(O_from + O_codedValues);
-                // reset the read bits counter (required).
-                ibs.readBits(0L);
-                // #of symbols in this coded byte[].
-                int nsymbols = 0;
-                while (ibs.readBits() < codeLength) {
-
-                    decoder.decode(ibs);
-
-                    nsymbols++;
-
-                }
-
-                /*
-                 * Allocate an exact fit byte[] and decode into that byte[]. We
-                 * decode to symbol indices and then convert symbol indices to
-                 * bytes, which are stored in that exact fit byte[].
-                 */
-
-                // position at the start of the coded byte[].
-                ibs.position(O_from + O_codedValues);
-                
-                return getFrom(ibs, nsymbols);
-
-            } catch (IOException ex) {
-
-                throw new RuntimeException(ex);
-
-// close not required for IBS backed by byte[] and has high overhead.
-//            } finally {
-//
-//                try {
-//                    ibs.close();
-//                } catch (IOException ex) {
-//                    log.error(ex);
-//                }
-
-            }
-
-        }
-
-        /**
-         * Decodes the specified number of symbols into an exact fit byte[]. The
-         * {@link InputBitStream} must be pre-positioned to the start of the
-         * coded symbols.
-         * 
-         * @param ibs
-         *            The bit stream.
-         * @param nsymbols
-         *            The #of symbols to decode.
-         * 
-         * @return The exact fit byte[] containing the decoded symbols.
-         * 
-         * @throws IOException
-         */
-        private byte[] getFrom(final InputBitStream ibs, final int nsymbols)
-                throws IOException {
-
-            // Allocate the decoded byte[].
-            final byte[] a = new byte[nsymbols];
-
-            if (!isSymbolTable) {
-
-                for (int i = 0; i < nsymbols; i++) {
+            // the coded data record.
+            final byte[] array = data.array();
 
-                    final int symbol = decoder.decode(ibs);
+            final long base = getCodedValuesBitOffset();
 
-                    a[i] = (byte) KeyBuilder.encodeByte(symbol);
+            final long from = base + getCodedValueOffset(array, index);
 
-                }
+            final long to = base + getCodedValueOffset(array, index + 1);
 
-                return a;
-                
-            }
+            assert from <= to : "index=" + index + ", from=" + from + ", to="
+                    + to;
 
             /*
-             * Note: This uses direct indexing into the backing byte[] to
-             * avoid method call and parameter check overhead associated
-             * with data.getByte().
+             * Allocate an exact fit byte[] and decode into that byte[].
              */
 
-            // the coded data record.
-            final byte[] array = data.array();
+            final byte[] a = new byte[countSymbols(array, from, to)];
 
-            final int aoff = this.aoff + BYTE_O_symbols;
-
-            for (int i = 0; i < nsymbols; i++) {
-
-                final int symbol = decoder.decode(ibs);
-
-                a[i] = array[aoff + symbol];
-
-                // a[i] = symbol2byte(array, symbol);
-
-            }
+            decodeTo(array, from, to, a, 0/* off */);
 
             return a;
 
@@ -2102,130 +2008,127 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
 
             }
 
-            final InputBitStream ibs = data.getInputBitStream();
+            // the coded data record.
+            final byte[] array = data.array();
 
-            try {
+            final long base = getCodedValuesBitOffset();
 
-                /*
-                 * Figure out the bit length of the coded byte[].
-                 * 
-                 * Note: When we are allocating the byte[] for the caller we
-                 * will scan the coded byte[] once to get the length of the
-                 * decoded byte[] and then scan it again to decode the byte[].
-                 */
+            long pos = base + getCodedValueOffset(array, index);
 
-                // get the bit offset of the start of this coded value.
-                ibs.position(O_codedValueOffsets + ((long) index)
-                        * codedValueOffsetBits);
+            final long end = base + getCodedValueOffset(array, index + 1);
 
-                final long O_from = ibs.readLong(codedValueOffsetBits);
+            assert pos <= end : "pos=" + pos + ", end=" + end;
 
-                // get the bit offset of the start of the next coded value.
-                ibs.position(O_codedValueOffsets + (index + 1L)
-                        * codedValueOffsetBits);
+            // compute once.
+            final int soff = this.aoff + BYTE_O_symbols;
 
-                final long O_to = ibs.readLong(codedValueOffsetBits);
+            // The #of symbols decoded. 
+            int n = 0;
 
-                // the total length of this code in bits.
-                final long codeLength = O_to - O_from;
+            try {
 
-                assert codeLength >= 0 : "codeLength=" + codeLength;
-                
-                /*
-                 * Copy the decoded symbols into the buffer.
-                 */
+                while (pos < end) {
+
+                    final int v = decoder.decode(array, pos);
+
+                    pos += CanonicalHuffmanLookupDecoder.getCodeLength(v);
+
+                    final int symbol = CanonicalHuffmanLookupDecoder
+                            .getSymbol(v);
 
-                // position at the start of the coded byte[].
-                ibs.position(O_from + O_codedValues);
+                    os.write(isSymbolTable ? array[soff + symbol]
+                            : KeyBuilder.encodeByte(symbol));
 
-                // transfer codeLength decoded bytes to caller's stream.
-                return copyFrom(ibs, codeLength, os);
+                    n++;
+
+                }
 
             } catch (IOException ex) {
 
                 throw new RuntimeException(ex);
-// close() not required for IBS backed by byte[], and has high overhead.
-//            } finally {
-//
-//                try {
-//                    ibs.close();
-//                } catch (IOException ex) {
-//                    log.error(ex);
-//                }
 
             }
 
+            return n;
+
         }
 
         /**
-         * Copy a sequence of decoded code words onto the caller's stream.
+         * Decode all values in a single pass over the coded values onto the
+         * caller's buffer. The buffer may be reused across leaves, which
+         * avoids allocating a <code>byte[]</code> per value.
          * 
-         * @param ibs
-         *            The input stream, pre-positioned at the start of the code
-         *            words to be decoded.
-         * @param codeLength
-         *            The bit length of the sequence of code words to be
-         *            decoded.
-         * @param os
-         *            Where to put the data.
+         * @param buf
+         *            The decoded values are written onto this buffer starting
+         *            at its current position. The position of the buffer is
+         *            advanced by the #of decoded bytes and the buffer is
+         *            extended as necessary.
+         * @param offsets
+         *            An array of at least {@link #size()}<code>+1</code>
+         *            elements. On return, <code>offsets[i]</code> is the
+         *            offset in the backing array of the buffer of the first
+         *            byte of the value at index <i>i</i> and
+         *            <code>offsets[i+1]-offsets[i]</code> is its length. A
+         *            <code>null</code> has a length of zero (use
+         *            {@link #isNull(int)} to distinguish it from an empty
+         *            <code>byte[]</code>).
          * 
-         * @return The #of decoded symbols that were copied.
-         * 
-         * @throws IOException
+         * @return The #of decoded bytes.
          */
-        private int copyFrom(final InputBitStream ibs, final long codeLength,
-                final OutputStream os) throws IOException {
+        public int decodeAll(final ByteArrayBuffer buf, final int[] offsets) {
 
-            // The #of symbols decoded. 
-            int nsymbols = 0;
-
-            // reset the read bits counter.
-            ibs.readBits(0L);
+            if (buf == null)
+                throw new IllegalArgumentException();
 
-            if (!isSymbolTable) {
+            if (offsets == null || offsets.length < size + 1)
+                throw new IllegalArgumentException();
 
-                while (ibs.readBits() < codeLength) {
+            final int pos0 = buf.pos();
 
-                    final int symbol = decoder.decode(ibs);
+            offsets[0] = pos0;
 
-                    final byte b = (byte) KeyBuilder.encodeByte(symbol);
+            if (nsymbols == 0) {
 
-                    os.write(b);
+                // All values are empty byte[]s or nulls.
+                for (int i = 1; i <= size; i++) {
 
-                    nsymbols++;
+                    offsets[i] = pos0;
 
                 }
 
-                return nsymbols;
+                return 0;
 
             }
 
-            /*
-             * Note: This uses direct indexing into the backing byte[] to avoid
-             * method call and parameter check overhead associated with
-             * data.getByte().
-             */
-
             // the coded data record.
             final byte[] array = data.array();
 
-            // compute once.
-            final int aoff = this.aoff + BYTE_O_symbols;
+            final long base = getCodedValuesBitOffset();
+
+            final int minCodeLength = decoder.getMinCodeLength();
 
-            while (ibs.readBits() < codeLength) {
+            long from = base + getCodedValueOffset(array, 0);
 
-                final int symbol = decoder.decode(ibs);
+            for (int i = 0; i < size; i++) {
 
-                // final byte b = symbol2byte(array, symbol);
-                final byte b = array[aoff + symbol];
+                final long to = base + getCodedValueOffset(array, i + 1);
 
-                os.write(b);
+                // the max #of symbols coded in that range.
+                buf.ensureFree((int) ((to - from) / minCodeLength));
 
-                nsymbols++;
+                final int n = decodeTo(array, from, to, buf.array(), buf
+                        .pos());
+
+                // simulates a relative put() of the decoded bytes.
+                buf.advancePosAndLimit(n);
+
+                offsets[i + 1] = buf.pos();
+
+                from = to;
 
             }
 
-            return nsymbols;
+            return buf.pos() - pos0;
 
         }
 
@@ -2327,34 +2230,13 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
             if(!isKeys())
                 throw new UnsupportedOperationException();
             
-            final InputBitStream ibs = data.getInputBitStream();
-
-            try {
-
-                return binarySearch(ibs, probe);
-                
-            } catch (IOException ex) {
-
-                throw new RuntimeException(ex);
-
-// close not required for IBS backed by byte[] and has high overhead.
-//            } finally {
-//
-//                try {
-//                    ibs.close();
-//                } catch (IOException ex) {
-//                    log.error(ex);
-//                }
-
-            }
+            return binarySearch(probe);
 
         }
 
         /**
          * Binary search in the coded key space.
          * 
-         * @param ibs
-         *            The bit stream.
          * @param key
          *            The key for the search.
          * 
@@ -2365,14 +2247,12 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
          *         guarantees that the return value will be >= 0 if and only if
          *         the key is found.
          */
-        final private int binarySearch(final InputBitStream ibs,
-                final byte[] key) throws IOException {
+        final private int binarySearch(final byte[] key) {
 
             /*
-             * The implementation codes the symbols in the key space one at a
-             * time, searching the coded values as it goes. This avoids the
-             * overhead of allocating a byte[] for the coded key. Instead, we
-             * directly access the codeWord for the symbol in the coder impl.
+             * The implementation decodes the symbols of the coded values one
+             * at a time, comparing them with the key as it goes. This avoids
+             * the overhead of allocating a byte[] for the decoded value.
              */
 
             // the coded data record.
@@ -2393,7 +2273,7 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
                 final int offset = base + mid;
 
                 // compare actual vs probe
-                final int tmp = compare(ibs, offset/* index */, key, array);
+                final int tmp = compare(offset/* index */, key, array);
 
                 if (tmp > 0) {
 
@@ -2425,7 +2305,8 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
 
         /**
          * Compares the given byte[] to the coded value at the specified index.
-         * The comparison is done in the code space.
+         * The comparison decodes one symbol at a time and stops at the first
+         * byte which differs.
          * 
          * @param index
          *            The index of the coded value.
@@ -2436,13 +2317,10 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
          * 
          * @return a negative integer, zero, or a positive integer if the coded
          *         value identified by the <i>index</i> is less than, equal to,
-         *         or greater than the <i>key</i> when they are compared in the
-         *         code space.
-         * 
-         * @throws IOException
+         *         or greater than the <i>key</i>.
          */
-        private int compare(final InputBitStream ibs, final int index,
-                final byte[] key, final byte[] array) throws IOException {
+        private int compare(final int index, final byte[] key,
+                final byte[] array) {
 
             if (nsymbols == 0) {
 
@@ -2457,43 +2335,29 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
 
             }
 
-            // get the bit offset of the start of this coded value.
-            ibs.position(O_codedValueOffsets + ((long) index)
-                    * codedValueOffsetBits);
-
-            final long O_from = ibs.readLong(codedValueOffsetBits);
-
-            // get the bit offset of the start of the next coded value.
-            ibs.position(O_codedValueOffsets + (index + 1L)
-                    * codedValueOffsetBits);
-
-            final long O_to = ibs.readLong(codedValueOffsetBits);
+            final long base = getCodedValuesBitOffset();
 
-            // the total length of this code in bits.
-            final long codeLength = O_to - O_from;
+            long pos = base + getCodedValueOffset(array, index);
 
-            assert codeLength >= 0;
+            final long end = base + getCodedValueOffset(array, index + 1);
 
-            // position at the start of the coded byte[].
-            ibs.position(O_from + O_codedValues);
-
-            // reset the read bits counter.
-            ibs.readBits(0L);
+            assert pos <= end;
 
             // #of symbols decoded.
             int nsymbols = 0;
 
             // pre-compute once.
-            final int aoff = this.aoff + BYTE_O_symbols;
+            final int soff = this.aoff + BYTE_O_symbols;
             
             // loop compares decoded symbols one-by-one.
-            while (ibs.readBits() < codeLength && nsymbols < key.length) {
+            while (pos < end && nsymbols < key.length) {
 
-                assert decoder != null;
-                
-                final int symbol = decoder.decode(ibs);
+                final int v = decoder.decode(array, pos);
+
+                pos += CanonicalHuffmanLookupDecoder.getCodeLength(v);
+
+                final int symbol = CanonicalHuffmanLookupDecoder.getSymbol(v);
 
-//              final byte b = symbol2byte(array, symbol);
                 final byte b;
                 if (!isSymbolTable) {
 
@@ -2507,7 +2371,7 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
                      * with data.getByte().
                      */
 
-                    b = array[aoff + symbol];
+                    b = array[soff + symbol];
                 
                 }
                 
@@ -2531,7 +2395,7 @@ public class CanonicalHuffmanRabaCoder implements IRabaCoder, Externalizable {
                  * longer.
                  */
                 
-                if (ibs.readBits() < codeLength) {
+                if (pos < end) {
                 
                     return -1;
                     
@@ -0,0 +1,944 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.btree.raba.codec;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.bigdata.btree.raba.IRaba;
+import com.bigdata.btree.raba.codec.FrontCodedRabaCoder.DefaultFrontCodedRabaCoder;
+import com.bigdata.io.AbstractFixedByteArrayBuffer;
+import com.bigdata.io.DataOutputBuffer;
+import com.bigdata.util.Bytes;
+import com.bigdata.util.BytesUtil;
+import com.bigdata.util.BytesUtil.UnsignedByteArrayComparator;
+
+/**
+ * Coder for B+Tree keys which are the concatenation of a sequence of
+ * components, such as the {@link IRaba}s of the statement indices whose keys
+ * are a sequence of term identifiers. Within a leaf, the same component values
+ * tend to repeat many times in each column. The keys are split into columns and
+ * each column is coded as a dictionary of its distinct values in sorted order
+ * plus a bit-packed vector of dictionary codes having one code per key.
+ * <p>
+ * Subclasses define how a key is split into columns using
+ * {@link #getColumnLength(byte[], int, int)}. All keys in the {@link IRaba}
+ * must split into the same #of columns. If any key can not be split, then the
+ * {@link IRaba} is coded using the fallback {@link IRabaCoder} instead. The
+ * columns may have a variable length. If all values in a column have the same
+ * length then the column dictionary does not store any offsets.
+ * <p>
+ * The coded keys support random access and binary search without
+ * materializing the keys. Search compares the probe key against the
+ * dictionary values of each column in turn.
+ *
+ * <h2>Binary Format</h2>
+ *
+ * <pre>
+ * version  : byte
+ * fallback : byte
+ * </pre>
+ *
+ * If <i>fallback</i> is non-zero, then the data coded by the fallback coder
+ * follow. Otherwise:
+ *
+ * <pre>
+ * size     : int32
+ * ncols    : byte
+ * colAddr  : ncols * int32
+ * column[] : ncols * column
+ * </pre>
+ *
+ * where each <i>column</i> is:
+ *
+ * <pre>
+ * ndict    : int32
+ * nbits    : byte
+ * width    : byte
+ * fixedLen : int32 (iff width is ZERO)
+ * offsets  : (ndict+1) * width (iff width is non-zero)
+ * values   : the concatenated dictionary values
+ * codes    : ceil(size * nbits / 8) bytes
+ * </pre>
+ *
+ * <dl>
+ * <dt>size</dt>
+ * <dd>The #of keys.</dd>
+ * <dt>ncols</dt>
+ * <dd>The #of columns.</dd>
+ * <dt>colAddr</dt>
+ * <dd>The byte offset of each column record from the start of the coded
+ * record.</dd>
+ * <dt>ndict</dt>
+ * <dd>The #of distinct values in the column.</dd>
+ * <dt>nbits</dt>
+ * <dd>The #of bits in each dictionary code.</dd>
+ * <dt>width</dt>
+ * <dd>The #of bytes in each offset into the values (2 or 4) -or- ZERO (0) if
+ * every value in the column has the same length.</dd>
+ * <dt>fixedLen</dt>
+ * <dd>The length of each value when they all have the same length.</dd>
+ * <dt>offsets</dt>
+ * <dd>The offset of each dictionary value relative to the start of the
+ * values. The last offset is the total length of the values.</dd>
+ * <dt>codes</dt>
+ * <dd>The dictionary code for the column of each key.</dd>
+ * </dl>
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+abstract public class ColumnDictionaryRabaCoder implements IRabaCoder,
+        Externalizable {
+
+    private static final long serialVersionUID = -2953713593412287571L;
+
+    private static final byte VERSION0 = 0x00;
+
+    /**
+     * The maximum #of columns.
+     */
+    protected static final int MAX_COLUMNS = 255;
+
+    /**
+     * The coder used when the keys can not be split into columns.
+     */
+    private IRabaCoder fallbackCoder;
+
+    /**
+     * Return the length of the column value which starts at the given offset
+     * of the key.
+     *
+     * @param key
+     *            The key.
+     * @param off
+     *            The offset of the first byte of the column value.
+     * @param column
+     *            The index of the column.
+     *
+     * @return The length of the column value -or- <code>-1</code> if the key
+     *         can not be split into columns.
+     */
+    abstract protected int getColumnLength(byte[] key, int off, int column);
+
+    /**
+     * De-serialization ctor. The fallback coder is a
+     * {@link DefaultFrontCodedRabaCoder}.
+     */
+    public ColumnDictionaryRabaCoder() {
+
+        this(DefaultFrontCodedRabaCoder.INSTANCE);
+
+    }
+
+    /**
+     * @param fallbackCoder
+     *            The coder used when the keys can not be split into columns.
+     */
+    public ColumnDictionaryRabaCoder(final IRabaCoder fallbackCoder) {
+
+        if (fallbackCoder == null)
+            throw new IllegalArgumentException();
+
+        if (!fallbackCoder.isKeyCoder())
+            throw new IllegalArgumentException();
+
+        this.fallbackCoder = fallbackCoder;
+
+    }
+
+    /**
+     * The coder used when the keys can not be split into columns.
+     */
+    final public IRabaCoder getFallbackCoder() {
+
+        return fallbackCoder;
+
+    }
+
+    /**
+     * Yes.
+     */
+    @Override
+    final public boolean isKeyCoder() {
+
+        return true;
+
+    }
+
+    /**
+     * No.
+     */
+    @Override
+    final public boolean isValueCoder() {
+
+        return false;
+
+    }
+
+    @Override
+    public boolean isDuplicateKeys() {
+
+        return false;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return super.toString() + "{fallbackCoder=" + fallbackCoder + "}";
+
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+
+        out.writeByte(VERSION0);
+
+        out.writeObject(fallbackCoder);
+
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException,
+            ClassNotFoundException {
+
+        final byte version = in.readByte();
+
+        switch (version) {
+        case VERSION0:
+            break;
+        default:
+            throw new IOException("Unknown version: " + version);
+        }
+
+        fallbackCoder = (IRabaCoder) in.readObject();
+
+    }
+
+    /** The byte offset to the version identifier. */
+    static private final int O_VERSION = 0;
+    /** The byte offset of the fallback flag. */
+    static private final int O_FALLBACK = O_VERSION + 1;
+    /** The byte offset of the #of keys. */
+    static private final int O_SIZE = O_FALLBACK + 1;
+    /** The byte offset of the #of columns. */
+    static private final int O_NCOLS = O_SIZE + Bytes.SIZEOF_INT;
+    /** The byte offset of the column addresses. */
+    static private final int O_COLADDR = O_NCOLS + 1;
+
+    /**
+     * Split the keys into columns.
+     *
+     * @return The length of each column value for each key -or-
+     *         <code>null</code> if the keys can not be split into the same #of
+     *         columns.
+     */
+    private int[][] split(final IRaba raba) {
+
+        final int size = raba.size();
+
+        int[][] lengths = null;
+
+        final int[] tmp = new int[MAX_COLUMNS];
+
+        for (int i = 0; i < size; i++) {
+
+            final byte[] key = raba.get(i);
+
+            int ncols = 0;
+
+            int off = 0;
+
+            while (off < key.length) {
+
+                if (ncols == MAX_COLUMNS)
+                    return null;
+
+                final int len = getColumnLength(key, off, ncols);
+
+                if (len <= 0 || off + len > key.length)
+                    return null;
+
+                tmp[ncols++] = len;
+
+                off += len;
+
+            }
+
+            if (lengths == null) {
+
+                if (ncols == 0)
+                    return null;
+
+                lengths = new int[size][];
+
+            } else if (ncols != lengths[0].length) {
+
+                return null;
+
+            }
+
+            lengths[i] = Arrays.copyOf(tmp, ncols);
+
+        }
+
+        return lengths;
+
+    }
+
+    @Override
+    public ICodedRaba encodeLive(final IRaba raba, final DataOutputBuffer buf) {
+
+        if (raba == null)
+            throw new IllegalArgumentException();
+
+        if (buf == null)
+            throw new IllegalArgumentException();
+
+        if (!raba.isKeys())
+            throw new UnsupportedOperationException("Must be keys.");
+
+        final int size = raba.size();
+
+        // The byte offset of the origin of the coded data in the buffer.
+        final int O_origin = buf.pos();
+
+        buf.putByte(VERSION0);
+
+        final int[][] lengths = size == 0 ? null : split(raba);
+
+        if (lengths == null) {
+
+            buf.putByte((byte) 1);
+
+            final ICodedRaba delegate = fallbackCoder.encodeLive(raba, buf);
+
+            return new CodedRabaImpl(buf.slice(O_origin, buf.pos() - O_origin),
+                    delegate);
+
+        }
+
+        buf.putByte((byte) 0);
+
+        buf.putInt(size);
+
+        final int ncols = lengths[0].length;
+
+        buf.putByte((byte) ncols);
+
+        // reserve space for the column addresses.
+        final int O_colAddr = buf.pos();
+
+        for (int col = 0; col < ncols; col++) {
+
+            buf.putInt(0);
+
+        }
+
+        // the offset of the current column value in each key.
+        final int[] offs = new int[size];
+
+        // the dictionary code of each key for the current column.
+        final int[] codes = new int[size];
+
+        for (int col = 0; col < ncols; col++) {
+
+            buf.putInt(O_colAddr + col * Bytes.SIZEOF_INT, buf.pos()
+                    - O_origin);
+
+            /*
+             * Build the dictionary of the distinct values in the column.
+             */
+            final TreeMap<byte[], int[]> dict = new TreeMap<byte[], int[]>(
+                    UnsignedByteArrayComparator.INSTANCE);
+
+            final byte[][] vals = new byte[size][];
+
+            for (int i = 0; i < size; i++) {
+
+                final byte[] key = raba.get(i);
+
+                final byte[] val = Arrays.copyOfRange(key, offs[i], offs[i]
+                        + lengths[i][col]);
+
+                offs[i] += lengths[i][col];
+
+                int[] code = dict.get(val);
+
+                if (code == null) {
+
+                    dict.put(val, code = new int[1]);
+
+                }
+
+                vals[i] = val;
+
+            }
+
+            final int ndict = dict.size();
+
+            // assign the codes in sorted order and total the value lengths.
+            int fixedLen = -1;
+            int totalLen = 0;
+            {
+                int code = 0;
+                for (Map.Entry<byte[], int[]> e : dict.entrySet()) {
+                    e.getValue()[0] = code++;
+                    final int len = e.getKey().length;
+                    fixedLen = fixedLen == -1 || fixedLen == len ? len : -2;
+                    totalLen += len;
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+
+                codes[i] = dict.get(vals[i])[0];
+
+            }
+
+            final int nbits = ndict == 1 ? 0 : 32 - Integer
+                    .numberOfLeadingZeros(ndict - 1);
+
+            final int width = fixedLen >= 0 ? 0
+                    : totalLen <= Short.MAX_VALUE * 2 + 1 ? 2 : 4;
+
+            buf.putInt(ndict);
+
+            buf.putByte((byte) nbits);
+
+            buf.putByte((byte) width);
+
+            if (width == 0) {
+
+                buf.putInt(fixedLen);
+
+            } else {
+
+                int off = 0;
+
+                for (byte[] val : dict.keySet()) {
+
+                    putOffset(buf, width, off);
+
+                    off += val.length;
+
+                }
+
+                putOffset(buf, width, off);
+
+            }
+
+            for (byte[] val : dict.keySet()) {
+
+                buf.put(val);
+
+            }
+
+            buf.put(packBits(codes, size, nbits));
+
+        }
+
+        final AbstractFixedByteArrayBuffer slice = buf.slice(O_origin, buf
+                .pos()
+                - O_origin);
+
+        return new CodedRabaImpl(slice);
+
+    }
+
+    private static void putOffset(final DataOutputBuffer buf, final int width,
+            final int off) {
+
+        if (width == 2) {
+
+            buf.putShort((short) off);
+
+        } else {
+
+            buf.putInt(off);
+
+        }
+
+    }
+
+    /**
+     * Pack the codes into a bit vector using <i>nbits</i> per code.
+     *
+     * Note: bit order is per {@link BytesUtil#getBits(byte[], int, int)}.
+     */
+    private static byte[] packBits(final int[] codes, final int size,
+            final int nbits) {
+
+        final byte[] a = new byte[(int) (((long) size * nbits + 7) / 8)];
+
+        if (nbits == 0)
+            return a;
+
+        long bit = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            final int code = codes[i];
+
+            for (int b = nbits - 1; b >= 0; b--, bit++) {
+
+                if (((code >>> b) & 1) != 0) {
+
+                    a[(int) (bit >>> 3)] |= 0x80 >>> (bit & 7);
+
+                }
+
+            }
+
+        }
+
+        return a;
+
+    }
+
+    @Override
+    public AbstractFixedByteArrayBuffer encode(final IRaba raba,
+            final DataOutputBuffer buf) {
+
+        return encodeLive(raba, buf).data();
+
+    }
+
+    @Override
+    public ICodedRaba decode(final AbstractFixedByteArrayBuffer data) {
+
+        final byte version = data.getByte(O_VERSION);
+
+        switch (version) {
+        case VERSION0:
+            break;
+        default:
+            throw new RuntimeException("Unknown version: " + version);
+        }
+
+        if (data.getByte(O_FALLBACK) != 0) {
+
+            return new CodedRabaImpl(data, fallbackCoder.decode(data.slice(
+                    O_SIZE, data.len() - O_SIZE)));
+
+        }
+
+        return new CodedRabaImpl(data);
+
+    }
+
+    /**
+     * Class provides in place access to the coded keys.
+     */
+    private static class CodedRabaImpl extends AbstractCodedRaba {
+
+        private final AbstractFixedByteArrayBuffer data;
+
+        /**
+         * The decoded fallback data -or- <code>null</code> if the keys were
+         * coded as columns.
+         */
+        private final ICodedRaba fallback;
+
+        /** The #of keys. */
+        private final int size;
+
+        /** The #of columns. */
+        private final int ncols;
+
+        /** The #of bits in the codes of each column. */
+        private final int[] nbits;
+
+        /** The offset width of each column (ZERO if fixed length). */
+        private final int[] width;
+
+        /** The fixed length of the values of each column (if any). */
+        private final int[] fixedLen;
+
+        /** The offset of the offsets for each column (if any). */
+        private final int[] O_offsets;
+
+        /** The offset of the dictionary values of each column. */
+        private final int[] O_values;
+
+        /** The offset of the codes of each column. */
+        private final int[] O_codes;
+
+        /**
+         * Ctor for data coded by the fallback coder.
+         */
+        CodedRabaImpl(final AbstractFixedByteArrayBuffer data,
+                final ICodedRaba fallback) {
+
+            this.data = data;
+            this.fallback = fallback;
+            this.size = fallback.size();
+            this.ncols = 0;
+            this.nbits = this.width = this.fixedLen = this.O_offsets = this.O_values = this.O_codes = null;
+
+        }
+
+        /**
+         * Ctor for data coded as columns.
+         */
+        CodedRabaImpl(final AbstractFixedByteArrayBuffer data) {
+
+            this.data = data;
+            this.fallback = null;
+            this.size = data.getInt(O_SIZE);
+            this.ncols = data.getByte(O_NCOLS) & 0xff;
+            this.nbits = new int[ncols];
+            this.width = new int[ncols];
+            this.fixedLen = new int[ncols];
+            this.O_offsets = new int[ncols];
+            this.O_values = new int[ncols];
+            this.O_codes = new int[ncols];
+
+            for (int col = 0; col < ncols; col++) {
+
+                int pos = data.getInt(O_COLADDR + col * Bytes.SIZEOF_INT);
+
+                final int ndict = data.getInt(pos);
+                pos += Bytes.SIZEOF_INT;
+
+                nbits[col] = data.getByte(pos++);
+
+                width[col] = data.getByte(pos++);
+
+                final int valuesLen;
+
+                if (width[col] == 0) {
+
+                    fixedLen[col] = data.getInt(pos);
+                    pos += Bytes.SIZEOF_INT;
+
+                    valuesLen = ndict * fixedLen[col];
+
+                } else {
+
+                    O_offsets[col] = pos;
+                    pos += (ndict + 1) * width[col];
+
+                    valuesLen = getOffset(col, ndict);
+
+                }
+
+                O_values[col] = pos;
+
+                O_codes[col] = pos + valuesLen;
+
+            }
+
+        }
+
+        @Override
+        public AbstractFixedByteArrayBuffer data() {
+
+            return data;
+
+        }
+
+        /**
+         * Represents B+Tree keys.
+         */
+        @Override
+        final public boolean isKeys() {
+
+            return true;
+
+        }
+
+        @Override
+        final public int size() {
+
+            return size;
+
+        }
+
+        @Override
+        final public int capacity() {
+
+            return size;
+
+        }
+
+        @Override
+        final public boolean isEmpty() {
+
+            return size == 0;
+
+        }
+
+        /**
+         * Always returns <code>true</code> since the coded representation is
+         * dense.
+         */
+        @Override
+        final public boolean isFull() {
+
+            return true;
+
+        }
+
+        /**
+         * Always returns <code>false</code> (<code>null</code>s are not
+         * allowed).
+         */
+        @Override
+        final public boolean isNull(final int index) {
+
+            return false;
+
+        }
+
+        private void rangeCheck(final int index) {
+
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException();
+
+        }
+
+        /**
+         * The dictionary code of the given column for the key at the given
+         * index.
+         */
+        private int getCode(final int col, final int index) {
+
+            final int n = nbits[col];
+
+            if (n == 0)
+                return 0;
+
+            return BytesUtil.getBits(data.array(),
+                    ((data.off() + O_codes[col]) << 3) + index * n, n);
+
+        }
+
+        /**
+         * The offset of the given dictionary value relative to the start of
+         * the values of the given column.
+         */
+        private int getOffset(final int col, final int code) {
+
+            final int w = width[col];
+
+            if (w == 0)
+                return code * fixedLen[col];
+
+            final int pos = O_offsets[col] + code * w;
+
+            if (w == 2)
+                return data.getShort(pos) & 0xffff;
+
+            return data.getInt(pos);
+
+        }
+
+        /**
+         * The length of the given dictionary value of the given column.
+         */
+        private int getLength(final int col, final int code) {
+
+            if (width[col] == 0)
+                return fixedLen[col];
+
+            return getOffset(col, code + 1) - getOffset(col, code);
+
+        }
+
+        @Override
+        public int length(final int index) {
+
+            if (fallback != null)
+                return fallback.length(index);
+
+            rangeCheck(index);
+
+            int len = 0;
+
+            for (int col = 0; col < ncols; col++) {
+
+                len += getLength(col, getCode(col, index));
+
+            }
+
+            return len;
+
+        }
+
+        @Override
+        public byte[] get(final int index) {
+
+            if (fallback != null)
+                return fallback.get(index);
+
+            final byte[] a = new byte[length(index)];
+
+            int off = 0;
+
+            for (int col = 0; col < ncols; col++) {
+
+                final int code = getCode(col, index);
+
+                final int len = getLength(col, code);
+
+                data.get(O_values[col] + getOffset(col, code), a, off, len);
+
+                off += len;
+
+            }
+
+            return a;
+
+        }
+
+        @Override
+        public int copy(final int index, final OutputStream os) {
+
+            if (fallback != null)
+                return fallback.copy(index, os);
+
+            rangeCheck(index);
+
+            int n = 0;
+
+            try {
+
+                for (int col = 0; col < ncols; col++) {
+
+                    final int code = getCode(col, index);
+
+                    final int len = getLength(col, code);
+
+                    data.writeOn(os, O_values[col] + getOffset(col, code), len);
+
+                    n += len;
+
+                }
+
+            } catch (IOException ex) {
+
+                throw new RuntimeException(ex);
+
+            }
+
+            return n;
+
+        }
+
+        /**
+         * Compare the probe key with the key at the given index, interpreting
+         * both as unsigned byte[]s.
+         *
+         * @return A negative integer, zero, or a positive integer if the probe
+         *         key is LT, EQ, or GT the key at that index.
+         */
+        private int compare(final byte[] probe, final int index) {
+
+            final byte[] a = data.array();
+
+            final int base = data.off();
+
+            int i = 0; // offset into the probe.
+
+            for (int col = 0; col < ncols; col++) {
+
+                final int code = getCode(col, index);
+
+                final int len = getLength(col, code);
+
+                final int pos = base + O_values[col] + getOffset(col, code);
+
+                for (int j = 0; j < len; j++, i++) {
+
+                    if (i == probe.length) {
+
+                        // The probe is a prefix of the key.
+                        return -1;
+
+                    }
+
+                    final int ret = (probe[i] & 0xff) - (a[pos + j] & 0xff);
+
+                    if (ret != 0)
+                        return ret;
+
+                }
+
+            }
+
+            // The key is a prefix of the probe or they are equal.
+            return i == probe.length ? 0 : 1;
+
+        }
+
+        @Override
+        public int search(final byte[] probe) {
+
+            if (fallback != null)
+                return fallback.search(probe);
+
+            int low = 0;
+
+            int high = size - 1;
+
+            while (low <= high) {
+
+                final int mid = (low + high) >>> 1;
+
+                final int tmp = compare(probe, mid);
+
+                if (tmp > 0) {
+
+                    // Actual LT probe, restrict lower bound and try again.
+                    low = mid + 1;
+
+                } else if (tmp < 0) {
+
+                    // Actual GT probe, restrict upper bound and try again.
+                    high = mid - 1;
+
+                } else {
+
+                    // Found: return offset.
+                    return mid;
+
+                }
+
+            }
+
+            // Not found: return insertion point.
+            return -(low + 1);
+
+        }
+
+    }
+
+}
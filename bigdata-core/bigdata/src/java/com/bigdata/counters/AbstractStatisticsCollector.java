@@ -45,6 +45,7 @@ import org.apache.system.SystemUtil;
 
 import com.bigdata.Banner;
 import com.bigdata.BigdataStatics;
+import com.bigdata.btree.NodeDataCache;
 import com.bigdata.counters.httpd.CounterSetHTTPD;
 import com.bigdata.counters.linux.StatisticsCollectorForLinux;
 import com.bigdata.counters.osx.StatisticsCollectorForOSX;
@@ -330,20 +331,14 @@ abstract public class AbstractStatisticsCollector implements IStatisticsCollecto
                             + "DirectBufferPool").attach(
                     DirectBufferPool.getCounters());
 
-//          @see BLZG-1501 (remove LRUNexus)
-//            if (LRUNexus.INSTANCE != null) {
-//
-//                /*
-//                 * Add counters reporting on the global LRU and the per-store
-//                 * caches.
-//                 */
-//
-//                serviceRoot.makePath(
-//                        IProcessCounters.Memory + ICounterSet.pathSeparator
-//                                + "LRUNexus").attach(
-//                        LRUNexus.INSTANCE.getCounterSet());
-//
-//            }
+            /*
+             * Add counters reporting on the shared cache of decoded node and
+             * leaf data records.
+             */
+            serviceRoot.makePath(
+                    IProcessCounters.Memory + ICounterSet.pathSeparator
+                            + "NodeDataCache").attach(
+                    NodeDataCache.INSTANCE.getCounters());
             
         }
         
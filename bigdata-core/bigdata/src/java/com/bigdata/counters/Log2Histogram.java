@@ -0,0 +1,179 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.counters;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative values using power of two buckets.
+ * Bucket zero counts the value zero. Bucket <code>i</code> counts the values
+ * in <code>[2^(i-1):2^i-1]</code>. The last bucket also counts all larger
+ * values.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class Log2Histogram {
+
+    private final AtomicLongArray counts;
+
+    /**
+     * @param nbuckets
+     *            The #of buckets (GTE TWO).
+     */
+    public Log2Histogram(final int nbuckets) {
+
+        if (nbuckets < 2 || nbuckets > 64)
+            throw new IllegalArgumentException();
+
+        counts = new AtomicLongArray(nbuckets);
+
+    }
+
+    /**
+     * The #of buckets.
+     */
+    public int getBucketCount() {
+
+        return counts.length();
+
+    }
+
+    /**
+     * Return the index of the bucket for a value.
+     *
+     * @param v
+     *            The value. Negative values are counted as zero.
+     */
+    public int getBucket(final long v) {
+
+        if (v <= 0)
+            return 0;
+
+        final int i = 64 - Long.numberOfLeadingZeros(v);
+
+        return Math.min(i, counts.length() - 1);
+
+    }
+
+    /**
+     * Count a value.
+     */
+    public void add(final long v) {
+
+        counts.incrementAndGet(getBucket(v));
+
+    }
+
+    /**
+     * The #of values counted by the given bucket.
+     */
+    public long get(final int bucket) {
+
+        return counts.get(bucket);
+
+    }
+
+    /**
+     * The #of values counted by all buckets.
+     */
+    public long getCount() {
+
+        long n = 0;
+
+        for (int i = 0; i < counts.length(); i++)
+            n += counts.get(i);
+
+        return n;
+
+    }
+
+    /**
+     * The label of a bucket, e.g., <code>0</code>, <code>1</code>,
+     * <code>2-3</code>, <code>4-7</code>, or <code>1024+</code> for the last
+     * bucket.
+     */
+    public String getLabel(final int bucket) {
+
+        if (bucket == 0)
+            return "0";
+
+        final long lo = 1L << (bucket - 1);
+
+        if (bucket == counts.length() - 1)
+            return lo + "+";
+
+        final long hi = (1L << bucket) - 1;
+
+        return lo == hi ? "" + lo : lo + "-" + hi;
+
+    }
+
+    /**
+     * Return a {@link CounterSet} reporting the #of values counted by each
+     * bucket.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet counterSet = new CounterSet();
+
+        for (int i = 0; i < counts.length(); i++) {
+
+            final int bucket = i;
+
+            counterSet.addCounter(getLabel(i), new Instrument<Long>() {
+                @Override
+                protected void sample() {
+                    setValue(counts.get(bucket));
+                }
+            });
+
+        }
+
+        return counterSet;
+
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append("{");
+
+        for (int i = 0; i < counts.length(); i++) {
+
+            if (i > 0)
+                sb.append(", ");
+
+            sb.append(getLabel(i) + "=" + counts.get(i));
+
+        }
+
+        sb.append("}");
+
+        return sb.toString();
+
+    }
+
+}
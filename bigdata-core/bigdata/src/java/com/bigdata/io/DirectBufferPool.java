@@ -4,6 +4,8 @@ import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -341,6 +343,22 @@ public class DirectBufferPool {
      * {@link #DEBUG} is <code>true</code>.
      */
     private final CAT leaked = new CAT();
+
+    /**
+     * The #of buffers acquired from this pool.
+     */
+    private final CAT acquireCount = new CAT();
+
+    /**
+     * The #of buffers released back to this pool.
+     */
+    private final CAT releaseCount = new CAT();
+
+    /**
+     * The #of times that a request to acquire a buffer had to wait because
+     * the pool was at its capacity.
+     */
+    private final CAT waitCount = new CAT();
     
     /**
      * The maximum #of {@link ByteBuffer}s that will be allocated. 
@@ -428,6 +446,34 @@ public class DirectBufferPool {
 
     }
 
+    /**
+     * The #of {@link ByteBuffer}s which have been acquired from this pool.
+     */
+    public long getAcquireCount() {
+
+        return acquireCount.get();
+
+    }
+
+    /**
+     * The #of {@link ByteBuffer}s which have been released back to this pool.
+     */
+    public long getReleaseCount() {
+
+        return releaseCount.get();
+
+    }
+
+    /**
+     * The #of times that a request to acquire a {@link ByteBuffer} had to wait
+     * because this pool was at its capacity.
+     */
+    public long getWaitCount() {
+
+        return waitCount.get();
+
+    }
+
     /**
      * The capacity in bytes of the {@link ByteBuffer}s managed by this pool as
      * specified to the constructor.
@@ -492,6 +538,35 @@ public class DirectBufferPool {
         String DEBUG = DirectBufferPool.class.getName() + ".debug";
 
         String DEFAULT_DEBUG = "false";
+
+        /**
+         * A comma separated list of the capacities in bytes of additional
+         * pools of smaller buffers (default {@value #DEFAULT_SIZE_CLASSES}).
+         * Each capacity defines a size class. The {@link DirectBufferPool#INSTANCE}
+         * is always the largest size class. Capacities which are not less
+         * than {@link #BUFFER_CAPACITY} are ignored. Buffers are only
+         * allocated for a size class when they are requested, so an unused
+         * size class does not consume native memory.
+         * 
+         * @see DirectBufferPool#getPool(int)
+         */
+        String SIZE_CLASSES = DirectBufferPool.class.getName()
+                + ".sizeClasses";
+
+        String DEFAULT_SIZE_CLASSES = "" + Bytes.kilobyte32 * 64 + ","
+                + Bytes.kilobyte32 * 256;
+
+        /**
+         * A comma separated list of the pool capacities (the maximum #of
+         * buffers) for each of the {@link #SIZE_CLASSES} (default
+         * {@value #DEFAULT_SIZE_CLASS_POOL_CAPACITY}). When a single value is
+         * given, it is used for all size classes. Otherwise there must be one
+         * value for each size class.
+         */
+        String SIZE_CLASS_POOL_CAPACITY = DirectBufferPool.class.getName()
+                + ".sizeClassPoolCapacity";
+
+        String DEFAULT_SIZE_CLASS_POOL_CAPACITY = "" + Integer.MAX_VALUE;
         
     }
 
@@ -517,6 +592,14 @@ public class DirectBufferPool {
 //     */
 //    public final static DirectBufferPool INSTANCE_10M;
 
+    /**
+     * The size classes in order of increasing buffer capacity. The last size
+     * class is the {@link #INSTANCE}.
+     * 
+     * @see Options#SIZE_CLASSES
+     */
+    private final static DirectBufferPool[] sizeClasses;
+
     /**
      * An unbounded list of all {@link DirectBufferPool} instances.
      */
@@ -545,6 +628,11 @@ public class DirectBufferPool {
                 poolCapacity,//
                 bufferCapacity//
                 );
+
+        sizeClasses = newSizeClasses(INSTANCE, System.getProperty(
+                Options.SIZE_CLASSES, Options.DEFAULT_SIZE_CLASSES), System
+                .getProperty(Options.SIZE_CLASS_POOL_CAPACITY,
+                        Options.DEFAULT_SIZE_CLASS_POOL_CAPACITY));
         
 //        INSTANCE_10M = new DirectBufferPool(//
 //                "10M",//
@@ -575,6 +663,119 @@ public class DirectBufferPool {
 
     }
     
+    /**
+     * Create the pools for the size classes.
+     * 
+     * @param largest
+     *            The pool for the largest size class.
+     * @param sizes
+     *            A comma separated list of buffer capacities.
+     * @param capacities
+     *            A comma separated list of pool capacities (one per size or a
+     *            single value used for all sizes).
+     * 
+     * @return The pools in order of increasing buffer capacity.
+     * 
+     * @see Options#SIZE_CLASSES
+     * @see Options#SIZE_CLASS_POOL_CAPACITY
+     */
+    static DirectBufferPool[] newSizeClasses(final DirectBufferPool largest,
+            final String sizes, final String capacities) {
+
+        final String[] a = sizes.trim().length() == 0 ? new String[0] : sizes
+                .split(",");
+
+        final String[] c = capacities.split(",");
+
+        if (c.length != 1 && c.length != a.length)
+            throw new IllegalArgumentException(Options.SIZE_CLASS_POOL_CAPACITY
+                    + "=" + capacities + " does not match "
+                    + Options.SIZE_CLASSES + "=" + sizes);
+
+        final TreeMap<Integer, Integer> classes = new TreeMap<Integer, Integer>();
+
+        for (int i = 0; i < a.length; i++) {
+
+            final int bufferCapacity = Integer.parseInt(a[i].trim());
+
+            final int poolCapacity = Integer.parseInt(c[c.length == 1 ? 0 : i]
+                    .trim());
+
+            if (bufferCapacity >= largest.getBufferCapacity()) {
+
+                log.warn("Ignoring size class: " + bufferCapacity);
+
+                continue;
+
+            }
+
+            classes.put(bufferCapacity, poolCapacity);
+
+        }
+
+        final DirectBufferPool[] a2 = new DirectBufferPool[classes.size() + 1];
+
+        int i = 0;
+
+        for (Map.Entry<Integer, Integer> e : classes.entrySet()) {
+
+            a2[i++] = new DirectBufferPool("sizeClass" + e.getKey(),
+                    e.getValue()/* poolCapacity */, e.getKey()/* bufferCapacity */);
+
+            if (log.isInfoEnabled())
+                log.info("sizeClass: bufferCapacity=" + e.getKey()
+                        + ", poolCapacity=" + e.getValue());
+
+        }
+
+        a2[i] = largest;
+
+        return a2;
+
+    }
+
+    /**
+     * Return the pool for the smallest size class whose buffers have at least
+     * the given capacity.
+     * 
+     * @param minCapacity
+     *            The minimum capacity in bytes of the buffers.
+     * 
+     * @return The pool.
+     * 
+     * @throws IllegalArgumentException
+     *             if <i>minCapacity</i> is greater than the capacity of the
+     *             buffers in the {@link #INSTANCE}.
+     * 
+     * @see Options#SIZE_CLASSES
+     */
+    static public DirectBufferPool getPool(final int minCapacity) {
+
+        for (DirectBufferPool p : sizeClasses) {
+
+            if (p.getBufferCapacity() >= minCapacity)
+                return p;
+
+        }
+
+        throw new IllegalArgumentException("minCapacity=" + minCapacity
+                + " exceeds " + Options.BUFFER_CAPACITY + "="
+                + INSTANCE.getBufferCapacity());
+
+    }
+
+    /**
+     * Return the pools for the size classes in order of increasing buffer
+     * capacity. The last pool is always the {@link #INSTANCE}.
+     * 
+     * @see Options#SIZE_CLASSES
+     */
+    static public DirectBufferPool[] getSizeClasses() {
+
+        return sizeClasses.clone();
+
+    }
+
     /**
      * Create a direct {@link ByteBuffer} pool.
      * <p>
@@ -699,6 +900,7 @@ public class DirectBufferPool {
             final ByteBuffer buf = pool.take();
 
             acquired++;
+            acquireCount.increment();
             totalAcquireCount.increment();
 
             // limit -> capacity; pos-> 0; mark cleared.
@@ -777,6 +979,7 @@ public class DirectBufferPool {
                 return false;
 
             acquired--;
+            releaseCount.increment();
             totalReleaseCount.increment();
             
             /*
@@ -837,7 +1040,10 @@ public class DirectBufferPool {
                  * Wait for a free buffer since the pool is at its capacity.
                  */
 
-                log.error("Pool is at capacity - waiting for a free buffer");
+                log.error("Pool is at capacity - waiting for a free buffer: "
+                        + name);
+
+                waitCount.increment();
 
                 awaitFreeBuffer(timeout, unit);
 
@@ -921,6 +1127,13 @@ public class DirectBufferPool {
      * application.</dd>
      * <dt>bytesUsed</dt>
      * <dd>The number of bytes managed by the pool.</dd>
+     * <dt>acquireCount</dt>
+     * <dd>The number of buffers acquired from the pool.</dd>
+     * <dt>releaseCount</dt>
+     * <dd>The number of buffers released back to the pool.</dd>
+     * <dt>waitCount</dt>
+     * <dd>The number of times that a request had to wait for a buffer to be
+     * released because the pool was at its capacity.</dd>
      * </dl>
      * 
      * @return The counters.
@@ -968,6 +1181,15 @@ public class DirectBufferPool {
             c.addCounter("acquired", new OneShotInstrument<Integer>(acquired));
 
             c.addCounter("leaked", new OneShotInstrument<Long>(nleaked));
+
+            c.addCounter("acquireCount", new OneShotInstrument<Long>(
+                    p.acquireCount.get()));
+
+            c.addCounter("releaseCount", new OneShotInstrument<Long>(
+                    p.releaseCount.get()));
+
+            c.addCounter("waitCount", new OneShotInstrument<Long>(p.waitCount
+                    .get()));
         
             c.addCounter("poolSize", new OneShotInstrument<Integer>(poolSize));
 
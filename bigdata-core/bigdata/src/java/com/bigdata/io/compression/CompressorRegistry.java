@@ -66,6 +66,15 @@ public class CompressorRegistry {
      */
     final public static String NOP = "NOP";
 
+    /**
+     * Key for a fast LZ77 family compressor. This has a lower compression
+     * ratio than {@link #DEFLATE_BEST_SPEED} but is much faster, especially
+     * for decompression.
+     * 
+     * @see LZRecordCompressor
+     */
+    final public static String LZ = "LZ";
+
     private static CompressorRegistry DEFAULT = new CompressorRegistry();
 
     static public CompressorRegistry getInstance() {
@@ -81,6 +90,7 @@ public class CompressorRegistry {
 		add(DEFLATE_BEST_COMPRESSION, new RecordCompressor(Deflater.BEST_COMPRESSION));
 		add(GZIP, new GZipCompressor());
 		add(NOP, new NOPRecordCompressor());
+		add(LZ, LZRecordCompressor.INSTANCE);
 	}
 	
     /**
@@ -0,0 +1,592 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.io.compression;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A fast LZ77 family record compressor. This trades compression ratio for
+ * speed when compared to the {@link RecordCompressor} and is intended for
+ * records which are compressed and decompressed frequently, such as the nodes
+ * and leaves of a B+Tree and the write cache blocks replicated to the
+ * followers of a highly available quorum.
+ * <p>
+ * The compressed record begins with the length of the uncompressed data as a
+ * 32-bit integer. This is followed by a sequence of literal runs and matches.
+ * Each sequence starts with a token byte whose high nibble is the #of literal
+ * bytes and whose low nibble is the match length less
+ * {@link #MIN_MATCH}. A nibble of 15 is extended by additional bytes which
+ * are summed until a byte other than 255 is read. The literal bytes follow the
+ * token and are followed by the match offset as an unsigned 16-bit integer and
+ * then by the extension of the match length (if any). The last sequence
+ * consists of literals only. Matches are found using a hash table over 4 byte
+ * prefixes and may overlap the bytes that they produce, so a run of a repeated
+ * byte pattern is coded as a single match.
+ * <p>
+ * This class is thread-safe. The hash table used by the compressor is
+ * allocated per thread and is not cleared between records. Decompression
+ * allocates an exact fit byte[] for each record.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ *
+ * @see CompressorRegistry#LZ
+ * @see LZRecordCompressorFactory
+ */
+public class LZRecordCompressor implements Externalizable, IRecordCompressor {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 2862430577123470817L;
+
+    /**
+     * The minimum length of a match.
+     */
+    static final int MIN_MATCH = 4;
+
+    /**
+     * The maximum distance between a match and the bytes that it copies.
+     */
+    static final int MAX_OFFSET = 0xFFFF;
+
+    /**
+     * The log2 of the #of entries in the hash table.
+     */
+    private static final int HASH_LOG = 12;
+
+    /**
+     * After this many consecutive misses, the compressor begins to skip bytes
+     * so incompressible data is processed quickly.
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    /**
+     * A shared instance.
+     */
+    public static final LZRecordCompressor INSTANCE = new LZRecordCompressor();
+
+    /**
+     * Per-thread state for the compressor.
+     */
+    private static class State {
+
+        /**
+         * The hash table. Each entry is the position of a 4 byte prefix plus
+         * the {@link #base} in effect when it was stored, so the entries for
+         * earlier records never match and the table does not need to be
+         * cleared.
+         */
+        final int[] table = new int[1 << HASH_LOG];
+
+        /**
+         * The offset added to each position stored in the {@link #table} for
+         * the current record.
+         */
+        int base = 0;
+
+        /**
+         * A buffer onto which the record is compressed. This grows as
+         * required.
+         */
+        byte[] out = new byte[1024];
+
+        /**
+         * A buffer used to copy data which is not backed by an accessible
+         * array. This grows as required.
+         */
+        byte[] in = new byte[0];
+
+    }
+
+    private static final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    /**
+     * De-serialization constructor.
+     */
+    public LZRecordCompressor() {
+
+    }
+
+    public String toString() {
+
+        return getClass().getName();
+
+    }
+
+    /**
+     * Return the maximum #of bytes in the compressed form of a record with
+     * <i>len</i> bytes.
+     */
+    static int maxCompressedLength(final int len) {
+
+        return 4 + len + len / 255 + 16;
+
+    }
+
+    /**
+     * Compress the record onto the per-thread buffer.
+     *
+     * @return The #of bytes in the compressed record.
+     */
+    private static int compress(final State s, final byte[] src,
+            final int off, final int len) {
+
+        if (s.out.length < maxCompressedLength(len)) {
+
+            s.out = new byte[maxCompressedLength(len)];
+
+        }
+
+        final byte[] dst = s.out;
+
+        final int[] table = s.table;
+
+        if (s.base > Integer.MAX_VALUE - len - 1 - MAX_OFFSET) {
+
+            // Wrap the base: clear the table so no stale entry can match.
+            java.util.Arrays.fill(table, 0);
+
+            s.base = 0;
+
+        }
+
+        // Positions in this record are stored as (pos + base).
+        final int base = s.base - off + 1;
+
+        s.base += len + 1 + MAX_OFFSET;
+
+        final int end = off + len;
+
+        // The last position at which a match may begin.
+        final int matchLimit = end - MIN_MATCH;
+
+        int dpos = 0;
+
+        dst[dpos++] = (byte) (len >>> 24);
+        dst[dpos++] = (byte) (len >>> 16);
+        dst[dpos++] = (byte) (len >>> 8);
+        dst[dpos++] = (byte) len;
+
+        // The start of the pending literal run.
+        int anchor = off;
+
+        int pos = off;
+
+        int misses = 0;
+
+        while (pos <= matchLimit) {
+
+            final int h = hash(getInt(src, pos));
+
+            final int ref = table[h] - base;
+
+            table[h] = pos + base;
+
+            if (ref < off || pos - ref > MAX_OFFSET || ref >= pos
+                    || getInt(src, ref) != getInt(src, pos)) {
+
+                pos += 1 + (misses++ >>> SKIP_TRIGGER);
+
+                continue;
+
+            }
+
+            misses = 0;
+
+            // Extend the match forward.
+            int mlen = MIN_MATCH;
+
+            while (pos + mlen < end && src[ref + mlen] == src[pos + mlen]) {
+
+                mlen++;
+
+            }
+
+            dpos = writeSequence(dst, dpos, src, anchor, pos - anchor, pos
+                    - ref, mlen);
+
+            // Index a position inside the match to help the next search.
+            if (pos + mlen - 2 <= matchLimit) {
+
+                table[hash(getInt(src, pos + mlen - 2))] = pos + mlen - 2
+                        + base;
+
+            }
+
+            pos += mlen;
+
+            anchor = pos;
+
+        }
+
+        // The trailing literals.
+        dpos = writeSequence(dst, dpos, src, anchor, end - anchor,
+                0/* offset */, 0/* mlen */);
+
+        return dpos;
+
+    }
+
+    /**
+     * Write a token, the literals and (if <i>mlen</i> is non-zero) the match.
+     */
+    private static int writeSequence(final byte[] dst, int dpos,
+            final byte[] src, final int litOff, final int nlit,
+            final int offset, final int mlen) {
+
+        final int mcode = mlen == 0 ? 0 : mlen - MIN_MATCH;
+
+        dst[dpos++] = (byte) ((Math.min(nlit, 15) << 4) | Math.min(mcode, 15));
+
+        if (nlit >= 15)
+            dpos = writeLength(dst, dpos, nlit - 15);
+
+        System.arraycopy(src, litOff, dst, dpos, nlit);
+
+        dpos += nlit;
+
+        if (mlen != 0) {
+
+            dst[dpos++] = (byte) (offset >>> 8);
+            dst[dpos++] = (byte) offset;
+
+            if (mcode >= 15)
+                dpos = writeLength(dst, dpos, mcode - 15);
+
+        }
+
+        return dpos;
+
+    }
+
+    private static int writeLength(final byte[] dst, int dpos, int n) {
+
+        while (n >= 255) {
+
+            dst[dpos++] = (byte) 255;
+
+            n -= 255;
+
+        }
+
+        dst[dpos++] = (byte) n;
+
+        return dpos;
+
+    }
+
+    private static int getInt(final byte[] b, final int i) {
+
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8
+                | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+
+    }
+
+    private static int hash(final int v) {
+
+        return (v * -1640531535) >>> (32 - HASH_LOG);
+
+    }
+
+    /**
+     * Decompress a record.
+     *
+     * @return The uncompressed data in an exact fit byte[].
+     */
+    static byte[] decompress(final byte[] src, final int off, final int len) {
+
+        if (len < 4)
+            throw new IllegalArgumentException("Not a compressed record");
+
+        int spos = off;
+
+        final int n = ((src[spos] & 0xff) << 24) | ((src[spos + 1] & 0xff) << 16)
+                | ((src[spos + 2] & 0xff) << 8) | (src[spos + 3] & 0xff);
+
+        spos += 4;
+
+        if (n < 0)
+            throw new IllegalArgumentException("Not a compressed record");
+
+        final byte[] dst = new byte[n];
+
+        int dpos = 0;
+
+        try {
+
+            while (true) {
+
+                final int token = src[spos++] & 0xff;
+
+                int nlit = token >>> 4;
+
+                if (nlit == 15) {
+                    int b;
+                    do {
+                        b = src[spos++] & 0xff;
+                        nlit += b;
+                    } while (b == 255);
+                }
+
+                System.arraycopy(src, spos, dst, dpos, nlit);
+
+                spos += nlit;
+
+                dpos += nlit;
+
+                if (dpos == n) {
+
+                    // The last sequence has no match.
+                    return dst;
+
+                }
+
+                final int offset = ((src[spos] & 0xff) << 8)
+                        | (src[spos + 1] & 0xff);
+
+                spos += 2;
+
+                int mlen = token & 0x0f;
+
+                if (mlen == 15) {
+                    int b;
+                    do {
+                        b = src[spos++] & 0xff;
+                        mlen += b;
+                    } while (b == 255);
+                }
+
+                mlen += MIN_MATCH;
+
+                int ref = dpos - offset;
+
+                if (offset == 0 || ref < 0 || dpos + mlen > n)
+                    throw new IllegalArgumentException(
+                            "Corrupt compressed record");
+
+                if (offset >= mlen) {
+
+                    System.arraycopy(dst, ref, dst, dpos, mlen);
+
+                    dpos += mlen;
+
+                } else {
+
+                    // The match overlaps the bytes that it produces.
+                    for (int i = 0; i < mlen; i++) {
+
+                        dst[dpos++] = dst[ref++];
+
+                    }
+
+                }
+
+            }
+
+        } catch (ArrayIndexOutOfBoundsException ex) {
+
+            throw new IllegalArgumentException("Corrupt compressed record", ex);
+
+        }
+
+    }
+
+    @Override
+    public void compress(final ByteBuffer bin, final ByteBuffer out) {
+
+        final State s = state.get();
+
+        final int n = compress(s, bin);
+
+        out.put(s.out, 0, n);
+
+    }
+
+    @Override
+    public ByteBuffer compress(final ByteBuffer bin) {
+
+        final State s = state.get();
+
+        final int n = compress(s, bin);
+
+        final byte[] a = new byte[n];
+
+        System.arraycopy(s.out, 0, a, 0, n);
+
+        return ByteBuffer.wrap(a);
+
+    }
+
+    @Override
+    public void compress(final ByteBuffer bin, final OutputStream os) {
+
+        final State s = state.get();
+
+        final int n = compress(s, bin);
+
+        try {
+
+            os.write(s.out, 0, n);
+
+        } catch (IOException ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+    }
+
+    /**
+     * Compress the data from the position to the limit of the buffer and
+     * advance the position to the limit.
+     */
+    private static int compress(final State s, final ByteBuffer bin) {
+
+        final int len = bin.remaining();
+
+        final int n;
+
+        if (bin.hasArray()) {
+
+            n = compress(s, bin.array(), bin.arrayOffset() + bin.position(),
+                    len);
+
+        } else {
+
+            if (s.in.length < len) {
+
+                s.in = new byte[len];
+
+            }
+
+            bin.duplicate().get(s.in, 0, len);
+
+            n = compress(s, s.in, 0, len);
+
+        }
+
+        bin.position(bin.limit());
+
+        return n;
+
+    }
+
+    @Override
+    public void compress(final byte[] bytes, final OutputStream os) {
+
+        compress(bytes, 0, bytes.length, os);
+
+    }
+
+    @Override
+    public void compress(final byte[] bytes, final int off, final int len,
+            final OutputStream os) {
+
+        final State s = state.get();
+
+        final int n = compress(s, bytes, off, len);
+
+        try {
+
+            os.write(s.out, 0, n);
+
+        } catch (IOException ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The data between the position and the limit are decompressed. The
+     * position of the buffer is not changed. The returned buffer is backed by
+     * an exact fit byte[] and is not shared.
+     */
+    @Override
+    public ByteBuffer decompress(final ByteBuffer bin) {
+
+        final byte[] a;
+
+        if (bin.hasArray()) {
+
+            a = decompress(bin.array(), bin.arrayOffset() + bin.position(),
+                    bin.remaining());
+
+        } else {
+
+            final byte[] tmp = new byte[bin.remaining()];
+
+            bin.duplicate().get(tmp);
+
+            a = decompress(tmp, 0, tmp.length);
+
+        }
+
+        return ByteBuffer.wrap(a);
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned buffer is backed by an exact fit byte[] and is not shared.
+     */
+    @Override
+    public ByteBuffer decompress(final byte[] bin) {
+
+        return ByteBuffer.wrap(decompress(bin, 0, bin.length));
+
+    }
+
+    /**
+     * NOP (there is no persistent state).
+     */
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException,
+            ClassNotFoundException {
+
+    }
+
+    /**
+     * NOP (there is no persistent state).
+     */
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.io.compression;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A serializable compression provider based on {@link LZRecordCompressor}.
+ * Since that compressor is thread-safe, the same instance is returned by each
+ * call to {@link #getInstance()}. This class may be named by
+ * {@link com.bigdata.btree.IndexMetadata.Options#BTREE_RECORD_COMPRESSOR_FACTORY}
+ * to compress the nodes and leaves of a {@link com.bigdata.btree.BTree}.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class LZRecordCompressorFactory implements
+        IRecordCompressorFactory<LZRecordCompressor>, Externalizable {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = -3316432146526452307L;
+
+    /**
+     * A shared instance.
+     */
+    public static final LZRecordCompressorFactory INSTANCE = new LZRecordCompressorFactory();
+
+    /**
+     * De-serialization constructor.
+     */
+    public LZRecordCompressorFactory() {
+
+    }
+
+    public String toString() {
+
+        return getClass().getName();
+
+    }
+
+    @Override
+    public LZRecordCompressor getInstance() {
+
+        return LZRecordCompressor.INSTANCE;
+
+    }
+
+    /**
+     * NOP (there is no persistent state).
+     */
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException,
+            ClassNotFoundException {
+
+    }
+
+    /**
+     * NOP (there is no persistent state).
+     */
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+
+    }
+
+}
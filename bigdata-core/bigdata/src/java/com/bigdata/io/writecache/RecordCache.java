@@ -0,0 +1,666 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.bigdata.io.writecache;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.counters.OneShotInstrument;
+import com.bigdata.io.DirectBufferPool;
+import com.bigdata.rwstore.sector.MemoryManager;
+import com.bigdata.rwstore.sector.MemoryManagerOutOfMemory;
+
+/**
+ * A scan resistant cache for records read through the
+ * {@link WriteCacheService}. The records are stored on native memory managed by
+ * a {@link MemoryManager} which is bounded to a fixed #of buffers drawn from a
+ * {@link DirectBufferPool}.
+ * <p>
+ * Resident records are organized as a segmented LRU. Newly admitted records
+ * enter a <em>probation</em> segment and are promoted to the
+ * <em>protected</em> segment when they are read again. The protected segment is
+ * bounded to {@value #PROTECTED_PERCENT}% of the capacity and demotes its least
+ * recently used records back to probation.
+ * <p>
+ * Admission is governed by a TinyLFU policy. The access frequency of every
+ * offset read through the {@link WriteCacheService} (hit or miss) is tracked
+ * in a compact count-min sketch whose counters are periodically halved. When
+ * the cache is full, a candidate record is only admitted if its estimated
+ * frequency is greater than that of the eviction victim. A record touched once
+ * by a full range scan (e.g., an unselective query or a <code>DumpJournal</code>
+ * ) therefore can not displace the B+Tree nodes which are read over and over.
+ * <p>
+ * Consistency with the backing store follows the same protocol as the
+ * {@link WriteCache.ReadCache}: the {@link WriteCacheService} invalidates the
+ * offset of a record whenever it is written or cleared, and clears the entire
+ * cache when the service is reset.
+ *
+ * @see com.bigdata.journal.Options#RECORD_CACHE_BUFFER_COUNT
+ */
+public class RecordCache {
+
+    private static final Logger log = Logger.getLogger(RecordCache.class);
+
+    /**
+     * The percentage of the capacity which may be used by the protected
+     * segment.
+     */
+    static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * The assumed average record size used to size the frequency sketch.
+     */
+    static final int AVERAGE_RECORD_SIZE = 512;
+
+    /**
+     * A resident record.
+     */
+    private static class Node {
+
+        /** The byte offset of the record on the backing file. */
+        final long offset;
+
+        /** The #of bytes requested for the record (including any checksum). */
+        final int nbytes;
+
+        /** The address of the record data on the {@link MemoryManager}. */
+        final long addr;
+
+        /** The #of bytes of record data. */
+        final int size;
+
+        /** <code>true</code> iff on the protected segment. */
+        boolean protectedSegment;
+
+        Node prev, next;
+
+        Node(final long offset, final int nbytes, final long addr,
+                final int size) {
+            this.offset = offset;
+            this.nbytes = nbytes;
+            this.addr = addr;
+            this.size = size;
+        }
+
+    }
+
+    /**
+     * A doubly linked list of {@link Node}s in LRU order (head is MRU).
+     */
+    private static class Segment {
+
+        Node head, tail;
+
+        long bytes;
+
+        void addFirst(final Node n) {
+            n.prev = null;
+            n.next = head;
+            if (head != null)
+                head.prev = n;
+            head = n;
+            if (tail == null)
+                tail = n;
+            bytes += n.size;
+        }
+
+        void remove(final Node n) {
+            if (n.prev != null)
+                n.prev.next = n.next;
+            else
+                head = n.next;
+            if (n.next != null)
+                n.next.prev = n.prev;
+            else
+                tail = n.prev;
+            n.prev = n.next = null;
+            bytes -= n.size;
+        }
+
+        void clear() {
+            head = tail = null;
+            bytes = 0;
+        }
+
+    }
+
+    /**
+     * The native memory on which the records are stored.
+     */
+    private final MemoryManager mmgr;
+
+    /**
+     * The maximum #of bytes of record data.
+     */
+    private final long capacity;
+
+    /**
+     * The maximum #of bytes of record data on the protected segment.
+     */
+    private final long protectedCapacity;
+
+    /**
+     * The maximum size of a record which will be admitted.
+     */
+    private final int maxRecordSize;
+
+    /**
+     * Map from the offset of a record on the backing file to its node.
+     */
+    private final HashMap<Long, Node> map = new HashMap<Long, Node>();
+
+    private final Segment probation = new Segment();
+
+    private final Segment protectedSegment = new Segment();
+
+    private final FrequencySketch sketch;
+
+    /*
+     * Counters. Guarded by [this], but volatile so they may be sampled
+     * without the lock.
+     */
+    private volatile long nhit, nmiss, nadmit, nreject, nevict, ninvalidate;
+
+    /**
+     *
+     * @param pool
+     *            The pool from which the native memory will be drawn.
+     * @param nbuffers
+     *            The maximum #of buffers which will be drawn from that pool.
+     */
+    public RecordCache(final DirectBufferPool pool, final int nbuffers) {
+
+        if (pool == null)
+            throw new IllegalArgumentException();
+
+        if (nbuffers <= 0)
+            throw new IllegalArgumentException();
+
+        this.mmgr = new MemoryManager(pool, nbuffers, false/* blocks */,
+                null/* properties */);
+
+        this.capacity = pool.getBufferCapacity() * (long) nbuffers;
+
+        this.protectedCapacity = capacity * PROTECTED_PERCENT / 100;
+
+        // Do not let a single record use more than 1/16th of the cache.
+        this.maxRecordSize = (int) Math.min(Integer.MAX_VALUE, capacity / 16);
+
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, capacity
+                / AVERAGE_RECORD_SIZE));
+
+        if (log.isInfoEnabled())
+            log.info("nbuffers=" + nbuffers + ", capacity=" + capacity);
+
+    }
+
+    /**
+     * Return a copy of the record at that offset. The access is recorded in
+     * the frequency sketch whether or not the record is resident.
+     *
+     * @param offset
+     *            The byte offset of the record on the backing file.
+     * @param nbytes
+     *            The #of bytes requested (as given to the
+     *            {@link WriteCacheService}).
+     *
+     * @return A heap {@link ByteBuffer} containing the record -or-
+     *         <code>null</code> if the record is not resident.
+     */
+    synchronized public ByteBuffer get(final long offset, final int nbytes) {
+
+        sketch.increment(offset);
+
+        final Node n = map.get(offset);
+
+        if (n == null || n.nbytes != nbytes) {
+
+            nmiss++;
+
+            return null;
+
+        }
+
+        final byte[] a = mmgr.read(n.addr);
+
+        if (n.protectedSegment) {
+
+            protectedSegment.remove(n);
+
+        } else {
+
+            probation.remove(n);
+
+            n.protectedSegment = true;
+
+        }
+
+        protectedSegment.addFirst(n);
+
+        while (protectedSegment.bytes > protectedCapacity
+                && protectedSegment.tail != n) {
+
+            // demote the LRU protected record.
+            final Node t = protectedSegment.tail;
+
+            protectedSegment.remove(t);
+
+            t.protectedSegment = false;
+
+            probation.addFirst(t);
+
+        }
+
+        nhit++;
+
+        return ByteBuffer.wrap(a);
+
+    }
+
+    /**
+     * Offer a record which was read through to the backing file. The record is
+     * admitted if there is room for it or if it is estimated to be more
+     * frequently used than the records which would have to be evicted to make
+     * room for it.
+     *
+     * @param offset
+     *            The byte offset of the record on the backing file.
+     * @param nbytes
+     *            The #of bytes requested (as given to the
+     *            {@link WriteCacheService}).
+     * @param data
+     *            The record data (from the position to the limit). The
+     *            position and limit are not changed.
+     *
+     * @return <code>true</code> iff the record was admitted.
+     */
+    synchronized public boolean offer(final long offset, final int nbytes,
+            final ByteBuffer data) {
+
+        final int size = data.remaining();
+
+        if (size == 0 || size > maxRecordSize || map.containsKey(offset))
+            return false;
+
+        final int candidateFreq = sketch.frequency(offset);
+
+        long addr = 0L;
+
+        while (addr == 0L) {
+
+            if (probation.bytes + protectedSegment.bytes + size <= capacity) {
+
+                try {
+
+                    addr = mmgr.allocate(data.slice(), false/* blocks */);
+
+                    continue;
+
+                } catch (MemoryManagerOutOfMemory ex) {
+
+                    /*
+                     * The native memory is exhausted before the capacity is
+                     * reached (slot rounding and fragmentation). Fall through
+                     * and make room as if the cache were full.
+                     */
+
+                }
+
+            }
+
+            final Node victim = victim();
+
+            if (victim == null || candidateFreq <= sketch.frequency(victim.offset)) {
+
+                nreject++;
+
+                return false;
+
+            }
+
+            evict(victim);
+
+        }
+
+        final Node n = new Node(offset, nbytes, addr, size);
+
+        map.put(offset, n);
+
+        probation.addFirst(n);
+
+        nadmit++;
+
+        return true;
+
+    }
+
+    /**
+     * Drop the record at that offset (if resident).
+     *
+     * @param offset
+     *            The byte offset of the record on the backing file.
+     */
+    synchronized public void clear(final long offset) {
+
+        final Node n = map.remove(offset);
+
+        if (n == null)
+            return;
+
+        (n.protectedSegment ? protectedSegment : probation).remove(n);
+
+        mmgr.free(n.addr);
+
+        ninvalidate++;
+
+    }
+
+    /**
+     * Drop all records. The native memory is returned to the pool.
+     */
+    synchronized public void clear() {
+
+        map.clear();
+
+        probation.clear();
+
+        protectedSegment.clear();
+
+        mmgr.clear();
+
+    }
+
+    /**
+     * Drop all records and close the backing {@link MemoryManager}.
+     */
+    synchronized public void close() {
+
+        map.clear();
+
+        probation.clear();
+
+        protectedSegment.clear();
+
+        mmgr.close();
+
+    }
+
+    /**
+     * The next record to be evicted.
+     */
+    private Node victim() {
+
+        return probation.tail != null ? probation.tail : protectedSegment.tail;
+
+    }
+
+    private void evict(final Node n) {
+
+        map.remove(n.offset);
+
+        (n.protectedSegment ? protectedSegment : probation).remove(n);
+
+        mmgr.free(n.addr);
+
+        nevict++;
+
+    }
+
+    /**
+     * The #of resident records.
+     */
+    synchronized public int size() {
+
+        return map.size();
+
+    }
+
+    /**
+     * The #of bytes of resident record data.
+     */
+    synchronized public long getBytes() {
+
+        return probation.bytes + protectedSegment.bytes;
+
+    }
+
+    public long getHitCount() {
+
+        return nhit;
+
+    }
+
+    public long getMissCount() {
+
+        return nmiss;
+
+    }
+
+    public long getAdmitCount() {
+
+        return nadmit;
+
+    }
+
+    public long getRejectCount() {
+
+        return nreject;
+
+    }
+
+    /**
+     * Performance counters.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet root = new CounterSet();
+
+        root.addCounter("capacity", new OneShotInstrument<Long>(capacity));
+
+        root.addCounter("bytes", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(getBytes());
+            }
+        });
+
+        root.addCounter("size", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(size());
+            }
+        });
+
+        root.addCounter("nhit", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nhit);
+            }
+        });
+
+        root.addCounter("nmiss", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nmiss);
+            }
+        });
+
+        root.addCounter("hitRate", new Instrument<Double>() {
+            @Override
+            public void sample() {
+                final long nhit = RecordCache.this.nhit;
+                final long ntests = nhit + nmiss;
+                setValue(ntests == 0L ? 0d : (double) nhit / ntests);
+            }
+        });
+
+        root.addCounter("nadmit", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nadmit);
+            }
+        });
+
+        root.addCounter("nreject", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nreject);
+            }
+        });
+
+        root.addCounter("nevict", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nevict);
+            }
+        });
+
+        root.addCounter("ninvalidate", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(ninvalidate);
+            }
+        });
+
+        return root;
+
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters with four hash functions. The
+     * counters are halved once the #of increments reaches ten times the width
+     * of the sketch so the estimates track the recent access pattern.
+     */
+    static class FrequencySketch {
+
+        private static final long[] SEED = new long[] { 0xc3a5c85c97cb3127L,
+                0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        /** Each long holds sixteen 4-bit counters. */
+        private final long[] table;
+
+        private final int mask;
+
+        private final int sampleSize;
+
+        private int nincrements;
+
+        FrequencySketch(final int maxEntries) {
+
+            int n = 16;
+
+            while (n < maxEntries && n < (1 << 30))
+                n <<= 1;
+
+            table = new long[n];
+
+            mask = n - 1;
+
+            sampleSize = 10 * n;
+
+        }
+
+        private int hash(final long key, final int i) {
+
+            long h = (key + SEED[i]) * SEED[i];
+
+            h += h >>> 32;
+
+            return (int) h;
+
+        }
+
+        /**
+         * The estimated #of recent accesses for the key (in [0:15]).
+         */
+        int frequency(final long key) {
+
+            int freq = 15;
+
+            for (int i = 0; i < 4; i++) {
+
+                final int h = hash(key, i);
+
+                final int shift = (h & 15) << 2;
+
+                final int count = (int) ((table[(h >>> 4) & mask] >>> shift) & 0xfL);
+
+                if (count < freq)
+                    freq = count;
+
+            }
+
+            return freq;
+
+        }
+
+        /**
+         * Record an access for the key.
+         */
+        void increment(final long key) {
+
+            boolean added = false;
+
+            for (int i = 0; i < 4; i++) {
+
+                final int h = hash(key, i);
+
+                final int index = (h >>> 4) & mask;
+
+                final int shift = (h & 15) << 2;
+
+                if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+
+                    table[index] += 1L << shift;
+
+                    added = true;
+
+                }
+
+            }
+
+            if (added && ++nincrements == sampleSize) {
+
+                for (int i = 0; i < table.length; i++) {
+
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+
+                }
+
+                nincrements /= 2;
+
+            }
+
+        }
+
+    }
+
+}
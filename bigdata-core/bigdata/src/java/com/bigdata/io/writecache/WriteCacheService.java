@@ -413,6 +413,14 @@ abstract public class WriteCacheService implements IWriteCache {
      * The backing reader that can be used when a cache read misses.
      */
     final private IBackingReader reader;
+
+    /**
+     * The optional scan resistant cache for records read through to the
+     * backing file (<code>null</code> unless enabled).
+     * 
+     * @see RecordCache
+     */
+    final private RecordCache recordCache;
     
     /**
      * The current file extent.
@@ -507,6 +515,38 @@ abstract public class WriteCacheService implements IWriteCache {
             final IBackingReader reader)
             throws InterruptedException {
 
+        this(nwriteBuffers, minCleanListSize, nreadBuffers, prefixWrites,
+                compactionThreshold, hotCacheSize, hotCacheThreshold,
+                0/* recordCacheBufferCount */, useChecksum, fileExtent, opener,
+                quorum, reader);
+
+    }
+
+    /**
+     * Allocates N buffers from the {@link DirectBufferPool} and optionally
+     * sets up a scan resistant {@link RecordCache}.
+     * 
+     * @param recordCacheBufferCount
+     *            The #of {@link DirectBufferPool} buffers which may be used by
+     *            the {@link RecordCache} -or- ZERO (0) to disable the
+     *            {@link RecordCache}. The {@link RecordCache} is always
+     *            disabled for a highly available service since followers
+     *            write replicated buffers directly onto the backing file.
+     * 
+     * @see #WriteCacheService(int, int, int, boolean, int, int, int, boolean,
+     *      long, IReopenChannel, Quorum, IBackingReader)
+     * @see com.bigdata.journal.Options#RECORD_CACHE_BUFFER_COUNT
+     */
+    public WriteCacheService(final int nwriteBuffers, int minCleanListSize,
+            final int nreadBuffers,
+            final boolean prefixWrites, final int compactionThreshold,
+            final int hotCacheSize, final int hotCacheThreshold,
+            final int recordCacheBufferCount,
+            final boolean useChecksum, final long fileExtent,
+            final IReopenChannel<? extends Channel> opener, final Quorum quorum,
+            final IBackingReader reader)
+            throws InterruptedException {
+
         if (nwriteBuffers <= 0)
             throw new IllegalArgumentException();
 
@@ -726,6 +766,14 @@ the clear/dirty list threshold)
          */
         memo = new ReadMemoizer(loadChild);
 
+        // Optional scan resistant record cache (not used for HA).
+        if (recordCacheBufferCount > 0 && reader != null && quorum == null) {
+            recordCache = new RecordCache(DirectBufferPool.INSTANCE,
+                    recordCacheBufferCount);
+        } else {
+            recordCache = null;
+        }
+
         // start service to write on the backing channel.
         localWriteService = Executors
                 .newSingleThreadExecutor(new DaemonThreadFactory(getClass()
@@ -1759,6 +1807,11 @@ the clear/dirty list threshold)
 
             counters.get().nreset++;
 
+            if (recordCache != null) {
+                // Discard records read during the aborted write set.
+                recordCache.clear();
+            }
+
             flush = false;
             
         } finally {
@@ -1955,6 +2008,11 @@ the clear/dirty list threshold)
             // clear the service record map.
             serviceMap.clear();
 
+            // release the native memory used by the record cache.
+            if (recordCache != null) {
+                recordCache.close();
+            }
+
             // clear the file extent to an illegal value.
             fileExtent.set(-1L);
 
@@ -2473,6 +2531,11 @@ the clear/dirty list threshold)
             throw new IllegalArgumentException(
                     AbstractBufferStrategy.ERR_BUFFER_NULL);
 
+        if (recordCache != null) {
+            // Any previous record at this offset is no longer valid.
+            recordCache.clear(offset);
+        }
+
         // #of bytes in the record.
         final int remaining = data.remaining();
 
@@ -3252,6 +3315,16 @@ the clear/dirty list threshold)
         counters.get().nmiss.increment();
         
         if (reader != null) {
+
+            if (recordCache != null) {
+
+                // Check the scan resistant record cache.
+                final ByteBuffer rec = recordCache.get(offset, nbytes);
+
+                if (rec != null)
+                    return rec;
+
+            }
             
             /*
              * Read through to the disk and install the record into cache.
@@ -3260,6 +3333,13 @@ the clear/dirty list threshold)
             
             if (ret != null && ret.remaining() == 0)
             	throw new AssertionError();
+
+            if (recordCache != null && ret != null) {
+
+                // Offer the record to the record cache (admission policy).
+                recordCache.offer(offset, nbytes, ret);
+
+            }
             
             return ret;
 
@@ -3876,6 +3956,10 @@ the clear/dirty list threshold)
     public boolean clearWrite(final long offset, final int latchedAddr) {
         try {
             counters.get().nclearAddrRequests++;
+            if (recordCache != null) {
+                // The slot is being released. Drop it from the record cache.
+                recordCache.clear(offset);
+            }
             while (true) {
                 final WriteCache cache = serviceMap.get(offset);
                 if (cache == null) {
@@ -4044,7 +4128,15 @@ the clear/dirty list threshold)
      */
     public CounterSet getCounters() {
 
-        return counters.get().getCounters();
+        final CounterSet root = counters.get().getCounters();
+
+        if (recordCache != null) {
+
+            root.makePath("recordCache").attach(recordCache.getCounters());
+
+        }
+
+        return root;
 
     }
     
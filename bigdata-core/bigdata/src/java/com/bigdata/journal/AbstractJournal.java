@@ -46,6 +46,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.BrokenBarrierException;
@@ -79,6 +80,7 @@ import com.bigdata.btree.IRangeQuery;
 import com.bigdata.btree.ITuple;
 import com.bigdata.btree.ITupleIterator;
 import com.bigdata.btree.IndexMetadata;
+import com.bigdata.btree.NodeDataCache;
 import com.bigdata.btree.keys.ICUVersionRecord;
 import com.bigdata.btree.view.FusedView;
 import com.bigdata.cache.ConcurrentWeakValueCache;
@@ -1935,19 +1937,15 @@ public abstract class AbstractJournal implements IJournal/* , ITimestampService
             txLog.info("CLOSE-JOURNAL: uuid=" + getUUID() + ", file="
                     + getFile());
 
-//		if (LRUNexus.INSTANCE != null) {
-//
-//			try {
-//
-//				LRUNexus.INSTANCE.deleteCache(getUUID());
-//
-//			} catch (Throwable t) {
-//
-//				log.error(t, t);
-//
-//			}
-//
-//		}
+		try {
+
+			NodeDataCache.deleteCache(this);
+
+		} catch (Throwable t) {
+
+			log.error(t, t);
+
+		}
 
 		if (deleteOnClose) {
 
@@ -1987,25 +1985,30 @@ public abstract class AbstractJournal implements IJournal/* , ITimestampService
 
 			bufferStrategy.deleteResources();
 
-//          @see BLZG-1501 (remove LRUNexus)
-//			if (LRUNexus.INSTANCE != null) {
-//
-//				try {
-//
-//					LRUNexus.INSTANCE.deleteCache(getUUID());
-//
-//				} catch (Throwable t) {
-//
-//					log.error(t, t);
-//
-//				}
-//
-//			}
+			try {
+
+				NodeDataCache.deleteCache(this);
+
+			} catch (Throwable t) {
+
+				log.error(t, t);
+
+			}
 
 		}
 
 		ResourceManager.deleteJournal(getFile() == null ? null : getFile().toString());
 
+		if (getFile() != null) {
+
+			// Delete the hot page manifest (if any).
+			final File manifest = HotPageManifest.getManifestFile(getFile());
+
+			if (manifest.exists() && !manifest.delete())
+				log.warn("Could not delete: " + manifest);
+
+		}
+
 	}
 
 	/**
@@ -2819,29 +2822,29 @@ public abstract class AbstractJournal implements IJournal/* , ITimestampService
 
 			txLog.info("ABORT");
 
-//          @see BLZG-1501 (remove LRUNexus)
-//			if (LRUNexus.INSTANCE != null) {
-//
-//				/*
-//				 * Discard the LRU for this store. It may contain writes which
-//				 * have been discarded. The same addresses may be reissued by
-//				 * the WORM store after an abort, which could lead to incorrect
-//				 * reads from a dirty cache.
-//				 * 
-//				 * FIXME An optimization would essentially isolate the writes on
-//				 * the cache per BTree or between commits. At the commit point,
-//				 * the written records would be migrated into the "committed"
-//				 * cache for the store. The caller would read on the uncommitted
-//				 * cache, which would read through to the "committed" cache.
-//				 * This would prevent incorrect reads without requiring us to
-//				 * throw away valid records in the cache. This could be a
-//				 * significant performance gain if aborts are common on a
-//				 * machine with a lot of RAM.
-//				 */
-//
-//				LRUNexus.getCache(this).clear();
-//
-//			}
+			{
+
+				/*
+				 * Discard the cached node and leaf data records for this
+				 * store. It may contain writes which have been discarded. The
+				 * same addresses may be reissued by the WORM store after an
+				 * abort, which could lead to incorrect reads from a dirty
+				 * cache.
+				 * 
+				 * FIXME An optimization would essentially isolate the writes on
+				 * the cache per BTree or between commits. At the commit point,
+				 * the written records would be migrated into the "committed"
+				 * cache for the store. The caller would read on the uncommitted
+				 * cache, which would read through to the "committed" cache.
+				 * This would prevent incorrect reads without requiring us to
+				 * throw away valid records in the cache. This could be a
+				 * significant performance gain if aborts are common on a
+				 * machine with a lot of RAM.
+				 */
+
+				NodeDataCache.clearCache(this);
+
+			}
 
 			/*
 			 * The buffer strategy has a hook which is used to discard buffered
@@ -4300,11 +4303,43 @@ public abstract class AbstractJournal implements IJournal/* , ITimestampService
             assertOpen();
 
         assertCanRead();
+
+        final HotPageManifest hotPages = this.hotPages;
+
+        if (hotPages != null)
+            hotPages.touch(addr);
             
         return _bufferStrategy.read(addr);
             
 	}
     
+    /**
+     * Set the {@link HotPageManifest} which tracks the records read from the
+     * backing store (optional).
+     * 
+     * @see WarmUpPlugIn
+     */
+    void setHotPageManifest(final HotPageManifest hotPages) {
+
+        this.hotPages = hotPages;
+
+    }
+
+    /**
+     * The {@link HotPageManifest} which tracks the records read from the
+     * backing store -or- <code>null</code> if none.
+     */
+    HotPageManifest getHotPageManifest() {
+
+        return hotPages;
+
+    }
+
+    /**
+     * Tracks the records read from the backing store (optional).
+     */
+    private volatile HotPageManifest hotPages = null;
+
     @Override
     public long write(final ByteBuffer data) {
 
@@ -6937,6 +6972,35 @@ public abstract class AbstractJournal implements IJournal/* , ITimestampService
      * @throws IOException 
      */
 	public ISnapshotData snapshotAllocationData(final AtomicReference<IRootBlockView> rbv) throws IOException {
+
+		return snapshotAllocationData(rbv, null/* deltaRegions */, null/* captured */);
+
+	}
+
+	/**
+	 * Variant of {@link #snapshotAllocationData(AtomicReference)} which also
+	 * captures the {@link RWStore} allocation slots written since the last
+	 * snapshot atomically with the allocation data.
+	 * 
+	 * @param rbv
+	 *            Set to the current committed root block.
+	 * @param deltaRegions
+	 *            When non-<code>null</code> the physical regions of the slots
+	 *            written since the last snapshot are added to this map (offset
+	 *            to length) for a delta snapshot.
+	 * @param captured
+	 *            When non-<code>null</code>, set iff slots were captured. The
+	 *            caller MUST then release them using
+	 *            {@link RWStore#releaseDelta(long, boolean)}.
+	 * 
+	 * @see RWStore#captureDelta(java.util.SortedMap)
+	 */
+	public ISnapshotData snapshotAllocationData(
+			final AtomicReference<IRootBlockView> rbv,
+			final SortedMap<Long, Integer> deltaRegions,
+			final AtomicBoolean captured) throws IOException {
+		if (deltaRegions != null && captured == null)
+			throw new IllegalArgumentException();
 		final Lock lock = _fieldReadWriteLock.readLock();
 
 		lock.lock();
@@ -6966,6 +7030,12 @@ public abstract class AbstractJournal implements IJournal/* , ITimestampService
 				
 				// get committed allocations
 				rws.snapshotAllocators(tm);
+				
+				// get slots written since the last snapshot
+				if (captured != null)
+					captured.set(rws.captureDelta(deltaRegions));
+			} else if (deltaRegions != null) {
+				throw new UnsupportedOperationException();
 			}
 			
 			
@@ -299,6 +299,27 @@ public class ConcurrencyManager implements IConcurrencyManager {
 
         String DEFAULT_WRITE_SERVICE_GROUP_COMMIT_TIMEOUT = "100";
 
+        /**
+         * When <code>true</code>, the {@link WriteExecutorService} adapts the
+         * group commit to the arrival rate of tasks (default
+         * {@value #DEFAULT_WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT}). If no tasks
+         * are running when a task is ready to commit, the group commit waits
+         * for new tasks to join the commit group as long as tasks have been
+         * arriving faster than the remaining
+         * {@link #WRITE_SERVICE_GROUP_COMMIT_TIMEOUT}, which serves as the
+         * latency budget. It commits as soon as no new task arrives within
+         * about twice the average arrival interval, so an idle service still
+         * commits immediately. This reduces the #of small commits (each of
+         * which must sync the disk and write a root block) under a bursty
+         * write load. When <code>false</code>, the group commit only waits for
+         * tasks which are already running.
+         */
+        String WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT = ConcurrencyManager.class
+                .getName()
+                + ".writeService.adaptiveGroupCommit";
+
+        String DEFAULT_WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT = "false";
+
         /**
          * The time in milliseconds that a group commit will await an exclusive
          * lock on the write service in order to perform synchronous overflow
@@ -832,6 +853,17 @@ public class ConcurrencyManager implements IConcurrencyManager {
                         .info(ConcurrencyManager.Options.WRITE_SERVICE_GROUP_COMMIT_TIMEOUT
                                 + "=" + groupCommitTimeout);
 
+            final boolean adaptiveGroupCommit = Boolean
+                    .parseBoolean(properties
+                            .getProperty(
+                                    ConcurrencyManager.Options.WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT,
+                                    ConcurrencyManager.Options.DEFAULT_WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT));
+
+            if (log.isInfoEnabled())
+                log
+                        .info(ConcurrencyManager.Options.WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT
+                                + "=" + adaptiveGroupCommit);
+
             final long overflowLockRequestTimeout = Long
                     .parseLong(properties
                             .getProperty(
@@ -873,6 +905,7 @@ public class ConcurrencyManager implements IConcurrencyManager {
                     queue, //
                     new DaemonThreadFactory(getClass().getName()+".writeService"), //
                     groupCommitTimeout,//
+                    adaptiveGroupCommit,//
                     overflowLockRequestTimeout
             );
 
@@ -0,0 +1,516 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.io.FileChannelUtility;
+import com.bigdata.io.IReopenChannel;
+import com.bigdata.journal.AbstractJournal.ISnapshotData;
+import com.bigdata.journal.AbstractJournal.ISnapshotEntry;
+import com.bigdata.rwstore.RWStore;
+
+/**
+ * Take an incremental (delta) snapshot of a journal backed by the
+ * {@link RWStore}. The delta contains only the allocation slots which were
+ * committed since the previous snapshot together with the root blocks, the
+ * metabits and the allocators as of the commit point of the delta. Layering
+ * the deltas in commit order onto the full snapshot which preceded them (see
+ * {@link #restore(File, File[], File)}) reproduces the journal as of the commit
+ * point of the last delta.
+ * <p>
+ * The slots written since the last snapshot are tracked in memory by the
+ * {@link RWStore} allocators. Each snapshot (full or delta) which completes
+ * successfully becomes the baseline for the next delta. There is no baseline
+ * after the journal is (re-)opened, so the first snapshot MUST be a full
+ * snapshot (see {@link SnapshotTask}).
+ * <p>
+ * The format of a delta is a header (magic, version, base commit counter,
+ * commit counter and file extent) followed by a sequence of records, each of
+ * which is an offset, a byte length and the bytes to be written at that offset
+ * in the journal file. The sequence is terminated by a negative offset. The
+ * delta is optionally compressed.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ *
+ * @see Journal#snapshotDelta(ISnapshotFactory)
+ * @see RWStore#captureDelta(SortedMap)
+ */
+public class DeltaSnapshotTask implements Callable<ISnapshotResult> {
+
+    private static final Logger log = Logger.getLogger(DeltaSnapshotTask.class);
+
+    /**
+     * The magic value for a delta snapshot file.
+     */
+    public static final int MAGIC = 0x64656c74;
+
+    /**
+     * The current version of the delta snapshot file format.
+     */
+    public static final int VERSION0 = 0;
+
+    /**
+     * The maximum #of bytes copied at a time.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Journal journal;
+
+    private final ISnapshotFactory snapshotFactory;
+
+    public DeltaSnapshotTask(final Journal journal,
+            final ISnapshotFactory snapshotFactory) {
+
+        if (journal == null)
+            throw new IllegalArgumentException();
+        if (snapshotFactory == null)
+            throw new IllegalArgumentException();
+        if (!(journal.getBufferStrategy() instanceof RWStrategy))
+            throw new UnsupportedOperationException();
+
+        this.journal = journal;
+        this.snapshotFactory = snapshotFactory;
+
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException
+     *             if there is no baseline snapshot or nothing was committed
+     *             since the baseline.
+     */
+    @Override
+    public ISnapshotResult call() throws Exception {
+
+        final RWStore store = ((RWStrategy) journal.getBufferStrategy())
+                .getStore();
+
+        // Grab a read lock.
+        final long txId = journal.newTx(ITx.READ_COMMITTED);
+
+        final AtomicBoolean captured = new AtomicBoolean(false);
+        final AtomicReference<IRootBlockView> rbv = new AtomicReference<IRootBlockView>();
+        boolean done = false;
+        try {
+
+            /*
+             * Atomically capture the root blocks, allocation data and the slots
+             * written since the baseline.
+             */
+            final SortedMap<Long, Integer> regions = new TreeMap<Long, Integer>();
+            final ISnapshotData coreData = journal.snapshotAllocationData(rbv,
+                    regions, captured);
+
+            final long baseCommitCounter = store.getDeltaBaseCommitCounter();
+            final long commitCounter = rbv.get().getCommitCounter();
+
+            if (commitCounter == baseCommitCounter)
+                throw new IllegalStateException("No commits since baseline: "
+                        + commitCounter);
+
+            /*
+             * The extent of the file as of the commit point of the delta. This
+             * is taken from the captured root block since the file may be
+             * concurrently extended by writes after that commit point.
+             */
+            final long extent = RWStore.getFileExtent(rbv.get());
+
+            final File file = snapshotFactory.getSnapshotFile(rbv.get());
+
+            if (file.exists() && file.length() != 0L)
+                throw new IOException("File exists: " + file);
+
+            final File parentDir = file.getAbsoluteFile().getParentFile();
+
+            if (!parentDir.exists())
+                if (!parentDir.mkdirs())
+                    throw new IOException("Could not create directory: "
+                            + parentDir);
+
+            final File tmp = File.createTempFile(
+                    SnapshotTask.SNAPSHOT_TMP_PREFIX,
+                    SnapshotTask.SNAPSHOT_TMP_SUFFIX, parentDir);
+
+            boolean success = false;
+            try {
+
+                OutputStream osx = new BufferedOutputStream(
+                        new FileOutputStream(tmp), BUFFER_SIZE);
+
+                if (snapshotFactory.getCompress())
+                    osx = new GZIPOutputStream(osx);
+
+                final DataOutputStream os = new DataOutputStream(osx);
+                try {
+
+                    os.writeInt(MAGIC);
+                    os.writeInt(VERSION0);
+                    os.writeLong(baseCommitCounter);
+                    os.writeLong(commitCounter);
+                    os.writeLong(extent);
+
+                    // The slots committed since the baseline.
+                    final byte[] a = new byte[BUFFER_SIZE];
+                    long nbytes = 0;
+                    for (Map.Entry<Long, Integer> e : regions.entrySet()) {
+                        final long offset = e.getKey();
+                        final int len = e.getValue();
+                        for (int off = 0; off < len; off += a.length) {
+                            final int n = Math.min(a.length, len - off);
+                            store.readRaw(offset + off, ByteBuffer.wrap(a, 0, n));
+                            os.writeLong(offset + off);
+                            os.writeInt(n);
+                            os.write(a, 0, n);
+                        }
+                        nbytes += len;
+                    }
+
+                    /*
+                     * The root blocks, metabits and allocators. These are
+                     * written after the slots so they are applied last.
+                     */
+                    final Iterator<ISnapshotEntry> itr = coreData.entries();
+                    while (itr.hasNext()) {
+                        final ISnapshotEntry e = itr.next();
+                        final byte[] data = e.getData();
+                        os.writeLong(e.getAddress());
+                        os.writeInt(data.length);
+                        os.write(data);
+                    }
+
+                    os.writeLong(-1L);
+
+                    os.flush();
+
+                    if (log.isInfoEnabled())
+                        log.info("Delta: baseCommitCounter="
+                                + baseCommitCounter + ", commitCounter="
+                                + commitCounter + ", nregions="
+                                + regions.size() + ", nbytes=" + nbytes);
+
+                } finally {
+
+                    os.close();
+
+                }
+
+                if (!tmp.renameTo(file))
+                    throw new IOException("Could not rename " + tmp + " as "
+                            + file);
+
+                success = true;
+
+            } finally {
+
+                if (!success && !tmp.delete())
+                    log.warn("Could not delete temporary file: " + tmp);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Captured delta snapshot: " + file
+                        + ", commitCounter=" + commitCounter + ", length="
+                        + file.length());
+
+            done = true;
+
+            return new SnapshotResult(file, snapshotFactory.getCompress(),
+                    rbv.get());
+
+        } finally {
+
+            if (captured.get()) {
+                // The delta is the new baseline iff it was written.
+                store.releaseDelta(rbv.get().getCommitCounter(), done);
+            }
+
+            // Release the read lock.
+            journal.abort(txId);
+
+        }
+
+    }
+
+    /**
+     * Restore a journal from a full snapshot and a sequence of deltas.
+     *
+     * @param base
+     *            The full snapshot (optionally compressed with a
+     *            <code>.gz</code> suffix).
+     * @param deltas
+     *            The deltas, in commit order. The first delta MUST have been
+     *            taken against the commit point of the full snapshot and each
+     *            subsequent delta against the commit point of its predecessor.
+     * @param dst
+     *            The journal file to be written. If the file exists, then it
+     *            must be empty.
+     *
+     * @throws IOException
+     *             if the deltas do not form a chain from the base snapshot.
+     */
+    public static void restore(final File base, final File[] deltas,
+            final File dst) throws IOException {
+
+        if (!base.exists())
+            throw new FileNotFoundException(base.getAbsolutePath());
+
+        if (base.getName().endsWith(".gz")) {
+
+            SnapshotTask.decompress(base, dst);
+
+        } else {
+
+            if (dst.exists() && dst.length() != 0)
+                throw new IOException("Output file exists and is not empty: "
+                        + dst.getAbsolutePath());
+
+            copy(base, dst);
+
+        }
+
+        for (File delta : deltas) {
+
+            applyDelta(dst, delta);
+
+        }
+
+    }
+
+    /**
+     * Apply a delta to a journal file.
+     *
+     * @param journal
+     *            The journal file. Its current commit point MUST be the
+     *            baseline of the delta.
+     * @param delta
+     *            The delta.
+     *
+     * @return The commit counter of the journal after the delta is applied.
+     *
+     * @throws IOException
+     *             if the file is not a delta.
+     * @throws IOException
+     *             if the commit point of the journal is not the baseline of
+     *             the delta.
+     */
+    public static long applyDelta(final File journal, final File delta)
+            throws IOException {
+
+        if (!delta.exists())
+            throw new FileNotFoundException(delta.getAbsolutePath());
+
+        final DataInputStream is = new DataInputStream(openStream(delta));
+        try {
+
+            if (is.readInt() != MAGIC)
+                throw new IOException("Not a delta snapshot: " + delta);
+
+            final int version = is.readInt();
+            if (version != VERSION0)
+                throw new IOException("Unknown version: " + version);
+
+            final long baseCommitCounter = is.readLong();
+            final long commitCounter = is.readLong();
+            final long extent = is.readLong();
+
+            final RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+            try {
+
+                final IReopenChannel<FileChannel> opener = new IReopenChannel<FileChannel>() {
+
+                    public String toString() {
+                        return journal.toString();
+                    }
+
+                    public FileChannel reopenChannel() throws IOException {
+                        return raf.getChannel();
+                    }
+
+                };
+
+                final long current = new RootBlockUtility(opener, journal,
+                        true/* validateChecksum */,
+                        false/* alternateRootBlock */,
+                        false/* ignoreBadRootBlock */).rootBlock
+                        .getCommitCounter();
+
+                if (current != baseCommitCounter)
+                    throw new IOException("Delta is against commitCounter="
+                            + baseCommitCounter + ", but journal is at "
+                            + current + ": " + delta);
+
+                if (raf.length() < extent)
+                    raf.setLength(extent);
+
+                byte[] a = new byte[0];
+                while (true) {
+
+                    final long offset = is.readLong();
+
+                    if (offset < 0)
+                        break;
+
+                    final int len = is.readInt();
+
+                    if (a.length < len)
+                        a = new byte[len];
+
+                    is.readFully(a, 0, len);
+
+                    FileChannelUtility.writeAll(opener,
+                            ByteBuffer.wrap(a, 0, len), offset);
+
+                }
+
+                raf.getChannel().force(true/* metaData */);
+
+            } finally {
+
+                raf.close();
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Applied delta: " + delta + ", commitCounter="
+                        + commitCounter);
+
+            return commitCounter;
+
+        } catch (EOFException ex) {
+
+            throw new IOException("Truncated delta: " + delta, ex);
+
+        } finally {
+
+            is.close();
+
+        }
+
+    }
+
+    private static InputStream openStream(final File file) throws IOException {
+
+        final InputStream is = new BufferedInputStream(new FileInputStream(
+                file), BUFFER_SIZE);
+
+        // Compressed deltas are recognized by the GZIP magic.
+        is.mark(2);
+        final int b0 = is.read();
+        final int b1 = is.read();
+        is.reset();
+
+        if (b0 == 0x1f && b1 == 0x8b)
+            return new GZIPInputStream(is);
+
+        return is;
+
+    }
+
+    private static void copy(final File src, final File dst) throws IOException {
+
+        final InputStream is = new FileInputStream(src);
+        try {
+            final OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream(dst));
+            try {
+                final byte[] a = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = is.read(a)) > 0) {
+                    os.write(a, 0, n);
+                }
+                os.flush();
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+
+    }
+
+    /**
+     * Restore a journal from a full snapshot and a sequence of deltas.
+     *
+     * @param args
+     *            <code>dst base [delta ...]</code>
+     *
+     * @throws IOException
+     */
+    public static void main(final String[] args) throws IOException {
+
+        if (args.length < 2) {
+
+            System.err.println("usage: <dst> <base> [delta ...]");
+
+            System.exit(1);
+
+        }
+
+        final File dst = new File(args[0]);
+
+        final File base = new File(args[1]);
+
+        final File[] deltas = new File[args.length - 2];
+
+        for (int i = 2; i < args.length; i++) {
+
+            deltas[i - 2] = new File(args[i]);
+
+        }
+
+        restore(base, deltas, dst);
+
+        System.out.println("Restored " + dst + " from " + base + " and "
+                + deltas.length + " delta(s)");
+
+    }
+
+}
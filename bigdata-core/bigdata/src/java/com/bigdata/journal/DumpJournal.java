@@ -976,7 +976,7 @@ public class DumpJournal {
                     try {
                     
                         final com.bigdata.btree.data.IAbstractNodeData nodeOrLeaf = nodeSer
-                                .decode(buf.duplicate());
+                                .decode(nodeSer.decompress(buf.duplicate()));
 
                         log.warn("Record decoded from index=" + name);
                         
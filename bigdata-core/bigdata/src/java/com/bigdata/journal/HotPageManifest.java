@@ -0,0 +1,492 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.rawstore.IAddressManager;
+
+/**
+ * Tracks the records most frequently read from the backing store of a
+ * {@link Journal} and persists their file offsets as a manifest which is used
+ * to warm up the journal when it is next opened (see
+ * {@link ManifestWarmUpTask}).
+ * <p>
+ * The hot records are tracked using a fixed capacity set associative table of
+ * addresses with small saturating counters. A read of a record which is not in
+ * the table decrements the least frequently read entry of its set and replaces
+ * it once that entry reaches zero, so a one-shot scan can not flush the hot
+ * records from the table. The counters are periodically halved so the table
+ * follows a changing workload. The table is updated without locks and is
+ * therefore only approximate under concurrent reads.
+ * <p>
+ * The manifest is written as the store UUID, the commit counter and the file
+ * offset and byte length of each hot record, in descending order of
+ * frequency.
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ *
+ * @see WarmUpPlugIn
+ */
+public class HotPageManifest {
+
+    private static final Logger log = Logger.getLogger(HotPageManifest.class);
+
+    /**
+     * The extension appended to the name of the journal file to name its
+     * manifest.
+     */
+    public static final String EXT = ".hot";
+
+    /**
+     * The magic value for a manifest file.
+     */
+    static final int MAGIC = 0x686f7470;
+
+    /**
+     * The current version of the manifest file format.
+     */
+    static final int VERSION0 = 0;
+
+    /**
+     * The #of entries in each set of the table.
+     */
+    private static final int WAYS = 4;
+
+    /**
+     * The addresses of the tracked records. Zero is an empty entry.
+     */
+    private final long[] addrs;
+
+    /**
+     * The saturating frequency counter for each entry.
+     */
+    private final byte[] hits;
+
+    /**
+     * The mask used to select a set from the hash of an address.
+     */
+    private final int setMask;
+
+    /**
+     * The #of reads before the counters are halved.
+     */
+    private final int sampleSize;
+
+    /**
+     * The #of reads since the counters were last halved (approximate).
+     */
+    private int ntouch = 0;
+
+    /**
+     * The #of times the manifest was written.
+     */
+    private final AtomicLong nwrites = new AtomicLong();
+
+    /**
+     * The #of records in the last manifest which was written.
+     */
+    private volatile int nrecords = 0;
+
+    /**
+     * @param capacity
+     *            The maximum #of records which are tracked. This is rounded
+     *            up to a power of two.
+     */
+    public HotPageManifest(final int capacity) {
+
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+
+        int nsets = 1;
+
+        while (nsets * WAYS < capacity)
+            nsets <<= 1;
+
+        this.setMask = nsets - 1;
+
+        this.addrs = new long[nsets * WAYS];
+
+        this.hits = new byte[nsets * WAYS];
+
+        this.sampleSize = 10 * addrs.length;
+
+    }
+
+    /**
+     * The maximum #of records which are tracked.
+     */
+    public int capacity() {
+
+        return addrs.length;
+
+    }
+
+    /**
+     * Note a read of the record at that address.
+     *
+     * @param addr
+     *            The address of the record.
+     */
+    public void touch(final long addr) {
+
+        if (addr == 0L)
+            return;
+
+        final int base = index(addr) * WAYS;
+
+        int min = base;
+
+        for (int i = base; i < base + WAYS; i++) {
+
+            if (addrs[i] == addr) {
+
+                if (hits[i] < Byte.MAX_VALUE)
+                    hits[i]++;
+
+                age();
+
+                return;
+
+            }
+
+            if (hits[i] < hits[min])
+                min = i;
+
+        }
+
+        if (hits[min] == 0) {
+
+            addrs[min] = addr;
+
+            hits[min] = 1;
+
+        } else {
+
+            hits[min]--;
+
+        }
+
+        age();
+
+    }
+
+    private int index(final long addr) {
+
+        long h = addr * 0x9E3779B97F4A7C15L;
+
+        h ^= h >>> 32;
+
+        return ((int) h) & setMask;
+
+    }
+
+    /**
+     * Halve the counters once enough reads have been observed.
+     */
+    private void age() {
+
+        if (++ntouch < sampleSize)
+            return;
+
+        ntouch = 0;
+
+        for (int i = 0; i < hits.length; i++) {
+
+            hits[i] >>= 1;
+
+        }
+
+    }
+
+    /**
+     * The addresses of the tracked records in descending order of frequency.
+     */
+    public long[] getHotAddrs() {
+
+        final int n = addrs.length;
+
+        // Sort (frequency, index) pairs packed into a long.
+        final long[] a = new long[n];
+
+        int m = 0;
+
+        for (int i = 0; i < n; i++) {
+
+            final int h = hits[i];
+
+            if (h > 0 && addrs[i] != 0L)
+                a[m++] = (((long) (Byte.MAX_VALUE - h)) << 32) | i;
+
+        }
+
+        Arrays.sort(a, 0, m);
+
+        final long[] ret = new long[m];
+
+        for (int i = 0; i < m; i++) {
+
+            ret[i] = addrs[(int) a[i]];
+
+        }
+
+        return ret;
+
+    }
+
+    /**
+     * Return the manifest file for the journal.
+     *
+     * @param journalFile
+     *            The backing file of the journal.
+     */
+    public static File getManifestFile(final File journalFile) {
+
+        return new File(journalFile.getPath() + EXT);
+
+    }
+
+    /**
+     * Write the manifest for the hot records of the journal. The manifest is
+     * written on a temporary file which is then renamed onto the target file.
+     *
+     * @param journal
+     *            The journal.
+     * @param file
+     *            The manifest file.
+     *
+     * @return The #of records in the manifest.
+     */
+    public int write(final AbstractJournal journal, final File file)
+            throws IOException {
+
+        final IBufferStrategy bs = journal.getBufferStrategy();
+
+        final IAddressManager am = bs.getAddressManager();
+
+        final boolean rw = bs instanceof RWStrategy;
+
+        // Blobs are not contiguous on the RWStore.
+        final int maxRecord = rw ? ((RWStrategy) bs).getStore()
+                .getMaxAllocSize() : Integer.MAX_VALUE;
+
+        final IRootBlockView rbv = journal.getRootBlockView();
+
+        final long[] hot = getHotAddrs();
+
+        final File tmp = new File(file.getPath() + ".tmp");
+
+        int n = 0;
+
+        final DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+
+        try {
+
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION0);
+            os.writeLong(rbv.getUUID().getMostSignificantBits());
+            os.writeLong(rbv.getUUID().getLeastSignificantBits());
+            os.writeLong(rbv.getCommitCounter());
+
+            for (long addr : hot) {
+
+                final int nbytes = am.getByteCount(addr);
+
+                final long offset;
+                final int len;
+                if (rw) {
+                    // the physical address is the offset on the file.
+                    offset = am.getPhysicalAddress(addr);
+                    // include the checksum.
+                    len = nbytes + 4;
+                } else {
+                    offset = bs.getHeaderSize() + am.getOffset(addr);
+                    len = nbytes;
+                }
+
+                if (offset <= 0 || nbytes <= 0 || len > maxRecord)
+                    continue;
+
+                os.writeLong(offset);
+                os.writeInt(len);
+
+                n++;
+
+            }
+
+            os.writeLong(-1L);
+
+            os.flush();
+
+        } finally {
+
+            os.close();
+
+        }
+
+        if (file.exists() && !file.delete())
+            throw new IOException("Could not delete: " + file);
+
+        if (!tmp.renameTo(file))
+            throw new IOException("Could not rename " + tmp + " as " + file);
+
+        nwrites.incrementAndGet();
+
+        nrecords = n;
+
+        if (log.isInfoEnabled())
+            log.info("Wrote manifest: file=" + file + ", nrecords=" + n
+                    + ", commitCounter=" + rbv.getCommitCounter());
+
+        return n;
+
+    }
+
+    /**
+     * Read a manifest.
+     *
+     * @param file
+     *            The manifest file.
+     * @param uuid
+     *            The UUID of the store.
+     * @param maxBytes
+     *            The maximum #of bytes spanned by the records returned.
+     *
+     * @return The file offsets (<code>[0][i]</code>) and byte lengths (
+     *         <code>[1][i]</code>) of the hottest records up to that budget,
+     *         in the order in which they appear in the manifest.
+     *
+     * @throws IOException
+     *             if the file is not a manifest for that store.
+     */
+    public static long[][] read(final File file, final UUID uuid,
+            final long maxBytes) throws IOException {
+
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+
+        try {
+
+            if (is.readInt() != MAGIC)
+                throw new IOException("Not a manifest: " + file);
+
+            final int version = is.readInt();
+
+            if (version != VERSION0)
+                throw new IOException("Unknown version: " + version);
+
+            final UUID actual = new UUID(is.readLong(), is.readLong());
+
+            if (!actual.equals(uuid))
+                throw new IOException("Manifest is for another store: "
+                        + actual + ", expected=" + uuid);
+
+            // commit counter (informative only).
+            is.readLong();
+
+            long[] offsets = new long[1024];
+            long[] lengths = new long[1024];
+            int n = 0;
+            long nbytes = 0;
+
+            while (true) {
+
+                final long offset = is.readLong();
+
+                if (offset < 0)
+                    break;
+
+                final int len = is.readInt();
+
+                if (nbytes + len > maxBytes)
+                    break;
+
+                if (n == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, n * 2);
+                    lengths = Arrays.copyOf(lengths, n * 2);
+                }
+
+                offsets[n] = offset;
+                lengths[n] = len;
+                n++;
+                nbytes += len;
+
+            }
+
+            return new long[][] { Arrays.copyOf(offsets, n),
+                    Arrays.copyOf(lengths, n) };
+
+        } finally {
+
+            is.close();
+
+        }
+
+    }
+
+    /**
+     * Performance counters.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet root = new CounterSet();
+
+        root.addCounter("capacity", new Instrument<Integer>() {
+            public void sample() {
+                setValue(capacity());
+            }
+        });
+
+        root.addCounter("nwrites", new Instrument<Long>() {
+            public void sample() {
+                setValue(nwrites.get());
+            }
+        });
+
+        root.addCounter("nrecords", new Instrument<Integer>() {
+            public void sample() {
+                setValue(nrecords);
+            }
+        });
+
+        return root;
+
+    }
+
+}
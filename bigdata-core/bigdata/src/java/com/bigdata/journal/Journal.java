@@ -156,6 +156,8 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
             com.bigdata.journal.ConcurrencyManager.Options,
             com.bigdata.journal.TemporaryStoreFactory.Options,
             com.bigdata.journal.QueueStatsPlugIn.Options,
+            com.bigdata.journal.OnlineCompactionPlugIn.Options,
+            com.bigdata.journal.WarmUpPlugIn.Options,
             com.bigdata.journal.PlatformStatsPlugIn.Options,
             com.bigdata.journal.HttpPlugin.Options
             // Note: Do not import. Forces bigdata-ganglia dependency.
@@ -2503,6 +2505,18 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
          * {@link Journal#getExecutorService()}.
          */
         String executorService = "Executor Service";
+
+        /**
+         * The namespace for counters pertaining to the
+         * {@link OnlineCompactionPlugIn} (if running).
+         */
+        String onlineCompaction = "Online Compaction";
+
+        /**
+         * The namespace for counters pertaining to the {@link WarmUpPlugIn}
+         * (if running).
+         */
+        String hotPages = "Hot Pages";
         
         /**
          * Performance counters for the query engine associated with this
@@ -2592,6 +2606,46 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
                 
             }
 
+            {
+
+                final IPlugIn<Journal, OnlineCompactionTask> plugin = pluginCompaction
+                        .get();
+
+                if (plugin != null) {
+
+                    final OnlineCompactionTask t = plugin.getService();
+
+                    if (t != null) {
+
+                        tmp.makePath(IJournalCounters.onlineCompaction).attach(
+                                t.getCounters());
+
+                    }
+
+                }
+
+            }
+
+            {
+
+                final IPlugIn<Journal, HotPageManifest> plugin = pluginWarmUp
+                        .get();
+
+                if (plugin != null) {
+
+                    final HotPageManifest t = plugin.getService();
+
+                    if (t != null) {
+
+                        tmp.makePath(IJournalCounters.hotPages).attach(
+                                t.getCounters());
+
+                    }
+
+                }
+
+            }
+
         }
         
         // Lookup an existing query engine, but do not cause one to be created.
@@ -2881,6 +2935,40 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
 
    }
 
+   /**
+    * Submit a task that will take an incremental (delta) snapshot of the
+    * journal and return the {@link Future} for that task. The delta contains
+    * only the allocation slots committed since the last snapshot (full or
+    * delta) taken while the journal was open. The deltas may be layered onto
+    * the full snapshot using {@link DeltaSnapshotTask#restore(File, File[], File)}.
+    * 
+    * @param snapshotFactory
+    *           The factory that will provide the name of the file on which the
+    *           delta will be written.
+    * 
+    * @return The {@link Future} for the delta snapshot. The task fails with an
+    *         {@link IllegalStateException} if no snapshot was taken since the
+    *         journal was opened.
+    * 
+    * @throws UnsupportedOperationException
+    *            unless the backing store is the {@link RWStore}.
+    * 
+    * @see #snapshot(ISnapshotFactory)
+    */
+   public Future<ISnapshotResult> snapshotDelta(
+         final ISnapshotFactory snapshotFactory) {
+
+      if (!(getBufferStrategy() instanceof RWStrategy)) {
+
+         throw new UnsupportedOperationException();
+
+      }
+
+      return executorService.submit(new DeltaSnapshotTask(this,
+            snapshotFactory));
+
+   }
+
    @Override
 	public void dropIndex(final String name) {
 
@@ -3383,6 +3471,32 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
             
         }
 
+        {
+
+            final IPlugIn<?, ?> plugIn = pluginCompaction.get();
+
+            if (plugIn != null) {
+
+                // stop if running.
+                plugIn.stopService(false/* immediateShutdown */);
+
+            }
+
+        }
+
+        {
+
+            final IPlugIn<?, ?> plugIn = pluginWarmUp.get();
+
+            if (plugIn != null) {
+
+                // stop if running.
+                plugIn.stopService(false/* immediateShutdown */);
+
+            }
+
+        }
+
         {
          
             final IPlugIn<?, ?> plugIn = pluginPlatformStats.get();
@@ -3501,6 +3615,32 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
             
         }
 
+        {
+
+            final IPlugIn<?, ?> plugIn = pluginCompaction.get();
+
+            if (plugIn != null) {
+
+                // stop if running.
+                plugIn.stopService(true/* immediateShutdown */);
+
+            }
+
+        }
+
+        {
+
+            final IPlugIn<?, ?> plugIn = pluginWarmUp.get();
+
+            if (plugIn != null) {
+
+                // stop if running.
+                plugIn.stopService(true/* immediateShutdown */);
+
+            }
+
+        }
+
         {
          
             final IPlugIn<?, ?> plugIn = pluginPlatformStats.get();
@@ -3918,6 +4058,8 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
      */
     
     private final AtomicReference<IPlugIn<Journal, ThreadPoolExecutorBaseStatisticsTask>> pluginQueueStats = new AtomicReference<IPlugIn<Journal,ThreadPoolExecutorBaseStatisticsTask>>();
+    private final AtomicReference<IPlugIn<Journal, OnlineCompactionTask>> pluginCompaction = new AtomicReference<IPlugIn<Journal, OnlineCompactionTask>>();
+    private final AtomicReference<IPlugIn<Journal, HotPageManifest>> pluginWarmUp = new AtomicReference<IPlugIn<Journal, HotPageManifest>>();
     private final AtomicReference<IPlugIn<Journal, AbstractStatisticsCollector>> pluginPlatformStats = new AtomicReference<IPlugIn<Journal, AbstractStatisticsCollector>>();
     private final AtomicReference<IPlugIn<Journal, ?>> pluginHttpd = new AtomicReference<IPlugIn<Journal, ?>>();
     
@@ -4084,6 +4226,28 @@ public class Journal extends AbstractJournal implements IConcurrencyManager,
                 pluginQueueStats.set(tmp);
                 
             }
+
+            // start the online compaction (if enabled).
+            {
+
+                final IPlugIn<Journal, OnlineCompactionTask> tmp = new OnlineCompactionPlugIn();
+
+                tmp.startService(Journal.this);
+
+                pluginCompaction.set(tmp);
+
+            }
+
+            // track the hot records and warm up the journal (if enabled).
+            {
+
+                final IPlugIn<Journal, HotPageManifest> tmp = new WarmUpPlugIn();
+
+                tmp.startService(Journal.this);
+
+                pluginWarmUp.set(tmp);
+
+            }
             
             // start collecting performance counters (if enabled).
             {
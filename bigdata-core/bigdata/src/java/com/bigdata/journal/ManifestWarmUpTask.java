@@ -0,0 +1,324 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.journal;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.util.concurrent.LatchedExecutor;
+
+/**
+ * Warm up a journal by reading the hot records listed in its
+ * {@link HotPageManifest}. Unlike the {@link WarmUpTask}, which walks the
+ * indices and issues random reads, the records are sorted by their offset on
+ * the file, nearby records are coalesced into larger reads, and the file is
+ * divided into contiguous ranges which are read in parallel. Each range is
+ * therefore read sequentially.
+ * <p>
+ * The records are read directly from the backing file and are not decoded.
+ * This populates the file system cache (and the memory mapped regions of the
+ * {@link com.bigdata.rwstore.RWStore} when enabled).
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ *
+ * @see WarmUpPlugIn
+ */
+public class ManifestWarmUpTask implements Callable<Long> {
+
+    private static final Logger log = Logger.getLogger(ManifestWarmUpTask.class);
+
+    /**
+     * Records separated by no more than this many bytes are read together.
+     */
+    static final int MAX_GAP = 64 * 1024;
+
+    /**
+     * The maximum #of bytes in a single coalesced read.
+     */
+    static final int MAX_READ = 1024 * 1024;
+
+    private final Journal journal;
+
+    private final File file;
+
+    private final long maxBytes;
+
+    private final int nparallel;
+
+    /**
+     * The #of bytes read from the backing file.
+     */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * The #of reads issued against the backing file.
+     */
+    private final AtomicLong nreads = new AtomicLong();
+
+    /**
+     * @param journal
+     *            The journal.
+     * @param file
+     *            The manifest file.
+     * @param maxBytes
+     *            The maximum #of bytes of hot records which will be read.
+     * @param nparallel
+     *            The #of ranges of the file which are read in parallel (GTE
+     *            ONE).
+     */
+    public ManifestWarmUpTask(final Journal journal, final File file,
+            final long maxBytes, final int nparallel) {
+
+        if (journal == null)
+            throw new IllegalArgumentException();
+        if (file == null)
+            throw new IllegalArgumentException();
+        if (maxBytes < 0)
+            throw new IllegalArgumentException();
+        if (nparallel < 1)
+            throw new IllegalArgumentException();
+        if (!(journal.getBufferStrategy() instanceof IHABufferStrategy))
+            throw new UnsupportedOperationException();
+
+        this.journal = journal;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.nparallel = nparallel;
+
+    }
+
+    /**
+     * The #of bytes read from the backing file.
+     */
+    public long getBytesRead() {
+
+        return bytesRead.get();
+
+    }
+
+    /**
+     * The #of reads issued against the backing file.
+     */
+    public long getReadCount() {
+
+        return nreads.get();
+
+    }
+
+    /**
+     * @return The #of bytes read from the backing file.
+     */
+    @Override
+    public Long call() throws Exception {
+
+        final long begin = System.nanoTime();
+
+        final long[][] records = HotPageManifest.read(file, journal
+                .getRootBlockView().getUUID(), maxBytes);
+
+        final long[][] runs = coalesce(records[0], records[1], journal
+                .getBufferStrategy().getExtent());
+
+        final long[] offsets = runs[0];
+
+        final long[] lengths = runs[1];
+
+        final int nruns = offsets.length;
+
+        long total = 0;
+
+        for (int i = 0; i < nruns; i++)
+            total += lengths[i];
+
+        // Divide the runs into contiguous ranges of about the same size.
+        final List<FutureTask<Void>> tasks = new LinkedList<FutureTask<Void>>();
+        {
+            final long perTask = total / nparallel + 1;
+
+            int fromIndex = 0;
+            long nbytes = 0;
+
+            for (int i = 0; i < nruns; i++) {
+
+                nbytes += lengths[i];
+
+                if (nbytes >= perTask || i == nruns - 1) {
+
+                    final int from = fromIndex;
+                    final int to = i + 1;
+
+                    tasks.add(new FutureTask<Void>(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            readRange(offsets, lengths, from, to);
+                            return null;
+                        }
+                    }));
+
+                    fromIndex = to;
+                    nbytes = 0;
+
+                }
+
+            }
+        }
+
+        try {
+
+            final LatchedExecutor executor = new LatchedExecutor(
+                    journal.getExecutorService(), nparallel);
+
+            for (FutureTask<Void> ft : tasks) {
+                executor.execute(ft);
+            }
+
+            for (FutureTask<Void> ft : tasks) {
+                ft.get();
+            }
+
+        } finally {
+
+            for (FutureTask<Void> ft : tasks) {
+                ft.cancel(true/* mayInterruptIfRunning */);
+            }
+
+        }
+
+        if (log.isInfoEnabled())
+            log.info("Warmed up: file=" + journal.getFile() + ", nrecords="
+                    + records[0].length + ", nreads=" + nreads + ", nbytes="
+                    + bytesRead + ", elapsed="
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)
+                    + "ms, nparallel=" + nparallel);
+
+        return bytesRead.get();
+
+    }
+
+    /**
+     * Sort the records by offset and coalesce records which are close together
+     * on the file into a single read. Records which do not lie within the
+     * extent are dropped.
+     *
+     * @return The offsets (<code>[0][i]</code>) and lengths (
+     *         <code>[1][i]</code>) of the reads in ascending offset order.
+     */
+    static long[][] coalesce(final long[] offsets, final long[] lengths,
+            final long extent) {
+
+        final int n = offsets.length;
+
+        // Sort the record indices by offset.
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                final long a = offsets[o1];
+                final long b = offsets[o2];
+                return a < b ? -1 : a > b ? 1 : 0;
+            }
+        });
+
+        final long[] roff = new long[n];
+        final long[] rlen = new long[n];
+        int m = 0;
+
+        for (int j = 0; j < n; j++) {
+
+            final int i = order[j];
+
+            final long off = offsets[i];
+            final long end = off + lengths[i];
+
+            if (off < 0 || end > extent)
+                continue;
+
+            if (m > 0) {
+
+                final long rend = roff[m - 1] + rlen[m - 1];
+
+                if (off <= rend + MAX_GAP
+                        && Math.max(end, rend) - roff[m - 1] <= MAX_READ) {
+
+                    rlen[m - 1] = Math.max(end, rend) - roff[m - 1];
+
+                    continue;
+
+                }
+
+            }
+
+            roff[m] = off;
+            rlen[m] = Math.min(end - off, MAX_READ);
+            m++;
+
+        }
+
+        return new long[][] { Arrays.copyOf(roff, m), Arrays.copyOf(rlen, m) };
+
+    }
+
+    /**
+     * Read the runs in the half open range [fromIndex:toIndex).
+     */
+    private void readRange(final long[] offsets, final long[] lengths,
+            final int fromIndex, final int toIndex) {
+
+        final IHABufferStrategy bs = (IHABufferStrategy) journal
+                .getBufferStrategy();
+
+        final ByteBuffer b = ByteBuffer.allocate(MAX_READ);
+
+        for (int i = fromIndex; i < toIndex; i++) {
+
+            if (Thread.interrupted() || !journal.isOpen())
+                return;
+
+            b.clear();
+
+            b.limit((int) lengths[i]);
+
+            bs.readRaw(offsets[i], b);
+
+            nreads.incrementAndGet();
+
+            bytesRead.addAndGet(lengths[i]);
+
+        }
+
+    }
+
+}
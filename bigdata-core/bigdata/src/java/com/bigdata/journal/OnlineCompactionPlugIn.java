@@ -0,0 +1,232 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.journal;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Plugin which periodically runs an {@link OnlineCompactionTask} against an
+ * {@link RWStrategy} journal. The plugin is only started when the journal is
+ * using group commit since the relocation tasks run concurrently with the
+ * application's writers.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class OnlineCompactionPlugIn implements
+        IPlugIn<Journal, OnlineCompactionTask> {
+
+    private static final Logger log = Logger
+            .getLogger(OnlineCompactionPlugIn.class);
+
+    /**
+     * Online compaction options.
+     */
+    public interface Options {
+
+        /**
+         * The delay in milliseconds between slices of the online compaction
+         * (default {@link #DEFAULT_COMPACTION_DELAY}). When zero, online
+         * compaction is disabled. Online compaction is only available for the
+         * {@link BufferMode#DiskRW} mode and requires
+         * {@link Journal.Options#GROUP_COMMIT}.
+         */
+        String COMPACTION_DELAY = Journal.class.getName()
+                + ".compactionDelay";
+
+        String DEFAULT_COMPACTION_DELAY = "0";
+
+        /**
+         * The maximum fraction of the slots of an allocator which may be in
+         * use for that allocator to be evacuated (default
+         * {@link #DEFAULT_COMPACTION_MAX_OCCUPANCY}).
+         */
+        String COMPACTION_MAX_OCCUPANCY = Journal.class.getName()
+                + ".compactionMaxOccupancy";
+
+        String DEFAULT_COMPACTION_MAX_OCCUPANCY = ".5";
+
+        /**
+         * The maximum #of allocators which are evacuated together (default
+         * {@link #DEFAULT_COMPACTION_MAX_ALLOCATORS}).
+         */
+        String COMPACTION_MAX_ALLOCATORS = Journal.class.getName()
+                + ".compactionMaxAllocators";
+
+        String DEFAULT_COMPACTION_MAX_ALLOCATORS = "10";
+
+        /**
+         * The maximum #of records relocated by a single slice (default
+         * {@link #DEFAULT_COMPACTION_MAX_RELOCATIONS}). This bounds the write
+         * set which a slice adds to the next commit.
+         */
+        String COMPACTION_MAX_RELOCATIONS = Journal.class.getName()
+                + ".compactionMaxRelocations";
+
+        String DEFAULT_COMPACTION_MAX_RELOCATIONS = "10000";
+
+        /**
+         * The maximum #of passes over the named indices before an evacuation
+         * which has not drained is abandoned (default
+         * {@link #DEFAULT_COMPACTION_MAX_PASSES}).
+         */
+        String COMPACTION_MAX_PASSES = Journal.class.getName()
+                + ".compactionMaxPasses";
+
+        String DEFAULT_COMPACTION_MAX_PASSES = "10";
+
+    }
+
+    /**
+     * The task.
+     * <p>
+     * Note: Guarded by synchronized(this).
+     */
+    private OnlineCompactionTask compactionTask = null;
+
+    /**
+     * The {@link ScheduledFuture} for the task.
+     * <p>
+     * Note: Guarded by synchronized(this).
+     */
+    private ScheduledFuture<?> scheduledFuture = null;
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Schedule the online compaction (if enabled).
+     */
+    @Override
+    public void startService(final Journal indexManager) {
+
+        final long delay = Long.valueOf(indexManager.getProperty(
+                Options.COMPACTION_DELAY, Options.DEFAULT_COMPACTION_DELAY));
+
+        if (log.isInfoEnabled())
+            log.info(Options.COMPACTION_DELAY + "=" + delay);
+
+        if (delay <= 0)
+            return;
+
+        if (!(indexManager.getBufferStrategy() instanceof RWStrategy)) {
+
+            log.warn("Online compaction requires " + BufferMode.DiskRW);
+
+            return;
+
+        }
+
+        if (!indexManager.isGroupCommit()) {
+
+            log.warn("Online compaction requires "
+                    + Journal.Options.GROUP_COMMIT);
+
+            return;
+
+        }
+
+        if (indexManager.getQuorum() != null) {
+
+            log.warn("Online compaction is not supported for HA.");
+
+            return;
+
+        }
+
+        final float maxOccupancy = Float.valueOf(indexManager.getProperty(
+                Options.COMPACTION_MAX_OCCUPANCY,
+                Options.DEFAULT_COMPACTION_MAX_OCCUPANCY));
+
+        final int maxAllocators = Integer.valueOf(indexManager.getProperty(
+                Options.COMPACTION_MAX_ALLOCATORS,
+                Options.DEFAULT_COMPACTION_MAX_ALLOCATORS));
+
+        final long maxRelocations = Long.valueOf(indexManager.getProperty(
+                Options.COMPACTION_MAX_RELOCATIONS,
+                Options.DEFAULT_COMPACTION_MAX_RELOCATIONS));
+
+        final int maxPasses = Integer.valueOf(indexManager.getProperty(
+                Options.COMPACTION_MAX_PASSES,
+                Options.DEFAULT_COMPACTION_MAX_PASSES));
+
+        synchronized (this) {
+
+            compactionTask = new OnlineCompactionTask(indexManager,
+                    maxOccupancy, maxAllocators, maxRelocations, maxPasses);
+
+            scheduledFuture = indexManager.addScheduledTask(compactionTask,
+                    delay/* initialDelay */, delay, TimeUnit.MILLISECONDS);
+
+        }
+
+    }
+
+    @Override
+    public void stopService(final boolean immediateShutdown) {
+
+        synchronized (this) {
+
+            if (scheduledFuture != null) {
+
+                scheduledFuture
+                        .cancel(immediateShutdown/* mayInterruptIfRunning */);
+
+                scheduledFuture = null;
+
+            }
+
+            compactionTask = null;
+
+        }
+
+    }
+
+    @Override
+    public OnlineCompactionTask getService() {
+
+        synchronized (this) {
+
+            return compactionTask;
+
+        }
+
+    }
+
+    @Override
+    public boolean isRunning() {
+
+        synchronized (this) {
+
+            if (scheduledFuture == null || scheduledFuture.isDone())
+                return false;
+
+            return true;
+
+        }
+
+    }
+
+}
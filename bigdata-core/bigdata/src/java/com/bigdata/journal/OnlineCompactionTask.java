@@ -0,0 +1,353 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.journal;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.BTree;
+import com.bigdata.btree.ILocalBTreeView;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.rawstore.IAddressFilter;
+import com.bigdata.rwstore.RWStore;
+
+/**
+ * Incremental online compaction of an {@link RWStrategy} journal. Each run
+ * performs one bounded slice of work:
+ * <ol>
+ * <li>If no allocators are being evacuated, the sparsest allocators closest to
+ * the end of the file are selected for evacuation (see
+ * {@link RWStore#evacuate(float, int)}).</li>
+ * <li>Otherwise, up to {@link OnlineCompactionPlugIn.Options#COMPACTION_MAX_RELOCATIONS}
+ * records lying on those allocators are relocated by copy-on-write of the
+ * {@link BTree}s which reference them (see
+ * {@link BTree#relocate(IAddressFilter, long)}). Each index is processed by
+ * an unisolated {@link AbstractTask} and the relocation is made durable by the
+ * next group commit. The store releases the drained regions and truncates the
+ * file as part of that commit protocol.</li>
+ * </ol>
+ * Records which are not referenced from a named {@link BTree} (e.g., the
+ * journal's internal indices, {@link com.bigdata.htree.HTree}s and raw blobs)
+ * are not relocated. If the evacuating allocators have not drained after
+ * {@link OnlineCompactionPlugIn.Options#COMPACTION_MAX_PASSES} passes over the
+ * indices then the evacuation is cancelled and the allocators are returned to
+ * service.
+ * <p>
+ * Note: The relocation tasks are unisolated write tasks. The application MUST
+ * respect the group commit contract (see {@link Journal.Options#GROUP_COMMIT})
+ * if this task is run concurrently with application writes.
+ * 
+ * @see OnlineCompactionPlugIn
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class OnlineCompactionTask implements Runnable {
+
+    private static final Logger log = Logger
+            .getLogger(OnlineCompactionTask.class);
+
+    private final Journal journal;
+
+    private final RWStrategy bufferStrategy;
+
+    private final float maxOccupancy;
+
+    private final int maxAllocators;
+
+    private final long maxRelocations;
+
+    private final int maxPasses;
+
+    /**
+     * #of passes over the indices for the current evacuation.
+     * <p>
+     * Note: Guarded by synchronized(this).
+     */
+    private int npasses = 0;
+
+    /**
+     * #of slices executed.
+     */
+    private final AtomicLong nslices = new AtomicLong();
+
+    /**
+     * #of evacuations started.
+     */
+    private final AtomicLong nevacuations = new AtomicLong();
+
+    /**
+     * #of records relocated.
+     */
+    private final AtomicLong nrelocated = new AtomicLong();
+
+    /**
+     * #of allocators whose evacuation was abandoned.
+     */
+    private final AtomicLong nabandoned = new AtomicLong();
+
+    /**
+     * 
+     * @param journal
+     *            The journal.
+     * @param maxOccupancy
+     *            The maximum fraction of the slots of an allocator that may be
+     *            in use for that allocator to be evacuated.
+     * @param maxAllocators
+     *            The maximum #of allocators to evacuate at once.
+     * @param maxRelocations
+     *            The maximum #of records to relocate per slice.
+     * @param maxPasses
+     *            The maximum #of passes over the indices before an evacuation
+     *            is abandoned.
+     * 
+     * @throws UnsupportedOperationException
+     *             if the journal is not backed by the {@link RWStore}.
+     */
+    public OnlineCompactionTask(final Journal journal,
+            final float maxOccupancy, final int maxAllocators,
+            final long maxRelocations, final int maxPasses) {
+
+        if (journal == null)
+            throw new IllegalArgumentException();
+
+        if (!(journal.getBufferStrategy() instanceof RWStrategy))
+            throw new UnsupportedOperationException();
+
+        if (maxOccupancy < 0f || maxOccupancy >= 1f)
+            throw new IllegalArgumentException();
+
+        if (maxAllocators <= 0 || maxRelocations <= 0 || maxPasses <= 0)
+            throw new IllegalArgumentException();
+
+        this.journal = journal;
+
+        this.bufferStrategy = (RWStrategy) journal.getBufferStrategy();
+
+        this.maxOccupancy = maxOccupancy;
+
+        this.maxAllocators = maxAllocators;
+
+        this.maxRelocations = maxRelocations;
+
+        this.maxPasses = maxPasses;
+
+    }
+
+    /**
+     * Run one slice. Errors are logged and the next slice will retry.
+     */
+    @Override
+    public void run() {
+
+        try {
+
+            compact();
+
+        } catch (Throwable t) {
+
+            log.error(t, t);
+
+        }
+
+    }
+
+    /**
+     * Run one slice of the online compaction.
+     * 
+     * @return The #of records relocated by this slice.
+     */
+    synchronized public long compact() throws Exception {
+
+        if (!journal.isOpen())
+            return 0L;
+
+        final RWStore store = bufferStrategy.getStore();
+
+        nslices.incrementAndGet();
+
+        if (store.getEvacuatingCount() == 0) {
+
+            npasses = 0;
+
+            if (store.evacuate(maxOccupancy, maxAllocators) == 0) {
+
+                // Nothing worth compacting.
+                return 0L;
+
+            }
+
+            nevacuations.incrementAndGet();
+
+        } else if (npasses >= maxPasses) {
+
+            /*
+             * The remaining records are not reachable from the named B+Trees
+             * (or they are still pinned by a retained commit point). Return
+             * the allocators to service.
+             */
+
+            final int n = store.cancelEvacuation();
+
+            nabandoned.addAndGet(n);
+
+            if (log.isInfoEnabled())
+                log.info("Abandoned evacuation: nallocators=" + n);
+
+            npasses = 0;
+
+            return 0L;
+
+        }
+
+        npasses++;
+
+        final IAddressFilter filter = new IAddressFilter() {
+            @Override
+            public boolean accept(final long addr) {
+                return bufferStrategy.isEvacuating(addr);
+            }
+        };
+
+        final List<String> names = new LinkedList<String>();
+        {
+            final Iterator<String> itr = journal.indexNameScan(
+                    null/* prefix */, ITx.UNISOLATED);
+
+            while (itr.hasNext()) {
+
+                names.add(itr.next());
+
+            }
+        }
+
+        long n = 0L;
+
+        for (String name : names) {
+
+            if (n >= maxRelocations || store.getEvacuatingCount() == 0)
+                break;
+
+            n += journal.submit(
+                    new RelocateTask(journal.getConcurrencyManager(), name,
+                            filter, maxRelocations - n)).get();
+
+        }
+
+        nrelocated.addAndGet(n);
+
+        if (log.isInfoEnabled())
+            log.info("Relocated " + n + " records: pass=" + npasses
+                    + ", evacuating=" + store.getEvacuatingCount());
+
+        return n;
+
+    }
+
+    /**
+     * Relocate the records of a named {@link BTree} which are accepted by the
+     * filter.
+     */
+    private static class RelocateTask extends AbstractTask<Long> {
+
+        private final IAddressFilter filter;
+
+        private final long maxRelocations;
+
+        RelocateTask(final IConcurrencyManager concurrencyManager,
+                final String name, final IAddressFilter filter,
+                final long maxRelocations) {
+
+            super(concurrencyManager, ITx.UNISOLATED, name);
+
+            this.filter = filter;
+
+            this.maxRelocations = maxRelocations;
+
+        }
+
+        @Override
+        protected Long doTask() throws Exception {
+
+            final ILocalBTreeView ndx;
+            try {
+
+                ndx = getIndex(getOnlyResource());
+
+            } catch (ClassCastException ex) {
+
+                // Not a B+Tree (GIST).
+                return 0L;
+
+            }
+
+            if (!(ndx instanceof BTree))
+                return 0L;
+
+            return ((BTree) ndx).relocate(filter, maxRelocations);
+
+        }
+
+    }
+
+    /**
+     * Performance counters.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet root = new CounterSet();
+
+        root.addCounter("nslices", new Instrument<Long>() {
+            public void sample() {
+                setValue(nslices.get());
+            }
+        });
+
+        root.addCounter("nevacuations", new Instrument<Long>() {
+            public void sample() {
+                setValue(nevacuations.get());
+            }
+        });
+
+        root.addCounter("nrelocated", new Instrument<Long>() {
+            public void sample() {
+                setValue(nrelocated.get());
+            }
+        });
+
+        root.addCounter("nabandoned", new Instrument<Long>() {
+            public void sample() {
+                setValue(nabandoned.get());
+            }
+        });
+
+        return root;
+
+    }
+
+}
@@ -38,6 +38,7 @@ import com.bigdata.io.DirectBufferPool;
 import com.bigdata.io.FileLockUtility;
 import com.bigdata.io.compression.CompressorRegistry;
 import com.bigdata.io.compression.IRecordCompressor;
+import com.bigdata.io.writecache.RecordCache;
 import com.bigdata.io.writecache.WriteCache;
 import com.bigdata.io.writecache.WriteCache.ReadCache;
 import com.bigdata.io.writecache.WriteCacheService;
@@ -318,6 +319,24 @@ public interface Options {
      */
     String HOT_CACHE_SIZE = AbstractJournal.class.getName()+".hotCacheSize";
 
+    /**
+     * Option may be used to enable a scan resistant cache for records read
+     * through the {@link WriteCacheService} of an {@link RWStore}. The value
+     * is the #of {@link DirectBufferPool} buffers which may be used by the
+     * cache. When ZERO (0) the record cache is disabled.
+     * <p>
+     * Unlike the {@link ReadCache}, records are only admitted to this cache
+     * when they are estimated to be accessed more frequently than the records
+     * they would displace. A single full range scan therefore does not flush
+     * the hot B+Tree nodes from the cache. The hit, miss and admission
+     * counters are reported under the <code>recordCache</code> path of the
+     * write cache counters.
+     * 
+     * @see #DEFAULT_RECORD_CACHE_BUFFER_COUNT
+     * @see RecordCache
+     */
+    String RECORD_CACHE_BUFFER_COUNT = AbstractJournal.class.getName()+".recordCacheBufferCount";
+
 //    /**
 //     * An integer property whose value controls the size of the write cache (in
 //     * bytes) used by the selected {@link BufferMode} (default
@@ -341,6 +360,8 @@ public interface Options {
      * replicated messages and compressed HALogs (default
      * {@value #DEFAULT_HALOG_COMPRESSOR}). The value is a <code>key</code>
      * declared to the {@link CompressorRegistry}.
+     * {@link CompressorRegistry#LZ} trades some compression for much less CPU
+     * on the leader and the followers.
      * 
      * @see CompressorRegistry
      * 
@@ -687,6 +708,11 @@ public interface Options {
      * The default for {@link #HOT_CACHE_THRESHOLD}.
      */
     String DEFAULT_HOT_CACHE_SIZE = "10";
+
+    /**
+     * The default for {@link #RECORD_CACHE_BUFFER_COUNT} (disabled).
+     */
+    String DEFAULT_RECORD_CACHE_BUFFER_COUNT = "0";
     
     /**
      * The default initial extent for a new journal.
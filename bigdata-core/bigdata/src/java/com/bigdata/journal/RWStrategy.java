@@ -799,6 +799,21 @@ public class RWStrategy extends AbstractRawStore implements IBufferStrategy,
 	    
 	}
 
+    /**
+     * Return <code>true</code> iff the address lies in an allocator which is
+     * being evacuated by an online compaction.
+     * 
+     * @param addr
+     *            The address.
+     * 
+     * @see RWStore#evacuate(float, int)
+     */
+    public boolean isEvacuating(final long addr) {
+
+        return m_store.isEvacuating(decodeAddr(addr));
+
+    }
+
     /**
      * Return <code>true</code> iff the address was in the write cache as of the
      * moment the write cache was inspected.
@@ -0,0 +1,112 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+*/
+package com.bigdata.journal;
+
+import com.bigdata.btree.BTree;
+import com.bigdata.btree.BloomFilterFactory;
+import com.bigdata.btree.IndexMetadata;
+
+/**
+ * (Re-)build the bloom filter for a named index (unisolated write operation).
+ * This may be used to add a bloom filter to an existing index, to switch an
+ * existing index to a scalable bloom filter, or to restore a bloom filter
+ * which was disabled when the index grew beyond its capacity. The task holds
+ * the lock on the index while it scans the keys, so it should be submitted
+ * to the {@link IConcurrencyManager} rather than run by the caller's thread.
+ * The new bloom filter is persisted with the checkpoint of the index when the
+ * task completes.
+ * 
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ * 
+ * @see BTree#rebuildBloomFilter()
+ */
+public class RebuildBloomFilterTask extends AbstractTask<Long> {
+
+    private final BloomFilterFactory bloomFilterFactory;
+
+    /**
+     * Rebuild the bloom filter using the {@link BloomFilterFactory} declared
+     * by the {@link IndexMetadata}.
+     * 
+     * @param concurrencyManager
+     * @param name
+     *            The name of the index.
+     */
+    public RebuildBloomFilterTask(final IConcurrencyManager concurrencyManager,
+            final String name) {
+
+        this(concurrencyManager, name, null/* bloomFilterFactory */);
+
+    }
+
+    /**
+     * @param concurrencyManager
+     * @param name
+     *            The name of the index.
+     * @param bloomFilterFactory
+     *            When non-<code>null</code>, the {@link IndexMetadata} of the
+     *            index is updated to use this {@link BloomFilterFactory}
+     *            before the bloom filter is rebuilt.
+     */
+    public RebuildBloomFilterTask(final IConcurrencyManager concurrencyManager,
+            final String name, final BloomFilterFactory bloomFilterFactory) {
+
+        super(concurrencyManager, ITx.UNISOLATED, name);
+
+        this.bloomFilterFactory = bloomFilterFactory;
+
+    }
+
+    /**
+     * Rebuild the bloom filter.
+     * 
+     * @return The #of keys added to the bloom filter -or- <code>-1</code> if
+     *         the index is too large for the bloom filter.
+     * 
+     * @throws NoSuchIndexException
+     *             if the index does not exist.
+     */
+    @Override
+    public Long doTask() throws Exception {
+
+        final String name = getOnlyResource();
+
+        final BTree btree = getIndex(name).getMutableBTree();
+
+        if (bloomFilterFactory != null) {
+
+            final IndexMetadata md = btree.getIndexMetadata().clone();
+
+            md.setBloomFilterFactory(bloomFilterFactory);
+
+            btree.setIndexMetadata(md);
+
+        }
+
+        return Long.valueOf(btree.rebuildBloomFilter());
+
+    }
+
+}
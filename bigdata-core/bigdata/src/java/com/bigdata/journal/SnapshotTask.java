@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -122,14 +123,22 @@ public class SnapshotTask implements Callable<ISnapshotResult> {
 
       // Grab a read lock.
       final long txId = journal.newTx(ITx.READ_COMMITTED);
+
+      /*
+       * Set iff the RWStore slots written since the last snapshot were
+       * captured. A full snapshot establishes the baseline for a delta.
+       */
+      final AtomicBoolean captured = new AtomicBoolean(false);
+      final AtomicReference<IRootBlockView> rbv = new AtomicReference<IRootBlockView>();
+      boolean done = false;
       try {
 
          /*
           * Get all snapshot core data, including rootblocks and any allocation
           * data, setting the current committed rootblock view.
           */
-         final AtomicReference<IRootBlockView> rbv = new AtomicReference<IRootBlockView>();
-         final ISnapshotData coreData = journal.snapshotAllocationData(rbv);
+         final ISnapshotData coreData = journal.snapshotAllocationData(rbv,
+               null/* deltaRegions */, captured);
 
          if (rbv.get().getCommitCounter() == 0L) {
 
@@ -262,10 +271,16 @@ public class SnapshotTask implements Callable<ISnapshotResult> {
          }
 
          // Done.
+         done = true;
          return new SnapshotResult(file, snapshotFactory.getCompress(),
                rbv.get());
    
       } finally {
+         if (captured.get()) {
+            // The snapshot is the new baseline iff it was written.
+            ((RWStrategy) journal.getBufferStrategy()).getStore().releaseDelta(
+                  rbv.get().getCommitCounter(), done);
+         }
          // Release the read lock.
          journal.abort(txId);
       }
@@ -36,6 +36,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
+import com.bigdata.btree.NodeDataCache;
 import com.bigdata.counters.CounterSet;
 import com.bigdata.io.DirectBufferPool;
 import com.bigdata.mdi.AbstractResourceMetadata;
@@ -391,20 +392,15 @@ public class TemporaryRawStore extends AbstractRawWormStore implements IMRMW {
 //
 //                }
 
-//              @see BLZG-1501 (remove LRUNexus)
-//                if (LRUNexus.INSTANCE != null) {
-//
-//                    try {
-//
-//                        LRUNexus.INSTANCE.deleteCache(getUUID());
-//
-//                    } catch (Throwable t) {
-//
-//                        log.error(t, t);
-//
-//                    }
-//
-//                }
+                try {
+
+                    NodeDataCache.deleteCache(this);
+
+                } catch (Throwable t) {
+
+                    log.error(t, t);
+
+                }
 
             }
 
@@ -0,0 +1,317 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Plugin which tracks the hot records of a {@link Journal} in a
+ * {@link HotPageManifest}, writes the manifest periodically and when the
+ * journal is shutdown, and uses the manifest from the previous run to warm up
+ * the journal when it is opened (see {@link ManifestWarmUpTask}).
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class WarmUpPlugIn implements IPlugIn<Journal, HotPageManifest> {
+
+    private static final Logger log = Logger.getLogger(WarmUpPlugIn.class);
+
+    /**
+     * Hot page manifest options.
+     */
+    public interface Options {
+
+        /**
+         * When <code>true</code>, the hot records of the journal are tracked
+         * and written on a manifest next to the backing file (default
+         * {@link #DEFAULT_HOT_PAGE_MANIFEST}). The manifest from the previous
+         * run is used to warm up the journal when it is opened. This is only
+         * available for durable journals. The manifest is written periodically
+         * and by a normal {@link Journal#shutdown()}, but not by
+         * {@link Journal#shutdownNow()}.
+         *
+         * @see HotPageManifest#EXT
+         */
+        String HOT_PAGE_MANIFEST = Journal.class.getName()
+                + ".hotPageManifest";
+
+        String DEFAULT_HOT_PAGE_MANIFEST = "false";
+
+        /**
+         * The maximum #of records tracked by the manifest (default
+         * {@link #DEFAULT_HOT_PAGE_CAPACITY}).
+         */
+        String HOT_PAGE_CAPACITY = Journal.class.getName()
+                + ".hotPageCapacity";
+
+        String DEFAULT_HOT_PAGE_CAPACITY = "65536";
+
+        /**
+         * The interval in milliseconds between writes of the manifest (default
+         * {@link #DEFAULT_HOT_PAGE_MANIFEST_INTERVAL}). When zero, the manifest
+         * is only written when the journal is shutdown.
+         */
+        String HOT_PAGE_MANIFEST_INTERVAL = Journal.class.getName()
+                + ".hotPageManifestInterval";
+
+        String DEFAULT_HOT_PAGE_MANIFEST_INTERVAL = "600000";
+
+        /**
+         * The maximum #of bytes of hot records which are read when the
+         * journal is opened (default {@link #DEFAULT_WARM_UP_BYTES}). When
+         * zero, the journal is not warmed up.
+         */
+        String WARM_UP_BYTES = Journal.class.getName() + ".warmUpBytes";
+
+        String DEFAULT_WARM_UP_BYTES = "" + (1L << 30);
+
+        /**
+         * The #of ranges of the backing file which are read in parallel when
+         * the journal is warmed up (default {@link #DEFAULT_WARM_UP_THREADS}).
+         */
+        String WARM_UP_THREADS = Journal.class.getName() + ".warmUpThreads";
+
+        String DEFAULT_WARM_UP_THREADS = "10";
+
+    }
+
+    /**
+     * The manifest.
+     * <p>
+     * Note: Guarded by synchronized(this).
+     */
+    private HotPageManifest manifest = null;
+
+    /**
+     * The journal.
+     * <p>
+     * Note: Guarded by synchronized(this).
+     */
+    private Journal journal = null;
+
+    /**
+     * The {@link ScheduledFuture} for the periodic writes of the manifest.
+     * <p>
+     * Note: Guarded by synchronized(this).
+     */
+    private ScheduledFuture<?> scheduledFuture = null;
+
+    /**
+     * The {@link Future} for the warm up.
+     * <p>
+     * Note: Guarded by synchronized(this).
+     */
+    private Future<Long> warmUpFuture = null;
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Start tracking the hot records and warm up the journal from the
+     * manifest of the previous run (if enabled).
+     */
+    @Override
+    public void startService(final Journal indexManager) {
+
+        final boolean enabled = Boolean.valueOf(indexManager.getProperty(
+                Options.HOT_PAGE_MANIFEST, Options.DEFAULT_HOT_PAGE_MANIFEST));
+
+        if (log.isInfoEnabled())
+            log.info(Options.HOT_PAGE_MANIFEST + "=" + enabled);
+
+        if (!enabled)
+            return;
+
+        if (indexManager.getFile() == null || indexManager.deleteOnClose
+                || !indexManager.getBufferStrategy().isStable()
+                || !(indexManager.getBufferStrategy() instanceof IHABufferStrategy)) {
+
+            log.warn("Hot page manifest requires a durable journal.");
+
+            return;
+
+        }
+
+        final int capacity = Integer.valueOf(indexManager.getProperty(
+                Options.HOT_PAGE_CAPACITY, Options.DEFAULT_HOT_PAGE_CAPACITY));
+
+        final long interval = Long.valueOf(indexManager.getProperty(
+                Options.HOT_PAGE_MANIFEST_INTERVAL,
+                Options.DEFAULT_HOT_PAGE_MANIFEST_INTERVAL));
+
+        final long warmUpBytes = Long.valueOf(indexManager.getProperty(
+                Options.WARM_UP_BYTES, Options.DEFAULT_WARM_UP_BYTES));
+
+        final int warmUpThreads = Integer.valueOf(indexManager.getProperty(
+                Options.WARM_UP_THREADS, Options.DEFAULT_WARM_UP_THREADS));
+
+        final File file = HotPageManifest.getManifestFile(indexManager
+                .getFile());
+
+        synchronized (this) {
+
+            journal = indexManager;
+
+            manifest = new HotPageManifest(capacity);
+
+            if (warmUpBytes > 0 && file.exists()) {
+
+                final FutureTask<Long> ft = new FutureTask<Long>(
+                        new ManifestWarmUpTask(indexManager, file,
+                                warmUpBytes, warmUpThreads));
+
+                indexManager.getExecutorService().submit(ft);
+
+                warmUpFuture = ft;
+
+            }
+
+            indexManager.setHotPageManifest(manifest);
+
+            if (interval > 0) {
+
+                scheduledFuture = indexManager.addScheduledTask(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                writeManifest();
+                            }
+                        }, interval/* initialDelay */, interval,
+                        TimeUnit.MILLISECONDS);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Write the manifest (if the plugin is running).
+     */
+    synchronized void writeManifest() {
+
+        if (manifest == null || !journal.isOpen())
+            return;
+
+        try {
+
+            manifest.write(journal,
+                    HotPageManifest.getManifestFile(journal.getFile()));
+
+        } catch (IOException ex) {
+
+            log.warn("Could not write manifest: " + ex, ex);
+
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The manifest is written unless this is an immediate shutdown.
+     */
+    @Override
+    public void stopService(final boolean immediateShutdown) {
+
+        synchronized (this) {
+
+            if (scheduledFuture != null) {
+
+                scheduledFuture
+                        .cancel(immediateShutdown/* mayInterruptIfRunning */);
+
+                scheduledFuture = null;
+
+            }
+
+            if (warmUpFuture != null) {
+
+                warmUpFuture.cancel(true/* mayInterruptIfRunning */);
+
+                warmUpFuture = null;
+
+            }
+
+            if (manifest != null) {
+
+                journal.setHotPageManifest(null);
+
+                if (!immediateShutdown)
+                    writeManifest();
+
+                manifest = null;
+
+                journal = null;
+
+            }
+
+        }
+
+    }
+
+    @Override
+    public HotPageManifest getService() {
+
+        synchronized (this) {
+
+            return manifest;
+
+        }
+
+    }
+
+    /**
+     * The {@link Future} of the warm up of the journal from the manifest of
+     * the previous run -or- <code>null</code> if the journal is not being
+     * warmed up.
+     */
+    public Future<Long> getWarmUpFuture() {
+
+        synchronized (this) {
+
+            return warmUpFuture;
+
+        }
+
+    }
+
+    @Override
+    public boolean isRunning() {
+
+        synchronized (this) {
+
+            return manifest != null;
+
+        }
+
+    }
+
+}
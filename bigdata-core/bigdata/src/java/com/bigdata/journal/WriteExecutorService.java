@@ -54,6 +54,7 @@ import org.apache.log4j.MDC;
 
 import com.bigdata.btree.BTree;
 import com.bigdata.concurrent.NonBlockingLockManagerWithNewDesign;
+import com.bigdata.counters.Log2Histogram;
 import com.bigdata.rawstore.IRawStore;
 import com.bigdata.resources.OverflowManager;
 import com.bigdata.resources.ResourceManager;
@@ -190,6 +191,17 @@ public class WriteExecutorService extends ThreadPoolExecutor {
      */
     protected final long groupCommitTimeout;
 
+    /**
+     * When <code>true</code>, the group commit will also wait (within the
+     * {@link #groupCommitTimeout}) for tasks which have not yet started if the
+     * recent arrival rate of tasks suggests that more tasks will arrive before
+     * the timeout. When <code>false</code>, the group commit only waits for
+     * tasks which are already running.
+     * 
+     * @see ConcurrencyManager.Options#WRITE_SERVICE_ADAPTIVE_GROUP_COMMIT
+     */
+    protected final boolean adaptiveGroupCommit;
+
     /**
      * The time in milliseconds that a group commit will await an exclusive lock
      * on the write service in order to perform synchronous overflow processing.
@@ -276,7 +288,10 @@ public class WriteExecutorService extends ThreadPoolExecutor {
      * @param groupCommitTimeout
      *            The time in milliseconds that a group commit will await
      *            currently running tasks to join the commit group.
-     *            @param overflowLockRequestTimeout
+     * @param adaptiveGroupCommit
+     *            When <code>true</code> the group commit will also await new
+     *            tasks to join the commit group when the arrival rate is high.
+     * @param overflowLockRequestTimeout
      */
     public WriteExecutorService(//
             final IResourceManager resourceManager,
@@ -287,6 +302,7 @@ public class WriteExecutorService extends ThreadPoolExecutor {
             final BlockingQueue<Runnable> queue, 
             final ThreadFactory threadFactory,
             final long groupCommitTimeout,
+            final boolean adaptiveGroupCommit,
             final long overflowLockRequestTimeout) {
 
         super(  corePoolSize, //
@@ -308,6 +324,8 @@ public class WriteExecutorService extends ThreadPoolExecutor {
         
         this.groupCommitTimeout = groupCommitTimeout;
         
+        this.adaptiveGroupCommit = adaptiveGroupCommit;
+        
         this.overflowLockRequestTimeout = overflowLockRequestTimeout;
         
         // Setup the lock manager used by the write service.
@@ -479,6 +497,48 @@ public class WriteExecutorService extends ThreadPoolExecutor {
     private long committedTaskCount = 0;
     private long noverflow = 0;
 
+    /**
+     * The #of tasks which have started to execute.
+     * <p>
+     * Note: Guarded by the {@link #lock}.
+     */
+    private long arrivalCount = 0L;
+
+    /**
+     * The {@link System#nanoTime()} when the last task started to execute
+     * (zero until the first task starts).
+     * <p>
+     * Note: Guarded by the {@link #lock}.
+     */
+    private long lastArrivalNanos = 0L;
+
+    /**
+     * A moving average of the nanoseconds between the start of successive
+     * tasks (zero until two tasks have started). Each sample is bounded by the
+     * {@link #groupCommitTimeout} so a long idle period is quickly forgotten
+     * once tasks start to arrive again.
+     * <p>
+     * Note: Guarded by the {@link #lock}.
+     */
+    private long averageArrivalNanos = 0L;
+
+    /**
+     * The weight used to update {@link #averageArrivalNanos}.
+     */
+    private static final double ARRIVAL_WEIGHT = 0.25d;
+
+    /**
+     * Histogram of the #of tasks in each commit group.
+     */
+    private final Log2Histogram commitGroupSizeHistogram = new Log2Histogram(12);
+
+    /**
+     * Histogram of the latency in milliseconds of each group commit, including
+     * the time spent awaiting tasks to join the commit group and the time to
+     * commit the store.
+     */
+    private final Log2Histogram commitLatencyHistogram = new Log2Histogram(16);
+
     protected final AtomicInteger activeTaskCountWithLocksHeld = new AtomicInteger(0);
 
     /**
@@ -576,6 +636,26 @@ public class WriteExecutorService extends ThreadPoolExecutor {
         
     }
 
+    /**
+     * Histogram of the #of tasks in each commit group.
+     */
+    public Log2Histogram getCommitGroupSizeHistogram() {
+        
+        return commitGroupSizeHistogram;
+        
+    }
+
+    /**
+     * Histogram of the latency in milliseconds of each group commit, including
+     * the time spent awaiting tasks to join the commit group and the time to
+     * commit the store.
+     */
+    public Log2Histogram getCommitLatencyHistogram() {
+        
+        return commitLatencyHistogram;
+        
+    }
+
     /**
      * The #of bytes written by the last commit. This must be sampled to turn it
      * into useful information.
@@ -817,6 +897,21 @@ public class WriteExecutorService extends ThreadPoolExecutor {
             // Update max# of tasks concurrently running.
             maxRunning = (nrunning > maxRunning ? nrunning : maxRunning);
 
+            // Update the moving average of the task arrival interval.
+            {
+                final long now = System.nanoTime();
+                if (lastArrivalNanos != 0L) {
+                    final long delta = Math.min(now - lastArrivalNanos,
+                            TimeUnit.MILLISECONDS.toNanos(groupCommitTimeout));
+                    averageArrivalNanos = arrivalCount == 1 ? delta
+                            : (long) ((1 - ARRIVAL_WEIGHT)
+                                    * averageArrivalNanos + ARRIVAL_WEIGHT
+                                    * delta);
+                }
+                lastArrivalNanos = now;
+                arrivalCount++;
+            }
+
             // Update max# of threads in the thread pool.
             final int poolSize = getPoolSize();
 
@@ -1489,6 +1584,11 @@ public class WriteExecutorService extends ThreadPoolExecutor {
 
             }
 
+            commitGroupSizeHistogram.add(nwrites);
+
+            commitLatencyHistogram.add(TimeUnit.NANOSECONDS.toMillis(System
+                    .nanoTime() - nanoTime_beginWait));
+
             this.commitGroupSize = nwrites;
             
             if (nwrites > maxCommitGroupSize) {
@@ -1571,6 +1671,13 @@ public class WriteExecutorService extends ThreadPoolExecutor {
      * return immediately in order to keep down latency for a single task that
      * is run all by itself without anything else in the queue.
      * <p>
+     * When {@link #adaptiveGroupCommit} is enabled and no tasks are running,
+     * this will also wait for new tasks to start if the moving average of the
+     * interval between task arrivals is less than the remaining timeout. Each
+     * such wait is bounded by twice that interval and we stop waiting as soon
+     * as no task arrives within a wait. Under a bursty load this grows the
+     * commit group, while an idle service still commits immediately.
+     * <p>
      * Note: When the timeout is ZERO (0L), this methods DOES NOT yield the
      * {@link #lock}. This means that the task running the group commit will
      * not allow other tasks into the commit group and essentially disables
@@ -1602,17 +1709,47 @@ public class WriteExecutorService extends ThreadPoolExecutor {
 
         int nwaits = 0;
         
-        // until timeout, while tasks are running.
-        while (nanos > 0 && this.nrunning.get() > 0) {
+        // until timeout, while tasks are running (or expected to arrive).
+        while (nanos > 0) {
 
-            /*
-             * Wait on condition (yields lock, allowing other tasks to enter the
-             * commit group).
-             * 
-             * Note: throws InterruptedException
-             */
+            if (this.nrunning.get() > 0) {
+
+                /*
+                 * Wait on condition (yields lock, allowing other tasks to
+                 * enter the commit group).
+                 * 
+                 * Note: throws InterruptedException
+                 */
+
+                waiting.await(nanos, TimeUnit.NANOSECONDS);
+
+            } else if (adaptiveGroupCommit && averageArrivalNanos > 0
+                    && averageArrivalNanos < nanos) {
+
+                /*
+                 * Nothing is running, but tasks have been arriving faster
+                 * than the remaining timeout. Wait a bit for another task
+                 * (yields the lock so that a task may start) and stop if none
+                 * arrives.
+                 */
+
+                final long arrivalCountBefore = arrivalCount;
+
+                waiting.await(Math.min(nanos, 2 * averageArrivalNanos),
+                        TimeUnit.NANOSECONDS);
+
+                if (arrivalCount == arrivalCountBefore) {
 
-            waiting.await(nanos, TimeUnit.NANOSECONDS);
+                    // Idle.
+                    break;
+
+                }
+
+            } else {
+
+                break;
+
+            }
 
             final long now = System.nanoTime();
             
@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 
+import com.bigdata.btree.NodeDataCache;
 import com.bigdata.counters.CounterSet;
 import com.bigdata.journal.TemporaryRawStore;
 import com.bigdata.mdi.IResourceMetadata;
@@ -266,6 +267,9 @@ public class SimpleMemoryRawStore extends AbstractRawWormStore {
         // discard all the records.
         records.clear();
         
+        // discard any decoded records cached for this store.
+        NodeDataCache.deleteCache(this);
+        
     }
 
     @Override
@@ -273,12 +277,6 @@ public class SimpleMemoryRawStore extends AbstractRawWormStore {
         
         if(open) throw new IllegalStateException();
         
-//        if (LRUNexus.INSTANCE != null) {
-//
-//            LRUNexus.INSTANCE.deleteCache(getUUID());
-//
-//        }
-        
     }
     
     @Override
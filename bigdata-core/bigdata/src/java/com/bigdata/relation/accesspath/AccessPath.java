@@ -28,7 +28,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.relation.accesspath;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
@@ -150,6 +152,20 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
     protected final int chunkCapacity;
     protected final int fullyBufferedReadThreshold;
 
+    /**
+     * The maximum #of key-range partitions for a parallel scan.
+     * 
+     * @see IPredicate.Annotations#PARALLEL_SCAN
+     */
+    protected final int parallelScan;
+
+    /**
+     * The minimum range count of each key-range partition of a parallel scan.
+     * 
+     * @see IPredicate.Annotations#PARALLEL_SCAN_THRESHOLD
+     */
+    protected final long parallelScanThreshold;
+
     /**
      * <code>true</code> iff the {@link IPredicate}is fully bound.
      */
@@ -533,6 +549,14 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
         this.chunkCapacity = chunkCapacity;
 
         this.fullyBufferedReadThreshold = fullyBufferedReadThreshold;
+
+        this.parallelScan = predicate.getProperty(
+                IPredicate.Annotations.PARALLEL_SCAN,
+                IPredicate.Annotations.DEFAULT_PARALLEL_SCAN);
+
+        this.parallelScanThreshold = predicate.getProperty(
+                IPredicate.Annotations.PARALLEL_SCAN_THRESHOLD,
+                IPredicate.Annotations.DEFAULT_PARALLEL_SCAN_THRESHOLD);
         
         this.isFullyBoundForKey = predicate.isFullyBound(keyOrder);
 
@@ -878,6 +902,9 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
         
         final boolean fullyBufferedRead;
 
+        // The #of key-range partitions for an asynchronous read.
+        int nsplits = 1;
+
         // true iff a point test is a hit on the bloom filter.
         boolean bloomHit = false;
         
@@ -1025,6 +1052,8 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
             } else {
                 
                 fullyBufferedRead = false;
+
+                nsplits = getParallelScanCount(rangeCountRemaining);
                 
             }
 
@@ -1043,6 +1072,21 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
          * the code as that gets used everywhere.
          */
         
+        if (nsplits > 1) {
+
+            /*
+             * Asynchronous parallel read of the key-range partitions of the
+             * access path.
+             */
+
+            assert offset == 0L : "offset=" + offset;
+
+            assert limit == 0L : "limit=" + limit;
+
+            return parallelIterator(capacity, nsplits);
+
+        }
+
         // The raw tuple iterator: the impl depends on the IIndex impl (BTree,
         // IndexSegment, ClientIndexView, or DataServiceIndexView).
         final ITupleIterator<R> tupleItr = rangeIterator(capacity, flags,
@@ -1089,7 +1133,7 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
              * now).
              */
 
-            assert offset == 0L : "offset=" + limit;
+            assert offset == 0L : "offset=" + offset;
 
             assert limit == 0L : "limit=" + limit;
             
@@ -1099,6 +1143,104 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
 
     }
 
+    /**
+     * Return the #of key-range partitions which will be scanned in parallel by
+     * an asynchronous read. A parallel scan is only used for a local read-only
+     * {@link AbstractBTree} (there are no concurrent writers, so the
+     * partitions may be scanned concurrently), without an access path filter
+     * (which might be stateful across the elements of the scan, e.g., a
+     * DISTINCT filter) and without the {@link IRangeQuery#REVERSE} or
+     * {@link IRangeQuery#REMOVEALL} flags.
+     * 
+     * @param rangeCount
+     *            The (estimated) range count of the access path.
+     * 
+     * @return The #of key-range partitions. When ONE (1), the access path is
+     *         scanned by a single thread.
+     * 
+     * @see IPredicate.Annotations#PARALLEL_SCAN
+     * @see IPredicate.Annotations#PARALLEL_SCAN_THRESHOLD
+     */
+    protected int getParallelScanCount(final long rangeCount) {
+
+        if (parallelScan <= 1)
+            return 1;
+
+        if (accessPathFilter != null)
+            return 1;
+
+        if ((flags & (IRangeQuery.REVERSE | IRangeQuery.REMOVEALL)) != 0)
+            return 1;
+
+        if (!(ndx instanceof AbstractBTree)
+                || !((AbstractBTree) ndx).isReadOnly())
+            return 1;
+
+        final long n = rangeCount / Math.max(1L, parallelScanThreshold);
+
+        return (int) Math.min(parallelScan, n);
+
+    }
+
+    /**
+     * Asynchronous read in which the key range of the access path is split
+     * into key-range partitions spanning roughly the same #of tuples and those
+     * partitions are scanned in parallel. Each partition writes its chunks
+     * onto the same {@link BlockingBuffer}. The elements within each chunk are
+     * in the natural order of the index, but the chunks of the different
+     * partitions are interleaved so the returned iterator does not report an
+     * {@link IKeyOrder}.
+     * 
+     * @param capacity
+     *            The capacity for the source iterators.
+     * @param nsplits
+     *            The maximum #of key-range partitions.
+     * 
+     * @throws RejectedExecutionException
+     *             if the {@link ExecutorService} is shutdown or has a maximum
+     *             capacity and is saturated.
+     * 
+     * @see AbstractBTree#splitKeyRange(byte[], byte[], int)
+     */
+    @SuppressWarnings("unchecked")
+    final protected IChunkedOrderedIterator<R> parallelIterator(
+            final int capacity, final int nsplits) {
+
+        final byte[][] a = ((AbstractBTree) ndx).splitKeyRange(fromKey, toKey,
+                nsplits);
+
+        if (DEBUG)
+            log.debug("nsplits=" + nsplits + ", npartitions=" + (a.length - 1));
+
+        final Iterator<R>[] sources = new Iterator[a.length - 1];
+
+        for (int i = 0; i < sources.length; i++) {
+
+            final ITupleIterator<R> tupleItr = ndx.rangeIterator(a[i],
+                    a[i + 1], capacity, flags, indexLocalFilter);
+
+            sources[i] = new Striterator(tupleItr)
+                    .addFilter(new TupleObjectResolver());
+
+        }
+
+        final BlockingBuffer<R[]> buffer = new BlockingBuffer<R[]>(
+                chunkOfChunksCapacity);
+
+        // Wrap computation as FutureTask.
+        final FutureTask<Void> ft = new FutureTask<Void>(
+                new ParallelChunkConsumerTask<R>(this, sources, buffer));
+
+        // Set Future on BlockingBuffer *before* starting computation.
+        buffer.setFuture(ft);
+
+        // Start computation.
+        indexManager.getExecutorService().submit(ft);
+
+        return new ChunkConsumerIterator<R>(buffer.iterator(), null/* keyOrder */);
+
+    }
+
     /**
      * Fully buffers all elements that would be visited by the
      * {@link IAccessPath} iterator.
@@ -1336,6 +1478,156 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
 
     }
 
+    /**
+     * Consumes elements from the source iterators for the key-range partitions
+     * of a parallel scan, converting them into chunks on a shared
+     * {@link BlockingBuffer}. The first partition is consumed by the caller's
+     * thread while the remaining partitions are consumed by tasks submitted to
+     * the {@link ExecutorService} of the {@link IIndexManager}. The buffer is
+     * closed once all partitions are done. If any partition fails or if this
+     * task is interrupted (e.g., because the consumer closed the iterator),
+     * then the tasks for the other partitions are cancelled.
+     * 
+     * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+     */
+    static private class ParallelChunkConsumerTask<R> implements Callable<Void> {
+
+        static protected final Logger log = Logger
+                .getLogger(ParallelChunkConsumerTask.class);
+
+        private final AccessPath<R> accessPath;
+
+        private final Iterator<R>[] sources;
+
+        private final BlockingBuffer<R[]> buffer;
+
+        /**
+         * @param accessPath
+         *            The access path.
+         * @param sources
+         *            The source iterators visiting the elements read from each
+         *            key-range partition.
+         * @param buffer
+         *            The buffer onto which chunks of those elements will be
+         *            written.
+         */
+        public ParallelChunkConsumerTask(final AccessPath<R> accessPath,
+                final Iterator<R>[] sources, final BlockingBuffer<R[]> buffer) {
+
+            if (accessPath == null)
+                throw new IllegalArgumentException();
+
+            if (sources == null || sources.length == 0)
+                throw new IllegalArgumentException();
+
+            if (buffer == null)
+                throw new IllegalArgumentException();
+
+            this.accessPath = accessPath;
+
+            this.sources = sources;
+
+            this.buffer = buffer;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final List<FutureTask<Long>> futures = new ArrayList<FutureTask<Long>>(
+                    sources.length - 1);
+
+            long nelements = 0;
+
+            try {
+
+                for (int i = 1; i < sources.length; i++) {
+
+                    final Iterator<R> src = sources[i];
+
+                    final FutureTask<Long> ft = new FutureTask<Long>(
+                            new Callable<Long>() {
+                                @Override
+                                public Long call() throws Exception {
+                                    return consume(src);
+                                }
+                            });
+
+                    futures.add(ft);
+
+                    accessPath.indexManager.getExecutorService().submit(ft);
+
+                }
+
+                // The first partition is consumed in the caller's thread.
+                nelements += consume(sources[0]);
+
+                for (FutureTask<Long> ft : futures) {
+
+                    nelements += ft.get();
+
+                }
+
+            } finally {
+
+                // Cancel the other partitions if we did not complete normally.
+                for (FutureTask<Long> ft : futures) {
+
+                    ft.cancel(true/* mayInterruptIfRunning */);
+
+                }
+
+                if (log.isInfoEnabled())
+                    log.info("Closing buffer: #partitions=" + sources.length
+                            + ", #elements=" + nelements + ", accessPath="
+                            + accessPath);
+
+                buffer.close();
+
+            }
+
+            return null;
+
+        }
+
+        /**
+         * Consume the elements of one key-range partition, writing them onto
+         * the buffer in chunks.
+         * 
+         * @return The #of elements written onto the buffer.
+         */
+        private long consume(final Iterator<R> src) {
+
+            // See ChunkConsumerTask.
+            final IChunkedOrderedIterator<R> itr = new ChunkedWrappedIterator<R>(
+                    src, accessPath.chunkCapacity, accessPath.keyOrder, null/* filter */);
+
+            long nelements = 0;
+
+            try {
+
+                while (src.hasNext()) {
+
+                    final R[] chunk = itr.nextChunk();
+
+                    nelements += chunk.length;
+
+                    buffer.add(chunk);
+
+                }
+
+            } finally {
+
+                itr.close();
+
+            }
+
+            return nelements;
+
+        }
+
+    }
+
     @Override
     final public long rangeCount(final boolean exact) {
 
@@ -96,6 +96,18 @@ public class AllocBlock {
 	 * transaction plus any newly allocated bits.
 	 */
 	int m_transients[];
+	/**
+	 * The bits allocated since the slots of this block were last captured by
+	 * a snapshot of the store.
+	 * 
+	 * @see RWStore#captureDelta(java.util.SortedMap)
+	 */
+	final int m_written[];
+	/**
+	 * The committed bits captured by a delta snapshot which is in progress
+	 * and <code>null</code> otherwise.
+	 */
+	int m_captured[];
 //	/**
 //	 * Used to clear an address on the {@link WriteCacheService} if it has been
 //	 * freed.
@@ -109,6 +121,7 @@ public class AllocBlock {
 		m_commit = new int[bitSize];
 		m_live = new int[bitSize];
 		m_transients = new int[bitSize];
+		m_written = new int[bitSize];
 	}
 	
 	/**
@@ -118,6 +131,18 @@ public class AllocBlock {
 		return m_ints * 32;
 	}
 
+	/**
+	 * @return <code>true</code> iff no slot is live, committed or retained
+	 *         for a session.
+	 */
+	boolean isEmpty() {
+		for (int i = 0; i < m_ints; i++) {
+			if ((m_live[i] | m_commit[i] | m_transients[i]) != 0)
+				return false;
+		}
+		return true;
+	}
+
 	public boolean verify(final int addr, final int size) {
 		if (addr < m_addr || addr >= (m_addr + (size * 32 * m_ints))) {
 			return false;
@@ -230,6 +255,7 @@ public class AllocBlock {
 		if (bit != -1) {
 			RWStore.setBit(m_live, bit);
 			RWStore.setBit(m_transients, bit);
+			RWStore.setBit(m_written, bit);
 
 			return bit;
 		} else {
@@ -245,6 +271,42 @@ public class AllocBlock {
 	void setBitExternal(final int bit) {
 		RWStore.setBit(m_live, bit);
 		RWStore.setBit(m_transients, bit);
+		RWStore.setBit(m_written, bit);
+	}
+
+	/**
+	 * Capture the committed bits which were allocated since the last snapshot.
+	 * When a shadow is registered the committed state is the saved commit
+	 * state.
+	 * 
+	 * @return The captured bits.
+	 */
+	int[] captureDelta() {
+		final int[] committed = m_saveCommit != null ? m_saveCommit : m_commit;
+		final int[] captured = new int[m_ints];
+		for (int i = 0; i < m_ints; i++) {
+			captured[i] = committed[i] & m_written[i];
+		}
+		m_captured = captured;
+		return captured;
+	}
+
+	/**
+	 * Release the bits captured by {@link #captureDelta()}.
+	 * 
+	 * @param success
+	 *            When <code>true</code> the captured bits are cleared from
+	 *            the bits written since the last snapshot.
+	 */
+	void releaseDelta(final boolean success) {
+		if (m_captured == null)
+			return;
+		if (success) {
+			for (int i = 0; i < m_ints; i++) {
+				m_written[i] &= ~m_captured[i];
+			}
+		}
+		m_captured = null;
 	}
 
 	public boolean hasFree() {
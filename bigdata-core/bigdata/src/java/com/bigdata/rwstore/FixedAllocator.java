@@ -32,6 +32,7 @@ import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.SortedMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -867,6 +868,11 @@ public class FixedAllocator implements Allocator {
 	void addToFreeList() {
 		assert m_freeWaiting;
 		
+		if (m_evacuating) {
+			// remains waiting until the evacuation is ended.
+			return;
+		}
+		
 		m_freeWaiting = false;
 		m_freeList.add(this);
 		m_allocIndex = -1;
@@ -1061,6 +1067,7 @@ public class FixedAllocator implements Allocator {
 		final int abit = (abblock*32) + bit;
 		RWStore.setBit(ab.m_live, abit);
 		RWStore.setBit(ab.m_transients, abit);
+		RWStore.setBit(ab.m_written, abit);
 		
 		// Note +3 for address teak for special low order bits
 		final int addr = -((m_index << RWStore.OFFSET_BITS) + (m_allocIndex*32) + (bit + 3));
@@ -1598,6 +1605,53 @@ public class FixedAllocator implements Allocator {
 			tm.put(m_store.metaBit2Addr(m_diskAddr), commitData());
 	}
 	
+	/**
+	 * Capture the committed slots which were allocated since the last snapshot
+	 * of the store. Runs of adjacent slots are coalesced into a single region.
+	 * 
+	 * @param regions
+	 *            The physical regions to be copied by a delta snapshot are
+	 *            added to this map (offset to length) -or- <code>null</code>
+	 *            if the captured slots are only used to establish a new
+	 *            baseline.
+	 * 
+	 * @see RWStore#captureDelta(SortedMap)
+	 */
+	void captureDelta(final SortedMap<Long, Integer> regions) {
+		for (AllocBlock block : m_allocBlocks) {
+			if (block.m_addr == 0)
+				continue;
+			final int[] captured = block.captureDelta();
+			if (regions == null)
+				continue;
+			final long base = RWStore.convertAddr(block.m_addr);
+			final int nbits = m_bitSize * 32;
+			int start = -1;
+			for (int bit = 0; bit <= nbits; bit++) {
+				final boolean set = bit < nbits && RWStore.tstBit(captured, bit);
+				if (set && start == -1) {
+					start = bit;
+				} else if (!set && start != -1) {
+					regions.put(base + ((long) start) * m_size, (bit - start) * m_size);
+					start = -1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Release the slots captured by {@link #captureDelta(SortedMap)}.
+	 * 
+	 * @param success
+	 *            When <code>true</code> the captured slots will not be
+	 *            included in the next delta.
+	 */
+	void releaseDelta(final boolean success) {
+		for (AllocBlock block : m_allocBlocks) {
+			block.releaseDelta(success);
+		}
+	}
+
 	/**
 	 * Returns the 1K committed allocation data by writing the commit data for each allocation block.
 	 */
@@ -1632,6 +1686,153 @@ public class FixedAllocator implements Allocator {
 		}
 	}
 
+	/**
+	 * When <code>true</code> the allocator is being evacuated by an online
+	 * compaction. It is kept off the free list so no new allocations are made
+	 * against it and its blocks are released by the {@link RWStore} once they
+	 * no longer hold any live, committed or session protected slots.
+	 * <p>
+	 * Note: This state is NOT persistent.
+	 * 
+	 * @see RWStore#evacuate(float, int)
+	 */
+	private volatile boolean m_evacuating = false;
+
+	boolean isEvacuating() {
+		return m_evacuating;
+	}
+
+	/**
+	 * Set or clear the evacuation state. An allocator which is being evacuated
+	 * is removed from its free list. When the evacuation ends it is returned to
+	 * the free list if it satisfies the normal free list criteria.
+	 */
+	void setEvacuating(final boolean evacuating) {
+		if (evacuating == m_evacuating)
+			return;
+
+		m_evacuating = evacuating;
+
+		if (evacuating) {
+			removeFromFreeList();
+		} else if (m_freeList != null && m_freeWaiting
+				&& !m_pendingContextCommit && hasFree()
+				&& meetsSmallSlotThreshold()) {
+			addToFreeList();
+		}
+	}
+
+	/**
+	 * Return <code>true</code> iff the allocator is being evacuated and the
+	 * latched address lies in one of the blocks which may be released (any
+	 * block other than the first).
+	 * 
+	 * @see #releaseLastBlock()
+	 */
+	boolean isEvacuating(final int latchedAddr) {
+		if (!m_evacuating)
+			return false;
+		final int offset = ((-latchedAddr) & RWStore.OFFSET_BITS_MASK) - 3;
+		return offset / allocBlockRange > 0;
+	}
+
+	/**
+	 * The #of {@link AllocBlock}s which currently own a region on the
+	 * persistent heap.
+	 */
+	int getActiveBlocks() {
+		int n = 0;
+		for (AllocBlock ab : m_allocBlocks) {
+			if (ab.m_addr == 0)
+				break;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * The #of slots managed by the {@link AllocBlock}s which currently own a
+	 * region on the persistent heap.
+	 */
+	int getActiveBits() {
+		int bits = 0;
+		for (AllocBlock ab : m_allocBlocks) {
+			if (ab.m_addr == 0)
+				break;
+			bits += ab.totalBits();
+		}
+		return bits;
+	}
+
+	/**
+	 * The #of slots in the active {@link AllocBlock}s which can not be
+	 * recycled, including committed slots and slots protected by a deferred
+	 * free or an open session.
+	 */
+	int getUsedBits() {
+		int bits = 0;
+		for (AllocBlock ab : m_allocBlocks) {
+			if (ab.m_addr == 0)
+				break;
+			for (int i = 0; i < m_bitSize; i++) {
+				bits += Integer.bitCount(ab.m_transients[i]
+						| ab.m_live[i] | ab.m_commit[i]);
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * The exclusive end of the highest region on the persistent heap owned by
+	 * an {@link AllocBlock} of this allocator, expressed in the (negative)
+	 * allocation units used by {@link RWStore#allocBlock(int)} -or- ZERO (0)
+	 * if no block owns a region.
+	 */
+	int getRegionEnd() {
+		final int blockSize = (32 * m_bitSize * m_size) >> RWStore.ALLOCATION_SCALEUP;
+		int end = 0;
+		for (AllocBlock ab : m_allocBlocks) {
+			if (ab.m_addr == 0)
+				break;
+			end = Math.min(end, ab.m_addr - blockSize);
+		}
+		return end;
+	}
+
+	/**
+	 * Release the region owned by the last active {@link AllocBlock} if it
+	 * holds no live, committed or session protected slots. The released block
+	 * will recruit a new region if the allocator is used again. Only the last
+	 * block may be released since the active blocks must always form a prefix.
+	 * <p>
+	 * Note: The first block is never released. Its address is the start
+	 * address of the allocator and the allocators are ordered by their start
+	 * address when the store is opened, which is what assigns the allocator
+	 * index encoded in each latched address.
+	 * 
+	 * @return <code>true</code> iff the block was released.
+	 */
+	boolean releaseLastBlock() {
+		if (m_context != null || m_pendingContextCommit)
+			return false;
+
+		final int b = getActiveBlocks() - 1;
+		if (b < 1)
+			return false;
+
+		final AllocBlock ab = m_allocBlocks.get(b);
+		if (ab.m_saveCommit != null || !ab.isEmpty())
+			return false;
+
+		ab.m_addr = 0;
+		if (m_statsBucket != null) {
+			m_statsBucket.addSlots(-ab.totalBits());
+		}
+		m_allocIndex = -1;
+
+		return true;
+	}
+
 	public void addToRegionMap(HashMap<Integer, FixedAllocator> map) {
 		for (AllocBlock ab : m_allocBlocks) {
 			if (ab.m_addr != 0) {
@@ -0,0 +1,364 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.bigdata.rwstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.io.IReopenChannel;
+
+/**
+ * Read-only memory mapped view of the backing file of an {@link RWStore}.
+ * <p>
+ * The file is mapped as a sequence of fixed size regions. A region is mapped
+ * on demand the first time a record within it is read and covers the file
+ * extent as of that time. A region whose mapping is too short for a
+ * requested record is simply remapped against the current extent (this
+ * happens for the last region after the file has been extended). Regions
+ * which extend beyond the new extent are discarded when the file is
+ * truncated (see {@link #truncate(long)}). Records which straddle a
+ * region boundary are not served and the caller must read them through the
+ * {@link FileChannel}.
+ * <p>
+ * Note: Java does not provide for synchronous unmap of a
+ * {@link MappedByteBuffer}. Superseded and closed regions are released when
+ * they are finalized, exactly as for the
+ * {@link com.bigdata.journal.BufferMode#Mapped} WORM strategy.
+ *
+ * @see RWStore.Options#MAPPED_READS
+ *
+ * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+ */
+public class MappedRegions {
+
+    private static final Logger log = Logger.getLogger(MappedRegions.class);
+
+    /**
+     * The default region size is <code>2^30</code> (1G). A record is served
+     * from the mapping iff it lies entirely within one region.
+     */
+    public static final int DEFAULT_REGION_BITS = 30;
+
+    /**
+     * Used to (re-)open the backing file.
+     */
+    private final IReopenChannel<FileChannel> opener;
+
+    /**
+     * The region size is <code>2^regionBits</code>.
+     */
+    private final int regionBits;
+
+    /**
+     * The mask used to compute the offset of a byte within its region.
+     */
+    private final long regionMask;
+
+    /**
+     * The mapped regions, indexed by <code>offset >>> regionBits</code>. Entries
+     * are <code>null</code> until first used. The array is replaced (copy on
+     * write) when a region is (re-)mapped so readers never need to lock.
+     */
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    /**
+     * Set once the backing store has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * #of times a region was mapped (including remaps after an extension).
+     */
+    private final AtomicLong nmap = new AtomicLong();
+
+    /**
+     * #of records served from a mapped region.
+     */
+    private final AtomicLong nhit = new AtomicLong();
+
+    /**
+     * #of requests which could not be served from a mapped region.
+     */
+    private final AtomicLong nmiss = new AtomicLong();
+
+    /**
+     *
+     * @param opener
+     *            Used to (re-)open the backing file.
+     * @param regionBits
+     *            The region size is <code>2^regionBits</code>.
+     */
+    public MappedRegions(final IReopenChannel<FileChannel> opener,
+            final int regionBits) {
+
+        if (opener == null)
+            throw new IllegalArgumentException();
+
+        if (regionBits < 16 || regionBits > 30)
+            throw new IllegalArgumentException("regionBits=" + regionBits);
+
+        this.opener = opener;
+
+        this.regionBits = regionBits;
+
+        this.regionMask = (1L << regionBits) - 1;
+
+    }
+
+    /**
+     * The region size in bytes.
+     */
+    public int getRegionSize() {
+
+        return 1 << regionBits;
+
+    }
+
+    /**
+     * Return a read-only slice of the mapped file. The slice is NOT a copy. Its
+     * position is zero and its limit is <i>nbytes</i>.
+     * <p>
+     * Note: The caller MUST copy the bytes out of the slice before it returns
+     * and MUST NOT retain the slice. The slot may be freed and reused by
+     * another record, and once the file has been truncated any access to the
+     * slice beyond the new extent can fault the JVM (SIGBUS).
+     *
+     * @param offset
+     *            The byte offset in the file.
+     * @param nbytes
+     *            The #of bytes to view.
+     *
+     * @return The read-only slice -or- <code>null</code> if the record can not
+     *         be served from the mapping (it straddles a region boundary, it
+     *         lies beyond the end of the file, or the store was closed).
+     */
+    public ByteBuffer slice(final long offset, final int nbytes) {
+
+        if (offset < 0 || nbytes <= 0)
+            throw new IllegalArgumentException();
+
+        final long last = offset + nbytes - 1;
+
+        final int index = (int) (offset >>> regionBits);
+
+        if (closed || index != (int) (last >>> regionBits)) {
+
+            nmiss.incrementAndGet();
+
+            return null;
+
+        }
+
+        final int off = (int) (offset & regionMask);
+
+        final MappedByteBuffer[] tmp = regions;
+
+        MappedByteBuffer region = index < tmp.length ? tmp[index] : null;
+
+        if (region == null || region.capacity() < off + nbytes) {
+
+            region = map(index, off + nbytes);
+
+            if (region == null) {
+
+                nmiss.incrementAndGet();
+
+                return null;
+
+            }
+
+        }
+
+        final ByteBuffer view = region.duplicate();
+
+        view.limit(off + nbytes);
+
+        view.position(off);
+
+        nhit.incrementAndGet();
+
+        return view.slice();
+
+    }
+
+    /**
+     * (Re-)map the region against the current extent of the file.
+     *
+     * @param index
+     *            The index of the region.
+     * @param minCapacity
+     *            The minimum capacity required by the caller.
+     *
+     * @return The region -or- <code>null</code> if the file is not yet long
+     *         enough to provide the required capacity.
+     */
+    synchronized private MappedByteBuffer map(final int index,
+            final int minCapacity) {
+
+        if (closed)
+            return null;
+
+        MappedByteBuffer[] tmp = regions;
+
+        if (index < tmp.length && tmp[index] != null
+                && tmp[index].capacity() >= minCapacity) {
+
+            // Concurrently mapped by another thread.
+            return tmp[index];
+
+        }
+
+        final long regionSize = 1L << regionBits;
+
+        final long begin = ((long) index) << regionBits;
+
+        final MappedByteBuffer region;
+        try {
+
+            final FileChannel channel = opener.reopenChannel();
+
+            final long size = Math.min(regionSize, channel.size() - begin);
+
+            if (size < minCapacity)
+                return null;
+
+            region = channel.map(FileChannel.MapMode.READ_ONLY, begin, size);
+
+        } catch (IOException ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+        if (index >= tmp.length) {
+
+            final MappedByteBuffer[] a = new MappedByteBuffer[index + 1];
+
+            System.arraycopy(tmp, 0, a, 0, tmp.length);
+
+            tmp = a;
+
+        } else {
+
+            tmp = tmp.clone();
+
+        }
+
+        tmp[index] = region;
+
+        regions = tmp;
+
+        nmap.incrementAndGet();
+
+        if (log.isInfoEnabled())
+            log.info("Mapped region: index=" + index + ", offset=" + begin
+                    + ", size=" + region.capacity());
+
+        return region;
+
+    }
+
+    /**
+     * Discard any mapped region which extends beyond the new extent of the
+     * file. Such regions will be remapped on demand. This must be invoked
+     * before the file is truncated. Slices which were handed out against a
+     * discarded region are NOT valid once the file has been truncated.
+     * 
+     * @param extent
+     *            The new extent of the file.
+     */
+    synchronized public void truncate(final long extent) {
+
+        final MappedByteBuffer[] tmp = regions.clone();
+
+        for (int i = 0; i < tmp.length; i++) {
+
+            if (tmp[i] != null
+                    && (((long) i) << regionBits) + tmp[i].capacity() > extent) {
+
+                tmp[i] = null;
+
+            }
+
+        }
+
+        regions = tmp;
+
+    }
+
+    /**
+     * Discard all mapped regions.
+     */
+    synchronized public void close() {
+
+        closed = true;
+
+        regions = new MappedByteBuffer[0];
+
+    }
+
+    /**
+     * Performance counters.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet root = new CounterSet();
+
+        root.addCounter("regionSize", new Instrument<Integer>() {
+            public void sample() {
+                setValue(getRegionSize());
+            }
+        });
+
+        root.addCounter("nmap", new Instrument<Long>() {
+            public void sample() {
+                setValue(nmap.get());
+            }
+        });
+
+        root.addCounter("nhit", new Instrument<Long>() {
+            public void sample() {
+                setValue(nhit.get());
+            }
+        });
+
+        root.addCounter("nmiss", new Instrument<Long>() {
+            public void sample() {
+                setValue(nmiss.get());
+            }
+        });
+
+        return root;
+
+    }
+
+}
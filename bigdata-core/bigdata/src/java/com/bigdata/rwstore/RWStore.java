@@ -43,19 +43,23 @@ import java.nio.file.StandardOpenOption;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -464,6 +468,62 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
         String DOUBLE_BUFFER_WRITES = RWStore.class.getName() + ".doubleBuffer";
         
         String DEFAULT_DOUBLE_BUFFER_WRITES = "true";
+
+        /**
+         * When <code>true</code>, records which are not found in the write
+         * cache are read from a read-only memory mapping of the backing file
+         * rather than through the {@link FileChannel} (default
+         * {@value #DEFAULT_MAPPED_READS}). The record is copied out of the
+         * mapping, which avoids a system call per read. This is useful when
+         * the working set fits in the OS page cache. The file is mapped in regions of
+         * <code>2^{@value MappedRegions#DEFAULT_REGION_BITS}</code> bytes which
+         * are remapped as the file is extended.
+         * <p>
+         * Note: The mapped regions count against the virtual address space of
+         * the process, not against the JVM heap or the native memory used by
+         * the {@link DirectBufferPool}.
+         * 
+         * @see MappedRegions
+         */
+        String MAPPED_READS = RWStore.class.getName() + ".mappedReads";
+
+        String DEFAULT_MAPPED_READS = "false";
+
+        /**
+         * The #of allocation stripes (default
+         * {@value #DEFAULT_ALLOCATION_STRIPES}). When positive, unisolated
+         * writers (those which do not specify an {@link IAllocationContext})
+         * are mapped onto a stripe by their thread and allocate from slots
+         * reserved in advance for that stripe. Only the reservation of slots
+         * takes the allocation lock, so concurrent writers mostly allocate from
+         * disjoint slots without contending for that lock and copy their
+         * records into the write cache concurrently. Slots which are still
+         * reserved are released when the store commits and discarded when it
+         * aborts. When ZERO (0), all writers allocate under the allocation
+         * lock.
+         * <p>
+         * Note: Striping is disabled for a highly available store.
+         * 
+         * @see #ALLOCATION_STRIPE_RESERVE
+         */
+        String ALLOCATION_STRIPES = RWStore.class.getName()
+                + ".allocationStripes";
+
+        String DEFAULT_ALLOCATION_STRIPES = "0";
+
+        /**
+         * The #of slots of a given size which are reserved at a time for an
+         * allocation stripe (default
+         * {@value #DEFAULT_ALLOCATION_STRIPE_RESERVE}). Larger values take the
+         * allocation lock less often, but leave more slots reserved (and hence
+         * unavailable to other stripes) until the next commit.
+         * 
+         * @see #ALLOCATION_STRIPES
+         */
+        String ALLOCATION_STRIPE_RESERVE = RWStore.class.getName()
+                + ".allocationStripeReserve";
+
+        String DEFAULT_ALLOCATION_STRIPE_RESERVE = "16";
         
 //        /**
 //         * When <code>true</code> fills recycled storage with a recognizable
@@ -614,6 +674,14 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
      * @see com.bigdata.journal.Options#HOT_CACHE_SIZE
      */
     private final int m_hotCacheSize;
+
+    /**
+     * The #of {@link DirectBufferPool} buffers used by the scan resistant
+     * record cache of the {@link WriteCacheService}.
+     * 
+     * @see com.bigdata.journal.Options#RECORD_CACHE_BUFFER_COUNT
+     */
+    private final int m_recordCacheBufferCount;
     
     /**
      * The key for the {@link CompressorRegistry} which identifies the
@@ -769,6 +837,66 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
     private final ReopenFileChannel m_reopener;
 
     private volatile BufferedWrite m_bufferedWrite;
+
+    /**
+     * The read-only memory mapping of the backing file iff
+     * {@link Options#MAPPED_READS} was specified and <code>null</code>
+     * otherwise.
+     */
+    private final MappedRegions m_mappedReads;
+
+    /**
+     * The #of {@link FixedAllocator}s currently being evacuated by an online
+     * compaction.
+     * <p>
+     * Note: Guarded by the {@link #m_allocationLock}.
+     * 
+     * @see #evacuate(float, int)
+     */
+    private volatile int m_evacuating = 0;
+
+    /**
+     * The file extent (in the same units as {@link #m_fileSize}) to which the
+     * file will be truncated once the current commit is durable -or- ZERO (0)
+     * if there is no pending truncation.
+     * <p>
+     * Note: Guarded by the {@link #m_allocationLock}.
+     */
+    private int m_pendingTruncation = 0;
+
+    /**
+     * Online compaction statistics.
+     */
+    private final CompactionCounters m_compactionCounters = new CompactionCounters();
+
+    /**
+     * The allocation stripes iff {@link Options#ALLOCATION_STRIPES} is
+     * positive (and the store is not highly available) and <code>null</code>
+     * otherwise.
+     */
+    private final AllocationStripe[] m_stripes;
+
+    /**
+     * The #of slots reserved at a time for an {@link AllocationStripe}.
+     */
+    private final int m_stripeReserve;
+
+    /**
+     * The read lock is held by a writer while it allocates from an
+     * {@link AllocationStripe} and copies its record into the write cache. The
+     * write lock is taken to release or discard the reserved slots, which
+     * also waits for those writes to complete.
+     * <p>
+     * Note: The write lock is only taken while holding the
+     * {@link #m_allocationWriteLock}. The read lock is never held while
+     * acquiring the {@link #m_allocationLock}.
+     */
+    private final ReentrantReadWriteLock m_stripeLock = new ReentrantReadWriteLock();
+
+    /**
+     * Allocation stripe statistics.
+     */
+    private final StripeCounters m_stripeCounters = new StripeCounters();
     
     /**
      * Our StoreageStats objects
@@ -988,6 +1116,51 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
             m_bufferedWrite = null;
         }
 
+        if (Boolean.valueOf(fileMetadata.getProperty(
+                Options.MAPPED_READS,
+                Options.DEFAULT_MAPPED_READS))) {
+            m_mappedReads = new MappedRegions(m_reopener,
+                    MappedRegions.DEFAULT_REGION_BITS);
+        } else {
+            m_mappedReads = null;
+        }
+
+        if (log.isInfoEnabled())
+            log.info(Options.MAPPED_READS + "=" + (m_mappedReads != null));
+
+        {
+            final int nstripes = Integer.valueOf(fileMetadata.getProperty(
+                    Options.ALLOCATION_STRIPES,
+                    Options.DEFAULT_ALLOCATION_STRIPES));
+
+            if (nstripes < 0)
+                throw new IllegalArgumentException(Options.ALLOCATION_STRIPES
+                        + " : Must be non-negative");
+
+            m_stripeReserve = Integer.valueOf(fileMetadata.getProperty(
+                    Options.ALLOCATION_STRIPE_RESERVE,
+                    Options.DEFAULT_ALLOCATION_STRIPE_RESERVE));
+
+            if (m_stripeReserve <= 0)
+                throw new IllegalArgumentException(
+                        Options.ALLOCATION_STRIPE_RESERVE + " : Must be positive");
+
+            if (nstripes > 0 && quorum == null) {
+                m_stripes = new AllocationStripe[nstripes];
+                for (int i = 0; i < nstripes; i++) {
+                    m_stripes[i] = new AllocationStripe();
+                }
+            } else {
+                m_stripes = null;
+            }
+
+            if (log.isInfoEnabled())
+                log.info(Options.ALLOCATION_STRIPES + "="
+                        + (m_stripes == null ? 0 : m_stripes.length) + ", "
+                        + Options.ALLOCATION_STRIPE_RESERVE + "="
+                        + m_stripeReserve);
+        }
+
         m_writeCacheBufferCount = fileMetadata.writeCacheBufferCount;
         
         m_readCacheBufferCount = Integer.valueOf(fileMetadata.getProperty(
@@ -1030,6 +1203,14 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
             log.info(com.bigdata.journal.Options.HOT_CACHE_SIZE + "="
                     + m_hotCacheSize);
 
+        this.m_recordCacheBufferCount = Integer.valueOf(fileMetadata.getProperty(
+                com.bigdata.journal.Options.RECORD_CACHE_BUFFER_COUNT,
+                com.bigdata.journal.Options.DEFAULT_RECORD_CACHE_BUFFER_COUNT));
+
+        if (log.isInfoEnabled())
+            log.info(com.bigdata.journal.Options.RECORD_CACHE_BUFFER_COUNT + "="
+                    + m_recordCacheBufferCount);
+
         this.m_compressorKey = fileMetadata.getProperty(
                 com.bigdata.journal.Options.HALOG_COMPRESSOR,
                 com.bigdata.journal.Options.DEFAULT_HALOG_COMPRESSOR);
@@ -1246,6 +1427,7 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
 
             return new RWWriteCacheService(m_writeCacheBufferCount,
                     m_minCleanListSize, m_readCacheBufferCount, prefixWrites, m_compactionThreshold, m_hotCacheSize, m_hotCacheThreshold,
+                    m_recordCacheBufferCount,
 
                     convertAddr(m_fileSize), m_reopener, m_quorum, this) {
 
@@ -1335,6 +1517,9 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
                 m_bufferedWrite = null;
             }
             m_writeCacheService.close();
+            if (m_mappedReads != null) {
+                m_mappedReads.close();
+            }
             m_reopener.raf.close();
         } catch (Throwable t) {
             throw new RuntimeException(t);
@@ -2055,6 +2240,11 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
                 
                 assert paddr > 0;
                 try {
+                    if (m_mappedReads != null) {
+                        final ByteBuffer ret = readMapped(paddr, sze);
+                        if (ret != null)
+                            return ret;
+                    }
                     return m_writeCacheService.read(paddr, sze+4);
                 } catch (Throwable e) {
                     /*
@@ -2074,6 +2264,90 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
     }
 
 
+    /**
+     * Read a record from the memory mapped file.
+     * <p>
+     * The write cache is checked first since it holds records which may not
+     * have been written through to the backing file. On a cache miss the
+     * record is copied out of the mapping and its checksum is verified against
+     * the copy. The record is NOT installed into the read cache.
+     * <p>
+     * Note: The record MUST be copied. The caller (and the B+Tree node and
+     * leaf caches above it) may retain the returned buffer indefinitely, while
+     * the slot is recycled once the record is freed and the mapping itself is
+     * discarded when the file is truncated. A view onto the mapping could
+     * therefore expose the bytes of another record or fault once the file has
+     * been truncated beneath it.
+     * 
+     * @param paddr
+     *            The physical address of the record.
+     * @param sze
+     *            The size of the record (excluding its checksum).
+     * 
+     * @return The record -or- <code>null</code> if it could not be served
+     *         from either the write cache or the mapping.
+     */
+    private ByteBuffer readMapped(final long paddr, final int sze)
+            throws InterruptedException {
+
+        final ByteBuffer cached = m_writeCacheService._readFromCache(paddr,
+                sze + 4);
+
+        if (cached != null)
+            return cached;
+
+        final long begin = System.nanoTime();
+
+        // copy out of the mapping before the checksum is verified.
+        final byte[] buf = new byte[sze + 4];
+
+        // Guard against concurrent truncation of the file.
+        final Lock lock = m_extensionLock.readLock();
+        lock.lock();
+        try {
+
+            final ByteBuffer slice = m_mappedReads.slice(paddr, sze + 4);
+
+            if (slice == null)
+                return null;
+
+            slice.get(buf);
+
+        } finally {
+            lock.unlock();
+        }
+
+        final ByteBuffer ret = ByteBuffer.wrap(buf);
+
+        final int chk = ChecksumUtility.getCHK().checksum(ret, 0, sze);
+
+        final int tstchk = ret.getInt(sze);
+
+        final StoreCounters<?> c = (StoreCounters<?>) storeCounters.get()
+                .acquire();
+        try {
+            if (chk != tstchk) {
+                c.checksumErrorCount++;
+            } else {
+                c.nreads++;
+                c.bytesRead += sze + 4;
+                c.elapsedReadNanos += (System.nanoTime() - begin);
+            }
+        } finally {
+            c.release();
+        }
+
+        if (chk != tstchk) {
+            throw new ChecksumError("offset=" + paddr + ",nbytes=" + sze
+                    + ",expected=" + tstchk + ",actual=" + chk);
+        }
+
+        ret.limit(sze);
+
+        return ret;
+
+    }
+
     /**
      * If the buf[] size is greater than the maximum fixed allocation, then the
      * direct read will be the blob header record. In this case we should hand
@@ -2983,7 +3257,7 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
     	int candidateFreeBits = cSmallSlotThresholdHighWaste; // minimum threshold
     	for (int i = 0; i < m_allocs.size(); i++) {
     		final FixedAllocator tst = m_allocs.get(i);
-    		if (tst.getBlockSize() == block) { // right size
+    		if (tst.getBlockSize() == block && !tst.isEvacuating()) { // right size
     			if (tst.m_freeBits > candidateFreeBits) {
     				candidate = tst;
     				candidateFreeBits = candidate.m_freeBits;
@@ -3036,6 +3310,14 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
     public long alloc(final byte buf[], final int size,
             final IAllocationContext context) {
 
+        if (m_stripes != null && context == null
+                && size <= (m_maxFixedAlloc - 4)
+                && !m_allocationWriteLock.isHeldByCurrentThread()) {
+
+            return allocStriped(buf, size);
+
+        }
+
         m_allocationWriteLock.lock();
         try {
         	checkContext(context);
@@ -3124,110 +3406,394 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
         }
     }
 
-//  /****************************************************************************
-//   * Fixed buffer size reallocation
-//   **/
-//  public long realloc(final long oldAddr, final int oldSize, final byte buf[]) {
-//      
-//      free(oldAddr, oldSize);
-//
-//      return alloc(buf, buf.length);
-//  }
-
-//  /**
-//   * Must handle valid possibility that a request to start/commit transaction
-//   * could be made within a commitCallback request
-//   */
-//  synchronized public void startTransaction() {
-//      if (m_committing) {
-//          return;
-//      }
-//
-//      m_transactionCount++;
-//  }
-//
-//  synchronized public void commitTransaction() {
-//      if (m_committing) {
-//          return;
-//      }
-//
-//      if (log.isDebugEnabled())
-//          log.debug("Commit Transaction");
-//      
-//      if (--m_transactionCount <= 0) {
-//          commitChanges();
-//
-//          m_transactionCount = 0;
-//      }
-//  }
-//
-//  public int getTransactionCount() {
-//      return m_transactionCount;
-//  }
-//
-//  // --------------------------------------------------------------------------------------------
-//  // rollbackTransaction
-//  //
-//  // clear write cache
-//  // read in last committed header
-//  synchronized public void rollbackTransaction() {
-//      if (m_transactionCount > 0 || m_readOnly) { // hack for resync
-//          baseInit();
-//
-//          try {
-//              m_writeCache.reset(); // dirty writes are discarded
-//
-//              readAllocationBlocks();
-//          } catch (Exception e) {
-//              throw new StorageTerminalError("Unable to rollback transaction", e);
-//          }
-//      }
-//  }
-
-//    /*
-//     * Slug
-//     */
-//    private int fibslug(int n) {
-//    	if (n < 2) 
-//    		return 1;
-//    	else
-//    		return fibslug(n-1) + fibslug(n-2);
-//    }
-    
     /**
-     * The semantics of reset are to revert unisolated writes to committed
-     * state.
-     * <p>
-     * Unisolated writes must also be removed from the write cache.
-     * <p>
-     * The AllocBlocks of the FixedAllocators maintain the state to determine
-     * the correct reset behavior.
-     * <p>
-     * If the store is using DirectFixedAllocators then an IllegalStateException
-     * is thrown.
-     * <p>
-     * If there is an active {@link #m_commitStateRef}, then this indicates a
-     * failure after the {@link RWStore#commit()} had "succeeded".
+     * Allocate a slot for a record from the {@link AllocationStripe} of the
+     * current thread and copy the record into the write cache. The allocation
+     * lock is only taken when the stripe has no reserved slots of the
+     * necessary size.
+     * 
+     * @see Options#ALLOCATION_STRIPES
      */
-    public void reset() {
+    private long allocStriped(final byte buf[], final int size) {
 
-        if (log.isInfoEnabled()) {
-            log.info("RWStore Reset");
-        }
-        m_allocationWriteLock.lock();
-        try {
-        	// DEBUG
-        	// fibslug(40); // slug to improve odds of interruption of reset (if possible)
-            assertOpen();
-//          assertNoRebuild();
+        final long begin = System.nanoTime();
 
-            final CommitState commitState = m_commitStateRef
-                    .getAndSet(null/* newValue */);
+        // checksum is computed before we contend for any lock.
+        final int chk = ChecksumUtility.getCHK().checksum(buf, size);
+
+        final int nwrite = size + 4;// size plus checksum.
+
+        final int i = fixedAllocatorIndex(nwrite);
+
+        final AllocationStripe stripe = m_stripes[(int) (Thread
+                .currentThread().getId() % m_stripes.length)];
+
+        while (true) {
+
+            final Lock lock = m_stripeLock.readLock();
+
+            lock.lock();
+
+            try {
+
+                int addr = 0;
+                long pa = 0L;
+
+                synchronized (stripe) {
+
+                    if (i < stripe.navail.length && stripe.navail[i] > 0) {
+
+                        final int n = --stripe.navail[i];
+
+                        addr = stripe.addrs[i][n];
+
+                        pa = stripe.paddrs[i][n];
+
+                    }
+
+                }
+
+                if (addr != 0) {
+
+                    try {
+                        m_writeCacheService.write(pa,
+                                ByteBuffer.wrap(buf, 0, size), chk,
+                                true/* writeChecksum */, addr/* latchedAddr */);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException("Closed Store?", e);
+                    }
+
+                    // Update counters.
+                    final StoreCounters<?> c = (StoreCounters<?>) storeCounters
+                            .get().acquire();
+                    try {
+                        c.nwrites++;
+                        c.bytesWritten += nwrite;
+                        c.elapsedWriteNanos += (System.nanoTime() - begin);
+                        if (nwrite > c.maxWriteSize) {
+                            c.maxWriteSize = nwrite;
+                        }
+                    } finally {
+                        c.release();
+                    }
+
+                    m_stripeCounters.nallocs.incrementAndGet();
+
+                    return addr;
+
+                }
+
+            } finally {
+
+                lock.unlock();
 
-            if (commitState != null) {
-            
-                commitState.reset(); // restore state values on RWStore.
-                
+            }
+
+            /*
+             * Reserve more slots for the stripe. The read lock is not held
+             * here since the allocation lock is taken first when the reserved
+             * slots are released.
+             */
+            m_allocationWriteLock.lock();
+
+            try {
+
+                synchronized (stripe) {
+
+                    if (i >= stripe.navail.length || stripe.navail[i] == 0)
+                        reserve(stripe, i, nwrite);
+
+                }
+
+            } finally {
+
+                m_allocationWriteLock.unlock();
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Reserve {@link #m_stripeReserve} slots of the given size for the stripe.
+     * The size with which each slot was allocated is recorded so that it is
+     * freed with that size if it is never handed out. The caller must hold the
+     * allocation write lock and the monitor of the stripe.
+     * 
+     * @param stripe
+     *            The stripe.
+     * @param i
+     *            The index of the slot size.
+     * @param size
+     *            The size of the allocation (including the checksum).
+     */
+    private void reserve(final AllocationStripe stripe, final int i,
+            final int size) {
+
+        assert m_allocationWriteLock.isHeldByCurrentThread();
+
+        stripe.ensureCapacity(i, m_stripeReserve);
+
+        final int[] addrs = stripe.addrs[i];
+
+        final long[] paddrs = stripe.paddrs[i];
+
+        final int[] sizes = stripe.sizes[i];
+
+        // Slots are taken from the end, so they are used in allocation order.
+        for (int j = m_stripeReserve - 1; j >= 0; j--) {
+
+            final int addr = alloc(size, null/* context */);
+
+            addrs[j] = addr;
+
+            paddrs[j] = physicalAddress(addr);
+
+            sizes[j] = size;
+
+        }
+
+        stripe.navail[i] = m_stripeReserve;
+
+        m_stripeCounters.nreserved.addAndGet(m_stripeReserve);
+
+    }
+
+    /**
+     * Release the slots which are still reserved for the allocation stripes.
+     * This waits until any writer allocating from a stripe has copied its
+     * record into the write cache. The caller must hold the allocation write
+     * lock.
+     * 
+     * @param free
+     *            When <code>true</code> the slots are freed. Otherwise they
+     *            are simply forgotten, which is only correct when the
+     *            allocators are being reset to their last committed state.
+     */
+    private void releaseStripes(final boolean free) {
+
+        if (m_stripes == null)
+            return;
+
+        assert m_allocationWriteLock.isHeldByCurrentThread();
+
+        final WriteLock lock = m_stripeLock.writeLock();
+
+        lock.lock();
+
+        try {
+
+            long n = 0;
+
+            for (AllocationStripe stripe : m_stripes) {
+
+                synchronized (stripe) {
+
+                    for (int i = 0; i < stripe.navail.length; i++) {
+
+                        if (free) {
+
+                            for (int j = 0; j < stripe.navail[i]; j++) {
+
+                                // never written, so not visible to a session.
+                                immediateFree(stripe.addrs[i][j],
+                                        stripe.sizes[i][j], true/* overrideSession */);
+
+                            }
+
+                        }
+
+                        n += stripe.navail[i];
+
+                        stripe.navail[i] = 0;
+
+                    }
+
+                }
+
+            }
+
+            if (free)
+                m_stripeCounters.nreleased.addAndGet(n);
+            else
+                m_stripeCounters.ndiscarded.addAndGet(n);
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    /**
+     * Slots reserved from the {@link FixedAllocator}s for the writers mapped
+     * onto an allocation stripe. The slots for each slot size are the latched
+     * addresses <code>addrs[i][0:navail[i])</code>, which are handed out from
+     * the end.
+     * <p>
+     * Note: Guarded by the monitor of the stripe. New slots are only reserved
+     * while also holding the {@link RWStore#m_allocationWriteLock}.
+     * 
+     * @see Options#ALLOCATION_STRIPES
+     */
+    private static class AllocationStripe {
+
+        /**
+         * The latched addresses of the reserved slots for each slot size.
+         */
+        int[][] addrs = new int[0][];
+
+        /**
+         * The physical addresses of the reserved slots for each slot size.
+         */
+        long[][] paddrs = new long[0][];
+
+        /**
+         * The allocation size with which each reserved slot was allocated for
+         * each slot size.
+         */
+        int[][] sizes = new int[0][];
+
+        /**
+         * The #of slots remaining for each slot size.
+         */
+        int[] navail = new int[0];
+
+        /**
+         * Ensure that there is room to reserve slots of the given slot size.
+         */
+        void ensureCapacity(final int i, final int reserve) {
+
+            if (i >= navail.length) {
+
+                addrs = Arrays.copyOf(addrs, i + 1);
+                paddrs = Arrays.copyOf(paddrs, i + 1);
+                sizes = Arrays.copyOf(sizes, i + 1);
+                navail = Arrays.copyOf(navail, i + 1);
+
+            }
+
+            if (addrs[i] == null) {
+
+                addrs[i] = new int[reserve];
+                paddrs[i] = new long[reserve];
+                sizes[i] = new int[reserve];
+
+            }
+
+        }
+
+    }
+
+//  /****************************************************************************
+//   * Fixed buffer size reallocation
+//   **/
+//  public long realloc(final long oldAddr, final int oldSize, final byte buf[]) {
+//      
+//      free(oldAddr, oldSize);
+//
+//      return alloc(buf, buf.length);
+//  }
+
+//  /**
+//   * Must handle valid possibility that a request to start/commit transaction
+//   * could be made within a commitCallback request
+//   */
+//  synchronized public void startTransaction() {
+//      if (m_committing) {
+//          return;
+//      }
+//
+//      m_transactionCount++;
+//  }
+//
+//  synchronized public void commitTransaction() {
+//      if (m_committing) {
+//          return;
+//      }
+//
+//      if (log.isDebugEnabled())
+//          log.debug("Commit Transaction");
+//      
+//      if (--m_transactionCount <= 0) {
+//          commitChanges();
+//
+//          m_transactionCount = 0;
+//      }
+//  }
+//
+//  public int getTransactionCount() {
+//      return m_transactionCount;
+//  }
+//
+//  // --------------------------------------------------------------------------------------------
+//  // rollbackTransaction
+//  //
+//  // clear write cache
+//  // read in last committed header
+//  synchronized public void rollbackTransaction() {
+//      if (m_transactionCount > 0 || m_readOnly) { // hack for resync
+//          baseInit();
+//
+//          try {
+//              m_writeCache.reset(); // dirty writes are discarded
+//
+//              readAllocationBlocks();
+//          } catch (Exception e) {
+//              throw new StorageTerminalError("Unable to rollback transaction", e);
+//          }
+//      }
+//  }
+
+//    /*
+//     * Slug
+//     */
+//    private int fibslug(int n) {
+//    	if (n < 2) 
+//    		return 1;
+//    	else
+//    		return fibslug(n-1) + fibslug(n-2);
+//    }
+    
+    /**
+     * The semantics of reset are to revert unisolated writes to committed
+     * state.
+     * <p>
+     * Unisolated writes must also be removed from the write cache.
+     * <p>
+     * The AllocBlocks of the FixedAllocators maintain the state to determine
+     * the correct reset behavior.
+     * <p>
+     * If the store is using DirectFixedAllocators then an IllegalStateException
+     * is thrown.
+     * <p>
+     * If there is an active {@link #m_commitStateRef}, then this indicates a
+     * failure after the {@link RWStore#commit()} had "succeeded".
+     */
+    public void reset() {
+
+        if (log.isInfoEnabled()) {
+            log.info("RWStore Reset");
+        }
+        m_allocationWriteLock.lock();
+        try {
+        	// DEBUG
+        	// fibslug(40); // slug to improve odds of interruption of reset (if possible)
+            assertOpen();
+//          assertNoRebuild();
+
+            // the allocators are reset, so just forget the reserved slots.
+            releaseStripes(false/* free */);
+
+            final CommitState commitState = m_commitStateRef
+                    .getAndSet(null/* newValue */);
+
+            if (commitState != null) {
+            
+                commitState.reset(); // restore state values on RWStore.
+                
             }
             
             boolean isolatedWrites = false;
@@ -3470,6 +4036,7 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
         private final int m_lastCommittedNextAllocation;
         private final long m_storageStatsAddr;
         private final int m_metaBitsAddr;
+        private final int m_fileSize;
 
         CommitState() {
             // retain copy of critical pre-commit state
@@ -3478,6 +4045,7 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
             m_lastCommittedNextAllocation = RWStore.this.m_committedNextAllocation;
             m_storageStatsAddr = RWStore.this.m_storageStatsAddr;
             m_metaBitsAddr = RWStore.this.m_metaBitsAddr;
+            m_fileSize = RWStore.this.m_fileSize;
         }
 
         void postCommit() {
@@ -3493,6 +4061,8 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
             RWStore.this.m_storageStatsAddr = m_storageStatsAddr;
             RWStore.this.m_committedNextAllocation = m_lastCommittedNextAllocation;
             RWStore.this.m_metaBitsAddr = m_metaBitsAddr;
+            RWStore.this.m_fileSize = m_fileSize;
+            RWStore.this.m_pendingTruncation = 0;
          }
 
     }
@@ -3535,6 +4105,12 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
                         "RWStore commitState found, incomplete previous commit must be rolled back/aborted");
             }
 
+            // release the slots reserved for the allocation stripes.
+            releaseStripes(true/* free */);
+
+            // release drained regions and trim the heap (online compaction).
+            releaseEvacuatedBlocks();
+
 //          final int totalFreed = checkDeferredFrees(true, journal); // free now if possible
 //          
 //          if (totalFreed > 0 && log.isInfoEnabled()) {
@@ -3761,6 +4337,9 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
 
         clearCommitList();
 
+        // the new extent is now durable (online compaction).
+        postCommitEvacuation();
+
     }
 
     @Override
@@ -3969,89 +4548,642 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
     
     volatile private boolean m_useMetabitsDemispace = true;
     /**
-     * Package private since is uded by FixedAllocators
+     * Package private since is uded by FixedAllocators
+     * 
+     * @see Options#META_BITS_SIZE
+     */
+    final int cDefaultFreeBitsThreshold;
+    
+    /**
+     * The smallSlotThreshold, when activated, is intended to ensure improve the
+     * opportunity for write elissions (to mechanical disks) whilst also reducing 
+     * the read-backs on current generation (2014-15) SSDs that can impact 
+     * write throughput.
+     * Given that the objective is to statistically improve write elission,
+     * the number of required free bits needs to be large - around 50%.
+     * However, this can result in a large amount of store waste for certain
+     * patterns of data - for example when small slots are used to store large
+     * literals that will not be recycled.  In this scenario it is possible
+     * that allocators are not recycled.
+     * Some further thoughts:
+     * 1) The more efficient elission of small slots for the allocation of large literals
+     * is probably the major throughput benefit
+     * 2) OTOH, at a lower level, small sparse but localised writes (eg 16 64 byte writes to a 4k
+     * sector) may only incur a single read-back with good firmware.
+     * To address the concern for high waste, when a statistically large number of allocators have
+     * been created, and the waste is beyond some threshold, then a lower small slot threshold
+     * is used.  The logic for this is implemented in {@link FixedAllocator#meetsSmallSlotThreshold()}
+     */
+	int cSmallSlot = 1024; // @see from Options#SMALL_SLOT_TYPE
+    
+	int cSmallSlotThreshold = 4096;  // @see from Options#SMALL_SLOT_THRESHOLD
+	
+	/**
+	 * High Waste Criteria
+	 */
+	int cSmallSlotThresholdHighWaste = 2048;  // @see from Options#SMALL_SLOT_THRESHOLD_HIGH_WASTE
+	int cSmallSlotWasteCheckAllocators = 100;  // @see from Options#SMALL_SLOT_WASTE_CHECK_ALLOCATORS
+	float cSmallSlotHighWaste = 0.2f;  // @see from Options#SMALL_SLOT_HIGH_WASTE
+	
+	/**
+     * Each "metaBit" is a file region
+     */
+    private int m_metaBits[];
+    private int m_metaTransientBits[];
+    // volatile private int m_metaStartAddr;
+    private volatile int m_metaBitsAddr;
+    // @todo javadoc please.
+    volatile private boolean m_recentAlloc = false;
+
+    /**
+     * Return the address of a contiguous region on the persistent heap.
+     * 
+     * @param size
+     *            The size of that region (this is not bytes, but something a
+     *            bit more complicated).
+     */
+    protected int allocBlock(final int size) {
+        // minimum 1
+        if (size <= 0) {
+            throw new Error("allocBlock called with zero size request");
+        }
+
+        final int allocAddr = m_nextAllocation;
+        m_nextAllocation -= size;
+
+        while (convertAddr(m_nextAllocation) >= convertAddr(m_fileSize)) {
+            extendFile();
+        }
+
+        checkCoreAllocations();
+
+        if (log.isTraceEnabled())
+            log.trace("allocation created at " + convertAddr(allocAddr) + " for " + convertAddr(-size));
+
+        return allocAddr;
+    }
+
+    private void checkCoreAllocations() {
+        final long lfileSize = convertAddr(m_fileSize);
+        final long lnextAlloc = convertAddr(m_nextAllocation);
+
+        if (lnextAlloc >= lfileSize) {
+            throw new IllegalStateException("Core Allocation Error - file size: " 
+                    + lfileSize + ", nextAlloc: " + lnextAlloc);
+        }
+    }
+
+    /*
+     * Online compaction.
+     */
+
+    /**
+     * Select the sparsest {@link FixedAllocator}s for evacuation by an online
+     * compaction. An allocator qualifies if it is not bound to an
+     * {@link IAllocationContext}, owns more than one block region and no more
+     * than <i>maxOccupancy</i> of the slots in its active blocks are in use.
+     * The first block of an allocator is never released since its address
+     * orders the allocators (and hence fixes their indices) when the store is
+     * opened. The qualifying allocators owning
+     * the regions closest to the end of the file are selected first so that
+     * the file may be truncated as they drain.
+     * <p>
+     * An allocator being evacuated is removed from its free list so no new
+     * records are written on it. The records already written on it are
+     * relocated by the application (see
+     * {@link com.bigdata.btree.BTree#relocate(com.bigdata.rawstore.IAddressFilter, long)}
+     * ) and freed through the normal deferred free protocol. Once the blocks
+     * at the end of the heap no longer hold any live, committed or session
+     * protected slots their regions are released during {@link #commit()},
+     * the heap is trimmed and the file is truncated after the commit is
+     * durable.
+     * <p>
+     * Note: Evacuation is not supported for a highly available store. Changes
+     * to the file extent would have to be coordinated with the followers.
+     * 
+     * @param maxOccupancy
+     *            The maximum fraction of the slots of an allocator that may be
+     *            in use for that allocator to be selected.
+     * @param maxAllocators
+     *            The maximum #of allocators to select.
+     * 
+     * @return The #of allocators selected by this request.
+     * 
+     * @see #isEvacuating(int)
+     * @see #cancelEvacuation()
+     */
+    public int evacuate(final float maxOccupancy, final int maxAllocators) {
+
+        if (maxOccupancy < 0f || maxOccupancy >= 1f)
+            throw new IllegalArgumentException();
+
+        if (maxAllocators <= 0)
+            throw new IllegalArgumentException();
+
+        if (m_quorum != null)
+            return 0;
+
+        m_allocationWriteLock.lock();
+
+        try {
+
+            // do not leave slots reserved on an evacuating allocator.
+            releaseStripes(true/* free */);
+
+            final ArrayList<FixedAllocator> candidates = new ArrayList<FixedAllocator>();
+
+            for (FixedAllocator fa : m_allocs) {
+
+                // Note: an allocator which was never committed could be
+                // discarded by an abort.
+                if (fa.isEvacuating() || !fa.isUnlocked()
+                        || fa.m_pendingContextCommit || fa.getDiskAddr() == 0)
+                    continue;
+
+                // only blocks after the first can be released.
+                if (fa.getActiveBlocks() < 2)
+                    continue;
+
+                final int activeBits = fa.getActiveBits();
+
+                if (fa.getUsedBits() > maxOccupancy * activeBits)
+                    continue;
+
+                candidates.add(fa);
+
+            }
+
+            // Closest to the end of the file first.
+            Collections.sort(candidates, new Comparator<FixedAllocator>() {
+                @Override
+                public int compare(final FixedAllocator o1,
+                        final FixedAllocator o2) {
+                    return Integer.compare(o1.getRegionEnd(), o2.getRegionEnd());
+                }
+            });
+
+            final int n = Math.min(maxAllocators, candidates.size());
+
+            for (int i = 0; i < n; i++) {
+
+                candidates.get(i).setEvacuating(true);
+
+            }
+
+            m_evacuating += n;
+
+            m_compactionCounters.nevacuated.addAndGet(n);
+
+            if (log.isInfoEnabled())
+                log.info("Evacuating " + n + " of " + candidates.size()
+                        + " candidate allocators, maxOccupancy="
+                        + maxOccupancy);
+
+            return n;
+
+        } finally {
+
+            m_allocationWriteLock.unlock();
+
+        }
+
+    }
+
+    /**
+     * Return <code>true</code> iff the latched address lies in a releasable
+     * block of a {@link FixedAllocator} which is being evacuated and the record
+     * should therefore be relocated.
+     * 
+     * @param latchedAddr
+     *            The latched address.
+     */
+    public boolean isEvacuating(final int latchedAddr) {
+
+        if (m_evacuating == 0 || latchedAddr >= 0)
+            return false;
+
+        m_allocationReadLock.lock();
+
+        try {
+
+            return getBlock(latchedAddr).isEvacuating(latchedAddr);
+
+        } finally {
+
+            m_allocationReadLock.unlock();
+
+        }
+
+    }
+
+    /**
+     * The #of {@link FixedAllocator}s currently being evacuated.
+     */
+    public int getEvacuatingCount() {
+
+        return m_evacuating;
+
+    }
+
+    /**
+     * End the evacuation of all {@link FixedAllocator}s, returning them to the
+     * free lists.
+     * 
+     * @return The #of allocators which were being evacuated.
+     */
+    public int cancelEvacuation() {
+
+        m_allocationWriteLock.lock();
+
+        try {
+
+            int n = 0;
+
+            for (FixedAllocator fa : m_allocs) {
+
+                if (fa.isEvacuating()) {
+
+                    fa.setEvacuating(false);
+
+                    n++;
+
+                }
+
+            }
+
+            m_evacuating = 0;
+
+            m_compactionCounters.ncancelled.addAndGet(n);
+
+            return n;
+
+        } finally {
+
+            m_allocationWriteLock.unlock();
+
+        }
+
+    }
+
+    /**
+     * Invoked from {@link #commit()} to trim the end of the persistent heap.
+     * While the highest region on the heap is owned by the last block of an
+     * evacuating {@link FixedAllocator} and that block no longer holds any
+     * live, committed or session protected slots, the block is released. The
+     * next allocation is then moved back to the new end of the heap and the
+     * file is marked for truncation once the commit is durable.
+     * <p>
+     * Note: Only regions at the end of the heap are released. A region in the
+     * middle of the heap would otherwise become a hole which could not be
+     * reused since regions are only ever allocated from the end of the heap.
+     * <p>
+     * Note: A released block holds nothing which is visible from the previous
+     * commit point, so the previous root block remains valid until the new root
+     * block is written.
+     */
+    private void releaseEvacuatedBlocks() {
+
+        if (m_evacuating == 0)
+            return;
+
+        int nreleased = 0;
+
+        while (true) {
+
+            final int hwm = getHeapHighWaterMark();
+
+            // the allocator owning the highest region (if any).
+            FixedAllocator last = null;
+
+            for (FixedAllocator fa : m_allocs) {
+
+                if (fa.getRegionEnd() == hwm) {
+
+                    last = fa;
+
+                    break;
+
+                }
+
+            }
+
+            if (last == null || !last.isEvacuating()
+                    || !last.releaseLastBlock())
+                break;
+
+            // the allocator must be written with its released block.
+            addToCommit(last);
+
+            nreleased++;
+
+        }
+
+        if (nreleased == 0)
+            return;
+
+        m_compactionCounters.nreleasedBlocks.addAndGet(nreleased);
+
+        final int hwm = getHeapHighWaterMark();
+
+        if (hwm > m_nextAllocation) {
+
+            if (log.isInfoEnabled())
+                log.info("Trimming heap: nextAllocation="
+                        + convertAddr(m_nextAllocation) + " => "
+                        + convertAddr(hwm));
+
+            m_nextAllocation = hwm;
+
+            // retain the normal extension headroom beyond the new end.
+            final int fileSize = hwm - 1200 + (hwm / 10);
+
+            if (fileSize > m_fileSize) {
+
+                m_fileSize = fileSize;
+
+                m_pendingTruncation = fileSize;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Invoked from {@link #postCommit()} to truncate the file to the extent
+     * recorded by the new root block and to end the evacuation of any
+     * {@link FixedAllocator}s which have been fully drained.
+     */
+    private void postCommitEvacuation() {
+
+        if (m_pendingTruncation != 0) {
+
+            final int fileSize = m_pendingTruncation;
+
+            m_pendingTruncation = 0;
+
+            truncateFile(fileSize);
+
+        }
+
+        if (m_evacuating == 0)
+            return;
+
+        for (FixedAllocator fa : m_allocs) {
+
+            if (fa.isEvacuating() && fa.getActiveBlocks() < 2) {
+
+                fa.setEvacuating(false);
+
+                m_evacuating--;
+
+                m_compactionCounters.ndrained.incrementAndGet();
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Return the end of the region of the persistent heap which is in use
+     * (including the root blocks, the meta allocation regions, the metabits
+     * demi-space and the regions of all active allocation blocks) in the
+     * (negative) units of {@link #m_nextAllocation}.
+     */
+    private int getHeapHighWaterMark() {
+
+        // the root blocks and the first meta allocation region.
+        int hwm = -(1 + META_ALLOCATION);
+
+        for (FixedAllocator fa : m_allocs) {
+
+            hwm = Math.min(hwm, fa.getRegionEnd());
+
+        }
+
+        for (int b = 0; b < m_metaBits.length; b += cDefaultMetaBitsSize) {
+
+            if (m_metaBits[b] != 0)
+                hwm = Math.min(hwm, m_metaBits[b] - META_ALLOCATION);
+
+        }
+
+        if (m_metaBitsAddr > 0) {
+
+            // metabits demi-space (2 * 64K).
+            hwm = Math.min(hwm, -(m_metaBitsAddr & ~0x01) - 2);
+
+        }
+
+        return hwm;
+
+    }
+
+    /**
+     * Truncate the backing file.
      * 
-     * @see Options#META_BITS_SIZE
+     * @param fileSize
+     *            The new extent (in the same units as {@link #m_fileSize}).
      */
-    final int cDefaultFreeBitsThreshold;
-    
+    private void truncateFile(final int fileSize) {
+
+        final Lock lock = this.m_extensionLock.writeLock();
+
+        lock.lock();
+
+        try {
+
+            final long toAddr = convertAddr(fileSize);
+
+            m_reopener.reopenChannel();
+
+            final long fromAddr = m_reopener.raf.length();
+
+            if (fromAddr <= toAddr)
+                return;
+
+            if (log.isInfoEnabled())
+                log.info("Truncating file from " + fromAddr + " to " + toAddr);
+
+            if (m_mappedReads != null)
+                m_mappedReads.truncate(toAddr);
+
+            m_reopener.raf.setLength(toAddr);
+
+            m_writeCacheService.setExtent(toAddr);
+
+            m_compactionCounters.ntruncate.incrementAndGet();
+
+            m_compactionCounters.bytesTruncated.addAndGet(fromAddr - toAddr);
+
+        } catch (Throwable t) {
+
+            throw new RuntimeException("Truncate", t);
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
     /**
-     * The smallSlotThreshold, when activated, is intended to ensure improve the
-     * opportunity for write elissions (to mechanical disks) whilst also reducing 
-     * the read-backs on current generation (2014-15) SSDs that can impact 
-     * write throughput.
-     * Given that the objective is to statistically improve write elission,
-     * the number of required free bits needs to be large - around 50%.
-     * However, this can result in a large amount of store waste for certain
-     * patterns of data - for example when small slots are used to store large
-     * literals that will not be recycled.  In this scenario it is possible
-     * that allocators are not recycled.
-     * Some further thoughts:
-     * 1) The more efficient elission of small slots for the allocation of large literals
-     * is probably the major throughput benefit
-     * 2) OTOH, at a lower level, small sparse but localised writes (eg 16 64 byte writes to a 4k
-     * sector) may only incur a single read-back with good firmware.
-     * To address the concern for high waste, when a statistically large number of allocators have
-     * been created, and the waste is beyond some threshold, then a lower small slot threshold
-     * is used.  The logic for this is implemented in {@link FixedAllocator#meetsSmallSlotThreshold()}
-     */
-	int cSmallSlot = 1024; // @see from Options#SMALL_SLOT_TYPE
-    
-	int cSmallSlotThreshold = 4096;  // @see from Options#SMALL_SLOT_THRESHOLD
-	
-	/**
-	 * High Waste Criteria
-	 */
-	int cSmallSlotThresholdHighWaste = 2048;  // @see from Options#SMALL_SLOT_THRESHOLD_HIGH_WASTE
-	int cSmallSlotWasteCheckAllocators = 100;  // @see from Options#SMALL_SLOT_WASTE_CHECK_ALLOCATORS
-	float cSmallSlotHighWaste = 0.2f;  // @see from Options#SMALL_SLOT_HIGH_WASTE
-	
-	/**
-     * Each "metaBit" is a file region
+     * Allocation stripe statistics.
+     * 
+     * @see Options#ALLOCATION_STRIPES
      */
-    private int m_metaBits[];
-    private int m_metaTransientBits[];
-    // volatile private int m_metaStartAddr;
-    private volatile int m_metaBitsAddr;
-    // @todo javadoc please.
-    volatile private boolean m_recentAlloc = false;
+    private class StripeCounters {
+
+        /**
+         * #of records allocated from a stripe.
+         */
+        final AtomicLong nallocs = new AtomicLong();
+
+        /**
+         * #of slots reserved for the stripes.
+         */
+        final AtomicLong nreserved = new AtomicLong();
+
+        /**
+         * #of reserved slots which were freed by a commit.
+         */
+        final AtomicLong nreleased = new AtomicLong();
+
+        /**
+         * #of reserved slots which were discarded by an abort.
+         */
+        final AtomicLong ndiscarded = new AtomicLong();
+
+        CounterSet getCounters() {
+
+            final CounterSet root = new CounterSet();
+
+            root.addCounter("nstripes", new Instrument<Integer>() {
+                public void sample() {
+                    setValue(m_stripes == null ? 0 : m_stripes.length);
+                }
+            });
+
+            root.addCounter("nallocs", new Instrument<Long>() {
+                public void sample() {
+                    setValue(nallocs.get());
+                }
+            });
+
+            root.addCounter("nreserved", new Instrument<Long>() {
+                public void sample() {
+                    setValue(nreserved.get());
+                }
+            });
+
+            root.addCounter("nreleased", new Instrument<Long>() {
+                public void sample() {
+                    setValue(nreleased.get());
+                }
+            });
+
+            root.addCounter("ndiscarded", new Instrument<Long>() {
+                public void sample() {
+                    setValue(ndiscarded.get());
+                }
+            });
+
+            return root;
+
+        }
+
+    }
 
     /**
-     * Return the address of a contiguous region on the persistent heap.
+     * Online compaction statistics.
      * 
-     * @param size
-     *            The size of that region (this is not bytes, but something a
-     *            bit more complicated).
+     * @see RWStore#evacuate(float, int)
      */
-    protected int allocBlock(final int size) {
-        // minimum 1
-        if (size <= 0) {
-            throw new Error("allocBlock called with zero size request");
-        }
+    private class CompactionCounters {
 
-        final int allocAddr = m_nextAllocation;
-        m_nextAllocation -= size;
+        /**
+         * #of allocators selected for evacuation.
+         */
+        final AtomicLong nevacuated = new AtomicLong();
 
-        while (convertAddr(m_nextAllocation) >= convertAddr(m_fileSize)) {
-            extendFile();
-        }
+        /**
+         * #of evacuating allocators which were fully drained.
+         */
+        final AtomicLong ndrained = new AtomicLong();
 
-        checkCoreAllocations();
+        /**
+         * #of evacuating allocators returned to the free lists before they
+         * were drained.
+         */
+        final AtomicLong ncancelled = new AtomicLong();
 
-        if (log.isTraceEnabled())
-            log.trace("allocation created at " + convertAddr(allocAddr) + " for " + convertAddr(-size));
+        /**
+         * #of allocation blocks whose region was released.
+         */
+        final AtomicLong nreleasedBlocks = new AtomicLong();
 
-        return allocAddr;
-    }
+        /**
+         * #of times the file was truncated.
+         */
+        final AtomicLong ntruncate = new AtomicLong();
 
-    private void checkCoreAllocations() {
-        final long lfileSize = convertAddr(m_fileSize);
-        final long lnextAlloc = convertAddr(m_nextAllocation);
+        /**
+         * #of bytes by which the file was truncated.
+         */
+        final AtomicLong bytesTruncated = new AtomicLong();
+
+        CounterSet getCounters() {
+
+            final CounterSet root = new CounterSet();
+
+            root.addCounter("evacuating", new Instrument<Integer>() {
+                public void sample() {
+                    setValue(m_evacuating);
+                }
+            });
+
+            root.addCounter("nevacuated", new Instrument<Long>() {
+                public void sample() {
+                    setValue(nevacuated.get());
+                }
+            });
+
+            root.addCounter("ndrained", new Instrument<Long>() {
+                public void sample() {
+                    setValue(ndrained.get());
+                }
+            });
+
+            root.addCounter("ncancelled", new Instrument<Long>() {
+                public void sample() {
+                    setValue(ncancelled.get());
+                }
+            });
+
+            root.addCounter("nreleasedBlocks", new Instrument<Long>() {
+                public void sample() {
+                    setValue(nreleasedBlocks.get());
+                }
+            });
+
+            root.addCounter("ntruncate", new Instrument<Long>() {
+                public void sample() {
+                    setValue(ntruncate.get());
+                }
+            });
+
+            root.addCounter("bytesTruncated", new Instrument<Long>() {
+                public void sample() {
+                    setValue(bytesTruncated.get());
+                }
+            });
+
+            return root;
 
-        if (lnextAlloc >= lfileSize) {
-            throw new IllegalStateException("Core Allocation Error - file size: " 
-                    + lfileSize + ", nextAlloc: " + lnextAlloc);
         }
+
     }
 
     /**
@@ -4273,6 +5405,22 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
         }
     }
 
+    /**
+     * Return the extent of the backing file as of the commit point of the root
+     * block. The extent is recorded (in units of -32K) in the low int32 word of
+     * {@link IRootBlockView#getMetaStartAddr()}.
+     * 
+     * @param rbv
+     *            A root block of an {@link RWStore}.
+     * 
+     * @return The extent of the backing file in bytes.
+     */
+    public static long getFileExtent(final IRootBlockView rbv) {
+
+        return convertAddr((int) -(rbv.getMetaStartAddr() & 0xFFFFFFFFL));
+
+    }
+
     /**
      * Convert an int64 address into the backing file into an int32 offset that
      * is implicitly scaled by {@link #ALLOCATION_SCALEUP}.
@@ -4444,11 +5592,8 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
     
     static int fndBit(final int bits) {
         if (bits != 0xFFFFFFFF) {
-            for (int k = 0; k < 32; k++) {
-                if ((bits & (1 << k)) == 0) {
-                    return k;
-                }
-            }
+            // the lowest clear bit.
+            return Integer.numberOfTrailingZeros(~bits);
         }
 
         return -1;
@@ -4669,8 +5814,17 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
         return m_fd;
     }
 
+    /**
+     * Return <code>true</code> if there are allocations or frees which have
+     * not been committed. While allocators are being evacuated this always
+     * returns <code>true</code> so that an otherwise idle store continues to
+     * go through commit points, which is when the deferred frees of the
+     * relocated records are recycled and the drained regions are released.
+     * 
+     * @see #evacuate(float, int)
+     */
     public boolean requiresCommit() {
-        return m_recentAlloc;
+        return m_recentAlloc || m_evacuating != 0;
     }
 
     /**
@@ -6361,6 +7515,21 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
             tmp.attach(m_writeCacheService.getCounters());
 
         }
+
+        if (m_mappedReads != null) {
+
+            root.makePath("mappedReads").attach(m_mappedReads.getCounters());
+
+        }
+
+        root.makePath("compaction").attach(m_compactionCounters.getCounters());
+
+        if (m_stripes != null) {
+
+            root.makePath("allocationStripes").attach(
+                    m_stripeCounters.getCounters());
+
+        }
         
         return root;
 
@@ -6664,9 +7833,19 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
                 final long pos = offset;
                 final int length = dst.limit();
 
+                // copy from the mapped file iff enabled and not straddling regions.
+                final ByteBuffer mapped = m_mappedReads == null ? null
+                        : m_mappedReads.slice(pos, length - position);
+
                 // read on the disk.
-                final int ndiskRead = FileChannelUtility.readAll(m_reopener,
-                        dst, pos);
+                final int ndiskRead;
+                if (mapped != null) {
+                    dst.put(mapped);
+                    ndiskRead = 0;
+                } else {
+                    ndiskRead = FileChannelUtility.readAll(m_reopener, dst,
+                            pos);
+                }
 
                 m_diskReads += ndiskRead;
                 
@@ -7906,6 +9085,105 @@ public class RWStore implements IStore, IBufferedWriter, IBackingReader {
 		}
 	}
 	
+	/**
+	 * The commit counter of the last snapshot whose slots were captured by
+	 * {@link #captureDelta(SortedMap)} and then released successfully -or-
+	 * <code>-1L</code> if there is no such snapshot. The allocation slots
+	 * written since that snapshot are tracked in memory, so there is never a
+	 * baseline for a delta snapshot when the store is (re-)opened.
+	 * <p>
+	 * Note: guarded by the {@link #m_allocationWriteLock}.
+	 */
+	private long m_deltaBaseCommitCounter = -1L;
+
+	/**
+	 * <code>true</code> while slots captured by {@link #captureDelta(SortedMap)}
+	 * have not yet been released.
+	 * <p>
+	 * Note: guarded by the {@link #m_allocationWriteLock}.
+	 */
+	private boolean m_deltaCaptured = false;
+
+	/**
+	 * Capture the committed allocation slots written since the last snapshot.
+	 * This MUST be invoked atomically with {@link #snapshotAllocators(ISnapshotData)}
+	 * and slots which were captured MUST be released using
+	 * {@link #releaseDelta(long, boolean)} once the snapshot is done.
+	 * 
+	 * @param regions
+	 *            When non-<code>null</code>, the physical regions of the
+	 *            captured slots are added to this map (offset to length) for
+	 *            a delta snapshot. When <code>null</code> the slots are
+	 *            captured for a full snapshot, which establishes a new
+	 *            baseline.
+	 * 
+	 * @return <code>true</code> iff the slots were captured. A full snapshot
+	 *         which runs concurrently with another snapshot does not capture
+	 *         any slots and does not establish a new baseline.
+	 * 
+	 * @throws IllegalStateException
+	 *             if a delta is requested and there is no baseline or another
+	 *             snapshot is in progress.
+	 */
+	public boolean captureDelta(final SortedMap<Long, Integer> regions) {
+		m_allocationWriteLock.lock();
+		try {
+			if (m_deltaCaptured) {
+				if (regions == null)
+					return false;
+				throw new IllegalStateException("Snapshot in progress");
+			}
+			if (regions != null && m_deltaBaseCommitCounter == -1L)
+				throw new IllegalStateException("No baseline snapshot");
+			for (FixedAllocator alloc : m_allocs) {
+				alloc.captureDelta(regions);
+			}
+			m_deltaCaptured = true;
+			return true;
+		} finally {
+			m_allocationWriteLock.unlock();
+		}
+	}
+
+	/**
+	 * Release the slots captured by {@link #captureDelta(SortedMap)}.
+	 * 
+	 * @param commitCounter
+	 *            The commit counter of the snapshot.
+	 * @param success
+	 *            When <code>true</code> the snapshot was written and becomes
+	 *            the baseline for the next delta snapshot. Otherwise the
+	 *            captured slots remain pending for the next snapshot.
+	 */
+	public void releaseDelta(final long commitCounter, final boolean success) {
+		m_allocationWriteLock.lock();
+		try {
+			if (!m_deltaCaptured)
+				throw new IllegalStateException();
+			for (FixedAllocator alloc : m_allocs) {
+				alloc.releaseDelta(success);
+			}
+			m_deltaCaptured = false;
+			if (success)
+				m_deltaBaseCommitCounter = commitCounter;
+		} finally {
+			m_allocationWriteLock.unlock();
+		}
+	}
+
+	/**
+	 * The commit counter of the baseline for the next delta snapshot -or-
+	 * <code>-1L</code> if a full snapshot must be taken first.
+	 */
+	public long getDeltaBaseCommitCounter() {
+		m_allocationWriteLock.lock();
+		try {
+			return m_deltaBaseCommitCounter;
+		} finally {
+			m_allocationWriteLock.unlock();
+		}
+	}
+
 	class AllocationContext implements IAllocationContext {
 		
 		boolean m_active = true;
@@ -55,8 +55,23 @@ public class RWWriteCacheService extends WriteCacheService implements IWriteCach
             final IBackingReader reader)
             throws InterruptedException, IOException {
 
+        this(nbuffers, minCleanListSize, readBuffers, prefixWrites,
+                compactionThreshold, hotCacheSize, hotCacheThreshold,
+                0/* recordCacheBufferCount */, fileExtent, opener, quorum,
+                reader);
+    }
+
+    public RWWriteCacheService(final int nbuffers, final int minCleanListSize, final int readBuffers,
+            final boolean prefixWrites, final int compactionThreshold,
+            final int hotCacheSize, final int hotCacheThreshold,
+            final int recordCacheBufferCount,
+            final long fileExtent,
+            final IReopenChannel<? extends Channel> opener, final Quorum quorum,
+            final IBackingReader reader)
+            throws InterruptedException, IOException {
+
         super(nbuffers, minCleanListSize,  readBuffers, prefixWrites, compactionThreshold, hotCacheSize, hotCacheThreshold,
-                true/* useChecksum */, fileExtent, opener, quorum, reader);
+                recordCacheBufferCount, true/* useChecksum */, fileExtent, opener, quorum, reader);
     }
 
     /**
@@ -98,6 +98,18 @@ public class SectorAllocator implements Comparable<SectorAllocator> {
 	final public static int BLOB_SIZE = 4096;
 	final static int BLOB_CHAIN_OFFSET = BLOB_SIZE - 4;
 	final public static int[] ALLOC_SIZES = {64, 128, 256, 512, 1024, 2048, BLOB_SIZE};
+
+	/**
+	 * The minimum capacity of a sector, which is the space required by the
+	 * initial block of 32 slots for each of the {@link #ALLOC_SIZES}.
+	 */
+	final public static int MIN_SECTOR_SIZE = getMinSectorSize();
+
+	private static int getMinSectorSize() {
+		int ret = 0;
+		for (int i = 0; i < ALLOC_SIZES.length; i++) ret += 32 * ALLOC_SIZES[i];
+		return ret;
+	}
 	final static int[] ALLOC_BITS = {32, 32, 32, 32, 32, 32, 32};
 	int m_index;
 	long m_sectorAddress;
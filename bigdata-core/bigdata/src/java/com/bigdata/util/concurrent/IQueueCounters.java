@@ -346,6 +346,20 @@ public interface IQueueCounters extends ICounterHierarchy {
          */
         String MaxCommitGroupSize = "Max Commit Group Size";
 
+        /**
+         * Histogram of the #of tasks in each commit group. Each child counter
+         * is the #of commit groups whose size falls into a power of two range.
+         */
+        String CommitGroupSizeHistogram = "Commit Group Size Histogram";
+
+        /**
+         * Histogram of the latency in milliseconds of each group commit,
+         * including the time that the task which initiates the group commit
+         * waits for other tasks to join the commit group. Each child counter
+         * is the #of commits whose latency falls into a power of two range.
+         */
+        String CommitLatencyHistogram = "Commit Latency Histogram";
+
         /**
          * The maximum #of tasks that are concurrently executing without regard
          * to whether or not the tasks have acquired their locks.
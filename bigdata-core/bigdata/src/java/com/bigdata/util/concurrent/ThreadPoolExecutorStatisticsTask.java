@@ -921,6 +921,20 @@ public class ThreadPoolExecutorStatisticsTask implements Runnable {
                         }
                     });
 
+            /*
+             * Histograms.
+             */
+
+            counterSet.makePath(
+                    IWriteServiceExecutorCounters.CommitGroupSizeHistogram)
+                    .attach(writeService.getCommitGroupSizeHistogram()
+                            .getCounters());
+
+            counterSet.makePath(
+                    IWriteServiceExecutorCounters.CommitLatencyHistogram)
+                    .attach(writeService.getCommitLatencyHistogram()
+                            .getCounters());
+
             /*
              * Moving averages available only for the write executor
              * service.
@@ -53,6 +53,8 @@ import com.bigdata.bop.controller.ServiceCallJoin;
 import com.bigdata.bop.join.HashJoinOp;
 import com.bigdata.bop.join.PipelineJoin;
 import com.bigdata.bop.join.SolutionSetHashJoinOp;
+import com.bigdata.bop.solutions.ExternalMemorySortOp;
+import com.bigdata.bop.solutions.MemorySortOp;
 import com.bigdata.bop.solutions.ProjectionOp;
 import com.bigdata.bop.solutions.SliceOp;
 import com.bigdata.rdf.internal.IV;
@@ -1551,4 +1553,76 @@ public class TestQueryHints extends AbstractDataDrivenSPARQLTestCase {
 
     }
 
+    /**
+     * Unit test for {@link QueryHints#NATIVE_SORT}. The ORDER BY must be
+     * evaluated by the {@link ExternalMemorySortOp} rather than the
+     * {@link MemorySortOp}.
+     * 
+     * <pre>
+     * SELECT ?x ?o
+     * WHERE {
+     * 
+     *   # Use the native version of the ORDER BY.
+     *   hint:Query hint:nativeSort true .
+     * 
+     *   ?x rdfs:label ?o .
+     * 
+     * }
+     * ORDER BY DESC(?o)
+     * </pre>
+     */
+    public void test_query_hints_11() throws Exception {
+
+        final ASTContainer astContainer = new TestHelper("query-hints-11")
+                .runTest();
+
+        final PipelineOp queryPlan = astContainer.getQueryPlan();
+
+        assertTrue(BOpUtility.visitAll(queryPlan, ExternalMemorySortOp.class)
+                .hasNext());
+
+        assertFalse(BOpUtility.visitAll(queryPlan, MemorySortOp.class)
+                .hasNext());
+
+    }
+
+    /**
+     * Unit test for {@link QueryHints#COLUMNAR}. The projection must process
+     * its chunks as columnar chunks and the query must produce the same
+     * solutions.
+     * 
+     * <pre>
+     * SELECT ?x ?o
+     * WHERE {
+     * 
+     *   # Project the solutions as columnar chunks.
+     *   hint:Query hint:columnar true .
+     * 
+     *   ?x rdfs:label ?o .
+     * 
+     * }
+     * </pre>
+     */
+    public void test_query_hints_12() throws Exception {
+
+        final ASTContainer astContainer = new TestHelper("query-hints-12")
+                .runTest();
+
+        final PipelineOp queryPlan = astContainer.getQueryPlan();
+
+        final Iterator<ProjectionOp> itr = BOpUtility.visitAll(queryPlan,
+                ProjectionOp.class);
+
+        assertTrue(itr.hasNext());
+
+        while (itr.hasNext()) {
+
+            final ProjectionOp op = itr.next();
+
+            assertTrue(op.toString(), op.isColumnar());
+
+        }
+
+    }
+
 }
@@ -27,6 +27,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.rdf.spo;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import org.openrdf.model.Statement;
 
 import com.bigdata.bop.BOp;
@@ -34,6 +37,9 @@ import com.bigdata.bop.Constant;
 import com.bigdata.bop.IPredicate;
 import com.bigdata.bop.NV;
 import com.bigdata.bop.Var;
+import com.bigdata.btree.AbstractBTree;
+import com.bigdata.btree.IIndex;
+import com.bigdata.journal.TimestampUtility;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.VTE;
 import com.bigdata.rdf.model.BigdataURI;
@@ -45,6 +51,7 @@ import com.bigdata.rdf.store.AbstractTripleStoreTestCase;
 import com.bigdata.rdf.store.TestTripleStore;
 import com.bigdata.relation.accesspath.AccessPath;
 import com.bigdata.relation.accesspath.IAccessPath;
+import com.bigdata.striterator.IChunkedOrderedIterator;
 import com.bigdata.test.MockTermIdFactory;
 
 /**
@@ -393,6 +400,132 @@ public class TestSPOAccessPath extends AbstractTripleStoreTestCase {
         
     }
     
+    /**
+     * Unit test for a parallel scan of the key-range partitions of an access
+     * path on a read-only view of the triple store. The parallel scan must
+     * visit the same statements as a serial scan, but the iterator does not
+     * report a natural order since the chunks of the different partitions are
+     * interleaved.
+     * 
+     * @see IPredicate.Annotations#PARALLEL_SCAN
+     */
+    @SuppressWarnings("rawtypes")
+    public void test_parallelScan() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            final BigdataValueFactory f = store.getValueFactory();
+
+            final BigdataURI p1 = f.createURI("http://www.bigdata.com/rdf#p1");
+            final BigdataURI p2 = f.createURI("http://www.bigdata.com/rdf#p2");
+            final BigdataURI o1 = f.createURI("http://www.bigdata.com/rdf#o1");
+
+            // the context position (only used in quads mode).
+            final BigdataURI c = store.isQuads() ? f
+                    .createURI("http://www.bigdata.com/graphA") : null;
+
+            final int nstmts = 1000;
+
+            {
+
+                final StatementBuffer<Statement> buffer = new StatementBuffer<Statement>(
+                        store, 100);
+
+                for (int i = 0; i < nstmts; i++) {
+
+                    final BigdataURI s = f
+                            .createURI("http://www.bigdata.com/rdf#s" + i);
+
+                    buffer.add(s, p1, f.createURI("http://www.bigdata.com/rdf#o"
+                            + i), c);
+
+                    if (i % 10 == 0)
+                        buffer.add(s, p2, o1, c);
+
+                }
+
+                buffer.flush();
+
+            }
+
+            final long commitTime = store.commit();
+
+            final AbstractTripleStore view = (AbstractTripleStore) store
+                    .getIndexManager()
+                    .getResourceLocator()
+                    .locate(store.getNamespace(),
+                            TimestampUtility.asHistoricalRead(commitTime));
+
+            final BOp[] args = view.isQuads() ? new BOp[] { Var.var("s"),
+                    new Constant<IV>(p1.getIV()), Var.var("o"), Var.var("c") }
+                    : new BOp[] { Var.var("s"), new Constant<IV>(p1.getIV()),
+                            Var.var("o") };
+
+            final SPOPredicate predicate = new SPOPredicate(args, new NV(
+                    IPredicate.Annotations.RELATION_NAME,
+                    new String[] { view.getSPORelation().getNamespace() }));
+
+            // serial scan.
+            final IAccessPath<ISPO> serial = view.getSPORelation()
+                    .getAccessPath(predicate);
+
+            final List<ISPO> tmp = new LinkedList<ISPO>();
+
+            {
+
+                final IChunkedOrderedIterator<ISPO> itr = serial.iterator();
+
+                try {
+
+                    while (itr.hasNext()) {
+
+                        tmp.add(itr.next());
+
+                    }
+
+                } finally {
+
+                    itr.close();
+
+                }
+
+            }
+
+            final ISPO[] expected = tmp.toArray(new ISPO[tmp.size()]);
+
+            assertEquals(nstmts, expected.length);
+
+            // parallel scan using up to 4 partitions of at least 100 tuples.
+            final IAccessPath<ISPO> parallel = view.getSPORelation()
+                    .getAccessPath(
+                            (SPOPredicate) predicate.setProperty(
+                                    IPredicate.Annotations.PARALLEL_SCAN, 4)
+                                    .setProperty(
+                                            IPredicate.Annotations.PARALLEL_SCAN_THRESHOLD,
+                                            100L));
+
+            final IIndex ndx = ((AccessPath<ISPO>) parallel).getIndex();
+
+            if (ndx instanceof AbstractBTree
+                    && ((AbstractBTree) ndx).isReadOnly()) {
+
+                // The chunks of the different partitions are interleaved.
+                assertNull(parallel.iterator().getKeyOrder());
+
+            }
+
+            assertSameSPOsAnyOrder(view, expected, parallel.iterator());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
     /**
      * @todo write tests of slice where offset=0, offset>0. test with limit at
      *       fence posts (0,1) and with limit GT the maximum that can be fully
@@ -28,11 +28,18 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 package com.bigdata.rdf.spo;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
 
 import junit.framework.TestCase2;
 
 import com.bigdata.btree.AbstractBTreeTestCase;
+import com.bigdata.btree.KeySketch;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.keys.KeyBuilder;
 import com.bigdata.btree.raba.IRaba;
 import com.bigdata.btree.raba.ReadOnlyKeysRaba;
 import com.bigdata.btree.raba.codec.CanonicalHuffmanRabaCoder;
@@ -44,6 +51,22 @@ import com.bigdata.io.AbstractFixedByteArrayBuffer;
 import com.bigdata.io.DataOutputBuffer;
 import com.bigdata.io.FixedByteArrayBuffer;
 import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.BlobIV;
+import com.bigdata.rdf.internal.impl.bnode.NumericBNodeIV;
+import com.bigdata.rdf.internal.impl.bnode.SidIV;
+import com.bigdata.rdf.internal.impl.bnode.UUIDBNodeIV;
+import com.bigdata.rdf.internal.impl.literal.FullyInlineTypedLiteralIV;
+import com.bigdata.rdf.internal.impl.literal.LiteralExtensionIV;
+import com.bigdata.rdf.internal.impl.literal.UUIDLiteralIV;
+import com.bigdata.rdf.internal.impl.literal.XSDBooleanIV;
+import com.bigdata.rdf.internal.impl.literal.XSDDecimalIV;
+import com.bigdata.rdf.internal.impl.literal.XSDIntegerIV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.internal.impl.literal.XSDUnsignedByteIV;
+import com.bigdata.rdf.internal.impl.literal.XSDUnsignedIntIV;
+import com.bigdata.rdf.internal.impl.uri.VocabURIByteIV;
 import com.bigdata.test.MockTermIdFactory;
 
 /**
@@ -162,6 +185,195 @@ public class TestSPOKeyCoders extends TestCase2 {
         
     }
 
+    public void test_ivColumnCoder() {
+
+        doRoundTripTests(new IVColumnRabaCoder());
+        
+    }
+
+    /**
+     * Verify that the {@link IVColumnRabaCoder} codes the keys of the
+     * statement indices as columns and that the coded keys are smaller than
+     * the front-coded keys when the {@link IV}s repeat.
+     */
+    public void test_ivColumnCoder_repeatedTerms() {
+
+        final IV<?, ?>[] terms = new IV[20];
+
+        for (int i = 0; i < terms.length; i++) {
+
+            terms[i] = getTermId();
+
+        }
+
+        final Random r = new Random();
+
+        final SPO[] a = new SPO[500];
+
+        for (int i = 0; i < a.length; i++) {
+
+            a[i] = new SPO(terms[r.nextInt(3)], terms[r.nextInt(5)],
+                    terms[r.nextInt(terms.length)]);
+
+        }
+
+        Arrays.sort(a, 0, a.length, SPOComparator.INSTANCE);
+
+        // remove duplicates.
+        int n = 0;
+
+        for (int i = 0; i < a.length; i++) {
+
+            if (n == 0 || SPOComparator.INSTANCE.compare(a[n - 1], a[i]) != 0)
+                a[n++] = a[i];
+
+        }
+
+        final SPO[] b = Arrays.copyOf(a, n);
+
+        final IRabaCoder rabaCoder = new IVColumnRabaCoder();
+
+        doRoundTripTest(b, rabaCoder);
+
+        final SPOTupleSerializer tupleSer = new SPOTupleSerializer(
+                SPOKeyOrder.SPO, false/* sids */);
+
+        final byte[][] keys = new byte[n][];
+
+        for (int i = 0; i < n; i++) {
+
+            keys[i] = tupleSer.serializeKey(b[i]);
+
+        }
+
+        final IRaba raba = new ReadOnlyKeysRaba(keys);
+
+        final AbstractFixedByteArrayBuffer columnCoded = rabaCoder.encode(
+                raba, new DataOutputBuffer());
+
+        // not coded by the fallback coder.
+        assertEquals(0, columnCoded.getByte(1));
+
+        final AbstractFixedByteArrayBuffer frontCoded = new FrontCodedRabaCoder(
+                8/* ratio */).encode(raba, new DataOutputBuffer());
+
+        if (log.isInfoEnabled())
+            log.info("n=" + n + ", columnCoded=" + columnCoded.len()
+                    + ", frontCoded=" + frontCoded.len());
+
+        assertTrue(columnCoded.len() < frontCoded.len());
+
+    }
+
+    /**
+     * Verify that the {@link IVColumnRabaCoder} reports the byte length of
+     * each kind of {@link IV} in a key, whether the length follows from the
+     * flags or requires the {@link IV} to be decoded, and that a key which is
+     * cut short is rejected.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void test_ivColumnCoder_columnLength() {
+
+        final IV<?, ?> s = getTermId(), p = getTermId(), o = getTermId();
+
+        final IV[] ivs = new IV[] {//
+                s,//
+                new BlobIV(VTE.LITERAL, 12, (short) 3),//
+                new XSDNumericIV((byte) 1),//
+                new XSDNumericIV((short) 2),//
+                new XSDNumericIV(3),//
+                new XSDNumericIV(4L),//
+                new XSDNumericIV(5f),//
+                new XSDNumericIV(6d),//
+                new XSDBooleanIV(true),//
+                new XSDUnsignedByteIV((byte) 7),//
+                new XSDUnsignedIntIV(8),//
+                new UUIDLiteralIV(UUID.randomUUID()),//
+                new XSDIntegerIV(BigInteger.valueOf(9)),//
+                new XSDDecimalIV(BigDecimal.valueOf(10.5)),//
+                new FullyInlineTypedLiteralIV("abc"),//
+                new VocabURIByteIV((byte) 11),//
+                new NumericBNodeIV(12),//
+                new UUIDBNodeIV(UUID.randomUUID()),//
+                new LiteralExtensionIV(new XSDNumericIV(13L),
+                        new VocabURIByteIV((byte) 14)),//
+                new SidIV(new SPO(s, p, o)),//
+        };
+
+        final IVColumnRabaCoder coder = new IVColumnRabaCoder();
+
+        final IKeyBuilder keyBuilder = new KeyBuilder();
+
+        for (IV iv : ivs) {
+
+            // a leading term identifier and then the IV to be measured.
+            final int off = s.byteLength();
+
+            final byte[] key = IVUtility.encode(
+                    IVUtility.encode(keyBuilder.reset(), s), iv).getKey();
+
+            assertEquals(iv.toString(), s.byteLength(),
+                    coder.getColumnLength(key, 0, 0));
+
+            assertEquals(iv.toString(), iv.byteLength(),
+                    coder.getColumnLength(key, off, 1));
+
+            assertEquals(iv.toString(), key.length, off + iv.byteLength());
+
+        }
+
+        // a key which ends in the middle of a term identifier.
+        final byte[] key = IVUtility.encode(keyBuilder.reset(), s).getKey();
+
+        try {
+            coder.getColumnLength(Arrays.copyOf(key, key.length - 1), 0, 0);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * Verify that the {@link IVKeySketchFactory} splits the keys of the
+     * statement indices into one component per {@link IV}, so the sketch
+     * reports the #of distinct subjects, (subject, predicate) pairs, and
+     * triples for the SPO index.
+     */
+    public void test_ivKeySketchFactory() {
+
+        final IV<?, ?>[] terms = new IV[20];
+
+        for (int i = 0; i < terms.length; i++) {
+
+            terms[i] = getTermId();
+
+        }
+
+        final SPOTupleSerializer tupleSer = new SPOTupleSerializer(
+                SPOKeyOrder.SPO, false/* sids */);
+
+        final KeySketch sketch = new IVKeySketchFactory().newKeySketch();
+
+        assertEquals(3, sketch.getComponentCount());
+
+        // 3 subjects x 5 predicates x 20 objects.
+        for (int s = 0; s < 3; s++) {
+            for (int p = 0; p < 5; p++) {
+                for (int o = 0; o < terms.length; o++) {
+                    sketch.add(tupleSer.serializeKey(new SPO(terms[s],
+                            terms[p], terms[o])));
+                }
+            }
+        }
+
+        assertEquals(3, sketch.getDistinctCount(1));
+        assertEquals(15, sketch.getDistinctCount(2));
+        assertTrue(Math.abs(300 - sketch.getDistinctCount(3)) < 30);
+
+    }
+
     protected void doRoundTripTests(final IRabaCoder rabaCoder) {
 
       doRoundTripTest(getData(0), rabaCoder);
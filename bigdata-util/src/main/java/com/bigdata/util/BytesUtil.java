@@ -28,6 +28,7 @@ import it.unimi.dsi.io.InputBitStream;
 import it.unimi.dsi.io.OutputBitStream;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Comparator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -381,6 +382,144 @@ public class BytesUtil {
 
 	}
 
+	/**
+	 * Byte-wise comparison of a byte[] slice with a {@link ByteBuffer} slice
+	 * (the data are treated as arrays of unsigned bytes). The buffer may be
+	 * either a heap buffer or a direct buffer. Offsets into the buffer are
+	 * absolute and its position, limit and mark are unchanged by this
+	 * procedure.
+	 * 
+	 * @param aoff
+	 *            The offset into <i>a</i> at which the comparison will begin.
+	 * @param alen
+	 *            The #of bytes in <i>a</i> to consider starting at <i>aoff</i>.
+	 * @param a
+	 *            A byte[].
+	 * @param boff
+	 *            The offset into <i>b</i> at which the comparison will begin.
+	 * @param blen
+	 *            The #of bytes in <i>b</i> to consider starting at <i>boff</i>.
+	 * @param b
+	 *            A {@link ByteBuffer}.
+	 * 
+	 * @return a negative integer, zero, or a positive integer as the first
+	 *         argument is less than, equal to, or greater than the second.
+	 */
+	final public static int compareBytesWithLenAndOffset(//
+			final int aoff, final int alen, final byte[] a,//
+			final int boff, final int blen, final ByteBuffer b//
+	) {
+
+		if (b.hasArray()) {
+
+			return compareBytesWithLenAndOffset(aoff, alen, a,
+					b.arrayOffset() + boff, blen, b.array());
+
+		}
+
+		final int n = alen < blen ? alen : blen;
+
+		for (int i = 0; i < n; i++) {
+
+			// promotes to signed integers in [0:255] for comparison.
+			final int ret = (a[aoff + i] & 0xff) - (b.get(boff + i) & 0xff);
+
+			if (ret != 0)
+				return ret;
+
+		}
+
+		return alen - blen;
+
+	}
+
+	/**
+	 * Byte-wise comparison of two {@link ByteBuffer} slices (the data are
+	 * treated as arrays of unsigned bytes). Either buffer may be a heap buffer
+	 * or a direct buffer, so keys encoded into a direct buffer may be compared
+	 * without copying them onto the Java heap. Offsets into the buffers are
+	 * absolute and their position, limit and mark are unchanged by this
+	 * procedure.
+	 * 
+	 * @param aoff
+	 *            The offset into <i>a</i> at which the comparison will begin.
+	 * @param alen
+	 *            The #of bytes in <i>a</i> to consider starting at <i>aoff</i>.
+	 * @param a
+	 *            A {@link ByteBuffer}.
+	 * @param boff
+	 *            The offset into <i>b</i> at which the comparison will begin.
+	 * @param blen
+	 *            The #of bytes in <i>b</i> to consider starting at <i>boff</i>.
+	 * @param b
+	 *            A {@link ByteBuffer}.
+	 * 
+	 * @return a negative integer, zero, or a positive integer as the first
+	 *         argument is less than, equal to, or greater than the second.
+	 */
+	final public static int compareBytesWithLenAndOffset(//
+			final int aoff, final int alen, final ByteBuffer a,//
+			final int boff, final int blen, final ByteBuffer b//
+	) {
+
+		if (a.hasArray()) {
+
+			return compareBytesWithLenAndOffset(a.arrayOffset() + aoff, alen,
+					a.array(), boff, blen, b);
+
+		}
+
+		if (b.hasArray()) {
+
+			// reverse the arguments and negate the result.
+			return -compareBytesWithLenAndOffset(b.arrayOffset() + boff,
+					blen, b.array(), aoff, alen, a);
+
+		}
+
+		final int n = alen < blen ? alen : blen;
+
+		int i = 0;
+
+		if (a.order() == ByteOrder.BIG_ENDIAN
+				&& b.order() == ByteOrder.BIG_ENDIAN) {
+
+			/*
+			 * Compare a word at a time. In big-endian order the unsigned
+			 * comparison of the words is the same as the unsigned comparison
+			 * of their bytes. Flipping the sign bit maps the unsigned order
+			 * onto the signed order of the longs.
+			 */
+			for (; i + 8 <= n; i += 8) {
+
+				final long x = a.getLong(aoff + i);
+
+				final long y = b.getLong(boff + i);
+
+				if (x != y) {
+
+					return (x ^ Long.MIN_VALUE) < (y ^ Long.MIN_VALUE) ? -1 : 1;
+
+				}
+
+			}
+
+		}
+
+		for (; i < n; i++) {
+
+			// promotes to signed integers in [0:255] for comparison.
+			final int ret = (a.get(aoff + i) & 0xff) - (b.get(boff + i) & 0xff);
+
+			if (ret != 0)
+				return ret;
+
+		}
+
+		return alen - blen;
+
+	}
+
 	/**
 	 * Return the #of leading bytes in common. This is used to compute the
 	 * prefix for a node or leaf, which is formed by the leading bytes in common
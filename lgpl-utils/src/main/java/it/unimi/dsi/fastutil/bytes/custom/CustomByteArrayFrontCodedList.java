@@ -1227,7 +1227,9 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
          * and locate the greatest index that is a multiple of the ratio whose
          * value is LTE to the probe key.
          */
-        final int pret = binarySearch(a);
+        final long bret = binarySearch(a);
+
+        final int pret = (int) bret;
 
         if (pret == 0 || (pret > 0 && !hasDups)) { 			
             /*
@@ -1315,23 +1317,37 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
             // Skip the #of bytes required to code that length.
             pos += count(blen);
 
-            // Count matching bytes.
-            int i;
-            for (i = 0; i < a.length && i < blen; i++, pos++) {
+            if (pret < 0) {
+
+                /*
+                 * The binary search already compared the probe key against
+                 * this full length entry (it is the last entry which was LT
+                 * the probe key) and reported the length of their common
+                 * prefix.
+                 */
+                mlen = (int) (bret >>> 32);
+
+            } else {
 
-                if (a[i] != bb.get(pos)) {
-                    
-                    break;
+                // Count matching bytes.
+                int i;
+                for (i = 0; i < a.length && i < blen; i++) {
+
+                    if (a[i] != bb.get(pos + i)) {
+
+                        break;
+
+                    }
 
                 }
 
+                // #of matching bytes.
+                mlen = i;
+
             }
-            
-            // #of matching bytes.
-            mlen = i;
 
-            // skip over the remainder of the full length coded entry.
-            pos += (blen - mlen);
+            // skip over the full length coded entry.
+            pos += blen;
             
         }
 
@@ -1455,20 +1471,29 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
     /**
      * Binary search against the entries in the backing buffer that are coded as
      * their full length values.
+     * <p>
+     * The search tracks the length of the prefix which the probe key shares
+     * with the full length entries at the lower and upper bounds of the
+     * search. Since the entries are ordered, every entry between those bounds
+     * shares at least the shorter of those two prefixes with the probe key, so
+     * each comparison skips over that many bytes.
      * 
      * @param key
      *            The key for the search.
      * 
-     * @return index of the search key into the pointer array, if it is an exact
-     *         match with any of the full length values whose offsets are stored
-     *         in the pointer array; otherwise,
+     * @return The low word is the index of the search key into the pointer
+     *         array, if it is an exact match with any of the full length
+     *         values whose offsets are stored in the pointer array; otherwise,
      *         <code>(-(insertion point) - 1)</code>. The insertion point is
      *         defined as the point at which the key would be inserted into the
-     *         list. Note that this guarantees that the return value will be >=
-     *         0 if and only if the key is matched by any of the full length
-     *         coded entries.
+     *         list. Note that this guarantees that the low word will be >= 0
+     *         if and only if the key is matched by any of the full length coded
+     *         entries. When the key is not matched and the insertion point is
+     *         GT ZERO (0), the high word is the length of the prefix which the
+     *         probe key shares with the full length entry before the insertion
+     *         point.
      */
-    private int binarySearch(final byte[] key) {
+    private long binarySearch(final byte[] key) {
 
 //        final int base = 0;
         
@@ -1486,6 +1511,12 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
 
         int high = p.length/*nmem*/ - 1;
 
+        // The length of the prefix shared by the probe and the entry @ low-1.
+        int llcp = 0;
+
+        // The length of the prefix shared by the probe and the entry @ high+1.
+        int hlcp = 0;
+
         while (low <= high) {
 
             final int mid = (low + high) >> 1;
@@ -1493,28 +1524,37 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
             final int offset = /*base +*/ mid;
 
             /*
-             * Compare the probe with the full length byte[] at index [mid].
+             * Compare the probe with the full length byte[] at index [mid],
+             * skipping the prefix which is known to be shared.
              */
-            final int tmp = comparePos(mid, key);
+            final int skip = Math.min(llcp, hlcp);
+
+            final int tmp = comparePos(mid, key, skip);
 
             if (tmp > 0) {
 
                 // Actual GT probe, restrict lower bound and try again.
                 low = mid + 1;
 
+                llcp = skip + tmp - 1;
+
             } else if (tmp < 0) {
 
                 // Actual LT probe, restrict upper bound and try again.
                 high = mid - 1;
 
+                hlcp = skip - tmp - 1;
+
             } else {
 
                 // duplicate check to see if previous is also a match
-                if (hasDups && mid > 0 && comparePos(mid - 1, key) == 0) {
+                if (hasDups && mid > 0 && comparePos(mid - 1, key, 0) == 0) {
 
                     // in which case set it as the highest
                     high = mid - 1;
 
+                    hlcp = key.length;
+
                 } else {
 
                     // Found: return offset.
@@ -1530,7 +1570,7 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
 
         final int offset = (/*base +*/ low);
 
-        return -(offset + 1);
+        return ((long) llcp << 32) | ((-(offset + 1)) & 0xffffffffL);
 
     }
     
@@ -1542,11 +1582,16 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
      *            The index into the full length keys.
      * @param key
      *            The probe key.
+     * @param skip
+     *            The #of leading bytes which are known to be shared by the
+     *            probe key and the full length key.
      * 
      * @return A value which indicates whether the key at that offset into the
-     *         backing buffer is LT, GT, or EQ to the caller's key.
+     *         backing buffer is LT, GT, or EQ to the caller's key. When non-zero,
+     *         the value also codes the length of the shared prefix after the
+     *         skipped bytes, as <code>Math.abs(ret)-1</code>.
      */
-    private int comparePos(final int index, final byte[] key) {
+    private int comparePos(final int index, final byte[] key, final int skip) {
 
         // The index into the backing buffer of index [index].
         int pos = p[index];
@@ -1558,7 +1603,8 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
         pos += count(blen);
 
         // Compare key vs actual (in buffer).
-        return compareBytes(key, 0, key.length, bb, pos, blen);
+        return compareBytes(key, skip, key.length - skip, bb, pos + skip, blen
+                - skip);
         
     }
 
@@ -1587,6 +1633,15 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
     private int compareBytes(final byte[] a, final int aoff, final int alen,
             final BackingBuffer bb, final int boff, final int blen) {
 
+        if (bb instanceof BackingByteArray) {
+
+            // Fast path: compare directly against the backing byte[].
+            final BackingByteArray ba = (BackingByteArray) bb;
+
+            return compareBytes(a, aoff, alen, ba.a, ba.off + boff, blen);
+            
+        }
+
         int mlen = 0;
         // Compare bytes(probe,entry) (negative iff probe < entry)
         for (int i = aoff, j = boff; i < aoff + alen && j < boff + blen; i++, j++, mlen++) {
@@ -1606,6 +1661,33 @@ public class CustomByteArrayFrontCodedList extends AbstractObjectList<byte[]>
 
     }
 
+    /**
+     * Variant of
+     * {@link #compareBytes(byte[], int, int, BackingBuffer, int, int)} for a
+     * backing byte[].
+     */
+    private static int compareBytes(final byte[] a, final int aoff,
+            final int alen, final byte[] b, final int boff, final int blen) {
+
+        final int n = Math.min(alen, blen);
+
+        for (int i = 0; i < n; i++) {
+
+            // promotes to signed integers in [0:255] for comparison.
+            final int ret = (a[aoff + i] & 0xff) - (b[boff + i] & 0xff);
+
+            if (ret != 0) {
+
+                return ret < 0 ? -(i + 1) : (i + 1);
+
+            }
+
+        }
+
+        return alen == blen ? 0 : (alen - blen) < 0 ? -(n + 1) : (n + 1);
+
+    }
+
     /*
      * Note: These toString() methods were inlined to remove a dependency on
      * BytesUtil in the bigdata package (BBT, 9/24/2009).